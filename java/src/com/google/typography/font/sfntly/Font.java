@@ -31,6 +31,8 @@ import com.google.typography.font.sfntly.table.core.HorizontalHeaderTable;
 import com.google.typography.font.sfntly.table.core.HorizontalMetricsTable;
 import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
 import com.google.typography.font.sfntly.table.core.NameTable;
+import com.google.typography.font.sfntly.table.core.VerticalHeaderTable;
+import com.google.typography.font.sfntly.table.core.VerticalMetricsTable;
 import com.google.typography.font.sfntly.table.truetype.LocaTable;
 
 import java.io.IOException;
@@ -311,6 +313,8 @@ public class Font {
 
   private final int sfntVersion;
   private final byte[] digest;
+  private final Object checksumLock = new Object();
+  private volatile boolean checksumSet;
   private long checksum;
 
   private Map<Integer, ? extends Table> tables; // these get set in the builder
@@ -351,14 +355,34 @@ public class Font {
   }
 
   /**
-   * Get the checksum for this font.
+   * Get the checksum for this font. The checksum is computed on first use,
+   * which reads the data of every table.
    *
    * @return the font checksum
    */
   public long checksum() {
+    if (!this.checksumSet) {
+      this.computeChecksum();
+    }
     return this.checksum;
   }
 
+  private void computeChecksum() {
+    synchronized (this.checksumLock) {
+      if (this.checksumSet) {
+        return;
+      }
+      long fontChecksum = 0;
+      if (this.tables != null) {
+        for (Table table : this.tables.values()) {
+          fontChecksum += table.calculatedChecksum();
+        }
+      }
+      this.checksum = fontChecksum & 0xffffffffL;
+      this.checksumSet = true;
+    }
+  }
+
   /**
    * Get the number of tables in this font.
    *
@@ -835,7 +859,6 @@ public class Font {
 
       interRelateBuilders(builderMap);
 
-      long fontChecksum = 0;
       boolean tablesChanged = false;
       FontHeaderTable.Builder headerTableBuilder = null;
       
@@ -853,15 +876,18 @@ public class Font {
         if (table == null) {
           throw new RuntimeException("Unable to build table - " + builder);
         }
-        long tableChecksum = table.calculatedChecksum();
-        fontChecksum += tableChecksum;
         tableMap.put(table.header().tag(), table);
       }
       
-      // now fix up the header table
+      // now fix up the header table; the checksums are only computed if some
+      // table changed, so that unchanged table data is not read here
       Table headerTable = null;
       if (headerTableBuilder != null) {
         if (tablesChanged) {
+          long fontChecksum = 0;
+          for (Table table : tableMap.values()) {
+            fontChecksum += table.calculatedChecksum();
+          }
           headerTableBuilder.setFontChecksum(fontChecksum);
         }
         if (headerTableBuilder.readyToBuild()) {
@@ -871,11 +897,8 @@ public class Font {
         if (headerTable == null) {
           throw new RuntimeException("Unable to build table - " + headerTableBuilder);
         }
-        fontChecksum += headerTable.calculatedChecksum();
         tableMap.put(headerTable.header().tag(), headerTable);
       }
-      
-      font.checksum = fontChecksum & 0xffffffffL;
       return tableMap;
     }
 
@@ -893,6 +916,10 @@ public class Font {
         (HorizontalMetricsTable.Builder) builderMap.get(Tag.hmtx);
       HorizontalDeviceMetricsTable.Builder hdmxTableBuilder =
         (HorizontalDeviceMetricsTable.Builder) builderMap.get(Tag.hdmx);
+      VerticalHeaderTable.Builder verticalHeaderBuilder =
+        (VerticalHeaderTable.Builder) builderMap.get(Tag.vhea);
+      VerticalMetricsTable.Builder verticalMetricsBuilder =
+        (VerticalMetricsTable.Builder) builderMap.get(Tag.vmtx);
 
       // set the inter table data required to build certain tables
       if (horizontalMetricsBuilder != null) {
@@ -905,6 +932,16 @@ public class Font {
         }
       }
 
+      if (verticalMetricsBuilder != null) {
+        if (maxProfileBuilder != null) {
+          verticalMetricsBuilder.setNumGlyphs(maxProfileBuilder.numGlyphs());
+        }
+        if (verticalHeaderBuilder != null) {
+          verticalMetricsBuilder.setNumberOfVMetrics(
+              verticalHeaderBuilder.numberOfLongVerMetrics());
+        }
+      }
+
       if (locaTableBuilder != null) {
         if (maxProfileBuilder != null) {
           locaTableBuilder.setNumGlyphs(maxProfileBuilder.numGlyphs());
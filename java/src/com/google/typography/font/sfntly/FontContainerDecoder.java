@@ -0,0 +1,51 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly;
+
+import java.io.IOException;
+
+/**
+ * A decoder for a container format that wraps font data, such as EOT. A
+ * decoder added to a font factory is handed any data whose header it
+ * recognizes, in place of the factory reading the data as an sfnt font.
+ *
+ * @see FontFactory#addContainerDecoder(FontContainerDecoder)
+ */
+public interface FontContainerDecoder {
+
+  /**
+   * @return the number of leading bytes needed to recognize the format
+   */
+  int headerSize();
+
+  /**
+   * @param header the first {@link #headerSize()} bytes of the data, or all
+   *        of it if it is shorter
+   * @return whether the data is in the format of this decoder
+   */
+  boolean recognizes(byte[] header);
+
+  /**
+   * Decodes the container into font builders.
+   *
+   * @param factory the factory loading the data
+   * @param data the container data
+   * @return one or more font builders
+   * @throws IOException if the data is not valid
+   */
+  Font.Builder[] loadFontsForBuilding(FontFactory factory, byte[] data) throws IOException;
+}
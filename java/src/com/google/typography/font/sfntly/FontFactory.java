@@ -17,11 +17,13 @@
 package com.google.typography.font.sfntly;
 
 import com.google.typography.font.sfntly.Font.Builder;
+import com.google.typography.font.sfntly.data.BlockSource;
 import com.google.typography.font.sfntly.data.FontData;
 import com.google.typography.font.sfntly.data.ReadableFontData;
 import com.google.typography.font.sfntly.data.WritableFontData;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -30,6 +32,7 @@ import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -46,6 +49,10 @@ public final class FontFactory {
   // font serialization settings
   List<Integer> tableOrdering;
 
+  // decoders of container formats, tried in order before loading an sfnt
+  private final List<FontContainerDecoder> containerDecoders =
+      new ArrayList<FontContainerDecoder>();
+
   // Offsets within the main directory
   private interface Offset {
     int TTCTag = 0;
@@ -102,6 +109,17 @@ public final class FontFactory {
     return this.fingerprint;
   }
 
+  /**
+   * Add a decoder for a font container format. Data that the decoder
+   * recognizes is loaded through it rather than as an sfnt font; decoders are
+   * tried in the order they were added.
+   *
+   * @param decoder the decoder
+   */
+  public void addContainerDecoder(FontContainerDecoder decoder) {
+    this.containerDecoders.add(decoder);
+  }
+
   // input stream font loading
 
   /**
@@ -118,7 +136,11 @@ public final class FontFactory {
    */
   public Font[] loadFonts(InputStream is) throws IOException {
     PushbackInputStream pbis =
-      new PushbackInputStream(new BufferedInputStream(is), FontFactory.LOOKAHEAD_SIZE);
+      new PushbackInputStream(new BufferedInputStream(is), this.lookaheadSize());
+    FontContainerDecoder decoder = this.containerDecoder(pbis);
+    if (decoder != null) {
+      return build(decoder.loadFontsForBuilding(this, readFully(pbis)));
+    }
     if (isCollection(pbis)) {
       return loadCollection(pbis);
     }
@@ -139,7 +161,11 @@ public final class FontFactory {
    */
   public Builder[] loadFontsForBuilding(InputStream is) throws IOException {
     PushbackInputStream pbis =
-      new PushbackInputStream(new BufferedInputStream(is), FontFactory.LOOKAHEAD_SIZE);
+      new PushbackInputStream(new BufferedInputStream(is), this.lookaheadSize());
+    FontContainerDecoder decoder = this.containerDecoder(pbis);
+    if (decoder != null) {
+      return decoder.loadFontsForBuilding(this, readFully(pbis));
+    }
     if (isCollection(pbis)) {
       return loadCollectionForBuilding(pbis);
     }
@@ -184,6 +210,59 @@ public final class FontFactory {
     return loadCollectionForBuilding(wfd);
   }
 
+  private int lookaheadSize() {
+    int size = FontFactory.LOOKAHEAD_SIZE;
+    for (FontContainerDecoder decoder : this.containerDecoders) {
+      size = Math.max(size, decoder.headerSize());
+    }
+    return size;
+  }
+
+  private FontContainerDecoder containerDecoder(PushbackInputStream pbis) throws IOException {
+    if (this.containerDecoders.isEmpty()) {
+      return null;
+    }
+    byte[] header = new byte[this.lookaheadSize()];
+    int length = 0;
+    while (length < header.length) {
+      int read = pbis.read(header, length, header.length - length);
+      if (read < 0) {
+        break;
+      }
+      length += read;
+    }
+    pbis.unread(header, 0, length);
+    return this.containerDecoder(header, length);
+  }
+
+  private FontContainerDecoder containerDecoder(byte[] b, int length) {
+    for (FontContainerDecoder decoder : this.containerDecoders) {
+      byte[] header = Arrays.copyOf(b, Math.min(length, decoder.headerSize()));
+      if (decoder.recognizes(header)) {
+        return decoder;
+      }
+    }
+    return null;
+  }
+
+  private static byte[] readFully(InputStream is) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = is.read(buffer)) >= 0) {
+      os.write(buffer, 0, read);
+    }
+    return os.toByteArray();
+  }
+
+  private static Font[] build(Font.Builder[] builders) {
+    Font[] fonts = new Font[builders.length];
+    for (int i = 0; i < fonts.length; i++) {
+      fonts[i] = builders[i].build();
+    }
+    return fonts;
+  }
+
   private static boolean isCollection(PushbackInputStream pbis) throws IOException {
     byte[] tag = new byte[4];
     pbis.read(tag);
@@ -205,6 +284,10 @@ public final class FontFactory {
    * @throws IOException
    */
   public Font[] loadFonts(byte[] b) throws IOException {
+    FontContainerDecoder decoder = this.containerDecoder(b, b.length);
+    if (decoder != null) {
+      return build(decoder.loadFontsForBuilding(this, b));
+    }
     // TODO(stuartg): make a ReadableFontData when block loading moved to
     // FontFactory
     WritableFontData rfd = WritableFontData.createWritableFontData(b);
@@ -227,6 +310,10 @@ public final class FontFactory {
    * @throws IOException
    */
   public Font.Builder[] loadFontsForBuilding(byte[] b) throws IOException {
+    FontContainerDecoder decoder = this.containerDecoder(b, b.length);
+    if (decoder != null) {
+      return decoder.loadFontsForBuilding(this, b);
+    }
     WritableFontData wfd = WritableFontData.createWritableFontData(b);
     if (isCollection(wfd)) {
       return loadCollectionForBuilding(wfd);
@@ -234,6 +321,46 @@ public final class FontFactory {
     return new Font.Builder[] {loadSingleOTFForBuilding(wfd, 0)};
   }
 
+  /**
+   * Load the font(s) from a block source, reading only the parts of the data
+   * that are accessed. The table directory is read when loading, and the data
+   * of a table when the table is first used, so fonts loaded this way are
+   * suited to reading a few tables or subsetting. The source must hold an
+   * sfnt font or font collection; container decoders are not applied.
+   *
+   * @param source the source of the font data
+   * @return one or more fonts
+   * @throws IOException if the source cannot be read
+   */
+  public Font[] loadFonts(BlockSource source) throws IOException {
+    return loadFonts(WritableFontData.createWritableFontData(source));
+  }
+
+  /**
+   * Load the font(s) from a block source, reading only the parts of the data
+   * that are accessed.
+   *
+   * @param source the source of the font data
+   * @param blockSize the size of the blocks read and cached
+   * @param maxCachedBlocks the most blocks kept in the cache
+   * @param readAheadBlocks the number of blocks read after a missing block
+   * @return one or more fonts
+   * @throws IOException if the source cannot be read
+   * @see #loadFonts(BlockSource)
+   */
+  public Font[] loadFonts(BlockSource source, int blockSize, int maxCachedBlocks,
+      int readAheadBlocks) throws IOException {
+    return loadFonts(WritableFontData.createWritableFontData(
+        source, blockSize, maxCachedBlocks, readAheadBlocks));
+  }
+
+  private Font[] loadFonts(WritableFontData wfd) throws IOException {
+    if (isCollection(wfd)) {
+      return loadCollection(wfd);
+    }
+    return new Font[] {loadSingleOTF(wfd)};
+  }
+
   private Font loadSingleOTF(WritableFontData wfd) throws IOException {
     return loadSingleOTFForBuilding(wfd, 0).build();
   }
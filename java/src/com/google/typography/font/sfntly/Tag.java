@@ -61,6 +61,14 @@ public final class Tag {
   public static final int EBLC = Tag.intValue(new byte[]{'E', 'B', 'L', 'C'});
   public static final int EBSC = Tag.intValue(new byte[]{'E', 'B', 'S', 'C'});
 
+  // opentype color bitmap glyph outlines
+  public static final int CBDT = Tag.intValue(new byte[]{'C', 'B', 'D', 'T'});
+  public static final int CBLC = Tag.intValue(new byte[]{'C', 'B', 'L', 'C'});
+
+  // opentype color vector glyphs
+  public static final int COLR = Tag.intValue(new byte[]{'C', 'O', 'L', 'R'});
+  public static final int CPAL = Tag.intValue(new byte[]{'C', 'P', 'A', 'L'});
+
   // advanced typographic features
   public static final int BASE = Tag.intValue(new byte[]{'B', 'A', 'S', 'E'});
   public static final int GDEF = Tag.intValue(new byte[]{'G', 'D', 'E', 'F'});
@@ -79,6 +87,16 @@ public final class Tag {
   public static final int vhea = Tag.intValue(new byte[]{'v', 'h', 'e', 'a'});
   public static final int vmtx = Tag.intValue(new byte[]{'v', 'm', 't', 'x'});
 
+  // font variation tables
+  public static final int avar = Tag.intValue(new byte[]{'a', 'v', 'a', 'r'});
+  public static final int cvar = Tag.intValue(new byte[]{'c', 'v', 'a', 'r'});
+  public static final int fvar = Tag.intValue(new byte[]{'f', 'v', 'a', 'r'});
+  public static final int gvar = Tag.intValue(new byte[]{'g', 'v', 'a', 'r'});
+  public static final int HVAR = Tag.intValue(new byte[]{'H', 'V', 'A', 'R'});
+  public static final int MVAR = Tag.intValue(new byte[]{'M', 'V', 'A', 'R'});
+  public static final int STAT = Tag.intValue(new byte[]{'S', 'T', 'A', 'T'});
+  public static final int VVAR = Tag.intValue(new byte[]{'V', 'V', 'A', 'R'});
+
   // AAT Tables
   // TODO(stuartg): some tables may be missing from this list
   public static final int bsln = Tag.intValue(new byte[]{'b', 's', 'l', 'n'});
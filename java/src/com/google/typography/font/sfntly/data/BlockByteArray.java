@@ -0,0 +1,193 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.data;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A read only implementation of the ByteArray interface over a
+ * {@link BlockSource}. The data is split into fixed size blocks that are read
+ * on first access and kept in a bounded least recently used cache. A miss
+ * reads the missing block together with the blocks after it that a multi-byte
+ * read needs, plus a number of read-ahead blocks, in a single request.
+ */
+final class BlockByteArray extends ByteArray<BlockByteArray> {
+
+  static final int DEFAULT_BLOCK_SIZE = 16384;
+  static final int DEFAULT_MAX_CACHED_BLOCKS = 256;
+  static final int DEFAULT_READ_AHEAD_BLOCKS = 3;
+
+  private final BlockSource source;
+  private final int blockSize;
+  private final int blockCount;
+  private final int readAheadBlocks;
+  private final Map<Integer, byte[]> cache;
+
+  // the most recently used block, checked before taking the cache lock
+  private volatile Block last;
+
+  private static final class Block {
+    final int index;
+    final byte[] data;
+
+    Block(int index, byte[] data) {
+      this.index = index;
+      this.data = data;
+    }
+  }
+
+  /**
+   * @param source the source of the data
+   * @param length the length of the data
+   * @param blockSize the size of the blocks read and cached
+   * @param maxCachedBlocks the most blocks kept in the cache
+   * @param readAheadBlocks the number of blocks read after a missing one
+   */
+  BlockByteArray(BlockSource source, int length, int blockSize, final int maxCachedBlocks,
+      int readAheadBlocks) {
+    super(length, length);
+    if (blockSize <= 0 || maxCachedBlocks <= 0 || readAheadBlocks < 0) {
+      throw new IllegalArgumentException("Invalid block cache settings.");
+    }
+    this.source = source;
+    this.blockSize = blockSize;
+    this.blockCount = (int) (((long) length + blockSize - 1) / blockSize);
+    this.readAheadBlocks = readAheadBlocks;
+    this.cache = new LinkedHashMap<Integer, byte[]>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+        return size() > maxCachedBlocks;
+      }
+    };
+  }
+
+  /**
+   * Creates a block byte array over the whole of a block source.
+   *
+   * @throws IOException if the length of the source cannot be read or is too
+   *         large for font data
+   */
+  static BlockByteArray create(BlockSource source, int blockSize, int maxCachedBlocks,
+      int readAheadBlocks) throws IOException {
+    long length = source.length();
+    if (length < 0 || length > Integer.MAX_VALUE) {
+      throw new IOException("Block source length not supported: " + length);
+    }
+    return new BlockByteArray(source, (int) length, blockSize, maxCachedBlocks, readAheadBlocks);
+  }
+
+  @Override
+  protected void internalPut(int index, byte b) {
+    throw new UnsupportedOperationException("Block source data is read only.");
+  }
+
+  @Override
+  protected int internalPut(int index, byte[] b, int offset, int length) {
+    throw new UnsupportedOperationException("Block source data is read only.");
+  }
+
+  @Override
+  protected int internalGet(int index) {
+    return this.block(index / this.blockSize, index / this.blockSize)[index % this.blockSize];
+  }
+
+  @Override
+  protected int internalGet(int index, byte[] b, int offset, int length) {
+    int lastBlock = (index + length - 1) / this.blockSize;
+    int copied = 0;
+    while (copied < length) {
+      int position = index + copied;
+      byte[] block = this.block(position / this.blockSize, lastBlock);
+      int blockOffset = position % this.blockSize;
+      int count = Math.min(length - copied, block.length - blockOffset);
+      System.arraycopy(block, blockOffset, b, offset + copied, count);
+      copied += count;
+    }
+    return length;
+  }
+
+  /**
+   * Gets a block, reading it if it is not cached.
+   *
+   * @param blockIndex the block
+   * @param lastNeeded the last block the current read needs
+   */
+  private byte[] block(int blockIndex, int lastNeeded) {
+    Block block = this.last;
+    if (block != null && block.index == blockIndex) {
+      return block.data;
+    }
+    byte[] data;
+    synchronized (this.cache) {
+      data = this.cache.get(blockIndex);
+    }
+    if (data == null) {
+      data = this.load(blockIndex, lastNeeded);
+    }
+    this.last = new Block(blockIndex, data);
+    return data;
+  }
+
+  private byte[] load(int blockIndex, int lastNeeded) {
+    int end = Math.min(Math.max(blockIndex + this.readAheadBlocks, lastNeeded) + 1,
+        this.blockCount);
+    synchronized (this.cache) {
+      // stop before a block already cached, unless the current read needs it
+      for (int i = blockIndex + 1; i < end; i++) {
+        if (i > lastNeeded && this.cache.containsKey(i)) {
+          end = i;
+          break;
+        }
+      }
+    }
+    long offset = (long) blockIndex * this.blockSize;
+    int length = (int) (Math.min((long) end * this.blockSize, this.length()) - offset);
+    byte[] bytes;
+    try {
+      bytes = this.source.readBlock(offset, length);
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to read font data at " + offset, e);
+    }
+    if (bytes.length != length) {
+      throw new RuntimeException("Block source returned " + bytes.length
+          + " bytes instead of " + length + " at " + offset);
+    }
+    byte[] first = null;
+    synchronized (this.cache) {
+      for (int i = blockIndex, start = 0; i < end; i++, start += this.blockSize) {
+        byte[] data = (end - blockIndex == 1)
+            ? bytes : Arrays.copyOfRange(bytes, start, Math.min(start + this.blockSize, length));
+        if (first == null) {
+          first = data;
+        }
+        this.cache.put(i, data);
+      }
+    }
+    return first;
+  }
+
+  @Override
+  public void close() {
+    synchronized (this.cache) {
+      this.cache.clear();
+    }
+    this.last = null;
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.data;
+
+import java.io.IOException;
+
+/**
+ * A source of font data read in ranges, such as a file or an object in remote
+ * storage. Font data created over a block source reads the ranges it needs
+ * on demand and caches them, rather than loading the whole font up front.
+ *
+ * <p>Implementations must allow concurrent calls.
+ *
+ * @see ReadableFontData#createReadableFontData(BlockSource)
+ */
+public interface BlockSource {
+
+  /**
+   * @return the length of the data in bytes
+   * @throws IOException if the length cannot be determined
+   */
+  long length() throws IOException;
+
+  /**
+   * Reads a range of the data.
+   *
+   * @param offset the offset of the range
+   * @param length the length of the range, which lies within the data
+   * @return exactly the bytes of the range
+   * @throws IOException if the range cannot be read
+   */
+  byte[] readBlock(long offset, int length) throws IOException;
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.data;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A block source reading a local file with positional reads. It counts the
+ * reads made, which shows how much of a font an operation touches.
+ */
+public final class FileBlockSource implements BlockSource, Closeable {
+
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private final AtomicInteger readCount = new AtomicInteger();
+  private final AtomicLong bytesRead = new AtomicLong();
+
+  public FileBlockSource(File file) throws IOException {
+    this.file = new RandomAccessFile(file, "r");
+    this.channel = this.file.getChannel();
+  }
+
+  @Override
+  public long length() throws IOException {
+    return this.channel.size();
+  }
+
+  @Override
+  public byte[] readBlock(long offset, int length) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      if (this.channel.read(buffer, offset + buffer.position()) < 0) {
+        throw new EOFException("Unexpected end of file at " + (offset + buffer.position()));
+      }
+    }
+    this.readCount.incrementAndGet();
+    this.bytesRead.addAndGet(length);
+    return buffer.array();
+  }
+
+  /**
+   * @return the number of ranges read
+   */
+  public int readCount() {
+    return this.readCount.get();
+  }
+
+  /**
+   * @return the total number of bytes read
+   */
+  public long bytesRead() {
+    return this.bytesRead.get();
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.file.close();
+  }
+}
@@ -96,6 +96,38 @@ public class ReadableFontData extends FontData {
     return new ReadableFontData(ba);
   }
 
+  /**
+   * Constructs a readable font data object over a block source, with the
+   * default block size, cache size and read-ahead. The data is read from the
+   * source in blocks as it is accessed.
+   *
+   * @param source the source of the data
+   * @return a new readable font data
+   * @throws IOException if the length of the source cannot be read
+   */
+  public static ReadableFontData createReadableFontData(BlockSource source) throws IOException {
+    return createReadableFontData(source, BlockByteArray.DEFAULT_BLOCK_SIZE,
+        BlockByteArray.DEFAULT_MAX_CACHED_BLOCKS, BlockByteArray.DEFAULT_READ_AHEAD_BLOCKS);
+  }
+
+  /**
+   * Constructs a readable font data object over a block source. The data is
+   * read from the source in blocks as it is accessed, and the most recently
+   * used blocks are cached.
+   *
+   * @param source the source of the data
+   * @param blockSize the size of the blocks read and cached
+   * @param maxCachedBlocks the most blocks kept in the cache
+   * @param readAheadBlocks the number of blocks read after a missing block
+   * @return a new readable font data
+   * @throws IOException if the length of the source cannot be read
+   */
+  public static ReadableFontData createReadableFontData(BlockSource source, int blockSize,
+      int maxCachedBlocks, int readAheadBlocks) throws IOException {
+    return new ReadableFontData(
+        BlockByteArray.create(source, blockSize, maxCachedBlocks, readAheadBlocks));
+  }
+
 
   /**
    * Flag on whether the checksum has been set.
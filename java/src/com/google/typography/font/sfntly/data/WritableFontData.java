@@ -63,6 +63,40 @@ public final class WritableFontData extends ReadableFontData {
     return wfd;
   }
   
+  /**
+   * Constructs a font data object over a block source, with the default block
+   * size, cache size and read-ahead.
+   *
+   * @param source the source of the data
+   * @return a new font data
+   * @throws IOException if the length of the source cannot be read
+   * @see #createWritableFontData(BlockSource, int, int, int)
+   */
+  public static WritableFontData createWritableFontData(BlockSource source) throws IOException {
+    return createWritableFontData(source, BlockByteArray.DEFAULT_BLOCK_SIZE,
+        BlockByteArray.DEFAULT_MAX_CACHED_BLOCKS, BlockByteArray.DEFAULT_READ_AHEAD_BLOCKS);
+  }
+
+  /**
+   * Constructs a font data object over a block source, for loading a font
+   * without reading all of it. The data is read from the source in blocks as
+   * it is accessed, and the most recently used blocks are cached. The data is
+   * read only: writing to it throws {@link UnsupportedOperationException}.
+   *
+   * @param source the source of the data
+   * @param blockSize the size of the blocks read and cached
+   * @param maxCachedBlocks the most blocks kept in the cache
+   * @param readAheadBlocks the number of blocks read after a missing block
+   * @return a new font data
+   * @throws IOException if the length of the source cannot be read
+   * @see ReadableFontData#createReadableFontData(BlockSource, int, int, int)
+   */
+  public static WritableFontData createWritableFontData(BlockSource source, int blockSize,
+      int maxCachedBlocks, int readAheadBlocks) throws IOException {
+    return new WritableFontData(
+        BlockByteArray.create(source, blockSize, maxCachedBlocks, readAheadBlocks));
+  }
+
   /**
    * Constructs a writable font data object. The new font data object will wrap
    * a copy of the the data used by the original writable font data object passed in.
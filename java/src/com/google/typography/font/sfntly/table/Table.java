@@ -22,20 +22,34 @@ import com.google.typography.font.sfntly.data.WritableFontData;
 import com.google.typography.font.sfntly.table.bitmap.EbdtTable;
 import com.google.typography.font.sfntly.table.bitmap.EblcTable;
 import com.google.typography.font.sfntly.table.bitmap.EbscTable;
+import com.google.typography.font.sfntly.table.cff.CffTable;
+import com.google.typography.font.sfntly.table.color.ColorPaletteTable;
+import com.google.typography.font.sfntly.table.color.ColorTable;
 import com.google.typography.font.sfntly.table.core.CMapTable;
 import com.google.typography.font.sfntly.table.core.FontHeaderTable;
 import com.google.typography.font.sfntly.table.core.HorizontalDeviceMetricsTable;
 import com.google.typography.font.sfntly.table.core.HorizontalHeaderTable;
 import com.google.typography.font.sfntly.table.core.HorizontalMetricsTable;
+import com.google.typography.font.sfntly.table.core.KerningTable;
+import com.google.typography.font.sfntly.table.core.LinearThresholdTable;
 import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
 import com.google.typography.font.sfntly.table.core.NameTable;
 import com.google.typography.font.sfntly.table.core.OS2Table;
 import com.google.typography.font.sfntly.table.core.PostScriptTable;
+import com.google.typography.font.sfntly.table.core.VerticalHeaderTable;
+import com.google.typography.font.sfntly.table.core.VerticalMetricsTable;
+import com.google.typography.font.sfntly.table.opentype.GDefTable;
+import com.google.typography.font.sfntly.table.opentype.GPosTable;
 import com.google.typography.font.sfntly.table.opentype.GSubTable;
 import com.google.typography.font.sfntly.table.truetype.ControlProgramTable;
 import com.google.typography.font.sfntly.table.truetype.ControlValueTable;
 import com.google.typography.font.sfntly.table.truetype.GlyphTable;
 import com.google.typography.font.sfntly.table.truetype.LocaTable;
+import com.google.typography.font.sfntly.table.variations.AxisVariationsTable;
+import com.google.typography.font.sfntly.table.variations.FontVariationsTable;
+import com.google.typography.font.sfntly.table.variations.GlyphVariationsTable;
+import com.google.typography.font.sfntly.table.variations.HorizontalMetricsVariationsTable;
+import com.google.typography.font.sfntly.table.variations.MetricsVariationsTable;
 
 
 /**
@@ -206,8 +220,8 @@ public class Table extends FontDataTable {
         return LocaTable.Builder.createBuilder(header, tableData);
       } else if (tag == Tag.prep) {
         return ControlProgramTable.Builder.createBuilder(header, tableData);
-        // } else if (tag == CFF) {
-        // break;
+      } else if (tag == Tag.CFF) {
+        return CffTable.Builder.createBuilder(header, tableData);
         // } else if (tag == VORG) {
         // break;
       } else if (tag == Tag.EBDT) {
@@ -216,12 +230,20 @@ public class Table extends FontDataTable {
         return EblcTable.Builder.createBuilder(header, tableData);
       } else if (tag == Tag.EBSC) {
         return EbscTable.Builder.createBuilder(header, tableData);
+      } else if (tag == Tag.CBDT) {
+        return EbdtTable.Builder.createBuilder(header, tableData);
+      } else if (tag == Tag.CBLC) {
+        return EblcTable.Builder.createBuilder(header, tableData);
+      } else if (tag == Tag.COLR) {
+        return ColorTable.Builder.createBuilder(header, tableData);
+      } else if (tag == Tag.CPAL) {
+        return ColorPaletteTable.Builder.createBuilder(header, tableData);
         // } else if (tag == BASE) {
         // break;
-        // } else if (tag == GDEF) {
-        // break;
-        // } else if (tag == GPOS) {
-        // break;
+      } else if (tag == Tag.GDEF) {
+        return GDefTable.Builder.createBuilder(header, tableData);
+      } else if (tag == Tag.GPOS) {
+        return GPosTable.Builder.createBuilder(header, tableData);
       } else if (tag == Tag.GSUB) {
         return GSubTable.Builder.createBuilder(header, tableData);
         // break;
@@ -233,19 +255,28 @@ public class Table extends FontDataTable {
         // break;
       } else if (tag == Tag.hdmx) {
         return HorizontalDeviceMetricsTable.Builder.createBuilder(header, tableData);
-        // break;
-        // } else if (tag == kern) {
-        // break;
-        // } else if (tag == LTSH) {
-        // break;
+      } else if (tag == Tag.kern) {
+        return KerningTable.Builder.createBuilder(header, tableData);
+      } else if (tag == Tag.LTSH) {
+        return LinearThresholdTable.Builder.createBuilder(header, tableData);
         // } else if (tag == PCLT) {
         // break;
         // } else if (tag == VDMX) {
         // break;
-        // } else if (tag == vhea) {
-        // break;
-        // } else if (tag == vmtx) {
-        // break;
+      } else if (tag == Tag.vhea) {
+        return VerticalHeaderTable.Builder.createBuilder(header, tableData);
+      } else if (tag == Tag.vmtx) {
+        return VerticalMetricsTable.Builder.createBuilder(header, tableData);
+      } else if (tag == Tag.fvar) {
+        return FontVariationsTable.Builder.createBuilder(header, tableData);
+      } else if (tag == Tag.avar) {
+        return AxisVariationsTable.Builder.createBuilder(header, tableData);
+      } else if (tag == Tag.gvar) {
+        return GlyphVariationsTable.Builder.createBuilder(header, tableData);
+      } else if (tag == Tag.HVAR) {
+        return HorizontalMetricsVariationsTable.Builder.createBuilder(header, tableData);
+      } else if (tag == Tag.MVAR) {
+        return MetricsVariationsTable.Builder.createBuilder(header, tableData);
       } else if (tag == Tag.bhed) {
         return FontHeaderTable.Builder.createBuilder(header, tableData);
       } else if (tag == Tag.bdat) {
@@ -61,6 +61,18 @@ public abstract class BitmapGlyph extends SubTable {
     int glyphFormat9_numComponents = bigGlyphMetricsLength;
     int glyphFormat9_componentArray = glyphFormat9_numComponents + FontData.SizeOf.USHORT;
 
+    // format 17
+    int glyphFormat17_dataLength = smallGlyphMetricsLength;
+    int glyphFormat17_imageData = glyphFormat17_dataLength + FontData.SizeOf.ULONG;
+
+    // format 18
+    int glyphFormat18_dataLength = bigGlyphMetricsLength;
+    int glyphFormat18_imageData = glyphFormat18_dataLength + FontData.SizeOf.ULONG;
+
+    // format 19
+    int glyphFormat19_dataLength = 0;
+    int glyphFormat19_imageData = glyphFormat19_dataLength + FontData.SizeOf.ULONG;
+
 
     // ebdtComponent
     int ebdtComponentLength = FontData.SizeOf.USHORT + 2 * FontData.SizeOf.CHAR;
@@ -112,6 +124,10 @@ public abstract class BitmapGlyph extends SubTable {
         case 8:
         case 9:
           return new CompositeBitmapGlyph.Builder(data, format);
+        case 17:
+        case 18:
+        case 19:
+          return new PngBitmapGlyph.Builder(data, format);
       }
       return null;
     }
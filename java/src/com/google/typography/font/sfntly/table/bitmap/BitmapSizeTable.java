@@ -23,6 +23,7 @@ import com.google.typography.font.sfntly.math.FontMath;
 import com.google.typography.font.sfntly.table.SubTable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -37,6 +38,9 @@ public final class BitmapSizeTable extends SubTable {
   private final Object indexSubTablesLock = new Object();
   private volatile List<IndexSubTable> indexSubTables = null;
 
+  private final Object glyphIndexLock = new Object();
+  private volatile GlyphIndex glyphIndex = null;
+
   interface Offset {
     int indexSubTableArrayOffset = 0;
     int indexTableSize = 4;
@@ -117,75 +121,121 @@ public final class BitmapSizeTable extends SubTable {
   }
 
   public BitmapGlyphInfo glyphInfo(int glyphId) {
-    IndexSubTable subTable = searchIndexSubTables(glyphId);
-    if (subTable == null) {
+    GlyphIndex index = this.getGlyphIndex();
+    int i = index.indexOf(glyphId);
+    if (i < 0 || index.startOffsets[i] == -1) {
       return null;
     }
-    return subTable.glyphInfo(glyphId);
+    IndexSubTable subTable = this.indexSubTable(index.subTables[i]);
+    return new BitmapGlyphInfo(glyphId, subTable.imageDataOffset(), index.startOffsets[i],
+        index.lengths[i], subTable.imageFormat());
   }
 
   public int glyphOffset(int glyphId) {
-    IndexSubTable subTable = searchIndexSubTables(glyphId);
-    if (subTable == null) {
+    GlyphIndex index = this.getGlyphIndex();
+    int i = index.indexOf(glyphId);
+    if (i < 0 || index.startOffsets[i] == -1) {
       return -1;
     }
-    return subTable.glyphOffset(glyphId);
+    return this.indexSubTable(index.subTables[i]).imageDataOffset() + index.startOffsets[i];
   }
 
   public int glyphLength(int glyphId) {
-    IndexSubTable subTable = searchIndexSubTables(glyphId);
-    if (subTable == null) {
+    GlyphIndex index = this.getGlyphIndex();
+    int i = index.indexOf(glyphId);
+    if (i < 0) {
       return -1;
     }
-    return subTable.glyphLength(glyphId);
+    return index.lengths[i];
   }
 
   public int glyphFormat(int glyphId) {
-    IndexSubTable subTable = searchIndexSubTables(glyphId);
+    IndexSubTable subTable = this.glyphIndexSubTable(glyphId);
     if (subTable == null) {
       return -1;
     }
     return subTable.imageFormat();
   }
 
-  private IndexSubTable searchIndexSubTables(int glyphId) {
-    // would be faster to binary search but too many size tables don't have
-    // sorted subtables
-    if (USE_BINARY_SEARCH) {
-      return binarySearchIndexSubTables(glyphId);
+  /**
+   * Gets the index subtable that covers the glyph.
+   *
+   * @param glyphId the glyph id
+   * @return the index subtable, or null if no index subtable covers the glyph
+   */
+  public IndexSubTable glyphIndexSubTable(int glyphId) {
+    GlyphIndex index = this.getGlyphIndex();
+    int i = index.indexOf(glyphId);
+    if (i < 0) {
+      return null;
     }
-    return linearSearchIndexSubTables(glyphId);
+    return this.indexSubTable(index.subTables[i]);
   }
 
-  private IndexSubTable linearSearchIndexSubTables(int glyphId) {
-    for (IndexSubTable subTable : this.getIndexSubTableList()) {
-      if (subTable.firstGlyphIndex() <= glyphId && subTable.lastGlyphIndex() >= glyphId) {
-        return subTable;
+  /**
+   * A direct index from glyph id to glyph location, over the range of glyph
+   * ids covered by the index subtables. Without it every lookup would be a
+   * linear search over the subtables, since many fonts don't have them sorted,
+   * followed by a search within subtables of formats 4 and 5.
+   */
+  private static final class GlyphIndex {
+    private final int firstGlyphId;
+    // the index of the subtable covering each glyph, -1 for none
+    private final int[] subTables;
+    // glyph offsets relative to the image data of the subtable
+    private final int[] startOffsets;
+    private final int[] lengths;
+
+    private GlyphIndex(List<IndexSubTable> indexSubTables) {
+      int first = Integer.MAX_VALUE;
+      int last = -1;
+      for (IndexSubTable subTable : indexSubTables) {
+        first = Math.min(first, subTable.firstGlyphIndex());
+        last = Math.max(last, subTable.lastGlyphIndex());
+      }
+      int size = Math.max(0, last - first + 1);
+      this.firstGlyphId = first;
+      this.subTables = new int[size];
+      this.startOffsets = new int[size];
+      this.lengths = new int[size];
+      Arrays.fill(this.subTables, -1);
+      for (int s = 0; s < indexSubTables.size(); s++) {
+        IndexSubTable subTable = indexSubTables.get(s);
+        for (int glyphId = subTable.firstGlyphIndex(); glyphId <= subTable.lastGlyphIndex();
+            glyphId++) {
+          int i = glyphId - first;
+          // as with a search, the first subtable covering a glyph wins
+          if (this.subTables[i] == -1) {
+            this.subTables[i] = s;
+            this.startOffsets[i] = subTable.glyphStartOffset(glyphId);
+            this.lengths[i] = subTable.glyphLength(glyphId);
+          }
+        }
       }
     }
-    return null;
+
+    /**
+     * @return the position of the glyph in the arrays, or -1 if no subtable
+     *         covers it
+     */
+    private int indexOf(int glyphId) {
+      int i = glyphId - this.firstGlyphId;
+      if (i < 0 || i >= this.subTables.length || this.subTables[i] == -1) {
+        return -1;
+      }
+      return i;
+    }
   }
 
-  private IndexSubTable binarySearchIndexSubTables(int glyphId) {
-    List<IndexSubTable> subTableList = getIndexSubTableList();
-    int index = 0;
-    int bottom = 0;
-    int top = subTableList.size();
-    while (top != bottom) {
-      index = (top + bottom) / 2;
-      IndexSubTable subTable = subTableList.get(index);
-      if (glyphId < subTable.firstGlyphIndex()) {
-        // location below current location
-        top = index;
-      } else {
-        if (glyphId <= subTable.lastGlyphIndex()) {
-          return subTable;
+  private GlyphIndex getGlyphIndex() {
+    if (this.glyphIndex == null) {
+      synchronized (this.glyphIndexLock) {
+        if (this.glyphIndex == null) {
+          this.glyphIndex = new GlyphIndex(this.getIndexSubTableList());
         }
-        // location is above the current location
-        bottom = index + 1;
       }
     }
-    return null;
+    return this.glyphIndex;
   }
 
   private IndexSubTable createIndexSubTable(int index) {
@@ -60,8 +60,7 @@ public final class IndexSubTableFormat1 extends IndexSubTable {
   }
 
   private int loca(int loca) {
-    return this.imageDataOffset() + this.data.readULongAsInt(
-        Offset.offsetArray + loca * FontData.SizeOf.ULONG);
+    return this.data.readULongAsInt(Offset.offsetArray + loca * FontData.SizeOf.ULONG);
   }
 
   public static final class Builder extends IndexSubTable.Builder<IndexSubTableFormat1> {
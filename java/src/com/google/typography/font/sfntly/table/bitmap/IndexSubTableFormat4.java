@@ -155,7 +155,7 @@ public final class IndexSubTableFormat4 extends IndexSubTable {
     private static int dataLength(
         ReadableFontData data, int indexSubTableOffset, int firstGlyphIndex, int lastGlyphIndex) {
       int numGlyphs = IndexSubTableFormat4.numGlyphs(data, indexSubTableOffset);
-      return Offset.glyphArray + numGlyphs * PairOffset.SIZE;
+      return Offset.glyphArray + (numGlyphs + 1) * PairOffset.SIZE;
     }
 
     private Builder() {
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.table.bitmap;
+
+import com.google.typography.font.sfntly.data.FontData;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+
+/**
+ * A color bitmap glyph of the CBDT table holding PNG image data: format 17
+ * with small metrics, format 18 with big metrics, or format 19 with its
+ * metrics in the CBLC table.
+ */
+public final class PngBitmapGlyph extends BitmapGlyph {
+
+  protected PngBitmapGlyph(ReadableFontData data, int format) {
+    super(data, format);
+  }
+
+  private int dataLengthOffset() {
+    switch (this.format()) {
+      case 17:
+        return Offset.glyphFormat17_dataLength;
+      case 18:
+        return Offset.glyphFormat18_dataLength;
+      default:
+        return Offset.glyphFormat19_dataLength;
+    }
+  }
+
+  /**
+   * @return the length of the PNG image data
+   */
+  public int imageDataLength() {
+    return this.data.readULongAsInt(this.dataLengthOffset());
+  }
+
+  /**
+   * @return the PNG image data
+   */
+  public ReadableFontData imageData() {
+    return this.data.slice(this.dataLengthOffset() + FontData.SizeOf.ULONG, this.imageDataLength());
+  }
+
+  public static class Builder extends BitmapGlyph.Builder<BitmapGlyph> {
+
+    protected Builder(WritableFontData data, int format) {
+      super(data, format);
+    }
+
+    protected Builder(ReadableFontData data, int format) {
+      super(data, format);
+    }
+
+    @Override
+    protected PngBitmapGlyph subBuildTable(ReadableFontData data) {
+      return new PngBitmapGlyph(data, this.format());
+    }
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.table.cff;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A CFF DICT: a sequence of operand lists each followed by an operator. The
+ * DICT is parsed when it is created; the raw bytes of each entry remain
+ * available so that entries can be copied unchanged.
+ *
+ * Two byte operators (escape 12 followed by a second byte) are represented as
+ * {@code 0x0c00 | b1}.
+ *
+ * @see "Adobe Technical Note #5176, The Compact Font Format Specification"
+ */
+public final class CffDict {
+
+  private static final int ESCAPE = 12;
+  private static final int MAX_OPERATOR = 21;
+
+  /**
+   * Operators of the Top DICT, Font DICTs and Private DICTs used by sfntly.
+   * Names follow the CFF specification.
+   */
+  public interface Operator {
+    // Top DICT
+    int charset = 15;
+    int Encoding = 16;
+    int CharStrings = 17;
+    int Private = 18;
+    int CharstringType = 0x0c06;
+    int ROS = 0x0c1e;
+    int CIDCount = 0x0c22;
+    int FDArray = 0x0c24;
+    int FDSelect = 0x0c25;
+
+    // Private DICT
+    int Subrs = 19;
+    int defaultWidthX = 20;
+    int nominalWidthX = 21;
+  }
+
+  private final ReadableFontData data;
+  private final List<Integer> operators = new ArrayList<Integer>();
+  private final Map<Integer, double[]> operands = new HashMap<Integer, double[]>();
+  // the start and length of the bytes of each entry
+  private final Map<Integer, int[]> entries = new HashMap<Integer, int[]>();
+
+  /**
+   * Constructor.
+   *
+   * @param data the data holding exactly the DICT
+   */
+  public CffDict(ReadableFontData data) {
+    this.data = data;
+    parse();
+  }
+
+  private void parse() {
+    List<Double> values = new ArrayList<Double>();
+    int entryStart = 0;
+    int index = 0;
+    while (index < this.data.length()) {
+      int b0 = this.data.readUByte(index);
+      if (b0 <= MAX_OPERATOR) {
+        int operator = b0;
+        index++;
+        if (b0 == ESCAPE) {
+          operator = (ESCAPE << 8) | this.data.readUByte(index++);
+        }
+        double[] operandArray = new double[values.size()];
+        for (int i = 0; i < operandArray.length; i++) {
+          operandArray[i] = values.get(i);
+        }
+        if (!this.entries.containsKey(operator)) {
+          this.operators.add(operator);
+        }
+        this.operands.put(operator, operandArray);
+        this.entries.put(operator, new int[] {entryStart, index - entryStart});
+        values.clear();
+        entryStart = index;
+      } else if (b0 == 30) {
+        index = readReal(index + 1, values);
+      } else {
+        index += readInteger(this.data, index, values);
+      }
+    }
+  }
+
+  /**
+   * Reads an integer operand of a DICT.
+   *
+   * @return the number of bytes read
+   */
+  private static int readInteger(ReadableFontData data, int index, List<Double> values) {
+    int b0 = data.readUByte(index);
+    if (b0 >= 32 && b0 <= 246) {
+      values.add((double) (b0 - 139));
+      return 1;
+    } else if (b0 >= 247 && b0 <= 250) {
+      values.add((double) ((b0 - 247) * 256 + data.readUByte(index + 1) + 108));
+      return 2;
+    } else if (b0 >= 251 && b0 <= 254) {
+      values.add((double) (-(b0 - 251) * 256 - data.readUByte(index + 1) - 108));
+      return 2;
+    } else if (b0 == 28) {
+      values.add((double) data.readShort(index + 1));
+      return 3;
+    } else if (b0 == 29) {
+      values.add((double) data.readLong(index + 1));
+      return 5;
+    }
+    throw new IllegalArgumentException("Invalid CFF DICT operand byte " + b0);
+  }
+
+  /**
+   * Reads a real number operand encoded as nibbles.
+   *
+   * @return the index after the real number
+   */
+  private int readReal(int index, List<Double> values) {
+    StringBuilder sb = new StringBuilder();
+    boolean done = false;
+    while (!done) {
+      int b = this.data.readUByte(index++);
+      for (int nibble : new int[] {b >> 4, b & 0xf}) {
+        if (nibble <= 9) {
+          sb.append((char) ('0' + nibble));
+        } else if (nibble == 0xa) {
+          sb.append('.');
+        } else if (nibble == 0xb) {
+          sb.append('E');
+        } else if (nibble == 0xc) {
+          sb.append("E-");
+        } else if (nibble == 0xe) {
+          sb.append('-');
+        } else if (nibble == 0xf) {
+          done = true;
+          break;
+        }
+      }
+    }
+    values.add(sb.length() == 0 ? 0.0 : Double.parseDouble(sb.toString()));
+    return index;
+  }
+
+  /**
+   * @return the operators of the DICT in the order they first appear
+   */
+  public List<Integer> operators() {
+    return Collections.unmodifiableList(this.operators);
+  }
+
+  public boolean has(int operator) {
+    return this.entries.containsKey(operator);
+  }
+
+  /**
+   * @return the operands of the operator, or null if it is not in the DICT
+   */
+  public double[] operands(int operator) {
+    double[] values = this.operands.get(operator);
+    return values == null ? null : values.clone();
+  }
+
+  /**
+   * Gets the first operand of an operator as an integer.
+   *
+   * @param operator the operator
+   * @param defaultValue the value if the operator is not in the DICT
+   * @return the operand value
+   */
+  public int intValue(int operator, int defaultValue) {
+    return intValue(operator, 0, defaultValue);
+  }
+
+  /**
+   * Gets an operand of an operator as an integer.
+   *
+   * @param operator the operator
+   * @param index the index of the operand
+   * @param defaultValue the value if the operator is not in the DICT
+   * @return the operand value
+   */
+  public int intValue(int operator, int index, int defaultValue) {
+    double[] values = this.operands.get(operator);
+    if (values == null || index >= values.length) {
+      return defaultValue;
+    }
+    return (int) values[index];
+  }
+
+  /**
+   * Gets the raw bytes of an entry: its operands followed by its operator.
+   *
+   * @param operator the operator
+   * @return the entry data, or null if the operator is not in the DICT
+   */
+  public ReadableFontData entryData(int operator) {
+    int[] entry = this.entries.get(operator);
+    if (entry == null) {
+      return null;
+    }
+    return this.data.slice(entry[0], entry[1]);
+  }
+
+  public ReadableFontData readFontData() {
+    return this.data;
+  }
+}
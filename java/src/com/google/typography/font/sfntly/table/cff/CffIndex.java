@@ -0,0 +1,126 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.table.cff;
+
+import com.google.typography.font.sfntly.data.FontData;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.SubTable;
+
+/**
+ * A CFF INDEX: a counted array of variable length objects. The items are
+ * located through the offset array only when they are accessed.
+ *
+ * @see "Adobe Technical Note #5176, The Compact Font Format Specification"
+ */
+public final class CffIndex extends SubTable {
+
+  private interface Offset {
+    int count = 0;
+    int offSize = 2;
+    int offsetArray = 3;
+  }
+
+  private final int count;
+  private final int offSize;
+
+  /**
+   * Constructor.
+   *
+   * @param data the data containing the INDEX
+   * @param offset the offset of the INDEX in the data
+   */
+  public CffIndex(ReadableFontData data, int offset) {
+    super(data, offset, indexLength(data, offset));
+    this.count = this.data.readUShort(Offset.count);
+    this.offSize = this.count == 0 ? 0 : this.data.readUByte(Offset.offSize);
+  }
+
+  /**
+   * Computes the length in bytes of the INDEX at the given offset.
+   *
+   * @param data the data containing the INDEX
+   * @param offset the offset of the INDEX in the data
+   * @return the length of the INDEX
+   */
+  public static int indexLength(ReadableFontData data, int offset) {
+    int count = data.readUShort(offset + Offset.count);
+    if (count == 0) {
+      return FontData.SizeOf.USHORT;
+    }
+    int offSize = data.readUByte(offset + Offset.offSize);
+    int dataStart = Offset.offsetArray + (count + 1) * offSize - 1;
+    return dataStart + readOffset(data, offset + Offset.offsetArray + count * offSize, offSize);
+  }
+
+  private static int readOffset(ReadableFontData data, int index, int offSize) {
+    switch (offSize) {
+      case 1:
+        return data.readUByte(index);
+      case 2:
+        return data.readUShort(index);
+      case 3:
+        return data.readUInt24(index);
+      case 4:
+        return data.readULongAsInt(index);
+      default:
+        throw new IllegalArgumentException("CFF offset size " + offSize + " unexpected");
+    }
+  }
+
+  public int count() {
+    return this.count;
+  }
+
+  public int offSize() {
+    return this.offSize;
+  }
+
+  /**
+   * @return the offset of the first item relative to the start of the INDEX
+   */
+  private int dataStart() {
+    return Offset.offsetArray + (this.count + 1) * this.offSize - 1;
+  }
+
+  /**
+   * Gets the offset of an item relative to the start of the INDEX.
+   *
+   * @param index the item index
+   * @return the offset of the item
+   */
+  public int itemOffset(int index) {
+    if (index < 0 || index >= this.count) {
+      throw new IndexOutOfBoundsException("CFF INDEX item " + index + " out of bounds.");
+    }
+    return dataStart()
+        + readOffset(this.data, Offset.offsetArray + index * this.offSize, this.offSize);
+  }
+
+  public int itemLength(int index) {
+    int start = readOffset(this.data, Offset.offsetArray + index * this.offSize, this.offSize);
+    int end = readOffset(this.data, Offset.offsetArray + (index + 1) * this.offSize, this.offSize);
+    return end - start;
+  }
+
+  /**
+   * @param index the item index
+   * @return the data of the item
+   */
+  public ReadableFontData item(int index) {
+    return this.data.slice(itemOffset(index), itemLength(index));
+  }
+}
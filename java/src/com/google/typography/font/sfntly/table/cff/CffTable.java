@@ -0,0 +1,358 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.table.cff;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Header;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.TableBasedTableBuilder;
+import com.google.typography.font.sfntly.table.cff.CffDict.Operator;
+
+/**
+ * The 'CFF ' table holds the PostScript outlines of an OpenType font as a
+ * Compact Font Format FontSet. Only the first font of the FontSet is exposed,
+ * which is the only one an OpenType font may contain.
+ *
+ * The INDEXes and DICTs are located and parsed when they are accessed.
+ *
+ * @see "Adobe Technical Note #5176, The Compact Font Format Specification"
+ * @see "ISO/IEC 14496-22:2015, section 5.4.1"
+ */
+public class CffTable extends Table {
+
+  /**
+   * Charset offsets with a predefined meaning.
+   */
+  public interface PredefinedCharset {
+    int ISOAdobe = 0;
+    int Expert = 1;
+    int ExpertSubset = 2;
+  }
+
+  private interface Offset {
+    int major = 0;
+    int minor = 1;
+    int hdrSize = 2;
+    int offSize = 3;
+  }
+
+  private static final int[] STANDARD_ENCODING = createStandardEncoding();
+
+  private static int[] createStandardEncoding() {
+    int[] sids = new int[256];
+    for (int code = 32; code <= 126; code++) {
+      sids[code] = code - 31;
+    }
+    // the codes of SIDs 96 (exclamdown) to 149 (germandbls)
+    int[] codes = {161, 162, 163, 164, 165, 166, 167, 168, 169, 170, 171, 172, 173, 174, 175,
+        177, 178, 179, 180, 182, 183, 184, 185, 186, 187, 188, 189, 191, 193, 194, 195, 196,
+        197, 198, 199, 200, 202, 203, 205, 206, 207, 208, 225, 227, 232, 233, 234, 235, 241,
+        245, 248, 249, 250, 251};
+    for (int i = 0; i < codes.length; i++) {
+      sids[codes[i]] = 96 + i;
+    }
+    return sids;
+  }
+
+  private CffTable(Header header, ReadableFontData data) {
+    super(header, data);
+  }
+
+  public int majorVersion() {
+    return this.data.readUByte(Offset.major);
+  }
+
+  public int minorVersion() {
+    return this.data.readUByte(Offset.minor);
+  }
+
+  public int headerSize() {
+    return this.data.readUByte(Offset.hdrSize);
+  }
+
+  public int offSize() {
+    return this.data.readUByte(Offset.offSize);
+  }
+
+  private int nameIndexOffset() {
+    return headerSize();
+  }
+
+  private int topDictIndexOffset() {
+    int offset = nameIndexOffset();
+    return offset + CffIndex.indexLength(this.data, offset);
+  }
+
+  private int stringIndexOffset() {
+    int offset = topDictIndexOffset();
+    return offset + CffIndex.indexLength(this.data, offset);
+  }
+
+  private int globalSubrIndexOffset() {
+    int offset = stringIndexOffset();
+    return offset + CffIndex.indexLength(this.data, offset);
+  }
+
+  public CffIndex nameIndex() {
+    return new CffIndex(this.data, nameIndexOffset());
+  }
+
+  public CffIndex topDictIndex() {
+    return new CffIndex(this.data, topDictIndexOffset());
+  }
+
+  public CffIndex stringIndex() {
+    return new CffIndex(this.data, stringIndexOffset());
+  }
+
+  public CffIndex globalSubrIndex() {
+    return new CffIndex(this.data, globalSubrIndexOffset());
+  }
+
+  /**
+   * @return the Top DICT of the first font
+   */
+  public CffDict topDict() {
+    return new CffDict(topDictIndex().item(0));
+  }
+
+  /**
+   * @return true if the font is CID-keyed, i.e. its Top DICT starts with ROS
+   */
+  public boolean isCidKeyed() {
+    return topDict().has(Operator.ROS);
+  }
+
+  public CffIndex charStrings() {
+    return new CffIndex(this.data, topDict().intValue(Operator.CharStrings, 0));
+  }
+
+  public int numGlyphs() {
+    return charStrings().count();
+  }
+
+  public int charsetOffset() {
+    return topDict().intValue(Operator.charset, PredefinedCharset.ISOAdobe);
+  }
+
+  /**
+   * Gets the charset of the font: the SID of each glyph, or for CID-keyed fonts
+   * its CID. Glyph 0 is always mapped to 0.
+   *
+   * @return an array indexed by glyph id
+   * @throws UnsupportedOperationException if the font uses one of the
+   *         predefined expert charsets
+   */
+  public int[] charset() {
+    int numGlyphs = numGlyphs();
+    int[] ids = new int[numGlyphs];
+    int offset = charsetOffset();
+    if (offset == PredefinedCharset.ISOAdobe) {
+      for (int glyph = 0; glyph < numGlyphs; glyph++) {
+        ids[glyph] = glyph;
+      }
+      return ids;
+    } else if (offset == PredefinedCharset.Expert
+        || offset == PredefinedCharset.ExpertSubset) {
+      throw new UnsupportedOperationException("Predefined expert charsets are not supported.");
+    }
+    int format = this.data.readUByte(offset);
+    int index = offset + 1;
+    if (format == 0) {
+      for (int glyph = 1; glyph < numGlyphs; glyph++) {
+        ids[glyph] = this.data.readUShort(index);
+        index += 2;
+      }
+    } else if (format == 1 || format == 2) {
+      int glyph = 1;
+      while (glyph < numGlyphs) {
+        int first = this.data.readUShort(index);
+        int nLeft = format == 1
+            ? this.data.readUByte(index + 2) : this.data.readUShort(index + 2);
+        index += format == 1 ? 3 : 4;
+        for (int i = 0; i <= nLeft && glyph < numGlyphs; i++) {
+          ids[glyph++] = first + i;
+        }
+      }
+    } else {
+      throw new IllegalArgumentException("Charset format " + format + " unexpected");
+    }
+    return ids;
+  }
+
+  /**
+   * @return the Font DICT INDEX of a CID-keyed font, or null
+   */
+  public CffIndex fdArray() {
+    CffDict topDict = topDict();
+    if (!topDict.has(Operator.FDArray)) {
+      return null;
+    }
+    return new CffIndex(this.data, topDict.intValue(Operator.FDArray, 0));
+  }
+
+  /**
+   * Gets the number of Private DICTs: the number of Font DICTs of a CID-keyed
+   * font, and 1 otherwise.
+   */
+  public int fontDictCount() {
+    CffIndex fdArray = fdArray();
+    return fdArray == null ? 1 : fdArray.count();
+  }
+
+  /**
+   * Gets the DICT holding the Private DICT reference of a font DICT: the Font
+   * DICT for CID-keyed fonts, or the Top DICT.
+   */
+  public CffDict fontDict(int fd) {
+    CffIndex fdArray = fdArray();
+    if (fdArray == null) {
+      return topDict();
+    }
+    return new CffDict(fdArray.item(fd));
+  }
+
+  /**
+   * Gets the index of the Font DICT of each glyph.
+   *
+   * @return an array indexed by glyph id; all zero for fonts that are not
+   *         CID-keyed
+   */
+  public int[] fdSelect() {
+    int numGlyphs = numGlyphs();
+    int[] fds = new int[numGlyphs];
+    CffDict topDict = topDict();
+    if (!topDict.has(Operator.FDSelect)) {
+      return fds;
+    }
+    int offset = topDict.intValue(Operator.FDSelect, 0);
+    int format = this.data.readUByte(offset);
+    if (format == 0) {
+      for (int glyph = 0; glyph < numGlyphs; glyph++) {
+        fds[glyph] = this.data.readUByte(offset + 1 + glyph);
+      }
+    } else if (format == 3) {
+      int nRanges = this.data.readUShort(offset + 1);
+      for (int i = 0; i < nRanges; i++) {
+        int range = offset + 3 + 3 * i;
+        int first = this.data.readUShort(range);
+        int fd = this.data.readUByte(range + 2);
+        int next = this.data.readUShort(range + 3);
+        for (int glyph = first; glyph < next && glyph < numGlyphs; glyph++) {
+          fds[glyph] = fd;
+        }
+      }
+    } else {
+      throw new IllegalArgumentException("FDSelect format " + format + " unexpected");
+    }
+    return fds;
+  }
+
+  /**
+   * @return the Private DICT of a font DICT, or null if it has none
+   */
+  public CffDict privateDict(int fd) {
+    CffDict fontDict = fontDict(fd);
+    if (!fontDict.has(Operator.Private)) {
+      return null;
+    }
+    int size = fontDict.intValue(Operator.Private, 0, 0);
+    int offset = fontDict.intValue(Operator.Private, 1, 0);
+    return new CffDict(this.data.slice(offset, size));
+  }
+
+  /**
+   * @return the local subroutines of a font DICT, or null if it has none
+   */
+  public CffIndex localSubrIndex(int fd) {
+    CffDict fontDict = fontDict(fd);
+    if (!fontDict.has(Operator.Private)) {
+      return null;
+    }
+    int privateOffset = fontDict.intValue(Operator.Private, 1, 0);
+    int size = fontDict.intValue(Operator.Private, 0, 0);
+    CffDict privateDict = new CffDict(this.data.slice(privateOffset, size));
+    if (!privateDict.has(Operator.Subrs)) {
+      return null;
+    }
+    // the Subrs offset is relative to the start of the Private DICT
+    return new CffIndex(this.data, privateOffset + privateDict.intValue(Operator.Subrs, 0));
+  }
+
+  /**
+   * Gets the glyph name of a code in the predefined StandardEncoding, which
+   * gives the base and accent characters of accented characters.
+   *
+   * @param code the code
+   * @return the SID of the glyph name, or 0 (.notdef) if the code is not
+   *         encoded
+   * @see "Adobe Technical Note #5176, Appendix B"
+   */
+  public static int standardEncodingSid(int code) {
+    if (code < 0 || code >= STANDARD_ENCODING.length) {
+      return 0;
+    }
+    return STANDARD_ENCODING[code];
+  }
+
+  /**
+   * Computes the bias added to subroutine numbers in charstrings for a
+   * subroutine INDEX with the given number of subroutines.
+   *
+   * @param count the number of subroutines
+   * @return the bias
+   */
+  public static int subrBias(int count) {
+    if (count < 1240) {
+      return 107;
+    } else if (count < 33900) {
+      return 1131;
+    }
+    return 32768;
+  }
+
+  /**
+   * Builder for a CFF table.
+   */
+  public static class Builder extends TableBasedTableBuilder<CffTable> {
+
+    /**
+     * Create a new builder using the header information and data provided.
+     *
+     * @param header the header information
+     * @param data the data holding the table
+     * @return a new builder
+     */
+    public static Builder createBuilder(Header header, WritableFontData data) {
+      return new Builder(header, data);
+    }
+
+    protected Builder(Header header, WritableFontData data) {
+      super(header, data);
+    }
+
+    protected Builder(Header header, ReadableFontData data) {
+      super(header, data);
+    }
+
+    @Override
+    protected CffTable subBuildTable(ReadableFontData data) {
+      return new CffTable(this.header(), data);
+    }
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.table.color;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Header;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.TableBasedTableBuilder;
+
+/**
+ * A Color Palette table - 'CPAL'.
+ *
+ * Each palette is a run of numPaletteEntries colors in the shared color
+ * record array, starting at its color record index. Colors are returned as
+ * packed BGRA values, in the order they are stored.
+ *
+ * @see "https://learn.microsoft.com/typography/opentype/spec/cpal"
+ */
+public final class ColorPaletteTable extends Table {
+
+  /**
+   * The name id of a missing label.
+   */
+  public static final int NO_LABEL = 0xffff;
+
+  private interface Offset {
+    int version = 0;
+    int numPaletteEntries = 2;
+    int numPalettes = 4;
+    int numColorRecords = 6;
+    int colorRecordsArrayOffset = 8;
+    int colorRecordIndices = 12;
+
+    int COLOR_RECORD_SIZE = 4;
+  }
+
+  private ColorPaletteTable(Header header, ReadableFontData data) {
+    super(header, data);
+  }
+
+  public int version() {
+    return this.data.readUShort(Offset.version);
+  }
+
+  public int numPaletteEntries() {
+    return this.data.readUShort(Offset.numPaletteEntries);
+  }
+
+  public int numPalettes() {
+    return this.data.readUShort(Offset.numPalettes);
+  }
+
+  public int numColorRecords() {
+    return this.data.readUShort(Offset.numColorRecords);
+  }
+
+  public int colorRecordIndex(int palette) {
+    return this.data.readUShort(Offset.colorRecordIndices + 2 * palette);
+  }
+
+  /**
+   * @param palette the palette
+   * @param entry the entry in the palette
+   * @return the color as a 32-bit value with bytes blue, green, red and alpha
+   */
+  public int color(int palette, int entry) {
+    return (int) this.data.readULong(this.data.readULongAsInt(Offset.colorRecordsArrayOffset)
+        + (colorRecordIndex(palette) + entry) * Offset.COLOR_RECORD_SIZE);
+  }
+
+  private int versionOneOffset(int index) {
+    if (version() < 1) {
+      return 0;
+    }
+    return this.data.readULongAsInt(Offset.colorRecordIndices + 2 * numPalettes() + 4 * index);
+  }
+
+  /**
+   * @return the offset of the palette types array, 0 if there is none
+   */
+  public int paletteTypesArrayOffset() {
+    return versionOneOffset(0);
+  }
+
+  /**
+   * @return the offset of the palette labels array, 0 if there is none
+   */
+  public int paletteLabelsArrayOffset() {
+    return versionOneOffset(1);
+  }
+
+  /**
+   * @return the offset of the palette entry labels array, 0 if there is none
+   */
+  public int paletteEntryLabelsArrayOffset() {
+    return versionOneOffset(2);
+  }
+
+  /**
+   * @return the flags of the palette, 0 if the table has no palette types
+   */
+  public int paletteType(int palette) {
+    int offset = paletteTypesArrayOffset();
+    return offset == 0 ? 0 : this.data.readULongAsInt(offset + 4 * palette);
+  }
+
+  /**
+   * @return the name id of the label of the palette, {@link #NO_LABEL} if it
+   *         has none
+   */
+  public int paletteLabel(int palette) {
+    int offset = paletteLabelsArrayOffset();
+    return offset == 0 ? NO_LABEL : this.data.readUShort(offset + 2 * palette);
+  }
+
+  /**
+   * @return the name id of the label of the palette entry, {@link #NO_LABEL}
+   *         if it has none
+   */
+  public int paletteEntryLabel(int entry) {
+    int offset = paletteEntryLabelsArrayOffset();
+    return offset == 0 ? NO_LABEL : this.data.readUShort(offset + 2 * entry);
+  }
+
+  public static class Builder extends TableBasedTableBuilder<ColorPaletteTable> {
+
+    /**
+     * Create a new builder using the header information and data provided.
+     *
+     * @param header the header information
+     * @param data the data holding the table
+     * @return a new builder
+     */
+    public static Builder createBuilder(Header header, WritableFontData data) {
+      return new Builder(header, data);
+    }
+
+    protected Builder(Header header, WritableFontData data) {
+      super(header, data);
+    }
+
+    protected Builder(Header header, ReadableFontData data) {
+      super(header, data);
+    }
+
+    @Override
+    protected ColorPaletteTable subBuildTable(ReadableFontData data) {
+      return new ColorPaletteTable(this.header(), data);
+    }
+  }
+}
@@ -0,0 +1,572 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.table.color;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Header;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.TableBasedTableBuilder;
+import com.google.typography.font.sfntly.table.variations.DeltaSetIndexMap;
+import com.google.typography.font.sfntly.table.variations.ItemVariationStore;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A Color table - 'COLR'.
+ *
+ * Version 0 colors a glyph with a stack of layer glyphs, each filled with a
+ * palette entry. Version 1 adds a graph of paints for each glyph, along with
+ * shared layers, clip boxes and variations. The records of both versions are
+ * sorted by glyph id and looked up by binary search. Offsets returned for the
+ * version 1 structures are from the start of the table.
+ *
+ * @see "https://learn.microsoft.com/typography/opentype/spec/colr"
+ */
+public final class ColorTable extends Table {
+
+  /**
+   * The palette index standing for the text foreground color.
+   */
+  public static final int FOREGROUND_PALETTE_INDEX = 0xffff;
+
+  // paint formats with special handling
+  public static final int PAINT_COLR_LAYERS = 1;
+  public static final int PAINT_SOLID = 2;
+  public static final int PAINT_VAR_SOLID = 3;
+  public static final int PAINT_GLYPH = 10;
+  public static final int PAINT_COLR_GLYPH = 11;
+  public static final int PAINT_TRANSFORM = 12;
+  public static final int PAINT_VAR_TRANSFORM = 13;
+  public static final int PAINT_COMPOSITE = 32;
+
+  private interface Offset {
+    // version 0 header
+    int version = 0;
+    int numBaseGlyphRecords = 2;
+    int baseGlyphRecordsOffset = 4;
+    int layerRecordsOffset = 8;
+    int numLayerRecords = 12;
+
+    // version 1 header
+    int baseGlyphListOffset = 14;
+    int layerListOffset = 18;
+    int clipListOffset = 22;
+    int varIndexMapOffset = 26;
+    int itemVariationStoreOffset = 30;
+
+    // base glyph record
+    int baseGlyphGlyphId = 0;
+    int baseGlyphFirstLayerIndex = 2;
+    int baseGlyphNumLayers = 4;
+    int BASE_GLYPH_RECORD_SIZE = 6;
+
+    // layer record
+    int layerGlyphId = 0;
+    int layerPaletteIndex = 2;
+    int LAYER_RECORD_SIZE = 4;
+
+    // base glyph list
+    int baseGlyphPaintRecords = 4;
+    int baseGlyphPaintGlyphId = 0;
+    int baseGlyphPaintOffset = 2;
+    int BASE_GLYPH_PAINT_RECORD_SIZE = 6;
+
+    // layer list
+    int layerPaintOffsets = 4;
+
+    // clip list
+    int numClips = 1;
+    int clips = 5;
+    int clipStartGlyphId = 0;
+    int clipEndGlyphId = 2;
+    int clipBoxOffset = 4;
+    int CLIP_SIZE = 7;
+
+    // paint colr layers
+    int numLayers = 1;
+
+    // color line
+    int numStops = 1;
+    int colorStops = 3;
+    int colorStopPaletteIndex = 2;
+  }
+
+  public static final int CLIP_BOX_SIZE = 9;
+  public static final int VAR_CLIP_BOX_SIZE = 13;
+  public static final int AFFINE_SIZE = 24;
+  public static final int VAR_AFFINE_SIZE = 28;
+  public static final int FIRST_LAYER_INDEX_FIELD = 2;
+  public static final int COLOR_STOP_SIZE = 6;
+  public static final int VAR_COLOR_STOP_SIZE = 10;
+
+  /**
+   * The layout of a paint format: its size and the positions of the fields
+   * that refer to other structures, -1 for fields the format doesn't have.
+   */
+  public static final class PaintFormat {
+    private static final PaintFormat[] FORMATS = new PaintFormat[PAINT_COMPOSITE + 1];
+    private static final int[] NONE = {};
+    private static final int[] CHILD = {1};
+
+    static {
+      FORMATS[PAINT_COLR_LAYERS] = new PaintFormat(6, NONE, -1, -1, -1, -1);
+      FORMATS[PAINT_SOLID] = new PaintFormat(5, NONE, -1, -1, -1, 1);
+      FORMATS[PAINT_VAR_SOLID] = new PaintFormat(9, NONE, -1, -1, -1, 1);
+      // linear, radial and sweep gradients
+      FORMATS[4] = new PaintFormat(16, NONE, 1, -1, -1, -1);
+      FORMATS[5] = new PaintFormat(20, NONE, 1, -1, -1, -1);
+      FORMATS[6] = new PaintFormat(16, NONE, 1, -1, -1, -1);
+      FORMATS[7] = new PaintFormat(20, NONE, 1, -1, -1, -1);
+      FORMATS[8] = new PaintFormat(12, NONE, 1, -1, -1, -1);
+      FORMATS[9] = new PaintFormat(16, NONE, 1, -1, -1, -1);
+      FORMATS[PAINT_GLYPH] = new PaintFormat(6, CHILD, -1, -1, 4, -1);
+      FORMATS[PAINT_COLR_GLYPH] = new PaintFormat(3, NONE, -1, -1, 1, -1);
+      FORMATS[PAINT_TRANSFORM] = new PaintFormat(7, CHILD, -1, 4, -1, -1);
+      FORMATS[PAINT_VAR_TRANSFORM] = new PaintFormat(7, CHILD, -1, 4, -1, -1);
+      // translate, scale, rotate and skew, each followed by its variable form
+      int[] sizes = {8, 8, 12, 6, 10, 6, 10, 8, 12};
+      for (int i = 0; i < sizes.length; i++) {
+        FORMATS[14 + 2 * i] = new PaintFormat(sizes[i], CHILD, -1, -1, -1, -1);
+        FORMATS[15 + 2 * i] = new PaintFormat(sizes[i] + 4, CHILD, -1, -1, -1, -1);
+      }
+      FORMATS[PAINT_COMPOSITE] = new PaintFormat(8, new int[] {1, 5}, -1, -1, -1, -1);
+    }
+
+    private final int size;
+    private final int[] childFields;
+    private final int colorLineField;
+    private final int transformField;
+    private final int glyphIdField;
+    private final int paletteIndexField;
+
+    private PaintFormat(int size, int[] childFields, int colorLineField, int transformField,
+        int glyphIdField, int paletteIndexField) {
+      this.size = size;
+      this.childFields = childFields;
+      this.colorLineField = colorLineField;
+      this.transformField = transformField;
+      this.glyphIdField = glyphIdField;
+      this.paletteIndexField = paletteIndexField;
+    }
+
+    /**
+     * @return the layout of the format, or null for an unknown format
+     */
+    public static PaintFormat forFormat(int format) {
+      if (format < 0 || format >= FORMATS.length) {
+        return null;
+      }
+      return FORMATS[format];
+    }
+
+    public int size() {
+      return this.size;
+    }
+
+    /**
+     * @return the positions of the 24-bit offsets to child paints
+     */
+    public int[] childFields() {
+      int[] fields = new int[this.childFields.length];
+      System.arraycopy(this.childFields, 0, fields, 0, fields.length);
+      return fields;
+    }
+
+    /**
+     * @return the position of the 24-bit offset to the color line
+     */
+    public int colorLineField() {
+      return this.colorLineField;
+    }
+
+    /**
+     * @return the position of the 24-bit offset to the affine transform
+     */
+    public int transformField() {
+      return this.transformField;
+    }
+
+    public int glyphIdField() {
+      return this.glyphIdField;
+    }
+
+    public int paletteIndexField() {
+      return this.paletteIndexField;
+    }
+  }
+
+  private ColorTable(Header header, ReadableFontData data) {
+    super(header, data);
+  }
+
+  public int version() {
+    return this.data.readUShort(Offset.version);
+  }
+
+  // version 0
+
+  public int numBaseGlyphRecords() {
+    return this.data.readUShort(Offset.numBaseGlyphRecords);
+  }
+
+  private int baseGlyphRecord(int index) {
+    return this.data.readULongAsInt(Offset.baseGlyphRecordsOffset)
+        + index * Offset.BASE_GLYPH_RECORD_SIZE;
+  }
+
+  public int baseGlyphRecordGlyphId(int index) {
+    return this.data.readUShort(baseGlyphRecord(index) + Offset.baseGlyphGlyphId);
+  }
+
+  public int baseGlyphRecordFirstLayerIndex(int index) {
+    return this.data.readUShort(baseGlyphRecord(index) + Offset.baseGlyphFirstLayerIndex);
+  }
+
+  public int baseGlyphRecordNumLayers(int index) {
+    return this.data.readUShort(baseGlyphRecord(index) + Offset.baseGlyphNumLayers);
+  }
+
+  /**
+   * @return the index of the base glyph record of the glyph, or -1 if it has
+   *         none
+   */
+  public int baseGlyphRecordIndex(int glyphId) {
+    if (numBaseGlyphRecords() == 0) {
+      return -1;
+    }
+    return this.data.searchUShort(
+        baseGlyphRecord(0), Offset.BASE_GLYPH_RECORD_SIZE, numBaseGlyphRecords(), glyphId);
+  }
+
+  public int numLayerRecords() {
+    return this.data.readUShort(Offset.numLayerRecords);
+  }
+
+  private int layerRecord(int index) {
+    return this.data.readULongAsInt(Offset.layerRecordsOffset) + index * Offset.LAYER_RECORD_SIZE;
+  }
+
+  public int layerRecordGlyphId(int index) {
+    return this.data.readUShort(layerRecord(index) + Offset.layerGlyphId);
+  }
+
+  public int layerRecordPaletteIndex(int index) {
+    return this.data.readUShort(layerRecord(index) + Offset.layerPaletteIndex);
+  }
+
+  // version 1
+
+  private int offset32(int field) {
+    if (version() < 1) {
+      return 0;
+    }
+    return this.data.readULongAsInt(field);
+  }
+
+  /**
+   * @return the offset of the base glyph list, 0 if there is none
+   */
+  public int baseGlyphListOffset() {
+    return offset32(Offset.baseGlyphListOffset);
+  }
+
+  /**
+   * @return the offset of the layer list, 0 if there is none
+   */
+  public int layerListOffset() {
+    return offset32(Offset.layerListOffset);
+  }
+
+  /**
+   * @return the offset of the clip list, 0 if there is none
+   */
+  public int clipListOffset() {
+    return offset32(Offset.clipListOffset);
+  }
+
+  /**
+   * @return the offset of the variation index map, 0 if there is none
+   */
+  public int varIndexMapOffset() {
+    return offset32(Offset.varIndexMapOffset);
+  }
+
+  /**
+   * @return the offset of the item variation store, 0 if there is none
+   */
+  public int itemVariationStoreOffset() {
+    return offset32(Offset.itemVariationStoreOffset);
+  }
+
+  public int numBaseGlyphPaintRecords() {
+    int list = baseGlyphListOffset();
+    return list == 0 ? 0 : this.data.readULongAsInt(list);
+  }
+
+  private int baseGlyphPaintRecord(int index) {
+    return baseGlyphListOffset() + Offset.baseGlyphPaintRecords
+        + index * Offset.BASE_GLYPH_PAINT_RECORD_SIZE;
+  }
+
+  public int baseGlyphPaintRecordGlyphId(int index) {
+    return this.data.readUShort(baseGlyphPaintRecord(index) + Offset.baseGlyphPaintGlyphId);
+  }
+
+  /**
+   * @return the offset of the root paint of the record
+   */
+  public int baseGlyphPaintRecordPaintOffset(int index) {
+    return baseGlyphListOffset()
+        + this.data.readULongAsInt(baseGlyphPaintRecord(index) + Offset.baseGlyphPaintOffset);
+  }
+
+  /**
+   * @return the index of the base glyph paint record of the glyph, or -1 if
+   *         it has none
+   */
+  public int baseGlyphPaintRecordIndex(int glyphId) {
+    int count = numBaseGlyphPaintRecords();
+    if (count == 0) {
+      return -1;
+    }
+    return this.data.searchUShort(
+        baseGlyphPaintRecord(0), Offset.BASE_GLYPH_PAINT_RECORD_SIZE, count, glyphId);
+  }
+
+  public int numLayerPaints() {
+    int list = layerListOffset();
+    return list == 0 ? 0 : this.data.readULongAsInt(list);
+  }
+
+  public int layerPaintOffset(int index) {
+    int list = layerListOffset();
+    return list + this.data.readULongAsInt(list + Offset.layerPaintOffsets + 4 * index);
+  }
+
+  public int numClips() {
+    int list = clipListOffset();
+    return list == 0 ? 0 : this.data.readULongAsInt(list + Offset.numClips);
+  }
+
+  private int clip(int index) {
+    return clipListOffset() + Offset.clips + index * Offset.CLIP_SIZE;
+  }
+
+  public int clipStartGlyphId(int index) {
+    return this.data.readUShort(clip(index) + Offset.clipStartGlyphId);
+  }
+
+  public int clipEndGlyphId(int index) {
+    return this.data.readUShort(clip(index) + Offset.clipEndGlyphId);
+  }
+
+  /**
+   * @return the index of the clip whose glyph range holds the glyph, or -1 if
+   *         the glyph has no clip box
+   */
+  public int clipIndex(int glyphId) {
+    int count = numClips();
+    if (count == 0) {
+      return -1;
+    }
+    return this.data.searchUShort(clip(0) + Offset.clipStartGlyphId, Offset.CLIP_SIZE,
+        clip(0) + Offset.clipEndGlyphId, Offset.CLIP_SIZE, count, glyphId);
+  }
+
+  public int clipBoxOffset(int index) {
+    return clipListOffset() + this.data.readUInt24(clip(index) + Offset.clipBoxOffset);
+  }
+
+  public int clipBoxSize(int offset) {
+    return this.data.readUByte(offset) == 1 ? CLIP_BOX_SIZE : VAR_CLIP_BOX_SIZE;
+  }
+
+  public DeltaSetIndexMap varIndexMap() {
+    int offset = varIndexMapOffset();
+    return offset == 0 ? null : new DeltaSetIndexMap(this.data.slice(offset));
+  }
+
+  public ItemVariationStore itemVariationStore() {
+    int offset = itemVariationStoreOffset();
+    return offset == 0 ? null : new ItemVariationStore(this.data.slice(offset));
+  }
+
+  // paints
+
+  public int paintFormat(int offset) {
+    return this.data.readUByte(offset);
+  }
+
+  /**
+   * @return the offsets of the child paints of a paint
+   */
+  public int[] childPaintOffsets(int offset) {
+    PaintFormat format = PaintFormat.forFormat(paintFormat(offset));
+    if (format == null) {
+      return new int[0];
+    }
+    int[] children = new int[format.childFields.length];
+    for (int i = 0; i < children.length; i++) {
+      children[i] = offset + this.data.readUInt24(offset + format.childFields[i]);
+    }
+    return children;
+  }
+
+  /**
+   * @return the offset of the color line of a gradient paint, -1 for other
+   *         paints
+   */
+  public int colorLineOffset(int offset) {
+    PaintFormat format = PaintFormat.forFormat(paintFormat(offset));
+    if (format == null || format.colorLineField < 0) {
+      return -1;
+    }
+    return offset + this.data.readUInt24(offset + format.colorLineField);
+  }
+
+  /**
+   * @return the offset of the affine transform of a transform paint, -1 for
+   *         other paints
+   */
+  public int transformOffset(int offset) {
+    PaintFormat format = PaintFormat.forFormat(paintFormat(offset));
+    if (format == null || format.transformField < 0) {
+      return -1;
+    }
+    return offset + this.data.readUInt24(offset + format.transformField);
+  }
+
+  /**
+   * @return the glyph id of a glyph or color glyph paint, -1 for other paints
+   */
+  public int paintGlyphId(int offset) {
+    PaintFormat format = PaintFormat.forFormat(paintFormat(offset));
+    if (format == null || format.glyphIdField < 0) {
+      return -1;
+    }
+    return this.data.readUShort(offset + format.glyphIdField);
+  }
+
+  /**
+   * @return the palette index of a solid paint, -1 for other paints
+   */
+  public int paintPaletteIndex(int offset) {
+    PaintFormat format = PaintFormat.forFormat(paintFormat(offset));
+    if (format == null || format.paletteIndexField < 0) {
+      return -1;
+    }
+    return this.data.readUShort(offset + format.paletteIndexField);
+  }
+
+  public int paintNumLayers(int offset) {
+    return this.data.readUByte(offset + Offset.numLayers);
+  }
+
+  public int paintFirstLayerIndex(int offset) {
+    return this.data.readULongAsInt(offset + FIRST_LAYER_INDEX_FIELD);
+  }
+
+  public int colorLineNumStops(int offset) {
+    return this.data.readUShort(offset + Offset.numStops);
+  }
+
+  public int colorLineSize(int offset, boolean variable) {
+    return Offset.colorStops
+        + colorLineNumStops(offset) * (variable ? VAR_COLOR_STOP_SIZE : COLOR_STOP_SIZE);
+  }
+
+  /**
+   * @return the offset of the palette index of a stop of a color line
+   */
+  public static int colorStopPaletteIndexField(int stop, boolean variable) {
+    return Offset.colorStops + stop * (variable ? VAR_COLOR_STOP_SIZE : COLOR_STOP_SIZE)
+        + Offset.colorStopPaletteIndex;
+  }
+
+  /**
+   * Gets the glyphs used to draw a color glyph: the layer glyphs of version
+   * 0, and the glyphs of the glyph and color glyph paints reachable from the
+   * paint of version 1.
+   *
+   * @param glyphId the glyph id
+   * @return the glyph ids, empty if the glyph has no colors
+   */
+  public Set<Integer> layerGlyphs(int glyphId) {
+    Set<Integer> glyphs = new TreeSet<Integer>();
+    int record = baseGlyphRecordIndex(glyphId);
+    if (record >= 0) {
+      int first = baseGlyphRecordFirstLayerIndex(record);
+      for (int i = first; i < first + baseGlyphRecordNumLayers(record); i++) {
+        glyphs.add(layerRecordGlyphId(i));
+      }
+    }
+    int paintRecord = baseGlyphPaintRecordIndex(glyphId);
+    if (paintRecord >= 0) {
+      addPaintGlyphs(baseGlyphPaintRecordPaintOffset(paintRecord), glyphs,
+          new HashSet<Integer>());
+    }
+    return glyphs;
+  }
+
+  private void addPaintGlyphs(int offset, Set<Integer> glyphs, Set<Integer> visited) {
+    if (!visited.add(offset)) {
+      return;
+    }
+    int format = paintFormat(offset);
+    if (format == PAINT_GLYPH || format == PAINT_COLR_GLYPH) {
+      glyphs.add(paintGlyphId(offset));
+    } else if (format == PAINT_COLR_LAYERS) {
+      int first = paintFirstLayerIndex(offset);
+      for (int i = first; i < first + paintNumLayers(offset); i++) {
+        addPaintGlyphs(layerPaintOffset(i), glyphs, visited);
+      }
+    }
+    for (int child : childPaintOffsets(offset)) {
+      addPaintGlyphs(child, glyphs, visited);
+    }
+  }
+
+  public static class Builder extends TableBasedTableBuilder<ColorTable> {
+
+    /**
+     * Create a new builder using the header information and data provided.
+     *
+     * @param header the header information
+     * @param data the data holding the table
+     * @return a new builder
+     */
+    public static Builder createBuilder(Header header, WritableFontData data) {
+      return new Builder(header, data);
+    }
+
+    protected Builder(Header header, WritableFontData data) {
+      super(header, data);
+    }
+
+    protected Builder(Header header, ReadableFontData data) {
+      super(header, data);
+    }
+
+    @Override
+    protected ColorTable subBuildTable(ReadableFontData data) {
+      return new ColorTable(this.header(), data);
+    }
+  }
+}
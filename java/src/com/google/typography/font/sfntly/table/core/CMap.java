@@ -202,6 +202,9 @@ public abstract class CMap extends SubTable implements Iterable<Integer> {
 
     protected abstract int getRangeStart(int rangeIndex);
 
+    /**
+     * @return the end of the range, exclusive
+     */
     protected abstract int getRangeEnd(int rangeIndex);
   }
 
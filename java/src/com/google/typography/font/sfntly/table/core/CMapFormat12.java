@@ -34,15 +34,42 @@ public final class CMapFormat12 extends CMap {
     this.numberOfGroups = this.data.readULongAsInt(Header.nGroups);
   }
 
-  private int groupStartChar(int groupIndex) {
+  /**
+   * Gets the number of groups in this cmap.
+   *
+   * @return the number of groups
+   */
+  public int getGroupCount() {
+    return this.numberOfGroups;
+  }
+
+  /**
+   * Gets the first character of a group.
+   *
+   * @param groupIndex the group in the look up table
+   * @return the first character of the group
+   */
+  public int groupStartChar(int groupIndex) {
     return this.data.readULongAsInt(Header.groups + groupIndex * Group.SIZE + Group.startCharCode);
   }
 
-  private int groupEndChar(int groupIndex) {
+  /**
+   * Gets the last character of a group, inclusive.
+   *
+   * @param groupIndex the group in the look up table
+   * @return the last character of the group
+   */
+  public int groupEndChar(int groupIndex) {
     return this.data.readULongAsInt(Header.groups + groupIndex * Group.SIZE + Group.endCharCode);
   }
 
-  private int groupStartGlyph(int groupIndex) {
+  /**
+   * Gets the glyph id the first character of a group maps to.
+   *
+   * @param groupIndex the group in the look up table
+   * @return the glyph id of the first character of the group
+   */
+  public int groupStartGlyph(int groupIndex) {
     return this.data.readULongAsInt(Header.groups + groupIndex * Group.SIZE + Group.startGlyphId);
   }
 
@@ -84,7 +111,7 @@ public final class CMapFormat12 extends CMap {
 
     @Override
     protected int getRangeEnd(int rangeIndex) {
-      return CMapFormat12.this.groupEndChar(rangeIndex);
+      return CMapFormat12.this.groupEndChar(rangeIndex) + 1;
     }
   }
 
@@ -83,7 +83,7 @@ public final class CMapFormat13 extends CMap {
 
     @Override
     protected int getRangeEnd(int rangeIndex) {
-      return CMapFormat13.this.groupEndChar(rangeIndex);
+      return CMapFormat13.this.groupEndChar(rangeIndex) + 1;
     }
   }
 
@@ -216,7 +216,7 @@ public final class CMapFormat4 extends CMap {
 
     @Override
     protected int getRangeEnd(int rangeIndex) {
-      return CMapFormat4.this.endCode(rangeIndex);
+      return CMapFormat4.this.endCode(rangeIndex) + 1;
     }
   }
 
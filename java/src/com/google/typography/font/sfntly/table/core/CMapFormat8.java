@@ -78,7 +78,7 @@ public final class CMapFormat8 extends CMap {
 
     @Override
     protected int getRangeEnd(int rangeIndex) {
-      return CMapFormat8.this.endChar(rangeIndex);
+      return CMapFormat8.this.endChar(rangeIndex) + 1;
     }
   }
 
@@ -0,0 +1,454 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.table.core;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Header;
+import com.google.typography.font.sfntly.table.SubTable;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.TableBasedTableBuilder;
+
+/**
+ * A Kerning table - 'kern'.
+ *
+ * Both the OpenType layout of the table (version 0, with 16-bit subtable
+ * headers) and the Apple layout (version 1.0, with 32-bit subtable headers)
+ * are read. Subtables of format 0 (sorted glyph pairs) and format 2 (class
+ * based kerning) are supported; other formats can be iterated over but give
+ * no kerning values.
+ *
+ * @see "ISO/IEC 14496-22:2015, section 5.7.7"
+ */
+public final class KerningTable extends Table {
+
+  /**
+   * The table version of the Apple layout, as a Fixed.
+   */
+  public static final int APPLE_VERSION = 0x00010000;
+
+  private interface Offset {
+    int version = 0;
+    int nTables = 2;
+    int subTables = 4;
+
+    // Apple layout
+    int appleNTables = 4;
+    int appleSubTables = 8;
+
+    // OpenType subtable header
+    int subTableLength = 2;
+    int coverage = 4;
+    int SUBTABLE_HEADER_SIZE = 6;
+
+    // Apple subtable header
+    int appleSubTableLength = 0;
+    int appleCoverage = 4;
+    int appleTupleIndex = 6;
+    int APPLE_SUBTABLE_HEADER_SIZE = 8;
+  }
+
+  private KerningTable(Header header, ReadableFontData data) {
+    super(header, data);
+  }
+
+  /**
+   * @return 0 for the OpenType layout, {@link #APPLE_VERSION} for the Apple
+   *         layout
+   */
+  public int version() {
+    if (isApple()) {
+      return this.data.readFixed(Offset.version);
+    }
+    return this.data.readUShort(Offset.version);
+  }
+
+  /**
+   * @return true if the table has the Apple layout
+   */
+  public boolean isApple() {
+    return this.data.readUShort(Offset.version) == 1;
+  }
+
+  public int numSubTables() {
+    if (isApple()) {
+      return this.data.readULongAsInt(Offset.appleNTables);
+    }
+    return this.data.readUShort(Offset.nTables);
+  }
+
+  /**
+   * Gets a subtable.
+   *
+   * @param index the index of the subtable
+   * @return the subtable
+   */
+  public KerningSubTable subTable(int index) {
+    if (index < 0 || index >= numSubTables()) {
+      throw new IndexOutOfBoundsException();
+    }
+    boolean apple = isApple();
+    int offset = apple ? Offset.appleSubTables : Offset.subTables;
+    for (int i = 0; i < index; i++) {
+      offset += subTableLength(offset, apple);
+    }
+    return KerningSubTable.create(this.data.slice(offset, subTableLength(offset, apple)), apple);
+  }
+
+  private int subTableLength(int offset, boolean apple) {
+    if (apple) {
+      return this.data.readULongAsInt(offset + Offset.appleSubTableLength);
+    }
+    int coverage = this.data.readUShort(offset + Offset.coverage);
+    if ((coverage >> 8) == KerningSubTable.FORMAT_0) {
+      // the length field of large format 0 subtables overflows, so it is
+      // derived from the number of pairs
+      return Offset.SUBTABLE_HEADER_SIZE + KerningSubTable.Format0.HEADER_SIZE
+          + KerningSubTable.Format0.PAIR_SIZE
+          * this.data.readUShort(offset + Offset.SUBTABLE_HEADER_SIZE);
+    }
+    return Math.min(this.data.readUShort(offset + Offset.subTableLength),
+        this.data.length() - offset);
+  }
+
+  /**
+   * Gets the horizontal kerning of a glyph pair, combining the subtables the
+   * way a text engine would: the values of the horizontal, non cross-stream
+   * subtables are added up, unless a subtable overrides the previous ones.
+   * Minimum values are not applied.
+   *
+   * @param left the glyph id of the left glyph
+   * @param right the glyph id of the right glyph
+   * @return the kerning value in font units
+   */
+  public int kerning(int left, int right) {
+    int kerning = 0;
+    for (int i = 0; i < numSubTables(); i++) {
+      KerningSubTable subTable = subTable(i);
+      if (!subTable.isHorizontal() || subTable.isCrossStream() || subTable.isMinimum()) {
+        continue;
+      }
+      int value = subTable.kerning(left, right);
+      kerning = subTable.isOverride() ? value : kerning + value;
+    }
+    return kerning;
+  }
+
+  /**
+   * A subtable of the kerning table.
+   */
+  public abstract static class KerningSubTable extends SubTable {
+
+    public static final int FORMAT_0 = 0;
+    public static final int FORMAT_2 = 2;
+
+    // OpenType coverage bits
+    private static final int HORIZONTAL = 0x01;
+    private static final int MINIMUM = 0x02;
+    private static final int CROSS_STREAM = 0x04;
+    private static final int OVERRIDE = 0x08;
+
+    // Apple coverage bits
+    private static final int APPLE_VERTICAL = 0x8000;
+    private static final int APPLE_CROSS_STREAM = 0x4000;
+    private static final int APPLE_VARIATION = 0x2000;
+
+    private final boolean apple;
+    private final int headerSize;
+
+    protected KerningSubTable(ReadableFontData data, boolean apple) {
+      super(data);
+      this.apple = apple;
+      this.headerSize =
+          apple ? Offset.APPLE_SUBTABLE_HEADER_SIZE : Offset.SUBTABLE_HEADER_SIZE;
+    }
+
+    static KerningSubTable create(ReadableFontData data, boolean apple) {
+      int coverage = data.readUShort(apple ? Offset.appleCoverage : Offset.coverage);
+      int format = apple ? coverage & 0xff : coverage >> 8;
+      if (format == FORMAT_0) {
+        return new Format0(data, apple);
+      } else if (format == FORMAT_2) {
+        return new Format2(data, apple);
+      }
+      return new Unsupported(data, apple);
+    }
+
+    /**
+     * @return the raw coverage field
+     */
+    public int coverage() {
+      return this.data.readUShort(this.apple ? Offset.appleCoverage : Offset.coverage);
+    }
+
+    public int format() {
+      return this.apple ? coverage() & 0xff : coverage() >> 8;
+    }
+
+    /**
+     * @return the Apple tuple index, or 0 for the OpenType layout
+     */
+    public int tupleIndex() {
+      return this.apple ? this.data.readUShort(Offset.appleTupleIndex) : 0;
+    }
+
+    public boolean isApple() {
+      return this.apple;
+    }
+
+    public boolean isHorizontal() {
+      if (this.apple) {
+        return (coverage() & APPLE_VERTICAL) == 0;
+      }
+      return (coverage() & HORIZONTAL) != 0;
+    }
+
+    public boolean isCrossStream() {
+      if (this.apple) {
+        return (coverage() & APPLE_CROSS_STREAM) != 0;
+      }
+      return (coverage() & CROSS_STREAM) != 0;
+    }
+
+    public boolean isMinimum() {
+      return !this.apple && (coverage() & MINIMUM) != 0;
+    }
+
+    public boolean isOverride() {
+      return !this.apple && (coverage() & OVERRIDE) != 0;
+    }
+
+    public boolean hasVariation() {
+      return this.apple && (coverage() & APPLE_VARIATION) != 0;
+    }
+
+    /**
+     * @return the size of the subtable header preceding the format specific
+     *         data
+     */
+    public int headerSize() {
+      return this.headerSize;
+    }
+
+    /**
+     * @return the kerning value of a glyph pair, 0 if the pair isn't kerned
+     */
+    public abstract int kerning(int left, int right);
+
+    /**
+     * A subtable of sorted glyph pairs.
+     */
+    public static final class Format0 extends KerningSubTable {
+      static final int HEADER_SIZE = 8;
+      static final int PAIR_SIZE = 6;
+
+      private interface Format0Offset {
+        int nPairs = 0;
+        int searchRange = 2;
+        int entrySelector = 4;
+        int rangeShift = 6;
+        int pairs = 8;
+        int left = 0;
+        int right = 2;
+        int value = 4;
+      }
+
+      private Format0(ReadableFontData data, boolean apple) {
+        super(data, apple);
+      }
+
+      public int numPairs() {
+        return this.data.readUShort(headerSize() + Format0Offset.nPairs);
+      }
+
+      private int pairOffset(int index) {
+        return headerSize() + Format0Offset.pairs + index * PAIR_SIZE;
+      }
+
+      public int left(int index) {
+        return this.data.readUShort(pairOffset(index) + Format0Offset.left);
+      }
+
+      public int right(int index) {
+        return this.data.readUShort(pairOffset(index) + Format0Offset.right);
+      }
+
+      public int value(int index) {
+        return this.data.readShort(pairOffset(index) + Format0Offset.value);
+      }
+
+      /**
+       * Finds a pair by binary search; the pairs are sorted by the left and
+       * right glyph ids combined into a 32-bit key.
+       *
+       * @return the index of the pair, or -1 if it isn't in the subtable
+       */
+      public int pairIndex(int left, int right) {
+        long key = ((long) left << 16) | right;
+        int low = 0;
+        int high = numPairs() - 1;
+        while (low <= high) {
+          int middle = (low + high) >>> 1;
+          long middleKey = this.data.readULong(pairOffset(middle));
+          if (middleKey < key) {
+            low = middle + 1;
+          } else if (middleKey > key) {
+            high = middle - 1;
+          } else {
+            return middle;
+          }
+        }
+        return -1;
+      }
+
+      @Override
+      public int kerning(int left, int right) {
+        int index = pairIndex(left, right);
+        return index < 0 ? 0 : value(index);
+      }
+    }
+
+    /**
+     * A subtable with a two-dimensional array of kerning values indexed by the
+     * classes of the left and right glyphs.
+     */
+    public static final class Format2 extends KerningSubTable {
+
+      private interface Format2Offset {
+        int rowWidth = 0;
+        int leftClassTableOffset = 2;
+        int rightClassTableOffset = 4;
+        int kerningArrayOffset = 6;
+
+        // class table
+        int firstGlyph = 0;
+        int nGlyphs = 2;
+        int offsets = 4;
+      }
+
+      private Format2(ReadableFontData data, boolean apple) {
+        super(data, apple);
+      }
+
+      public int rowWidth() {
+        return this.data.readUShort(headerSize() + Format2Offset.rowWidth);
+      }
+
+      /**
+       * @return the offset of the left class table from the start of the
+       *         subtable
+       */
+      public int leftClassTableOffset() {
+        return this.data.readUShort(headerSize() + Format2Offset.leftClassTableOffset);
+      }
+
+      public int rightClassTableOffset() {
+        return this.data.readUShort(headerSize() + Format2Offset.rightClassTableOffset);
+      }
+
+      public int kerningArrayOffset() {
+        return this.data.readUShort(headerSize() + Format2Offset.kerningArrayOffset);
+      }
+
+      public int firstGlyph(int classTableOffset) {
+        return this.data.readUShort(classTableOffset + Format2Offset.firstGlyph);
+      }
+
+      public int numGlyphs(int classTableOffset) {
+        return this.data.readUShort(classTableOffset + Format2Offset.nGlyphs);
+      }
+
+      private int classValue(int classTableOffset, int glyphId) {
+        int index = glyphId - firstGlyph(classTableOffset);
+        if (index < 0 || index >= numGlyphs(classTableOffset)) {
+          return -1;
+        }
+        return this.data.readUShort(classTableOffset + Format2Offset.offsets + 2 * index);
+      }
+
+      /**
+       * @return the offset from the start of the subtable to the row of the
+       *         left glyph's class, or -1 if the glyph has no class
+       */
+      public int leftClass(int glyphId) {
+        return classValue(leftClassTableOffset(), glyphId);
+      }
+
+      /**
+       * @return the offset within a row of the right glyph's class, or -1 if
+       *         the glyph has no class
+       */
+      public int rightClass(int glyphId) {
+        return classValue(rightClassTableOffset(), glyphId);
+      }
+
+      @Override
+      public int kerning(int left, int right) {
+        int row = leftClass(left);
+        int column = rightClass(right);
+        if (row < 0 || column < 0 || row + column + 2 > this.data.length()) {
+          return 0;
+        }
+        return this.data.readShort(row + column);
+      }
+    }
+
+    /**
+     * A subtable in a format without kerning value lookup.
+     */
+    public static final class Unsupported extends KerningSubTable {
+      private Unsupported(ReadableFontData data, boolean apple) {
+        super(data, apple);
+      }
+
+      @Override
+      public int kerning(int left, int right) {
+        return 0;
+      }
+    }
+  }
+
+  /**
+   * Builder for a Kerning table - 'kern'.
+   */
+  public static class Builder extends TableBasedTableBuilder<KerningTable> {
+
+    /**
+     * Create a new builder using the header information and data provided.
+     *
+     * @param header the header information
+     * @param data the data holding the table
+     * @return a new builder
+     */
+    public static Builder createBuilder(Header header, WritableFontData data) {
+      return new Builder(header, data);
+    }
+
+    protected Builder(Header header, WritableFontData data) {
+      super(header, data);
+    }
+
+    protected Builder(Header header, ReadableFontData data) {
+      super(header, data);
+    }
+
+    @Override
+    protected KerningTable subBuildTable(ReadableFontData data) {
+      return new KerningTable(this.header(), data);
+    }
+  }
+}
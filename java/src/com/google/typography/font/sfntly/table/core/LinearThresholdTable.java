@@ -0,0 +1,84 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.table.core;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Header;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.TableBasedTableBuilder;
+
+/**
+ * A Linear Threshold table - 'LTSH'.
+ *
+ * @see "ISO/IEC 14496-22:2015, section 5.7.4"
+ */
+public final class LinearThresholdTable extends Table {
+
+  private interface Offset {
+    int version = 0;
+    int numGlyphs = 2;
+    int yPels = 4;
+  }
+
+  private LinearThresholdTable(Header header, ReadableFontData data) {
+    super(header, data);
+  }
+
+  public int version() {
+    return this.data.readUShort(Offset.version);
+  }
+
+  public int numGlyphs() {
+    return this.data.readUShort(Offset.numGlyphs);
+  }
+
+  /**
+   * @param glyphId the glyph id
+   * @return the ppem from which the glyph scales linearly, 1 if it always
+   *         does
+   */
+  public int yPels(int glyphId) {
+    if (glyphId < 0 || glyphId >= this.numGlyphs()) {
+      throw new IndexOutOfBoundsException();
+    }
+    return this.data.readUByte(Offset.yPels + glyphId);
+  }
+
+  /**
+   * Builder for a Linear Threshold table - 'LTSH'.
+   */
+  public static class Builder extends TableBasedTableBuilder<LinearThresholdTable> {
+
+    public static Builder createBuilder(Header header, WritableFontData data) {
+      return new Builder(header, data);
+    }
+
+    protected Builder(Header header, WritableFontData data) {
+      super(header, data);
+    }
+
+    protected Builder(Header header, ReadableFontData data) {
+      super(header, data);
+    }
+
+    @Override
+    protected LinearThresholdTable subBuildTable(ReadableFontData data) {
+      return new LinearThresholdTable(this.header(), data);
+    }
+  }
+}
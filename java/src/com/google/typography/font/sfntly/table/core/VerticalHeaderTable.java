@@ -0,0 +1,241 @@
+/*
+ * Copyright 2010 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.table.core;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Header;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.TableBasedTableBuilder;
+
+/**
+ * A Vertical Header table - 'vhea'.
+ *
+ * @see "ISO/IEC 14496-22:2015, section 5.7.5"
+ */
+public final class VerticalHeaderTable extends Table {
+
+  private interface Offset {
+    int version = 0;
+    int ascender = 4;
+    int descender = 6;
+    int lineGap = 8;
+    int advanceHeightMax = 10;
+    int minTopSideBearing = 12;
+    int minBottomSideBearing = 14;
+    int yMaxExtent = 16;
+    int caretSlopeRise = 18;
+    int caretSlopeRun = 20;
+    int caretOffset = 22;
+    int reserved24 = 24;
+    int reserved26 = 26;
+    int reserved28 = 28;
+    int reserved30 = 30;
+    int metricDataFormat = 32;
+    int numberOfLongVerMetrics = 34;
+  }
+
+  private VerticalHeaderTable(Header header, ReadableFontData data) {
+    super(header, data);
+  }
+
+  public int tableVersion() {
+    return this.data.readFixed(Offset.version);
+  }
+
+  public int ascender() {
+    return this.data.readShort(Offset.ascender);
+  }
+
+  public int descender() {
+    return this.data.readShort(Offset.descender);
+  }
+
+  public int lineGap() {
+    return this.data.readShort(Offset.lineGap);
+  }
+
+  public int advanceHeightMax() {
+    return this.data.readUShort(Offset.advanceHeightMax);
+  }
+
+  public int minTopSideBearing() {
+    return this.data.readShort(Offset.minTopSideBearing);
+  }
+
+  public int minBottomSideBearing() {
+    return this.data.readShort(Offset.minBottomSideBearing);
+  }
+
+  public int yMaxExtent() {
+    return this.data.readShort(Offset.yMaxExtent);
+  }
+
+  public int caretSlopeRise() {
+    return this.data.readShort(Offset.caretSlopeRise);
+  }
+
+  public int caretSlopeRun() {
+    return this.data.readShort(Offset.caretSlopeRun);
+  }
+
+  public int caretOffset() {
+    return this.data.readShort(Offset.caretOffset);
+  }
+
+  public int metricDataFormat() {
+    return this.data.readShort(Offset.metricDataFormat);
+  }
+
+  public int numberOfLongVerMetrics() {
+    return this.data.readUShort(Offset.numberOfLongVerMetrics);
+  }
+
+  /**
+   * Builder for a Vertical Header table - 'vhea'.
+   */
+  public static class Builder extends TableBasedTableBuilder<VerticalHeaderTable> {
+
+    /**
+     * Create a new builder using the header information and data provided.
+     *
+     * @param header the header information
+     * @param data the data holding the table
+     * @return a new builder
+     */
+    public static Builder createBuilder(Header header, WritableFontData data) {
+      return new Builder(header, data);
+    }
+
+    protected Builder(Header header, WritableFontData data) {
+      super(header, data);
+    }
+
+    protected Builder(Header header, ReadableFontData data) {
+      super(header, data);
+    }
+
+    @Override
+    protected VerticalHeaderTable subBuildTable(ReadableFontData data) {
+      return new VerticalHeaderTable(this.header(), data);
+    }
+
+    public int tableVersion() {
+      return this.internalReadData().readFixed(Offset.version);
+    }
+
+    public void setTableVersion(int version) {
+      this.internalWriteData().writeFixed(Offset.version, version);
+    }
+
+    public int ascender() {
+      return this.internalReadData().readShort(Offset.ascender);
+    }
+
+    public void setAscender(int ascender) {
+      this.internalWriteData().writeShort(Offset.ascender, ascender);
+    }
+
+    public int descender() {
+      return this.internalReadData().readShort(Offset.descender);
+    }
+
+    public void setDescender(int descender) {
+      this.internalWriteData().writeShort(Offset.descender, descender);
+    }
+
+    public int lineGap() {
+      return this.internalReadData().readShort(Offset.lineGap);
+    }
+
+    public void setLineGap(int lineGap) {
+      this.internalWriteData().writeShort(Offset.lineGap, lineGap);
+    }
+
+    public int advanceHeightMax() {
+      return this.internalReadData().readUShort(Offset.advanceHeightMax);
+    }
+
+    public void setAdvanceHeightMax(int advanceHeightMax) {
+      this.internalWriteData().writeUShort(Offset.advanceHeightMax, advanceHeightMax);
+    }
+
+    public int minTopSideBearing() {
+      return this.internalReadData().readShort(Offset.minTopSideBearing);
+    }
+
+    public void setMinTopSideBearing(int bearing) {
+      this.internalWriteData().writeShort(Offset.minTopSideBearing, bearing);
+    }
+
+    public int minBottomSideBearing() {
+      return this.internalReadData().readShort(Offset.minBottomSideBearing);
+    }
+
+    public void setMinBottomSideBearing(int bearing) {
+      this.internalWriteData().writeShort(Offset.minBottomSideBearing, bearing);
+    }
+
+    public int yMaxExtent() {
+      return this.internalReadData().readShort(Offset.yMaxExtent);
+    }
+
+    public void setYMaxExtent(int extent) {
+      this.internalWriteData().writeShort(Offset.yMaxExtent, extent);
+    }
+
+    public int caretSlopeRise() {
+      return this.internalReadData().readShort(Offset.caretSlopeRise);
+    }
+
+    public void setCaretSlopeRise(int rise) {
+      this.internalWriteData().writeShort(Offset.caretSlopeRise, rise);
+    }
+
+    public int caretSlopeRun() {
+      return this.internalReadData().readShort(Offset.caretSlopeRun);
+    }
+
+    public void setCaretSlopeRun(int run) {
+      this.internalWriteData().writeShort(Offset.caretSlopeRun, run);
+    }
+
+    public int caretOffset() {
+      return this.internalReadData().readShort(Offset.caretOffset);
+    }
+
+    public void setCaretOffset(int offset) {
+      this.internalWriteData().writeShort(Offset.caretOffset, offset);
+    }
+
+    public int metricDataFormat() {
+      return this.internalReadData().readShort(Offset.metricDataFormat);
+    }
+
+    public void setMetricDataFormat(int format) {
+      this.internalWriteData().writeShort(Offset.metricDataFormat, format);
+    }
+
+    public int numberOfLongVerMetrics() {
+      return this.internalReadData().readUShort(Offset.numberOfLongVerMetrics);
+    }
+
+    public void setNumberOfLongVerMetrics(int count) {
+      this.internalWriteData().writeUShort(Offset.numberOfLongVerMetrics, count);
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package com.google.typography.font.sfntly.table.opentype;
 
+import com.google.typography.font.sfntly.data.FontData;
 import com.google.typography.font.sfntly.data.ReadableFontData;
 import com.google.typography.font.sfntly.data.WritableFontData;
 import com.google.typography.font.sfntly.table.opentype.classdef.InnerArrayFmt1;
@@ -7,6 +8,8 @@ import com.google.typography.font.sfntly.table.opentype.component.RangeRecordTab
 import com.google.typography.font.sfntly.table.opentype.component.RecordsTable;
 
 public class ClassDefTable extends SubstSubtable {
+  private static final int RANGE_RECORD_SIZE = 6;
+
   public final RecordsTable<?> array;
   private boolean dataIsCanonical;
 
@@ -41,6 +44,46 @@ public class ClassDefTable extends SubstSubtable {
     }
   }
 
+  /**
+   * Gets the class of a glyph.
+   *
+   * @param glyphId the glyph id
+   * @return the class value, which is 0 for glyphs not assigned to a class
+   */
+  public int glyphClass(int glyphId) {
+    int start = base + headerSize();
+    switch (format) {
+    case 1: {
+      int startGlyph = data.readUShort(start);
+      int glyphCount = data.readUShort(start + FontData.SizeOf.USHORT);
+      if (glyphId < startGlyph || glyphId >= startGlyph + glyphCount) {
+        return 0;
+      }
+      return data.readUShort(start + (2 + glyphId - startGlyph) * FontData.SizeOf.USHORT);
+    }
+    case 2: {
+      int count = data.readUShort(start);
+      int records = start + FontData.SizeOf.USHORT;
+      int low = 0;
+      int high = count - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        int record = records + mid * RANGE_RECORD_SIZE;
+        if (data.readUShort(record + 2) < glyphId) {
+          low = mid + 1;
+        } else if (data.readUShort(record) > glyphId) {
+          high = mid - 1;
+        } else {
+          return data.readUShort(record + 4);
+        }
+      }
+      return 0;
+    }
+    default:
+      throw new IllegalArgumentException("class def format " + format + " unexpected");
+    }
+  }
+
   public RangeRecordTable fmt2Table() {
     switch (format) {
     case 2:
@@ -1,5 +1,6 @@
 package com.google.typography.font.sfntly.table.opentype;
 
+import com.google.typography.font.sfntly.data.FontData;
 import com.google.typography.font.sfntly.data.ReadableFontData;
 import com.google.typography.font.sfntly.data.WritableFontData;
 import com.google.typography.font.sfntly.table.opentype.component.NumRecordTable;
@@ -7,6 +8,8 @@ import com.google.typography.font.sfntly.table.opentype.component.RangeRecordTab
 import com.google.typography.font.sfntly.table.opentype.component.RecordsTable;
 
 public class CoverageTable extends SubstSubtable {
+  private static final int RANGE_RECORD_SIZE = 6;
+
   public final RecordsTable<?> array;
 
   // //////////////
@@ -38,6 +41,49 @@ public class CoverageTable extends SubstSubtable {
     }
   }
 
+  /**
+   * Gets the coverage index of a glyph.
+   *
+   * @param glyphId the glyph id
+   * @return the coverage index, or -1 if the glyph is not covered
+   */
+  public int coverageIndex(int glyphId) {
+    int count = data.readUShort(base + headerSize());
+    int records = base + headerSize() + FontData.SizeOf.USHORT;
+    int low = 0;
+    int high = count - 1;
+    switch (format) {
+    case 1:
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        int glyph = data.readUShort(records + mid * FontData.SizeOf.USHORT);
+        if (glyph < glyphId) {
+          low = mid + 1;
+        } else if (glyph > glyphId) {
+          high = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -1;
+    case 2:
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        int record = records + mid * RANGE_RECORD_SIZE;
+        if (data.readUShort(record + 2) < glyphId) {
+          low = mid + 1;
+        } else if (data.readUShort(record) > glyphId) {
+          high = mid - 1;
+        } else {
+          return data.readUShort(record + 4) + glyphId - data.readUShort(record);
+        }
+      }
+      return -1;
+    default:
+      throw new IllegalArgumentException("coverage format " + format + " unexpected");
+    }
+  }
+
   public RangeRecordTable fmt2Table() {
     switch (format) {
     case 2:
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.table.opentype;
+
+import com.google.typography.font.sfntly.data.FontData;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Header;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.TableBasedTableBuilder;
+
+/**
+ * The 'GDEF' table holds the glyph class definitions, attachment points,
+ * ligature carets and mark sets used by GSUB and GPOS lookups.
+ *
+ * @see "ISO/IEC 14496-22:2015, section 6.3.2"
+ */
+public class GDefTable extends Table {
+
+  public static final int VERSION_1_0 = 0x00010000;
+  public static final int VERSION_1_2 = 0x00010002;
+  public static final int VERSION_1_3 = 0x00010003;
+
+  /**
+   * Glyph classes assigned by the GlyphClassDef table.
+   */
+  public interface GlyphClass {
+    int Base = 1;
+    int Ligature = 2;
+    int Mark = 3;
+    int Component = 4;
+  }
+
+  private interface Offset {
+    int version = 0;
+    int glyphClassDef = 4;
+    int attachList = 6;
+    int ligCaretList = 8;
+    int markAttachClassDef = 10;
+    int SIZE_1_0 = 12;
+
+    // version 1.2
+    int markGlyphSetsDef = 12;
+    int SIZE_1_2 = 14;
+
+    // version 1.3
+    int itemVarStore = 14;
+    int SIZE_1_3 = 18;
+
+    // MarkGlyphSets
+    int markGlyphSetsFormat = 0;
+    int markGlyphSetCount = 2;
+    int coverageOffsets = 4;
+  }
+
+  private GDefTable(Header header, ReadableFontData data) {
+    super(header, data);
+  }
+
+  public int version() {
+    return this.data.readFixed(Offset.version);
+  }
+
+  /**
+   * @return the size of the header for the version of this table
+   */
+  public int headerSize() {
+    int version = version();
+    if (version >= VERSION_1_3) {
+      return Offset.SIZE_1_3;
+    } else if (version >= VERSION_1_2) {
+      return Offset.SIZE_1_2;
+    }
+    return Offset.SIZE_1_0;
+  }
+
+  public int glyphClassDefOffset() {
+    return this.data.readUShort(Offset.glyphClassDef);
+  }
+
+  public int attachListOffset() {
+    return this.data.readUShort(Offset.attachList);
+  }
+
+  public int ligCaretListOffset() {
+    return this.data.readUShort(Offset.ligCaretList);
+  }
+
+  public int markAttachClassDefOffset() {
+    return this.data.readUShort(Offset.markAttachClassDef);
+  }
+
+  public int markGlyphSetsDefOffset() {
+    if (version() < VERSION_1_2) {
+      return 0;
+    }
+    return this.data.readUShort(Offset.markGlyphSetsDef);
+  }
+
+  public int itemVarStoreOffset() {
+    if (version() < VERSION_1_3) {
+      return 0;
+    }
+    return this.data.readULongAsInt(Offset.itemVarStore);
+  }
+
+  /**
+   * @return the glyph class definitions, or null if the table has none
+   */
+  public ClassDefTable glyphClassDef() {
+    return classDef(glyphClassDefOffset());
+  }
+
+  /**
+   * @return the mark attachment class definitions, or null if the table has
+   *         none
+   */
+  public ClassDefTable markAttachClassDef() {
+    return classDef(markAttachClassDefOffset());
+  }
+
+  private ClassDefTable classDef(int offset) {
+    if (offset == 0) {
+      return null;
+    }
+    return new ClassDefTable(this.data.slice(offset), 0, false);
+  }
+
+  /**
+   * Gets the glyph class of a glyph.
+   *
+   * @param glyphId the glyph id
+   * @return the glyph class, or 0 if the glyph has no class assigned
+   * @see GlyphClass
+   */
+  public int glyphClass(int glyphId) {
+    ClassDefTable classDef = glyphClassDef();
+    return classDef == null ? 0 : classDef.glyphClass(glyphId);
+  }
+
+  public int markGlyphSetCount() {
+    int offset = markGlyphSetsDefOffset();
+    if (offset == 0) {
+      return 0;
+    }
+    return this.data.readUShort(offset + Offset.markGlyphSetCount);
+  }
+
+  /**
+   * Gets the coverage of a mark glyph set.
+   *
+   * @param index the index of the mark glyph set
+   * @return the coverage of the set
+   */
+  public CoverageTable markGlyphSet(int index) {
+    if (index < 0 || index >= markGlyphSetCount()) {
+      throw new IndexOutOfBoundsException("Mark glyph set " + index + " out of range.");
+    }
+    int offset = markGlyphSetsDefOffset();
+    int coverageOffset = this.data.readULongAsInt(
+        offset + Offset.coverageOffsets + index * FontData.SizeOf.ULONG);
+    return new CoverageTable(this.data.slice(offset + coverageOffset), 0, false);
+  }
+
+  /**
+   * Builder for a GDEF table.
+   */
+  public static class Builder extends TableBasedTableBuilder<GDefTable> {
+
+    /**
+     * Create a new builder using the header information and data provided.
+     *
+     * @param header the header information
+     * @param data the data holding the table
+     * @return a new builder
+     */
+    public static Builder createBuilder(Header header, WritableFontData data) {
+      return new Builder(header, data);
+    }
+
+    protected Builder(Header header, WritableFontData data) {
+      super(header, data);
+    }
+
+    protected Builder(Header header, ReadableFontData data) {
+      super(header, data);
+    }
+
+    @Override
+    protected GDefTable subBuildTable(ReadableFontData data) {
+      return new GDefTable(this.header(), data);
+    }
+  }
+}
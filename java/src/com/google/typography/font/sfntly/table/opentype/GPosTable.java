@@ -0,0 +1,120 @@
+/*
+ * Copyright 2010 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.table.opentype;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Header;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.TableBasedTableBuilder;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The 'GPOS' table handles glyph positioning such as pair kerning, cursive
+ * attachment and the placement of marks on bases, ligatures and other marks.
+ *
+ * @see "ISO/IEC 14496-22:2015, section 6.3.3"
+ */
+public class GPosTable extends Table {
+  private final GposCommonTable gpos;
+  private final AtomicReference<ScriptListTable>
+      scriptListTable = new AtomicReference<ScriptListTable>();
+  private final AtomicReference<FeatureListTable>
+      featureListTable = new AtomicReference<FeatureListTable>();
+  private final AtomicReference<GposLookupListTable>
+      lookupListTable = new AtomicReference<GposLookupListTable>();
+
+  private GPosTable(Header header, ReadableFontData data, boolean dataIsCanonical) {
+    super(header, data);
+    gpos = new GposCommonTable(data, dataIsCanonical);
+  }
+
+  /**
+   * Return information about the script tables in this GPOS table.
+   *
+   * @return the ScriptList
+   */
+  public ScriptListTable scriptList() {
+    if (scriptListTable.get() == null) {
+      scriptListTable.compareAndSet(null, gpos.createScriptList());
+    }
+    return scriptListTable.get();
+  }
+
+  /**
+   * Return information about the feature tables in this GPOS table.
+   *
+   * @return the FeatureList
+   */
+  public FeatureListTable featureList() {
+    if (featureListTable.get() == null) {
+      featureListTable.compareAndSet(null, gpos.createFeatureList());
+    }
+    return featureListTable.get();
+  }
+
+  /**
+   * Return information about the lookup tables in this GPOS table.
+   *
+   * @return the LookupList
+   */
+  public GposLookupListTable lookupList() {
+    if (lookupListTable.get() == null) {
+      lookupListTable.compareAndSet(null, gpos.createLookupList());
+    }
+    return lookupListTable.get();
+  }
+
+  /**
+   * GPOS Table Builder.
+   */
+  public static class Builder extends TableBasedTableBuilder<GPosTable> {
+
+    /**
+     * Creates a new builder using the header information and data provided.
+     *
+     * @param header
+     *          the header information
+     * @param data
+     *          the data holding the table
+     * @return a new builder
+     */
+    public static Builder createBuilder(Header header, WritableFontData data) {
+      return new Builder(header, data);
+    }
+
+    /**
+     * Constructor. This constructor will try to maintain the data as readable
+     * but if editing operations are attempted then a writable copy will be made
+     * the readable data will be discarded.
+     *
+     * @param header
+     *          the table header
+     * @param data
+     *          the readable data for the table
+     */
+    private Builder(Header header, ReadableFontData data) {
+      super(header, data);
+    }
+
+    @Override
+    protected GPosTable subBuildTable(ReadableFontData data) {
+      return new GPosTable(this.header(), data, false);
+    }
+  }
+}
@@ -0,0 +1,21 @@
+package com.google.typography.font.sfntly.table.opentype;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+
+/**
+ * The GPOS variant of the common layout header. The script and feature lists
+ * are shared with GSUB; the lookups are read through
+ * {@link GposLookupListTable} since their subtables are positioning subtables.
+ */
+class GposCommonTable extends LayoutCommonTable<GposLookupListTable> {
+
+  GposCommonTable(ReadableFontData data, boolean dataIsCanonical) {
+    super(data, dataIsCanonical);
+  }
+
+  @Override
+  protected GposLookupListTable handleCreateLookupList(
+      ReadableFontData data, boolean dataIsCanonical) {
+    return new GposLookupListTable(data);
+  }
+}
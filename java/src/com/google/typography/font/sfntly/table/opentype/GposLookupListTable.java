@@ -0,0 +1,35 @@
+package com.google.typography.font.sfntly.table.opentype;
+
+import com.google.typography.font.sfntly.data.FontData;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.SubTable;
+
+/**
+ * The LookupList of a GPOS table.
+ */
+public class GposLookupListTable extends SubTable {
+
+  private interface Offset {
+    int lookupCount = 0;
+    int lookupOffsets = 2;
+  }
+
+  GposLookupListTable(ReadableFontData data) {
+    super(data);
+  }
+
+  public int lookupCount() {
+    return data.readUShort(Offset.lookupCount);
+  }
+
+  public int lookupOffset(int index) {
+    return data.readUShort(Offset.lookupOffsets + index * FontData.SizeOf.USHORT);
+  }
+
+  public GposLookupTable lookup(int index) {
+    if (index < 0 || index >= lookupCount()) {
+      throw new IndexOutOfBoundsException("Lookup index " + index + " out of range.");
+    }
+    return new GposLookupTable(data.slice(lookupOffset(index)));
+  }
+}
@@ -0,0 +1,100 @@
+package com.google.typography.font.sfntly.table.opentype;
+
+import com.google.typography.font.sfntly.data.FontData;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.SubTable;
+import com.google.typography.font.sfntly.table.opentype.component.GposLookupType;
+
+/**
+ * A single lookup of a GPOS table. The subtables are exposed as data since
+ * their layout depends on the lookup type; extension subtables are resolved
+ * to the subtable they wrap.
+ */
+public class GposLookupTable extends SubTable {
+
+  public static final int FLAG_USE_MARK_FILTERING_SET = 0x0010;
+
+  private interface Offset {
+    int lookupType = 0;
+    int lookupFlag = 2;
+    int subTableCount = 4;
+    int subTableOffsets = 6;
+  }
+
+  private interface ExtensionOffset {
+    int posFormat = 0;
+    int extensionLookupType = 2;
+    int extensionOffset = 4;
+  }
+
+  GposLookupTable(ReadableFontData data) {
+    super(data);
+  }
+
+  public int lookupTypeNum() {
+    return data.readUShort(Offset.lookupType);
+  }
+
+  public GposLookupType lookupType() {
+    return GposLookupType.forTypeNum(lookupTypeNum());
+  }
+
+  public int lookupFlag() {
+    return data.readUShort(Offset.lookupFlag);
+  }
+
+  public int subTableCount() {
+    return data.readUShort(Offset.subTableCount);
+  }
+
+  public int subTableOffset(int index) {
+    return data.readUShort(Offset.subTableOffsets + index * FontData.SizeOf.USHORT);
+  }
+
+  /**
+   * @return the mark filtering set index, or -1 if the lookup flag doesn't
+   *         request one
+   */
+  public int markFilteringSet() {
+    if ((lookupFlag() & FLAG_USE_MARK_FILTERING_SET) == 0) {
+      return -1;
+    }
+    return data.readUShort(Offset.subTableOffsets + subTableCount() * FontData.SizeOf.USHORT);
+  }
+
+  /**
+   * Gets the raw data of a subtable. For extension lookups this is the
+   * extension subtable itself.
+   */
+  public ReadableFontData subTableData(int index) {
+    if (index < 0 || index >= subTableCount()) {
+      throw new IndexOutOfBoundsException("Subtable index " + index + " out of range.");
+    }
+    return data.slice(subTableOffset(index));
+  }
+
+  /**
+   * Gets the lookup type of a subtable, looking through extension subtables.
+   */
+  public int subTableTypeNum(int index) {
+    int type = lookupTypeNum();
+    if (type == GposLookupType.GPOS_EXTENSION.typeNum()) {
+      return subTableData(index).readUShort(ExtensionOffset.extensionLookupType);
+    }
+    return type;
+  }
+
+  /**
+   * Gets the data of a subtable, looking through extension subtables.
+   */
+  public ReadableFontData resolvedSubTableData(int index) {
+    ReadableFontData subTable = subTableData(index);
+    if (lookupTypeNum() == GposLookupType.GPOS_EXTENSION.typeNum()) {
+      if (subTable.readUShort(ExtensionOffset.posFormat) != 1) {
+        throw new IllegalArgumentException("illegal extension format");
+      }
+      return subTable.slice(subTable.readULongAsInt(ExtensionOffset.extensionOffset));
+    }
+    return subTable;
+  }
+}
@@ -2,7 +2,7 @@ package com.google.typography.font.sfntly.table.opentype;
 
 import com.google.typography.font.sfntly.data.ReadableFontData;
 
-class GsubCommonTable extends LayoutCommonTable<GsubLookupTable> {
+class GsubCommonTable extends LayoutCommonTable<LookupListTable> {
 
   GsubCommonTable(ReadableFontData data, boolean dataIsCanonical) {
     super(data, dataIsCanonical);
@@ -18,7 +18,7 @@ class GsubCommonTable extends LayoutCommonTable<GsubLookupTable> {
     return new LookupListTable(data, dataIsCanonical);
   }
 
-  static class Builder extends LayoutCommonTable.Builder<GsubLookupTable> {
+  static class Builder extends LayoutCommonTable.Builder<LookupListTable> {
 
     protected Builder(ReadableFontData data, boolean dataIsCanonical) {
       super(data, dataIsCanonical);
@@ -9,7 +9,7 @@ import com.google.typography.font.sfntly.table.SubTable;
 /**
  * @author dougfelt@google.com (Doug Felt)
  */
-abstract class LayoutCommonTable<T extends LookupTable> extends SubTable {
+abstract class LayoutCommonTable<L extends SubTable> extends SubTable {
 
   private static final int VERSION_ID = 0x00010000;
 
@@ -82,15 +82,14 @@ abstract class LayoutCommonTable<T extends LookupTable> extends SubTable {
     return commonData.slice(start);
   }
 
-  protected LookupListTable createLookupList() {
+  protected L createLookupList() {
     return handleCreateLookupList(lookupListData(data, dataIsCanonical), dataIsCanonical);
   }
 
-  protected abstract LookupListTable handleCreateLookupList(
-      ReadableFontData data, boolean dataIsCanonical);
+  protected abstract L handleCreateLookupList(ReadableFontData data, boolean dataIsCanonical);
 
-  abstract static class Builder<T extends LookupTable>
-      extends SubTable.Builder<LayoutCommonTable<T>> {
+  abstract static class Builder<L extends SubTable>
+      extends SubTable.Builder<LayoutCommonTable<L>> {
     private int serializedLength;
     private ScriptListTable.Builder serializedScriptListBuilder;
     private FeatureListTable.Builder serializedFeatureListBuilder;
@@ -108,8 +107,7 @@ abstract class LayoutCommonTable<T extends LookupTable> extends SubTable {
       super(null);
     }
 
-    protected abstract LookupListTable handleCreateLookupList(
-        ReadableFontData data, boolean dataIsCanonical);
+    protected abstract L handleCreateLookupList(ReadableFontData data, boolean dataIsCanonical);
 
     protected abstract LookupListTable.Builder createLookupListBuilder();
 
@@ -135,6 +133,6 @@ abstract class LayoutCommonTable<T extends LookupTable> extends SubTable {
     }
 
     @Override
-    protected abstract LayoutCommonTable<T> subBuildTable(ReadableFontData data);
+    protected abstract LayoutCommonTable<L> subBuildTable(ReadableFontData data);
   }
 }
@@ -0,0 +1,38 @@
+package com.google.typography.font.sfntly.table.opentype.component;
+
+import java.util.logging.Logger;
+
+public enum GposLookupType implements LookupType {
+  GPOS_SINGLE,
+  GPOS_PAIR,
+  GPOS_CURSIVE,
+  GPOS_MARK_TO_BASE,
+  GPOS_MARK_TO_LIGATURE,
+  GPOS_MARK_TO_MARK,
+  GPOS_CONTEXTUAL,
+  GPOS_CHAINING_CONTEXTUAL,
+  GPOS_EXTENSION;
+
+  @Override
+  public int typeNum() {
+    return ordinal() + 1;
+  }
+
+  @Override
+  public String toString() {
+    return super.toString().toLowerCase();
+  }
+
+  public static GposLookupType forTypeNum(int typeNum) {
+    if (typeNum <= 0 || typeNum > values.length) {
+      logger.warning("unknown gpos lookup typeNum: " + typeNum);
+      return null;
+    }
+    return values[typeNum - 1];
+  }
+
+  private static final GposLookupType[] values = values();
+
+  private static final Logger logger =
+      Logger.getLogger(GposLookupType.class.getCanonicalName());
+}
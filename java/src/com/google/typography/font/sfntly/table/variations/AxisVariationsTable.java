@@ -0,0 +1,143 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.table.variations;
+
+import com.google.typography.font.sfntly.data.FontData;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Header;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.TableBasedTableBuilder;
+
+/**
+ * The 'avar' table modifies the normalization of the axis coordinates with a
+ * piecewise linear mapping per axis.
+ *
+ * @see "OpenType specification 1.8, 'avar' table"
+ */
+public class AxisVariationsTable extends Table {
+
+  private interface Offset {
+    int majorVersion = 0;
+    int minorVersion = 2;
+    int axisCount = 6;
+    int axisSegmentMaps = 8;
+
+    // SegmentMaps
+    int positionMapCount = 0;
+    int axisValueMaps = 2;
+    int AXIS_VALUE_MAP_SIZE = 4;
+  }
+
+  private AxisVariationsTable(Header header, ReadableFontData data) {
+    super(header, data);
+  }
+
+  public int majorVersion() {
+    return this.data.readUShort(Offset.majorVersion);
+  }
+
+  public int minorVersion() {
+    return this.data.readUShort(Offset.minorVersion);
+  }
+
+  public int axisCount() {
+    return this.data.readUShort(Offset.axisCount);
+  }
+
+  private int segmentMapOffset(int axis) {
+    int offset = Offset.axisSegmentMaps;
+    for (int i = 0; i < axis; i++) {
+      offset += Offset.axisValueMaps
+          + this.data.readUShort(offset) * Offset.AXIS_VALUE_MAP_SIZE;
+    }
+    return offset;
+  }
+
+  public int positionMapCount(int axis) {
+    return this.data.readUShort(segmentMapOffset(axis) + Offset.positionMapCount);
+  }
+
+  /**
+   * Maps a normalized coordinate through the segment map of an axis.
+   *
+   * @param axis the axis
+   * @param value the coordinate from the default normalization
+   * @return the modified coordinate
+   */
+  public double map(int axis, double value) {
+    int offset = segmentMapOffset(axis);
+    int count = this.data.readUShort(offset + Offset.positionMapCount);
+    int maps = offset + Offset.axisValueMaps;
+    if (count == 0) {
+      return value;
+    }
+    double fromPrevious = f2Dot14(maps);
+    double toPrevious = f2Dot14(maps + FontData.SizeOf.F2DOT14);
+    if (value <= fromPrevious) {
+      return toPrevious + value - fromPrevious;
+    }
+    for (int i = 1; i < count; i++) {
+      int map = maps + i * Offset.AXIS_VALUE_MAP_SIZE;
+      double from = f2Dot14(map);
+      double to = f2Dot14(map + FontData.SizeOf.F2DOT14);
+      if (value <= from) {
+        if (from == fromPrevious) {
+          return to;
+        }
+        return toPrevious + (value - fromPrevious) * (to - toPrevious) / (from - fromPrevious);
+      }
+      fromPrevious = from;
+      toPrevious = to;
+    }
+    return toPrevious + value - fromPrevious;
+  }
+
+  private double f2Dot14(int offset) {
+    return this.data.readShort(offset) / 16384.0;
+  }
+
+  /**
+   * Builder for an avar table.
+   */
+  public static class Builder extends TableBasedTableBuilder<AxisVariationsTable> {
+
+    /**
+     * Create a new builder using the header information and data provided.
+     *
+     * @param header the header information
+     * @param data the data holding the table
+     * @return a new builder
+     */
+    public static Builder createBuilder(Header header, WritableFontData data) {
+      return new Builder(header, data);
+    }
+
+    protected Builder(Header header, WritableFontData data) {
+      super(header, data);
+    }
+
+    protected Builder(Header header, ReadableFontData data) {
+      super(header, data);
+    }
+
+    @Override
+    protected AxisVariationsTable subBuildTable(ReadableFontData data) {
+      return new AxisVariationsTable(this.header(), data);
+    }
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.table.variations;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.SubTable;
+
+/**
+ * A delta-set index map, mapping glyph ids or other item indices to the outer
+ * and inner indices of delta sets in an {@link ItemVariationStore}. Indices
+ * past the end of the map use its last entry.
+ *
+ * @see "OpenType specification 1.8, 'HVAR' table"
+ */
+public final class DeltaSetIndexMap extends SubTable {
+
+  private interface Offset {
+    int format = 0;
+    int entryFormat = 1;
+    int mapCount = 2;
+    int mapData0 = 4;
+    int mapData1 = 6;
+  }
+
+  public static final int INNER_INDEX_BIT_COUNT_MASK = 0x0f;
+  public static final int MAP_ENTRY_SIZE_MASK = 0x30;
+
+  /**
+   * Constructor.
+   *
+   * @param data the data starting with the map
+   */
+  public DeltaSetIndexMap(ReadableFontData data) {
+    super(data);
+  }
+
+  /**
+   * @return the format: 0 with a 16-bit count, 1 with a 32-bit count
+   */
+  public int format() {
+    return this.data.readUByte(Offset.format);
+  }
+
+  public int entryFormat() {
+    return this.data.readUByte(Offset.entryFormat);
+  }
+
+  public int mapCount() {
+    if (format() == 0) {
+      return this.data.readUShort(Offset.mapCount);
+    }
+    return this.data.readULongAsInt(Offset.mapCount);
+  }
+
+  /**
+   * @return the size of an entry in bytes, from 1 to 4
+   */
+  public int entrySize() {
+    return ((entryFormat() & MAP_ENTRY_SIZE_MASK) >> 4) + 1;
+  }
+
+  public int innerIndexBitCount() {
+    return (entryFormat() & INNER_INDEX_BIT_COUNT_MASK) + 1;
+  }
+
+  /**
+   * @return the size of the map in bytes
+   */
+  public int size() {
+    return (format() == 0 ? Offset.mapData0 : Offset.mapData1) + mapCount() * entrySize();
+  }
+
+  private int entry(int index) {
+    int count = mapCount();
+    if (index >= count) {
+      index = count - 1;
+    }
+    int size = entrySize();
+    int offset = (format() == 0 ? Offset.mapData0 : Offset.mapData1) + index * size;
+    int entry = 0;
+    for (int i = 0; i < size; i++) {
+      entry = (entry << 8) | this.data.readUByte(offset + i);
+    }
+    return entry;
+  }
+
+  /**
+   * @return the outer index of the delta set of an item
+   */
+  public int outerIndex(int index) {
+    if (mapCount() == 0) {
+      // an empty map is the identity
+      return 0;
+    }
+    return entry(index) >>> innerIndexBitCount();
+  }
+
+  /**
+   * @return the inner index of the delta set of an item
+   */
+  public int innerIndex(int index) {
+    if (mapCount() == 0) {
+      return index;
+    }
+    return entry(index) & ((1 << innerIndexBitCount()) - 1);
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.table.variations;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.math.Fixed1616;
+import com.google.typography.font.sfntly.table.Header;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.TableBasedTableBuilder;
+
+/**
+ * The 'fvar' table defines the variation axes of a variable font and its named
+ * instances.
+ *
+ * @see "OpenType specification 1.8, 'fvar' table"
+ */
+public class FontVariationsTable extends Table {
+
+  private interface Offset {
+    int majorVersion = 0;
+    int minorVersion = 2;
+    int axesArrayOffset = 4;
+    int axisCount = 8;
+    int axisSize = 10;
+    int instanceCount = 12;
+    int instanceSize = 14;
+
+    // VariationAxisRecord
+    int axisTag = 0;
+    int axisMinValue = 4;
+    int axisDefaultValue = 8;
+    int axisMaxValue = 12;
+    int axisFlags = 16;
+    int axisNameId = 18;
+
+    // InstanceRecord
+    int instanceSubfamilyNameId = 0;
+    int instanceFlags = 2;
+    int instanceCoordinates = 4;
+  }
+
+  private FontVariationsTable(Header header, ReadableFontData data) {
+    super(header, data);
+  }
+
+  public int majorVersion() {
+    return this.data.readUShort(Offset.majorVersion);
+  }
+
+  public int minorVersion() {
+    return this.data.readUShort(Offset.minorVersion);
+  }
+
+  public int axisCount() {
+    return this.data.readUShort(Offset.axisCount);
+  }
+
+  public int instanceCount() {
+    return this.data.readUShort(Offset.instanceCount);
+  }
+
+  private int axisOffset(int axis) {
+    return this.data.readUShort(Offset.axesArrayOffset)
+        + axis * this.data.readUShort(Offset.axisSize);
+  }
+
+  private int instanceOffset(int instance) {
+    return axisOffset(axisCount()) + instance * this.data.readUShort(Offset.instanceSize);
+  }
+
+  public int axisTag(int axis) {
+    return this.data.readULongAsInt(axisOffset(axis) + Offset.axisTag);
+  }
+
+  public double axisMinValue(int axis) {
+    return Fixed1616.doubleValue(this.data.readFixed(axisOffset(axis) + Offset.axisMinValue));
+  }
+
+  public double axisDefaultValue(int axis) {
+    return Fixed1616.doubleValue(
+        this.data.readFixed(axisOffset(axis) + Offset.axisDefaultValue));
+  }
+
+  public double axisMaxValue(int axis) {
+    return Fixed1616.doubleValue(this.data.readFixed(axisOffset(axis) + Offset.axisMaxValue));
+  }
+
+  public int axisFlags(int axis) {
+    return this.data.readUShort(axisOffset(axis) + Offset.axisFlags);
+  }
+
+  public int axisNameId(int axis) {
+    return this.data.readUShort(axisOffset(axis) + Offset.axisNameId);
+  }
+
+  /**
+   * @return the index of the axis with the given tag, or -1
+   */
+  public int axisIndex(int tag) {
+    for (int axis = 0; axis < axisCount(); axis++) {
+      if (axisTag(axis) == tag) {
+        return axis;
+      }
+    }
+    return -1;
+  }
+
+  public int instanceSubfamilyNameId(int instance) {
+    return this.data.readUShort(instanceOffset(instance) + Offset.instanceSubfamilyNameId);
+  }
+
+  public int instanceFlags(int instance) {
+    return this.data.readUShort(instanceOffset(instance) + Offset.instanceFlags);
+  }
+
+  public double instanceCoordinate(int instance, int axis) {
+    return Fixed1616.doubleValue(this.data.readFixed(
+        instanceOffset(instance) + Offset.instanceCoordinates + 4 * axis));
+  }
+
+  /**
+   * @return the name id of the PostScript name of an instance, or -1 if the
+   *         instance records don't have one
+   */
+  public int instancePostScriptNameId(int instance) {
+    int coordinatesEnd = Offset.instanceCoordinates + 4 * axisCount();
+    if (this.data.readUShort(Offset.instanceSize) < coordinatesEnd + 2) {
+      return -1;
+    }
+    return this.data.readUShort(instanceOffset(instance) + coordinatesEnd);
+  }
+
+  /**
+   * Maps a coordinate in user units to the normalized range [-1, 1] with the
+   * default normalization, which is before any 'avar' mapping.
+   *
+   * @param axis the axis
+   * @param value the user coordinate; clamped to the range of the axis
+   * @return the normalized coordinate
+   */
+  public double normalize(int axis, double value) {
+    double min = axisMinValue(axis);
+    double def = axisDefaultValue(axis);
+    double max = axisMaxValue(axis);
+    value = Math.max(min, Math.min(max, value));
+    if (value < def) {
+      return -(def - value) / (def - min);
+    } else if (value > def) {
+      return (value - def) / (max - def);
+    }
+    return 0;
+  }
+
+  /**
+   * Builder for an fvar table.
+   */
+  public static class Builder extends TableBasedTableBuilder<FontVariationsTable> {
+
+    /**
+     * Create a new builder using the header information and data provided.
+     *
+     * @param header the header information
+     * @param data the data holding the table
+     * @return a new builder
+     */
+    public static Builder createBuilder(Header header, WritableFontData data) {
+      return new Builder(header, data);
+    }
+
+    protected Builder(Header header, WritableFontData data) {
+      super(header, data);
+    }
+
+    protected Builder(Header header, ReadableFontData data) {
+      super(header, data);
+    }
+
+    @Override
+    protected FontVariationsTable subBuildTable(ReadableFontData data) {
+      return new FontVariationsTable(this.header(), data);
+    }
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.table.variations;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Header;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.TableBasedTableBuilder;
+
+import java.util.List;
+
+/**
+ * The 'gvar' table holds the variations of the TrueType glyph outlines: for
+ * each glyph, a set of tuple variations with deltas for the outline points and
+ * the four phantom points that follow them.
+ *
+ * @see "OpenType specification 1.8, 'gvar' table"
+ */
+public class GlyphVariationsTable extends Table {
+
+  /**
+   * Flag set when the glyph variation data offsets are 32-bit.
+   */
+  public static final int LONG_OFFSETS = 0x0001;
+
+  /**
+   * The number of phantom points following the points of each glyph.
+   */
+  public static final int PHANTOM_POINT_COUNT = 4;
+
+  private interface Offset {
+    int majorVersion = 0;
+    int minorVersion = 2;
+    int axisCount = 4;
+    int sharedTupleCount = 6;
+    int sharedTuplesOffset = 8;
+    int glyphCount = 12;
+    int flags = 14;
+    int glyphVariationDataArrayOffset = 16;
+    int glyphVariationDataOffsets = 20;
+  }
+
+  private GlyphVariationsTable(Header header, ReadableFontData data) {
+    super(header, data);
+  }
+
+  public int majorVersion() {
+    return this.data.readUShort(Offset.majorVersion);
+  }
+
+  public int minorVersion() {
+    return this.data.readUShort(Offset.minorVersion);
+  }
+
+  public int axisCount() {
+    return this.data.readUShort(Offset.axisCount);
+  }
+
+  public int sharedTupleCount() {
+    return this.data.readUShort(Offset.sharedTupleCount);
+  }
+
+  public int sharedTuplesOffset() {
+    return this.data.readULongAsInt(Offset.sharedTuplesOffset);
+  }
+
+  public int glyphCount() {
+    return this.data.readUShort(Offset.glyphCount);
+  }
+
+  public int flags() {
+    return this.data.readUShort(Offset.flags);
+  }
+
+  public int glyphVariationDataArrayOffset() {
+    return this.data.readULongAsInt(Offset.glyphVariationDataArrayOffset);
+  }
+
+  /**
+   * @return the peak coordinates of a shared tuple
+   */
+  public double[] sharedTuple(int index) {
+    int axisCount = axisCount();
+    return TupleVariation.readTuple(
+        this.data, sharedTuplesOffset() + 2 * axisCount * index, axisCount);
+  }
+
+  /**
+   * @return the raw shared tuple records
+   */
+  public ReadableFontData sharedTuplesData() {
+    return this.data.slice(sharedTuplesOffset(), 2 * axisCount() * sharedTupleCount());
+  }
+
+  /**
+   * Gets the offset of the variation data of a glyph, relative to the start of
+   * the glyph variation data array.
+   *
+   * @param glyphId the glyph id, or the glyph count for the end of the data
+   */
+  public int glyphVariationDataOffset(int glyphId) {
+    if ((flags() & LONG_OFFSETS) != 0) {
+      return this.data.readULongAsInt(Offset.glyphVariationDataOffsets + 4 * glyphId);
+    }
+    return 2 * this.data.readUShort(Offset.glyphVariationDataOffsets + 2 * glyphId);
+  }
+
+  /**
+   * @return the variation data of a glyph; empty if the glyph doesn't vary
+   */
+  public ReadableFontData glyphVariationData(int glyphId) {
+    int start = glyphVariationDataOffset(glyphId);
+    int end = glyphVariationDataOffset(glyphId + 1);
+    return this.data.slice(glyphVariationDataArrayOffset() + start, end - start);
+  }
+
+  /**
+   * Decodes the tuple variations of a glyph.
+   *
+   * @param glyphId the glyph id
+   * @param pointCount the number of points of the glyph including the phantom
+   *        points; for composite glyphs, the number of components plus the
+   *        phantom points
+   * @return the tuple variations
+   */
+  public List<TupleVariation> tupleVariations(int glyphId, int pointCount) {
+    double[][] sharedTuples = new double[sharedTupleCount()][];
+    for (int i = 0; i < sharedTuples.length; i++) {
+      sharedTuples[i] = sharedTuple(i);
+    }
+    return TupleVariation.decode(
+        glyphVariationData(glyphId), axisCount(), sharedTuples, pointCount);
+  }
+
+  /**
+   * Builder for a gvar table.
+   */
+  public static class Builder extends TableBasedTableBuilder<GlyphVariationsTable> {
+
+    /**
+     * Create a new builder using the header information and data provided.
+     *
+     * @param header the header information
+     * @param data the data holding the table
+     * @return a new builder
+     */
+    public static Builder createBuilder(Header header, WritableFontData data) {
+      return new Builder(header, data);
+    }
+
+    protected Builder(Header header, WritableFontData data) {
+      super(header, data);
+    }
+
+    protected Builder(Header header, ReadableFontData data) {
+      super(header, data);
+    }
+
+    @Override
+    protected GlyphVariationsTable subBuildTable(ReadableFontData data) {
+      return new GlyphVariationsTable(this.header(), data);
+    }
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.table.variations;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Header;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.TableBasedTableBuilder;
+
+/**
+ * The 'HVAR' table holds the variations of the horizontal glyph metrics: the
+ * advance widths, and optionally the side bearings.
+ *
+ * @see "OpenType specification 1.8, 'HVAR' table"
+ */
+public class HorizontalMetricsVariationsTable extends Table {
+
+  private interface Offset {
+    int majorVersion = 0;
+    int minorVersion = 2;
+    int itemVariationStoreOffset = 4;
+    int advanceWidthMappingOffset = 8;
+    int lsbMappingOffset = 12;
+    int rsbMappingOffset = 16;
+  }
+
+  private HorizontalMetricsVariationsTable(Header header, ReadableFontData data) {
+    super(header, data);
+  }
+
+  public int majorVersion() {
+    return this.data.readUShort(Offset.majorVersion);
+  }
+
+  public int minorVersion() {
+    return this.data.readUShort(Offset.minorVersion);
+  }
+
+  public int itemVariationStoreOffset() {
+    return this.data.readULongAsInt(Offset.itemVariationStoreOffset);
+  }
+
+  public int advanceWidthMappingOffset() {
+    return this.data.readULongAsInt(Offset.advanceWidthMappingOffset);
+  }
+
+  public int lsbMappingOffset() {
+    return this.data.readULongAsInt(Offset.lsbMappingOffset);
+  }
+
+  public int rsbMappingOffset() {
+    return this.data.readULongAsInt(Offset.rsbMappingOffset);
+  }
+
+  public ItemVariationStore itemVariationStore() {
+    return new ItemVariationStore(this.data.slice(itemVariationStoreOffset()));
+  }
+
+  /**
+   * @return the advance width mapping, or null if the delta sets are indexed
+   *         directly by glyph id
+   */
+  public DeltaSetIndexMap advanceWidthMapping() {
+    return mapping(advanceWidthMappingOffset());
+  }
+
+  /**
+   * @return the left side bearing mapping, or null
+   */
+  public DeltaSetIndexMap lsbMapping() {
+    return mapping(lsbMappingOffset());
+  }
+
+  /**
+   * @return the right side bearing mapping, or null
+   */
+  public DeltaSetIndexMap rsbMapping() {
+    return mapping(rsbMappingOffset());
+  }
+
+  private DeltaSetIndexMap mapping(int offset) {
+    if (offset == 0) {
+      return null;
+    }
+    return new DeltaSetIndexMap(this.data.slice(offset));
+  }
+
+  /**
+   * Computes the advance width delta of a glyph for an instance.
+   *
+   * @param glyphId the glyph id
+   * @param coordinates the normalized coordinates of the instance
+   * @return the delta, not rounded
+   */
+  public double advanceWidthDelta(int glyphId, double[] coordinates) {
+    DeltaSetIndexMap mapping = advanceWidthMapping();
+    if (mapping == null) {
+      return itemVariationStore().delta(0, glyphId, coordinates);
+    }
+    return itemVariationStore().delta(
+        mapping.outerIndex(glyphId), mapping.innerIndex(glyphId), coordinates);
+  }
+
+  /**
+   * Builder for an HVAR table.
+   */
+  public static class Builder extends TableBasedTableBuilder<HorizontalMetricsVariationsTable> {
+
+    /**
+     * Create a new builder using the header information and data provided.
+     *
+     * @param header the header information
+     * @param data the data holding the table
+     * @return a new builder
+     */
+    public static Builder createBuilder(Header header, WritableFontData data) {
+      return new Builder(header, data);
+    }
+
+    protected Builder(Header header, WritableFontData data) {
+      super(header, data);
+    }
+
+    protected Builder(Header header, ReadableFontData data) {
+      super(header, data);
+    }
+
+    @Override
+    protected HorizontalMetricsVariationsTable subBuildTable(ReadableFontData data) {
+      return new HorizontalMetricsVariationsTable(this.header(), data);
+    }
+  }
+}
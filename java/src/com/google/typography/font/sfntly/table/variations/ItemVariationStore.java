@@ -0,0 +1,224 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.table.variations;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.SubTable;
+
+/**
+ * An item variation store, holding the deltas of the variable values of the
+ * HVAR, VVAR and MVAR tables and of GDEF. A delta set is addressed by an outer
+ * index, selecting an ItemVariationData subtable, and an inner index within
+ * it.
+ *
+ * @see "OpenType specification 1.8, OpenType Font Variations Common Table Formats"
+ */
+public final class ItemVariationStore extends SubTable {
+
+  private interface Offset {
+    int format = 0;
+    int variationRegionListOffset = 2;
+    int itemVariationDataCount = 6;
+    int itemVariationDataOffsets = 8;
+
+    // VariationRegionList
+    int regionAxisCount = 0;
+    int regionCount = 2;
+    int variationRegions = 4;
+    int REGION_AXIS_COORDINATES_SIZE = 6;
+    int startCoord = 0;
+    int peakCoord = 2;
+    int endCoord = 4;
+
+    // ItemVariationData
+    int itemCount = 0;
+    int wordDeltaCount = 2;
+    int regionIndexCount = 4;
+    int regionIndexes = 6;
+  }
+
+  private static final int LONG_WORDS = 0x8000;
+  private static final int WORD_DELTA_COUNT_MASK = 0x7fff;
+
+  /**
+   * Constructor.
+   *
+   * @param data the data starting with the store
+   */
+  public ItemVariationStore(ReadableFontData data) {
+    super(data);
+  }
+
+  public int format() {
+    return this.data.readUShort(Offset.format);
+  }
+
+  public int itemVariationDataCount() {
+    return this.data.readUShort(Offset.itemVariationDataCount);
+  }
+
+  private int regionListOffset() {
+    return this.data.readULongAsInt(Offset.variationRegionListOffset);
+  }
+
+  private int itemVariationDataOffset(int outer) {
+    return this.data.readULongAsInt(Offset.itemVariationDataOffsets + 4 * outer);
+  }
+
+  public int regionAxisCount() {
+    return this.data.readUShort(regionListOffset() + Offset.regionAxisCount);
+  }
+
+  public int regionCount() {
+    return this.data.readUShort(regionListOffset() + Offset.regionCount);
+  }
+
+  /**
+   * @return the number of delta sets in an ItemVariationData subtable
+   */
+  public int itemCount(int outer) {
+    return this.data.readUShort(itemVariationDataOffset(outer) + Offset.itemCount);
+  }
+
+  /**
+   * Computes the scalar of a region for an instance: the product over the
+   * axes of the tent function defined by the start, peak and end coordinates.
+   *
+   * @param region the index of the region
+   * @param coordinates the normalized coordinates of the instance
+   * @return the scalar, between 0 and 1
+   */
+  public double regionScalar(int region, double[] coordinates) {
+    int axisCount = regionAxisCount();
+    int offset = regionListOffset() + Offset.variationRegions
+        + region * axisCount * Offset.REGION_AXIS_COORDINATES_SIZE;
+    double scalar = 1;
+    for (int axis = 0; axis < axisCount; axis++) {
+      int record = offset + axis * Offset.REGION_AXIS_COORDINATES_SIZE;
+      double start = f2Dot14(record + Offset.startCoord);
+      double peak = f2Dot14(record + Offset.peakCoord);
+      double end = f2Dot14(record + Offset.endCoord);
+      double value = axis < coordinates.length ? coordinates[axis] : 0;
+      scalar *= tent(start, peak, end, value);
+      if (scalar == 0) {
+        return 0;
+      }
+    }
+    return scalar;
+  }
+
+  /**
+   * Computes the contribution of one axis to the scalar of a region.
+   */
+  static double tent(double start, double peak, double end, double value) {
+    if (start > peak || peak > end || (start < 0 && end > 0 && peak != 0) || peak == 0) {
+      // invalid regions and axes without a peak don't restrict the region
+      return 1;
+    }
+    if (value == peak) {
+      return 1;
+    }
+    if (value <= start || value >= end) {
+      return 0;
+    }
+    if (value < peak) {
+      return (value - start) / (peak - start);
+    }
+    return (end - value) / (end - peak);
+  }
+
+  /**
+   * Computes the interpolated delta of a delta set for an instance.
+   *
+   * @param outer the index of the ItemVariationData subtable
+   * @param inner the index of the delta set in it
+   * @param coordinates the normalized coordinates of the instance
+   * @return the delta, not rounded
+   */
+  public double delta(int outer, int inner, double[] coordinates) {
+    if (outer >= itemVariationDataCount()) {
+      return 0;
+    }
+    int offset = itemVariationDataOffset(outer);
+    int itemCount = this.data.readUShort(offset + Offset.itemCount);
+    if (inner >= itemCount) {
+      return 0;
+    }
+    int wordDeltaCount = this.data.readUShort(offset + Offset.wordDeltaCount);
+    boolean longWords = (wordDeltaCount & LONG_WORDS) != 0;
+    int wordCount = wordDeltaCount & WORD_DELTA_COUNT_MASK;
+    int regionIndexCount = this.data.readUShort(offset + Offset.regionIndexCount);
+    int wordSize = longWords ? 4 : 2;
+    int shortSize = longWords ? 2 : 1;
+    int row = offset + Offset.regionIndexes + 2 * regionIndexCount + inner * rowSize(offset);
+
+    double delta = 0;
+    for (int i = 0; i < regionIndexCount; i++) {
+      int value;
+      if (i < wordCount) {
+        value = longWords
+            ? this.data.readLong(row + i * wordSize) : this.data.readShort(row + i * wordSize);
+      } else {
+        int position = row + wordCount * wordSize + (i - wordCount) * shortSize;
+        value = longWords ? this.data.readShort(position) : this.data.readByte(position);
+      }
+      if (value != 0) {
+        int region = this.data.readUShort(offset + Offset.regionIndexes + 2 * i);
+        delta += value * regionScalar(region, coordinates);
+      }
+    }
+    return delta;
+  }
+
+  /**
+   * @return the size of a delta set of the ItemVariationData subtable at an
+   *         offset
+   */
+  private int rowSize(int offset) {
+    int wordDeltaCount = this.data.readUShort(offset + Offset.wordDeltaCount);
+    int wordCount = wordDeltaCount & WORD_DELTA_COUNT_MASK;
+    int regionIndexCount = this.data.readUShort(offset + Offset.regionIndexCount);
+    int size = 2 * wordCount + (regionIndexCount - wordCount);
+    return (wordDeltaCount & LONG_WORDS) != 0 ? 2 * size : size;
+  }
+
+  /**
+   * Gets the size of the store, up to the end of the last of its subtables.
+   * The store doesn't record its length, so this is needed to copy it out of
+   * the table holding it.
+   *
+   * @return the size in bytes
+   */
+  public int size() {
+    int regionList = regionListOffset();
+    int size = regionList + Offset.variationRegions
+        + regionCount() * regionAxisCount() * Offset.REGION_AXIS_COORDINATES_SIZE;
+    int count = itemVariationDataCount();
+    size = Math.max(size, Offset.itemVariationDataOffsets + 4 * count);
+    for (int outer = 0; outer < count; outer++) {
+      int offset = itemVariationDataOffset(outer);
+      int regionIndexCount = this.data.readUShort(offset + Offset.regionIndexCount);
+      size = Math.max(size, offset + Offset.regionIndexes + 2 * regionIndexCount
+          + itemCount(outer) * rowSize(offset));
+    }
+    return size;
+  }
+
+  private double f2Dot14(int offset) {
+    return this.data.readShort(offset) / 16384.0;
+  }
+}
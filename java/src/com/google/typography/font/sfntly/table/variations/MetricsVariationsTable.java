@@ -0,0 +1,188 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.table.variations;
+
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Header;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.TableBasedTableBuilder;
+
+/**
+ * The 'MVAR' table holds the variations of font-wide metrics of other tables,
+ * identified by value tags.
+ *
+ * @see "OpenType specification 1.8, 'MVAR' table"
+ */
+public class MetricsVariationsTable extends Table {
+
+  /**
+   * Value tags of the metrics that may vary.
+   */
+  public interface ValueTag {
+    // OS/2
+    int hasc = Tag.intValue(new byte[]{'h', 'a', 's', 'c'});
+    int hdsc = Tag.intValue(new byte[]{'h', 'd', 's', 'c'});
+    int hlgp = Tag.intValue(new byte[]{'h', 'l', 'g', 'p'});
+    int hcla = Tag.intValue(new byte[]{'h', 'c', 'l', 'a'});
+    int hcld = Tag.intValue(new byte[]{'h', 'c', 'l', 'd'});
+    int xhgt = Tag.intValue(new byte[]{'x', 'h', 'g', 't'});
+    int cpht = Tag.intValue(new byte[]{'c', 'p', 'h', 't'});
+    int sbxs = Tag.intValue(new byte[]{'s', 'b', 'x', 's'});
+    int sbys = Tag.intValue(new byte[]{'s', 'b', 'y', 's'});
+    int sbxo = Tag.intValue(new byte[]{'s', 'b', 'x', 'o'});
+    int sbyo = Tag.intValue(new byte[]{'s', 'b', 'y', 'o'});
+    int spxs = Tag.intValue(new byte[]{'s', 'p', 'x', 's'});
+    int spys = Tag.intValue(new byte[]{'s', 'p', 'y', 's'});
+    int spxo = Tag.intValue(new byte[]{'s', 'p', 'x', 'o'});
+    int spyo = Tag.intValue(new byte[]{'s', 'p', 'y', 'o'});
+    int strs = Tag.intValue(new byte[]{'s', 't', 'r', 's'});
+    int stro = Tag.intValue(new byte[]{'s', 't', 'r', 'o'});
+
+    // hhea
+    int hcrs = Tag.intValue(new byte[]{'h', 'c', 'r', 's'});
+    int hcrn = Tag.intValue(new byte[]{'h', 'c', 'r', 'n'});
+    int hcof = Tag.intValue(new byte[]{'h', 'c', 'o', 'f'});
+
+    // vhea
+    int vasc = Tag.intValue(new byte[]{'v', 'a', 's', 'c'});
+    int vdsc = Tag.intValue(new byte[]{'v', 'd', 's', 'c'});
+    int vlgp = Tag.intValue(new byte[]{'v', 'l', 'g', 'p'});
+    int vcrs = Tag.intValue(new byte[]{'v', 'c', 'r', 's'});
+    int vcrn = Tag.intValue(new byte[]{'v', 'c', 'r', 'n'});
+    int vcof = Tag.intValue(new byte[]{'v', 'c', 'o', 'f'});
+
+    // post
+    int undo = Tag.intValue(new byte[]{'u', 'n', 'd', 'o'});
+    int unds = Tag.intValue(new byte[]{'u', 'n', 'd', 's'});
+  }
+
+  private interface Offset {
+    int majorVersion = 0;
+    int minorVersion = 2;
+    int valueRecordSize = 6;
+    int valueRecordCount = 8;
+    int itemVariationStoreOffset = 10;
+    int valueRecords = 12;
+
+    // ValueRecord
+    int valueTag = 0;
+    int deltaSetOuterIndex = 4;
+    int deltaSetInnerIndex = 6;
+  }
+
+  private MetricsVariationsTable(Header header, ReadableFontData data) {
+    super(header, data);
+  }
+
+  public int majorVersion() {
+    return this.data.readUShort(Offset.majorVersion);
+  }
+
+  public int minorVersion() {
+    return this.data.readUShort(Offset.minorVersion);
+  }
+
+  public int valueRecordCount() {
+    return this.data.readUShort(Offset.valueRecordCount);
+  }
+
+  private int valueRecordOffset(int record) {
+    return Offset.valueRecords + record * this.data.readUShort(Offset.valueRecordSize);
+  }
+
+  public int valueTag(int record) {
+    return this.data.readULongAsInt(valueRecordOffset(record) + Offset.valueTag);
+  }
+
+  public int deltaSetOuterIndex(int record) {
+    return this.data.readUShort(valueRecordOffset(record) + Offset.deltaSetOuterIndex);
+  }
+
+  public int deltaSetInnerIndex(int record) {
+    return this.data.readUShort(valueRecordOffset(record) + Offset.deltaSetInnerIndex);
+  }
+
+  /**
+   * @return the item variation store, or null if the table has no records
+   */
+  public ItemVariationStore itemVariationStore() {
+    int offset = this.data.readUShort(Offset.itemVariationStoreOffset);
+    if (offset == 0) {
+      return null;
+    }
+    return new ItemVariationStore(this.data.slice(offset));
+  }
+
+  /**
+   * Computes the delta of a metric for an instance.
+   *
+   * @param tag the value tag of the metric
+   * @param coordinates the normalized coordinates of the instance
+   * @return the delta, not rounded; 0 if the metric doesn't vary
+   */
+  public double delta(int tag, double[] coordinates) {
+    // the records are sorted by tag
+    int low = 0;
+    int high = valueRecordCount() - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      long middleTag = valueTag(middle) & 0xffffffffL;
+      long key = tag & 0xffffffffL;
+      if (middleTag < key) {
+        low = middle + 1;
+      } else if (middleTag > key) {
+        high = middle - 1;
+      } else {
+        return itemVariationStore().delta(
+            deltaSetOuterIndex(middle), deltaSetInnerIndex(middle), coordinates);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Builder for an MVAR table.
+   */
+  public static class Builder extends TableBasedTableBuilder<MetricsVariationsTable> {
+
+    /**
+     * Create a new builder using the header information and data provided.
+     *
+     * @param header the header information
+     * @param data the data holding the table
+     * @return a new builder
+     */
+    public static Builder createBuilder(Header header, WritableFontData data) {
+      return new Builder(header, data);
+    }
+
+    protected Builder(Header header, WritableFontData data) {
+      super(header, data);
+    }
+
+    protected Builder(Header header, ReadableFontData data) {
+      super(header, data);
+    }
+
+    @Override
+    protected MetricsVariationsTable subBuildTable(ReadableFontData data) {
+      return new MetricsVariationsTable(this.header(), data);
+    }
+  }
+}
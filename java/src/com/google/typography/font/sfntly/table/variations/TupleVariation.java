@@ -0,0 +1,249 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.table.variations;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A decoded tuple variation of a tuple variation store: the deltas of some or
+ * all points of a glyph for the region of the variation space around a peak
+ * tuple.
+ *
+ * @see "OpenType specification 1.8, OpenType Font Variations Common Table Formats"
+ */
+public final class TupleVariation {
+
+  static final int SHARED_POINT_NUMBERS = 0x8000;
+  static final int COUNT_MASK = 0x0fff;
+
+  static final int EMBEDDED_PEAK_TUPLE = 0x8000;
+  static final int INTERMEDIATE_REGION = 0x4000;
+  static final int PRIVATE_POINT_NUMBERS = 0x2000;
+  static final int TUPLE_INDEX_MASK = 0x0fff;
+
+  private static final int POINTS_ARE_WORDS = 0x80;
+  private static final int POINT_RUN_COUNT_MASK = 0x7f;
+  private static final int DELTAS_ARE_ZERO = 0x80;
+  private static final int DELTAS_ARE_WORDS = 0x40;
+  private static final int DELTA_RUN_COUNT_MASK = 0x3f;
+
+  private final double[] peak;
+  private final double[] start;
+  private final double[] end;
+  private final int[] points;
+  private final int[] xDeltas;
+  private final int[] yDeltas;
+
+  private TupleVariation(double[] peak, double[] start, double[] end, int[] points,
+      int[] xDeltas, int[] yDeltas) {
+    this.peak = peak;
+    this.start = start;
+    this.end = end;
+    this.points = points;
+    this.xDeltas = xDeltas;
+    this.yDeltas = yDeltas;
+  }
+
+  /**
+   * @return the peak coordinates of the region
+   */
+  public double[] peak() {
+    return this.peak.clone();
+  }
+
+  /**
+   * @return true if the variation has explicit intermediate region bounds
+   */
+  public boolean hasIntermediateRegion() {
+    return this.start != null;
+  }
+
+  /**
+   * @return the point numbers the deltas apply to, or null if they apply to
+   *         all points
+   */
+  public int[] points() {
+    return this.points == null ? null : this.points.clone();
+  }
+
+  /**
+   * @return the number of deltas
+   */
+  public int deltaCount() {
+    return this.xDeltas.length;
+  }
+
+  public int xDelta(int i) {
+    return this.xDeltas[i];
+  }
+
+  public int yDelta(int i) {
+    return this.yDeltas[i];
+  }
+
+  /**
+   * Computes the scalar applied to the deltas for an instance.
+   *
+   * @param coordinates the normalized coordinates of the instance
+   * @return the scalar, between 0 and 1
+   */
+  public double scalar(double[] coordinates) {
+    double scalar = 1;
+    for (int axis = 0; axis < this.peak.length; axis++) {
+      double peak = this.peak[axis];
+      double value = axis < coordinates.length ? coordinates[axis] : 0;
+      double start = this.start != null ? this.start[axis] : Math.min(0, peak);
+      double end = this.end != null ? this.end[axis] : Math.max(0, peak);
+      scalar *= ItemVariationStore.tent(start, peak, end, value);
+      if (scalar == 0) {
+        return 0;
+      }
+    }
+    return scalar;
+  }
+
+  /**
+   * Decodes the tuple variations of a glyph variation data table.
+   *
+   * @param data the glyph variation data
+   * @param axisCount the number of axes
+   * @param sharedTuples the shared peak tuples
+   * @param pointCount the number of points of the glyph, including the phantom
+   *        points
+   * @return the tuple variations
+   */
+  static List<TupleVariation> decode(
+      ReadableFontData data, int axisCount, double[][] sharedTuples, int pointCount) {
+    List<TupleVariation> variations = new ArrayList<TupleVariation>();
+    if (data.length() == 0) {
+      return variations;
+    }
+    int tupleVariationCount = data.readUShort(0);
+    int[] serialized = {data.readUShort(2)};
+    int[] sharedPoints = null;
+    if ((tupleVariationCount & SHARED_POINT_NUMBERS) != 0) {
+      sharedPoints = readPoints(data, serialized);
+    }
+
+    int header = 4;
+    for (int i = 0; i < (tupleVariationCount & COUNT_MASK); i++) {
+      int variationDataSize = data.readUShort(header);
+      int tupleIndex = data.readUShort(header + 2);
+      header += 4;
+      double[] peak;
+      if ((tupleIndex & EMBEDDED_PEAK_TUPLE) != 0) {
+        peak = readTuple(data, header, axisCount);
+        header += 2 * axisCount;
+      } else {
+        peak = sharedTuples[tupleIndex & TUPLE_INDEX_MASK];
+      }
+      double[] start = null;
+      double[] end = null;
+      if ((tupleIndex & INTERMEDIATE_REGION) != 0) {
+        start = readTuple(data, header, axisCount);
+        end = readTuple(data, header + 2 * axisCount, axisCount);
+        header += 4 * axisCount;
+      }
+
+      int[] position = {serialized[0]};
+      int[] points = sharedPoints;
+      if ((tupleIndex & PRIVATE_POINT_NUMBERS) != 0) {
+        points = readPoints(data, position);
+      }
+      int count = points == null ? pointCount : points.length;
+      int[] xDeltas = readDeltas(data, position, count);
+      int[] yDeltas = readDeltas(data, position, count);
+      variations.add(new TupleVariation(peak, start, end, points, xDeltas, yDeltas));
+      serialized[0] += variationDataSize;
+    }
+    return variations;
+  }
+
+  static double[] readTuple(ReadableFontData data, int offset, int axisCount) {
+    double[] tuple = new double[axisCount];
+    for (int axis = 0; axis < axisCount; axis++) {
+      tuple[axis] = data.readShort(offset + 2 * axis) / 16384.0;
+    }
+    return tuple;
+  }
+
+  /**
+   * Reads packed point numbers.
+   *
+   * @param position the offset to read at, advanced past the point numbers
+   * @return the point numbers, or null for all points
+   */
+  static int[] readPoints(ReadableFontData data, int[] position) {
+    int offset = position[0];
+    int count = data.readUByte(offset++);
+    if ((count & POINTS_ARE_WORDS) != 0) {
+      count = ((count & POINT_RUN_COUNT_MASK) << 8) | data.readUByte(offset++);
+    }
+    int[] points = null;
+    if (count > 0) {
+      points = new int[count];
+      int point = 0;
+      int i = 0;
+      while (i < count) {
+        int control = data.readUByte(offset++);
+        int runCount = (control & POINT_RUN_COUNT_MASK) + 1;
+        boolean words = (control & POINTS_ARE_WORDS) != 0;
+        for (int j = 0; j < runCount && i < count; j++) {
+          if (words) {
+            point += data.readUShort(offset);
+            offset += 2;
+          } else {
+            point += data.readUByte(offset++);
+          }
+          points[i++] = point;
+        }
+      }
+    }
+    position[0] = offset;
+    return points;
+  }
+
+  /**
+   * Reads packed deltas.
+   *
+   * @param position the offset to read at, advanced past the deltas
+   */
+  static int[] readDeltas(ReadableFontData data, int[] position, int count) {
+    int offset = position[0];
+    int[] deltas = new int[count];
+    int i = 0;
+    while (i < count) {
+      int control = data.readUByte(offset++);
+      int runCount = (control & DELTA_RUN_COUNT_MASK) + 1;
+      for (int j = 0; j < runCount && i < count; j++) {
+        if ((control & DELTAS_ARE_ZERO) != 0) {
+          deltas[i++] = 0;
+        } else if ((control & DELTAS_ARE_WORDS) != 0) {
+          deltas[i++] = data.readShort(offset);
+          offset += 2;
+        } else {
+          deltas[i++] = data.readByte(offset++);
+        }
+      }
+    }
+    position[0] = offset;
+    return deltas;
+  }
+}
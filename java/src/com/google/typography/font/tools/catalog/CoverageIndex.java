@@ -0,0 +1,853 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.catalog;
+
+import com.google.typography.font.sfntly.Font.PlatformId;
+import com.google.typography.font.sfntly.Font.UnicodeEncodingId;
+import com.google.typography.font.sfntly.Font.WindowsEncodingId;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.table.Header;
+import com.google.typography.font.sfntly.table.core.CMap;
+import com.google.typography.font.sfntly.table.core.CMapFormat12;
+import com.google.typography.font.sfntly.table.core.CMapFormat4;
+import com.google.typography.font.sfntly.table.core.CMapTable;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * An index of which fonts of a collection cover which codepoints, held in a
+ * file that is memory mapped for queries.
+ *
+ * <p>The codepoint space is split into blocks of 64 codepoints. Each block
+ * has a bitmap of the fonts covering the whole block, and for the fonts
+ * covering part of it, a bitmap for each distinct 64 bit mask of the covered
+ * codepoints. Identical bitmaps and identical blocks are stored once. A
+ * lookup reads one block and ORs a few bitmaps, without touching the fonts.
+ *
+ * <p>Instances are immutable and may be shared between threads.
+ */
+public final class CoverageIndex {
+
+  private static final int MAGIC = Tag.intValue(new byte[] {'c', 'o', 'v', 'x'});
+  private static final int VERSION = 1;
+
+  private static final int BLOCK_SHIFT = 6;
+  private static final int BLOCK_MASK = (1 << BLOCK_SHIFT) - 1;
+  private static final int MAX_CODEPOINT = 0x10FFFF;
+  private static final int BLOCK_COUNT = (MAX_CODEPOINT >> BLOCK_SHIFT) + 1;
+
+  private interface Offset {
+    // header
+    int magic = 0;
+    int version = 4;
+    int fontCount = 8;
+    int bitmapWords = 12;
+    int fontIds = 16;
+    int blockTable = 20;
+    int records = 24;
+    int bitmaps = 28;
+    int headerSize = 32;
+
+    // block record
+    int recordFullBitmap = 0;
+    int recordGroupCount = 4;
+    int recordGroups = 8;
+    int groupMask = 0;
+    int groupBitmap = 8;
+    int groupSize = 12;
+  }
+
+  private final ByteBuffer buffer;
+  private final int fontCount;
+  private final int words;
+  private final int fontIds;
+  private final int blockTable;
+  private final int records;
+  private final int bitmaps;
+
+  /**
+   * @param buffer the index, as written by {@link Builder#write}
+   * @throws IOException if the buffer does not hold an index
+   */
+  public CoverageIndex(ByteBuffer buffer) throws IOException {
+    this.buffer = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+    if (this.buffer.limit() < Offset.headerSize
+        || this.buffer.getInt(Offset.magic) != MAGIC) {
+      throw new IOException("Not a coverage index");
+    }
+    if (this.buffer.getInt(Offset.version) != VERSION) {
+      throw new IOException("Unsupported coverage index version: "
+          + this.buffer.getInt(Offset.version));
+    }
+    this.fontCount = this.buffer.getInt(Offset.fontCount);
+    this.words = this.buffer.getInt(Offset.bitmapWords);
+    this.fontIds = this.buffer.getInt(Offset.fontIds);
+    this.blockTable = this.buffer.getInt(Offset.blockTable);
+    this.records = this.buffer.getInt(Offset.records);
+    this.bitmaps = this.buffer.getInt(Offset.bitmaps);
+    if (fontCount < 0 || words != bitmapWords(fontCount)
+        || blockTable + BLOCK_COUNT * 4 > this.buffer.limit()
+        || bitmaps > this.buffer.limit()) {
+      throw new IOException("Corrupt coverage index");
+    }
+  }
+
+  /**
+   * Maps an index file into memory.
+   *
+   * @param file the index file
+   * @return the index
+   * @throws IOException if the file cannot be read or does not hold an index
+   */
+  public static CoverageIndex open(File file) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      return new CoverageIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } finally {
+      raf.close();
+    }
+  }
+
+  public int fontCount() {
+    return this.fontCount;
+  }
+
+  /**
+   * @param font the index of the font, in the order the fonts were added
+   * @return the id the font was added with
+   */
+  public String fontId(int font) {
+    if (font < 0 || font >= fontCount) {
+      throw new IndexOutOfBoundsException("Font index out of range: " + font);
+    }
+    int offset = buffer.getInt(fontIds + font * 4);
+    byte[] b = new byte[buffer.getShort(offset) & 0xffff];
+    for (int i = 0; i < b.length; i++) {
+      b[i] = buffer.get(offset + 2 + i);
+    }
+    try {
+      return new String(b, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * @return whether the font maps the codepoint to a glyph other than notdef
+   */
+  public boolean covers(int font, int codepoint) {
+    if (font < 0 || font >= fontCount) {
+      throw new IndexOutOfBoundsException("Font index out of range: " + font);
+    }
+    if (codepoint < 0 || codepoint > MAX_CODEPOINT) {
+      return false;
+    }
+    int record = blockRecord(codepoint);
+    int word = font >>> 6;
+    long bit = 1L << font;
+    if ((bitmapWord(buffer.getInt(record + Offset.recordFullBitmap), word) & bit) != 0) {
+      return true;
+    }
+    long codepointBit = 1L << (codepoint & BLOCK_MASK);
+    int groupCount = buffer.getInt(record + Offset.recordGroupCount);
+    for (int g = 0; g < groupCount; g++) {
+      int group = record + Offset.recordGroups + g * Offset.groupSize;
+      if ((buffer.getLong(group + Offset.groupMask) & codepointBit) != 0
+          && (bitmapWord(buffer.getInt(group + Offset.groupBitmap), word) & bit) != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the indices of the fonts covering the codepoint
+   */
+  public BitSet fontsCovering(int codepoint) {
+    long[] fonts = new long[words];
+    coverage(codepoint, fonts);
+    BitSet set = new BitSet(fontCount);
+    for (int font = nextFont(fonts, 0); font >= 0; font = nextFont(fonts, font + 1)) {
+      set.set(font);
+    }
+    return set;
+  }
+
+  /**
+   * Finds a small set of fonts that together cover the codepoints of a text.
+   * Fonts are chosen greedily: each pick is a font covering the first
+   * codepoint not yet covered together with as many of the following ones as
+   * possible, and among equally good fonts the one added first wins, so the
+   * order the fonts were added in acts as the fallback priority. Codepoints
+   * that no font covers are ignored.
+   *
+   * @param text the text
+   * @return the indices of the chosen fonts, in the order they were picked
+   */
+  public int[] coveringFonts(CharSequence text) {
+    List<long[]> pending = new ArrayList<long[]>();
+    BitSet seen = new BitSet();
+    for (int i = 0; i < text.length(); ) {
+      int codepoint = Character.codePointAt(text, i);
+      i += Character.charCount(codepoint);
+      if (seen.get(codepoint)) {
+        continue;
+      }
+      seen.set(codepoint);
+      long[] fonts = new long[words];
+      if (coverage(codepoint, fonts)) {
+        pending.add(fonts);
+      }
+    }
+
+    int[] chosen = new int[Math.min(pending.size(), fontCount)];
+    int chosenCount = 0;
+    long[] candidates = new long[words];
+    while (!pending.isEmpty()) {
+      System.arraycopy(pending.get(0), 0, candidates, 0, words);
+      for (int i = 1; i < pending.size(); i++) {
+        long[] fonts = pending.get(i);
+        if (intersects(candidates, fonts)) {
+          for (int w = 0; w < words; w++) {
+            candidates[w] &= fonts[w];
+          }
+        }
+      }
+      int font = nextFont(candidates, 0);
+      chosen[chosenCount++] = font;
+      int word = font >>> 6;
+      long bit = 1L << font;
+      List<long[]> remaining = new ArrayList<long[]>();
+      for (long[] fonts : pending) {
+        if ((fonts[word] & bit) == 0) {
+          remaining.add(fonts);
+        }
+      }
+      pending = remaining;
+    }
+    return Arrays.copyOf(chosen, chosenCount);
+  }
+
+  private int blockRecord(int codepoint) {
+    return records + buffer.getInt(blockTable + (codepoint >> BLOCK_SHIFT) * 4);
+  }
+
+  private long bitmapWord(int bitmap, int word) {
+    return buffer.getLong(bitmaps + (bitmap * words + word) * 8);
+  }
+
+  /**
+   * Sets the bits of the fonts covering a codepoint.
+   *
+   * @param fonts the bitmap to fill, cleared first
+   * @return whether any font covers the codepoint
+   */
+  private boolean coverage(int codepoint, long[] fonts) {
+    Arrays.fill(fonts, 0);
+    if (codepoint < 0 || codepoint > MAX_CODEPOINT) {
+      return false;
+    }
+    int record = blockRecord(codepoint);
+    boolean covered = or(buffer.getInt(record + Offset.recordFullBitmap), fonts);
+    long codepointBit = 1L << (codepoint & BLOCK_MASK);
+    int groupCount = buffer.getInt(record + Offset.recordGroupCount);
+    for (int g = 0; g < groupCount; g++) {
+      int group = record + Offset.recordGroups + g * Offset.groupSize;
+      if ((buffer.getLong(group + Offset.groupMask) & codepointBit) != 0) {
+        covered |= or(buffer.getInt(group + Offset.groupBitmap), fonts);
+      }
+    }
+    return covered;
+  }
+
+  private boolean or(int bitmap, long[] fonts) {
+    int offset = bitmaps + bitmap * words * 8;
+    long any = 0;
+    for (int w = 0; w < words; w++) {
+      long word = buffer.getLong(offset + w * 8);
+      fonts[w] |= word;
+      any |= word;
+    }
+    return any != 0;
+  }
+
+  private static boolean intersects(long[] a, long[] b) {
+    for (int w = 0; w < a.length; w++) {
+      if ((a[w] & b[w]) != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int nextFont(long[] fonts, int from) {
+    int w = from >>> 6;
+    if (w >= fonts.length) {
+      return -1;
+    }
+    long word = fonts[w] & (-1L << from);
+    while (word == 0) {
+      if (++w >= fonts.length) {
+        return -1;
+      }
+      word = fonts[w];
+    }
+    return w * 64 + Long.numberOfTrailingZeros(word);
+  }
+
+  private static int bitmapWords(int fontCount) {
+    return (fontCount + 63) >>> 6;
+  }
+
+  /**
+   * Gets the codepoints a cmap table maps to glyphs other than notdef, from
+   * its preferred Unicode cmap. Format 4 segments and format 12 groups are
+   * read as ranges; only format 4 segments that map through the glyph id
+   * array, and cmaps of other formats, are looked at codepoint by codepoint.
+   *
+   * @param cmapTable the cmap table
+   * @return the codepoint ranges as sorted, disjoint pairs of first and last
+   *         codepoint, empty if there is no Unicode cmap
+   */
+  public static int[] codepointRanges(CMapTable cmapTable) {
+    CMap best = null;
+    int bestRank = Integer.MAX_VALUE;
+    for (CMap cmap : cmapTable) {
+      int rank = cmapRank(cmap.platformId(), cmap.encodingId());
+      if (rank < bestRank) {
+        best = cmap;
+        bestRank = rank;
+      }
+    }
+    return best == null ? new int[0] : codepointRanges(best);
+  }
+
+  private static int cmapRank(int platformId, int encodingId) {
+    if (platformId == PlatformId.Windows.value()) {
+      if (encodingId == WindowsEncodingId.UnicodeUCS4.value()) {
+        return 0;
+      }
+      if (encodingId == WindowsEncodingId.UnicodeUCS2.value()) {
+        return 2;
+      }
+    } else if (platformId == PlatformId.Unicode.value()) {
+      if (encodingId == UnicodeEncodingId.Unicode2_0.value()) {
+        return 1;
+      }
+      if (encodingId != UnicodeEncodingId.UnicodeVariationSequences.value()) {
+        return 3;
+      }
+    }
+    return Integer.MAX_VALUE;
+  }
+
+  /**
+   * Gets the codepoints a cmap maps to glyphs other than notdef.
+   *
+   * @param cmap the cmap
+   * @return the codepoint ranges as sorted, disjoint pairs of first and last
+   *         codepoint
+   */
+  public static int[] codepointRanges(CMap cmap) {
+    RangeList ranges = new RangeList();
+    if (cmap instanceof CMapFormat4) {
+      CMapFormat4 format4 = (CMapFormat4) cmap;
+      for (int segment = 0; segment < format4.getSegCount(); segment++) {
+        int start = format4.startCode(segment);
+        // 0xffff is a noncharacter; the segment mapping it only ends the table
+        int end = Math.min(format4.endCode(segment), 0xfffe);
+        if (format4.idRangeOffset(segment) == 0) {
+          int unmapped = -format4.idDelta(segment) & 0xffff;
+          ranges.add(start, Math.min(end, unmapped - 1));
+          ranges.add(Math.max(start, unmapped + 1), end);
+        } else {
+          for (int c = start; c <= end; c++) {
+            if (format4.retrieveGlyphId(segment, start, c) != CMapTable.NOTDEF) {
+              ranges.add(c, c);
+            }
+          }
+        }
+      }
+    } else if (cmap instanceof CMapFormat12) {
+      CMapFormat12 format12 = (CMapFormat12) cmap;
+      for (int group = 0; group < format12.getGroupCount(); group++) {
+        int start = format12.groupStartChar(group);
+        if (format12.groupStartGlyph(group) == CMapTable.NOTDEF) {
+          start++;
+        }
+        ranges.add(start, format12.groupEndChar(group));
+      }
+    } else {
+      for (int c : cmap) {
+        if (cmap.glyphId(c) != CMapTable.NOTDEF) {
+          ranges.add(c, c);
+        }
+      }
+    }
+    return ranges.toArray();
+  }
+
+  /**
+   * Collects codepoint ranges in any order and merges them.
+   */
+  private static final class RangeList {
+    private long[] ranges = new long[16];
+    private int size;
+
+    void add(int first, int last) {
+      first = Math.max(first, 0);
+      last = Math.min(last, MAX_CODEPOINT);
+      if (first > last) {
+        return;
+      }
+      if (size == ranges.length) {
+        ranges = Arrays.copyOf(ranges, size * 2);
+      }
+      ranges[size++] = ((long) first << 32) | last;
+    }
+
+    int[] toArray() {
+      Arrays.sort(ranges, 0, size);
+      int[] merged = new int[size * 2];
+      int count = 0;
+      for (int i = 0; i < size; i++) {
+        int first = (int) (ranges[i] >>> 32);
+        int last = (int) ranges[i];
+        if (count > 0 && first <= merged[count - 1] + 1) {
+          merged[count - 1] = Math.max(merged[count - 1], last);
+        } else {
+          merged[count++] = first;
+          merged[count++] = last;
+        }
+      }
+      return Arrays.copyOf(merged, count);
+    }
+  }
+
+  /**
+   * Builds a coverage index from the codepoint ranges of fonts.
+   */
+  public static final class Builder {
+    private final List<String> ids = new ArrayList<String>();
+    private final List<int[]> coverage = new ArrayList<int[]>();
+
+    public int fontCount() {
+      return ids.size();
+    }
+
+    /**
+     * Adds a font.
+     *
+     * @param id the id of the font in the index
+     * @param ranges the codepoints the font covers, as sorted, disjoint pairs
+     *        of first and last codepoint
+     * @return the index of the font
+     */
+    public int addFont(String id, int[] ranges) {
+      try {
+        if (id.getBytes("UTF-8").length > 0xffff) {
+          throw new IllegalArgumentException("Font id too long: " + id);
+        }
+      } catch (UnsupportedEncodingException e) {
+        throw new RuntimeException(e);
+      }
+      if (ranges.length % 2 != 0) {
+        throw new IllegalArgumentException("Ranges must be pairs of codepoints");
+      }
+      ids.add(id);
+      coverage.add(ranges.clone());
+      return ids.size() - 1;
+    }
+
+    /**
+     * Adds a font by the codepoints its cmap table covers.
+     *
+     * @param id the id of the font in the index
+     * @param cmapTable the cmap table of the font
+     * @return the index of the font
+     */
+    public int addFont(String id, CMapTable cmapTable) {
+      return addFont(id, codepointRanges(cmapTable));
+    }
+
+    /**
+     * Adds the fonts of a font file, reading only their table directories and
+     * cmap tables. A font in a file that holds one font is added with the
+     * path of the file as its id; a font in a collection with the path, '#'
+     * and its index in the collection.
+     *
+     * @param file the font file
+     * @return the number of fonts added
+     * @throws IOException if the file cannot be read, is not an sfnt font or
+     *         font collection, or has a malformed cmap table
+     */
+    public int addFile(File file) throws IOException {
+      List<int[]> fonts = readFile(file);
+      for (int i = 0; i < fonts.size(); i++) {
+        addFont(fontId(file, i, fonts.size()), fonts.get(i));
+      }
+      return fonts.size();
+    }
+
+    /**
+     * Adds the fonts of font files, reading the files on a pool of threads.
+     * The fonts are added in the order of the files.
+     *
+     * @param files the font files
+     * @param threads the number of files read at once
+     * @param errors if not null, receives the error of each file that could
+     *        not be read
+     */
+    public void addFiles(Collection<File> files, int threads, Map<File, IOException> errors) {
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
+      try {
+        Map<File, Future<List<int[]>>> futures = new LinkedHashMap<File, Future<List<int[]>>>();
+        for (final File file : files) {
+          futures.put(file, executor.submit(new Callable<List<int[]>>() {
+            @Override
+            public List<int[]> call() throws IOException {
+              return readFile(file);
+            }
+          }));
+        }
+        for (Map.Entry<File, Future<List<int[]>>> future : futures.entrySet()) {
+          try {
+            List<int[]> fonts = future.getValue().get();
+            for (int i = 0; i < fonts.size(); i++) {
+              addFont(fontId(future.getKey(), i, fonts.size()), fonts.get(i));
+            }
+          } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) {
+              throw (Error) e.getCause();
+            }
+            if (errors != null) {
+              errors.put(future.getKey(), (IOException) e.getCause());
+            }
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Interrupted while reading fonts", e);
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+
+    private static String fontId(File file, int index, int count) {
+      return count == 1 ? file.getPath() : file.getPath() + "#" + index;
+    }
+
+    private static List<int[]> readFile(File file) throws IOException {
+      FileInputStream is = new FileInputStream(file);
+      try {
+        FileChannel channel = is.getChannel();
+        List<int[]> fonts = new ArrayList<int[]>();
+        for (long offset : FontCatalogScanner.fontOffsets(channel)) {
+          Header header = FontCatalogScanner.readDirectory(channel, offset).get(Tag.cmap);
+          CMapTable cmapTable =
+              (CMapTable) FontCatalogScanner.readTable(channel, header, Integer.MAX_VALUE);
+          fonts.add(cmapTable == null ? new int[0] : codepointRanges(cmapTable));
+        }
+        return fonts;
+      } catch (RuntimeException e) {
+        // the table parsers report malformed data with unchecked exceptions
+        throw new IOException("Malformed font file: " + file, e);
+      } finally {
+        is.close();
+      }
+    }
+
+    /**
+     * @return the index, held in memory
+     */
+    public CoverageIndex build() {
+      try {
+        ByteArrayOutput os = new ByteArrayOutput();
+        write(os);
+        return new CoverageIndex(ByteBuffer.wrap(os.buffer(), 0, os.size()));
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    /**
+     * Writes the index to a file, which {@link CoverageIndex#open} maps.
+     */
+    public void write(File file) throws IOException {
+      OutputStream os = new FileOutputStream(file);
+      try {
+        write(os);
+      } finally {
+        os.close();
+      }
+    }
+
+    /**
+     * Writes the index.
+     */
+    public void write(OutputStream os) throws IOException {
+      int words = bitmapWords(ids.size());
+      BlockEntries[] blocks = collectBlocks();
+
+      // bitmap 0 is empty, and record 0 is an empty block
+      Map<WordsKey, Integer> bitmapIndex = new HashMap<WordsKey, Integer>();
+      List<long[]> bitmapList = new ArrayList<long[]>();
+      bitmapIndex(new long[words], bitmapIndex, bitmapList);
+      Map<WordsKey, Integer> recordOffsets = new HashMap<WordsKey, Integer>();
+      List<long[]> recordList = new ArrayList<long[]>();
+      int recordsSize = 0;
+      int[] blockTable = new int[BLOCK_COUNT];
+      for (int b = 0; b < BLOCK_COUNT; b++) {
+        long[] record;
+        if (blocks[b] == null) {
+          record = new long[] {0, 0};
+        } else {
+          long[] full = new long[words];
+          Map<Long, long[]> groups = new TreeMap<Long, long[]>();
+          BlockEntries entries = blocks[b];
+          for (int i = 0; i < entries.size; i++) {
+            int font = entries.fonts[i];
+            long mask = entries.masks[i];
+            long[] bitmap = full;
+            if (mask != -1L) {
+              bitmap = groups.get(mask);
+              if (bitmap == null) {
+                bitmap = new long[words];
+                groups.put(mask, bitmap);
+              }
+            }
+            bitmap[font >>> 6] |= 1L << font;
+          }
+          record = new long[2 + groups.size() * 2];
+          record[0] = bitmapIndex(full, bitmapIndex, bitmapList);
+          record[1] = groups.size();
+          int r = 2;
+          for (Map.Entry<Long, long[]> group : groups.entrySet()) {
+            record[r++] = group.getKey();
+            record[r++] = bitmapIndex(group.getValue(), bitmapIndex, bitmapList);
+          }
+        }
+        WordsKey key = new WordsKey(record);
+        Integer offset = recordOffsets.get(key);
+        if (offset == null) {
+          offset = recordsSize;
+          recordOffsets.put(key, offset);
+          recordList.add(record);
+          recordsSize += Offset.recordGroups + (int) record[1] * Offset.groupSize;
+        }
+        blockTable[b] = offset;
+      }
+
+      byte[][] idBytes = new byte[ids.size()][];
+      int idsSize = ids.size() * 4;
+      for (int i = 0; i < idBytes.length; i++) {
+        idBytes[i] = ids.get(i).getBytes("UTF-8");
+        idsSize += 2 + idBytes[i].length;
+      }
+      int fontIdsOffset = Offset.headerSize;
+      int blockTableOffset = fontIdsOffset + idsSize;
+      int recordsOffset = blockTableOffset + BLOCK_COUNT * 4;
+      int bitmapsOffset = recordsOffset + recordsSize;
+
+      DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(os));
+      dos.writeInt(MAGIC);
+      dos.writeInt(VERSION);
+      dos.writeInt(ids.size());
+      dos.writeInt(words);
+      dos.writeInt(fontIdsOffset);
+      dos.writeInt(blockTableOffset);
+      dos.writeInt(recordsOffset);
+      dos.writeInt(bitmapsOffset);
+      int idOffset = fontIdsOffset + ids.size() * 4;
+      for (byte[] id : idBytes) {
+        dos.writeInt(idOffset);
+        idOffset += 2 + id.length;
+      }
+      for (byte[] id : idBytes) {
+        dos.writeShort(id.length);
+        dos.write(id);
+      }
+      for (int offset : blockTable) {
+        dos.writeInt(offset);
+      }
+      for (long[] record : recordList) {
+        dos.writeInt((int) record[0]);
+        dos.writeInt((int) record[1]);
+        for (int r = 2; r < record.length; r += 2) {
+          dos.writeLong(record[r]);
+          dos.writeInt((int) record[r + 1]);
+        }
+      }
+      for (long[] bitmap : bitmapList) {
+        for (long word : bitmap) {
+          dos.writeLong(word);
+        }
+      }
+      dos.flush();
+    }
+
+    private BlockEntries[] collectBlocks() {
+      BlockEntries[] blocks = new BlockEntries[BLOCK_COUNT];
+      for (int font = 0; font < coverage.size(); font++) {
+        int[] ranges = coverage.get(font);
+        for (int r = 0; r < ranges.length; r += 2) {
+          int first = Math.max(ranges[r], 0);
+          int last = Math.min(ranges[r + 1], MAX_CODEPOINT);
+          for (int b = first >> BLOCK_SHIFT; first <= last && b <= last >> BLOCK_SHIFT; b++) {
+            int low = Math.max(first, b << BLOCK_SHIFT) & BLOCK_MASK;
+            int high = Math.min(last, (b << BLOCK_SHIFT) + BLOCK_MASK) & BLOCK_MASK;
+            if (blocks[b] == null) {
+              blocks[b] = new BlockEntries();
+            }
+            blocks[b].add(font, (-1L << low) & (-1L >>> (63 - high)));
+          }
+        }
+      }
+      return blocks;
+    }
+
+    private static int bitmapIndex(
+        long[] bitmap, Map<WordsKey, Integer> bitmapIndex, List<long[]> bitmapList) {
+      WordsKey key = new WordsKey(bitmap);
+      Integer index = bitmapIndex.get(key);
+      if (index == null) {
+        index = bitmapList.size();
+        bitmapIndex.put(key, index);
+        bitmapList.add(bitmap);
+      }
+      return index;
+    }
+  }
+
+  /**
+   * The masks of the codepoints each font covers in one block.
+   */
+  private static final class BlockEntries {
+    int[] fonts = new int[4];
+    long[] masks = new long[4];
+    int size;
+
+    void add(int font, long mask) {
+      if (size > 0 && fonts[size - 1] == font) {
+        masks[size - 1] |= mask;
+        return;
+      }
+      if (size == fonts.length) {
+        fonts = Arrays.copyOf(fonts, size * 2);
+        masks = Arrays.copyOf(masks, size * 2);
+      }
+      fonts[size] = font;
+      masks[size] = mask;
+      size++;
+    }
+  }
+
+  private static final class WordsKey {
+    private final long[] words;
+    private final int hashCode;
+
+    WordsKey(long[] words) {
+      this.words = words;
+      this.hashCode = Arrays.hashCode(words);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof WordsKey && Arrays.equals(words, ((WordsKey) obj).words);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  /**
+   * A byte array output stream whose buffer can be wrapped without a copy.
+   */
+  private static final class ByteArrayOutput extends ByteArrayOutputStream {
+    byte[] buffer() {
+      return buf;
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length >= 3 && args[0].equals("-build")) {
+      Builder builder = new Builder();
+      List<File> files = new ArrayList<File>();
+      for (int i = 2; i < args.length; i++) {
+        File file = new File(args[i]);
+        if (file.isDirectory()) {
+          files.addAll(FontCatalogScanner.findFonts(file));
+        } else {
+          files.add(file);
+        }
+      }
+      long start = System.nanoTime();
+      Map<File, IOException> errors = new LinkedHashMap<File, IOException>();
+      builder.addFiles(files, Runtime.getRuntime().availableProcessors(), errors);
+      builder.write(new File(args[1]));
+      for (Map.Entry<File, IOException> error : errors.entrySet()) {
+        System.err.println(error.getKey() + "\tFAILED\t" + error.getValue().getMessage());
+      }
+      System.err.println(builder.fontCount() + " fonts indexed, " + errors.size() + " failed, "
+          + (System.nanoTime() - start) / 1000000 + " ms");
+    } else if (args.length == 3 && args[0].equals("-query")) {
+      CoverageIndex index = open(new File(args[1]));
+      long start = System.nanoTime();
+      int[] fonts = index.coveringFonts(args[2]);
+      long elapsed = System.nanoTime() - start;
+      for (int font : fonts) {
+        System.out.println(index.fontId(font));
+      }
+      System.err.println(fonts.length + " fonts, " + elapsed / 1000 + " us");
+    } else {
+      System.out.println("CoverageIndex -build index file|dir ...");
+      System.out.println("CoverageIndex -query index text");
+      System.out.println("Builds an index of the codepoints a collection of fonts covers, or"
+          + " prints the fonts that together cover a text");
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.catalog;
+
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.table.core.CMapTable.CMapId;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The catalog description of one font, as read by {@link FontCatalogScanner}.
+ * Values whose table is missing from the font are -1 or null.
+ */
+public final class FontCatalogEntry {
+
+  private final File file;
+  private final int index;
+  private final String family;
+  private final String style;
+  private final int weight;
+  private final int macStyle;
+  private final int unitsPerEm;
+  private final int glyphCount;
+  private final Set<Integer> tables;
+  private final Map<CMapId, Integer> cmapFormats;
+
+  FontCatalogEntry(File file, int index, String family, String style, int weight,
+      int macStyle, int unitsPerEm, int glyphCount, Set<Integer> tables,
+      Map<CMapId, Integer> cmapFormats) {
+    this.file = file;
+    this.index = index;
+    this.family = family;
+    this.style = style;
+    this.weight = weight;
+    this.macStyle = macStyle;
+    this.unitsPerEm = unitsPerEm;
+    this.glyphCount = glyphCount;
+    this.tables = Collections.unmodifiableSet(tables);
+    this.cmapFormats = Collections.unmodifiableMap(cmapFormats);
+  }
+
+  public File file() {
+    return this.file;
+  }
+
+  /**
+   * @return the index of the font in its collection, or 0 if the file holds
+   *         a single font
+   */
+  public int index() {
+    return this.index;
+  }
+
+  /**
+   * @return the typographic family name, or the family name if there is none
+   */
+  public String family() {
+    return this.family;
+  }
+
+  /**
+   * @return the typographic subfamily name, or the subfamily name if there is
+   *         none
+   */
+  public String style() {
+    return this.style;
+  }
+
+  /**
+   * @return the OS/2 usWeightClass
+   */
+  public int weight() {
+    return this.weight;
+  }
+
+  /**
+   * @return the head macStyle bits
+   */
+  public int macStyle() {
+    return this.macStyle;
+  }
+
+  public int unitsPerEm() {
+    return this.unitsPerEm;
+  }
+
+  /**
+   * @return the maxp numGlyphs
+   */
+  public int glyphCount() {
+    return this.glyphCount;
+  }
+
+  /**
+   * @return the tags of the tables in the font, in ascending order
+   */
+  public Set<Integer> tables() {
+    return this.tables;
+  }
+
+  public boolean hasTable(int tag) {
+    return this.tables.contains(tag);
+  }
+
+  /**
+   * @return the format of each cmap subtable by its id, in the order of the
+   *         encoding records
+   */
+  public Map<CMapId, Integer> cmapFormats() {
+    return this.cmapFormats;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append(file.getPath()).append('\t').append(index)
+        .append('\t').append(family).append('\t').append(style)
+        .append('\t').append(weight).append('\t').append(glyphCount).append('\t');
+    String separator = "";
+    for (int tag : tables) {
+      sb.append(separator).append(Tag.stringValue(tag).trim());
+      separator = ",";
+    }
+    sb.append('\t');
+    separator = "";
+    for (Map.Entry<CMapId, Integer> entry : cmapFormats.entrySet()) {
+      sb.append(separator).append(entry.getKey().platformId()).append('/')
+          .append(entry.getKey().encodingId()).append(':').append(entry.getValue());
+      separator = ",";
+    }
+    return sb.toString();
+  }
+}
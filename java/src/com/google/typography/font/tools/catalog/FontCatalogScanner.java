@@ -0,0 +1,431 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.catalog;
+
+import com.google.typography.font.sfntly.Font.MacintoshEncodingId;
+import com.google.typography.font.sfntly.Font.PlatformId;
+import com.google.typography.font.sfntly.Font.WindowsEncodingId;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.FontData;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Header;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.core.CMapTable.CMapId;
+import com.google.typography.font.sfntly.table.core.FontHeaderTable;
+import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
+import com.google.typography.font.sfntly.table.core.NameTable;
+import com.google.typography.font.sfntly.table.core.NameTable.NameId;
+import com.google.typography.font.sfntly.table.core.NameTable.WindowsLanguageId;
+import com.google.typography.font.sfntly.table.core.OS2Table;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Builds a catalog of font files without loading them. Only the offset table
+ * and table directory, the name, OS/2, head and maxp tables, and the cmap
+ * encoding records with the format of each subtable are read, using
+ * positional reads on the file, so scanning a large collection of fonts reads
+ * a few kilobytes per font rather than every table.
+ */
+public final class FontCatalogScanner {
+
+  // OS/2, head and maxp are read only up to the last field needed
+  private static final int OS2_READ_LENGTH = 6;
+  private static final int HEAD_READ_LENGTH = 46;
+  private static final int MAXP_READ_LENGTH = 6;
+
+  private static final int MAX_TABLES = 1024;
+  private static final int MAX_FONTS = 4096;
+
+  private interface Offset {
+    // TTC header
+    int ttcTag = 0;
+    int ttcNumFonts = 8;
+    int ttcOffsetTable = 12;
+
+    // offset table
+    int numTables = 4;
+    int tableRecordBegin = 12;
+    int tableRecordSize = 16;
+    int tableTag = 0;
+    int tableCheckSum = 4;
+    int tableOffset = 8;
+    int tableLength = 12;
+
+    // cmap
+    int cmapNumTables = 2;
+    int cmapEncodingRecordStart = 4;
+    int cmapEncodingRecordSize = 8;
+    int cmapPlatformId = 0;
+    int cmapEncodingId = 2;
+    int cmapSubtableOffset = 4;
+  }
+
+  private int threads = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * @param threads the number of files scanned at once
+   */
+  public void setThreads(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Invalid number of threads: " + threads);
+    }
+    this.threads = threads;
+  }
+
+  /**
+   * Scans a font file, which may be a font collection.
+   *
+   * @param file the font file
+   * @return an entry for each font in the file
+   * @throws IOException if the file cannot be read, is not an sfnt font or
+   *         font collection, or has malformed tables
+   */
+  public List<FontCatalogEntry> scan(File file) throws IOException {
+    FileInputStream is = new FileInputStream(file);
+    try {
+      FileChannel channel = is.getChannel();
+      long[] offsets = fontOffsets(channel);
+      List<FontCatalogEntry> entries = new ArrayList<FontCatalogEntry>(offsets.length);
+      for (int i = 0; i < offsets.length; i++) {
+        entries.add(scanFont(channel, file, i, offsets[i]));
+      }
+      return entries;
+    } catch (RuntimeException e) {
+      // the table parsers report malformed data with unchecked exceptions
+      throw new IOException("Malformed font file: " + file, e);
+    } finally {
+      is.close();
+    }
+  }
+
+  /**
+   * Scans font files on a pool of threads.
+   *
+   * @param files the font files
+   * @param errors if not null, receives the error of each file that could not
+   *        be scanned
+   * @return the entries of the files that could be scanned, in the order of
+   *         the files
+   */
+  public List<FontCatalogEntry> scan(
+      Collection<File> files, Map<File, IOException> errors) {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      Map<File, Future<List<FontCatalogEntry>>> futures =
+          new LinkedHashMap<File, Future<List<FontCatalogEntry>>>();
+      for (final File file : files) {
+        futures.put(file, executor.submit(new Callable<List<FontCatalogEntry>>() {
+          @Override
+          public List<FontCatalogEntry> call() throws IOException {
+            return scan(file);
+          }
+        }));
+      }
+      List<FontCatalogEntry> entries = new ArrayList<FontCatalogEntry>();
+      for (Map.Entry<File, Future<List<FontCatalogEntry>>> future : futures.entrySet()) {
+        try {
+          entries.addAll(future.getValue().get());
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof Error) {
+            throw (Error) e.getCause();
+          }
+          if (errors != null) {
+            errors.put(future.getKey(), (IOException) e.getCause());
+          }
+        }
+      }
+      return entries;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while scanning", e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Finds the font files under a directory.
+   *
+   * @param dir the directory, searched recursively
+   * @return the .ttf, .otf and .ttc files, in a stable order
+   */
+  public static List<File> findFonts(File dir) {
+    List<File> fonts = new ArrayList<File>();
+    findFonts(dir, fonts);
+    return fonts;
+  }
+
+  private static void findFonts(File dir, List<File> fonts) {
+    File[] children = dir.listFiles();
+    if (children == null) {
+      return;
+    }
+    Arrays.sort(children);
+    for (File child : children) {
+      if (child.isDirectory()) {
+        findFonts(child, fonts);
+      } else {
+        String name = child.getName().toLowerCase();
+        if (name.endsWith(".ttf") || name.endsWith(".otf") || name.endsWith(".ttc")) {
+          fonts.add(child);
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads the offsets of the fonts in a file.
+   *
+   * @return the offset of the offset table of each font; a single 0 if the
+   *         file is not a font collection
+   */
+  static long[] fontOffsets(FileChannel channel) throws IOException {
+    ReadableFontData header = read(channel, 0, Offset.ttcOffsetTable);
+    if (header.readULongAsInt(Offset.ttcTag) != Tag.ttcf) {
+      return new long[] {0};
+    }
+    int numFonts = header.readULongAsInt(Offset.ttcNumFonts);
+    if (numFonts < 0 || numFonts > MAX_FONTS) {
+      throw new IOException("Invalid number of fonts in collection: " + numFonts);
+    }
+    ReadableFontData offsets =
+        read(channel, Offset.ttcOffsetTable, numFonts * FontData.SizeOf.ULONG);
+    long[] fontOffsets = new long[numFonts];
+    for (int i = 0; i < numFonts; i++) {
+      fontOffsets[i] = offsets.readULong(i * FontData.SizeOf.ULONG);
+    }
+    return fontOffsets;
+  }
+
+  /**
+   * Reads the table directory of a font.
+   *
+   * @param offset the offset of the offset table of the font
+   * @return the table headers by tag, in ascending tag order
+   */
+  static Map<Integer, Header> readDirectory(FileChannel channel, long offset)
+      throws IOException {
+    ReadableFontData offsetTable = read(channel, offset, Offset.tableRecordBegin);
+    int numTables = offsetTable.readUShort(Offset.numTables);
+    if (numTables > MAX_TABLES) {
+      throw new IOException("Invalid number of tables: " + numTables);
+    }
+    ReadableFontData records = read(channel, offset + Offset.tableRecordBegin,
+        numTables * Offset.tableRecordSize);
+    Map<Integer, Header> headers = new TreeMap<Integer, Header>();
+    for (int i = 0; i < numTables; i++) {
+      int recordOffset = i * Offset.tableRecordSize;
+      Header header = new Header(records.readULongAsInt(recordOffset + Offset.tableTag),
+          records.readULong(recordOffset + Offset.tableCheckSum),
+          records.readULongAsInt(recordOffset + Offset.tableOffset),
+          records.readULongAsInt(recordOffset + Offset.tableLength));
+      headers.put(header.tag(), header);
+    }
+    return headers;
+  }
+
+  private static FontCatalogEntry scanFont(FileChannel channel, File file, int index,
+      long offset) throws IOException {
+    Map<Integer, Header> headers = readDirectory(channel, offset);
+
+    String family = null;
+    String style = null;
+    NameTable name = (NameTable) readTable(channel, headers.get(Tag.name), Integer.MAX_VALUE);
+    if (name != null) {
+      family = findName(name, NameId.PreferredFamily.value(), NameId.FontFamilyName.value());
+      style = findName(name, NameId.PreferredSubfamily.value(), NameId.FontSubfamilyName.value());
+    }
+    OS2Table os2 = (OS2Table) readTable(channel, headers.get(Tag.OS_2), OS2_READ_LENGTH);
+    FontHeaderTable head =
+        (FontHeaderTable) readTable(channel, headers.get(Tag.head), HEAD_READ_LENGTH);
+    MaximumProfileTable maxp =
+        (MaximumProfileTable) readTable(channel, headers.get(Tag.maxp), MAXP_READ_LENGTH);
+
+    return new FontCatalogEntry(file, index, family, style,
+        os2 == null ? -1 : os2.usWeightClass(),
+        head == null ? -1 : head.macStyleAsInt(),
+        head == null ? -1 : head.unitsPerEm(),
+        maxp == null ? -1 : maxp.numGlyphs(),
+        new TreeSet<Integer>(headers.keySet()),
+        readCMapFormats(channel, headers.get(Tag.cmap)));
+  }
+
+  /**
+   * Reads the start of a table and builds it.
+   *
+   * @param header the table header, or null if the table is missing
+   * @param maxLength the most bytes of the table to read
+   * @return the table, or null if it is missing
+   */
+  static Table readTable(FileChannel channel, Header header, int maxLength)
+      throws IOException {
+    if (header == null) {
+      return null;
+    }
+    int length = Math.min(header.length(), maxLength);
+    byte[] b = new byte[length];
+    readFully(channel, header.offset(), b);
+    return Table.Builder.getBuilder(
+        header, WritableFontData.createWritableFontData(b)).build();
+  }
+
+  private static Map<CMapId, Integer> readCMapFormats(FileChannel channel, Header header)
+      throws IOException {
+    Map<CMapId, Integer> formats = new LinkedHashMap<CMapId, Integer>();
+    if (header == null) {
+      return formats;
+    }
+    int numTables = read(channel, header.offset(), Offset.cmapEncodingRecordStart)
+        .readUShort(Offset.cmapNumTables);
+    ReadableFontData records =
+        read(channel, header.offset() + Offset.cmapEncodingRecordStart,
+            numTables * Offset.cmapEncodingRecordSize);
+    for (int i = 0; i < numTables; i++) {
+      int recordOffset = i * Offset.cmapEncodingRecordSize;
+      CMapId id = CMapId.getInstance(records.readUShort(recordOffset + Offset.cmapPlatformId),
+          records.readUShort(recordOffset + Offset.cmapEncodingId));
+      long subtableOffset = records.readULong(recordOffset + Offset.cmapSubtableOffset);
+      formats.put(id, read(channel, header.offset() + subtableOffset, FontData.SizeOf.USHORT)
+          .readUShort(0));
+    }
+    return formats;
+  }
+
+  /**
+   * Finds the name with the first of the name ids that is present, preferring
+   * US English Windows Unicode names, then other Windows Unicode names, then
+   * Unicode platform names, then Macintosh Roman names.
+   */
+  private static String findName(NameTable name, int... nameIds) {
+    for (int nameId : nameIds) {
+      int best = -1;
+      int bestRank = Integer.MAX_VALUE;
+      for (int i = 0; i < name.nameCount(); i++) {
+        if (name.nameId(i) != nameId) {
+          continue;
+        }
+        int rank = nameRank(name.platformId(i), name.encodingId(i), name.languageId(i));
+        if (rank < bestRank) {
+          best = i;
+          bestRank = rank;
+        }
+      }
+      if (best >= 0) {
+        return name.name(best);
+      }
+    }
+    return null;
+  }
+
+  private static int nameRank(int platformId, int encodingId, int languageId) {
+    if (platformId == PlatformId.Windows.value()
+        && (encodingId == WindowsEncodingId.UnicodeUCS2.value()
+            || encodingId == WindowsEncodingId.UnicodeUCS4.value())) {
+      return languageId == WindowsLanguageId.English_UnitedStates.value() ? 0 : 1;
+    }
+    if (platformId == PlatformId.Unicode.value()) {
+      return 2;
+    }
+    if (platformId == PlatformId.Macintosh.value()
+        && encodingId == MacintoshEncodingId.Roman.value()) {
+      return languageId == 0 ? 3 : 4;
+    }
+    return 5;
+  }
+
+  private static ReadableFontData read(FileChannel channel, long position, int length)
+      throws IOException {
+    byte[] b = new byte[length];
+    readFully(channel, position, b);
+    return ReadableFontData.createReadableFontData(b);
+  }
+
+  private static void readFully(FileChannel channel, long position, byte[] b)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(b);
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position + buffer.position());
+      if (read < 0) {
+        throw new EOFException("Unexpected end of file at " + (position + buffer.position()));
+      }
+    }
+  }
+
+  public static void main(String[] args) {
+    if (args.length == 0) {
+      printUsage();
+      System.exit(1);
+    }
+    FontCatalogScanner scanner = new FontCatalogScanner();
+    List<File> files = new ArrayList<File>();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-threads") && i + 1 < args.length) {
+        scanner.setThreads(Integer.parseInt(args[++i]));
+      } else if (args[i].startsWith("-")) {
+        printUsage();
+        System.exit(1);
+      } else {
+        File file = new File(args[i]);
+        if (file.isDirectory()) {
+          files.addAll(findFonts(file));
+        } else {
+          files.add(file);
+        }
+      }
+    }
+    long start = System.nanoTime();
+    Map<File, IOException> errors = new LinkedHashMap<File, IOException>();
+    List<FontCatalogEntry> entries = scanner.scan(files, errors);
+    long elapsed = (System.nanoTime() - start) / 1000000;
+    for (FontCatalogEntry entry : entries) {
+      System.out.println(entry);
+    }
+    for (Map.Entry<File, IOException> error : errors.entrySet()) {
+      System.err.println(error.getKey() + "\tFAILED\t" + error.getValue().getMessage());
+    }
+    System.err.println(files.size() + " files, " + entries.size() + " fonts, "
+        + errors.size() + " failed, " + elapsed + " ms");
+  }
+
+  private static void printUsage() {
+    System.out.println("FontCatalogScanner [-threads n] file|dir ...");
+    System.out.println("Prints a catalog line for each font: file, index in collection,"
+        + " family, style, weight, glyph count, tables and cmap platform/encoding:format");
+    System.out.println("\t-threads\t Number of files scanned at once"
+        + " (default the number of processors)");
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.eot;
+
+import java.io.EOFException;
+
+/**
+ * Reads the bits written by {@link BitIOWriter}, most significant bit of each
+ * byte first.
+ */
+public class BitIOReader {
+
+  private final byte[] buf;
+  private final int limit;
+  private int index;
+  private int bitCount;
+
+  public BitIOReader(byte[] buf) {
+    this(buf, 0, buf.length);
+  }
+
+  public BitIOReader(byte[] buf, int offset, int length) {
+    this.buf = buf;
+    this.index = offset;
+    this.limit = offset + length;
+  }
+
+  public boolean readBit() throws EOFException {
+    if (index >= limit) {
+      throw new EOFException("End of bit stream");
+    }
+    boolean bit = ((buf[index] >> (7 - bitCount)) & 1) != 0;
+    bitCount++;
+    if (bitCount == 8) {
+      index++;
+      bitCount = 0;
+    }
+    return bit;
+  }
+
+  public int readValue(int numBits) throws EOFException {
+    int value = 0;
+    for (int i = 0; i < numBits; i++) {
+      value = (value << 1) | (readBit() ? 1 : 0);
+    }
+    return value;
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.eot;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+
+/**
+ * Implementation of decompression of the CTF CVT table, the inverse of
+ * {@link CvtEncoder}, as per section 5.2 of the spec.
+ */
+public class CvtDecoder {
+  private static final int CVT_POS8 = 255;
+  private static final int CVT_POS1 = CVT_POS8 - 7;
+  private static final int CVT_NEG8 = CVT_POS1 - 1;
+  private static final int CVT_NEG1 = CVT_NEG8 - 7;
+  private static final int CVT_NEG0 = CVT_NEG1 - 1;
+  private static final int CVT_WORDCODE = CVT_NEG0 - 1;
+  private static final int CVT_LOWESTCODE = CVT_WORDCODE;
+
+  /**
+   * @param data the CTF cvt table
+   * @return the cvt table
+   */
+  public WritableFontData decode(ReadableFontData data) {
+    int numEntries = data.readUShort(0);
+    WritableFontData result = WritableFontData.createWritableFontData(2 * numEntries);
+    int index = 2;
+    int lastValue = 0;
+    for (int i = 0; i < numEntries; i++) {
+      int code = data.readUByte(index++);
+      int deltaValue;
+      if (code >= CVT_POS1) {
+        deltaValue = (code - CVT_POS1 + 1) * CVT_LOWESTCODE + data.readUByte(index++);
+      } else if (code >= CVT_NEG0) {
+        deltaValue = -((code - CVT_NEG0) * CVT_LOWESTCODE + data.readUByte(index++));
+      } else if (code == CVT_WORDCODE) {
+        deltaValue = data.readShort(index);
+        index += 2;
+      } else {
+        deltaValue = code;
+      }
+      int value = (short) (lastValue + deltaValue);
+      result.writeShort(2 * i, value);
+      lastValue = value;
+    }
+    return result;
+  }
+}
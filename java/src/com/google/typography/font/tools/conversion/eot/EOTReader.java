@@ -0,0 +1,118 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.eot;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontContainerDecoder;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+
+import java.io.IOException;
+
+/**
+ * Reads Embedded OpenType files, the inverse of {@link EOTWriter}. The font
+ * data may be XOR obfuscated and may be compressed with MicroType Express.
+ *
+ * Added to a font factory with
+ * {@link FontFactory#addContainerDecoder(FontContainerDecoder)}, the reader
+ * lets the factory load EOT files as it does sfnt fonts.
+ */
+public class EOTReader implements FontContainerDecoder {
+
+  private static final int MAGIC_NUMBER = 0x504c;
+  private static final long FLAGS_TT_COMPRESSED = 0x4;
+  private static final long FLAGS_XOR_ENCRYPT_DATA = 0x10000000;
+  private static final int XOR_KEY = 0x50;
+  private static final long[] VERSIONS = {0x00010000, 0x00020001, 0x00020002};
+
+  private interface Offset {
+    int eotSize = 0;
+    int fontDataSize = 4;
+    int version = 8;
+    int flags = 12;
+    int magicNumber = 34;
+    int SIZE = 36;
+  }
+
+  @Override
+  public int headerSize() {
+    return Offset.SIZE;
+  }
+
+  @Override
+  public boolean recognizes(byte[] header) {
+    if (header.length < Offset.SIZE) {
+      return false;
+    }
+    ReadableFontData data = ReadableFontData.createReadableFontData(header);
+    int magicNumber =
+        data.readUByte(Offset.magicNumber) | (data.readUByte(Offset.magicNumber + 1) << 8);
+    if (magicNumber != MAGIC_NUMBER) {
+      return false;
+    }
+    long version = data.readULongLE(Offset.version);
+    for (long knownVersion : VERSIONS) {
+      if (version == knownVersion) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public Font.Builder[] loadFontsForBuilding(FontFactory factory, byte[] data)
+      throws IOException {
+    return new Font.Builder[] {read(factory, data)};
+  }
+
+  /**
+   * Reads the font of an EOT file.
+   *
+   * @param factory the factory to load the font with
+   * @param eot the EOT data
+   * @return a builder for the font
+   * @throws IOException if the data is not a valid EOT file
+   */
+  public Font.Builder read(FontFactory factory, byte[] eot) throws IOException {
+    if (!recognizes(eot)) {
+      throw new IOException("Not an EOT file");
+    }
+    ReadableFontData data = ReadableFontData.createReadableFontData(eot);
+    long eotSize = data.readULongLE(Offset.eotSize);
+    long fontDataSize = data.readULongLE(Offset.fontDataSize);
+    long flags = data.readULongLE(Offset.flags);
+    if (eotSize > eot.length || fontDataSize > eotSize - Offset.SIZE) {
+      throw new IOException("Invalid EOT sizes");
+    }
+    // the font data ends the file, after the variable length names
+    byte[] fontData = new byte[(int) fontDataSize];
+    System.arraycopy(eot, (int) (eotSize - fontDataSize), fontData, 0, fontData.length);
+    if ((flags & FLAGS_XOR_ENCRYPT_DATA) != 0) {
+      for (int i = 0; i < fontData.length; i++) {
+        fontData[i] ^= XOR_KEY;
+      }
+    }
+    if ((flags & FLAGS_TT_COMPRESSED) != 0) {
+      return new MtxReader().decompress(factory, fontData);
+    }
+    Font.Builder[] builders = factory.loadFontsForBuilding(fontData);
+    if (builders.length != 1) {
+      throw new IOException("EOT font data is not a single font");
+    }
+    return builders[0];
+  }
+}
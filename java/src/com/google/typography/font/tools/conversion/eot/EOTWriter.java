@@ -27,6 +27,7 @@ import com.google.typography.font.sfntly.table.core.OS2Table;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.concurrent.Executor;
 
 /**
  * @author Jeremie Lenfant-Engelmann
@@ -34,6 +35,7 @@ import java.io.IOException;
 public class EOTWriter {
 
   private final boolean compressed;
+  private final Executor executor;
   
   private final FontFactory factory = FontFactory.getInstance();
 
@@ -47,11 +49,21 @@ public class EOTWriter {
   private static final long CS_XORKEY = 0x50475342;
 
   public EOTWriter() {
-    compressed = false;
+    this(false);
   }
   
   public EOTWriter(boolean compressed) {
+    this(compressed, null);
+  }
+
+  /**
+   * @param compressed whether to compress the font with MicroType Express
+   * @param executor the executor to compress on, or null to compress on the
+   *        calling thread; see {@link MtxWriter#MtxWriter(int, Executor)}
+   */
+  public EOTWriter(boolean compressed, Executor executor) {
     this.compressed = compressed;
+    this.executor = executor;
   }
 
   public WritableFontData convert(Font font) throws IOException {
@@ -67,7 +79,7 @@ public class EOTWriter {
     
     if (compressed) {
       flags |= FLAGS_TT_COMPRESSED;
-      MtxWriter mtxWriter = new MtxWriter();
+      MtxWriter mtxWriter = new MtxWriter(LzcompCompress.DEFAULT_MAX_CHAIN_LENGTH, executor);
       fontData = mtxWriter.compress(font);
     }
     
@@ -0,0 +1,417 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.eot;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.truetype.CompositeGlyph;
+import com.google.typography.font.sfntly.table.truetype.Glyph;
+import com.google.typography.font.sfntly.table.truetype.GlyphTable;
+import com.google.typography.font.sfntly.table.truetype.LocaTable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Implementation of decompression of CTF glyph data, the inverse of
+ * {@link GlyfEncoder}, as per sections 5.6-5.10 and 6 of the spec.
+ *
+ * The glyphs are rebuilt as TrueType glyphs: the bounding box of a simple
+ * glyph is recomputed from its points, and the push sequence of its
+ * instructions is written back with the shortest push instructions. Each
+ * glyph is padded to a multiple of 4 bytes.
+ */
+public class GlyfDecoder {
+
+  private static final int GLYPH_ALIGN = 4;
+
+  // simple glyph flags
+  private static final int FLAG_ON_CURVE = 0x01;
+  private static final int FLAG_X_SHORT = 0x02;
+  private static final int FLAG_Y_SHORT = 0x04;
+  private static final int FLAG_REPEAT = 0x08;
+  private static final int FLAG_X_SAME = 0x10;
+  private static final int FLAG_Y_SAME = 0x20;
+
+  // push instructions
+  private static final int NPUSHB = 0x40;
+  private static final int NPUSHW = 0x41;
+  private static final int PUSHB = 0xB0;
+  private static final int PUSHW = 0xB8;
+
+  // push sequence codes, as per section 6.2.2 of the spec
+  private static final int HOP3 = 251;
+  private static final int HOP4 = 252;
+
+  private final Stream glyfStream;
+  private final Stream pushStream;
+  private final Stream codeStream;
+
+  /**
+   * @param glyfBytes the glyph stream, the CTF glyf table
+   * @param pushBytes the push stream, block 2 of the MTX data
+   * @param codeBytes the instruction stream, block 3 of the MTX data
+   */
+  public GlyfDecoder(byte[] glyfBytes, byte[] pushBytes, byte[] codeBytes) {
+    glyfStream = new Stream(glyfBytes);
+    pushStream = new Stream(pushBytes);
+    codeStream = new Stream(codeBytes);
+  }
+
+  /**
+   * Decodes the glyphs into the glyph table builder and sets the loca list of
+   * the loca table builder to match.
+   *
+   * @param numGlyphs the number of glyphs
+   * @param glyphTableBuilder the builder to add the glyphs to
+   * @param locaTableBuilder the builder to set the loca list of
+   * @throws IOException if the glyph data is truncated or not valid
+   */
+  public void decode(int numGlyphs, GlyphTable.Builder glyphTableBuilder,
+      LocaTable.Builder locaTableBuilder) throws IOException {
+    List<Glyph.Builder<? extends Glyph>> glyphBuilders = glyphTableBuilder.glyphBuilders();
+    for (int glyphId = 0; glyphId < numGlyphs; glyphId++) {
+      byte[] glyph = readGlyph();
+      glyphBuilders.add(
+          glyphTableBuilder.glyphBuilder(ReadableFontData.createReadableFontData(glyph)));
+    }
+    locaTableBuilder.setLocaList(glyphTableBuilder.generateLocaList());
+  }
+
+  private byte[] readGlyph() throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    int numContours = (short) glyfStream.readUShort();
+    if (numContours > 0) {
+      readSimpleGlyph(os, numContours);
+    } else if (numContours == -1) {
+      readCompositeGlyph(os);
+    } else if (numContours < 0) {
+      throw new IOException("Invalid number of contours: " + numContours);
+    }
+    while (os.size() % GLYPH_ALIGN != 0) {
+      os.write(0);
+    }
+    return os.toByteArray();
+  }
+
+  private void readSimpleGlyph(ByteArrayOutputStream os, int numContours) throws IOException {
+    int[] endPoints = new int[numContours];
+    int numPoints = 0;
+    for (int i = 0; i < numContours; i++) {
+      numPoints += read255UShort(glyfStream) + (i == 0 ? 1 : 0);
+      endPoints[i] = numPoints - 1;
+    }
+    if (numPoints > 0xffff) {
+      throw new IOException("Too many points: " + numPoints);
+    }
+    // all flags come first, then the data of all the triplets
+    int[] tripletFlags = new int[numPoints];
+    for (int i = 0; i < numPoints; i++) {
+      tripletFlags[i] = glyfStream.readUByte();
+    }
+    int[] flags = new int[numPoints];
+    ByteArrayOutputStream xs = new ByteArrayOutputStream();
+    ByteArrayOutputStream ys = new ByteArrayOutputStream();
+    int x = 0;
+    int y = 0;
+    int xMin = Integer.MAX_VALUE;
+    int yMin = Integer.MAX_VALUE;
+    int xMax = Integer.MIN_VALUE;
+    int yMax = Integer.MIN_VALUE;
+    int[] delta = new int[2];
+    for (int i = 0; i < numPoints; i++) {
+      int flag = tripletFlags[i];
+      readTriplet(flag & 0x7f, delta);
+      int dx = delta[0];
+      int dy = delta[1];
+      x += dx;
+      y += dy;
+      xMin = Math.min(xMin, x);
+      yMin = Math.min(yMin, y);
+      xMax = Math.max(xMax, x);
+      yMax = Math.max(yMax, y);
+      flags[i] = ((flag & 0x80) == 0 ? FLAG_ON_CURVE : 0)
+          | writeCoordinate(xs, dx, FLAG_X_SHORT, FLAG_X_SAME)
+          | writeCoordinate(ys, dy, FLAG_Y_SHORT, FLAG_Y_SAME);
+    }
+    byte[] instructions = readInstructions();
+
+    writeUShort(os, numContours);
+    writeUShort(os, xMin);
+    writeUShort(os, yMin);
+    writeUShort(os, xMax);
+    writeUShort(os, yMax);
+    for (int endPoint : endPoints) {
+      writeUShort(os, endPoint);
+    }
+    writeUShort(os, instructions.length);
+    os.write(instructions, 0, instructions.length);
+    for (int i = 0; i < numPoints; ) {
+      int flag = flags[i];
+      int repeat = 0;
+      while (i + repeat + 1 < numPoints && flags[i + repeat + 1] == flag && repeat < 255) {
+        repeat++;
+      }
+      if (repeat > 0) {
+        os.write(flag | FLAG_REPEAT);
+        os.write(repeat);
+      } else {
+        os.write(flag);
+      }
+      i += repeat + 1;
+    }
+    xs.writeTo(os);
+    ys.writeTo(os);
+  }
+
+  private static int writeCoordinate(ByteArrayOutputStream os, int delta, int shortFlag,
+      int sameFlag) {
+    if (delta == 0) {
+      return sameFlag;
+    }
+    int absDelta = Math.abs(delta);
+    if (absDelta < 256) {
+      os.write(absDelta);
+      return shortFlag | (delta > 0 ? sameFlag : 0);
+    }
+    writeUShort(os, delta);
+    return 0;
+  }
+
+  // As in section 5.11 of the spec
+  private void readTriplet(int flag, int[] delta) throws IOException {
+    int absX;
+    int absY;
+    int signs;
+    if (flag < 10) {
+      absX = 0;
+      absY = ((flag >> 1) << 8) | glyfStream.readUByte();
+      signs = 1 | ((flag & 1) << 1);
+    } else if (flag < 20) {
+      absX = (((flag - 10) >> 1) << 8) | glyfStream.readUByte();
+      absY = 0;
+      signs = ((flag - 10) & 1) | 2;
+    } else if (flag < 84) {
+      int b = flag - 20;
+      int data = glyfStream.readUByte();
+      absX = ((b & 0x30) | (data >> 4)) + 1;
+      absY = (((b & 0x0c) << 2) | (data & 0xf)) + 1;
+      signs = b & 3;
+    } else if (flag < 120) {
+      int b = flag - 84;
+      absX = (((b / 12) << 8) | glyfStream.readUByte()) + 1;
+      absY = ((((b % 12) >> 2) << 8) | glyfStream.readUByte()) + 1;
+      signs = b & 3;
+    } else if (flag < 124) {
+      int b0 = glyfStream.readUByte();
+      int b1 = glyfStream.readUByte();
+      int b2 = glyfStream.readUByte();
+      absX = (b0 << 4) | (b1 >> 4);
+      absY = ((b1 & 0xf) << 8) | b2;
+      signs = flag - 120;
+    } else {
+      absX = glyfStream.readUShort();
+      absY = glyfStream.readUShort();
+      signs = flag - 124;
+    }
+    // a set sign bit is a positive value
+    delta[0] = (signs & 1) != 0 ? absX : -absX;
+    delta[1] = (signs & 2) != 0 ? absY : -absY;
+  }
+
+  private void readCompositeGlyph(ByteArrayOutputStream os) throws IOException {
+    writeUShort(os, -1);
+    copy(glyfStream, os, 8);
+    int flags;
+    do {
+      flags = glyfStream.readUShort();
+      writeUShort(os, flags);
+      writeUShort(os, glyfStream.readUShort());
+      copy(glyfStream, os, (flags & CompositeGlyph.FLAG_ARG_1_AND_2_ARE_WORDS) == 0 ? 2 : 4);
+      if ((flags & CompositeGlyph.FLAG_WE_HAVE_A_SCALE) != 0) {
+        copy(glyfStream, os, 2);
+      } else if ((flags & CompositeGlyph.FLAG_WE_HAVE_AN_X_AND_Y_SCALE) != 0) {
+        copy(glyfStream, os, 4);
+      } else if ((flags & CompositeGlyph.FLAG_WE_HAVE_A_TWO_BY_TWO) != 0) {
+        copy(glyfStream, os, 8);
+      }
+    } while ((flags & CompositeGlyph.FLAG_MORE_COMPONENTS) != 0);
+    if ((flags & CompositeGlyph.FLAG_WE_HAVE_INSTRUCTIONS) != 0) {
+      byte[] instructions = readInstructions();
+      writeUShort(os, instructions.length);
+      os.write(instructions, 0, instructions.length);
+    }
+  }
+
+  /**
+   * Reads the push sequence and the remaining instructions of a glyph and
+   * joins them back into one instruction sequence.
+   */
+  private byte[] readInstructions() throws IOException {
+    int pushCount = read255UShort(glyfStream);
+    int codeSize = read255UShort(glyfStream);
+    int[] pushes = readPushSequence(pushCount);
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    writePushes(os, pushes);
+    copy(codeStream, os, codeSize);
+    if (os.size() > 0xffff) {
+      throw new IOException("Instructions too long: " + os.size());
+    }
+    return os.toByteArray();
+  }
+
+  // As per section 6.2.2 of the spec.
+  private int[] readPushSequence(int pushCount) throws IOException {
+    int[] values = new int[pushCount];
+    for (int i = 0; i < pushCount; ) {
+      int code = pushStream.peekUByte();
+      int hop = code == HOP3 ? 3 : code == HOP4 ? 5 : 0;
+      if (hop == 0) {
+        values[i++] = read255Short(pushStream);
+        continue;
+      }
+      if (i < 2 || i + hop > pushCount) {
+        throw new IOException("Invalid hop code at push " + i);
+      }
+      pushStream.readUByte();
+      // the value two back repeats at every other position
+      int value = values[i - 2];
+      for (int j = 0; j < hop; j++) {
+        values[i + j] = (j & 1) == 0 ? value : read255Short(pushStream);
+      }
+      i += hop;
+    }
+    return values;
+  }
+
+  private static void writePushes(ByteArrayOutputStream os, int[] values) {
+    for (int i = 0; i < values.length; ) {
+      boolean isByte = isByte(values[i]);
+      int end = i + 1;
+      while (end < values.length && end - i < 255 && isByte(values[end]) == isByte) {
+        end++;
+      }
+      int count = end - i;
+      if (count <= 8) {
+        os.write((isByte ? PUSHB : PUSHW) + count - 1);
+      } else {
+        os.write(isByte ? NPUSHB : NPUSHW);
+        os.write(count);
+      }
+      for (; i < end; i++) {
+        if (isByte) {
+          os.write(values[i]);
+        } else {
+          writeUShort(os, values[i]);
+        }
+      }
+    }
+  }
+
+  private static boolean isByte(int value) {
+    return value >= 0 && value < 256;
+  }
+
+  // As per 6.1.1 of spec
+  // visible for testing
+  static int read255UShort(Stream is) throws EOFException {
+    int code = is.readUByte();
+    if (code == 253) {
+      return is.readUShort();
+    } else if (code == 254) {
+      return 506 + is.readUByte();
+    } else if (code == 255) {
+      return 253 + is.readUByte();
+    }
+    return code;
+  }
+
+  // As per 6.1.1 of spec
+  // visible for testing
+  static int read255Short(Stream is) throws EOFException {
+    int code = is.readUByte();
+    boolean negative = code == 250;
+    if (negative) {
+      code = is.readUByte();
+    }
+    int absValue;
+    if (code == 253) {
+      absValue = is.readUShort();
+    } else if (code == 254) {
+      absValue = 500 + is.readUByte();
+    } else if (code == 255) {
+      absValue = 250 + is.readUByte();
+    } else {
+      absValue = code;
+    }
+    return negative ? -absValue : absValue;
+  }
+
+  private static void copy(Stream is, ByteArrayOutputStream os, int length)
+      throws EOFException {
+    os.write(is.readBytes(length), 0, length);
+  }
+
+  private static void writeUShort(ByteArrayOutputStream os, int value) {
+    os.write(value >> 8);
+    os.write(value & 255);
+  }
+
+  /**
+   * A read position in one of the three streams.
+   */
+  static class Stream {
+    private final byte[] data;
+    private int index;
+
+    Stream(byte[] data) {
+      this.data = data;
+    }
+
+    private void check(int length) throws EOFException {
+      if (index + length > data.length) {
+        throw new EOFException("End of glyph data");
+      }
+    }
+
+    int peekUByte() throws EOFException {
+      check(1);
+      return data[index] & 0xff;
+    }
+
+    int readUByte() throws EOFException {
+      check(1);
+      return data[index++] & 0xff;
+    }
+
+    int readUShort() throws EOFException {
+      check(2);
+      int value = ((data[index] & 0xff) << 8) | (data[index + 1] & 0xff);
+      index += 2;
+      return value;
+    }
+
+    byte[] readBytes(int length) throws EOFException {
+      check(length);
+      byte[] b = new byte[length];
+      System.arraycopy(data, index, b, 0, length);
+      index += length;
+      return b;
+    }
+  }
+}
@@ -30,6 +30,8 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 
 /**
  * @author Raph Levien
@@ -57,10 +59,64 @@ public class GlyfEncoder {
 
   public void encode(Font sourceFont) {
     LocaTable loca = sourceFont.getTable(Tag.loca);
-    int nGlyphs = loca.numGlyphs();
     GlyphTable glyf = sourceFont.getTable(Tag.glyf);
+    encodeRange(loca, glyf, 0, loca.numGlyphs());
+  }
+
+  /**
+   * Encodes the glyphs in ranges of about the same outline size, each on its
+   * own encoder, and appends their streams in glyph order. Glyphs are encoded
+   * independently of each other, so the output is the same as that of
+   * {@link #encode(Font)}.
+   *
+   * @param sourceFont the font
+   * @param executor the executor to encode the ranges on, or null to encode
+   *        them on the calling thread
+   * @param numRanges the number of ranges to split the glyphs into
+   */
+  public void encode(Font sourceFont, Executor executor, int numRanges) {
+    final LocaTable loca = sourceFont.getTable(Tag.loca);
+    final GlyphTable glyf = sourceFont.getTable(Tag.glyf);
+    int nGlyphs = loca.numGlyphs();
+    if (nGlyphs == 0) {
+      return;
+    }
+    int totalLength = loca.glyphOffset(nGlyphs - 1) + loca.glyphLength(nGlyphs - 1);
+
+    List<Callable<GlyfEncoder>> tasks = new ArrayList<Callable<GlyfEncoder>>();
+    int start = 0;
+    for (int range = 1; range <= numRanges && start < nGlyphs; range++) {
+      // the range ends at the first glyph past its share of the outline data
+      long target = (long) totalLength * range / numRanges;
+      int end = start + 1;
+      while (end < nGlyphs && (range == numRanges || loca.glyphOffset(end) < target)) {
+        end++;
+      }
+      final int rangeStart = start;
+      final int rangeEnd = end;
+      tasks.add(new Callable<GlyfEncoder>() {
+        @Override
+        public GlyfEncoder call() {
+          GlyfEncoder encoder = new GlyfEncoder(doPush);
+          encoder.encodeRange(loca, glyf, rangeStart, rangeEnd);
+          return encoder;
+        }
+      });
+      start = end;
+    }
+    for (GlyfEncoder encoder : ParallelTasks.invokeAll(executor, tasks)) {
+      try {
+        encoder.glyfStream.writeTo(glyfStream);
+        encoder.pushStream.writeTo(pushStream);
+        encoder.codeStream.writeTo(codeStream);
+      } catch (IOException e) {
+        throw new RuntimeException("unexpected IOException merging glyph data", e);
+      }
+    }
+  }
 
-    for (int glyphId = 0; glyphId < nGlyphs; glyphId++) {
+  private void encodeRange(LocaTable loca, GlyphTable glyf, int start, int end) {
+    for (int glyphId = start; glyphId < end; glyphId++) {
       int sourceOffset = loca.glyphOffset(glyphId);
       int length = loca.glyphLength(glyphId);
       Glyph glyph = glyf.glyph(sourceOffset, length);
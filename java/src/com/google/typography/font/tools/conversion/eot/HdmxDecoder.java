@@ -0,0 +1,80 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.eot;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.core.FontHeaderTable;
+import com.google.typography.font.sfntly.table.core.HorizontalMetricsTable;
+import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
+
+import java.io.EOFException;
+
+/**
+ * Implementation of decompression of CTF horizontal device metrics data, the
+ * inverse of {@link HdmxEncoder}, as per section 5.4 of the MicroType Express
+ * spec.
+ */
+public class HdmxDecoder {
+  private static int HEADER_SIZE = 8;
+  private static int RECORD_SIZE = 2;
+
+  /**
+   * @param metricsFont a font with the head, hmtx and maxp tables the widths
+   *        are predicted from
+   * @param data the CTF hdmx table
+   * @return the hdmx table
+   * @throws EOFException if the data is truncated
+   */
+  public WritableFontData decode(Font metricsFont, ReadableFontData data) throws EOFException {
+    HorizontalMetricsTable hmtx = metricsFont.getTable(Tag.hmtx);
+    MaximumProfileTable maxp = metricsFont.getTable(Tag.maxp);
+    FontHeaderTable head = metricsFont.<FontHeaderTable>getTable(Tag.head);
+    int unitsPerEm = head.unitsPerEm();
+    int numGlyphs = maxp.numGlyphs();
+    int numRecords = data.readUShort(2);
+    int recordSize = data.readLong(4);
+    if (recordSize < RECORD_SIZE + numGlyphs) {
+      throw new IllegalArgumentException("hdmx record size too small: " + recordSize);
+    }
+    MagnitudeDependentReader magReader =
+        new MagnitudeDependentReader(data, HEADER_SIZE + RECORD_SIZE * numRecords);
+    WritableFontData result =
+        WritableFontData.createWritableFontData(HEADER_SIZE + recordSize * numRecords);
+    result.writeUShort(0, 0);
+    result.writeUShort(2, numRecords);
+    result.writeLong(4, recordSize);
+    for (int i = 0; i < numRecords; i++) {
+      int ppem = data.readUByte(HEADER_SIZE + RECORD_SIZE * i);
+      int recordOffset = HEADER_SIZE + recordSize * i;
+      result.writeByte(recordOffset, (byte) ppem);
+      result.writeByte(recordOffset + 1, (byte) data.readUByte(HEADER_SIZE + RECORD_SIZE * i + 1));
+      for (int j = 0; j < numGlyphs; j++) {
+        int roundedTtAw =
+            ((64 * ppem * hmtx.advanceWidth(j) + unitsPerEm / 2) / unitsPerEm + 32) / 64;
+        int width = roundedTtAw + magReader.readValue();
+        result.writeByte(recordOffset + RECORD_SIZE + j, (byte) width);
+      }
+      for (int j = RECORD_SIZE + numGlyphs; j < recordSize; j++) {
+        result.writeByte(recordOffset + j, (byte) 0);
+      }
+    }
+    return result;
+  }
+}
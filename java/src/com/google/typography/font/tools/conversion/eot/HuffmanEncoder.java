@@ -16,8 +16,12 @@
 
 package com.google.typography.font.tools.conversion.eot;
 
+import java.io.EOFException;
+
 /**
- * Adaptive huffman coder for LZCOMP compression algorithm
+ * Adaptive huffman coder for LZCOMP compression algorithm. A coder created
+ * without a writer decodes, with {@link #readSymbol(BitIOReader)}; it updates
+ * its model exactly as the encoder does.
  *
  * @author Raph Levien
  */
@@ -39,6 +43,15 @@ public class HuffmanEncoder {
     int weight;
   }
   
+  /**
+   * Creates a coder for reading symbols.
+   *
+   * @param range the number of symbols
+   */
+  public HuffmanEncoder(int range) {
+    this(null, range);
+  }
+
   public HuffmanEncoder(BitIOWriter bits, int range) {
     this.bits = bits;
     this.range = range;
@@ -213,6 +226,23 @@ public class HuffmanEncoder {
     updateWeight(aa);
   }
 
+  /**
+   * Reads a symbol written by {@link #writeSymbol(int)}.
+   *
+   * @param in the bits to read from
+   * @return the symbol
+   * @throws EOFException if the bits run out
+   */
+  public int readSymbol(BitIOReader in) throws EOFException {
+    int a = ROOT;
+    while (tree[a].code < 0) {
+      a = in.readBit() ? tree[a].right : tree[a].left;
+    }
+    int symbol = tree[a].code;
+    updateWeight(a);
+    return symbol;
+  }
+
   public static int bitsUsed(int x) {
     int i;
     for (i = 32; i > 1; i--) {
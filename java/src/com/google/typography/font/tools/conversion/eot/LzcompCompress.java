@@ -16,12 +16,21 @@
 
 package com.google.typography.font.tools.conversion.eot;
 
+import java.util.Arrays;
+
 /**
  * Implement LZCOMP compression algorithm as defined in MicroType Express, part of the EOT
  * draft spec at {@link "http://www.w3.org/Submission/MTX/"}
  * 
  * Java implementation based on http://www.w3.org/Submission/MTX/ reference code
  *
+ * Earlier positions starting with the same pair of bytes are chained through
+ * int arrays: head holds the latest position of each pair and prev the
+ * position before each one. The match finder walks at most maxChainLength
+ * positions of a chain, newest first; with {@link #DEFAULT_MAX_CHAIN_LENGTH}
+ * the output is that of the reference code, shorter chains trade compression
+ * for speed and longer ones the reverse.
+ *
  * @author Raph Levien
  */
 public class LzcompCompress {
@@ -35,6 +44,12 @@ public class LzcompCompress {
   private static final int BIT_RANGE = LEN_WIDTH - 1;
   private static final int PRELOAD_SIZE = 2 * 32 * 96 + 4 * 256;
   private static final int DEFAULT_MAX_COPY_DIST = 0x7fffffff;
+  private static final int MAX_COST_CACHE_LENGTH = 32;
+
+  /**
+   * The chain length of the reference code, whose output it reproduces.
+   */
+  public static final int DEFAULT_MAX_CHAIN_LENGTH = 256;
 
   private BitIOWriter bits;
   private boolean usingRunLength;
@@ -49,15 +64,29 @@ public class LzcompCompress {
   private int dup4;
   private int dup6;
   private int numSyms;
+  private final int maxChainLength;
   private byte[] buf;
-  private HashNode[] hashTable;
+  private final int[] head = new int[0x10000];
+  private int[] prev;
 
-  private static class HashNode {
-    int index;
-    HashNode next;
-  }
-  
-  private LzcompCompress() {
+  // scratch space of the match finder, reused for every position
+  private final int[] literalCostCache = new int[MAX_COST_CACHE_LENGTH + 1];
+  private final int[] dist1 = new int[1];
+  private final int[] gain1 = new int[1];
+  private final int[] costPerByte1 = new int[1];
+  private final int[] dist2 = new int[1];
+  private final int[] gain2 = new int[1];
+  private final int[] costPerByte2 = new int[1];
+  private final int[] dist3 = new int[1];
+  private final int[] gain3 = new int[1];
+  private final int[] costPerByte3 = new int[1];
+  private final int[] copyDist = new int[1];
+
+  private LzcompCompress(int maxChainLength) {
+    if (maxChainLength < 1) {
+      throw new IllegalArgumentException("Chain length must be positive: " + maxChainLength);
+    }
+    this.maxChainLength = maxChainLength;
     bits = new BitIOWriter();
     usingRunLength = false;
   }
@@ -71,6 +100,7 @@ public class LzcompCompress {
     lenEncoder = new HuffmanEncoder(bits, 1 << LEN_WIDTH);
     symEncoder = new HuffmanEncoder(bits, numSyms);
     buf = new byte[PRELOAD_SIZE + length1];
+    prev = new int[buf.length];
     System.arraycopy(dataIn, 0, buf, PRELOAD_SIZE, length1);
     encode();
     bits.flush();
@@ -94,14 +124,13 @@ public class LzcompCompress {
     initializeModel();
     bits.writeValue(length1, 24);
     int limit = length1 + PRELOAD_SIZE;
-    int[] dist = new int[1];
     for (int i = PRELOAD_SIZE; i < limit; ) {
       int here = i;
-      int len = makeCopyDecision(i++, dist);
+      int len = makeCopyDecision(i++, copyDist);
       if (len > 0) {
-        int distRanges = getNumDistRanges(dist[0]);
-        encodeLength(len, dist[0], distRanges);
-        encodeDistance2(dist[0], distRanges);
+        int distRanges = getNumDistRanges(copyDist[0]);
+        encodeLength(len, copyDist[0], distRanges);
+        encodeDistance2(copyDist[0], distRanges);
         for (int j = 1; j < len; j++) {
           updateModel(i++);
         }
@@ -120,7 +149,7 @@ public class LzcompCompress {
     }
   }
   void initializeModel() {
-    hashTable = new HashNode[0x10000];
+    Arrays.fill(head, -1);
     int i = 0;
     for (int k = 0; k < 32; k++) {
       for (int j = 0; j < 96; j++) {
@@ -143,16 +172,10 @@ public class LzcompCompress {
   }
 
   private int makeCopyDecision(int index, int[] bestDist) {
-    int[] dist1 = new int[1];
-    int[] gain1 = new int[1];
-    int[] costPerByte1 = new int[1];
     int here = index;
     int len1 = findMatch(index, dist1, gain1, costPerByte1);
     updateModel(index++);
     if (gain1[0] > 0) {
-      int[] dist2 = new int[1];
-      int[] gain2 = new int[1];
-      int[] costPerByte2 = new int[1];
       int len2 = findMatch(index, dist2, gain2, costPerByte2);
       int symbolCost = symEncoder.writeSymbolCost(buf[here] & 0xff);
       if (gain2[0] >= gain1[0] && costPerByte1[0] > (costPerByte2[0] * len2 + symbolCost) /
@@ -161,9 +184,6 @@ public class LzcompCompress {
       } else if (len1 > 3) {
         len2 = findMatch(here + len1, dist2, gain2, costPerByte2);
         if (len2 >= 2) {
-          int[] dist3 = new int[1];
-          int[] gain3 = new int[1];
-          int[] costPerByte3 = new int[1];
           int len3 = findMatch(here + len1 - 1, dist3, gain3, costPerByte3);
           if (len3 > len2 && costPerByte3[0] < costPerByte2[0]) {
             int distRanges = getNumDistRanges(dist1[0] + 1);
@@ -198,8 +218,7 @@ public class LzcompCompress {
 
   // consider refactoring signature to return PotentialMatch object with fields set...
   int findMatch(int index, int[] distOut, int[] gainOut, int[] costPerByteOut) {
-    final int maxCostCacheLength = 32;
-    int[] literalCostCache = new int[maxCostCacheLength + 1];
+    final int maxCostCacheLength = MAX_COST_CACHE_LENGTH;
     int maxIndexMinusIndex = buf.length - index;
     int bestLength = 0;
     int bestDist = 0;
@@ -208,18 +227,14 @@ public class LzcompCompress {
     int maxComputedLength = 0;
     if (maxIndexMinusIndex > 1) {
       int pos = ((buf[index] & 0xff) << 8) | (buf[index + 1] & 0xff);
-      HashNode prevNode = null;
-      int hNodeCount = 0;
-      for (HashNode hNode = hashTable[pos]; hNode != null; prevNode = hNode, hNode = hNode.next) {
-        int i = hNode.index;
+      int chainLength = 0;
+      for (int node = head[pos]; node >= 0; node = prev[node]) {
+        int i = node;
         int dist = index - i;
-        hNodeCount++;
-        if (hNodeCount > 256 || dist > maxCopyDist) {
-          if (hashTable[pos] == hNode) {
-            hashTable[pos] = null;
-          } else {
-            prevNode.next = null;
-          }
+        chainLength++;
+        if (chainLength > maxChainLength || dist > maxCopyDist) {
+          // the reference code unlinks the rest of the chain here, which no
+          // later search would reach anyway since chains only grow at the head
           break;
         }
         int maxLen = index - i;
@@ -395,12 +410,10 @@ public class LzcompCompress {
   private void updateModel(int index) {
     byte c = buf[index];
     if (index > 0) {
-      HashNode hNode = new HashNode();
       byte prevC = buf[index - 1];
       int pos = ((prevC & 0xff) << 8) | (c & 0xff);
-      hNode.index = index - 1;
-      hNode.next = hashTable[pos];
-      hashTable[pos] = hNode;
+      prev[index - 1] = head[pos];
+      head[pos] = index - 1;
     }
   }
 
@@ -409,7 +422,19 @@ public class LzcompCompress {
   }
   
   public static byte[] compress(byte[] dataIn) {
-    LzcompCompress compressor = new LzcompCompress();
+    return compress(dataIn, DEFAULT_MAX_CHAIN_LENGTH);
+  }
+
+  /**
+   * Compresses the data, searching at most the given number of earlier
+   * positions for each match.
+   *
+   * @param dataIn the data to compress
+   * @param maxChainLength the search limit, at least 1; smaller is faster
+   * @return the compressed data
+   */
+  public static byte[] compress(byte[] dataIn, int maxChainLength) {
+    LzcompCompress compressor = new LzcompCompress(maxChainLength);
     compressor.write(dataIn);
     return compressor.toByteArray();
   }
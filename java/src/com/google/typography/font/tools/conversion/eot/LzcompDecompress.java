@@ -0,0 +1,166 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.eot;
+
+import java.io.IOException;
+
+/**
+ * Implement LZCOMP decompression, the inverse of {@link LzcompCompress}, as
+ * defined in MicroType Express, part of the EOT draft spec at
+ * {@link "http://www.w3.org/Submission/MTX/"}
+ *
+ * The decoder keeps the same adaptive models as the encoder, so it preloads
+ * the same bytes ahead of the output and updates its huffman trees symbol by
+ * symbol. Run-length coded data, which neither this package nor the
+ * reference encoder produces, is not supported.
+ */
+public class LzcompDecompress {
+
+  private static final int MAX_2BYTE_DIST = 512;
+  private static final int DIST_MIN = 1;
+  private static final int DIST_WIDTH = 3;
+  private static final int LEN_MIN = 2;
+  private static final int LEN_MIN3 = 3;
+  private static final int LEN_WIDTH = 3;
+  private static final int PRELOAD_SIZE = LzcompCompress.getPreloadSize();
+
+  private final BitIOReader bits;
+  private HuffmanEncoder distDecoder;
+  private HuffmanEncoder lenDecoder;
+  private HuffmanEncoder symDecoder;
+  private int dup2;
+  private int dup4;
+  private int dup6;
+  private int numSyms;
+
+  private LzcompDecompress(byte[] dataIn, int offset, int length) {
+    bits = new BitIOReader(dataIn, offset, length);
+  }
+
+  private byte[] read() throws IOException {
+    if (bits.readBit()) {
+      throw new IOException("Run-length coded LZCOMP data is not supported");
+    }
+    int length1 = bits.readValue(24);
+    setDistRange(length1);
+    distDecoder = new HuffmanEncoder(1 << DIST_WIDTH);
+    lenDecoder = new HuffmanEncoder(1 << LEN_WIDTH);
+    symDecoder = new HuffmanEncoder(numSyms);
+    byte[] buf = new byte[PRELOAD_SIZE + length1];
+    initializeModel(buf);
+    decode(buf);
+    byte[] result = new byte[length1];
+    System.arraycopy(buf, PRELOAD_SIZE, result, 0, length1);
+    return result;
+  }
+
+  private void setDistRange(int length1) {
+    int numDistRanges = 1;
+    int distMax = DIST_MIN + (1 << (DIST_WIDTH * numDistRanges)) - 1;
+    while (distMax < length1) {
+      numDistRanges++;
+      distMax = DIST_MIN + (1 << (DIST_WIDTH * numDistRanges)) - 1;
+    }
+    dup2 = 256 + (1 << LEN_WIDTH) * numDistRanges;
+    dup4 = dup2 + 1;
+    dup6 = dup4 + 1;
+    numSyms = dup6 + 1;
+  }
+
+  private static void initializeModel(byte[] buf) {
+    int i = 0;
+    for (int k = 0; k < 32; k++) {
+      for (int j = 0; j < 96; j++) {
+        buf[i++] = (byte) k;
+        buf[i++] = (byte) j;
+      }
+    }
+    for (int j = 0; i < PRELOAD_SIZE && j < 256; j++) {
+      buf[i++] = (byte) j;
+      buf[i++] = (byte) j;
+      buf[i++] = (byte) j;
+      buf[i++] = (byte) j;
+    }
+  }
+
+  private void decode(byte[] buf) throws IOException {
+    for (int i = PRELOAD_SIZE; i < buf.length; ) {
+      int symbol = symDecoder.readSymbol(bits);
+      if (symbol < 256) {
+        buf[i++] = (byte) symbol;
+      } else if (symbol == dup2) {
+        buf[i] = buf[i - 2];
+        i++;
+      } else if (symbol == dup4) {
+        buf[i] = buf[i - 4];
+        i++;
+      } else if (symbol == dup6) {
+        buf[i] = buf[i - 6];
+        i++;
+      } else {
+        symbol -= 256;
+        int distRanges = symbol / (1 << LEN_WIDTH) + 1;
+        int value = decodeLength(symbol % (1 << LEN_WIDTH));
+        int dist = decodeDistance2(distRanges);
+        int len = value + (dist >= MAX_2BYTE_DIST ? LEN_MIN3 : LEN_MIN);
+        int src = i - dist - len + 1;
+        if (src < 0 || i + len > buf.length) {
+          throw new IOException("Invalid LZCOMP copy at " + (i - PRELOAD_SIZE));
+        }
+        // the source may overlap the copy, so go byte by byte
+        for (int j = 0; j < len; j++) {
+          buf[i++] = buf[src++];
+        }
+      }
+    }
+  }
+
+  // each symbol carries two bits of the value and a flag for more to follow
+  private int decodeLength(int symbol) throws IOException {
+    int value = symbol & 3;
+    while ((symbol & 4) != 0) {
+      symbol = lenDecoder.readSymbol(bits);
+      value = (value << 2) | (symbol & 3);
+    }
+    return value;
+  }
+
+  private int decodeDistance2(int distRanges) throws IOException {
+    int value = 0;
+    for (int i = 0; i < distRanges; i++) {
+      value = (value << DIST_WIDTH) | distDecoder.readSymbol(bits);
+    }
+    return value + DIST_MIN;
+  }
+
+  public static byte[] decompress(byte[] dataIn) throws IOException {
+    return decompress(dataIn, 0, dataIn.length);
+  }
+
+  /**
+   * Decompresses data written by {@link LzcompCompress}.
+   *
+   * @param dataIn the buffer holding the compressed data
+   * @param offset the start of the compressed data
+   * @param length the length of the compressed data
+   * @return the decompressed data
+   * @throws IOException if the data is truncated or not valid
+   */
+  public static byte[] decompress(byte[] dataIn, int offset, int length) throws IOException {
+    return new LzcompDecompress(dataIn, offset, length).read();
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.eot;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+
+import java.io.EOFException;
+
+/**
+ * Read a stream of values written by {@link MagnitudeDependentWriter}, as per
+ * section 5.3 of the spec.
+ */
+public class MagnitudeDependentReader {
+
+  private final ReadableFontData data;
+  private int index;
+  private int bitCount;
+
+  /**
+   * @param data the data to read
+   * @param offset the offset of the first value
+   */
+  public MagnitudeDependentReader(ReadableFontData data, int offset) {
+    this.data = data;
+    this.index = offset;
+  }
+
+  private int readBit() throws EOFException {
+    if (index >= data.length()) {
+      throw new EOFException("End of magnitude dependent data");
+    }
+    int bit = (data.readUByte(index) >> bitCount) & 1;
+    bitCount++;
+    if (bitCount == 8) {
+      index++;
+      bitCount = 0;
+    }
+    return bit;
+  }
+
+  public int readValue() throws EOFException {
+    int absValue = 0;
+    while (readBit() != 0) {
+      absValue++;
+    }
+    if (absValue == 0) {
+      return 0;
+    }
+    return readBit() == 0 ? absValue : -absValue;
+  }
+}
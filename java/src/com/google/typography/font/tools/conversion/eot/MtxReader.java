@@ -0,0 +1,165 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.eot;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.core.FontHeaderTable;
+import com.google.typography.font.sfntly.table.core.FontHeaderTable.IndexToLocFormat;
+import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
+import com.google.typography.font.sfntly.table.truetype.GlyphTable;
+import com.google.typography.font.sfntly.table.truetype.LocaTable;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decompresses MicroType Express data, as written by {@link MtxWriter}, into
+ * a font builder. The glyphs are rebuilt directly into the glyf and loca table
+ * builders, and the cvt and hdmx tables are decoded; the other tables of the
+ * first block are copied.
+ */
+public class MtxReader {
+
+  private static final int NUM_BLOCKS = 3;
+  private static final int HEADER_SIZE = 10;
+  // the largest glyf table short loca offsets can address
+  private static final int MAX_SHORT_LOCA_OFFSET = 2 * 0xffff;
+
+  private static final int[] METRICS_TABLES = {Tag.head, Tag.hhea, Tag.hmtx, Tag.maxp};
+
+  private interface Offset {
+    int numBlocks = 0;
+    int offset2 = 4;
+    int offset3 = 7;
+  }
+
+  private interface TableDirectoryOffset {
+    int numTables = 4;
+    int tableRecords = 12;
+    int tableRecordSize = 16;
+    int tag = 0;
+    int offset = 8;
+    int length = 12;
+  }
+
+  /**
+   * @param factory the factory to create the font builder with
+   * @param data the MTX data
+   * @return a builder for the font
+   * @throws IOException if the data is not valid
+   */
+  public Font.Builder decompress(FontFactory factory, byte[] data) throws IOException {
+    if (data.length < HEADER_SIZE || data[Offset.numBlocks] != NUM_BLOCKS) {
+      throw new IOException("Not MicroType Express data");
+    }
+    int offset2 = readBE24(data, Offset.offset2);
+    int offset3 = readBE24(data, Offset.offset3);
+    if (offset2 < HEADER_SIZE || offset3 < offset2 || offset3 > data.length) {
+      throw new IOException("Invalid MicroType Express block offsets");
+    }
+    byte[] block1 = LzcompDecompress.decompress(data, HEADER_SIZE, offset2 - HEADER_SIZE);
+    byte[] block2 = LzcompDecompress.decompress(data, offset2, offset3 - offset2);
+    byte[] block3 = LzcompDecompress.decompress(data, offset3, data.length - offset3);
+    try {
+      return buildFont(factory, block1, block2, block3);
+    } catch (IndexOutOfBoundsException e) {
+      throw new IOException("Invalid MicroType Express font data", e);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Invalid MicroType Express font data", e);
+    }
+  }
+
+  private Font.Builder buildFont(FontFactory factory, byte[] block1, byte[] block2,
+      byte[] block3) throws IOException {
+    Map<Integer, ReadableFontData> tables = readTables(block1);
+    Font.Builder fontBuilder = factory.newFontBuilder();
+    for (Map.Entry<Integer, ReadableFontData> entry : tables.entrySet()) {
+      int tag = entry.getKey();
+      if (tag != Tag.glyf && tag != Tag.loca && tag != Tag.cvt && tag != Tag.hdmx) {
+        fontBuilder.newTableBuilder(tag, entry.getValue());
+      }
+    }
+
+    ReadableFontData cvt = tables.get(Tag.cvt);
+    if (cvt != null) {
+      fontBuilder.newTableBuilder(Tag.cvt, new CvtDecoder().decode(cvt));
+    }
+
+    ReadableFontData glyf = tables.get(Tag.glyf);
+    if (glyf != null) {
+      MaximumProfileTable.Builder maxpBuilder =
+          (MaximumProfileTable.Builder) fontBuilder.getTableBuilder(Tag.maxp);
+      FontHeaderTable.Builder headBuilder =
+          (FontHeaderTable.Builder) fontBuilder.getTableBuilder(Tag.head);
+      if (maxpBuilder == null || headBuilder == null) {
+        throw new IOException("Font has no maxp or head table");
+      }
+      byte[] glyfBytes = new byte[glyf.length()];
+      glyf.readBytes(0, glyfBytes, 0, glyfBytes.length);
+      GlyphTable.Builder glyphTableBuilder =
+          (GlyphTable.Builder) fontBuilder.newTableBuilder(Tag.glyf);
+      LocaTable.Builder locaTableBuilder =
+          (LocaTable.Builder) fontBuilder.newTableBuilder(Tag.loca);
+      new GlyfDecoder(glyfBytes, block2, block3).decode(
+          maxpBuilder.numGlyphs(), glyphTableBuilder, locaTableBuilder);
+      List<Integer> locaList = locaTableBuilder.locaList();
+      if (locaList.get(locaList.size() - 1) > MAX_SHORT_LOCA_OFFSET) {
+        headBuilder.setIndexToLocFormatAsInt(IndexToLocFormat.longOffset.value());
+      }
+    }
+
+    ReadableFontData hdmx = tables.get(Tag.hdmx);
+    if (hdmx != null) {
+      Font.Builder metricsBuilder = factory.newFontBuilder();
+      for (int tag : METRICS_TABLES) {
+        if (!tables.containsKey(tag)) {
+          throw new IOException("Font has no " + Tag.stringValue(tag) + " table");
+        }
+        metricsBuilder.newTableBuilder(tag, tables.get(tag));
+      }
+      fontBuilder.newTableBuilder(
+          Tag.hdmx, new HdmxDecoder().decode(metricsBuilder.build(), hdmx));
+    }
+    return fontBuilder;
+  }
+
+  private static Map<Integer, ReadableFontData> readTables(byte[] block1) {
+    ReadableFontData data = ReadableFontData.createReadableFontData(block1);
+    Map<Integer, ReadableFontData> tables = new HashMap<Integer, ReadableFontData>();
+    int numTables = data.readUShort(TableDirectoryOffset.numTables);
+    for (int i = 0; i < numTables; i++) {
+      int record = TableDirectoryOffset.tableRecords + TableDirectoryOffset.tableRecordSize * i;
+      int tag = data.readULongAsInt(record + TableDirectoryOffset.tag);
+      int offset = data.readULongAsInt(record + TableDirectoryOffset.offset);
+      int length = data.readULongAsInt(record + TableDirectoryOffset.length);
+      if (offset + length > block1.length) {
+        throw new IndexOutOfBoundsException("Table " + Tag.stringValue(tag) + " out of bounds");
+      }
+      tables.put(tag, data.slice(offset, length));
+    }
+    return tables;
+  }
+
+  private static int readBE24(byte[] data, int off) {
+    return ((data[off] & 0xff) << 16) | ((data[off + 1] & 0xff) << 8) | (data[off + 2] & 0xff);
+  }
+}
@@ -23,10 +23,14 @@ import com.google.typography.font.sfntly.table.core.FontHeaderTable;
 import com.google.typography.font.sfntly.table.core.HorizontalDeviceMetricsTable;
 import com.google.typography.font.sfntly.table.truetype.ControlValueTable;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 
 /**
  * @author Raph Levien
@@ -46,6 +50,39 @@ public class MtxWriter {
     return Collections.unmodifiableSet(result);
   }
 
+  // ranges of glyphs encoded concurrently; a few per thread even out their sizes
+  private static final int GLYPH_RANGES = 16;
+
+  private final int maxChainLength;
+  private final Executor executor;
+
+  public MtxWriter() {
+    this(LzcompCompress.DEFAULT_MAX_CHAIN_LENGTH);
+  }
+
+  /**
+   * @param maxChainLength the LZCOMP match search limit, see
+   *        {@link LzcompCompress#compress(byte[], int)}
+   */
+  public MtxWriter(int maxChainLength) {
+    this(maxChainLength, null);
+  }
+
+  /**
+   * Creates a writer that encodes ranges of glyphs and compresses the three
+   * blocks concurrently on the executor; the calling thread takes part in the
+   * work. The output is the same as that of a sequential writer.
+   *
+   * @param maxChainLength the LZCOMP match search limit, see
+   *        {@link LzcompCompress#compress(byte[], int)}
+   * @param executor the executor, or null to do all work on the calling
+   *        thread
+   */
+  public MtxWriter(int maxChainLength, Executor executor) {
+    this.maxChainLength = maxChainLength;
+    this.executor = executor;
+  }
+
   public byte[] compress(Font sfntlyFont) {
     MtxFontBuilder fontBuilder = new MtxFontBuilder();
     for (Map.Entry<Integer, ? extends Table> entry : sfntlyFont.tableMap().entrySet()) {
@@ -58,7 +95,11 @@ public class MtxWriter {
     fontBuilder.getHeadBuilder().initFrom(srcHead);
 
     GlyfEncoder glyfEncoder = new GlyfEncoder();
-    glyfEncoder.encode(sfntlyFont);
+    if (executor == null) {
+      glyfEncoder.encode(sfntlyFont);
+    } else {
+      glyfEncoder.encode(sfntlyFont, executor, GLYPH_RANGES);
+    }
     fontBuilder.addTableBytes(Tag.glyf, glyfEncoder.getGlyfBytes());
     fontBuilder.addTable(Tag.loca, null);
 
@@ -89,12 +130,22 @@ public class MtxWriter {
   /**
    * Compress the blocks and pack them into the final container, as per section 2 of the spec.
    */
-  private static byte[] packMtx(byte[] block1, byte[] block2, byte[] block3) {
+  private byte[] packMtx(byte[] block1, byte[] block2, byte[] block3) {
     int copyDist = Math.max(block1.length, Math.max(block2.length, block3.length)) +
         LzcompCompress.getPreloadSize();
-    byte[] compressed1 = LzcompCompress.compress(block1);
-    byte[] compressed2 = LzcompCompress.compress(block2);
-    byte[] compressed3 = LzcompCompress.compress(block3);
+    List<Callable<byte[]>> tasks = new ArrayList<Callable<byte[]>>();
+    for (final byte[] block : new byte[][] {block1, block2, block3}) {
+      tasks.add(new Callable<byte[]>() {
+        @Override
+        public byte[] call() {
+          return LzcompCompress.compress(block, maxChainLength);
+        }
+      });
+    }
+    List<byte[]> compressed = ParallelTasks.invokeAll(executor, tasks);
+    byte[] compressed1 = compressed.get(0);
+    byte[] compressed2 = compressed.get(1);
+    byte[] compressed3 = compressed.get(2);
     int resultSize = 10 + compressed1.length + compressed2.length + compressed3.length;
     byte[] result = new byte[resultSize];
     result[0] = 3;
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.eot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs independent tasks on an executor, with the calling thread taking part.
+ *
+ * Every task is handed to the executor, and the calling thread then runs, in
+ * order, each task no executor thread has started yet. The calling thread
+ * never waits for a task still queued, so it can't deadlock on a saturated
+ * executor, even one it is running on itself.
+ */
+final class ParallelTasks {
+
+  private ParallelTasks() {
+  }
+
+  /**
+   * Runs the tasks and returns their results in order.
+   *
+   * @param executor the executor, or null to run the tasks on the calling
+   *        thread
+   * @param tasks the tasks
+   * @return the results of the tasks
+   * @throws RuntimeException if a task throws, with the exception of the
+   *         first task that failed, or if the calling thread is interrupted
+   */
+  static <T> List<T> invokeAll(Executor executor, List<? extends Callable<T>> tasks) {
+    List<FutureTask<T>> futures = new ArrayList<FutureTask<T>>(tasks.size());
+    for (Callable<T> task : tasks) {
+      futures.add(new FutureTask<T>(task));
+    }
+    if (executor != null) {
+      // the first task is left to the calling thread
+      for (int i = 1; i < futures.size(); i++) {
+        try {
+          executor.execute(futures.get(i));
+        } catch (RejectedExecutionException e) {
+          // run by the calling thread below
+        }
+      }
+    }
+    List<T> results = new ArrayList<T>(futures.size());
+    for (FutureTask<T> future : futures) {
+      // does nothing if an executor thread has already started the task
+      future.run();
+    }
+    for (FutureTask<T> future : futures) {
+      try {
+        results.add(future.get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Interrupted while waiting for a task", e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new RuntimeException(cause);
+      }
+    }
+    return results;
+  }
+}
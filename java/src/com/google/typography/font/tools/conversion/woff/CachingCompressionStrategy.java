@@ -0,0 +1,165 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.woff;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches the output of another compression strategy by table content. Subsets
+ * of one font share many byte-identical tables, such as name, OS/2, fpgm, prep
+ * and cvt, which are then compressed once rather than for every subset.
+ *
+ * Entries are keyed by the tag and a SHA-256 digest of the table data, and the
+ * least recently used are evicted once the compressed data held exceeds a
+ * byte limit. A cache holds the output of a single strategy, so the
+ * compression settings are part of the key by construction; strategies with
+ * different settings need caches of their own.
+ */
+public class CachingCompressionStrategy implements CompressionStrategy {
+
+  private static final String DIGEST_ALGORITHM = "SHA-256";
+  // the digest, tag and bookkeeping held per entry besides its data
+  private static final int ENTRY_OVERHEAD = 96;
+
+  private final CompressionStrategy delegate;
+  private final long maxBytes;
+  private final LinkedHashMap<Key, byte[]> cache =
+      new LinkedHashMap<Key, byte[]>(16, 0.75f, true /* access order */);
+  private long bytes;
+  private long hits;
+  private long misses;
+
+  /**
+   * @param delegate the strategy whose output is cached
+   * @param maxBytes the most bytes of compressed data to hold
+   */
+  public CachingCompressionStrategy(CompressionStrategy delegate, long maxBytes) {
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException("Invalid cache size: " + maxBytes);
+    }
+    this.delegate = delegate;
+    this.maxBytes = maxBytes;
+  }
+
+  @Override
+  public byte[] compress(int tag, byte[] data) {
+    Key key = new Key(tag, digest(data));
+    synchronized (this) {
+      byte[] compressed = cache.get(key);
+      if (compressed != null) {
+        hits++;
+        return compressed.clone();
+      }
+      misses++;
+    }
+    // compressed outside the lock; a table compressed by two threads at once
+    // is simply cached twice over
+    byte[] compressed = delegate.compress(tag, data);
+    long size = entrySize(compressed);
+    if (size <= maxBytes) {
+      synchronized (this) {
+        byte[] previous = cache.put(key, compressed.clone());
+        if (previous != null) {
+          bytes -= entrySize(previous);
+        }
+        bytes += size;
+        evict();
+      }
+    }
+    return compressed;
+  }
+
+  @Override
+  public boolean usesPresetDictionary() {
+    return delegate.usesPresetDictionary();
+  }
+
+  private void evict() {
+    Iterator<Map.Entry<Key, byte[]>> it = cache.entrySet().iterator();
+    while (bytes > maxBytes && it.hasNext()) {
+      bytes -= entrySize(it.next().getValue());
+      it.remove();
+    }
+  }
+
+  private static long entrySize(byte[] compressed) {
+    return compressed.length + ENTRY_OVERHEAD;
+  }
+
+  private static byte[] digest(byte[] data) {
+    try {
+      return MessageDigest.getInstance(DIGEST_ALGORITHM).digest(data);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("Unable to get message digest algorithm.", e);
+    }
+  }
+
+  /**
+   * @return the bytes currently held, including the per entry overhead
+   */
+  public synchronized long size() {
+    return this.bytes;
+  }
+
+  public synchronized int entryCount() {
+    return this.cache.size();
+  }
+
+  public synchronized long hitCount() {
+    return this.hits;
+  }
+
+  public synchronized long missCount() {
+    return this.misses;
+  }
+
+  public synchronized void clear() {
+    this.cache.clear();
+    this.bytes = 0;
+  }
+
+  private static final class Key {
+    private final int tag;
+    private final byte[] digest;
+    private final int hashCode;
+
+    Key(int tag, byte[] digest) {
+      this.tag = tag;
+      this.digest = digest;
+      this.hashCode = 31 * tag + Arrays.hashCode(digest);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return this.tag == other.tag && Arrays.equals(this.digest, other.digest);
+    }
+
+    @Override
+    public int hashCode() {
+      return this.hashCode;
+    }
+  }
+}
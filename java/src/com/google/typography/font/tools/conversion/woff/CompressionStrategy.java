@@ -0,0 +1,42 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.woff;
+
+/**
+ * The compression of table data in WOFF output. Implementations must be safe
+ * to use from several threads at once.
+ *
+ * @see WoffWriter#WoffWriter(CompressionStrategy)
+ */
+public interface CompressionStrategy {
+
+  /**
+   * Compresses the data of a table.
+   *
+   * @param tag the tag of the table
+   * @param data the table data
+   * @return the data as a zlib stream
+   */
+  byte[] compress(int tag, byte[] data);
+
+  /**
+   * @return whether the zlib streams are primed with a preset dictionary,
+   *         which plain WOFF readers can't inflate; a {@link WoffWriter} then
+   *         writes the {@link DictionaryCompressionStrategy#SIGNATURE}
+   */
+  boolean usesPresetDictionary();
+}
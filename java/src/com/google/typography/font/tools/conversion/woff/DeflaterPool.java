@@ -0,0 +1,93 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.woff;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.Deflater;
+
+/**
+ * A pool of deflaters at one compression level for the zlib based strategies.
+ * Deflaters are reset between tables rather than created for each one, which
+ * saves allocating the native compression state every time.
+ */
+final class DeflaterPool {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final int level;
+  private final Queue<Deflater> pool = new ConcurrentLinkedQueue<Deflater>();
+
+  /**
+   * @param level the compression level, 0 to 9 or
+   *        {@link Deflater#DEFAULT_COMPRESSION}
+   */
+  DeflaterPool(int level) {
+    if ((level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+        && level != Deflater.DEFAULT_COMPRESSION) {
+      throw new IllegalArgumentException("Invalid compression level: " + level);
+    }
+    this.level = level;
+  }
+
+  int level() {
+    return this.level;
+  }
+
+  /**
+   * Compresses data with a pooled deflater.
+   *
+   * @param data the data
+   * @param dictionary the preset dictionary, or null for none
+   * @return the data as a zlib stream
+   */
+  byte[] deflate(byte[] data, byte[] dictionary) {
+    Deflater deflater = pool.poll();
+    if (deflater == null) {
+      deflater = new Deflater(level);
+    }
+    try {
+      if (dictionary != null) {
+        // a reset deflater has lost its dictionary
+        deflater.setDictionary(dictionary);
+      }
+      deflater.setInput(data);
+      deflater.finish();
+      ByteArrayOutputStream os = new ByteArrayOutputStream(data.length / 2 + 64);
+      byte[] buffer = new byte[BUFFER_SIZE];
+      while (!deflater.finished()) {
+        os.write(buffer, 0, deflater.deflate(buffer));
+      }
+      return os.toByteArray();
+    } finally {
+      deflater.reset();
+      pool.offer(deflater);
+    }
+  }
+
+  /**
+   * Releases the native state of the pooled deflaters. The pool may still be
+   * used afterwards.
+   */
+  void end() {
+    Deflater deflater;
+    while ((deflater = pool.poll()) != null) {
+      deflater.end();
+    }
+  }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.woff;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+
+import java.util.Arrays;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses with zlib primed with a preset dictionary, so that content a
+ * table shares with the dictionary is coded as matches into it. Fonts split
+ * into many slices compress much better with a dictionary trained on the
+ * content the slices have in common, see {@link DictionaryTrainer}.
+ *
+ * The output is not plain WOFF: each zlib stream has the preset dictionary
+ * flag set and carries the Adler-32 checksum of the dictionary as its id, and
+ * only readers holding that dictionary can inflate it, as
+ * {@link #decompress(byte[], int, byte[])} does. So that such a file is not
+ * mistaken for WOFF, a {@link WoffWriter} with this strategy writes the
+ * signature {@link #SIGNATURE}, 'wOFD', in place of 'wOFF'.
+ */
+public class DictionaryCompressionStrategy implements CompressionStrategy {
+
+  /** The most of a dictionary zlib can refer to, the last 32K of it. */
+  public static final int MAX_DICTIONARY_SIZE = 32768;
+
+  /** The signature of a WOFF file with dictionary compressed tables, 'wOFD'. */
+  public static final long SIGNATURE = 0x774F4644;
+
+  private final byte[] dictionary;
+  private final DeflaterPool pool;
+
+  /**
+   * @param dictionary the preset dictionary; only the last
+   *        {@link #MAX_DICTIONARY_SIZE} bytes of a larger one are used
+   */
+  public DictionaryCompressionStrategy(byte[] dictionary) {
+    this(dictionary, Deflater.BEST_COMPRESSION);
+  }
+
+  /**
+   * @param dictionary the preset dictionary; only the last
+   *        {@link #MAX_DICTIONARY_SIZE} bytes of a larger one are used
+   * @param level the compression level, 0 to 9 or
+   *        {@link Deflater#DEFAULT_COMPRESSION}
+   */
+  public DictionaryCompressionStrategy(byte[] dictionary, int level) {
+    this.pool = new DeflaterPool(level);
+    this.dictionary = dictionary.length > MAX_DICTIONARY_SIZE
+        ? Arrays.copyOfRange(dictionary, dictionary.length - MAX_DICTIONARY_SIZE, dictionary.length)
+        : dictionary.clone();
+  }
+
+  /**
+   * @return the dictionary id in the zlib streams, the Adler-32 checksum of the
+   *         dictionary
+   */
+  public long dictionaryId() {
+    Adler32 adler = new Adler32();
+    adler.update(this.dictionary);
+    return adler.getValue();
+  }
+
+  @Override
+  public byte[] compress(int tag, byte[] data) {
+    return pool.deflate(data, dictionary);
+  }
+
+  /**
+   * @return true, so that a {@link WoffWriter} writes the {@link #SIGNATURE}
+   */
+  @Override
+  public boolean usesPresetDictionary() {
+    return true;
+  }
+
+  /**
+   * Releases the native state of the pooled deflaters. The strategy may still
+   * be used afterwards.
+   */
+  public void end() {
+    pool.end();
+  }
+
+  /**
+   * @param data the font file data
+   * @return whether the data starts with the signature of a WOFF file with
+   *         dictionary compressed tables
+   */
+  public static boolean isDictionaryWoff(ReadableFontData data) {
+    return data.length() >= 4 && data.readULong(0) == SIGNATURE;
+  }
+
+  /**
+   * Inflates table data compressed with a preset dictionary.
+   *
+   * @param compressed the zlib stream
+   * @param length the length of the table data
+   * @param dictionary the dictionary the data was compressed with
+   * @return the table data
+   * @throws DataFormatException if the data is not a valid zlib stream, is
+   *         not of the given length or was compressed with another dictionary
+   */
+  public static byte[] decompress(byte[] compressed, int length, byte[] dictionary)
+      throws DataFormatException {
+    if (dictionary.length > MAX_DICTIONARY_SIZE) {
+      dictionary = Arrays.copyOfRange(
+          dictionary, dictionary.length - MAX_DICTIONARY_SIZE, dictionary.length);
+    }
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(compressed);
+      byte[] data = new byte[length];
+      int inflated = inflater.inflate(data);
+      if (inflater.needsDictionary()) {
+        // throws if the dictionary id does not match
+        inflater.setDictionary(dictionary);
+        inflated += inflater.inflate(data, inflated, length - inflated);
+      }
+      if (!inflater.finished() || inflated != length) {
+        throw new DataFormatException("Compressed data is not of length " + length);
+      }
+      return data;
+    } catch (IllegalArgumentException e) {
+      throw new DataFormatException("Wrong dictionary for compressed data");
+    } finally {
+      inflater.end();
+    }
+  }
+}
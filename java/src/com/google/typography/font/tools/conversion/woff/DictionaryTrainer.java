@@ -0,0 +1,290 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.woff;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.table.Table;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trains a preset dictionary for {@link DictionaryCompressionStrategy} from
+ * sample data, such as the tables of the unicode-range slices of a font
+ * family.
+ *
+ * Content is scored by the number of samples its 8 byte substrings occur in,
+ * so content found in a single sample adds nothing. The samples are divided
+ * into epochs, one per dictionary segment, and the best scoring segment of
+ * each epoch is taken; the substrings of a taken segment no longer score, so
+ * the segments do not repeat each other. Passes over the epochs continue
+ * until the dictionary is full or nothing scores. The best segments end the
+ * dictionary, where matches into it are nearest and so cheapest.
+ */
+public class DictionaryTrainer {
+
+  public static final int DEFAULT_SEGMENT_SIZE = 64;
+
+  // the length of the substrings scored, packed into a long
+  private static final int K = 8;
+
+  private final List<byte[]> samples = new ArrayList<byte[]>();
+  private final int segmentSize;
+
+  public DictionaryTrainer() {
+    this(DEFAULT_SEGMENT_SIZE);
+  }
+
+  /**
+   * @param segmentSize the length of the pieces the dictionary is made of
+   */
+  public DictionaryTrainer(int segmentSize) {
+    if (segmentSize < K) {
+      throw new IllegalArgumentException("Segment size less than " + K + ": " + segmentSize);
+    }
+    this.segmentSize = segmentSize;
+  }
+
+  public void addSample(byte[] sample) {
+    this.samples.add(sample);
+  }
+
+  /**
+   * Adds the table data of a font as samples, one per table. The signature is
+   * left out, being unique to each font.
+   */
+  public void addFont(Font font) {
+    for (Table table : font.tableMap().values()) {
+      if (table.headerTag() == Tag.DSIG) {
+        continue;
+      }
+      byte[] data = new byte[table.dataLength()];
+      table.readFontData().readBytes(0, data, 0, data.length);
+      addSample(data);
+    }
+  }
+
+  /**
+   * @param size the largest size of the dictionary
+   * @return the dictionary, shorter than the size if the samples have less
+   *         content in common
+   */
+  public byte[] train(int size) {
+    int total = 0;
+    for (byte[] sample : samples) {
+      total += sample.length;
+    }
+    byte[] data = new byte[total];
+    // the k-mer starting at each position, or -1 past the end of its sample
+    long[] kmers = new long[total];
+    Map<Long, int[]> frequencies = new HashMap<Long, int[]>();
+    int start = 0;
+    for (int s = 0; s < samples.size(); s++) {
+      byte[] sample = samples.get(s);
+      System.arraycopy(sample, 0, data, start, sample.length);
+      for (int i = 0; i < sample.length; i++) {
+        if (i + K > sample.length) {
+          kmers[start + i] = -1;
+          continue;
+        }
+        long kmer = 0;
+        for (int j = 0; j < K; j++) {
+          kmer = (kmer << 8) | (sample[i + j] & 0xff);
+        }
+        kmers[start + i] = kmer;
+        // the number of samples with the k-mer, then the last sample seen in
+        int[] frequency = frequencies.get(kmer);
+        if (frequency == null) {
+          frequencies.put(kmer, new int[] {1, s});
+        } else if (frequency[1] != s) {
+          frequency[0]++;
+          frequency[1] = s;
+        }
+      }
+      start += sample.length;
+    }
+    for (int[] frequency : frequencies.values()) {
+      if (frequency[0] < 2) {
+        frequency[0] = 0;
+      }
+    }
+
+    List<Segment> segments = new ArrayList<Segment>();
+    int numEpochs = Math.max(1, size / segmentSize);
+    int epochSize = Math.max(segmentSize, total / numEpochs);
+    int length = 0;
+    boolean found = true;
+    while (length < size && found) {
+      found = false;
+      for (int epoch = 0; epoch < total && length < size; epoch += epochSize) {
+        Segment segment =
+            bestSegment(data, kmers, frequencies, epoch, Math.min(total, epoch + epochSize));
+        if (segment == null) {
+          continue;
+        }
+        found = true;
+        segment.length = Math.min(segment.length, size - length);
+        for (int i = segment.start; i + K <= segment.start + segment.length; i++) {
+          if (kmers[i] != -1) {
+            frequencies.get(kmers[i])[0] = 0;
+          }
+        }
+        segments.add(segment);
+        length += segment.length;
+      }
+    }
+
+    Collections.sort(segments, new Comparator<Segment>() {
+      @Override
+      public int compare(Segment s1, Segment s2) {
+        return s1.score < s2.score ? -1 : s1.score > s2.score ? 1 : s1.start - s2.start;
+      }
+    });
+    byte[] dictionary = new byte[length];
+    int offset = 0;
+    for (Segment segment : segments) {
+      System.arraycopy(data, segment.start, dictionary, offset, segment.length);
+      offset += segment.length;
+    }
+    return dictionary;
+  }
+
+  /**
+   * Finds the segment of the epoch whose distinct k-mers score highest.
+   */
+  private Segment bestSegment(byte[] data, long[] kmers, Map<Long, int[]> frequencies,
+      int epochStart, int epochEnd) {
+    int windowKmers = segmentSize - K + 1;
+    // the k-mers in the window, with their count there
+    Map<Long, Integer> window = new HashMap<Long, Integer>();
+    long score = 0;
+    Segment best = null;
+    for (int i = epochStart; i < epochEnd; i++) {
+      if (kmers[i] != -1) {
+        Integer count = window.get(kmers[i]);
+        if (count == null) {
+          window.put(kmers[i], 1);
+          score += frequencies.get(kmers[i])[0];
+        } else {
+          window.put(kmers[i], count + 1);
+        }
+      }
+      int leaving = i - windowKmers;
+      if (leaving >= epochStart && kmers[leaving] != -1) {
+        int count = window.get(kmers[leaving]);
+        if (count == 1) {
+          window.remove(kmers[leaving]);
+          score -= frequencies.get(kmers[leaving])[0];
+        } else {
+          window.put(kmers[leaving], count - 1);
+        }
+      }
+      if (score > 0 && (best == null || score > best.score)) {
+        int segmentStart = Math.max(epochStart, i - windowKmers + 1);
+        best = new Segment(segmentStart,
+            Math.min(segmentSize, data.length - segmentStart), score);
+      }
+    }
+    return best;
+  }
+
+  private static final class Segment {
+    final int start;
+    int length;
+    final long score;
+
+    Segment(int start, int length, long score) {
+      this.start = start;
+      this.length = length;
+      this.score = score;
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    int size = DictionaryCompressionStrategy.MAX_DICTIONARY_SIZE;
+    int segmentSize = DEFAULT_SEGMENT_SIZE;
+    File outputFile = null;
+    List<File> fontFiles = new ArrayList<File>();
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      if ((arg.equals("-size") || arg.equals("-segment")) && i + 1 < args.length) {
+        int value;
+        try {
+          value = Integer.parseInt(args[++i]);
+        } catch (NumberFormatException e) {
+          printUsage();
+          return;
+        }
+        if (arg.equals("-size")) {
+          size = value;
+        } else {
+          segmentSize = value;
+        }
+      } else if (arg.startsWith("-")) {
+        printUsage();
+        return;
+      } else if (outputFile == null) {
+        outputFile = new File(arg);
+      } else {
+        fontFiles.add(new File(arg));
+      }
+    }
+    if (outputFile == null || fontFiles.isEmpty()) {
+      printUsage();
+      return;
+    }
+
+    DictionaryTrainer trainer = new DictionaryTrainer(segmentSize);
+    FontFactory fontFactory = FontFactory.getInstance();
+    for (File fontFile : fontFiles) {
+      FileInputStream fis = new FileInputStream(fontFile);
+      try {
+        for (Font font : fontFactory.loadFonts(fis)) {
+          trainer.addFont(font);
+        }
+      } finally {
+        fis.close();
+      }
+    }
+    byte[] dictionary = trainer.train(size);
+    FileOutputStream fos = new FileOutputStream(outputFile);
+    try {
+      fos.write(dictionary);
+    } finally {
+      fos.close();
+    }
+    System.out.println("Wrote " + dictionary.length + " byte dictionary to " + outputFile);
+  }
+
+  private static void printUsage() {
+    System.out.println("Usage: DictionaryTrainer [-size n] [-segment n] dictionary font...");
+    System.out.println("Trains a WOFF compression dictionary from fonts sharing content,");
+    System.out.println("such as the unicode-range slices of a family");
+    System.out.println("\t-size\t Dictionary size, at most 32768 used by zlib (default 32768)");
+    System.out.println("\t-segment\t Length of the pieces of the dictionary (default 64)");
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.woff;
+
+import java.util.zip.Deflater;
+
+/**
+ * Compresses with an iterative optimal parse, trading many times the time of
+ * zlib for output a few percent smaller. Meant for fonts that are converted
+ * once, offline, and served many times. The output is still a plain zlib
+ * stream that any WOFF reader inflates.
+ *
+ * The result is never larger than that of zlib at its best level, which is
+ * used instead when it happens to be smaller.
+ */
+public class ExhaustiveDeflateStrategy implements CompressionStrategy {
+
+  public static final int DEFAULT_ITERATIONS = 15;
+  public static final int DEFAULT_MAX_CHAIN_LENGTH = 1024;
+
+  private final int iterations;
+  private final int maxChainLength;
+  private final PooledDeflaterStrategy fallback =
+      new PooledDeflaterStrategy(Deflater.BEST_COMPRESSION);
+
+  public ExhaustiveDeflateStrategy() {
+    this(DEFAULT_ITERATIONS, DEFAULT_MAX_CHAIN_LENGTH);
+  }
+
+  /**
+   * @param iterations the number of parses, each refining the symbol costs of
+   *        the one before
+   * @param maxChainLength the number of earlier positions searched for matches
+   *        at each position
+   */
+  public ExhaustiveDeflateStrategy(int iterations, int maxChainLength) {
+    if (iterations < 1) {
+      throw new IllegalArgumentException("Invalid number of iterations: " + iterations);
+    }
+    if (maxChainLength < 1) {
+      throw new IllegalArgumentException("Invalid maximum chain length: " + maxChainLength);
+    }
+    this.iterations = iterations;
+    this.maxChainLength = maxChainLength;
+  }
+
+  @Override
+  public byte[] compress(int tag, byte[] data) {
+    byte[] exhaustive = ExhaustiveDeflater.deflate(data, iterations, maxChainLength);
+    byte[] zlib = fallback.compress(tag, data);
+    return exhaustive.length <= zlib.length ? exhaustive : zlib;
+  }
+
+  @Override
+  public boolean usesPresetDictionary() {
+    return false;
+  }
+}
@@ -0,0 +1,540 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.woff;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.zip.Adler32;
+
+/**
+ * A deflate encoder that spends much more time than zlib to find a smaller
+ * encoding, for output that is compressed once and served many times.
+ *
+ * All matches of every length are found for each position, and the data is
+ * parsed as a shortest path through them, where a literal or a match costs the
+ * bits its symbols take under a Huffman code. The code comes from the symbol
+ * statistics of the previous parse, the first parse using the fixed code of
+ * deflate, so each pass refines the last. The smallest of the passes is
+ * written as a single block with a dynamic code, in a zlib stream.
+ *
+ * @see "RFC 1951, DEFLATE Compressed Data Format Specification"
+ * @see "RFC 1950, ZLIB Compressed Data Format Specification"
+ */
+final class ExhaustiveDeflater {
+
+  private static final int WINDOW_SIZE = 32768;
+  private static final int WINDOW_MASK = WINDOW_SIZE - 1;
+  private static final int MIN_MATCH = 3;
+  private static final int MAX_MATCH = 258;
+  private static final int HASH_BITS = 15;
+  private static final int HASH_MASK = (1 << HASH_BITS) - 1;
+
+  private static final int END_OF_BLOCK = 256;
+  private static final int NUM_LITLEN_SYMBOLS = 286;
+  private static final int NUM_DIST_SYMBOLS = 30;
+  private static final int NUM_CODE_LENGTH_SYMBOLS = 19;
+  private static final int MAX_CODE_LENGTH = 15;
+  private static final int MAX_CODE_LENGTH_CODE_LENGTH = 7;
+  private static final int BTYPE_DYNAMIC = 2;
+
+  // code length symbols: repeat the previous length, or a run of zeros
+  private static final int REPEAT_PREVIOUS = 16;
+  private static final int REPEAT_ZERO_SHORT = 17;
+  private static final int REPEAT_ZERO_LONG = 18;
+
+  private static final int[] LENGTH_BASE = {
+      3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83, 99, 115,
+      131, 163, 195, 227, 258};
+  private static final int[] LENGTH_EXTRA = {
+      0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+  private static final int[] DIST_BASE = {
+      1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513, 769, 1025, 1537,
+      2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+  private static final int[] DIST_EXTRA = {
+      0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12,
+      13, 13};
+  private static final int[] CODE_LENGTH_ORDER = {
+      16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+  // the length code of each match length
+  private static final int[] LENGTH_CODE = new int[MAX_MATCH + 1];
+  static {
+    for (int code = 0; code < LENGTH_BASE.length; code++) {
+      int end = code + 1 < LENGTH_BASE.length ? LENGTH_BASE[code + 1] : MAX_MATCH + 1;
+      for (int length = LENGTH_BASE[code]; length < end; length++) {
+        LENGTH_CODE[length] = code;
+      }
+    }
+  }
+
+  private final byte[] data;
+
+  // the matches at position i are the entries matchStart[i] to
+  // matchStart[i + 1]; entry k makes the lengths above the length of entry
+  // k - 1, up to matchLength[k], at distance matchDist[k]
+  private final int[] matchStart;
+  private int[] matchLength = new int[16];
+  private int[] matchDist = new int[16];
+  private int numMatches;
+
+  private ExhaustiveDeflater(byte[] data) {
+    this.data = data;
+    this.matchStart = new int[data.length + 1];
+  }
+
+  /**
+   * Compresses the data into a zlib stream.
+   *
+   * @param data the data
+   * @param iterations the number of parses, each using the statistics of the
+   *        one before, at least 1
+   * @param maxChainLength the number of earlier positions searched for
+   *        matches at each position, at least 1
+   * @return the zlib stream
+   */
+  static byte[] deflate(byte[] data, int iterations, int maxChainLength) {
+    ExhaustiveDeflater deflater = new ExhaustiveDeflater(data);
+    deflater.findMatches(maxChainLength);
+
+    double[] litLenCost = new double[NUM_LITLEN_SYMBOLS];
+    double[] distCost = new double[NUM_DIST_SYMBOLS];
+    fixedCodeCosts(litLenCost, distCost);
+    byte[] best = null;
+    int[] litLenFreq = new int[NUM_LITLEN_SYMBOLS];
+    int[] distFreq = new int[NUM_DIST_SYMBOLS];
+    for (int i = 0; i < iterations; i++) {
+      int[] parse = deflater.parse(litLenCost, distCost);
+      deflater.countSymbols(parse, litLenFreq, distFreq);
+      byte[] block = deflater.writeBlock(parse, litLenFreq, distFreq);
+      if (best == null || block.length < best.length) {
+        best = block;
+      }
+      symbolCosts(litLenFreq, litLenCost);
+      symbolCosts(distFreq, distCost);
+    }
+    return zlibStream(best, data);
+  }
+
+  private void findMatches(int maxChainLength) {
+    int length = data.length;
+    int[] head = new int[HASH_MASK + 1];
+    Arrays.fill(head, -1);
+    int[] prev = new int[WINDOW_SIZE];
+    for (int i = 0; i < length; i++) {
+      matchStart[i] = numMatches;
+      if (i + MIN_MATCH > length) {
+        continue;
+      }
+      int hash = hash(i);
+      int limit = Math.min(MAX_MATCH, length - i);
+      int best = MIN_MATCH - 1;
+      int chain = 0;
+      // nearer positions come first, so each length is first reached at its
+      // shortest distance
+      for (int p = head[hash]; p >= 0 && i - p <= WINDOW_SIZE && chain < maxChainLength;
+          p = prev[p & WINDOW_MASK], chain++) {
+        if (data[p + best] != data[i + best]) {
+          continue;
+        }
+        int matchLength = 0;
+        while (matchLength < limit && data[p + matchLength] == data[i + matchLength]) {
+          matchLength++;
+        }
+        if (matchLength > best) {
+          addMatch(matchLength, i - p);
+          best = matchLength;
+          if (best == limit) {
+            break;
+          }
+        }
+      }
+      prev[i & WINDOW_MASK] = head[hash];
+      head[hash] = i;
+    }
+    matchStart[length] = numMatches;
+  }
+
+  private int hash(int i) {
+    return (((data[i] & 0xff) << 10) ^ ((data[i + 1] & 0xff) << 5) ^ (data[i + 2] & 0xff))
+        & HASH_MASK;
+  }
+
+  private void addMatch(int length, int dist) {
+    if (numMatches == matchLength.length) {
+      matchLength = Arrays.copyOf(matchLength, 2 * numMatches);
+      matchDist = Arrays.copyOf(matchDist, 2 * numMatches);
+    }
+    matchLength[numMatches] = length;
+    matchDist[numMatches] = dist;
+    numMatches++;
+  }
+
+  /**
+   * Finds the cheapest parse under the given symbol costs.
+   *
+   * @return the parse, the length of each step followed by its distance, 0
+   *         for a literal
+   */
+  private int[] parse(double[] litLenCost, double[] distCost) {
+    int length = data.length;
+    double[] lengthCost = new double[MAX_MATCH + 1];
+    for (int l = MIN_MATCH; l <= MAX_MATCH; l++) {
+      int code = LENGTH_CODE[l];
+      lengthCost[l] = litLenCost[END_OF_BLOCK + 1 + code] + LENGTH_EXTRA[code];
+    }
+    double[] cost = new double[length + 1];
+    Arrays.fill(cost, Double.POSITIVE_INFINITY);
+    cost[0] = 0;
+    int[] stepLength = new int[length + 1];
+    int[] stepDist = new int[length + 1];
+    for (int i = 0; i < length; i++) {
+      double here = cost[i];
+      double literal = here + litLenCost[data[i] & 0xff];
+      if (literal < cost[i + 1]) {
+        cost[i + 1] = literal;
+        stepLength[i + 1] = 1;
+        stepDist[i + 1] = 0;
+      }
+      int shorter = MIN_MATCH - 1;
+      for (int k = matchStart[i]; k < matchStart[i + 1]; k++) {
+        int dist = matchDist[k];
+        int distCode = distCode(dist);
+        double base = here + distCost[distCode] + DIST_EXTRA[distCode];
+        for (int l = shorter + 1; l <= matchLength[k]; l++) {
+          double match = base + lengthCost[l];
+          if (match < cost[i + l]) {
+            cost[i + l] = match;
+            stepLength[i + l] = l;
+            stepDist[i + l] = dist;
+          }
+        }
+        shorter = matchLength[k];
+      }
+    }
+    int steps = 0;
+    for (int i = length; i > 0; i -= stepLength[i]) {
+      steps++;
+    }
+    int[] parse = new int[2 * steps];
+    for (int i = length, step = steps - 1; i > 0; i -= stepLength[i], step--) {
+      parse[2 * step] = stepLength[i];
+      parse[2 * step + 1] = stepDist[i];
+    }
+    return parse;
+  }
+
+  private void countSymbols(int[] parse, int[] litLenFreq, int[] distFreq) {
+    Arrays.fill(litLenFreq, 0);
+    Arrays.fill(distFreq, 0);
+    int pos = 0;
+    for (int step = 0; step < parse.length; step += 2) {
+      int length = parse[step];
+      if (parse[step + 1] == 0) {
+        litLenFreq[data[pos] & 0xff]++;
+      } else {
+        litLenFreq[END_OF_BLOCK + 1 + LENGTH_CODE[length]]++;
+        distFreq[distCode(parse[step + 1])]++;
+      }
+      pos += length;
+    }
+    litLenFreq[END_OF_BLOCK]++;
+  }
+
+  private byte[] writeBlock(int[] parse, int[] litLenFreq, int[] distFreq) {
+    // complete codes need two symbols at least
+    int[] litLenLengths = codeLengths(withTwoSymbols(litLenFreq), MAX_CODE_LENGTH);
+    int[] distLengths = codeLengths(withTwoSymbols(distFreq), MAX_CODE_LENGTH);
+    int[] litLenCodes = codes(litLenLengths);
+    int[] distCodes = codes(distLengths);
+
+    BitWriter bits = new BitWriter();
+    bits.writeBits(1, 1);
+    bits.writeBits(BTYPE_DYNAMIC, 2);
+    writeCodeLengths(bits, litLenLengths, distLengths);
+    int pos = 0;
+    for (int step = 0; step < parse.length; step += 2) {
+      int length = parse[step];
+      int dist = parse[step + 1];
+      if (dist == 0) {
+        int symbol = data[pos] & 0xff;
+        bits.writeBits(litLenCodes[symbol], litLenLengths[symbol]);
+      } else {
+        int code = LENGTH_CODE[length];
+        int symbol = END_OF_BLOCK + 1 + code;
+        bits.writeBits(litLenCodes[symbol], litLenLengths[symbol]);
+        bits.writeBits(length - LENGTH_BASE[code], LENGTH_EXTRA[code]);
+        int distCode = distCode(dist);
+        bits.writeBits(distCodes[distCode], distLengths[distCode]);
+        bits.writeBits(dist - DIST_BASE[distCode], DIST_EXTRA[distCode]);
+      }
+      pos += length;
+    }
+    bits.writeBits(litLenCodes[END_OF_BLOCK], litLenLengths[END_OF_BLOCK]);
+    return bits.toByteArray();
+  }
+
+  private static void writeCodeLengths(BitWriter bits, int[] litLenLengths, int[] distLengths) {
+    int numLitLen = lastNonZero(litLenLengths, END_OF_BLOCK + 1);
+    int numDist = lastNonZero(distLengths, 1);
+    int[] lengths = new int[numLitLen + numDist];
+    System.arraycopy(litLenLengths, 0, lengths, 0, numLitLen);
+    System.arraycopy(distLengths, 0, lengths, numLitLen, numDist);
+
+    // run length code the lengths, each symbol followed by its extra value
+    int[] symbols = new int[2 * lengths.length];
+    int numSymbols = 0;
+    for (int i = 0; i < lengths.length; ) {
+      int length = lengths[i];
+      int run = 1;
+      while (i + run < lengths.length && lengths[i + run] == length) {
+        run++;
+      }
+      if (length == 0 && run >= 11) {
+        run = Math.min(run, 138);
+        symbols[numSymbols++] = REPEAT_ZERO_LONG;
+        symbols[numSymbols++] = run - 11;
+      } else if (length == 0 && run >= 3) {
+        run = Math.min(run, 10);
+        symbols[numSymbols++] = REPEAT_ZERO_SHORT;
+        symbols[numSymbols++] = run - 3;
+      } else if (length != 0 && run >= 4) {
+        run = Math.min(run, 7);
+        symbols[numSymbols++] = length;
+        symbols[numSymbols++] = 0;
+        symbols[numSymbols++] = REPEAT_PREVIOUS;
+        symbols[numSymbols++] = run - 4;
+      } else {
+        run = 1;
+        symbols[numSymbols++] = length;
+        symbols[numSymbols++] = 0;
+      }
+      i += run;
+    }
+
+    int[] freq = new int[NUM_CODE_LENGTH_SYMBOLS];
+    for (int i = 0; i < numSymbols; i += 2) {
+      freq[symbols[i]]++;
+    }
+    int[] codeLengths = codeLengths(withTwoSymbols(freq), MAX_CODE_LENGTH_CODE_LENGTH);
+    int[] codes = codes(codeLengths);
+    int numCodeLengths = NUM_CODE_LENGTH_SYMBOLS;
+    while (numCodeLengths > 4 && codeLengths[CODE_LENGTH_ORDER[numCodeLengths - 1]] == 0) {
+      numCodeLengths--;
+    }
+
+    bits.writeBits(numLitLen - (END_OF_BLOCK + 1), 5);
+    bits.writeBits(numDist - 1, 5);
+    bits.writeBits(numCodeLengths - 4, 4);
+    for (int i = 0; i < numCodeLengths; i++) {
+      bits.writeBits(codeLengths[CODE_LENGTH_ORDER[i]], 3);
+    }
+    for (int i = 0; i < numSymbols; i += 2) {
+      int symbol = symbols[i];
+      bits.writeBits(codes[symbol], codeLengths[symbol]);
+      if (symbol == REPEAT_PREVIOUS) {
+        bits.writeBits(symbols[i + 1], 2);
+      } else if (symbol == REPEAT_ZERO_SHORT) {
+        bits.writeBits(symbols[i + 1], 3);
+      } else if (symbol == REPEAT_ZERO_LONG) {
+        bits.writeBits(symbols[i + 1], 7);
+      }
+    }
+  }
+
+  private static int lastNonZero(int[] values, int min) {
+    int count = values.length;
+    while (count > min && values[count - 1] == 0) {
+      count--;
+    }
+    return count;
+  }
+
+  private static int distCode(int dist) {
+    int code = Arrays.binarySearch(DIST_BASE, dist);
+    return code >= 0 ? code : -code - 2;
+  }
+
+  private static void fixedCodeCosts(double[] litLenCost, double[] distCost) {
+    for (int symbol = 0; symbol < litLenCost.length; symbol++) {
+      litLenCost[symbol] = symbol < 144 ? 8 : symbol < 256 ? 9 : symbol < 280 ? 7 : 8;
+    }
+    Arrays.fill(distCost, 5);
+  }
+
+  // the bits a symbol takes in an ideal code for the frequencies; an unseen
+  // symbol is taken to be as rare as one seen once
+  private static void symbolCosts(int[] freq, double[] cost) {
+    long total = 0;
+    for (int f : freq) {
+      total += f;
+    }
+    double log2Total = Math.log(Math.max(total, 1)) / Math.log(2);
+    for (int symbol = 0; symbol < freq.length; symbol++) {
+      cost[symbol] = freq[symbol] == 0
+          ? log2Total : log2Total - Math.log(freq[symbol]) / Math.log(2);
+    }
+  }
+
+  private static int[] withTwoSymbols(int[] freq) {
+    int used = 0;
+    for (int f : freq) {
+      if (f != 0) {
+        used++;
+      }
+    }
+    if (used >= 2) {
+      return freq;
+    }
+    int[] result = freq.clone();
+    for (int symbol = 0; symbol < result.length && used < 2; symbol++) {
+      if (result[symbol] == 0) {
+        result[symbol] = 1;
+        used++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Computes the lengths of a Huffman code for the frequencies, no longer than
+   * the maximum. Should the code be too long, the frequencies are flattened
+   * and the code built again.
+   */
+  // visible for testing
+  static int[] codeLengths(int[] freq, int maxLength) {
+    int n = freq.length;
+    long[] weight = new long[2 * n];
+    for (int i = 0; i < n; i++) {
+      weight[i] = freq[i];
+    }
+    int[] lengths = new int[n];
+    int[] parent = new int[2 * n];
+    while (true) {
+      // nodes ordered by weight, then by index so the code is deterministic
+      PriorityQueue<Long> queue = new PriorityQueue<Long>();
+      for (int i = 0; i < n; i++) {
+        if (weight[i] != 0) {
+          queue.add((weight[i] << 10) | i);
+        }
+      }
+      if (queue.size() == 1) {
+        lengths[(int) (queue.peek() & 0x3ff)] = 1;
+        return lengths;
+      }
+      int next = n;
+      while (queue.size() > 1) {
+        int a = (int) (queue.poll() & 0x3ff);
+        int b = (int) (queue.poll() & 0x3ff);
+        weight[next] = weight[a] + weight[b];
+        parent[a] = next;
+        parent[b] = next;
+        queue.add((weight[next] << 10) | next);
+        next++;
+      }
+      int root = next - 1;
+      int maxFound = 0;
+      for (int i = 0; i < n; i++) {
+        int length = 0;
+        if (weight[i] != 0) {
+          for (int node = i; node != root; node = parent[node]) {
+            length++;
+          }
+        }
+        lengths[i] = length;
+        maxFound = Math.max(maxFound, length);
+      }
+      if (maxFound <= maxLength) {
+        return lengths;
+      }
+      for (int i = 0; i < n; i++) {
+        if (weight[i] != 0) {
+          weight[i] = (weight[i] + 1) / 2;
+        }
+      }
+    }
+  }
+
+  /**
+   * Computes the canonical codes for the code lengths, bit reversed to be
+   * written least significant bit first.
+   */
+  private static int[] codes(int[] lengths) {
+    int[] count = new int[MAX_CODE_LENGTH + 1];
+    for (int length : lengths) {
+      count[length]++;
+    }
+    count[0] = 0;
+    int[] nextCode = new int[MAX_CODE_LENGTH + 2];
+    int code = 0;
+    for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+      code = (code + count[length - 1]) << 1;
+      nextCode[length] = code;
+    }
+    int[] codes = new int[lengths.length];
+    for (int symbol = 0; symbol < lengths.length; symbol++) {
+      int length = lengths[symbol];
+      if (length != 0) {
+        codes[symbol] = Integer.reverse(nextCode[length]++) >>> (32 - length);
+      }
+    }
+    return codes;
+  }
+
+  private static byte[] zlibStream(byte[] deflated, byte[] data) {
+    Adler32 adler = new Adler32();
+    adler.update(data);
+    long checksum = adler.getValue();
+    byte[] result = new byte[deflated.length + 6];
+    // 32K window, deflate, maximum compression
+    result[0] = (byte) 0x78;
+    result[1] = (byte) 0xda;
+    System.arraycopy(deflated, 0, result, 2, deflated.length);
+    for (int i = 0; i < 4; i++) {
+      result[deflated.length + 2 + i] = (byte) (checksum >> (24 - 8 * i));
+    }
+    return result;
+  }
+
+  /**
+   * Writes bits least significant bit first, as deflate packs them.
+   */
+  private static final class BitWriter {
+    private final ByteArrayOutputStream os = new ByteArrayOutputStream();
+    private int buffer;
+    private int bitCount;
+
+    void writeBits(int value, int numBits) {
+      buffer |= value << bitCount;
+      bitCount += numBits;
+      while (bitCount >= 8) {
+        os.write(buffer & 0xff);
+        buffer >>>= 8;
+        bitCount -= 8;
+      }
+    }
+
+    byte[] toByteArray() {
+      if (bitCount > 0) {
+        os.write(buffer & 0xff);
+        buffer = 0;
+        bitCount = 0;
+      }
+      return os.toByteArray();
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.woff;
+
+import java.util.zip.Deflater;
+
+/**
+ * Compresses with the platform zlib at a fixed level. Deflaters are kept in a
+ * pool and reset between tables rather than created for each one, which saves
+ * allocating the native compression state every time.
+ */
+public class PooledDeflaterStrategy implements CompressionStrategy {
+
+  private final DeflaterPool pool;
+
+  public PooledDeflaterStrategy() {
+    this(Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * @param level the compression level, 0 to 9 or
+   *        {@link Deflater#DEFAULT_COMPRESSION}
+   */
+  public PooledDeflaterStrategy(int level) {
+    this.pool = new DeflaterPool(level);
+  }
+
+  public int level() {
+    return this.pool.level();
+  }
+
+  @Override
+  public byte[] compress(int tag, byte[] data) {
+    return pool.deflate(data, null);
+  }
+
+  @Override
+  public boolean usesPresetDictionary() {
+    return false;
+  }
+
+  /**
+   * Releases the native state of the pooled deflaters. The strategy may still
+   * be used afterwards.
+   */
+  public void end() {
+    pool.end();
+  }
+}
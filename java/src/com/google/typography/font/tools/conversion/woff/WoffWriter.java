@@ -24,10 +24,8 @@ import com.google.typography.font.sfntly.table.Table;
 import com.google.typography.font.sfntly.table.core.FontHeaderTable;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.TreeSet;
-import java.util.zip.Deflater;
 
 /**
  * @author Jeremie Lenfant-Engelmann
@@ -40,6 +38,29 @@ public class WoffWriter {
   private static final int WOFF_HEADER_SIZE =
       (9 * FontData.SizeOf.ULONG) + (4 * FontData.SizeOf.USHORT);
 
+  // shared so that its deflaters are reused across writers
+  private static final CompressionStrategy DEFAULT_STRATEGY = new PooledDeflaterStrategy();
+
+  private final CompressionStrategy compressionStrategy;
+  private final long signature;
+
+  public WoffWriter() {
+    this(DEFAULT_STRATEGY);
+  }
+
+  /**
+   * Creates a writer that writes the 'wOFF' signature, or the
+   * {@link DictionaryCompressionStrategy#SIGNATURE} of the dictionary variant
+   * when the strategy uses a preset dictionary.
+   *
+   * @param compressionStrategy the compression of the table data
+   */
+  public WoffWriter(CompressionStrategy compressionStrategy) {
+    this.compressionStrategy = compressionStrategy;
+    this.signature = compressionStrategy.usesPresetDictionary()
+        ? DictionaryCompressionStrategy.SIGNATURE : SIGNATURE;
+  }
+
   public WritableFontData convert(Font font) {
     List<TableDirectoryEntry> tableDirectoryEntries = createTableDirectoryEntries(font);
     int length =
@@ -96,7 +117,7 @@ public class WoffWriter {
       int majorVersion,
       int minorVersion) {
     int index = start;
-    index += writableFontData.writeULong(index, SIGNATURE); // signature
+    index += writableFontData.writeULong(index, signature); // signature
     index += writableFontData.writeULong(index, flavor); // flavor
     index += writableFontData.writeULong(index, length); // length
     index += writableFontData.writeUShort(index, tableDirectoryEntries.size()); // numTables
@@ -177,14 +198,8 @@ public class WoffWriter {
     if (woff_compression_faster && (length < 100 || table.headerTag() == Tag.loca)) {
       tableDirectoryEntry.setCompTable(input);
     } else {
-      byte[] output = new byte[length];
-      Deflater compresser = new Deflater();
-      compresser.setInput(input);
-      compresser.finish();
-      int compLength = compresser.deflate(output);
-      tableDirectoryEntry.setCompTable(
-          compLength == length || !compresser.finished() ? input : Arrays.copyOfRange(
-              output, 0, compLength));
+      byte[] output = compressionStrategy.compress(table.headerTag(), input);
+      tableDirectoryEntry.setCompTable(output.length < length ? output : input);
     }
   }
 
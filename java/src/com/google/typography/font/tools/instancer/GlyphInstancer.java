@@ -0,0 +1,587 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.instancer;
+
+import com.google.typography.font.sfntly.data.FontData;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.core.HorizontalMetricsTable;
+import com.google.typography.font.sfntly.table.truetype.CompositeGlyph;
+import com.google.typography.font.sfntly.table.truetype.Glyph;
+import com.google.typography.font.sfntly.table.truetype.GlyphTable;
+import com.google.typography.font.sfntly.table.truetype.LocaTable;
+import com.google.typography.font.sfntly.table.truetype.SimpleGlyph;
+import com.google.typography.font.sfntly.table.variations.GlyphVariationsTable;
+import com.google.typography.font.sfntly.table.variations.TupleVariation;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Applies the gvar deltas of an instance to the glyphs of a TrueType font.
+ * Glyphs are instanced on demand and kept, since the bounding box of a
+ * composite glyph depends on the instanced outlines of its components.
+ *
+ * Points whose deltas a tuple variation leaves out are inferred by
+ * interpolating the deltas of the neighbouring points of their contour (IUP).
+ * The phantom points following the outline give the new advance width and
+ * left side bearing.
+ */
+final class GlyphInstancer {
+
+  private static final int FLAG_ON_CURVE = 0x01;
+  private static final int FLAG_X_SHORT = 0x02;
+  private static final int FLAG_Y_SHORT = 0x04;
+  private static final int FLAG_REPEAT = 0x08;
+  private static final int FLAG_X_SAME_OR_POSITIVE = 0x10;
+  private static final int FLAG_Y_SAME_OR_POSITIVE = 0x20;
+  private static final int FLAG_OVERLAP_SIMPLE = 0x40;
+
+  private static final int HEADER_SIZE = 5 * FontData.SizeOf.SHORT;
+
+  /**
+   * A glyph of the instance.
+   */
+  static final class InstancedGlyph {
+    // the glyph data, padded to an even length
+    ReadableFontData data;
+    int advanceWidth;
+    int lsb;
+    boolean empty;
+    int xMin;
+    int yMin;
+    int xMax;
+    int yMax;
+    // the outline points, with the components of composite glyphs resolved
+    double[] x;
+    double[] y;
+  }
+
+  private final GlyphTable glyphTable;
+  private final LocaTable locaTable;
+  private final GlyphVariationsTable gvar;
+  private final HorizontalMetricsTable hmtx;
+  private final double[] coordinates;
+  private final InstancedGlyph[] glyphs;
+  private final boolean[] inProgress;
+
+  /**
+   * Constructor.
+   *
+   * @param gvar the glyph variations; null if the outlines don't vary
+   * @param coordinates the normalized coordinates of the instance
+   */
+  GlyphInstancer(GlyphTable glyphTable, LocaTable locaTable, GlyphVariationsTable gvar,
+      HorizontalMetricsTable hmtx, double[] coordinates) {
+    this.glyphTable = glyphTable;
+    this.locaTable = locaTable;
+    this.gvar = gvar;
+    this.hmtx = hmtx;
+    this.coordinates = coordinates;
+    this.glyphs = new InstancedGlyph[locaTable.numGlyphs()];
+    this.inProgress = new boolean[locaTable.numGlyphs()];
+  }
+
+  int numGlyphs() {
+    return this.glyphs.length;
+  }
+
+  InstancedGlyph glyph(int glyphId) {
+    if (this.glyphs[glyphId] == null) {
+      if (this.inProgress[glyphId]) {
+        throw new IllegalArgumentException("Composite glyph " + glyphId + " refers to itself.");
+      }
+      this.inProgress[glyphId] = true;
+      this.glyphs[glyphId] = instance(glyphId);
+      this.inProgress[glyphId] = false;
+    }
+    return this.glyphs[glyphId];
+  }
+
+  private InstancedGlyph instance(int glyphId) {
+    int length = this.locaTable.glyphLength(glyphId);
+    Glyph glyph = length == 0
+        ? null : this.glyphTable.glyph(this.locaTable.glyphOffset(glyphId), length);
+    if (glyph == null || glyph.numberOfContours() == 0) {
+      return instanceEmpty(glyphId);
+    }
+    if (glyph.glyphType() == Glyph.GlyphType.Composite) {
+      return instanceComposite(glyphId, (CompositeGlyph) glyph);
+    }
+    return instanceSimple(glyphId, (SimpleGlyph) glyph);
+  }
+
+  private InstancedGlyph instanceEmpty(int glyphId) {
+    double[] dx = new double[GlyphVariationsTable.PHANTOM_POINT_COUNT];
+    double[] dy = new double[GlyphVariationsTable.PHANTOM_POINT_COUNT];
+    double[] x = new double[GlyphVariationsTable.PHANTOM_POINT_COUNT];
+    double[] y = new double[GlyphVariationsTable.PHANTOM_POINT_COUNT];
+    int lsb = this.hmtx.leftSideBearing(glyphId);
+    setPhantomPoints(glyphId, x, 0, -lsb);
+    applyVariations(glyphId, x, y, null, dx, dy);
+
+    InstancedGlyph result = new InstancedGlyph();
+    result.data = WritableFontData.createWritableFontData(0);
+    result.empty = true;
+    result.x = new double[0];
+    result.y = new double[0];
+    setMetrics(result, x, dx, 0, lsb);
+    return result;
+  }
+
+  private InstancedGlyph instanceSimple(int glyphId, SimpleGlyph glyph) {
+    int contours = glyph.numberOfContours();
+    int[] endPoints = new int[contours];
+    int pointCount = 0;
+    for (int contour = 0; contour < contours; contour++) {
+      pointCount += glyph.numberOfPoints(contour);
+      endPoints[contour] = pointCount - 1;
+    }
+    int total = pointCount + GlyphVariationsTable.PHANTOM_POINT_COUNT;
+    double[] x = new double[total];
+    double[] y = new double[total];
+    boolean[] onCurve = new boolean[pointCount];
+    int point = 0;
+    for (int contour = 0; contour < contours; contour++) {
+      for (int i = 0; i < glyph.numberOfPoints(contour); i++) {
+        x[point] = glyph.xCoordinate(contour, i);
+        y[point] = glyph.yCoordinate(contour, i);
+        onCurve[point] = glyph.onCurve(contour, i);
+        point++;
+      }
+    }
+    setPhantomPoints(glyphId, x, pointCount, glyph.xMin() - this.hmtx.leftSideBearing(glyphId));
+
+    double[] dx = new double[total];
+    double[] dy = new double[total];
+    applyVariations(glyphId, x, y, endPoints, dx, dy);
+
+    InstancedGlyph result = new InstancedGlyph();
+    result.x = new double[pointCount];
+    result.y = new double[pointCount];
+    int[] newX = new int[pointCount];
+    int[] newY = new int[pointCount];
+    for (int i = 0; i < pointCount; i++) {
+      newX[i] = (int) Math.round(x[i] + dx[i]);
+      newY[i] = (int) Math.round(y[i] + dy[i]);
+      result.x[i] = newX[i];
+      result.y[i] = newY[i];
+    }
+    setBounds(result);
+    setMetrics(result, x, dx, pointCount, result.xMin);
+
+    ReadableFontData instructions = glyph.instructions();
+    ReadableFontData data = glyph.readFontData();
+    int firstFlag = HEADER_SIZE + (contours + 1) * FontData.SizeOf.USHORT + instructions.length();
+    boolean overlap = (data.readUByte(firstFlag) & FLAG_OVERLAP_SIMPLE) != 0;
+    result.data = writeSimpleGlyph(result, endPoints, instructions, newX, newY, onCurve, overlap);
+    return result;
+  }
+
+  private InstancedGlyph instanceComposite(int glyphId, CompositeGlyph glyph) {
+    int components = glyph.numGlyphs();
+    ReadableFontData data = glyph.readFontData();
+    int[] flags = new int[components];
+    int[] glyphIndices = new int[components];
+    int[] args1 = new int[components];
+    int[] args2 = new int[components];
+    byte[][] transformations = new byte[components][];
+    int total = components + GlyphVariationsTable.PHANTOM_POINT_COUNT;
+    double[] x = new double[total];
+    double[] y = new double[total];
+
+    int index = HEADER_SIZE;
+    for (int i = 0; i < components; i++) {
+      flags[i] = data.readUShort(index);
+      glyphIndices[i] = data.readUShort(index + 2);
+      index += 4;
+      boolean words = (flags[i] & CompositeGlyph.FLAG_ARG_1_AND_2_ARE_WORDS) != 0;
+      boolean xy = (flags[i] & CompositeGlyph.FLAG_ARGS_ARE_XY_VALUES) != 0;
+      if (words) {
+        args1[i] = xy ? data.readShort(index) : data.readUShort(index);
+        args2[i] = xy ? data.readShort(index + 2) : data.readUShort(index + 2);
+        index += 4;
+      } else {
+        args1[i] = xy ? data.readByte(index) : data.readUByte(index);
+        args2[i] = xy ? data.readByte(index + 1) : data.readUByte(index + 1);
+        index += 2;
+      }
+      transformations[i] = new byte[glyph.transformationSize(i)];
+      if (transformations[i].length > 0) {
+        data.readBytes(index, transformations[i], 0, transformations[i].length);
+      }
+      index += transformations[i].length;
+      if (xy) {
+        x[i] = args1[i];
+        y[i] = args2[i];
+      }
+    }
+    setPhantomPoints(glyphId, x, components, glyph.xMin() - this.hmtx.leftSideBearing(glyphId));
+
+    double[] dx = new double[total];
+    double[] dy = new double[total];
+    applyVariations(glyphId, x, y, null, dx, dy);
+
+    // move the components and resolve the outline
+    double[] pointsX = new double[0];
+    double[] pointsY = new double[0];
+    for (int i = 0; i < components; i++) {
+      if ((flags[i] & CompositeGlyph.FLAG_ARGS_ARE_XY_VALUES) != 0) {
+        args1[i] = (int) Math.round(x[i] + dx[i]);
+        args2[i] = (int) Math.round(y[i] + dy[i]);
+      }
+      InstancedGlyph component = glyph(glyphIndices[i]);
+      double[] transform = transform(flags[i], transformations[i]);
+      int count = component.x.length;
+      double[] cx = new double[count];
+      double[] cy = new double[count];
+      for (int p = 0; p < count; p++) {
+        cx[p] = transform[0] * component.x[p] + transform[2] * component.y[p];
+        cy[p] = transform[1] * component.x[p] + transform[3] * component.y[p];
+      }
+      double offsetX;
+      double offsetY;
+      if ((flags[i] & CompositeGlyph.FLAG_ARGS_ARE_XY_VALUES) != 0) {
+        offsetX = args1[i];
+        offsetY = args2[i];
+        if ((flags[i] & CompositeGlyph.FLAG_SCALED_COMPONENT_OFFSET) != 0
+            && (flags[i] & CompositeGlyph.FLAG_UNSCALED_COMPONENT_OFFSET) == 0) {
+          offsetX = transform[0] * args1[i] + transform[2] * args2[i];
+          offsetY = transform[1] * args1[i] + transform[3] * args2[i];
+        }
+      } else if (args1[i] < pointsX.length && args2[i] < count) {
+        // the component is moved to align one of its points with a point of
+        // the components before it
+        offsetX = pointsX[args1[i]] - cx[args2[i]];
+        offsetY = pointsY[args1[i]] - cy[args2[i]];
+      } else {
+        offsetX = 0;
+        offsetY = 0;
+      }
+      int start = pointsX.length;
+      pointsX = Arrays.copyOf(pointsX, start + count);
+      pointsY = Arrays.copyOf(pointsY, start + count);
+      for (int p = 0; p < count; p++) {
+        pointsX[start + p] = cx[p] + offsetX;
+        pointsY[start + p] = cy[p] + offsetY;
+      }
+    }
+
+    InstancedGlyph result = new InstancedGlyph();
+    result.x = pointsX;
+    result.y = pointsY;
+    setBounds(result);
+    setMetrics(result, x, dx, components, result.xMin);
+    result.data = writeCompositeGlyph(
+        glyph, result, flags, glyphIndices, args1, args2, transformations);
+    return result;
+  }
+
+  /**
+   * Sets the horizontal phantom points of a glyph; the vertical ones are left
+   * at 0, since vertical metrics are not instanced.
+   */
+  private void setPhantomPoints(int glyphId, double[] x, int pointCount, int originX) {
+    x[pointCount] = originX;
+    x[pointCount + 1] = originX + this.hmtx.advanceWidth(glyphId);
+  }
+
+  private static void setMetrics(
+      InstancedGlyph glyph, double[] x, double[] dx, int pointCount, int xMin) {
+    long origin = Math.round(x[pointCount] + dx[pointCount]);
+    long advance = Math.round(x[pointCount + 1] + dx[pointCount + 1]);
+    glyph.advanceWidth = (int) Math.max(0, advance - origin);
+    glyph.lsb = (int) (xMin - origin);
+  }
+
+  private static void setBounds(InstancedGlyph glyph) {
+    if (glyph.x.length == 0) {
+      glyph.empty = true;
+      return;
+    }
+    double xMin = Double.MAX_VALUE;
+    double yMin = Double.MAX_VALUE;
+    double xMax = -Double.MAX_VALUE;
+    double yMax = -Double.MAX_VALUE;
+    for (int i = 0; i < glyph.x.length; i++) {
+      xMin = Math.min(xMin, glyph.x[i]);
+      yMin = Math.min(yMin, glyph.y[i]);
+      xMax = Math.max(xMax, glyph.x[i]);
+      yMax = Math.max(yMax, glyph.y[i]);
+    }
+    glyph.xMin = (int) Math.floor(xMin);
+    glyph.yMin = (int) Math.floor(yMin);
+    glyph.xMax = (int) Math.ceil(xMax);
+    glyph.yMax = (int) Math.ceil(yMax);
+  }
+
+  /**
+   * @return the 2x2 matrix of a component as {xx, xy, yx, yy}
+   */
+  private static double[] transform(int flags, byte[] transformation) {
+    ReadableFontData data = WritableFontData.createWritableFontData(transformation);
+    if ((flags & CompositeGlyph.FLAG_WE_HAVE_A_SCALE) != 0) {
+      double scale = f2Dot14(data, 0);
+      return new double[] {scale, 0, 0, scale};
+    } else if ((flags & CompositeGlyph.FLAG_WE_HAVE_AN_X_AND_Y_SCALE) != 0) {
+      return new double[] {f2Dot14(data, 0), 0, 0, f2Dot14(data, 2)};
+    } else if ((flags & CompositeGlyph.FLAG_WE_HAVE_A_TWO_BY_TWO) != 0) {
+      return new double[] {
+          f2Dot14(data, 0), f2Dot14(data, 2), f2Dot14(data, 4), f2Dot14(data, 6)};
+    }
+    return new double[] {1, 0, 0, 1};
+  }
+
+  private static double f2Dot14(ReadableFontData data, int offset) {
+    return data.readShort(offset) / 16384.0;
+  }
+
+  /**
+   * Adds the scaled deltas of the tuple variations of a glyph.
+   *
+   * @param x the original x coordinates, including the phantom points
+   * @param y the original y coordinates, including the phantom points
+   * @param endPoints the last point of each contour; null for composite
+   *        glyphs, whose points are not interpolated
+   * @param dx receives the x deltas
+   * @param dy receives the y deltas
+   */
+  private void applyVariations(int glyphId, double[] x, double[] y, int[] endPoints,
+      double[] dx, double[] dy) {
+    if (this.gvar == null || glyphId >= this.gvar.glyphCount()) {
+      return;
+    }
+    int pointCount = x.length;
+    List<TupleVariation> variations = this.gvar.tupleVariations(glyphId, pointCount);
+    for (TupleVariation variation : variations) {
+      double scalar = variation.scalar(this.coordinates);
+      if (scalar == 0) {
+        continue;
+      }
+      int[] points = variation.points();
+      if (points == null) {
+        for (int i = 0; i < Math.min(pointCount, variation.deltaCount()); i++) {
+          dx[i] += scalar * variation.xDelta(i);
+          dy[i] += scalar * variation.yDelta(i);
+        }
+        continue;
+      }
+      double[] tx = new double[pointCount];
+      double[] ty = new double[pointCount];
+      boolean[] touched = new boolean[pointCount];
+      for (int i = 0; i < points.length; i++) {
+        int point = points[i];
+        if (point < pointCount) {
+          tx[point] = variation.xDelta(i);
+          ty[point] = variation.yDelta(i);
+          touched[point] = true;
+        }
+      }
+      if (endPoints != null) {
+        interpolateUntouched(x, tx, touched, endPoints);
+        interpolateUntouched(y, ty, touched, endPoints);
+      }
+      for (int i = 0; i < pointCount; i++) {
+        dx[i] += scalar * tx[i];
+        dy[i] += scalar * ty[i];
+      }
+    }
+  }
+
+  /**
+   * Infers the deltas of the untouched points of each contour along one axis.
+   * A contour without touched points is not moved, one with a single touched
+   * point is shifted by its delta, and otherwise each untouched point takes the
+   * delta interpolated between the touched points before and after it, or the
+   * delta of the nearer one if it lies outside of them.
+   */
+  static void interpolateUntouched(
+      double[] coordinates, double[] deltas, boolean[] touched, int[] endPoints) {
+    int start = 0;
+    for (int end : endPoints) {
+      int first = -1;
+      int touchedCount = 0;
+      for (int i = start; i <= end; i++) {
+        if (touched[i]) {
+          if (first < 0) {
+            first = i;
+          }
+          touchedCount++;
+        }
+      }
+      if (touchedCount == 1) {
+        for (int i = start; i <= end; i++) {
+          deltas[i] = deltas[first];
+        }
+      } else if (touchedCount > 1) {
+        int previous = first;
+        int size = end - start + 1;
+        for (int n = 1; n <= size; n++) {
+          int i = start + (first - start + n) % size;
+          if (!touched[i]) {
+            continue;
+          }
+          // the points strictly between previous and i are untouched
+          for (int j = start + (previous - start + 1) % size; j != i;
+              j = start + (j - start + 1) % size) {
+            deltas[j] = interpolate(coordinates[j], coordinates[previous], coordinates[i],
+                deltas[previous], deltas[i]);
+          }
+          previous = i;
+        }
+      }
+      start = end + 1;
+    }
+  }
+
+  private static double interpolate(double value, double a, double b, double da, double db) {
+    if (a == b) {
+      return da == db ? da : 0;
+    }
+    if (a > b) {
+      double temp = a;
+      a = b;
+      b = temp;
+      temp = da;
+      da = db;
+      db = temp;
+    }
+    if (value <= a) {
+      return da;
+    } else if (value >= b) {
+      return db;
+    }
+    return da + (value - a) * (db - da) / (b - a);
+  }
+
+  private static ReadableFontData writeSimpleGlyph(InstancedGlyph glyph, int[] endPoints,
+      ReadableFontData instructions, int[] x, int[] y, boolean[] onCurve, boolean overlap) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeShort(out, endPoints.length);
+    writeBounds(out, glyph);
+    for (int end : endPoints) {
+      writeShort(out, end);
+    }
+    writeShort(out, instructions.length());
+    for (int i = 0; i < instructions.length(); i++) {
+      out.write(instructions.readUByte(i));
+    }
+
+    int count = x.length;
+    int[] flags = new int[count];
+    ByteArrayOutputStream xBytes = new ByteArrayOutputStream();
+    ByteArrayOutputStream yBytes = new ByteArrayOutputStream();
+    int lastX = 0;
+    int lastY = 0;
+    for (int i = 0; i < count; i++) {
+      int flag = onCurve[i] ? FLAG_ON_CURVE : 0;
+      if (i == 0 && overlap) {
+        flag |= FLAG_OVERLAP_SIMPLE;
+      }
+      flag |= encodeDelta(xBytes, x[i] - lastX, FLAG_X_SHORT, FLAG_X_SAME_OR_POSITIVE);
+      flag |= encodeDelta(yBytes, y[i] - lastY, FLAG_Y_SHORT, FLAG_Y_SAME_OR_POSITIVE);
+      flags[i] = flag;
+      lastX = x[i];
+      lastY = y[i];
+    }
+    for (int i = 0; i < count; ) {
+      int repeat = 0;
+      while (i + repeat + 1 < count && flags[i + repeat + 1] == flags[i] && repeat < 255) {
+        repeat++;
+      }
+      if (repeat > 0) {
+        out.write(flags[i] | FLAG_REPEAT);
+        out.write(repeat);
+      } else {
+        out.write(flags[i]);
+      }
+      i += repeat + 1;
+    }
+    byte[] xData = xBytes.toByteArray();
+    byte[] yData = yBytes.toByteArray();
+    out.write(xData, 0, xData.length);
+    out.write(yData, 0, yData.length);
+    return padded(out);
+  }
+
+  private static int encodeDelta(
+      ByteArrayOutputStream out, int delta, int shortFlag, int sameOrPositiveFlag) {
+    if (delta == 0) {
+      return sameOrPositiveFlag;
+    } else if (delta >= -255 && delta <= 255) {
+      out.write(Math.abs(delta));
+      return shortFlag | (delta > 0 ? sameOrPositiveFlag : 0);
+    }
+    writeShort(out, delta);
+    return 0;
+  }
+
+  private static ReadableFontData writeCompositeGlyph(CompositeGlyph glyph,
+      InstancedGlyph result, int[] flags, int[] glyphIndices, int[] args1, int[] args2,
+      byte[][] transformations) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeShort(out, -1);
+    writeBounds(out, result);
+    for (int i = 0; i < flags.length; i++) {
+      boolean xy = (flags[i] & CompositeGlyph.FLAG_ARGS_ARE_XY_VALUES) != 0;
+      boolean words = xy
+          ? args1[i] < -128 || args1[i] > 127 || args2[i] < -128 || args2[i] > 127
+          : args1[i] > 255 || args2[i] > 255;
+      int flag = words
+          ? flags[i] | CompositeGlyph.FLAG_ARG_1_AND_2_ARE_WORDS
+          : flags[i] & ~CompositeGlyph.FLAG_ARG_1_AND_2_ARE_WORDS;
+      writeShort(out, flag);
+      writeShort(out, glyphIndices[i]);
+      if (words) {
+        writeShort(out, args1[i]);
+        writeShort(out, args2[i]);
+      } else {
+        out.write(args1[i] & 0xff);
+        out.write(args2[i] & 0xff);
+      }
+      out.write(transformations[i], 0, transformations[i].length);
+    }
+    if ((flags[flags.length - 1] & CompositeGlyph.FLAG_WE_HAVE_INSTRUCTIONS) != 0) {
+      ReadableFontData instructions = glyph.instructions();
+      writeShort(out, instructions.length());
+      for (int i = 0; i < instructions.length(); i++) {
+        out.write(instructions.readUByte(i));
+      }
+    }
+    return padded(out);
+  }
+
+  private static void writeBounds(ByteArrayOutputStream out, InstancedGlyph glyph) {
+    writeShort(out, glyph.xMin);
+    writeShort(out, glyph.yMin);
+    writeShort(out, glyph.xMax);
+    writeShort(out, glyph.yMax);
+  }
+
+  private static void writeShort(ByteArrayOutputStream out, int value) {
+    out.write((value >> 8) & 0xff);
+    out.write(value & 0xff);
+  }
+
+  private static ReadableFontData padded(ByteArrayOutputStream out) {
+    if ((out.size() & 1) != 0) {
+      out.write(0);
+    }
+    return WritableFontData.createWritableFontData(out.toByteArray());
+  }
+}
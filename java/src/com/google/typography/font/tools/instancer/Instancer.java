@@ -0,0 +1,368 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.instancer;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.core.FontHeaderTable;
+import com.google.typography.font.sfntly.table.core.HorizontalHeaderTable;
+import com.google.typography.font.sfntly.table.core.HorizontalMetricsTable;
+import com.google.typography.font.sfntly.table.core.OS2Table;
+import com.google.typography.font.sfntly.table.truetype.Glyph;
+import com.google.typography.font.sfntly.table.truetype.GlyphTable;
+import com.google.typography.font.sfntly.table.truetype.LocaTable;
+import com.google.typography.font.sfntly.table.variations.AxisVariationsTable;
+import com.google.typography.font.sfntly.table.variations.FontVariationsTable;
+import com.google.typography.font.sfntly.table.variations.GlyphVariationsTable;
+import com.google.typography.font.sfntly.table.variations.HorizontalMetricsVariationsTable;
+import com.google.typography.font.sfntly.table.variations.MetricsVariationsTable;
+import com.google.typography.font.sfntly.table.variations.MetricsVariationsTable.ValueTag;
+import com.google.typography.font.tools.subsetter.HorizontalMetricsTableBuilder;
+import com.google.typography.font.tools.subsetter.HorizontalMetricsTableBuilder.LongHorMetric;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Creates a static instance of a TrueType variable font. The glyph outlines
+ * are moved by the gvar deltas of the instance, the horizontal metrics, the
+ * bounding boxes and the font-wide metrics of the hhea, OS/2 and post tables
+ * are updated to match, and the variation tables are dropped.
+ *
+ * Axes without an explicit value are pinned at their default value. The cvar
+ * table is dropped without being applied, and the variations of the GDEF and
+ * GPOS tables are left in place.
+ */
+public class Instancer {
+
+  private static final int LOCA_SHORT_LIMIT = 0x1fffe;
+
+  // the tables only meaningful in a variable font
+  private static final Set<Integer> VARIATION_TABLES = new HashSet<Integer>(Arrays.asList(
+      Tag.fvar, Tag.avar, Tag.gvar, Tag.cvar, Tag.HVAR, Tag.VVAR, Tag.MVAR, Tag.STAT));
+
+  // the usWidthClass values in wdth axis percentages
+  private static final double[] WIDTH_CLASSES =
+      {50, 62.5, 75, 87.5, 100, 112.5, 125, 150, 200};
+
+  private static final int POST_UNDERLINE_POSITION = 8;
+  private static final int POST_UNDERLINE_THICKNESS = 10;
+
+  private final Font font;
+  private final FontFactory fontFactory;
+  private final FontVariationsTable fvar;
+  private final Map<Integer, Double> axisValues = new HashMap<Integer, Double>();
+
+  /**
+   * Constructor.
+   *
+   * @param font the variable font
+   * @param fontFactory the factory to create the instance with
+   * @throws IllegalArgumentException if the font is not a variable font
+   */
+  public Instancer(Font font, FontFactory fontFactory) {
+    this.font = font;
+    this.fontFactory = fontFactory;
+    this.fvar = font.getTable(Tag.fvar);
+    if (this.fvar == null) {
+      throw new IllegalArgumentException("Font has no fvar table.");
+    }
+  }
+
+  /**
+   * Sets the value of an axis in the instance.
+   *
+   * @param axisTag the axis tag, e.g. Tag.intValue("wght")
+   * @param userValue the axis value in user coordinates, clamped to the range
+   *        of the axis
+   * @throws IllegalArgumentException if the font has no such axis
+   */
+  public void setAxisValue(int axisTag, double userValue) {
+    int axis = this.fvar.axisIndex(axisTag);
+    if (axis < 0) {
+      throw new IllegalArgumentException("Font has no axis " + Tag.stringValue(axisTag));
+    }
+    this.axisValues.put(axisTag, Math.max(this.fvar.axisMinValue(axis),
+        Math.min(this.fvar.axisMaxValue(axis), userValue)));
+  }
+
+  /**
+   * @return the user coordinates of the instance, one per axis
+   */
+  double[] userCoordinates() {
+    double[] coordinates = new double[this.fvar.axisCount()];
+    for (int axis = 0; axis < coordinates.length; axis++) {
+      Double value = this.axisValues.get(this.fvar.axisTag(axis));
+      coordinates[axis] = value == null ? this.fvar.axisDefaultValue(axis) : value;
+    }
+    return coordinates;
+  }
+
+  /**
+   * @return the normalized coordinates of the instance, one per axis
+   */
+  double[] normalizedCoordinates() {
+    double[] coordinates = userCoordinates();
+    AxisVariationsTable avar = this.font.getTable(Tag.avar);
+    for (int axis = 0; axis < coordinates.length; axis++) {
+      double value = this.fvar.normalize(axis, coordinates[axis]);
+      if (avar != null && axis < avar.axisCount()) {
+        value = avar.map(axis, value);
+      }
+      // the coordinates are stored as F2DOT14 in the tables
+      coordinates[axis] = Math.round(value * 16384) / 16384.0;
+    }
+    return coordinates;
+  }
+
+  /**
+   * Creates the instance.
+   *
+   * @return a builder for the static font
+   * @throws IOException
+   * @throws UnsupportedOperationException if the font has no TrueType outlines
+   */
+  public Font.Builder instance() throws IOException {
+    GlyphTable glyphTable = this.font.getTable(Tag.glyf);
+    LocaTable locaTable = this.font.getTable(Tag.loca);
+    if (glyphTable == null || locaTable == null) {
+      throw new UnsupportedOperationException("Only fonts with TrueType outlines are supported.");
+    }
+    double[] coordinates = normalizedCoordinates();
+
+    Font.Builder fontBuilder = this.fontFactory.newFontBuilder();
+    for (Map.Entry<Integer, ? extends Table> entry : this.font.tableMap().entrySet()) {
+      int tag = entry.getKey();
+      if (!VARIATION_TABLES.contains(tag) && tag != Tag.glyf && tag != Tag.loca
+          && tag != Tag.hmtx) {
+        fontBuilder.newTableBuilder(tag, entry.getValue().readFontData());
+      }
+    }
+
+    HorizontalMetricsTable hmtx = this.font.getTable(Tag.hmtx);
+    GlyphVariationsTable gvar = this.font.getTable(Tag.gvar);
+    GlyphInstancer glyphInstancer =
+        new GlyphInstancer(glyphTable, locaTable, gvar, hmtx, coordinates);
+    List<LongHorMetric> metrics = instanceGlyphs(fontBuilder, glyphInstancer);
+
+    HorizontalMetricsVariationsTable hvar = this.font.getTable(Tag.HVAR);
+    if (gvar == null && hvar != null) {
+      // without outline variations the phantom points don't move
+      for (int glyphId = 0; glyphId < metrics.size(); glyphId++) {
+        LongHorMetric metric = metrics.get(glyphId);
+        metric.advanceWidth = Math.max(0,
+            metric.advanceWidth + (int) Math.round(hvar.advanceWidthDelta(glyphId, coordinates)));
+      }
+    }
+    new HorizontalMetricsTableBuilder(fontBuilder, metrics).build();
+
+    updateHeaders(fontBuilder, glyphInstancer, metrics);
+    MetricsVariationsTable mvar = this.font.getTable(Tag.MVAR);
+    if (mvar != null && mvar.itemVariationStore() != null) {
+      applyMetricsVariations(fontBuilder, mvar, coordinates);
+    }
+    updateStyle(fontBuilder, metrics);
+    return fontBuilder;
+  }
+
+  private static List<LongHorMetric> instanceGlyphs(
+      Font.Builder fontBuilder, GlyphInstancer glyphInstancer) {
+    GlyphTable.Builder glyphTableBuilder =
+        (GlyphTable.Builder) fontBuilder.newTableBuilder(Tag.glyf);
+    LocaTable.Builder locaTableBuilder = (LocaTable.Builder) fontBuilder.newTableBuilder(Tag.loca);
+    List<Glyph.Builder<? extends Glyph>> glyphBuilders = glyphTableBuilder.glyphBuilders();
+    List<LongHorMetric> metrics = new ArrayList<LongHorMetric>();
+    for (int glyphId = 0; glyphId < glyphInstancer.numGlyphs(); glyphId++) {
+      GlyphInstancer.InstancedGlyph glyph = glyphInstancer.glyph(glyphId);
+      glyphBuilders.add(glyphTableBuilder.glyphBuilder(glyph.data));
+      metrics.add(new LongHorMetric(glyph.advanceWidth, glyph.lsb));
+    }
+    List<Integer> locaList = glyphTableBuilder.generateLocaList();
+    locaTableBuilder.setLocaList(locaList);
+
+    FontHeaderTable.Builder headBuilder =
+        (FontHeaderTable.Builder) fontBuilder.getTableBuilder(Tag.head);
+    headBuilder.setIndexToLocFormat(locaList.get(locaList.size() - 1) > LOCA_SHORT_LIMIT
+        ? FontHeaderTable.IndexToLocFormat.longOffset
+        : FontHeaderTable.IndexToLocFormat.shortOffset);
+    return metrics;
+  }
+
+  private static void updateHeaders(
+      Font.Builder fontBuilder, GlyphInstancer glyphInstancer, List<LongHorMetric> metrics) {
+    int xMin = Integer.MAX_VALUE;
+    int yMin = Integer.MAX_VALUE;
+    int xMax = Integer.MIN_VALUE;
+    int yMax = Integer.MIN_VALUE;
+    int minLeftSideBearing = Integer.MAX_VALUE;
+    int minRightSideBearing = Integer.MAX_VALUE;
+    int xMaxExtent = Integer.MIN_VALUE;
+    for (int glyphId = 0; glyphId < glyphInstancer.numGlyphs(); glyphId++) {
+      GlyphInstancer.InstancedGlyph glyph = glyphInstancer.glyph(glyphId);
+      if (glyph.empty) {
+        continue;
+      }
+      LongHorMetric metric = metrics.get(glyphId);
+      xMin = Math.min(xMin, glyph.xMin);
+      yMin = Math.min(yMin, glyph.yMin);
+      xMax = Math.max(xMax, glyph.xMax);
+      yMax = Math.max(yMax, glyph.yMax);
+      int extent = metric.lsb + glyph.xMax - glyph.xMin;
+      minLeftSideBearing = Math.min(minLeftSideBearing, metric.lsb);
+      minRightSideBearing = Math.min(minRightSideBearing, metric.advanceWidth - extent);
+      xMaxExtent = Math.max(xMaxExtent, extent);
+    }
+    if (xMin == Integer.MAX_VALUE) {
+      return;
+    }
+
+    FontHeaderTable.Builder headBuilder =
+        (FontHeaderTable.Builder) fontBuilder.getTableBuilder(Tag.head);
+    headBuilder.setXMin(xMin);
+    headBuilder.setYMin(yMin);
+    headBuilder.setXMax(xMax);
+    headBuilder.setYMax(yMax);
+
+    HorizontalHeaderTable.Builder hheaBuilder =
+        (HorizontalHeaderTable.Builder) fontBuilder.getTableBuilder(Tag.hhea);
+    hheaBuilder.setMinLeftSideBearing(minLeftSideBearing);
+    hheaBuilder.setMinRightSideBearing(minRightSideBearing);
+    hheaBuilder.setXMaxExtent(xMaxExtent);
+  }
+
+  private static void applyMetricsVariations(
+      Font.Builder fontBuilder, MetricsVariationsTable mvar, double[] coordinates) {
+    OS2Table.Builder os2Builder = (OS2Table.Builder) fontBuilder.getTableBuilder(Tag.OS_2);
+    if (os2Builder != null) {
+      os2Builder.setSTypoAscender(
+          vary(os2Builder.sTypoAscender(), mvar, ValueTag.hasc, coordinates));
+      os2Builder.setSTypoDescender(
+          vary(os2Builder.sTypoDescender(), mvar, ValueTag.hdsc, coordinates));
+      os2Builder.setSTypoLineGap(
+          vary(os2Builder.sTypoLineGap(), mvar, ValueTag.hlgp, coordinates));
+      os2Builder.setUsWinAscent(
+          vary(os2Builder.usWinAscent(), mvar, ValueTag.hcla, coordinates));
+      os2Builder.setUsWinDescent(
+          vary(os2Builder.usWinDescent(), mvar, ValueTag.hcld, coordinates));
+      os2Builder.setYSubscriptXSize(
+          vary(os2Builder.ySubscriptXSize(), mvar, ValueTag.sbxs, coordinates));
+      os2Builder.setYSubscriptYSize(
+          vary(os2Builder.ySubscriptYSize(), mvar, ValueTag.sbys, coordinates));
+      os2Builder.setYSubscriptXOffset(
+          vary(os2Builder.ySubscriptXOffset(), mvar, ValueTag.sbxo, coordinates));
+      os2Builder.setYSubscriptYOffset(
+          vary(os2Builder.ySubscriptYOffset(), mvar, ValueTag.sbyo, coordinates));
+      os2Builder.setYSuperscriptXSize(
+          vary(os2Builder.ySuperscriptXSize(), mvar, ValueTag.spxs, coordinates));
+      os2Builder.setYSuperscriptYSize(
+          vary(os2Builder.ySuperscriptYSize(), mvar, ValueTag.spys, coordinates));
+      os2Builder.setYSuperscriptXOffset(
+          vary(os2Builder.ySuperscriptXOffset(), mvar, ValueTag.spxo, coordinates));
+      os2Builder.setYSuperscriptYOffset(
+          vary(os2Builder.ySuperscriptYOffset(), mvar, ValueTag.spyo, coordinates));
+      os2Builder.setYStrikeoutSize(
+          vary(os2Builder.yStrikeoutSize(), mvar, ValueTag.strs, coordinates));
+      os2Builder.setYStrikeoutPosition(
+          vary(os2Builder.yStrikeoutPosition(), mvar, ValueTag.stro, coordinates));
+      if (os2Builder.tableVersion() >= 2) {
+        os2Builder.setSxHeight(vary(os2Builder.sxHeight(), mvar, ValueTag.xhgt, coordinates));
+        os2Builder.setSCapHeight(
+            vary(os2Builder.sCapHeight(), mvar, ValueTag.cpht, coordinates));
+      }
+    }
+
+    HorizontalHeaderTable.Builder hheaBuilder =
+        (HorizontalHeaderTable.Builder) fontBuilder.getTableBuilder(Tag.hhea);
+    hheaBuilder.setCaretSlopeRise(
+        vary(hheaBuilder.caretSlopeRise(), mvar, ValueTag.hcrs, coordinates));
+    hheaBuilder.setCaretSlopeRun(
+        vary(hheaBuilder.caretSlopeRun(), mvar, ValueTag.hcrn, coordinates));
+    hheaBuilder.setCaretOffset(
+        vary(hheaBuilder.caretOffset(), mvar, ValueTag.hcof, coordinates));
+
+    Table.Builder<? extends Table> postBuilder = fontBuilder.getTableBuilder(Tag.post);
+    if (postBuilder != null) {
+      // the post table builder has no setters, so the fields are patched
+      ReadableFontData post = postBuilder.build().readFontData();
+      WritableFontData data = WritableFontData.createWritableFontData(post.length());
+      post.copyTo(data);
+      data.writeShort(POST_UNDERLINE_POSITION,
+          vary(post.readShort(POST_UNDERLINE_POSITION), mvar, ValueTag.undo, coordinates));
+      data.writeShort(POST_UNDERLINE_THICKNESS,
+          vary(post.readShort(POST_UNDERLINE_THICKNESS), mvar, ValueTag.unds, coordinates));
+      fontBuilder.removeTableBuilder(Tag.post);
+      fontBuilder.newTableBuilder(Tag.post, data);
+    }
+  }
+
+  private static int vary(int value, MetricsVariationsTable mvar, int tag, double[] coordinates) {
+    return value + (int) Math.round(mvar.delta(tag, coordinates));
+  }
+
+  /**
+   * Sets the weight and width classes from the wght and wdth axes, and the
+   * average advance width.
+   */
+  private void updateStyle(Font.Builder fontBuilder, List<LongHorMetric> metrics) {
+    OS2Table.Builder os2Builder = (OS2Table.Builder) fontBuilder.getTableBuilder(Tag.OS_2);
+    if (os2Builder == null) {
+      return;
+    }
+    double[] coordinates = userCoordinates();
+    int weightAxis = this.fvar.axisIndex(Tag.intValue(new byte[] {'w', 'g', 'h', 't'}));
+    if (weightAxis >= 0) {
+      os2Builder.setUsWeightClass(
+          (int) Math.max(1, Math.min(1000, Math.round(coordinates[weightAxis]))));
+    }
+    int widthAxis = this.fvar.axisIndex(Tag.intValue(new byte[] {'w', 'd', 't', 'h'}));
+    if (widthAxis >= 0) {
+      int widthClass = 0;
+      for (int i = 1; i < WIDTH_CLASSES.length; i++) {
+        if (Math.abs(WIDTH_CLASSES[i] - coordinates[widthAxis])
+            < Math.abs(WIDTH_CLASSES[widthClass] - coordinates[widthAxis])) {
+          widthClass = i;
+        }
+      }
+      os2Builder.setUsWidthClass(widthClass + 1);
+    }
+
+    if (os2Builder.tableVersion() >= 3) {
+      // the average of all non-zero advance widths
+      long total = 0;
+      int count = 0;
+      for (LongHorMetric metric : metrics) {
+        if (metric.advanceWidth > 0) {
+          total += metric.advanceWidth;
+          count++;
+        }
+      }
+      if (count > 0) {
+        os2Builder.setXAvgCharWidth((int) Math.round((double) total / count));
+      }
+    }
+  }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends subset requests to a {@link SubsetServer} from many threads at once
+ * and reports the throughput and the latencies. Each request asks for a random
+ * sample of the characters of a text, drawn from a fixed number of distinct
+ * requests, so that the share of result cache hits can be set.
+ */
+public class LoadTestClient {
+
+  private final String baseUrl;
+  private final String fontId;
+  private int requests = 1000;
+  private int concurrency = 8;
+  private int distinctRequests = 100;
+  private int charactersPerRequest = 20;
+  private String format = "woff";
+  private String text =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789.,;:!?'\"()-";
+  private long seed = 1;
+
+  /**
+   * @param baseUrl the URL of the server, such as http://localhost:8080
+   * @param fontId the font subset
+   */
+  public LoadTestClient(String baseUrl, String fontId) {
+    this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    this.fontId = fontId;
+  }
+
+  public void setRequests(int requests) {
+    this.requests = requests;
+  }
+
+  public void setConcurrency(int concurrency) {
+    this.concurrency = concurrency;
+  }
+
+  /**
+   * @param distinctRequests the number of different requests sent, fewer
+   *        giving more result cache hits
+   */
+  public void setDistinctRequests(int distinctRequests) {
+    this.distinctRequests = distinctRequests;
+  }
+
+  public void setCharactersPerRequest(int charactersPerRequest) {
+    this.charactersPerRequest = charactersPerRequest;
+  }
+
+  public void setFormat(String format) {
+    this.format = format;
+  }
+
+  /**
+   * @param text the characters the requests are sampled from
+   */
+  public void setText(String text) {
+    this.text = text;
+  }
+
+  public void setSeed(long seed) {
+    this.seed = seed;
+  }
+
+  /**
+   * The outcome of a load test.
+   */
+  public static final class Result {
+    private final long[] latencies;
+    private final int ok;
+    private final int busy;
+    private final int errors;
+    private final long elapsedNanos;
+
+    Result(long[] latencies, int ok, int busy, int errors, long elapsedNanos) {
+      this.latencies = latencies;
+      this.ok = ok;
+      this.busy = busy;
+      this.errors = errors;
+      this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the number of requests answered with 200
+     */
+    public int ok() {
+      return this.ok;
+    }
+
+    /**
+     * @return the number of requests refused with 503
+     */
+    public int busy() {
+      return this.busy;
+    }
+
+    /**
+     * @return the number of requests failed otherwise
+     */
+    public int errors() {
+      return this.errors;
+    }
+
+    public double requestsPerSecond() {
+      return latencies.length / (elapsedNanos / 1e9);
+    }
+
+    /**
+     * @param percentile the percentile, 0 to 100
+     * @return the latency of the percentile, in milliseconds
+     */
+    public double latencyMillis(double percentile) {
+      if (latencies.length == 0) {
+        return 0;
+      }
+      int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+      return latencies[Math.max(0, Math.min(latencies.length - 1, index))] / 1e6;
+    }
+
+    public void print(PrintStream out) {
+      out.println(latencies.length + " requests in "
+          + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + " ms, "
+          + String.format("%.1f", requestsPerSecond()) + " requests/s");
+      out.println(ok + " ok, " + busy + " busy, " + errors + " errors");
+      out.println(String.format("latency ms: p50 %.1f, p90 %.1f, p99 %.1f, max %.1f",
+          latencyMillis(50), latencyMillis(90), latencyMillis(99), latencyMillis(100)));
+    }
+  }
+
+  /**
+   * Runs the load test.
+   *
+   * @return the outcome
+   * @throws IOException if a request URL cannot be built
+   */
+  public Result run() throws IOException {
+    Random random = new Random(seed);
+    int[] codepoints = new int[text.codePointCount(0, text.length())];
+    for (int i = 0, offset = 0; i < codepoints.length; i++) {
+      codepoints[i] = text.codePointAt(offset);
+      offset += Character.charCount(codepoints[i]);
+    }
+    final List<URL> urls = new ArrayList<URL>();
+    for (int i = 0; i < distinctRequests; i++) {
+      StringBuilder sample = new StringBuilder();
+      for (int j = 0; j < charactersPerRequest; j++) {
+        sample.appendCodePoint(codepoints[random.nextInt(codepoints.length)]);
+      }
+      urls.add(new URL(baseUrl + "/subset?font=" + URLEncoder.encode(fontId, "UTF-8")
+          + "&format=" + URLEncoder.encode(format, "UTF-8")
+          + "&text=" + URLEncoder.encode(sample.toString(), "UTF-8")));
+    }
+
+    final long[] latencies = new long[requests];
+    final AtomicInteger next = new AtomicInteger();
+    final AtomicInteger ok = new AtomicInteger();
+    final AtomicInteger busy = new AtomicInteger();
+    final AtomicInteger errors = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+    long start = System.nanoTime();
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int t = 0; t < concurrency; t++) {
+        final Random threadRandom = new Random(seed + t + 1);
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            for (int i = next.getAndIncrement(); i < latencies.length;
+                i = next.getAndIncrement()) {
+              long requestStart = System.nanoTime();
+              int status = request(urls.get(threadRandom.nextInt(urls.size())));
+              latencies[i] = System.nanoTime() - requestStart;
+              if (status == HttpURLConnection.HTTP_OK) {
+                ok.incrementAndGet();
+              } else if (status == HttpURLConnection.HTTP_UNAVAILABLE) {
+                busy.incrementAndGet();
+              } else {
+                errors.incrementAndGet();
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (ExecutionException e) {
+      throw new IOException("Load test failed", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted during load test", e);
+    } finally {
+      executor.shutdownNow();
+    }
+    long elapsed = System.nanoTime() - start;
+    Arrays.sort(latencies);
+    return new Result(latencies, ok.get(), busy.get(), errors.get(), elapsed);
+  }
+
+  /**
+   * @return the status of the response, or -1 if there was none
+   */
+  private static int request(URL url) {
+    try {
+      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+      int status = connection.getResponseCode();
+      InputStream is = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+      if (is != null) {
+        try {
+          byte[] buffer = new byte[8192];
+          while (is.read(buffer) >= 0) {
+            // drain the body so the connection is reused
+          }
+        } finally {
+          is.close();
+        }
+      }
+      return status;
+    } catch (IOException e) {
+      return -1;
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    List<String> positional = new ArrayList<String>();
+    List<String[]> options = new ArrayList<String[]>();
+    for (Iterator<String> it = Arrays.asList(args).iterator(); it.hasNext(); ) {
+      String arg = it.next();
+      if (arg.startsWith("-") && it.hasNext()) {
+        options.add(new String[] {arg.substring(1), it.next()});
+      } else if (!arg.startsWith("-")) {
+        positional.add(arg);
+      } else {
+        printUsage();
+        System.exit(1);
+      }
+    }
+    if (positional.size() != 2) {
+      printUsage();
+      System.exit(1);
+    }
+    LoadTestClient client = new LoadTestClient(positional.get(0), positional.get(1));
+    try {
+      for (String[] option : options) {
+        if (option[0].equals("requests")) {
+          client.setRequests(Integer.parseInt(option[1]));
+        } else if (option[0].equals("concurrency")) {
+          client.setConcurrency(Integer.parseInt(option[1]));
+        } else if (option[0].equals("distinct")) {
+          client.setDistinctRequests(Integer.parseInt(option[1]));
+        } else if (option[0].equals("chars")) {
+          client.setCharactersPerRequest(Integer.parseInt(option[1]));
+        } else if (option[0].equals("format")) {
+          client.setFormat(option[1]);
+        } else if (option[0].equals("text")) {
+          client.setText(option[1]);
+        } else {
+          throw new IllegalArgumentException("Unknown option: -" + option[0]);
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      printUsage();
+      System.exit(1);
+    }
+    client.run().print(System.out);
+  }
+
+  private static void printUsage() {
+    System.out.println("LoadTestClient [-requests n] [-concurrency n] [-distinct n] [-chars n]"
+        + " [-format f] [-text t] url fontid");
+    System.out.println("Load tests a subset server, e.g. http://localhost:8080 OpenSans-Regular");
+    System.out.println("\t-requests\t Number of requests (default 1000)");
+    System.out.println("\t-concurrency\t Requests sent at once (default 8)");
+    System.out.println("\t-distinct\t Number of different requests (default 100)");
+    System.out.println("\t-chars\t Characters per request (default 20)");
+    System.out.println("\t-format\t ttf, woff or eot (default woff)");
+    System.out.println("\t-text\t Characters the requests are sampled from");
+  }
+}
@@ -0,0 +1,592 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.server;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.data.SfStringUtils;
+import com.google.typography.font.tools.conversion.eot.EOTWriter;
+import com.google.typography.font.tools.conversion.woff.CachingCompressionStrategy;
+import com.google.typography.font.tools.conversion.woff.PooledDeflaterStrategy;
+import com.google.typography.font.tools.conversion.woff.WoffWriter;
+import com.google.typography.font.tools.subsetter.FontSlicer;
+import com.google.typography.font.tools.subsetter.HintStripper;
+import com.google.typography.font.tools.subsetter.Subsetter;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * An embeddable HTTP server that subsets and converts the fonts of a
+ * directory, on the JDK HTTP server. It listens on the loopback address only.
+ *
+ * <pre>
+ * GET /subset?font=id&amp;text=...&amp;ranges=U+0-7F,U+20AC&amp;format=woff&amp;hints=strip
+ * GET /convert?font=id&amp;format=eot
+ * </pre>
+ *
+ * The font id is the name of a .ttf or .otf file of the directory without the
+ * extension. The format is ttf, woff or eot, ttf by default, with EOT output
+ * compressed with MicroType Express. A subset holds the codepoints of the
+ * text and of the CSS style unicode ranges together.
+ *
+ * Parsed fonts, with their glyph dependencies, are kept in a cache of a fixed
+ * number of fonts, and responses in a cache of a fixed number of bytes. WOFF
+ * output shares one cache of compressed tables across requests, so the tables
+ * that subsets of a font have in common are compressed once. The
+ * requests are served by a fixed pool of workers behind a bounded queue; when
+ * the queue is full a request is refused at once with 503 rather than left
+ * waiting, so clients can back off.
+ */
+public class SubsetServer {
+
+  public static final int DEFAULT_QUEUE_SIZE = 256;
+  public static final int DEFAULT_FONT_CACHE_SIZE = 16;
+  public static final long DEFAULT_RESULT_CACHE_SIZE = 64L << 20;
+  public static final long DEFAULT_COMPRESSION_CACHE_SIZE = 16L << 20;
+
+  private static final Pattern FONT_ID = Pattern.compile("[A-Za-z0-9_][A-Za-z0-9._-]*");
+  private static final String[] FONT_EXTENSIONS = {".ttf", ".otf"};
+  private static final int MAX_CODEPOINT = 0x10ffff;
+
+  private static final Map<String, String> CONTENT_TYPES = new HashMap<String, String>();
+  static {
+    CONTENT_TYPES.put("ttf", "font/ttf");
+    CONTENT_TYPES.put("woff", "font/woff");
+    CONTENT_TYPES.put("eot", "application/vnd.ms-fontobject");
+  }
+
+  private final File fontDirectory;
+  private final FontFactory fontFactory = FontFactory.getInstance();
+  private int threads = Runtime.getRuntime().availableProcessors();
+  private int queueSize = DEFAULT_QUEUE_SIZE;
+  private int fontCacheSize = DEFAULT_FONT_CACHE_SIZE;
+  private long resultCacheSize = DEFAULT_RESULT_CACHE_SIZE;
+
+  // least recently used first
+  private final LinkedHashMap<String, FutureTask<FontSlicer>> fonts =
+      new LinkedHashMap<String, FutureTask<FontSlicer>>(16, 0.75f, true /* access order */);
+  private final LinkedHashMap<String, byte[]> results =
+      new LinkedHashMap<String, byte[]>(16, 0.75f, true /* access order */);
+  private long resultBytes;
+  private final CachingCompressionStrategy woffCompression =
+      new CachingCompressionStrategy(new PooledDeflaterStrategy(), DEFAULT_COMPRESSION_CACHE_SIZE);
+  private final WoffWriter woffWriter = new WoffWriter(woffCompression);
+
+  private HttpServer server;
+  private ThreadPoolExecutor workers;
+
+  /**
+   * @param fontDirectory the directory of the fonts served
+   */
+  public SubsetServer(File fontDirectory) {
+    this.fontDirectory = fontDirectory;
+  }
+
+  /**
+   * @param threads the number of requests served at once
+   */
+  public void setThreads(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Invalid number of threads: " + threads);
+    }
+    this.threads = threads;
+  }
+
+  /**
+   * @param queueSize the number of requests waiting for a worker, beyond which
+   *        requests are refused
+   */
+  public void setQueueSize(int queueSize) {
+    if (queueSize < 0) {
+      throw new IllegalArgumentException("Invalid queue size: " + queueSize);
+    }
+    this.queueSize = queueSize;
+  }
+
+  /**
+   * @param fontCacheSize the number of parsed fonts kept
+   */
+  public void setFontCacheSize(int fontCacheSize) {
+    if (fontCacheSize < 1) {
+      throw new IllegalArgumentException("Invalid font cache size: " + fontCacheSize);
+    }
+    this.fontCacheSize = fontCacheSize;
+  }
+
+  /**
+   * @param resultCacheSize the most bytes of responses kept
+   */
+  public void setResultCacheSize(long resultCacheSize) {
+    if (resultCacheSize < 0) {
+      throw new IllegalArgumentException("Invalid result cache size: " + resultCacheSize);
+    }
+    this.resultCacheSize = resultCacheSize;
+  }
+
+  /**
+   * Starts the server.
+   *
+   * @param port the port, or 0 for any free port
+   * @return the port the server listens on
+   * @throws IOException if the server cannot listen on the port
+   */
+  public synchronized int start(int port) throws IOException {
+    if (server != null) {
+      throw new IllegalStateException("Server already started");
+    }
+    BlockingQueue<Runnable> queue = queueSize == 0
+        ? new SynchronousQueue<Runnable>() : new ArrayBlockingQueue<Runnable>(queueSize);
+    final ThreadPoolExecutor pool =
+        new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, queue);
+    workers = pool;
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getByName(null), port), 0);
+    HttpHandler handler = new HttpHandler() {
+      @Override
+      public void handle(final HttpExchange exchange) throws IOException {
+        // the dispatcher thread only queues the request, so a full queue is
+        // answered at once
+        try {
+          pool.execute(new Runnable() {
+            @Override
+            public void run() {
+              serve(exchange);
+            }
+          });
+        } catch (RejectedExecutionException e) {
+          exchange.getResponseHeaders().set("Retry-After", "1");
+          sendError(exchange, 503, "Server busy");
+        }
+      }
+    };
+    server.createContext("/subset", handler);
+    server.createContext("/convert", handler);
+    server.start();
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * Stops the server, abandoning the requests not yet served.
+   */
+  public synchronized void stop() {
+    if (server != null) {
+      server.stop(0);
+      workers.shutdownNow();
+      server = null;
+      workers = null;
+    }
+  }
+
+  private void serve(HttpExchange exchange) {
+    try {
+      if (!exchange.getRequestMethod().equals("GET")) {
+        sendError(exchange, 405, "Only GET is supported");
+        return;
+      }
+      Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+      String fontId = params.get("font");
+      if (fontId == null || !FONT_ID.matcher(fontId).matches()) {
+        throw new IllegalArgumentException("Missing or invalid font id");
+      }
+      String format = params.containsKey("format") ? params.get("format") : "ttf";
+      String contentType = CONTENT_TYPES.get(format);
+      if (contentType == null) {
+        throw new IllegalArgumentException("Unknown format: " + format);
+      }
+      boolean stripHints = "strip".equals(params.get("hints"));
+      List<int[]> ranges = null;
+      if (exchange.getHttpContext().getPath().equals("/subset")) {
+        ranges = new ArrayList<int[]>();
+        if (params.containsKey("text")) {
+          for (int codepoint : SfStringUtils.getAllCodepoints(params.get("text"))) {
+            ranges.add(new int[] {codepoint, codepoint});
+          }
+        }
+        if (params.containsKey("ranges")) {
+          ranges.addAll(parseUnicodeRanges(params.get("ranges")));
+        }
+        if (ranges.isEmpty()) {
+          throw new IllegalArgumentException("No text or ranges to subset");
+        }
+        ranges = mergeRanges(ranges);
+      }
+
+      String key = fontId + "|" + format + "|" + stripHints + "|"
+          + (ranges == null ? "all" : formatRanges(ranges));
+      byte[] result = cachedResult(key);
+      boolean hit = result != null;
+      if (!hit) {
+        result = subset(fontSlicer(fontId), ranges, stripHints, format);
+        cacheResult(key, result);
+      }
+      exchange.getResponseHeaders().set("Content-Type", contentType);
+      exchange.getResponseHeaders().set("X-Cache", hit ? "hit" : "miss");
+      send(exchange, 200, result);
+    } catch (IllegalArgumentException e) {
+      sendError(exchange, 400, e.getMessage());
+    } catch (FileNotFoundException e) {
+      sendError(exchange, 404, e.getMessage());
+    } catch (Exception e) {
+      sendError(exchange, 500, e.toString());
+    }
+  }
+
+  private byte[] subset(FontSlicer slicer, List<int[]> ranges, boolean stripHints,
+      String format) throws IOException {
+    Font font = slicer.font();
+    if (ranges != null) {
+      // only the codepoints the font maps, however large the ranges
+      List<Integer> codepoints = new ArrayList<Integer>();
+      for (int[] range : ranges) {
+        codepoints.addAll(slicer.mappedCodepoints(range[0], range[1]));
+      }
+      font = slicer.subset(codepoints);
+    }
+    if (stripHints) {
+      Subsetter hintStripper = new HintStripper(font, fontFactory);
+      hintStripper.setRemoveTables(HintStripper.HINT_TABLES);
+      font = hintStripper.subset().build();
+    }
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    if (format.equals("woff")) {
+      woffWriter.convert(font).copyTo(os);
+    } else if (format.equals("eot")) {
+      new EOTWriter(true).convert(font).copyTo(os);
+    } else {
+      fontFactory.serializeFont(font, os);
+    }
+    return os.toByteArray();
+  }
+
+  /**
+   * Gets the slicer of a font, parsing the font if it is not in the cache. A
+   * font requested while being parsed is parsed once.
+   */
+  private FontSlicer fontSlicer(final String fontId) throws IOException {
+    FutureTask<FontSlicer> task;
+    boolean load = false;
+    synchronized (fonts) {
+      task = fonts.get(fontId);
+      if (task == null) {
+        task = new FutureTask<FontSlicer>(new Callable<FontSlicer>() {
+          @Override
+          public FontSlicer call() throws IOException {
+            return new FontSlicer(loadFont(fontId), fontFactory);
+          }
+        });
+        fonts.put(fontId, task);
+        load = true;
+        Iterator<FutureTask<FontSlicer>> it = fonts.values().iterator();
+        while (fonts.size() > fontCacheSize && it.hasNext()) {
+          it.next();
+          it.remove();
+        }
+      }
+    }
+    if (load) {
+      task.run();
+    }
+    try {
+      return task.get();
+    } catch (ExecutionException e) {
+      // failures are not cached
+      synchronized (fonts) {
+        if (fonts.get(fontId) == task) {
+          fonts.remove(fontId);
+        }
+      }
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IOException("Unable to load font " + fontId, e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while loading font " + fontId, e);
+    }
+  }
+
+  /**
+   * @return the pool serving the requests, or null if the server is stopped
+   */
+  synchronized ThreadPoolExecutor workers() {
+    return workers;
+  }
+
+  /**
+   * @return the cache of compressed WOFF tables shared by the requests
+   */
+  CachingCompressionStrategy woffCompression() {
+    return woffCompression;
+  }
+
+  private Font loadFont(String fontId) throws IOException {
+    for (String extension : FONT_EXTENSIONS) {
+      File file = new File(fontDirectory, fontId + extension);
+      if (file.isFile()) {
+        FileInputStream fis = new FileInputStream(file);
+        try {
+          return fontFactory.loadFonts(fis)[0];
+        } finally {
+          fis.close();
+        }
+      }
+    }
+    throw new FileNotFoundException("Unknown font: " + fontId);
+  }
+
+  private byte[] cachedResult(String key) {
+    synchronized (results) {
+      return results.get(key);
+    }
+  }
+
+  private void cacheResult(String key, byte[] result) {
+    if (result.length > resultCacheSize) {
+      return;
+    }
+    synchronized (results) {
+      byte[] previous = results.put(key, result);
+      if (previous != null) {
+        resultBytes -= previous.length;
+      }
+      resultBytes += result.length;
+      Iterator<byte[]> it = results.values().iterator();
+      while (resultBytes > resultCacheSize && it.hasNext()) {
+        resultBytes -= it.next().length;
+        it.remove();
+      }
+    }
+  }
+
+  private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+    exchange.sendResponseHeaders(status, body.length);
+    OutputStream os = exchange.getResponseBody();
+    try {
+      os.write(body);
+    } finally {
+      os.close();
+    }
+  }
+
+  private static void sendError(HttpExchange exchange, int status, String message) {
+    try {
+      exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+      send(exchange, status, (message + "\n").getBytes("UTF-8"));
+    } catch (IOException e) {
+      // the client has gone
+      exchange.close();
+    }
+  }
+
+  private static Map<String, String> parseQuery(String query)
+      throws UnsupportedEncodingException {
+    Map<String, String> params = new HashMap<String, String>();
+    if (query == null) {
+      return params;
+    }
+    for (String param : query.split("&")) {
+      int equals = param.indexOf('=');
+      if (equals < 0) {
+        params.put(URLDecoder.decode(param, "UTF-8"), "");
+      } else {
+        params.put(URLDecoder.decode(param.substring(0, equals), "UTF-8"),
+            URLDecoder.decode(param.substring(equals + 1), "UTF-8"));
+      }
+    }
+    return params;
+  }
+
+  /**
+   * Parses CSS unicode ranges: single codepoints such as U+20AC, ranges such as
+   * U+0-7F and wildcard ranges such as U+4??, separated by commas.
+   *
+   * @param ranges the ranges
+   * @return the first and last codepoint of each range
+   * @throws IllegalArgumentException if a range is not valid
+   */
+  static List<int[]> parseUnicodeRanges(String ranges) {
+    List<int[]> result = new ArrayList<int[]>();
+    for (String range : ranges.split(",")) {
+      range = range.trim();
+      if (!range.regionMatches(true, 0, "U+", 0, 2)) {
+        throw new IllegalArgumentException("Invalid unicode range: " + range);
+      }
+      String value = range.substring(2);
+      int first;
+      int last;
+      try {
+        int dash = value.indexOf('-');
+        if (dash >= 0) {
+          first = Integer.parseInt(value.substring(0, dash), 16);
+          last = Integer.parseInt(value.substring(dash + 1), 16);
+        } else if (value.indexOf('?') >= 0) {
+          first = Integer.parseInt(value.replace('?', '0'), 16);
+          last = Integer.parseInt(value.replace('?', 'F'), 16);
+        } else {
+          first = Integer.parseInt(value, 16);
+          last = first;
+        }
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid unicode range: " + range);
+      }
+      if (first < 0 || first > last || last > MAX_CODEPOINT) {
+        throw new IllegalArgumentException("Invalid unicode range: " + range);
+      }
+      result.add(new int[] {first, last});
+    }
+    return result;
+  }
+
+  private static final Comparator<int[]> RANGE_COMPARATOR = new Comparator<int[]>() {
+    @Override
+    public int compare(int[] a, int[] b) {
+      return a[0] - b[0];
+    }
+  };
+
+  /**
+   * Sorts ranges and merges those that overlap or touch.
+   *
+   * @param ranges the first and last codepoint of each range
+   * @return the merged ranges, in increasing order
+   */
+  static List<int[]> mergeRanges(List<int[]> ranges) {
+    List<int[]> sorted = new ArrayList<int[]>(ranges);
+    Collections.sort(sorted, RANGE_COMPARATOR);
+    List<int[]> merged = new ArrayList<int[]>();
+    int[] current = null;
+    for (int[] range : sorted) {
+      if (current != null && range[0] <= current[1] + 1) {
+        current[1] = Math.max(current[1], range[1]);
+      } else {
+        current = new int[] {range[0], range[1]};
+        merged.add(current);
+      }
+    }
+    return merged;
+  }
+
+  /**
+   * Formats merged ranges as compact hexadecimal ranges.
+   */
+  static String formatRanges(List<int[]> mergedRanges) {
+    StringBuilder sb = new StringBuilder();
+    for (int[] range : mergedRanges) {
+      if (sb.length() > 0) {
+        sb.append(',');
+      }
+      sb.append(Integer.toHexString(range[0]));
+      if (range[1] != range[0]) {
+        sb.append('-').append(Integer.toHexString(range[1]));
+      }
+    }
+    return sb.toString();
+  }
+
+  public static void main(String[] args) throws IOException {
+    int port = 8080;
+    File fontDirectory = null;
+    Map<String, String> values = new HashMap<String, String>();
+    for (Iterator<String> it = Arrays.asList(args).iterator(); it.hasNext(); ) {
+      String arg = it.next();
+      if (arg.startsWith("-") && it.hasNext()) {
+        values.put(arg.substring(1), it.next());
+      } else if (!arg.startsWith("-") && fontDirectory == null) {
+        fontDirectory = new File(arg);
+      } else {
+        printUsage();
+        System.exit(1);
+      }
+    }
+    if (fontDirectory == null || !fontDirectory.isDirectory()) {
+      printUsage();
+      System.exit(1);
+    }
+    SubsetServer subsetServer = new SubsetServer(fontDirectory);
+    try {
+      for (Map.Entry<String, String> value : values.entrySet()) {
+        String option = value.getKey();
+        if (option.equals("port")) {
+          port = Integer.parseInt(value.getValue());
+        } else if (option.equals("threads")) {
+          subsetServer.setThreads(Integer.parseInt(value.getValue()));
+        } else if (option.equals("queue")) {
+          subsetServer.setQueueSize(Integer.parseInt(value.getValue()));
+        } else if (option.equals("fonts")) {
+          subsetServer.setFontCacheSize(Integer.parseInt(value.getValue()));
+        } else if (option.equals("cache")) {
+          subsetServer.setResultCacheSize(Long.parseLong(value.getValue()));
+        } else {
+          throw new IllegalArgumentException("Unknown option: -" + option);
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      printUsage();
+      System.exit(1);
+    }
+    port = subsetServer.start(port);
+    System.out.println("Serving " + fontDirectory + " on http://localhost:" + port + "/");
+  }
+
+  private static void printUsage() {
+    System.out.println("SubsetServer [-port n] [-threads n] [-queue n] [-fonts n] [-cache bytes]"
+        + " fontdir");
+    System.out.println("Serves subsets of the fonts of a directory on localhost");
+    System.out.println("\t-port\t Port to listen on (default 8080, 0 for any)");
+    System.out.println("\t-threads\t Requests served at once (default the number of processors)");
+    System.out.println("\t-queue\t Requests waiting before requests are refused (default "
+        + DEFAULT_QUEUE_SIZE + ")");
+    System.out.println("\t-fonts\t Parsed fonts kept (default " + DEFAULT_FONT_CACHE_SIZE + ")");
+    System.out.println("\t-cache\t Bytes of responses kept (default " + DEFAULT_RESULT_CACHE_SIZE
+        + ")");
+  }
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.sfnttool;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the subsets of a manifest file on a pool of threads. Each line of the
+ * manifest holds the arguments of one {@link SfntTool} run, the options then
+ * the font file and the output file, with double quotes around arguments
+ * holding spaces. Blank lines and lines starting with # are skipped.
+ *
+ * Each font file is loaded once and shared by all the entries using it, and
+ * dropped as soon as the last of these entries has finished. The time each
+ * entry takes is reported in manifest order, as is any failure, which does not
+ * stop the other entries.
+ */
+final class BatchRunner {
+
+  private final int threads;
+  private final PrintStream report;
+  private final FontFactory fontFactory = FontFactory.getInstance();
+  private final ConcurrentMap<File, FutureTask<Font>> fonts =
+      new ConcurrentHashMap<File, FutureTask<Font>>();
+  private final ConcurrentMap<File, AtomicInteger> pendingEntries =
+      new ConcurrentHashMap<File, AtomicInteger>();
+
+  BatchRunner(int threads, PrintStream report) {
+    this.threads = threads;
+    this.report = report;
+  }
+
+  /**
+   * Runs the entries of the manifest.
+   *
+   * @param manifestFile the manifest file
+   * @return whether all the entries succeeded
+   * @throws IOException if the manifest cannot be read
+   */
+  boolean run(File manifestFile) throws IOException {
+    List<String> lines = new ArrayList<String>();
+    BufferedReader reader = new BufferedReader(
+        new InputStreamReader(new FileInputStream(manifestFile), "UTF-8"));
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+      }
+    } finally {
+      reader.close();
+    }
+
+    long start = System.nanoTime();
+    List<SfntTool> tools = new ArrayList<SfntTool>();
+    List<File> fontKeys = new ArrayList<File>();
+    List<Integer> lineNumbers = new ArrayList<Integer>();
+    int invalid = 0;
+    int failures = 0;
+    for (int i = 0; i < lines.size(); i++) {
+      String line = lines.get(i).trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      SfntTool tool;
+      File fontKey;
+      try {
+        tool = SfntTool.parseArguments(tokenize(line), false);
+        if (tool.fontFile() == null) {
+          throw new IllegalArgumentException("No font file");
+        }
+        fontKey = tool.fontFile().getCanonicalFile();
+      } catch (IllegalArgumentException e) {
+        report.println("line " + (i + 1) + "\tFAILED\t"
+            + (e.getMessage() == null ? "Invalid arguments" : e.getMessage()));
+        invalid++;
+        failures++;
+        continue;
+      } catch (IOException e) {
+        report.println("line " + (i + 1) + "\tFAILED\t" + e);
+        invalid++;
+        failures++;
+        continue;
+      }
+      tools.add(tool);
+      fontKeys.add(fontKey);
+      lineNumbers.add(i + 1);
+    }
+    for (File fontKey : fontKeys) {
+      AtomicInteger count = pendingEntries.get(fontKey);
+      if (count == null) {
+        pendingEntries.put(fontKey, new AtomicInteger(1));
+      } else {
+        count.incrementAndGet();
+      }
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<Long>> results = new ArrayList<Future<Long>>();
+    try {
+      for (int i = 0; i < tools.size(); i++) {
+        final SfntTool tool = tools.get(i);
+        final File fontKey = fontKeys.get(i);
+        results.add(executor.submit(new Callable<Long>() {
+          @Override
+          public Long call() throws IOException {
+            try {
+              Font font = loadFont(fontKey, tool.fontFile());
+              long entryStart = System.nanoTime();
+              tool.writeSubset(fontFactory, font);
+              return System.nanoTime() - entryStart;
+            } finally {
+              releaseFont(fontKey);
+            }
+          }
+        }));
+      }
+
+      for (int i = 0; i < results.size(); i++) {
+        String entry = "line " + lineNumbers.get(i);
+        try {
+          long nanos = results.get(i).get();
+          report.println(entry + "\t" + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms");
+        } catch (ExecutionException e) {
+          report.println(entry + "\tFAILED\t" + e.getCause());
+          failures++;
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while running the manifest", e);
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    report.println((results.size() + invalid) + " entries, " + failures + " failed, "
+        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+    return failures == 0;
+  }
+
+  /**
+   * Loads a font file, once however many entries use it.
+   *
+   * @param key the canonical font file, which the loaded font is shared under
+   * @param fontFile the font file
+   */
+  private Font loadFont(File key, final File fontFile) throws IOException {
+    FutureTask<Font> task = fonts.get(key);
+    if (task == null) {
+      FutureTask<Font> newTask = new FutureTask<Font>(new Callable<Font>() {
+        @Override
+        public Font call() throws IOException {
+          return fontFactory.loadFonts(SfntTool.readFile(fontFile))[0];
+        }
+      });
+      task = fonts.putIfAbsent(key, newTask);
+      if (task == null) {
+        task = newTask;
+        task.run();
+      }
+    }
+    try {
+      return task.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Unable to load " + fontFile, e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while loading " + fontFile, e);
+    }
+  }
+
+  /**
+   * Notes that an entry using a font file has finished, and drops the font
+   * once no entry still to run uses it.
+   */
+  private void releaseFont(File key) {
+    if (pendingEntries.get(key).decrementAndGet() == 0) {
+      pendingEntries.remove(key);
+      fonts.remove(key);
+    }
+  }
+
+  /**
+   * @return the number of fonts currently loaded and shared between entries
+   */
+  int loadedFontCount() {
+    return fonts.size();
+  }
+
+  /**
+   * Splits a manifest line into arguments at whitespace outside double quotes.
+   * Within quotes a backslash escapes the next character.
+   */
+  static List<String> tokenize(String line) {
+    List<String> args = new ArrayList<String>();
+    StringBuilder arg = null;
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (quoted) {
+        if (c == '"') {
+          quoted = false;
+        } else if (c == '\\' && i + 1 < line.length()) {
+          arg.append(line.charAt(++i));
+        } else {
+          arg.append(c);
+        }
+      } else if (Character.isWhitespace(c)) {
+        if (arg != null) {
+          args.add(arg.toString());
+          arg = null;
+        }
+      } else {
+        if (arg == null) {
+          arg = new StringBuilder();
+        }
+        if (c == '"') {
+          quoted = true;
+        } else {
+          arg.append(c);
+        }
+      }
+    }
+    if (quoted) {
+      throw new IllegalArgumentException("Unterminated quote");
+    }
+    if (arg != null) {
+      args.add(arg.toString());
+    }
+    return args;
+  }
+}
@@ -19,6 +19,8 @@ package com.google.typography.font.tools.sfnttool;
 import com.google.typography.font.sfntly.Font;
 import com.google.typography.font.sfntly.Tag;
 import com.google.typography.font.sfntly.data.SfStringUtils;
+import com.google.typography.font.sfntly.table.cff.CffTable;
+import com.google.typography.font.sfntly.table.color.ColorTable;
 import com.google.typography.font.sfntly.table.core.CMap;
 import com.google.typography.font.sfntly.table.core.CMap.CMapFormat;
 import com.google.typography.font.sfntly.table.core.CMapTable;
@@ -27,6 +29,7 @@ import com.google.typography.font.sfntly.table.truetype.Glyph;
 import com.google.typography.font.sfntly.table.truetype.Glyph.GlyphType;
 import com.google.typography.font.sfntly.table.truetype.GlyphTable;
 import com.google.typography.font.sfntly.table.truetype.LocaTable;
+import com.google.typography.font.tools.subsetter.CffAccentComponents;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -46,25 +49,40 @@ public class GlyphCoverage {
   public static List<Integer> getGlyphCoverage(Font font, String string) {
     CMapTable cmapTable = font.getTable(Tag.cmap);
     CMap cmap = getBestCMap(cmapTable);
+    CffTable cff = font.getTable(Tag.CFF);
+    CffAccentComponents accents = cff == null ? null : new CffAccentComponents(cff);
     Set<Integer> coverage = new HashSet<Integer>();
     coverage.add(0);  // Always include notdef
     for (int codepoint : SfStringUtils.getAllCodepoints(string)) {
       int glyphId = cmap.glyphId(codepoint);
-      touchGlyph(font, coverage, glyphId);
+      touchGlyph(font, accents, coverage, glyphId);
     }
     List<Integer> sortedCoverage = new ArrayList<Integer>(coverage);
     Collections.sort(sortedCoverage);
     return sortedCoverage;
   }
   
-  private static void touchGlyph(Font font, Set<Integer> coverage, int glyphId) {
+  private static void touchGlyph(
+      Font font, CffAccentComponents accents, Set<Integer> coverage, int glyphId) {
     if (!coverage.contains(glyphId)) {
       coverage.add(glyphId);
       Glyph glyph = getGlyph(font, glyphId);
       if (glyph != null && glyph.glyphType() == GlyphType.Composite) {
         CompositeGlyph composite = (CompositeGlyph) glyph;
         for (int i = 0; i < composite.numGlyphs(); i++) {
-          touchGlyph(font, coverage, composite.glyphIndex(i));
+          touchGlyph(font, accents, coverage, composite.glyphIndex(i));
+        }
+      }
+      // CFF accented characters are drawn from a base and an accent glyph
+      if (accents != null) {
+        for (int component : accents.components(glyphId)) {
+          touchGlyph(font, accents, coverage, component);
+        }
+      }
+      ColorTable colr = font.getTable(Tag.COLR);
+      if (colr != null) {
+        for (int layerGlyphId : colr.layerGlyphs(glyphId)) {
+          touchGlyph(font, accents, coverage, layerGlyphId);
         }
       }
     }
@@ -87,6 +105,10 @@ public class GlyphCoverage {
   private static Glyph getGlyph(Font font, int glyphId) {
     LocaTable locaTable = font.getTable(Tag.loca);
     GlyphTable glyfTable = font.getTable(Tag.glyf);
+    if (locaTable == null || glyfTable == null) {
+      // CFF outlines, whose accented characters are followed in touchGlyph
+      return null;
+    }
     int offset = locaTable.glyphOffset(glyphId);
     int length = locaTable.glyphLength(glyphId);
     return glyfTable.glyph(offset, length);
@@ -22,11 +22,18 @@ import com.google.typography.font.sfntly.Tag;
 import com.google.typography.font.sfntly.data.WritableFontData;
 import com.google.typography.font.sfntly.table.core.CMapTable;
 import com.google.typography.font.tools.conversion.eot.EOTWriter;
+import com.google.typography.font.tools.conversion.woff.CompressionStrategy;
+import com.google.typography.font.tools.conversion.woff.DictionaryCompressionStrategy;
+import com.google.typography.font.tools.conversion.woff.ExhaustiveDeflateStrategy;
+import com.google.typography.font.tools.conversion.woff.PooledDeflaterStrategy;
 import com.google.typography.font.tools.conversion.woff.WoffWriter;
+import com.google.typography.font.tools.subsetter.CffTableSubsetter;
 import com.google.typography.font.tools.subsetter.HintStripper;
 import com.google.typography.font.tools.subsetter.RenumberingSubsetter;
+import com.google.typography.font.tools.subsetter.RetainGlyphIdsSubsetter;
 import com.google.typography.font.tools.subsetter.Subsetter;
 
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -46,43 +53,125 @@ import java.util.regex.Pattern;
 public class SfntTool {
 
   private boolean strip;
+  private boolean retainGlyphIds;
+  private CffTableSubsetter.SubroutineMode cffSubroutineMode =
+      CffTableSubsetter.SubroutineMode.KEEP;
   private Pattern subsetRegex;
   private String subsetString;
   private boolean woff;
+  // null for the default compression of WoffWriter
+  private CompressionStrategy woffCompression;
   private boolean eot;
   private boolean mtx;
   private int iterations = 1;
   private File fontFile;
   private File outputFile;
+  private boolean help;
+  private File manifestFile;
+  private int threads = Runtime.getRuntime().availableProcessors();
 
   public static void main(String[] args) throws IOException {
+    SfntTool tool = null;
+    try {
+      tool = parseArguments(Arrays.asList(args), true);
+    } catch (IllegalArgumentException e) {
+      if (e.getMessage() != null) {
+        System.err.println(e.getMessage());
+      }
+      printUsage();
+      System.exit(1);
+    }
+    if (tool.help) {
+      printUsage();
+      System.exit(0);
+    }
+
+    if (tool.manifestFile != null) {
+      BatchRunner runner = new BatchRunner(tool.threads, System.out);
+      System.exit(runner.run(tool.manifestFile) ? 0 : 1);
+    }
+    tool.subsetFontFile();
+  }
+
+  /**
+   * Parses the options of a single run, as given on the command line or on a
+   * line of a batch manifest.
+   *
+   * @param args the arguments
+   * @param allowBatch whether the batch options are allowed
+   * @return the tool for the options
+   * @throws IllegalArgumentException if the options are not valid
+   * @throws IOException if a file named by an option cannot be read
+   */
+  static SfntTool parseArguments(List<String> args, boolean allowBatch) throws IOException {
     SfntTool tool = new SfntTool();
+    boolean woffLevel = false;
+    boolean woffDictionary = false;
 
-    for (Iterator<String> it = Arrays.asList(args).iterator(); it.hasNext(); ) {
+    for (Iterator<String> it = args.iterator(); it.hasNext(); ) {
       String arg = it.next();
 
       if (arg.startsWith("-")) {
         String option = arg.substring(1);
         if (option.equals("help") || option.equals("?")) {
-          printUsage();
-          System.exit(0);
+          tool.help = true;
+          return tool;
         } else if (option.equals("b") || option.equals("bench")) {
           tool.iterations = 10000;
         } else if (option.equals("h") || option.equals("hints")) {
           tool.strip = true;
+        } else if (option.equals("k") || option.equals("keepgids")) {
+          tool.retainGlyphIds = true;
+        } else if ((option.equals("c") || option.equals("cffsubrs")) && it.hasNext()) {
+          String mode = it.next();
+          try {
+            tool.cffSubroutineMode = CffTableSubsetter.SubroutineMode.valueOf(mode.toUpperCase());
+          } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid CFF subroutine mode: " + mode);
+          }
         } else if ((option.equals("r") || option.equals("regex")) && it.hasNext()) {
           tool.subsetRegex = Pattern.compile(it.next());
         } else if ((option.equals("s") || option.equals("string")) && it.hasNext()) {
           tool.subsetString = it.next();
         } else if (option.equals("w") || option.equals("woff")) {
           tool.woff = true;
+        } else if ((option.equals("z") || option.equals("compression")) && it.hasNext()) {
+          String compression = it.next();
+          try {
+            tool.woffCompression = compression.equals("exhaustive")
+                ? new ExhaustiveDeflateStrategy()
+                : new PooledDeflaterStrategy(Integer.parseInt(compression));
+          } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid WOFF compression: " + compression);
+          }
+          woffLevel = true;
+          // the compression only applies to WOFF output
+          tool.woff = true;
+        } else if ((option.equals("d") || option.equals("dictionary")) && it.hasNext()) {
+          tool.woffCompression = new DictionaryCompressionStrategy(readFile(new File(it.next())));
+          woffDictionary = true;
+          // the dictionary only applies to WOFF output
+          tool.woff = true;
         } else if (option.equals("e") || option.equals("eot")) {
           tool.eot = true;
         } else if (option.equals("x") || option.equals("mtx")) {
           tool.mtx = true;
+        } else if (allowBatch && (option.equals("m") || option.equals("manifest"))
+            && it.hasNext()) {
+          tool.manifestFile = new File(it.next());
+        } else if (allowBatch && (option.equals("j") || option.equals("threads"))
+            && it.hasNext()) {
+          String threads = it.next();
+          try {
+            tool.threads = Integer.parseInt(threads);
+          } catch (NumberFormatException e) {
+            tool.threads = 0;
+          }
+          if (tool.threads < 1) {
+            throw new IllegalArgumentException("Invalid number of threads: " + threads);
+          }
         } else {
-          printUsage();
-          System.exit(1);
+          throw new IllegalArgumentException("Unknown option: " + arg);
         }
       } else {
         if (tool.fontFile == null) {
@@ -90,34 +179,49 @@ public class SfntTool {
         } else if (tool.outputFile == null) {
           tool.outputFile = new File(arg);
         } else {
-          printUsage();
-          System.exit(1);
+          throw new IllegalArgumentException("Unexpected argument: " + arg);
         }
       }
     }
 
+    if (tool.manifestFile != null) {
+      if (tool.fontFile != null) {
+        throw new IllegalArgumentException("manifest and font file are mutually exclusive");
+      }
+      return tool;
+    }
     if (tool.woff && tool.eot) {
-      System.err.println("WOFF and EOT options are mutually exclusive");
-      System.exit(1);
+      throw new IllegalArgumentException("WOFF and EOT options are mutually exclusive");
+    }
+    if (woffLevel && woffDictionary) {
+      throw new IllegalArgumentException(
+          "compression and dictionary options are mutually exclusive");
     }
     if (tool.subsetRegex != null && tool.subsetString != null) {
-      System.err.println("regex and string options are mutually exclusive");
-      System.exit(1);
+      throw new IllegalArgumentException("regex and string options are mutually exclusive");
     }
     if (tool.fontFile == null || tool.outputFile == null) {
-      printUsage();
-      System.exit(1);
+      throw new IllegalArgumentException();
     }
 
     if (tool.subsetRegex != null) {
       tool.subsetString = charsFromRegex(tool.subsetRegex);
       if (tool.subsetString.isEmpty()) {
-        System.err.println("subset regex doesn't match any codepoint");
-        System.exit(1);
+        throw new IllegalArgumentException("subset regex doesn't match any codepoint");
       }
     }
+    return tool;
+  }
 
-    tool.subsetFontFile();
+  static byte[] readFile(File file) throws IOException {
+    byte[] bytes = new byte[(int) file.length()];
+    DataInputStream dis = new DataInputStream(new FileInputStream(file));
+    try {
+      dis.readFully(bytes);
+    } finally {
+      dis.close();
+    }
+    return bytes;
   }
 
   private static String charsFromRegex(Pattern pattern) {
@@ -133,78 +237,93 @@ public class SfntTool {
 
   private static void printUsage() {
     System.out.println("Subset [-?|-h|-help] [-b] [-s string] fontfile outfile");
+    System.out.println("       -m manifest [-j threads]");
     System.out.println("Prototype font subsetter");
     System.out.println("\t-?,-help\tprint this help information");
     System.out.println("\t-s,-string\t String to subset");
     System.out.println("\t-r,-regex\t Regular expression for code points to subset, e.g. [A-Z]");
     System.out.println("\t-b,-bench\t Benchmark (run 10000 iterations)");
     System.out.println("\t-h,-hints\t Strip hints");
+    System.out.println("\t-k,-keepgids\t Keep glyph ids and copy layout tables unchanged");
+    System.out.println("\t-c,-cffsubrs\t CFF subroutines: keep (default), flatten or rebuild;"
+        + " also with -k");
     System.out.println("\t-w,-woff\t Output WOFF format");
+    System.out.println("\t-z,-compression\t WOFF compression: level 0-9 or exhaustive (slow);"
+        + " implies -w");
+    System.out.println("\t-d,-dictionary\t WOFF compression with a preset dictionary file,"
+        + " readable only by clients holding it; implies -w and writes the 'wOFD' signature");
     System.out.println("\t-e,-eot\t Output EOT format");
     System.out.println("\t-x,-mtx\t Enable Microtype Express compression for EOT format");
+    System.out.println("\t-m,-manifest\t Run each line of the manifest file as the options,"
+        + " font file and output file of a subset; # starts a comment line");
+    System.out.println("\t-j,-threads\t Number of subsets run at once with -m"
+        + " (default the number of processors)");
   }
 
   public void subsetFontFile() throws IOException {
     FontFactory fontFactory = FontFactory.getInstance();
-    FileInputStream fis = new FileInputStream(fontFile);
-    try {
-      byte[] fontBytes = new byte[(int)fontFile.length()];
-      fis.read(fontBytes);
-      Font[] fontArray = fontFactory.loadFonts(fontBytes);
-      Font font = fontArray[0];
-      List<CMapTable.CMapId> cmapIds = new ArrayList<CMapTable.CMapId>();
-      cmapIds.add(CMapTable.CMapId.WINDOWS_BMP);
-      for (int i = 0; i < iterations; i++) {
-        Font newFont = font;
-        if (subsetString != null) {
-          Subsetter subsetter = new RenumberingSubsetter(newFont, fontFactory);
-          subsetter.setCMaps(cmapIds, 1);
-          List<Integer> glyphs = GlyphCoverage.getGlyphCoverage(font, subsetString);
-          subsetter.setGlyphs(glyphs);
-          Set<Integer> removeTables = new HashSet<Integer>();
-          // Most of the following are valid tables, but we don't renumber them yet, so strip
-          removeTables.add(Tag.GDEF);
-          removeTables.add(Tag.GPOS);
-          removeTables.add(Tag.GSUB);
-          removeTables.add(Tag.kern);
-          removeTables.add(Tag.hdmx);
-          removeTables.add(Tag.vmtx);
-          removeTables.add(Tag.VDMX);
-          removeTables.add(Tag.LTSH);
-          removeTables.add(Tag.DSIG);
-          // AAT tables, not yet defined in sfntly Tag class
-          removeTables.add(Tag.intValue(new byte[]{'m', 'o', 'r', 't'}));
-          removeTables.add(Tag.intValue(new byte[]{'m', 'o', 'r', 'x'}));
-          subsetter.setRemoveTables(removeTables);
-          newFont = subsetter.subset().build();
-        }
-        if (strip) {
-          Subsetter hintStripper = new HintStripper(newFont, fontFactory);
-          Set<Integer> removeTables = new HashSet<Integer>();
-          removeTables.add(Tag.fpgm);
-          removeTables.add(Tag.prep);
-          removeTables.add(Tag.cvt);
-          removeTables.add(Tag.hdmx);
-          removeTables.add(Tag.VDMX);
-          removeTables.add(Tag.LTSH);
+    Font font = fontFactory.loadFonts(readFile(fontFile))[0];
+    writeSubset(fontFactory, font);
+  }
+
+  File fontFile() {
+    return this.fontFile;
+  }
+
+  File outputFile() {
+    return this.outputFile;
+  }
+
+  /**
+   * Subsets and converts a font as the options say, writing the output file.
+   *
+   * @param fontFactory the factory the font was loaded with
+   * @param font the font of the font file
+   */
+  void writeSubset(FontFactory fontFactory, Font font) throws IOException {
+    List<CMapTable.CMapId> cmapIds = new ArrayList<CMapTable.CMapId>();
+    cmapIds.add(CMapTable.CMapId.WINDOWS_BMP);
+    for (int i = 0; i < iterations; i++) {
+      Font newFont = font;
+      if (subsetString != null) {
+        List<Integer> glyphs = GlyphCoverage.getGlyphCoverage(font, subsetString);
+        Subsetter subsetter;
+        Set<Integer> removeTables = new HashSet<Integer>();
+        if (retainGlyphIds) {
+          subsetter = new RetainGlyphIdsSubsetter(newFont, fontFactory);
+          // glyph ids are unchanged, so only the signature becomes invalid
           removeTables.add(Tag.DSIG);
-          hintStripper.setRemoveTables(removeTables);
-          newFont = hintStripper.subset().build();
+        } else {
+          subsetter = new RenumberingSubsetter(newFont, fontFactory);
+          removeTables.addAll(RenumberingSubsetter.UNRENUMBERED_TABLES);
         }
+        subsetter.setCffSubroutineMode(cffSubroutineMode);
+        subsetter.setCMaps(cmapIds, 1);
+        subsetter.setGlyphs(glyphs);
+        subsetter.setRemoveTables(removeTables);
+        newFont = subsetter.subset().build();
+      }
+      if (strip) {
+        Subsetter hintStripper = new HintStripper(newFont, fontFactory);
+        hintStripper.setRemoveTables(HintStripper.HINT_TABLES);
+        newFont = hintStripper.subset().build();
+      }
 
-        FileOutputStream fos = new FileOutputStream(outputFile);
+      FileOutputStream fos = new FileOutputStream(outputFile);
+      try {
         if (woff) {
-          WritableFontData woffData = new WoffWriter().convert(newFont);
-          woffData.copyTo(fos);
+          WoffWriter woffWriter =
+              woffCompression == null ? new WoffWriter() : new WoffWriter(woffCompression);
+          woffWriter.convert(newFont).copyTo(fos);
         } else if (eot) {
           WritableFontData eotData = new EOTWriter(mtx).convert(newFont);
           eotData.copyTo(fos);
         } else {
           fontFactory.serializeFont(newFont, fos);
         }
+      } finally {
+        fos.close();
       }
-    } finally {
-      fis.close();
     }
   }
 }
@@ -0,0 +1,437 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.bitmap.BitmapSizeTable;
+import com.google.typography.font.sfntly.table.bitmap.EblcTable;
+import com.google.typography.font.sfntly.table.bitmap.IndexSubTable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Subsetter for the embedded bitmap tables EBLC, EBDT and EBSC, and for the
+ * color bitmap tables CBLC and CBDT that share their layout.
+ *
+ * Each strike keeps the bitmaps of the retained glyphs under their new glyph
+ * ids. The glyphs are grouped into runs sharing an image format, and the
+ * index subtable of each run is written in whichever of the formats 1 to 5
+ * takes the least space. Composite bitmaps have their components renumbered,
+ * and are dropped if a component isn't retained. Strikes left without glyphs
+ * are dropped, along with the EBSC scales that refer to them.
+ */
+public class BitmapTableSubsetter extends TableSubsetterImpl {
+
+  private interface Offset {
+    // location table header
+    int numSizes = 4;
+    int headerSize = 8;
+
+    // bitmap size table
+    int indexSubTableArrayOffset = 0;
+    int indexTablesSize = 4;
+    int numberOfIndexSubTables = 8;
+    int startGlyphIndex = 40;
+    int endGlyphIndex = 42;
+    int ppemX = 44;
+    int ppemY = 45;
+    int bitmapSizeTableSize = 48;
+
+    // index subtables
+    // the image size and big metrics of formats 2 and 5
+    int constantMetrics = 8;
+    int constantMetricsLength = 12;
+
+    // composite bitmaps, image formats 8 and 9
+    int format8NumComponents = 6;
+    int format9NumComponents = 8;
+    int componentLength = 4;
+
+    // bitmap scale table
+    int substitutePpemX = 26;
+    int substitutePpemY = 27;
+    int bitmapScaleSize = 28;
+  }
+
+  private static final int SHORT_OFFSET_LIMIT = 0xffff;
+
+  private final int locationTag;
+  private final int dataTag;
+  // null for the color bitmap tables, which have no scale table
+  private final Integer scaleTag;
+
+  /**
+   * Creates a subsetter for the EBLC, EBDT and EBSC tables.
+   */
+  protected BitmapTableSubsetter() {
+    super(Tag.EBLC, Tag.EBDT, Tag.EBSC);
+    this.locationTag = Tag.EBLC;
+    this.dataTag = Tag.EBDT;
+    this.scaleTag = Tag.EBSC;
+  }
+
+  /**
+   * Creates a subsetter for a pair of location and data tables sharing the
+   * layout of EBLC and EBDT, such as CBLC and CBDT.
+   *
+   * @param locationTag the tag of the location table
+   * @param dataTag the tag of the data table
+   */
+  protected BitmapTableSubsetter(int locationTag, int dataTag) {
+    super(locationTag, dataTag);
+    this.locationTag = locationTag;
+    this.dataTag = dataTag;
+    this.scaleTag = null;
+  }
+
+  /**
+   * A retained bitmap.
+   */
+  private static final class Glyph {
+    final int glyphId;
+    final int imageFormat;
+    final ReadableFontData data;
+    // the image size and metrics shared by the glyphs of the source index
+    // subtable, for index formats 2 and 5
+    final ReadableFontData constantMetrics;
+    // the renumbered components of a composite bitmap
+    final int[] components;
+
+    Glyph(int glyphId, int imageFormat, ReadableFontData data, ReadableFontData constantMetrics,
+        int[] components) {
+      this.glyphId = glyphId;
+      this.imageFormat = imageFormat;
+      this.data = data;
+      this.constantMetrics = constantMetrics;
+      this.components = components;
+    }
+  }
+
+  @Override
+  public boolean subset(Subsetter subsetter, Font font, Font.Builder fontBuilder) {
+    EblcTable eblc = font.getTable(locationTag);
+    Table ebdt = font.getTable(dataTag);
+    if (subsetter.glyphMappingTable() == null || eblc == null || ebdt == null) {
+      return false;
+    }
+    int[] oldGlyphIds = subsetter.oldGlyphIds(font);
+    Map<Integer, Integer> inverseMap = subsetter.getInverseMapping();
+    ReadableFontData eblcData = eblc.readFontData();
+    ReadableFontData ebdtData = ebdt.readFontData();
+
+    List<Integer> strikes = new ArrayList<Integer>();
+    List<List<List<Glyph>>> strikeRuns = new ArrayList<List<List<Glyph>>>();
+    for (int i = 0; i < eblc.numSizes(); i++) {
+      List<Glyph> glyphs =
+          retainedGlyphs(eblc.bitmapSizeTable(i), ebdtData, oldGlyphIds, inverseMap);
+      if (!glyphs.isEmpty()) {
+        strikes.add(i);
+        strikeRuns.add(runs(glyphs));
+      }
+    }
+    if (strikes.isEmpty()) {
+      // no bitmaps left; the tables are dropped
+      return true;
+    }
+
+    OffsetDataWriter loc = new OffsetDataWriter();
+    OffsetDataWriter dat = new OffsetDataWriter();
+    loc.writeULong(eblcData.readULong(0));
+    loc.writeULong(strikes.size());
+    dat.writeULong(ebdtData.readULong(0));
+    for (int strike : strikes) {
+      loc.copy(eblcData, Offset.headerSize + strike * Offset.bitmapSizeTableSize,
+          Offset.bitmapSizeTableSize);
+    }
+    for (int i = 0; i < strikes.size(); i++) {
+      writeStrike(loc, dat, Offset.headerSize + i * Offset.bitmapSizeTableSize,
+          strikeRuns.get(i));
+    }
+    fontBuilder.newTableBuilder(locationTag, loc.data());
+    fontBuilder.newTableBuilder(dataTag, dat.data());
+
+    Table ebsc = scaleTag == null ? null : font.getTable(scaleTag);
+    if (ebsc != null) {
+      subsetScales(fontBuilder, ebsc.readFontData(), eblcData, strikes);
+    }
+    return true;
+  }
+
+  /**
+   * Collects the bitmaps of the strike for the retained glyphs, ordered by new
+   * glyph id.
+   */
+  private static List<Glyph> retainedGlyphs(BitmapSizeTable strike, ReadableFontData ebdtData,
+      int[] oldGlyphIds, Map<Integer, Integer> inverseMap) {
+    List<Glyph> glyphs = new ArrayList<Glyph>();
+    for (int glyphId = 0; glyphId < oldGlyphIds.length; glyphId++) {
+      int oldGlyphId = oldGlyphIds[glyphId];
+      if (oldGlyphId < 0) {
+        continue;
+      }
+      int offset = strike.glyphOffset(oldGlyphId);
+      int length = strike.glyphLength(oldGlyphId);
+      if (offset < 0 || length <= 0) {
+        continue;
+      }
+      IndexSubTable subTable = strike.glyphIndexSubTable(oldGlyphId);
+      int imageFormat = subTable.imageFormat();
+      ReadableFontData data = ebdtData.slice(offset, length);
+      ReadableFontData constantMetrics = null;
+      if (subTable.indexFormat() == IndexSubTable.Format.FORMAT_2
+          || subTable.indexFormat() == IndexSubTable.Format.FORMAT_5) {
+        constantMetrics = subTable.readFontData().slice(
+            Offset.constantMetrics, Offset.constantMetricsLength);
+      }
+      int[] components = null;
+      if (imageFormat == 8 || imageFormat == 9) {
+        components = components(data, imageFormat, inverseMap);
+        if (components == null) {
+          continue;
+        }
+      }
+      glyphs.add(new Glyph(glyphId, imageFormat, data, constantMetrics, components));
+    }
+    return glyphs;
+  }
+
+  /**
+   * Renumbers the components of a composite bitmap.
+   *
+   * @return the new glyph ids of the components, or null if a component isn't
+   *         retained
+   */
+  private static int[] components(
+      ReadableFontData data, int imageFormat, Map<Integer, Integer> inverseMap) {
+    int numComponentsOffset =
+        imageFormat == 8 ? Offset.format8NumComponents : Offset.format9NumComponents;
+    int[] components = new int[data.readUShort(numComponentsOffset)];
+    for (int i = 0; i < components.length; i++) {
+      Integer glyphId =
+          inverseMap.get(data.readUShort(numComponentsOffset + 2 + i * Offset.componentLength));
+      if (glyphId == null) {
+        return null;
+      }
+      components[i] = glyphId;
+    }
+    return components;
+  }
+
+  /**
+   * Splits the glyphs into runs that can share an index subtable: the same
+   * image format and, for glyphs whose metrics are in the index, the same
+   * metrics.
+   */
+  private static List<List<Glyph>> runs(List<Glyph> glyphs) {
+    List<List<Glyph>> runs = new ArrayList<List<Glyph>>();
+    List<Glyph> run = null;
+    Glyph previous = null;
+    for (Glyph glyph : glyphs) {
+      if (previous == null || previous.imageFormat != glyph.imageFormat
+          || !sameMetrics(previous.constantMetrics, glyph.constantMetrics)) {
+        run = new ArrayList<Glyph>();
+        runs.add(run);
+      }
+      run.add(glyph);
+      previous = glyph;
+    }
+    return runs;
+  }
+
+  private static boolean sameMetrics(ReadableFontData a, ReadableFontData b) {
+    if (a == null || b == null) {
+      return a == b;
+    }
+    for (int i = 0; i < Offset.constantMetricsLength; i++) {
+      if (a.readUByte(i) != b.readUByte(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Writes the index subtables of a strike and the bitmaps they refer to, and
+   * patches the fields of the strike's bitmap size table that depend on them.
+   */
+  private static void writeStrike(OffsetDataWriter loc, OffsetDataWriter dat, int sizeTable,
+      List<List<Glyph>> runs) {
+    int arrayStart = loc.position();
+    int[] entryFields = new int[runs.size()];
+    for (int i = 0; i < runs.size(); i++) {
+      List<Glyph> run = runs.get(i);
+      loc.writeUShort(run.get(0).glyphId);
+      loc.writeUShort(run.get(run.size() - 1).glyphId);
+      entryFields[i] = loc.reserveOffset32();
+    }
+    for (int i = 0; i < runs.size(); i++) {
+      loc.patchOffset32(entryFields[i], arrayStart, loc.position());
+      writeIndexSubTable(loc, dat, runs.get(i));
+      loc.align(4);
+    }
+    List<Glyph> firstRun = runs.get(0);
+    List<Glyph> lastRun = runs.get(runs.size() - 1);
+    loc.patchULong(sizeTable + Offset.indexSubTableArrayOffset, arrayStart);
+    loc.patchULong(sizeTable + Offset.indexTablesSize, loc.position() - arrayStart);
+    loc.patchULong(sizeTable + Offset.numberOfIndexSubTables, runs.size());
+    loc.patchUShort(sizeTable + Offset.startGlyphIndex, firstRun.get(0).glyphId);
+    loc.patchUShort(sizeTable + Offset.endGlyphIndex, lastRun.get(lastRun.size() - 1).glyphId);
+  }
+
+  /**
+   * Chooses the most compact index format for a run of glyphs.
+   */
+  static int indexFormat(int numGlyphs, int glyphRange, int dataLength, boolean constantMetrics) {
+    if (constantMetrics) {
+      // the metrics live in the index, so only formats 2 and 5 will do
+      return numGlyphs == glyphRange ? IndexSubTable.Format.FORMAT_2
+          : IndexSubTable.Format.FORMAT_5;
+    }
+    if (dataLength > SHORT_OFFSET_LIMIT) {
+      return IndexSubTable.Format.FORMAT_1;
+    }
+    int format3Size = align4(2 * (glyphRange + 1));
+    int format4Size = 4 + 4 * (numGlyphs + 1);
+    return format4Size < format3Size ? IndexSubTable.Format.FORMAT_4
+        : IndexSubTable.Format.FORMAT_3;
+  }
+
+  private static int align4(int size) {
+    return (size + 3) & ~3;
+  }
+
+  private static void writeIndexSubTable(
+      OffsetDataWriter loc, OffsetDataWriter dat, List<Glyph> run) {
+    Glyph first = run.get(0);
+    int firstGlyphId = first.glyphId;
+    int glyphRange = run.get(run.size() - 1).glyphId - firstGlyphId + 1;
+    int dataLength = 0;
+    for (Glyph glyph : run) {
+      dataLength += glyph.data.length();
+    }
+    int format =
+        indexFormat(run.size(), glyphRange, dataLength, first.constantMetrics != null);
+
+    int imageDataOffset = dat.position();
+    int[] offsets = new int[run.size() + 1];
+    for (int i = 0; i < run.size(); i++) {
+      offsets[i] = dat.position() - imageDataOffset;
+      writeGlyph(dat, run.get(i));
+    }
+    offsets[run.size()] = dat.position() - imageDataOffset;
+
+    loc.writeUShort(format);
+    loc.writeUShort(first.imageFormat);
+    loc.writeULong(imageDataOffset);
+    switch (format) {
+      case IndexSubTable.Format.FORMAT_1:
+      case IndexSubTable.Format.FORMAT_3:
+        // glyphs missing from the range get empty entries
+        int index = 0;
+        for (int glyphId = firstGlyphId; glyphId <= firstGlyphId + glyphRange; glyphId++) {
+          if (index < run.size() && run.get(index).glyphId < glyphId) {
+            index++;
+          }
+          if (format == IndexSubTable.Format.FORMAT_1) {
+            loc.writeULong(offsets[index]);
+          } else {
+            loc.writeUShort(offsets[index]);
+          }
+        }
+        break;
+      case IndexSubTable.Format.FORMAT_4:
+        loc.writeULong(run.size());
+        for (int i = 0; i < run.size(); i++) {
+          loc.writeUShort(run.get(i).glyphId);
+          loc.writeUShort(offsets[i]);
+        }
+        loc.writeUShort(0);
+        loc.writeUShort(offsets[run.size()]);
+        break;
+      case IndexSubTable.Format.FORMAT_2:
+        loc.copy(first.constantMetrics);
+        break;
+      case IndexSubTable.Format.FORMAT_5:
+        loc.copy(first.constantMetrics);
+        loc.writeULong(run.size());
+        for (Glyph glyph : run) {
+          loc.writeUShort(glyph.glyphId);
+        }
+        break;
+      default:
+        throw new IllegalStateException("Unexpected index format " + format);
+    }
+  }
+
+  private static void writeGlyph(OffsetDataWriter dat, Glyph glyph) {
+    if (glyph.components == null) {
+      dat.copy(glyph.data);
+      return;
+    }
+    int numComponentsOffset =
+        glyph.imageFormat == 8 ? Offset.format8NumComponents : Offset.format9NumComponents;
+    dat.copy(glyph.data, 0, numComponentsOffset + 2);
+    for (int i = 0; i < glyph.components.length; i++) {
+      int component = numComponentsOffset + 2 + i * Offset.componentLength;
+      dat.writeUShort(glyph.components[i]);
+      dat.copy(glyph.data, component + 2, Offset.componentLength - 2);
+    }
+  }
+
+  /**
+   * Keeps the bitmap scales whose substitute strike is still present.
+   */
+  private void subsetScales(Font.Builder fontBuilder, ReadableFontData ebscData,
+      ReadableFontData eblcData, List<Integer> strikes) {
+    Set<Integer> ppems = new HashSet<Integer>();
+    for (int strike : strikes) {
+      int sizeTable = Offset.headerSize + strike * Offset.bitmapSizeTableSize;
+      ppems.add(ppem(eblcData.readUByte(sizeTable + Offset.ppemX),
+          eblcData.readUByte(sizeTable + Offset.ppemY)));
+    }
+    List<Integer> scales = new ArrayList<Integer>();
+    int numSizes = ebscData.readULongAsInt(Offset.numSizes);
+    for (int i = 0; i < numSizes; i++) {
+      int scale = Offset.headerSize + i * Offset.bitmapScaleSize;
+      if (ppems.contains(ppem(ebscData.readUByte(scale + Offset.substitutePpemX),
+          ebscData.readUByte(scale + Offset.substitutePpemY)))) {
+        scales.add(scale);
+      }
+    }
+    if (scales.isEmpty()) {
+      return;
+    }
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeULong(ebscData.readULong(0));
+    w.writeULong(scales.size());
+    for (int scale : scales) {
+      w.copy(ebscData, scale, Offset.bitmapScaleSize);
+    }
+    fontBuilder.newTableBuilder(scaleTag, w.data());
+  }
+
+  private static int ppem(int ppemX, int ppemY) {
+    return (ppemX << 8) | ppemY;
+  }
+}
@@ -19,10 +19,12 @@ package com.google.typography.font.tools.subsetter;
 import com.google.typography.font.sfntly.Font;
 import com.google.typography.font.sfntly.Tag;
 import com.google.typography.font.sfntly.data.FontData;
+import com.google.typography.font.sfntly.data.ReadableFontData;
 import com.google.typography.font.sfntly.table.core.CMap.CMapFormat;
 import com.google.typography.font.sfntly.table.core.CMapFormat4;
 import com.google.typography.font.sfntly.table.core.CMapTable;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -31,7 +33,8 @@ import java.util.TreeMap;
 
 /**
  * This is a medium-level builder for CMap tables, given the mapping from Unicode codepoint
- * to glyph id.
+ * to glyph id. The BMP codepoints go in a format 4 subtable; if the mapping has
+ * supplementary plane codepoints, a format 12 subtable maps all the codepoints.
  *
  * @author Raph Levien
  */
@@ -145,11 +148,66 @@ public class CMapTableBuilder {
     builder.setSegments(segmentList);
   }
 
+  // the groups of consecutive codepoints mapped to consecutive glyph ids,
+  // each as its start code, end code and start glyph id
+  private List<int[]> getFormat12Groups() {
+    List<int[]> result = new ArrayList<int[]>();
+    int[] curGroup = null;
+    for (Map.Entry<Integer, Integer> entry : new TreeMap<Integer, Integer>(mapping).entrySet()) {
+      int unicode = entry.getKey();
+      int glyphId = entry.getValue();
+      if (glyphId == CMapTable.NOTDEF) {
+        continue;
+      }
+      if (curGroup != null && unicode == curGroup[1] + 1
+          && glyphId == curGroup[2] + unicode - curGroup[0]) {
+        curGroup[1] = unicode;
+      } else {
+        curGroup = new int[] {unicode, unicode, glyphId};
+        result.add(curGroup);
+      }
+    }
+    return result;
+  }
+
+  private static ReadableFontData buildCMapFormat12(List<int[]> groups) {
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeUShort(CMapFormat.Format12.value());
+    w.writeUShort(0); // reserved
+    int length = w.writeULong(0);
+    w.writeULong(0); // language
+    w.writeULong(groups.size());
+    for (int[] group : groups) {
+      w.writeULong(group[0]);
+      w.writeULong(group[1]);
+      w.writeULong(group[2]);
+    }
+    w.patchULong(length, w.position());
+    return w.data();
+  }
+
+  private boolean hasSupplementary() {
+    for (int unicode : mapping.keySet()) {
+      if (unicode > MAX_FORMAT4_ENDCODE) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   public void build() {
     CMapTable.Builder cmapTableBuilder = (CMapTable.Builder) fontBuilder.newTableBuilder(Tag.cmap);
     CMapFormat4.Builder cmapBuilder =
         (CMapFormat4.Builder) cmapTableBuilder.newCMapBuilder(CMapTable.CMapId.WINDOWS_BMP,
             CMapFormat.Format4);
     buildCMapFormat4(cmapBuilder, getFormat4Segments());
+    if (hasSupplementary()) {
+      try {
+        cmapTableBuilder.newCMapBuilder(CMapTable.CMapId.WINDOWS_UCS4,
+            buildCMapFormat12(getFormat12Groups()));
+      } catch (IOException e) {
+        throw new RuntimeException("Unable to build cmap format 12 subtable", e);
+      }
+    }
   }
 }
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.cff.CffIndex;
+import com.google.typography.font.sfntly.table.cff.CffTable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Finds the glyphs the accented characters of a CFF font are drawn from. A
+ * charstring ending with the seac form of endchar draws the glyphs of a base
+ * and an accent character, named by their StandardEncoding codes, so those
+ * glyphs have to be kept with it, as the components of a TrueType composite
+ * glyph are.
+ *
+ * Not thread safe.
+ */
+public final class CffAccentComponents {
+
+  private static final Logger logger =
+      Logger.getLogger(CffAccentComponents.class.getCanonicalName());
+
+  private static final Type2CharStringInterpreter.Handler IGNORE_TOKENS =
+      new Type2CharStringInterpreter.Handler() {
+        @Override
+        public void operand(ReadableFontData data, int offset, int length) {
+        }
+
+        @Override
+        public void operator(ReadableFontData data, int offset, int length) {
+        }
+
+        @Override
+        public void subroutine(boolean global, int index) {
+        }
+      };
+
+  private final CffTable cff;
+  private final CffIndex charStrings;
+  private final int[] fdSelect;
+  private final Type2CharStringInterpreter[] interpreters;
+  // the glyph of each SID, read from the charset once an accented character
+  // is found
+  private Map<Integer, Integer> glyphIds;
+
+  public CffAccentComponents(CffTable cff) {
+    this.cff = cff;
+    this.charStrings = cff.charStrings();
+    this.fdSelect = cff.fdSelect();
+    this.interpreters = new Type2CharStringInterpreter[cff.fontDictCount()];
+  }
+
+  /**
+   * Gets the glyphs of the base and accent characters of a glyph.
+   *
+   * @param glyphId the glyph id
+   * @return the glyph ids, empty if the glyph is not an accented character
+   */
+  public List<Integer> components(int glyphId) {
+    int fd = this.fdSelect[glyphId];
+    if (this.interpreters[fd] == null) {
+      this.interpreters[fd] =
+          new Type2CharStringInterpreter(this.cff.globalSubrIndex(), this.cff.localSubrIndex(fd));
+    }
+    Type2CharStringInterpreter interpreter = this.interpreters[fd];
+    interpreter.interpret(this.charStrings.item(glyphId), IGNORE_TOKENS);
+    int[] codes = interpreter.seacCodes();
+    if (codes == null) {
+      return Collections.emptyList();
+    }
+    if (this.cff.isCidKeyed()) {
+      // glyphs of CID-keyed fonts have no names to look the characters up by
+      logger.warning("Glyph " + glyphId + " of a CID-keyed font is an accented character,"
+          + " its components are not known");
+      return Collections.emptyList();
+    }
+    if (this.glyphIds == null) {
+      int[] charset = this.cff.charset();
+      this.glyphIds = new HashMap<Integer, Integer>();
+      for (int glyph = 1; glyph < charset.length; glyph++) {
+        this.glyphIds.put(charset[glyph], glyph);
+      }
+    }
+    List<Integer> components = new ArrayList<Integer>(codes.length);
+    for (int code : codes) {
+      Integer component = this.glyphIds.get(CffTable.standardEncodingSid(code));
+      if (component == null) {
+        logger.warning("Glyph " + glyphId + " is drawn from StandardEncoding code " + code
+            + ", which names no glyph of the font");
+      } else {
+        components.add(component);
+      }
+    }
+    return components;
+  }
+}
@@ -0,0 +1,576 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.cff.CffTable;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds global subroutines for a set of flattened charstrings.
+ *
+ * The charstrings are joined into one sequence of tokens, and the repeated
+ * token sequences are found from the suffix array of that sequence and its
+ * longest common prefixes. A repeated sequence is a candidate subroutine if it
+ * starts where the operand stack is empty, ends with an operator, and contains
+ * no endchar, hintmask or cntrmask; this keeps the operand stack of the caller
+ * untouched by the call. For each charstring, the set of calls giving the
+ * smallest charstring is then chosen by dynamic programming, and candidates
+ * that don't pay for themselves are dropped. Subroutines don't call other
+ * subroutines.
+ */
+final class CffSubroutinizer {
+
+  // suffixes are sorted on keys packing two ranks and a position
+  private static final int KEY_BITS = 21;
+  private static final long KEY_MASK = (1L << KEY_BITS) - 1;
+  // the ranks of all tokens and separators must fit in the key
+  static final int MAX_TOKENS = (1 << KEY_BITS) - 2;
+  private static final int MAX_SUBRS = 65535;
+  // the kind of the separators between charstrings in the token sequence
+  private static final int SEPARATOR = -1;
+  // a call before the subroutine numbers are known: 2 bytes and callgsubr
+  private static final int ESTIMATED_CALL_SIZE = 3;
+  // the return operator and the offset of a subroutine in its INDEX
+  private static final int SUBR_OVERHEAD = 3;
+
+  private final List<FlatCharString> charStrings;
+
+  // the token sequence: an id per distinct token, and a distinct id for the
+  // separator following each charstring
+  private int[] text;
+  private int[] kinds;
+  private int[] sizes;
+  private int[] charStringStarts;
+
+  private List<ReadableFontData> newCharStrings;
+  private List<ReadableFontData> subrs;
+
+  CffSubroutinizer(List<FlatCharString> charStrings) {
+    this.charStrings = charStrings;
+  }
+
+  /**
+   * @return the charstrings calling the new subroutines
+   */
+  List<ReadableFontData> charStrings() {
+    return this.newCharStrings;
+  }
+
+  /**
+   * @return the new global subroutines
+   */
+  List<ReadableFontData> subrs() {
+    return this.subrs;
+  }
+
+  /**
+   * @return the length of the token sequence of the charstrings, which must
+   *         not exceed {@link #MAX_TOKENS} for subroutines to be built
+   */
+  static int textLength(List<FlatCharString> charStrings) {
+    int length = 0;
+    for (FlatCharString charString : charStrings) {
+      length += charString.tokenCount() + 1;
+    }
+    return length;
+  }
+
+  void subroutinize() {
+    buildText();
+    List<Candidate> candidates;
+    if (this.text.length > MAX_TOKENS) {
+      candidates = new ArrayList<Candidate>();
+    } else {
+      int[] sa = suffixArray(this.text);
+      candidates = findCandidates(sa, longestCommonPrefixes(this.text, sa));
+      addOccurrences(candidates, sa);
+    }
+
+    int count = candidates.size();
+    boolean[] enabled = new boolean[count];
+    Arrays.fill(enabled, true);
+    int[] callSizes = new int[count];
+    Arrays.fill(callSizes, ESTIMATED_CALL_SIZE);
+    int[] choices = new int[this.text.length];
+
+    // drop the candidates that are not used often enough, and choose again
+    // with the sizes of the calls to the remaining ones
+    int[] uses = chooseCalls(candidates, enabled, callSizes, choices);
+    for (int c = 0; c < count; c++) {
+      enabled[c] = savings(candidates.get(c).size, uses[c]) > 0;
+    }
+    number(candidates, enabled, uses, callSizes);
+    uses = chooseCalls(candidates, enabled, callSizes, choices);
+    for (int c = 0; c < count; c++) {
+      enabled[c] = uses[c] > 0;
+    }
+    int subrCount = number(candidates, enabled, uses, callSizes);
+
+    write(candidates, enabled, subrCount, choices);
+  }
+
+  private void buildText() {
+    int length = textLength(this.charStrings);
+    this.text = new int[length];
+    this.kinds = new int[length];
+    this.sizes = new int[length];
+    this.charStringStarts = new int[this.charStrings.size() + 1];
+
+    Map<ByteBuffer, Integer> ids = new HashMap<ByteBuffer, Integer>();
+    int separators = this.charStrings.size();
+    int position = 0;
+    for (int i = 0; i < this.charStrings.size(); i++) {
+      FlatCharString charString = this.charStrings.get(i);
+      this.charStringStarts[i] = position;
+      for (int token = 0; token < charString.tokenCount(); token++) {
+        ByteBuffer bytes = ByteBuffer.wrap(
+            charString.data(), charString.tokenOffset(token), charString.tokenLength(token));
+        Integer id = ids.get(bytes);
+        if (id == null) {
+          id = separators + ids.size();
+          ids.put(bytes, id);
+        }
+        this.text[position] = id;
+        this.kinds[position] = charString.tokenKind(token);
+        this.sizes[position] = charString.tokenLength(token);
+        position++;
+      }
+      this.text[position] = i;
+      this.kinds[position] = SEPARATOR;
+      position++;
+    }
+    this.charStringStarts[this.charStrings.size()] = position;
+  }
+
+  /**
+   * Sorts the suffixes of the text by prefix doubling. All values of the text
+   * must be less than its length.
+   */
+  static int[] suffixArray(int[] text) {
+    int n = text.length;
+    int[] sa = new int[n];
+    int[] rank = Arrays.copyOf(text, n);
+    int[] next = new int[n];
+    long[] keys = new long[n];
+    for (int k = 1; n > 0; k <<= 1) {
+      for (int i = 0; i < n; i++) {
+        long second = i + k < n ? rank[i + k] + 1 : 0;
+        keys[i] = ((long) rank[i] << (2 * KEY_BITS)) | (second << KEY_BITS) | i;
+      }
+      Arrays.sort(keys);
+      int r = 0;
+      for (int j = 0; j < n; j++) {
+        sa[j] = (int) (keys[j] & KEY_MASK);
+        if (j > 0 && (keys[j] >>> KEY_BITS) != (keys[j - 1] >>> KEY_BITS)) {
+          r++;
+        }
+        next[sa[j]] = r;
+      }
+      int[] temp = rank;
+      rank = next;
+      next = temp;
+      if (r == n - 1 || k >= n) {
+        break;
+      }
+    }
+    return sa;
+  }
+
+  /**
+   * Computes the length of the common prefix of each suffix in the suffix
+   * array with the one before it, with Kasai's algorithm.
+   */
+  static int[] longestCommonPrefixes(int[] text, int[] sa) {
+    int n = text.length;
+    int[] rank = new int[n];
+    for (int i = 0; i < n; i++) {
+      rank[sa[i]] = i;
+    }
+    int[] lcp = new int[n];
+    int h = 0;
+    for (int i = 0; i < n; i++) {
+      if (rank[i] > 0) {
+        int j = sa[rank[i] - 1];
+        while (i + h < n && j + h < n && text[i + h] == text[j + h]) {
+          h++;
+        }
+        lcp[rank[i]] = h;
+        if (h > 0) {
+          h--;
+        }
+      } else {
+        h = 0;
+      }
+    }
+    return lcp;
+  }
+
+  /**
+   * Finds the candidate subroutines among the repeated sequences, which are
+   * the prefixes shared by the suffixes of the lcp-intervals of the suffix
+   * array.
+   */
+  private List<Candidate> findCandidates(int[] sa, int[] lcp) {
+    Map<Candidate, Candidate> found = new HashMap<Candidate, Candidate>();
+    int n = sa.length;
+    int[] stackLcp = new int[n + 1];
+    int[] stackLb = new int[n + 1];
+    int top = 0;
+    for (int i = 1; i <= n; i++) {
+      int current = i < n ? lcp[i] : 0;
+      int lb = i - 1;
+      while (current < stackLcp[top]) {
+        lb = stackLb[top];
+        addCandidate(found, sa, stackLcp[top], lb, i - 1);
+        top--;
+      }
+      if (current > stackLcp[top]) {
+        top++;
+        stackLcp[top] = current;
+        stackLb[top] = lb;
+      }
+    }
+
+    List<Candidate> candidates = new ArrayList<Candidate>(found.values());
+    Collections.sort(candidates, new Comparator<Candidate>() {
+      @Override
+      public int compare(Candidate c1, Candidate c2) {
+        int s1 = savings(c1.size, c1.count);
+        int s2 = savings(c2.size, c2.count);
+        if (s1 != s2) {
+          return s1 > s2 ? -1 : 1;
+        }
+        return c1.position - c2.position;
+      }
+    });
+    if (candidates.size() > MAX_SUBRS) {
+      candidates = new ArrayList<Candidate>(candidates.subList(0, MAX_SUBRS));
+    }
+    return candidates;
+  }
+
+  private void addCandidate(
+      Map<Candidate, Candidate> found, int[] sa, int prefixLength, int lb, int rb) {
+    int position = sa[lb];
+    int length = 0;
+    int size = 0;
+    int candidateSize = 0;
+    for (int t = 0; t < prefixLength; t++) {
+      int kind = this.kinds[position + t];
+      if (kind != FlatCharString.Kind.OPERAND && kind != FlatCharString.Kind.OPERATOR) {
+        break;
+      }
+      size += this.sizes[position + t];
+      if (kind == FlatCharString.Kind.OPERATOR) {
+        length = t + 1;
+        candidateSize = size;
+      }
+    }
+    if (length == 0) {
+      return;
+    }
+    int count = 0;
+    for (int j = lb; j <= rb; j++) {
+      if (isCallSite(sa[j])) {
+        count++;
+      }
+    }
+    if (savings(candidateSize, count) <= 0) {
+      return;
+    }
+    // a shorter prefix of a longer repeated sequence is also the prefix of an
+    // enclosing interval, which has all of its occurrences
+    Candidate candidate = new Candidate(position, length, candidateSize);
+    Candidate existing = found.get(candidate);
+    if (existing == null || existing.count < count) {
+      candidate.lb = lb;
+      candidate.rb = rb;
+      candidate.count = count;
+      found.put(candidate, candidate);
+    }
+  }
+
+  /**
+   * @return true if a subroutine call may start at a position: at the start of
+   *         a charstring or after an operator
+   */
+  private boolean isCallSite(int position) {
+    if (position == 0) {
+      return true;
+    }
+    int kind = this.kinds[position - 1];
+    return kind == SEPARATOR || kind == FlatCharString.Kind.OPERATOR;
+  }
+
+  private static int savings(int size, int uses) {
+    return uses * (size - ESTIMATED_CALL_SIZE) - (size + SUBR_OVERHEAD);
+  }
+
+  /**
+   * Lists the candidates starting at each call site.
+   */
+  private void addOccurrences(List<Candidate> candidates, int[] sa) {
+    for (Candidate candidate : candidates) {
+      int[] occurrences = new int[candidate.count];
+      int i = 0;
+      for (int j = candidate.lb; j <= candidate.rb; j++) {
+        if (isCallSite(sa[j])) {
+          occurrences[i++] = sa[j];
+        }
+      }
+      candidate.occurrences = occurrences;
+    }
+  }
+
+  /**
+   * Chooses the calls giving the smallest charstrings.
+   *
+   * @param choices receives, for each position, the index of the candidate
+   *        called there or -1
+   * @return the number of calls to each candidate
+   */
+  private int[] chooseCalls(
+      List<Candidate> candidates, boolean[] enabled, int[] callSizes, int[] choices) {
+    int n = this.text.length;
+    int[] first = new int[n];
+    Arrays.fill(first, -1);
+    int entryCount = 0;
+    for (int c = 0; c < candidates.size(); c++) {
+      if (enabled[c]) {
+        entryCount += candidates.get(c).occurrences.length;
+      }
+    }
+    int[] nextEntry = new int[entryCount];
+    int[] entryCandidate = new int[entryCount];
+    int entry = 0;
+    for (int c = 0; c < candidates.size(); c++) {
+      if (enabled[c]) {
+        for (int position : candidates.get(c).occurrences) {
+          nextEntry[entry] = first[position];
+          entryCandidate[entry] = c;
+          first[position] = entry++;
+        }
+      }
+    }
+
+    int[] uses = new int[candidates.size()];
+    int[] best = new int[n + 1];
+    for (int i = 0; i < this.charStrings.size(); i++) {
+      int start = this.charStringStarts[i];
+      int end = this.charStringStarts[i + 1] - 1;
+      best[end] = 0;
+      for (int p = end - 1; p >= start; p--) {
+        best[p] = this.sizes[p] + best[p + 1];
+        choices[p] = -1;
+        for (int e = first[p]; e != -1; e = nextEntry[e]) {
+          int c = entryCandidate[e];
+          int size = callSizes[c] + best[p + candidates.get(c).length];
+          if (size < best[p]) {
+            best[p] = size;
+            choices[p] = c;
+          }
+        }
+      }
+      for (int p = start; p < end; ) {
+        int c = choices[p];
+        if (c >= 0) {
+          uses[c]++;
+          p += candidates.get(c).length;
+        } else {
+          p++;
+        }
+      }
+    }
+    return uses;
+  }
+
+  /**
+   * Numbers the enabled candidates, giving the most used ones the numbers
+   * with the shortest encoding.
+   *
+   * @return the number of subroutines
+   */
+  private static int number(
+      List<Candidate> candidates, boolean[] enabled, final int[] uses, int[] callSizes) {
+    List<Integer> used = new ArrayList<Integer>();
+    for (int c = 0; c < candidates.size(); c++) {
+      if (enabled[c]) {
+        used.add(c);
+      } else {
+        candidates.get(c).number = -1;
+      }
+    }
+    Collections.sort(used, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer c1, Integer c2) {
+        return uses[c2] - uses[c1];
+      }
+    });
+
+    int count = used.size();
+    final int bias = CffTable.subrBias(count);
+    List<Integer> numbers = new ArrayList<Integer>(count);
+    for (int i = 0; i < count; i++) {
+      numbers.add(i);
+    }
+    Collections.sort(numbers, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer n1, Integer n2) {
+        return operandSize(n1 - bias) - operandSize(n2 - bias);
+      }
+    });
+    for (int i = 0; i < count; i++) {
+      int c = used.get(i);
+      int number = numbers.get(i);
+      candidates.get(c).number = number;
+      callSizes[c] = operandSize(number - bias) + 1;
+    }
+    return count;
+  }
+
+  private void write(
+      List<Candidate> candidates, boolean[] enabled, int subrCount, int[] choices) {
+    int bias = CffTable.subrBias(subrCount);
+    ReadableFontData[] newSubrs = new ReadableFontData[subrCount];
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (int c = 0; c < candidates.size(); c++) {
+      if (enabled[c]) {
+        Candidate candidate = candidates.get(c);
+        out.reset();
+        writeTokens(out, candidate.position, candidate.length);
+        out.write(Type2CharStringInterpreter.Op.return_);
+        newSubrs[candidate.number] = WritableFontData.createWritableFontData(out.toByteArray());
+      }
+    }
+    this.subrs = Arrays.asList(newSubrs);
+
+    this.newCharStrings = new ArrayList<ReadableFontData>(this.charStrings.size());
+    for (int i = 0; i < this.charStrings.size(); i++) {
+      out.reset();
+      int end = this.charStringStarts[i + 1] - 1;
+      for (int p = this.charStringStarts[i]; p < end; ) {
+        int c = choices[p];
+        if (c >= 0 && enabled[c]) {
+          writeOperand(out, candidates.get(c).number - bias);
+          out.write(Type2CharStringInterpreter.Op.callgsubr);
+          p += candidates.get(c).length;
+        } else {
+          writeTokens(out, p, 1);
+          p++;
+        }
+      }
+      this.newCharStrings.add(WritableFontData.createWritableFontData(out.toByteArray()));
+    }
+  }
+
+  private void writeTokens(ByteArrayOutputStream out, int position, int length) {
+    int i = Arrays.binarySearch(this.charStringStarts, position);
+    if (i < 0) {
+      i = -i - 2;
+    }
+    FlatCharString charString = this.charStrings.get(i);
+    int first = position - this.charStringStarts[i];
+    int offset = charString.tokenOffset(first);
+    int end = charString.tokenOffset(first + length);
+    out.write(charString.data(), offset, end - offset);
+  }
+
+  static int operandSize(int value) {
+    if (value >= -107 && value <= 107) {
+      return 1;
+    } else if (value >= -1131 && value <= 1131) {
+      return 2;
+    }
+    return 3;
+  }
+
+  static void writeOperand(ByteArrayOutputStream out, int value) {
+    if (value >= -107 && value <= 107) {
+      out.write(value + 139);
+    } else if (value >= 108 && value <= 1131) {
+      value -= 108;
+      out.write((value >> 8) + 247);
+      out.write(value & 0xff);
+    } else if (value >= -1131 && value <= -108) {
+      value = -value - 108;
+      out.write((value >> 8) + 251);
+      out.write(value & 0xff);
+    } else {
+      out.write(Type2CharStringInterpreter.Op.shortint);
+      out.write((value >> 8) & 0xff);
+      out.write(value & 0xff);
+    }
+  }
+
+  /**
+   * A candidate subroutine: a sequence of tokens, compared by content.
+   */
+  private final class Candidate {
+    final int position;
+    final int length;
+    final int size;
+    // the interval of the suffix array holding the occurrences
+    int lb;
+    int rb;
+    int count;
+    int[] occurrences;
+    int number;
+
+    Candidate(int position, int length, int size) {
+      this.position = position;
+      this.length = length;
+      this.size = size;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Candidate)) {
+        return false;
+      }
+      Candidate other = (Candidate) o;
+      if (this.length != other.length) {
+        return false;
+      }
+      for (int t = 0; t < this.length; t++) {
+        if (text[this.position + t] != text[other.position + t]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public int hashCode() {
+      int hash = this.length;
+      for (int t = 0; t < this.length; t++) {
+        hash = 31 * hash + text[this.position + t];
+      }
+      return hash;
+    }
+  }
+}
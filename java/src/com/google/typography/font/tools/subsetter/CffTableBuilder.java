@@ -0,0 +1,401 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.cff.CffDict;
+import com.google.typography.font.sfntly.table.cff.CffDict.Operator;
+import com.google.typography.font.sfntly.table.cff.CffIndex;
+import com.google.typography.font.sfntly.table.cff.CffTable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a CFF table for a subset of the glyphs of a source CFF table. The
+ * header, name and strings are copied from the source; the charset, FDSelect,
+ * CharStrings and subroutines are written for the new glyph order, and only
+ * the Font DICTs used by the retained glyphs are kept. A custom encoding is
+ * dropped, since OpenType fonts map characters through the cmap.
+ *
+ * Offsets in the DICTs are written as 5 byte integers so that the size of the
+ * DICTs doesn't depend on the layout.
+ */
+public class CffTableBuilder {
+
+  private static final int INT32_OPERAND = 29;
+  private static final int INT32_OPERAND_SIZE = 5;
+
+  private final CffTable src;
+  private List<Integer> newToOld;
+  private List<ReadableFontData> charStrings;
+  private List<ReadableFontData> globalSubrs;
+  private final Map<Integer, List<ReadableFontData>> localSubrs =
+      new HashMap<Integer, List<ReadableFontData>>();
+
+  public CffTableBuilder(CffTable src) {
+    this.src = src;
+  }
+
+  /**
+   * Sets the glyphs of the new table. Unless set otherwise, their charstrings
+   * are copied from the source.
+   *
+   * @param newToOld the old glyph id of each new glyph
+   */
+  public void setGlyphs(List<Integer> newToOld) {
+    this.newToOld = new ArrayList<Integer>(newToOld);
+  }
+
+  /**
+   * @param charStrings the charstrings of the new glyphs
+   */
+  public void setCharStrings(List<ReadableFontData> charStrings) {
+    this.charStrings = charStrings;
+  }
+
+  /**
+   * Sets the global subroutines. If not set, they are copied from the source.
+   */
+  public void setGlobalSubrs(List<ReadableFontData> subrs) {
+    this.globalSubrs = subrs;
+  }
+
+  /**
+   * Sets the local subroutines of a Private DICT. If not set, they are copied
+   * from the source.
+   *
+   * @param fd the index of the Font DICT in the source
+   * @param subrs the subroutines; an empty list removes the local subroutines
+   */
+  public void setLocalSubrs(int fd, List<ReadableFontData> subrs) {
+    this.localSubrs.put(fd, subrs);
+  }
+
+  public ReadableFontData build() {
+    if (this.newToOld == null) {
+      throw new IllegalStateException("Glyphs of the CFF table not set.");
+    }
+    CffDict topDict = this.src.topDict();
+    if (topDict.intValue(Operator.CharstringType, 2) != 2) {
+      throw new UnsupportedOperationException("Only Type 2 charstrings are supported.");
+    }
+    boolean cid = this.src.isCidKeyed();
+    int[] charset = this.src.charset();
+    int[] fdSelect = this.src.fdSelect();
+
+    // the Font DICTs used by the retained glyphs, in their original order
+    boolean[] usedFds = new boolean[this.src.fontDictCount()];
+    for (int oldGlyph : this.newToOld) {
+      usedFds[fdSelect[oldGlyph]] = true;
+    }
+    int[] newFds = new int[usedFds.length];
+    List<Integer> fds = new ArrayList<Integer>();
+    for (int fd = 0; fd < usedFds.length; fd++) {
+      if (usedFds[fd]) {
+        newFds[fd] = fds.size();
+        fds.add(fd);
+      }
+    }
+
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.copy(this.src.readFontData(), 0, this.src.headerSize());
+    writeIndex(w, Collections.singletonList(this.src.nameIndex().item(0)));
+
+    // Top DICT, with the offsets to be patched
+    List<ReadableFontData> topEntries = new ArrayList<ReadableFontData>();
+    for (int operator : topDict.operators()) {
+      if (operator == Operator.charset || operator == Operator.CharStrings
+          || operator == Operator.Private || operator == Operator.FDArray
+          || operator == Operator.FDSelect
+          || (operator == Operator.Encoding && topDict.intValue(operator, 0) > 1)) {
+        continue;
+      }
+      topEntries.add(topDict.entryData(operator));
+    }
+    int topDictSize = entriesSize(topEntries) + fixedEntrySize(Operator.charset, 1)
+        + fixedEntrySize(Operator.CharStrings, 1)
+        + (cid ? fixedEntrySize(Operator.FDArray, 1) + fixedEntrySize(Operator.FDSelect, 1)
+            : fixedEntrySize(Operator.Private, 2));
+    writeIndexHeader(w, new int[] {topDictSize});
+    for (ReadableFontData entry : topEntries) {
+      w.copy(entry);
+    }
+    int charsetField = writeFixedEntry(w, Operator.charset, 1);
+    int charStringsField = writeFixedEntry(w, Operator.CharStrings, 1);
+    int fdArrayField = -1;
+    int fdSelectField = -1;
+    int privateField = -1;
+    if (cid) {
+      fdArrayField = writeFixedEntry(w, Operator.FDArray, 1);
+      fdSelectField = writeFixedEntry(w, Operator.FDSelect, 1);
+    } else {
+      privateField = writeFixedEntry(w, Operator.Private, 2);
+    }
+
+    w.copy(this.src.stringIndex().readFontData());
+    writeIndex(w, this.globalSubrs != null ? this.globalSubrs : items(this.src.globalSubrIndex()));
+
+    w.patchULong(charsetField, w.position());
+    int[] newCharset = new int[this.newToOld.size()];
+    for (int i = 0; i < newCharset.length; i++) {
+      newCharset[i] = charset[this.newToOld.get(i)];
+    }
+    writeCharset(w, newCharset);
+
+    if (cid) {
+      w.patchULong(fdSelectField, w.position());
+      int[] newFdSelect = new int[this.newToOld.size()];
+      for (int i = 0; i < newFdSelect.length; i++) {
+        newFdSelect[i] = newFds[fdSelect[this.newToOld.get(i)]];
+      }
+      writeFdSelect(w, newFdSelect);
+    }
+
+    w.patchULong(charStringsField, w.position());
+    List<ReadableFontData> newCharStrings = this.charStrings;
+    if (newCharStrings == null) {
+      CffIndex oldCharStrings = this.src.charStrings();
+      newCharStrings = new ArrayList<ReadableFontData>();
+      for (int oldGlyph : this.newToOld) {
+        newCharStrings.add(oldCharStrings.item(oldGlyph));
+      }
+    }
+    writeIndex(w, newCharStrings);
+
+    if (cid) {
+      w.patchULong(fdArrayField, w.position());
+      List<List<ReadableFontData>> fontDicts = new ArrayList<List<ReadableFontData>>();
+      int[] sizes = new int[fds.size()];
+      for (int i = 0; i < sizes.length; i++) {
+        CffDict fontDict = this.src.fontDict(fds.get(i));
+        List<ReadableFontData> entries = new ArrayList<ReadableFontData>();
+        for (int operator : fontDict.operators()) {
+          if (operator != Operator.Private) {
+            entries.add(fontDict.entryData(operator));
+          }
+        }
+        fontDicts.add(entries);
+        sizes[i] = entriesSize(entries) + fixedEntrySize(Operator.Private, 2);
+      }
+      writeIndexHeader(w, sizes);
+      int[] privateFields = new int[sizes.length];
+      for (int i = 0; i < sizes.length; i++) {
+        for (ReadableFontData entry : fontDicts.get(i)) {
+          w.copy(entry);
+        }
+        privateFields[i] = writeFixedEntry(w, Operator.Private, 2);
+      }
+      for (int i = 0; i < sizes.length; i++) {
+        writePrivate(w, fds.get(i), privateFields[i]);
+      }
+    } else {
+      writePrivate(w, 0, privateField);
+    }
+    return w.data();
+  }
+
+  /**
+   * Writes a Private DICT followed by its local subroutines and patches the
+   * Private entry referencing it.
+   */
+  private void writePrivate(OffsetDataWriter w, int fd, int privateField) {
+    CffDict privateDict = this.src.privateDict(fd);
+    if (privateDict == null) {
+      throw new IllegalArgumentException("Font DICT " + fd + " has no Private DICT.");
+    }
+    List<ReadableFontData> subrs = this.localSubrs.get(fd);
+    if (subrs == null) {
+      CffIndex oldSubrs = this.src.localSubrIndex(fd);
+      subrs = oldSubrs == null ? new ArrayList<ReadableFontData>() : items(oldSubrs);
+    }
+    int start = w.position();
+    for (int operator : privateDict.operators()) {
+      if (operator != Operator.Subrs) {
+        w.copy(privateDict.entryData(operator));
+      }
+    }
+    int subrsField = subrs.isEmpty() ? -1 : writeFixedEntry(w, Operator.Subrs, 1);
+    int size = w.position() - start;
+    w.patchULong(privateField, size);
+    w.patchULong(privateField + INT32_OPERAND_SIZE, start);
+    if (subrsField >= 0) {
+      // the Subrs offset is relative to the start of the Private DICT
+      w.patchULong(subrsField, size);
+      writeIndex(w, subrs);
+    }
+  }
+
+  static List<ReadableFontData> items(CffIndex index) {
+    List<ReadableFontData> items = new ArrayList<ReadableFontData>(index.count());
+    for (int i = 0; i < index.count(); i++) {
+      items.add(index.item(i));
+    }
+    return items;
+  }
+
+  private static int entriesSize(List<ReadableFontData> entries) {
+    int size = 0;
+    for (ReadableFontData entry : entries) {
+      size += entry.length();
+    }
+    return size;
+  }
+
+  private static int operatorSize(int operator) {
+    return operator > 0xff ? 2 : 1;
+  }
+
+  private static int fixedEntrySize(int operator, int operandCount) {
+    return INT32_OPERAND_SIZE * operandCount + operatorSize(operator);
+  }
+
+  /**
+   * Writes a DICT entry with 5 byte integer operands set to 0.
+   *
+   * @return the position of the value of the first operand; the value of
+   *         operand i is at this position plus 5 * i
+   */
+  private static int writeFixedEntry(OffsetDataWriter w, int operator, int operandCount) {
+    int first = w.position() + 1;
+    for (int i = 0; i < operandCount; i++) {
+      w.writeByte(INT32_OPERAND);
+      w.writeULong(0);
+    }
+    if (operator > 0xff) {
+      w.writeByte(operator >> 8);
+    }
+    w.writeByte(operator & 0xff);
+    return first;
+  }
+
+  private static int offSize(int maxOffset) {
+    if (maxOffset <= 0xff) {
+      return 1;
+    } else if (maxOffset <= 0xffff) {
+      return 2;
+    } else if (maxOffset <= 0xffffff) {
+      return 3;
+    }
+    return 4;
+  }
+
+  private static void writeOffset(OffsetDataWriter w, int offset, int offSize) {
+    for (int shift = 8 * (offSize - 1); shift >= 0; shift -= 8) {
+      w.writeByte(offset >> shift);
+    }
+  }
+
+  /**
+   * Writes the count, offset size and offset array of an INDEX.
+   *
+   * @param w the writer
+   * @param lengths the lengths of the items
+   */
+  static void writeIndexHeader(OffsetDataWriter w, int[] lengths) {
+    w.writeUShort(lengths.length);
+    if (lengths.length == 0) {
+      return;
+    }
+    int dataSize = 0;
+    for (int length : lengths) {
+      dataSize += length;
+    }
+    int offSize = offSize(dataSize + 1);
+    w.writeByte(offSize);
+    int offset = 1;
+    writeOffset(w, offset, offSize);
+    for (int length : lengths) {
+      offset += length;
+      writeOffset(w, offset, offSize);
+    }
+  }
+
+  static void writeIndex(OffsetDataWriter w, List<ReadableFontData> items) {
+    int[] lengths = new int[items.size()];
+    for (int i = 0; i < lengths.length; i++) {
+      lengths[i] = items.get(i).length();
+    }
+    writeIndexHeader(w, lengths);
+    for (ReadableFontData item : items) {
+      w.copy(item);
+    }
+  }
+
+  /**
+   * Writes a charset in format 0 or 2, whichever is smaller.
+   *
+   * @param ids the SID or CID of each glyph
+   */
+  private static void writeCharset(OffsetDataWriter w, int[] ids) {
+    int ranges = 0;
+    for (int glyph = 1; glyph < ids.length; glyph++) {
+      if (glyph == 1 || ids[glyph] != ids[glyph - 1] + 1) {
+        ranges++;
+      }
+    }
+    if (4 * ranges < 2 * (ids.length - 1)) {
+      w.writeByte(2);
+      int first = 1;
+      for (int glyph = 2; glyph <= ids.length; glyph++) {
+        if (glyph == ids.length || ids[glyph] != ids[glyph - 1] + 1) {
+          w.writeUShort(ids[first]);
+          w.writeUShort(glyph - first - 1);
+          first = glyph;
+        }
+      }
+    } else {
+      w.writeByte(0);
+      for (int glyph = 1; glyph < ids.length; glyph++) {
+        w.writeUShort(ids[glyph]);
+      }
+    }
+  }
+
+  /**
+   * Writes an FDSelect in format 0 or 3, whichever is smaller.
+   *
+   * @param fds the Font DICT index of each glyph
+   */
+  private static void writeFdSelect(OffsetDataWriter w, int[] fds) {
+    int ranges = 0;
+    for (int glyph = 0; glyph < fds.length; glyph++) {
+      if (glyph == 0 || fds[glyph] != fds[glyph - 1]) {
+        ranges++;
+      }
+    }
+    if (3 * ranges + 4 < fds.length) {
+      w.writeByte(3);
+      w.writeUShort(ranges);
+      for (int glyph = 0; glyph < fds.length; glyph++) {
+        if (glyph == 0 || fds[glyph] != fds[glyph - 1]) {
+          w.writeUShort(glyph);
+          w.writeByte(fds[glyph]);
+        }
+      }
+      w.writeUShort(fds.length);
+    } else {
+      w.writeByte(0);
+      for (int fd : fds) {
+        w.writeByte(fd);
+      }
+    }
+  }
+}
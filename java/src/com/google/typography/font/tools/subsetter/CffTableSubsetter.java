@@ -0,0 +1,277 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.cff.CffIndex;
+import com.google.typography.font.sfntly.table.cff.CffTable;
+import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Subsetter for the CFF table. Only the charstrings of the retained glyphs are
+ * kept. How their subroutines are subset is set with
+ * {@link Subsetter#setCffSubroutineMode}.
+ */
+public class CffTableSubsetter extends TableSubsetterImpl {
+
+  /**
+   * The ways of subsetting the subroutines.
+   */
+  public enum SubroutineMode {
+    /**
+     * Keeps the original subroutines. Those that none of the retained glyphs
+     * calls are replaced by an empty subroutine, so that the subroutine numbers
+     * in the charstrings stay valid, and unused subroutines at the end of an
+     * INDEX are dropped when that doesn't change the subroutine bias.
+     */
+    KEEP,
+    /**
+     * Expands all subroutine calls and removes all subroutines.
+     */
+    FLATTEN,
+    /**
+     * Expands all subroutine calls, then builds new global subroutines from
+     * the sequences repeated across the retained glyphs. Glyphs with too many
+     * charstring tokens between them to search for repeats keep their
+     * original subroutines as with {@link #KEEP}, with a warning.
+     */
+    REBUILD
+  }
+
+  private static final Logger logger =
+      Logger.getLogger(CffTableSubsetter.class.getCanonicalName());
+
+  private static final ReadableFontData EMPTY_SUBR =
+      WritableFontData.createWritableFontData(new byte[] {Type2CharStringInterpreter.Op.return_});
+  // the charstring of a glyph emptied when glyph ids are kept
+  private static final ReadableFontData EMPTY_CHARSTRING =
+      WritableFontData.createWritableFontData(new byte[] {Type2CharStringInterpreter.Op.endchar});
+
+  private final int maxRebuildTokens;
+
+  protected CffTableSubsetter() {
+    this(CffSubroutinizer.MAX_TOKENS);
+  }
+
+  /**
+   * @param maxRebuildTokens the most charstring tokens to rebuild the
+   *        subroutines of
+   */
+  CffTableSubsetter(int maxRebuildTokens) {
+    // Note: only updates the glyph count of the maxp table, which should be
+    // created in the setUpTables method of the invoking subsetter.
+    super(Tag.CFF, Tag.maxp);
+    this.maxRebuildTokens = maxRebuildTokens;
+  }
+
+  @Override
+  public boolean subset(Subsetter subsetter, Font font, Font.Builder fontBuilder)
+      throws IOException {
+    List<Integer> permutationTable = subsetter.glyphMappingTable();
+    CffTable cff = font.getTable(Tag.CFF);
+    if (permutationTable == null || cff == null) {
+      return false;
+    }
+
+    // a glyph kept as an empty placeholder keeps its own name and Font DICT
+    int[] oldGlyphIds = subsetter.oldGlyphIds(font);
+    List<Integer> newToOld = new ArrayList<Integer>(oldGlyphIds.length);
+    List<Integer> retained = new ArrayList<Integer>(oldGlyphIds.length);
+    for (int newGlyph = 0; newGlyph < oldGlyphIds.length; newGlyph++) {
+      newToOld.add(oldGlyphIds[newGlyph] < 0 ? newGlyph : oldGlyphIds[newGlyph]);
+      if (oldGlyphIds[newGlyph] >= 0) {
+        retained.add(oldGlyphIds[newGlyph]);
+      }
+    }
+
+    warnMissingComponents(cff, retained);
+
+    CffTableBuilder cffBuilder = new CffTableBuilder(cff);
+    cffBuilder.setGlyphs(newToOld);
+    SubroutineMode mode = subsetter.cffSubroutineMode();
+    List<ReadableFontData> charStrings = null;
+    if (mode != SubroutineMode.KEEP) {
+      charStrings = flattenSubrs(cff, retained, cffBuilder, mode == SubroutineMode.REBUILD);
+    }
+    if (charStrings == null) {
+      subsetSubrs(cff, retained, cffBuilder);
+      CffIndex oldCharStrings = cff.charStrings();
+      charStrings = new ArrayList<ReadableFontData>(retained.size());
+      for (int oldGlyph : retained) {
+        charStrings.add(oldCharStrings.item(oldGlyph));
+      }
+    }
+    List<ReadableFontData> newCharStrings = new ArrayList<ReadableFontData>(oldGlyphIds.length);
+    Iterator<ReadableFontData> retainedCharStrings = charStrings.iterator();
+    for (int oldGlyph : oldGlyphIds) {
+      newCharStrings.add(oldGlyph < 0 ? EMPTY_CHARSTRING : retainedCharStrings.next());
+    }
+    cffBuilder.setCharStrings(newCharStrings);
+    fontBuilder.newTableBuilder(Tag.CFF, cffBuilder.build());
+
+    MaximumProfileTable.Builder maxpBuilder =
+        (MaximumProfileTable.Builder) fontBuilder.getTableBuilder(Tag.maxp);
+    if (maxpBuilder == null) {
+      maxpBuilder = (MaximumProfileTable.Builder) fontBuilder.newTableBuilder(
+          Tag.maxp, font.getTable(Tag.maxp).readFontData());
+    }
+    maxpBuilder.setNumGlyphs(oldGlyphIds.length);
+    return true;
+  }
+
+  /**
+   * Warns about the retained accented characters whose base or accent glyph is
+   * not retained, as they can no longer be drawn.
+   */
+  private static void warnMissingComponents(CffTable cff, List<Integer> glyphs) {
+    Set<Integer> retained = new HashSet<Integer>(glyphs);
+    CffAccentComponents accents = new CffAccentComponents(cff);
+    for (int oldGlyph : glyphs) {
+      for (int component : accents.components(oldGlyph)) {
+        if (!retained.contains(component)) {
+          logger.warning("Glyph " + oldGlyph + " is drawn from glyph " + component
+              + ", which is not retained");
+        }
+      }
+    }
+  }
+
+  /**
+   * Finds the subroutines called by the retained glyphs and sets subroutine
+   * INDEXes with the others emptied.
+   */
+  private static void subsetSubrs(CffTable cff, List<Integer> glyphs, CffTableBuilder builder) {
+    CffIndex charStrings = cff.charStrings();
+    CffIndex globalSubrs = cff.globalSubrIndex();
+    int[] fdSelect = cff.fdSelect();
+    int fdCount = cff.fontDictCount();
+
+    final boolean[] usedGlobal = new boolean[globalSubrs.count()];
+    CffIndex[] localSubrs = new CffIndex[fdCount];
+    boolean[][] usedLocal = new boolean[fdCount][];
+    Type2CharStringInterpreter[] interpreters = new Type2CharStringInterpreter[fdCount];
+    for (int oldGlyph : glyphs) {
+      int fd = fdSelect[oldGlyph];
+      if (interpreters[fd] == null) {
+        localSubrs[fd] = cff.localSubrIndex(fd);
+        usedLocal[fd] = new boolean[localSubrs[fd] == null ? 0 : localSubrs[fd].count()];
+        interpreters[fd] = new Type2CharStringInterpreter(globalSubrs, localSubrs[fd]);
+      }
+      final boolean[] used = usedLocal[fd];
+      interpreters[fd].interpret(charStrings.item(oldGlyph),
+          new Type2CharStringInterpreter.Handler() {
+            @Override
+            public void operand(ReadableFontData data, int offset, int length) {
+            }
+
+            @Override
+            public void operator(ReadableFontData data, int offset, int length) {
+            }
+
+            @Override
+            public void subroutine(boolean global, int index) {
+              (global ? usedGlobal : used)[index] = true;
+            }
+          });
+    }
+
+    builder.setGlobalSubrs(usedSubrs(globalSubrs, usedGlobal));
+    for (int fd = 0; fd < fdCount; fd++) {
+      if (localSubrs[fd] != null) {
+        builder.setLocalSubrs(fd, usedSubrs(localSubrs[fd], usedLocal[fd]));
+      }
+    }
+  }
+
+  /**
+   * Expands the subroutine calls of the charstrings of the retained glyphs,
+   * and removes the subroutines or replaces them with new global ones.
+   *
+   * @return the new charstrings of the glyphs, or null, with nothing set, if
+   *         the subroutines were to be rebuilt but the charstrings are too
+   *         large for it
+   */
+  private List<ReadableFontData> flattenSubrs(
+      CffTable cff, List<Integer> glyphs, CffTableBuilder builder, boolean rebuild) {
+    CffIndex charStrings = cff.charStrings();
+    CffIndex globalSubrs = cff.globalSubrIndex();
+    int[] fdSelect = cff.fdSelect();
+    int fdCount = cff.fontDictCount();
+
+    Type2CharStringInterpreter[] interpreters = new Type2CharStringInterpreter[fdCount];
+    List<FlatCharString> flattened = new ArrayList<FlatCharString>(glyphs.size());
+    for (int oldGlyph : glyphs) {
+      int fd = fdSelect[oldGlyph];
+      if (interpreters[fd] == null) {
+        interpreters[fd] = new Type2CharStringInterpreter(globalSubrs, cff.localSubrIndex(fd));
+      }
+      flattened.add(FlatCharString.flatten(interpreters[fd], charStrings.item(oldGlyph)));
+    }
+
+    List<ReadableFontData> newCharStrings;
+    if (rebuild) {
+      int tokens = CffSubroutinizer.textLength(flattened);
+      if (tokens > this.maxRebuildTokens) {
+        logger.warning("Too many charstring tokens to rebuild subroutines (" + tokens
+            + " > " + this.maxRebuildTokens + "), keeping the original subroutines");
+        return null;
+      }
+      CffSubroutinizer subroutinizer = new CffSubroutinizer(flattened);
+      subroutinizer.subroutinize();
+      newCharStrings = subroutinizer.charStrings();
+      builder.setGlobalSubrs(subroutinizer.subrs());
+    } else {
+      newCharStrings = new ArrayList<ReadableFontData>(flattened.size());
+      for (FlatCharString charString : flattened) {
+        newCharStrings.add(charString.toFontData());
+      }
+      builder.setGlobalSubrs(new ArrayList<ReadableFontData>());
+    }
+    for (int fd = 0; fd < fdCount; fd++) {
+      builder.setLocalSubrs(fd, new ArrayList<ReadableFontData>());
+    }
+    return newCharStrings;
+  }
+
+  /**
+   * @return the subroutines with the unused ones emptied, and trailing unused
+   *         subroutines dropped as long as the bias stays the same
+   */
+  private static List<ReadableFontData> usedSubrs(CffIndex subrs, boolean[] used) {
+    int count = used.length;
+    int bias = CffTable.subrBias(count);
+    while (count > 0 && !used[count - 1] && CffTable.subrBias(count - 1) == bias) {
+      count--;
+    }
+    List<ReadableFontData> result = new ArrayList<ReadableFontData>(count);
+    for (int i = 0; i < count; i++) {
+      result.add(used[i] ? subrs.item(i) : EMPTY_SUBR);
+    }
+    return result;
+  }
+}
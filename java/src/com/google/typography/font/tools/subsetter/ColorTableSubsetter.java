@@ -0,0 +1,541 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.color.ColorPaletteTable;
+import com.google.typography.font.sfntly.table.color.ColorTable;
+import com.google.typography.font.sfntly.table.color.ColorTable.PaintFormat;
+import com.google.typography.font.sfntly.table.variations.DeltaSetIndexMap;
+import com.google.typography.font.sfntly.table.variations.ItemVariationStore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Subsetter for the COLR and CPAL tables.
+ *
+ * A retained glyph keeps its colors only if every glyph they draw is retained
+ * too; otherwise it falls back to its plain outline. The version 1 paints,
+ * color lines and transforms reachable from the kept glyphs are copied once
+ * each, in their original order so that their forward offsets stay forward,
+ * and only the shared layers they use are kept. The palettes are reduced to
+ * the entries still in use. Both tables are dropped when no colored glyph
+ * remains.
+ */
+public class ColorTableSubsetter extends TableSubsetterImpl {
+
+  private static final int PAINT = 0;
+  private static final int COLOR_LINE = 1;
+  private static final int VAR_COLOR_LINE = 2;
+  private static final int AFFINE = 3;
+  private static final int VAR_AFFINE = 4;
+
+  protected ColorTableSubsetter() {
+    super(Tag.COLR, Tag.CPAL);
+  }
+
+  @Override
+  public boolean subset(Subsetter subsetter, Font font, Font.Builder fontBuilder) {
+    ColorTable colr = font.getTable(Tag.COLR);
+    if (subsetter.glyphMappingTable() == null || colr == null) {
+      return false;
+    }
+    ColorPaletteTable cpal = font.getTable(Tag.CPAL);
+    Map<Integer, Integer> inverseMap = subsetter.getInverseMapping();
+    int[] oldGlyphIds = subsetter.oldGlyphIds(font);
+    ColorSubset subset = new ColorSubset(colr, inverseMap);
+
+    // the kept base glyphs, in the order of their new glyph ids
+    List<Integer> layerGlyphs = new ArrayList<Integer>();
+    List<Integer> paintGlyphs = new ArrayList<Integer>();
+    for (int newGlyphId = 0; newGlyphId < oldGlyphIds.length; newGlyphId++) {
+      int oldGlyphId = oldGlyphIds[newGlyphId];
+      if (oldGlyphId < 0) {
+        continue;
+      }
+      if (subset.layersKept(oldGlyphId)) {
+        layerGlyphs.add(newGlyphId);
+      }
+      if (subset.colorGlyphKept(oldGlyphId)) {
+        paintGlyphs.add(newGlyphId);
+        int record = colr.baseGlyphPaintRecordIndex(oldGlyphId);
+        subset.collectPaint(colr.baseGlyphPaintRecordPaintOffset(record));
+      }
+    }
+    if (layerGlyphs.isEmpty() && paintGlyphs.isEmpty()) {
+      // no colors left; the tables are dropped
+      return true;
+    }
+
+    int[] paletteMap = subset.paletteMap(cpal, layerGlyphs, oldGlyphIds);
+    fontBuilder.newTableBuilder(Tag.COLR,
+        subset.write(layerGlyphs, paintGlyphs, oldGlyphIds, paletteMap).data());
+    if (cpal != null) {
+      fontBuilder.newTableBuilder(Tag.CPAL, subsetPalettes(cpal, paletteMap).data());
+    }
+    return true;
+  }
+
+  private static OffsetDataWriter subsetPalettes(ColorPaletteTable cpal, int[] paletteMap) {
+    int numEntries = 0;
+    for (int i = 0; i < ColorTable.FOREGROUND_PALETTE_INDEX; i++) {
+      if (paletteMap[i] >= 0) {
+        numEntries = Math.max(numEntries, paletteMap[i] + 1);
+      }
+    }
+    int[] oldEntries = new int[numEntries];
+    for (int i = 0; i < ColorTable.FOREGROUND_PALETTE_INDEX; i++) {
+      if (paletteMap[i] >= 0) {
+        oldEntries[paletteMap[i]] = i;
+      }
+    }
+    int numPalettes = cpal.numPalettes();
+    ReadableFontData data = cpal.readFontData();
+
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeUShort(cpal.version());
+    w.writeUShort(numEntries);
+    w.writeUShort(numPalettes);
+    w.writeUShort(numEntries * numPalettes);
+    int colorRecordsField = w.reserveOffset32();
+    for (int palette = 0; palette < numPalettes; palette++) {
+      w.writeUShort(palette * numEntries);
+    }
+    int typesField = -1;
+    int labelsField = -1;
+    int entryLabelsField = -1;
+    if (cpal.version() >= 1) {
+      typesField = w.reserveOffset32();
+      labelsField = w.reserveOffset32();
+      entryLabelsField = w.reserveOffset32();
+    }
+    w.patchOffset32(colorRecordsField, 0, w.position());
+    for (int palette = 0; palette < numPalettes; palette++) {
+      for (int entry = 0; entry < numEntries; entry++) {
+        w.writeULong(cpal.color(palette, oldEntries[entry]) & 0xffffffffL);
+      }
+    }
+    if (cpal.paletteTypesArrayOffset() != 0) {
+      w.patchOffset32(typesField, 0, w.position());
+      w.copy(data, cpal.paletteTypesArrayOffset(), 4 * numPalettes);
+    }
+    if (cpal.paletteLabelsArrayOffset() != 0) {
+      w.patchOffset32(labelsField, 0, w.position());
+      w.copy(data, cpal.paletteLabelsArrayOffset(), 2 * numPalettes);
+    }
+    if (cpal.paletteEntryLabelsArrayOffset() != 0) {
+      w.patchOffset32(entryLabelsField, 0, w.position());
+      for (int entry = 0; entry < numEntries; entry++) {
+        w.writeUShort(cpal.paletteEntryLabel(oldEntries[entry]));
+      }
+    }
+    return w;
+  }
+
+  /**
+   * The state of subsetting one COLR table: which colored glyphs are kept,
+   * and the structures and layers they use.
+   */
+  private static final class ColorSubset {
+    private final ColorTable colr;
+    private final Map<Integer, Integer> inverseMap;
+
+    private final Map<Integer, Boolean> paintsKept = new HashMap<Integer, Boolean>();
+    private final Set<Integer> paintsVisiting = new HashSet<Integer>();
+
+    // old offsets of the structures to copy, and their kinds
+    private final TreeMap<Integer, Integer> nodes = new TreeMap<Integer, Integer>();
+    private final TreeSet<Integer> layers = new TreeSet<Integer>();
+
+    ColorSubset(ColorTable colr, Map<Integer, Integer> inverseMap) {
+      this.colr = colr;
+      this.inverseMap = inverseMap;
+    }
+
+    boolean layersKept(int glyphId) {
+      int record = colr.baseGlyphRecordIndex(glyphId);
+      if (record < 0) {
+        return false;
+      }
+      int first = colr.baseGlyphRecordFirstLayerIndex(record);
+      for (int i = first; i < first + colr.baseGlyphRecordNumLayers(record); i++) {
+        if (!inverseMap.containsKey(colr.layerRecordGlyphId(i))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    boolean colorGlyphKept(int glyphId) {
+      int record = colr.baseGlyphPaintRecordIndex(glyphId);
+      return record >= 0 && paintKept(colr.baseGlyphPaintRecordPaintOffset(record));
+    }
+
+    private boolean paintKept(int offset) {
+      Boolean kept = paintsKept.get(offset);
+      if (kept != null) {
+        return kept;
+      }
+      if (!paintsVisiting.add(offset)) {
+        // a cycle, which the format doesn't allow
+        return false;
+      }
+      boolean result = paintKeptUncached(offset);
+      paintsVisiting.remove(offset);
+      paintsKept.put(offset, result);
+      return result;
+    }
+
+    private boolean paintKeptUncached(int offset) {
+      int format = colr.paintFormat(offset);
+      if (PaintFormat.forFormat(format) == null) {
+        return false;
+      }
+      if (format == ColorTable.PAINT_GLYPH
+          && !inverseMap.containsKey(colr.paintGlyphId(offset))) {
+        return false;
+      }
+      if (format == ColorTable.PAINT_COLR_GLYPH) {
+        int glyphId = colr.paintGlyphId(offset);
+        if (!inverseMap.containsKey(glyphId) || !colorGlyphKept(glyphId)) {
+          return false;
+        }
+      }
+      if (format == ColorTable.PAINT_COLR_LAYERS) {
+        int first = colr.paintFirstLayerIndex(offset);
+        for (int i = first; i < first + colr.paintNumLayers(offset); i++) {
+          if (i >= colr.numLayerPaints() || !paintKept(colr.layerPaintOffset(i))) {
+            return false;
+          }
+        }
+      }
+      for (int child : colr.childPaintOffsets(offset)) {
+        if (!paintKept(child)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    void collectPaint(int offset) {
+      if (nodes.containsKey(offset)) {
+        return;
+      }
+      nodes.put(offset, PAINT);
+      int format = colr.paintFormat(offset);
+      int colorLine = colr.colorLineOffset(offset);
+      if (colorLine >= 0) {
+        nodes.put(colorLine, (format & 1) == 1 ? VAR_COLOR_LINE : COLOR_LINE);
+      }
+      int transform = colr.transformOffset(offset);
+      if (transform >= 0) {
+        nodes.put(transform, format == ColorTable.PAINT_VAR_TRANSFORM ? VAR_AFFINE : AFFINE);
+      }
+      if (format == ColorTable.PAINT_COLR_LAYERS) {
+        int first = colr.paintFirstLayerIndex(offset);
+        for (int i = first; i < first + colr.paintNumLayers(offset); i++) {
+          layers.add(i);
+          collectPaint(colr.layerPaintOffset(i));
+        }
+      }
+      for (int child : colr.childPaintOffsets(offset)) {
+        collectPaint(child);
+      }
+    }
+
+    private int nodeSize(int offset, int kind) {
+      switch (kind) {
+        case PAINT:
+          return PaintFormat.forFormat(colr.paintFormat(offset)).size();
+        case COLOR_LINE:
+          return colr.colorLineSize(offset, false);
+        case VAR_COLOR_LINE:
+          return colr.colorLineSize(offset, true);
+        case AFFINE:
+          return ColorTable.AFFINE_SIZE;
+        default:
+          return ColorTable.VAR_AFFINE_SIZE;
+      }
+    }
+
+    /**
+     * Maps the palette entries in use to a dense range, keeping the foreground
+     * color index. If there is no palette table or an index is outside of it
+     * the entries are mapped to themselves.
+     *
+     * @return the new index of each old palette entry, -1 for unused entries
+     */
+    int[] paletteMap(ColorPaletteTable cpal, List<Integer> layerGlyphs, int[] oldGlyphIds) {
+      Set<Integer> used = new TreeSet<Integer>();
+      for (int newGlyphId : layerGlyphs) {
+        int record = colr.baseGlyphRecordIndex(oldGlyphIds[newGlyphId]);
+        int first = colr.baseGlyphRecordFirstLayerIndex(record);
+        for (int i = first; i < first + colr.baseGlyphRecordNumLayers(record); i++) {
+          used.add(colr.layerRecordPaletteIndex(i));
+        }
+      }
+      for (Map.Entry<Integer, Integer> node : nodes.entrySet()) {
+        int offset = node.getKey();
+        if (node.getValue() == PAINT) {
+          int index = colr.paintPaletteIndex(offset);
+          if (index >= 0) {
+            used.add(index);
+          }
+        } else if (node.getValue() == COLOR_LINE || node.getValue() == VAR_COLOR_LINE) {
+          boolean variable = node.getValue() == VAR_COLOR_LINE;
+          for (int stop = 0; stop < colr.colorLineNumStops(offset); stop++) {
+            used.add(colr.readFontData().readUShort(
+                offset + ColorTable.colorStopPaletteIndexField(stop, variable)));
+          }
+        }
+      }
+      used.remove(ColorTable.FOREGROUND_PALETTE_INDEX);
+
+      int numEntries = cpal == null ? 0 : cpal.numPaletteEntries();
+      boolean identity = used.isEmpty();
+      for (int index : used) {
+        identity |= index >= numEntries;
+      }
+      int[] map = new int[ColorTable.FOREGROUND_PALETTE_INDEX + 1];
+      for (int i = 0; i < map.length; i++) {
+        map[i] = identity && i < numEntries ? i : -1;
+      }
+      if (!identity) {
+        int next = 0;
+        for (int index : used) {
+          map[index] = next++;
+        }
+      }
+      map[ColorTable.FOREGROUND_PALETTE_INDEX] = ColorTable.FOREGROUND_PALETTE_INDEX;
+      return map;
+    }
+
+    private int newPaletteIndex(int[] paletteMap, int index) {
+      return paletteMap[index] < 0 ? index : paletteMap[index];
+    }
+
+    OffsetDataWriter write(List<Integer> layerGlyphs, List<Integer> paintGlyphs,
+        int[] oldGlyphIds, int[] paletteMap) {
+      ReadableFontData data = colr.readFontData();
+      int version = colr.version();
+      int numLayerRecords = 0;
+      for (int newGlyphId : layerGlyphs) {
+        numLayerRecords +=
+            colr.baseGlyphRecordNumLayers(colr.baseGlyphRecordIndex(oldGlyphIds[newGlyphId]));
+      }
+
+      OffsetDataWriter w = new OffsetDataWriter();
+      w.writeUShort(version);
+      w.writeUShort(layerGlyphs.size());
+      int baseGlyphRecordsField = w.reserveOffset32();
+      int layerRecordsField = w.reserveOffset32();
+      w.writeUShort(numLayerRecords);
+      int baseGlyphListField = -1;
+      int layerListField = -1;
+      int clipListField = -1;
+      int varIndexMapField = -1;
+      int itemVariationStoreField = -1;
+      if (version >= 1) {
+        baseGlyphListField = w.reserveOffset32();
+        layerListField = w.reserveOffset32();
+        clipListField = w.reserveOffset32();
+        varIndexMapField = w.reserveOffset32();
+        itemVariationStoreField = w.reserveOffset32();
+      }
+
+      // version 0
+      if (!layerGlyphs.isEmpty()) {
+        w.patchOffset32(baseGlyphRecordsField, 0, w.position());
+        int layer = 0;
+        for (int newGlyphId : layerGlyphs) {
+          int record = colr.baseGlyphRecordIndex(oldGlyphIds[newGlyphId]);
+          w.writeUShort(newGlyphId);
+          w.writeUShort(layer);
+          w.writeUShort(colr.baseGlyphRecordNumLayers(record));
+          layer += colr.baseGlyphRecordNumLayers(record);
+        }
+        w.patchOffset32(layerRecordsField, 0, w.position());
+        for (int newGlyphId : layerGlyphs) {
+          int record = colr.baseGlyphRecordIndex(oldGlyphIds[newGlyphId]);
+          int first = colr.baseGlyphRecordFirstLayerIndex(record);
+          for (int i = first; i < first + colr.baseGlyphRecordNumLayers(record); i++) {
+            w.writeUShort(inverseMap.get(colr.layerRecordGlyphId(i)));
+            w.writeUShort(newPaletteIndex(paletteMap, colr.layerRecordPaletteIndex(i)));
+          }
+        }
+      }
+      if (version < 1) {
+        return w;
+      }
+
+      // version 1: the lists come first so that their offsets to the paints
+      // are positive
+      int baseGlyphList = -1;
+      List<Integer> paintRecordFields = new ArrayList<Integer>();
+      if (!paintGlyphs.isEmpty()) {
+        baseGlyphList = w.position();
+        w.patchOffset32(baseGlyphListField, 0, baseGlyphList);
+        w.writeULong(paintGlyphs.size());
+        for (int newGlyphId : paintGlyphs) {
+          w.writeUShort(newGlyphId);
+          paintRecordFields.add(w.reserveOffset32());
+        }
+      }
+      int layerList = -1;
+      List<Integer> layerFields = new ArrayList<Integer>();
+      Map<Integer, Integer> newLayers = new HashMap<Integer, Integer>();
+      if (!layers.isEmpty()) {
+        layerList = w.position();
+        w.patchOffset32(layerListField, 0, layerList);
+        w.writeULong(layers.size());
+        for (int layer : layers) {
+          newLayers.put(layer, newLayers.size());
+          layerFields.add(w.reserveOffset32());
+        }
+      }
+
+      Map<Integer, Integer> newOffsets = new HashMap<Integer, Integer>();
+      for (Map.Entry<Integer, Integer> node : nodes.entrySet()) {
+        int offset = node.getKey();
+        newOffsets.put(offset, w.copy(data, offset, nodeSize(offset, node.getValue())));
+      }
+      for (Map.Entry<Integer, Integer> node : nodes.entrySet()) {
+        int offset = node.getKey();
+        int newOffset = newOffsets.get(offset);
+        if (node.getValue() == PAINT) {
+          patchPaint(w, offset, newOffset, newOffsets, newLayers, paletteMap);
+        } else if (node.getValue() == COLOR_LINE || node.getValue() == VAR_COLOR_LINE) {
+          boolean variable = node.getValue() == VAR_COLOR_LINE;
+          for (int stop = 0; stop < colr.colorLineNumStops(offset); stop++) {
+            int field = ColorTable.colorStopPaletteIndexField(stop, variable);
+            w.patchUShort(newOffset + field,
+                newPaletteIndex(paletteMap, data.readUShort(offset + field)));
+          }
+        }
+      }
+      for (int i = 0; i < paintGlyphs.size(); i++) {
+        int record = colr.baseGlyphPaintRecordIndex(oldGlyphIds[paintGlyphs.get(i)]);
+        w.patchOffset32(paintRecordFields.get(i), baseGlyphList,
+            newOffsets.get(colr.baseGlyphPaintRecordPaintOffset(record)));
+      }
+      int layerIndex = 0;
+      for (int layer : layers) {
+        w.patchOffset32(layerFields.get(layerIndex++), layerList,
+            newOffsets.get(colr.layerPaintOffset(layer)));
+      }
+
+      writeClipList(w, clipListField, paintGlyphs, oldGlyphIds);
+      DeltaSetIndexMap varIndexMap = colr.varIndexMap();
+      if (varIndexMap != null) {
+        w.patchOffset32(varIndexMapField, 0, w.position());
+        w.copy(data, colr.varIndexMapOffset(), varIndexMap.size());
+      }
+      ItemVariationStore store = colr.itemVariationStore();
+      if (store != null) {
+        w.patchOffset32(itemVariationStoreField, 0, w.position());
+        w.copy(data, colr.itemVariationStoreOffset(), store.size());
+      }
+      return w;
+    }
+
+    private void patchPaint(OffsetDataWriter w, int offset, int newOffset,
+        Map<Integer, Integer> newOffsets, Map<Integer, Integer> newLayers, int[] paletteMap) {
+      int format = colr.paintFormat(offset);
+      PaintFormat paintFormat = PaintFormat.forFormat(format);
+      int[] childFields = paintFormat.childFields();
+      int[] children = colr.childPaintOffsets(offset);
+      for (int i = 0; i < children.length; i++) {
+        w.patchOffset24(newOffset + childFields[i], newOffset, newOffsets.get(children[i]));
+      }
+      if (paintFormat.colorLineField() >= 0) {
+        w.patchOffset24(newOffset + paintFormat.colorLineField(), newOffset,
+            newOffsets.get(colr.colorLineOffset(offset)));
+      }
+      if (paintFormat.transformField() >= 0) {
+        w.patchOffset24(newOffset + paintFormat.transformField(), newOffset,
+            newOffsets.get(colr.transformOffset(offset)));
+      }
+      if (paintFormat.glyphIdField() >= 0) {
+        w.patchUShort(newOffset + paintFormat.glyphIdField(),
+            inverseMap.get(colr.paintGlyphId(offset)));
+      }
+      if (paintFormat.paletteIndexField() >= 0) {
+        w.patchUShort(newOffset + paintFormat.paletteIndexField(),
+            newPaletteIndex(paletteMap, colr.paintPaletteIndex(offset)));
+      }
+      if (format == ColorTable.PAINT_COLR_LAYERS) {
+        w.patchULong(newOffset + ColorTable.FIRST_LAYER_INDEX_FIELD,
+            newLayers.get(colr.paintFirstLayerIndex(offset)));
+      }
+    }
+
+    /**
+     * Writes a clip list for the kept color glyphs that had a clip box,
+     * merging runs of consecutive glyphs sharing a box into one clip.
+     */
+    private void writeClipList(
+        OffsetDataWriter w, int clipListField, List<Integer> paintGlyphs, int[] oldGlyphIds) {
+      List<int[]> clips = new ArrayList<int[]>();
+      for (int newGlyphId : paintGlyphs) {
+        int clip = colr.clipIndex(oldGlyphIds[newGlyphId]);
+        if (clip < 0) {
+          continue;
+        }
+        int box = colr.clipBoxOffset(clip);
+        int[] last = clips.isEmpty() ? null : clips.get(clips.size() - 1);
+        if (last != null && last[1] == newGlyphId - 1 && last[2] == box) {
+          last[1] = newGlyphId;
+        } else {
+          clips.add(new int[] {newGlyphId, newGlyphId, box});
+        }
+      }
+      if (clips.isEmpty()) {
+        return;
+      }
+      ReadableFontData data = colr.readFontData();
+      int clipList = w.position();
+      w.patchOffset32(clipListField, 0, clipList);
+      w.writeByte(1);
+      w.writeULong(clips.size());
+      List<Integer> boxFields = new ArrayList<Integer>();
+      for (int[] clip : clips) {
+        w.writeUShort(clip[0]);
+        w.writeUShort(clip[1]);
+        boxFields.add(w.reserveOffset24());
+      }
+      Map<Integer, Integer> newBoxes = new HashMap<Integer, Integer>();
+      for (int i = 0; i < clips.size(); i++) {
+        int box = clips.get(i)[2];
+        Integer newBox = newBoxes.get(box);
+        if (newBox == null) {
+          newBox = w.copy(data, box, colr.clipBoxSize(box));
+          newBoxes.put(box, newBox);
+        }
+        w.patchOffset24(boxFields.get(i), clipList, newBox);
+      }
+    }
+  }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.tools.subsetter.LayoutRenumberer.Coverage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Subsetting of the contextual and chaining contextual subtables. These have
+ * the same layout in GSUB and GPOS, the lookup records only reference lookups
+ * by index and are copied unchanged.
+ */
+class ContextRuleRenumberer {
+
+  private static final int LOOKUP_RECORD_SIZE = 4;
+
+  private ContextRuleRenumberer() {
+    // static utility class
+  }
+
+  /**
+   * A rule of a rule set: the glyph or class sequences (input only for
+   * contextual rules; backtrack, input and lookahead for chaining rules) and
+   * the location of its lookup records.
+   */
+  private static final class Rule {
+    final int[][] sequences;
+    final int lookupRecords;
+    final int lookupCount;
+
+    Rule(int[][] sequences, int lookupRecords, int lookupCount) {
+      this.sequences = sequences;
+      this.lookupRecords = lookupRecords;
+      this.lookupCount = lookupCount;
+    }
+  }
+
+  /**
+   * Subsets a contextual or chaining contextual subtable.
+   *
+   * @param data the subtable
+   * @param renumberer the glyph renumberer
+   * @param chained whether this is a chaining contextual subtable
+   * @return the new subtable, or null if it can no longer match
+   */
+  static ReadableFontData subsetContext(
+      ReadableFontData data, LayoutRenumberer renumberer, boolean chained) {
+    int format = data.readUShort(0);
+    switch (format) {
+      case 1:
+        return subsetFormat1(data, renumberer, chained);
+      case 2:
+        return subsetFormat2(data, renumberer, chained);
+      case 3:
+        return chained ? subsetChainedFormat3(data, renumberer) : subsetFormat3(data, renumberer);
+      default:
+        throw new IllegalArgumentException("context format " + format + " unexpected");
+    }
+  }
+
+  private static ReadableFontData subsetFormat1(
+      ReadableFontData data, LayoutRenumberer renumberer, boolean chained) {
+    Coverage coverage = renumberer.coverage(data, data.readUShort(2));
+    List<Integer> glyphs = new ArrayList<Integer>();
+    List<List<Rule>> ruleSets = new ArrayList<List<Rule>>();
+    for (int i = 0; i < coverage.size(); i++) {
+      int ruleSet = data.readUShort(6 + 2 * coverage.indices[i]);
+      if (ruleSet == 0) {
+        continue;
+      }
+      List<Rule> rules = new ArrayList<Rule>();
+      for (Rule rule : readRuleSet(data, ruleSet, chained)) {
+        Rule renumbered = renumberRule(rule, renumberer);
+        if (renumbered != null) {
+          rules.add(renumbered);
+        }
+      }
+      if (!rules.isEmpty()) {
+        glyphs.add(coverage.glyphs[i]);
+        ruleSets.add(rules);
+      }
+    }
+    if (glyphs.isEmpty()) {
+      return null;
+    }
+
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeUShort(1);
+    int coverageField = w.reserveOffset16();
+    writeRuleSets(w, data, ruleSets, chained);
+    w.patchOffset16(coverageField, 0,
+        LayoutRenumberer.writeCoverage(w, GPosTableSubsetter.toArray(glyphs)));
+    return w.data();
+  }
+
+  private static ReadableFontData subsetFormat2(
+      ReadableFontData data, LayoutRenumberer renumberer, boolean chained) {
+    Coverage coverage = renumberer.coverage(data, data.readUShort(2));
+    if (coverage.isEmpty()) {
+      return null;
+    }
+    int classDefCount = chained ? 3 : 1;
+    int ruleSetCountOffset = 4 + 2 * classDefCount;
+    int ruleSetCount = data.readUShort(ruleSetCountOffset);
+    List<List<Rule>> ruleSets = new ArrayList<List<Rule>>();
+    for (int i = 0; i < ruleSetCount; i++) {
+      int ruleSet = data.readUShort(ruleSetCountOffset + 2 + 2 * i);
+      ruleSets.add(ruleSet == 0 ? null : readRuleSet(data, ruleSet, chained));
+    }
+
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeUShort(2);
+    int coverageField = w.reserveOffset16();
+    int[] classDefFields = new int[classDefCount];
+    for (int i = 0; i < classDefCount; i++) {
+      classDefFields[i] = w.reserveOffset16();
+    }
+    writeRuleSets(w, data, ruleSets, chained);
+    w.patchOffset16(coverageField, 0, LayoutRenumberer.writeCoverage(w, coverage.glyphs));
+    for (int i = 0; i < classDefCount; i++) {
+      int classDef = data.readUShort(4 + 2 * i);
+      if (classDef != 0) {
+        w.patchOffset16(classDefFields[i], 0, renumberer.copyClassDef(w, data, classDef));
+      }
+    }
+    return w.data();
+  }
+
+  private static ReadableFontData subsetFormat3(
+      ReadableFontData data, LayoutRenumberer renumberer) {
+    int glyphCount = data.readUShort(2);
+    int lookupCount = data.readUShort(4);
+    Coverage[] coverages = new Coverage[glyphCount];
+    for (int i = 0; i < glyphCount; i++) {
+      coverages[i] = renumberer.coverage(data, data.readUShort(6 + 2 * i));
+      if (coverages[i].isEmpty()) {
+        return null;
+      }
+    }
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeUShort(3);
+    w.writeUShort(glyphCount);
+    w.writeUShort(lookupCount);
+    int[] fields = reserveOffsets(w, glyphCount);
+    w.copy(data, 6 + 2 * glyphCount, LOOKUP_RECORD_SIZE * lookupCount);
+    writeCoverages(w, fields, coverages, 0);
+    return w.data();
+  }
+
+  private static ReadableFontData subsetChainedFormat3(
+      ReadableFontData data, LayoutRenumberer renumberer) {
+    int offset = 2;
+    Coverage[][] coverages = new Coverage[3][];
+    for (int sequence = 0; sequence < 3; sequence++) {
+      int count = data.readUShort(offset);
+      coverages[sequence] = new Coverage[count];
+      for (int i = 0; i < count; i++) {
+        coverages[sequence][i] = renumberer.coverage(data, data.readUShort(offset + 2 + 2 * i));
+        if (coverages[sequence][i].isEmpty()) {
+          return null;
+        }
+      }
+      offset += 2 + 2 * count;
+    }
+    int lookupCount = data.readUShort(offset);
+
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeUShort(3);
+    int[][] fields = new int[3][];
+    for (int sequence = 0; sequence < 3; sequence++) {
+      w.writeUShort(coverages[sequence].length);
+      fields[sequence] = reserveOffsets(w, coverages[sequence].length);
+    }
+    w.writeUShort(lookupCount);
+    w.copy(data, offset + 2, LOOKUP_RECORD_SIZE * lookupCount);
+    for (int sequence = 0; sequence < 3; sequence++) {
+      writeCoverages(w, fields[sequence], coverages[sequence], 0);
+    }
+    return w.data();
+  }
+
+  private static int[] reserveOffsets(OffsetDataWriter w, int count) {
+    int[] fields = new int[count];
+    for (int i = 0; i < count; i++) {
+      fields[i] = w.reserveOffset16();
+    }
+    return fields;
+  }
+
+  private static void writeCoverages(
+      OffsetDataWriter w, int[] fields, Coverage[] coverages, int base) {
+    for (int i = 0; i < fields.length; i++) {
+      w.patchOffset16(fields[i], base, LayoutRenumberer.writeCoverage(w, coverages[i].glyphs));
+    }
+  }
+
+  private static List<Rule> readRuleSet(ReadableFontData data, int ruleSet, boolean chained) {
+    int ruleCount = data.readUShort(ruleSet);
+    List<Rule> rules = new ArrayList<Rule>(ruleCount);
+    for (int i = 0; i < ruleCount; i++) {
+      int rule = ruleSet + data.readUShort(ruleSet + 2 + 2 * i);
+      rules.add(chained ? readChainedRule(data, rule) : readRule(data, rule));
+    }
+    return rules;
+  }
+
+  private static Rule readRule(ReadableFontData data, int offset) {
+    int glyphCount = data.readUShort(offset);
+    int lookupCount = data.readUShort(offset + 2);
+    int[] input = readArray(data, offset + 4, glyphCount - 1);
+    return new Rule(new int[][] {input}, offset + 4 + 2 * input.length, lookupCount);
+  }
+
+  private static Rule readChainedRule(ReadableFontData data, int offset) {
+    int[][] sequences = new int[3][];
+    for (int sequence = 0; sequence < 3; sequence++) {
+      int count = data.readUShort(offset);
+      // the input count includes the first glyph, which is given by the coverage
+      int length = sequence == 1 ? count - 1 : count;
+      sequences[sequence] = readArray(data, offset + 2, length);
+      offset += 2 + 2 * length;
+    }
+    return new Rule(sequences, offset + 2, data.readUShort(offset));
+  }
+
+  private static int[] readArray(ReadableFontData data, int offset, int count) {
+    int[] array = new int[Math.max(count, 0)];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = data.readUShort(offset + 2 * i);
+    }
+    return array;
+  }
+
+  /**
+   * @return the rule with its glyphs renumbered, or null if it references a
+   *         glyph that is not retained
+   */
+  private static Rule renumberRule(Rule rule, LayoutRenumberer renumberer) {
+    int[][] sequences = new int[rule.sequences.length][];
+    for (int sequence = 0; sequence < sequences.length; sequence++) {
+      sequences[sequence] = new int[rule.sequences[sequence].length];
+      for (int i = 0; i < sequences[sequence].length; i++) {
+        int glyph = renumberer.newGlyphId(rule.sequences[sequence][i]);
+        if (glyph < 0) {
+          return null;
+        }
+        sequences[sequence][i] = glyph;
+      }
+    }
+    return new Rule(sequences, rule.lookupRecords, rule.lookupCount);
+  }
+
+  /**
+   * Writes a rule set count, its offsets and the rule sets. The offsets are
+   * relative to the start of the subtable, which is at position 0. Null rule
+   * sets are written as null offsets.
+   */
+  private static void writeRuleSets(
+      OffsetDataWriter w, ReadableFontData data, List<List<Rule>> ruleSets, boolean chained) {
+    w.writeUShort(ruleSets.size());
+    int[] fields = reserveOffsets(w, ruleSets.size());
+    for (int i = 0; i < fields.length; i++) {
+      List<Rule> rules = ruleSets.get(i);
+      if (rules == null) {
+        continue;
+      }
+      int ruleSetStart = w.writeUShort(rules.size());
+      int[] ruleFields = reserveOffsets(w, rules.size());
+      for (int j = 0; j < ruleFields.length; j++) {
+        w.patchOffset16(ruleFields[j], ruleSetStart, writeRule(w, data, rules.get(j), chained));
+      }
+      w.patchOffset16(fields[i], 0, ruleSetStart);
+    }
+  }
+
+  private static int writeRule(
+      OffsetDataWriter w, ReadableFontData data, Rule rule, boolean chained) {
+    int start = w.position();
+    if (chained) {
+      for (int sequence = 0; sequence < 3; sequence++) {
+        int[] glyphs = rule.sequences[sequence];
+        w.writeUShort(sequence == 1 ? glyphs.length + 1 : glyphs.length);
+        writeArray(w, glyphs);
+      }
+      w.writeUShort(rule.lookupCount);
+    } else {
+      w.writeUShort(rule.sequences[0].length + 1);
+      w.writeUShort(rule.lookupCount);
+      writeArray(w, rule.sequences[0]);
+    }
+    w.copy(data, rule.lookupRecords, LOOKUP_RECORD_SIZE * rule.lookupCount);
+    return start;
+  }
+
+  private static void writeArray(OffsetDataWriter w, int[] array) {
+    for (int value : array) {
+      w.writeUShort(value);
+    }
+  }
+}
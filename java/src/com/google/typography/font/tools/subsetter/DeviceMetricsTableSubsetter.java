@@ -0,0 +1,91 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.table.core.HorizontalDeviceMetricsTable;
+import com.google.typography.font.sfntly.table.core.LinearThresholdTable;
+
+import java.util.List;
+
+/**
+ * Subsetter for the hdmx and LTSH tables, which hold a value per glyph for
+ * hinted rendering. The values are reordered for the new glyphs, and the
+ * maximum width of each hdmx record is recomputed. The VDMX table holds no
+ * glyph ids and its extents still bound the retained glyphs, so it is copied
+ * unchanged.
+ */
+public class DeviceMetricsTableSubsetter extends TableSubsetterImpl {
+
+  protected DeviceMetricsTableSubsetter() {
+    super(Tag.hdmx, Tag.LTSH);
+  }
+
+  @Override
+  public boolean subset(Subsetter subsetter, Font font, Font.Builder fontBuilder) {
+    List<Integer> permutationTable = subsetter.glyphMappingTable();
+    if (permutationTable == null) {
+      return false;
+    }
+    HorizontalDeviceMetricsTable hdmx = font.getTable(Tag.hdmx);
+    if (hdmx != null) {
+      fontBuilder.newTableBuilder(Tag.hdmx, subsetHdmx(hdmx, permutationTable).data());
+    }
+    LinearThresholdTable ltsh = font.getTable(Tag.LTSH);
+    if (ltsh != null) {
+      fontBuilder.newTableBuilder(Tag.LTSH, subsetLtsh(ltsh, permutationTable).data());
+    }
+    return true;
+  }
+
+  private static OffsetDataWriter subsetHdmx(
+      HorizontalDeviceMetricsTable hdmx, List<Integer> permutationTable) {
+    int numGlyphs = permutationTable.size();
+    // pixel size, maximum width and widths, padded to a multiple of 4 bytes
+    int recordSize = (2 + numGlyphs + 3) & ~3;
+
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeUShort(hdmx.version());
+    w.writeShort(hdmx.numRecords());
+    w.writeULong(recordSize);
+    for (int i = 0; i < hdmx.numRecords(); i++) {
+      w.writeByte(hdmx.pixelSize(i));
+      int maxWidthField = w.writeByte(0);
+      int maxWidth = 0;
+      for (int origGlyphId : permutationTable) {
+        int width = hdmx.width(i, origGlyphId);
+        maxWidth = Math.max(maxWidth, width);
+        w.writeByte(width);
+      }
+      w.patchByte(maxWidthField, maxWidth);
+      w.align(4);
+    }
+    return w;
+  }
+
+  private static OffsetDataWriter subsetLtsh(
+      LinearThresholdTable ltsh, List<Integer> permutationTable) {
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeUShort(ltsh.version());
+    w.writeUShort(permutationTable.size());
+    for (int origGlyphId : permutationTable) {
+      w.writeByte(ltsh.yPels(origGlyphId));
+    }
+    return w;
+  }
+}
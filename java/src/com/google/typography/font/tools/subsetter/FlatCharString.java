@@ -0,0 +1,146 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+
+import java.util.Arrays;
+
+/**
+ * A Type 2 charstring with all subroutine calls expanded, split into tokens.
+ * Each token is an operand or an operator; hintmask and cntrmask tokens
+ * include their mask bytes.
+ */
+final class FlatCharString {
+
+  /**
+   * The kinds of tokens.
+   */
+  interface Kind {
+    int OPERAND = 0;
+    int OPERATOR = 1;
+    // operators that may not be moved into a subroutine: endchar, and the mask
+    // operators whose length depends on the stem hints seen before
+    int BARRIER = 2;
+  }
+
+  private final byte[] data;
+  private final int[] starts;
+  private final int[] kinds;
+  private final int tokenCount;
+
+  private FlatCharString(byte[] data, int[] starts, int[] kinds, int tokenCount) {
+    this.data = data;
+    this.starts = starts;
+    this.kinds = kinds;
+    this.tokenCount = tokenCount;
+  }
+
+  /**
+   * Flattens a charstring.
+   *
+   * @param interpreter an interpreter set up with the subroutines of the glyph
+   * @param charString the charstring
+   * @return the charstring with the subroutine calls and returns removed
+   */
+  static FlatCharString flatten(
+      Type2CharStringInterpreter interpreter, ReadableFontData charString) {
+    Flattener flattener = new Flattener();
+    interpreter.interpret(charString, flattener);
+    return new FlatCharString(
+        flattener.data, flattener.starts, flattener.kinds, flattener.tokenCount);
+  }
+
+  int tokenCount() {
+    return this.tokenCount;
+  }
+
+  int tokenOffset(int token) {
+    return this.starts[token];
+  }
+
+  int tokenLength(int token) {
+    return this.starts[token + 1] - this.starts[token];
+  }
+
+  int tokenKind(int token) {
+    return this.kinds[token];
+  }
+
+  int length() {
+    return this.starts[this.tokenCount];
+  }
+
+  byte[] data() {
+    return this.data;
+  }
+
+  ReadableFontData toFontData() {
+    return WritableFontData.createWritableFontData(Arrays.copyOf(this.data, length()));
+  }
+
+  /**
+   * Collects the tokens reported by the interpreter. The number operand of a
+   * subroutine call has already been collected when the call is reported, and
+   * is taken back.
+   */
+  private static final class Flattener implements Type2CharStringInterpreter.Handler {
+    byte[] data = new byte[64];
+    int size;
+    // one more entry than tokens, holding the end of the last token
+    int[] starts = new int[17];
+    int[] kinds = new int[16];
+    int tokenCount;
+
+    @Override
+    public void operand(ReadableFontData src, int offset, int length) {
+      add(src, offset, length, Kind.OPERAND);
+    }
+
+    @Override
+    public void operator(ReadableFontData src, int offset, int length) {
+      int b0 = src.readUByte(offset);
+      boolean barrier = b0 == Type2CharStringInterpreter.Op.endchar
+          || b0 == Type2CharStringInterpreter.Op.hintmask
+          || b0 == Type2CharStringInterpreter.Op.cntrmask;
+      add(src, offset, length, barrier ? Kind.BARRIER : Kind.OPERATOR);
+    }
+
+    @Override
+    public void subroutine(boolean global, int index) {
+      this.tokenCount--;
+      this.size = this.starts[this.tokenCount];
+    }
+
+    private void add(ReadableFontData src, int offset, int length, int kind) {
+      if (this.size + length > this.data.length) {
+        this.data = Arrays.copyOf(this.data, Math.max(2 * this.data.length, this.size + length));
+      }
+      if (this.tokenCount + 1 == this.kinds.length) {
+        this.kinds = Arrays.copyOf(this.kinds, 2 * this.kinds.length);
+        this.starts = Arrays.copyOf(this.starts, this.kinds.length + 1);
+      }
+      src.readBytes(offset, this.data, this.size, length);
+      this.kinds[this.tokenCount] = kind;
+      this.starts[this.tokenCount] = this.size;
+      this.size += length;
+      this.tokenCount++;
+      this.starts[this.tokenCount] = this.size;
+    }
+  }
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.table.cff.CffTable;
+import com.google.typography.font.sfntly.table.color.ColorTable;
+import com.google.typography.font.sfntly.table.core.CMap;
+import com.google.typography.font.sfntly.table.core.CMap.CMapFormat;
+import com.google.typography.font.sfntly.table.core.CMapTable;
+import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
+import com.google.typography.font.sfntly.table.truetype.CompositeGlyph;
+import com.google.typography.font.sfntly.table.truetype.Glyph;
+import com.google.typography.font.sfntly.table.truetype.GlyphTable;
+import com.google.typography.font.sfntly.table.truetype.LocaTable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Cuts a font into many subsets by codepoint, as served with CSS unicode-range.
+ * The font is parsed once, and the cmap and the glyphs each glyph depends on,
+ * the components of composite glyphs and CFF accented characters and the
+ * layers of color glyphs, are
+ * looked up once for all the slices. The slices are then subset in parallel.
+ *
+ * Optionally the slices share a base slice: its codepoints, for instance the
+ * most frequent characters of the font, are taken out of every other slice.
+ * Each slice is still a complete font with the glyphs it depends on.
+ *
+ * Slices have a format 4 cmap subtable, and a format 12 subtable as well when
+ * they map supplementary plane codepoints, which only a font with a format 12
+ * subtable does.
+ */
+public class FontSlicer {
+
+  private static final int[] NO_GLYPHS = new int[0];
+
+  private final Font font;
+  private final FontFactory fontFactory;
+  private final Map<Integer, Integer> cmap = new HashMap<Integer, Integer>();
+  // the codepoints of the cmap in increasing order
+  private final int[] mappedCodepoints;
+  // the glyphs each glyph needs besides itself
+  private final int[][] dependencies;
+
+  private int threads = Runtime.getRuntime().availableProcessors();
+  private Set<Integer> baseCodepoints;
+  private Set<Integer> removeTables = new HashSet<Integer>();
+  private CffTableSubsetter.SubroutineMode cffSubroutineMode =
+      CffTableSubsetter.SubroutineMode.KEEP;
+
+  public FontSlicer(Font font, FontFactory fontFactory) {
+    this.font = font;
+    this.fontFactory = fontFactory;
+
+    CMap bestCMap = bestCMap(font);
+    if (bestCMap == null) {
+      throw new IllegalArgumentException("Font has no Unicode cmap");
+    }
+    for (int codepoint : bestCMap) {
+      int glyphId = bestCMap.glyphId(codepoint);
+      if (glyphId != CMapTable.NOTDEF) {
+        this.cmap.put(codepoint, glyphId);
+      }
+    }
+    this.mappedCodepoints = new int[this.cmap.size()];
+    int i = 0;
+    for (int codepoint : this.cmap.keySet()) {
+      this.mappedCodepoints[i++] = codepoint;
+    }
+    Arrays.sort(this.mappedCodepoints);
+    MaximumProfileTable maxp = font.getTable(Tag.maxp);
+    this.dependencies = new int[maxp.numGlyphs()][];
+    Arrays.fill(this.dependencies, NO_GLYPHS);
+    findDependencies();
+
+    this.removeTables.addAll(RenumberingSubsetter.UNRENUMBERED_TABLES);
+  }
+
+  private static CMap bestCMap(Font font) {
+    CMapTable cmapTable = font.getTable(Tag.cmap);
+    if (cmapTable == null) {
+      return null;
+    }
+    for (CMap cmap : cmapTable) {
+      if (cmap.format() == CMapFormat.Format12.value()) {
+        return cmap;
+      }
+    }
+    for (CMap cmap : cmapTable) {
+      if (cmap.format() == CMapFormat.Format4.value()) {
+        return cmap;
+      }
+    }
+    return null;
+  }
+
+  private void findDependencies() {
+    LocaTable loca = font.getTable(Tag.loca);
+    GlyphTable glyf = font.getTable(Tag.glyf);
+    ColorTable colr = font.getTable(Tag.COLR);
+    CffTable cff = font.getTable(Tag.CFF);
+    CffAccentComponents accents = cff == null ? null : new CffAccentComponents(cff);
+    for (int glyphId = 0; glyphId < dependencies.length; glyphId++) {
+      Set<Integer> needed = new LinkedHashSet<Integer>();
+      if (loca != null && glyf != null && glyphId < loca.numGlyphs()) {
+        Glyph glyph = glyf.glyph(loca.glyphOffset(glyphId), loca.glyphLength(glyphId));
+        if (glyph != null && glyph.glyphType() == Glyph.GlyphType.Composite) {
+          CompositeGlyph composite = (CompositeGlyph) glyph;
+          for (int i = 0; i < composite.numGlyphs(); i++) {
+            needed.add(composite.glyphIndex(i));
+          }
+        }
+      }
+      // CFF accented characters are drawn from a base and an accent glyph
+      if (accents != null && glyphId < cff.numGlyphs()) {
+        needed.addAll(accents.components(glyphId));
+      }
+      if (colr != null) {
+        needed.addAll(colr.layerGlyphs(glyphId));
+      }
+      if (!needed.isEmpty()) {
+        int[] glyphs = new int[needed.size()];
+        int i = 0;
+        for (int needs : needed) {
+          glyphs[i++] = needs;
+        }
+        dependencies[glyphId] = glyphs;
+      }
+    }
+  }
+
+  public Font font() {
+    return this.font;
+  }
+
+  /**
+   * Finds the codepoints of a range that the font maps to a glyph, without
+   * going through the codepoints of the range the font doesn't map.
+   *
+   * @param first the first codepoint
+   * @param last the last codepoint, inclusive
+   * @return the mapped codepoints of the range, in increasing order
+   */
+  public List<Integer> mappedCodepoints(int first, int last) {
+    int index = Arrays.binarySearch(mappedCodepoints, first);
+    if (index < 0) {
+      index = -index - 1;
+    }
+    List<Integer> codepoints = new ArrayList<Integer>();
+    for (; index < mappedCodepoints.length && mappedCodepoints[index] <= last; index++) {
+      codepoints.add(mappedCodepoints[index]);
+    }
+    return codepoints;
+  }
+
+  /**
+   * @param threads the number of slices subset at once
+   */
+  public void setThreads(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Invalid number of threads: " + threads);
+    }
+    this.threads = threads;
+  }
+
+  /**
+   * Sets the codepoints of the base slice, which are left out of the other
+   * slices.
+   *
+   * @param codepoints the codepoints, or null for no base slice
+   */
+  public void setBaseCodepoints(Collection<Integer> codepoints) {
+    this.baseCodepoints = codepoints == null ? null : new HashSet<Integer>(codepoints);
+  }
+
+  /**
+   * Sets the tables left out of the slices. By default these are the tables
+   * the renumbering subsetter does not handle: GSUB, DSIG, mort and morx.
+   */
+  public void setRemoveTables(Set<Integer> removeTables) {
+    this.removeTables = new HashSet<Integer>(removeTables);
+  }
+
+  public void setCffSubroutineMode(CffTableSubsetter.SubroutineMode mode) {
+    this.cffSubroutineMode = mode;
+  }
+
+  /**
+   * Finds the glyphs a set of codepoints needs: .notdef, the glyphs of the
+   * codepoints the font maps, and all the glyphs those depend on.
+   *
+   * @param codepoints the codepoints
+   * @return the glyph ids, in increasing order
+   */
+  public List<Integer> glyphCoverage(Collection<Integer> codepoints) {
+    boolean[] covered = new boolean[dependencies.length];
+    int[] stack = new int[dependencies.length];
+    int top = 0;
+    covered[0] = true;
+    for (int codepoint : codepoints) {
+      Integer glyphId = cmap.get(codepoint);
+      if (glyphId != null && glyphId < covered.length && !covered[glyphId]) {
+        covered[glyphId] = true;
+        stack[top++] = glyphId;
+      }
+    }
+    while (top > 0) {
+      for (int needs : dependencies[stack[--top]]) {
+        if (needs < covered.length && !covered[needs]) {
+          covered[needs] = true;
+          stack[top++] = needs;
+        }
+      }
+    }
+    List<Integer> glyphs = new ArrayList<Integer>();
+    for (int glyphId = 0; glyphId < covered.length; glyphId++) {
+      if (covered[glyphId]) {
+        glyphs.add(glyphId);
+      }
+    }
+    return glyphs;
+  }
+
+  /**
+   * Subsets the font for each slice. With a base slice, the base is the first
+   * font returned, followed by the slices in order.
+   *
+   * @param slices the codepoints of each slice
+   * @return the fonts of the slices
+   * @throws IOException if a slice cannot be subset
+   */
+  public List<Font> slice(List<? extends Collection<Integer>> slices) throws IOException {
+    List<Collection<Integer>> all = new ArrayList<Collection<Integer>>();
+    if (baseCodepoints != null) {
+      all.add(baseCodepoints);
+      for (Collection<Integer> slice : slices) {
+        Set<Integer> rest = new HashSet<Integer>(slice);
+        rest.removeAll(baseCodepoints);
+        all.add(rest);
+      }
+    } else {
+      all.addAll(slices);
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, all.size() + 1));
+    try {
+      List<Future<Font>> futures = new ArrayList<Future<Font>>();
+      for (final Collection<Integer> codepoints : all) {
+        futures.add(executor.submit(new Callable<Font>() {
+          @Override
+          public Font call() throws IOException {
+            return subset(codepoints);
+          }
+        }));
+      }
+      List<Font> fonts = new ArrayList<Font>();
+      for (Future<Font> future : futures) {
+        fonts.add(future.get());
+      }
+      return fonts;
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IOException("Unable to subset slice", e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while slicing", e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Subsets the font for a single set of codepoints, on the calling thread.
+   *
+   * @param codepoints the codepoints
+   * @return the subset font
+   * @throws IOException if the font cannot be subset
+   */
+  public Font subset(Collection<Integer> codepoints) throws IOException {
+    List<Integer> glyphs = glyphCoverage(codepoints);
+    List<CMapTable.CMapId> cmapIds = new ArrayList<CMapTable.CMapId>();
+    cmapIds.add(CMapTable.CMapId.WINDOWS_BMP);
+    cmapIds.add(CMapTable.CMapId.WINDOWS_UCS4);
+    Subsetter subsetter = new RenumberingSubsetter(font, fontFactory);
+    subsetter.setCffSubroutineMode(cffSubroutineMode);
+    subsetter.setCMaps(cmapIds, cmapIds.size());
+    subsetter.setGlyphs(glyphs);
+    subsetter.setRemoveTables(removeTables);
+    return subsetter.subset().build();
+  }
+
+  /**
+   * Cuts a list of codepoints, most frequent first, into slices of a size.
+   * The most frequent codepoints end up together in the first slices, so a
+   * typical text needs few of them.
+   *
+   * @param codepoints the codepoints, in order of decreasing frequency
+   * @param sliceSize the number of codepoints in each slice, the last may have
+   *        fewer
+   * @return the slices
+   */
+  public static List<List<Integer>> partition(List<Integer> codepoints, int sliceSize) {
+    if (sliceSize < 1) {
+      throw new IllegalArgumentException("Invalid slice size: " + sliceSize);
+    }
+    List<List<Integer>> slices = new ArrayList<List<Integer>>();
+    for (int start = 0; start < codepoints.size(); start += sliceSize) {
+      slices.add(new ArrayList<Integer>(
+          codepoints.subList(start, Math.min(codepoints.size(), start + sliceSize))));
+    }
+    return slices;
+  }
+
+  /**
+   * @param first the first codepoint
+   * @param last the last codepoint, inclusive
+   * @return the codepoints of the range
+   */
+  public static List<Integer> range(int first, int last) {
+    List<Integer> codepoints = new ArrayList<Integer>();
+    for (int codepoint = first; codepoint <= last; codepoint++) {
+      codepoints.add(codepoint);
+    }
+    return codepoints;
+  }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.opentype.GDefTable;
+import com.google.typography.font.tools.subsetter.LayoutRenumberer.Coverage;
+import com.google.typography.font.tools.subsetter.LayoutRenumberer.DeferredSubTables;
+
+import java.util.List;
+
+/**
+ * Subsetter for the GDEF table.
+ *
+ * The glyph and mark attachment class definitions, the attachment point list,
+ * the ligature caret list and the mark glyph sets are renumbered for the
+ * retained glyphs. The version of the table is kept; the item variation store
+ * doesn't reference glyphs and is copied unchanged.
+ */
+public class GDefTableSubsetter extends TableSubsetterImpl {
+
+  protected GDefTableSubsetter() {
+    super(Tag.GDEF);
+  }
+
+  @Override
+  public boolean subset(Subsetter subsetter, Font font, Font.Builder fontBuilder) {
+    List<Integer> permutationTable = subsetter.glyphMappingTable();
+    GDefTable gdef = font.getTable(Tag.GDEF);
+    if (permutationTable == null || gdef == null) {
+      return false;
+    }
+    LayoutRenumberer renumberer = new LayoutRenumberer(subsetter.getInverseMapping());
+    ReadableFontData data = gdef.readFontData();
+
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeULong(gdef.version());
+    int glyphClassDefField = w.reserveOffset16();
+    int attachListField = w.reserveOffset16();
+    int ligCaretListField = w.reserveOffset16();
+    int markAttachClassDefField = w.reserveOffset16();
+    int markGlyphSetsDefField = -1;
+    int itemVarStoreField = -1;
+    if (gdef.version() >= GDefTable.VERSION_1_2) {
+      markGlyphSetsDefField = w.reserveOffset16();
+    }
+    if (gdef.version() >= GDefTable.VERSION_1_3) {
+      itemVarStoreField = w.reserveOffset32();
+    }
+
+    if (gdef.glyphClassDefOffset() != 0) {
+      w.patchOffset16(glyphClassDefField, 0,
+          renumberer.copyClassDef(w, data, gdef.glyphClassDefOffset()));
+    }
+    if (gdef.attachListOffset() != 0) {
+      int attachList = subsetAttachList(w, data, gdef.attachListOffset(), renumberer);
+      if (attachList >= 0) {
+        w.patchOffset16(attachListField, 0, attachList);
+      }
+    }
+    if (gdef.ligCaretListOffset() != 0) {
+      int ligCaretList = subsetLigCaretList(w, data, gdef.ligCaretListOffset(), renumberer);
+      if (ligCaretList >= 0) {
+        w.patchOffset16(ligCaretListField, 0, ligCaretList);
+      }
+    }
+    if (gdef.markAttachClassDefOffset() != 0) {
+      w.patchOffset16(markAttachClassDefField, 0,
+          renumberer.copyClassDef(w, data, gdef.markAttachClassDefOffset()));
+    }
+    if (markGlyphSetsDefField >= 0 && gdef.markGlyphSetsDefOffset() != 0) {
+      w.patchOffset16(markGlyphSetsDefField, 0,
+          subsetMarkGlyphSets(w, data, gdef.markGlyphSetsDefOffset(), renumberer));
+    }
+    if (itemVarStoreField >= 0 && gdef.itemVarStoreOffset() != 0) {
+      int offset = gdef.itemVarStoreOffset();
+      w.align(2);
+      w.patchOffset32(itemVarStoreField, 0,
+          w.copy(data, offset, LayoutRenumberer.itemVariationStoreLength(data, offset)));
+    }
+    fontBuilder.newTableBuilder(Tag.GDEF, w.data());
+    return true;
+  }
+
+  /**
+   * @return the position of the new attachment point list, or -1 if none of
+   *         its glyphs is retained
+   */
+  private static int subsetAttachList(
+      OffsetDataWriter w, ReadableFontData data, int offset, LayoutRenumberer renumberer) {
+    Coverage coverage = renumberer.coverage(data, offset + data.readUShort(offset));
+    if (coverage.isEmpty()) {
+      return -1;
+    }
+    int start = w.reserveOffset16();
+    w.writeUShort(coverage.size());
+    int[] pointFields = new int[coverage.size()];
+    for (int i = 0; i < pointFields.length; i++) {
+      pointFields[i] = w.reserveOffset16();
+    }
+    for (int i = 0; i < pointFields.length; i++) {
+      int attachPoint = offset + data.readUShort(offset + 4 + 2 * coverage.indices[i]);
+      int pointCount = data.readUShort(attachPoint);
+      w.patchOffset16(pointFields[i], start, w.copy(data, attachPoint, 2 + 2 * pointCount));
+    }
+    w.patchOffset16(start, start, LayoutRenumberer.writeCoverage(w, coverage.glyphs));
+    return start;
+  }
+
+  /**
+   * @return the position of the new ligature caret list, or -1 if none of its
+   *         glyphs is retained
+   */
+  private static int subsetLigCaretList(
+      OffsetDataWriter w, ReadableFontData data, int offset, LayoutRenumberer renumberer) {
+    Coverage coverage = renumberer.coverage(data, offset + data.readUShort(offset));
+    if (coverage.isEmpty()) {
+      return -1;
+    }
+    int start = w.reserveOffset16();
+    w.writeUShort(coverage.size());
+    int[] ligGlyphFields = new int[coverage.size()];
+    for (int i = 0; i < ligGlyphFields.length; i++) {
+      ligGlyphFields[i] = w.reserveOffset16();
+    }
+    for (int i = 0; i < ligGlyphFields.length; i++) {
+      int ligGlyph = offset + data.readUShort(offset + 4 + 2 * coverage.indices[i]);
+      int caretCount = data.readUShort(ligGlyph);
+      int ligGlyphStart = w.writeUShort(caretCount);
+      int[] caretFields = new int[caretCount];
+      for (int j = 0; j < caretCount; j++) {
+        caretFields[j] = w.reserveOffset16();
+      }
+      for (int j = 0; j < caretCount; j++) {
+        int caret = ligGlyph + data.readUShort(ligGlyph + 2 + 2 * j);
+        w.patchOffset16(caretFields[j], ligGlyphStart, copyCaretValue(w, data, caret));
+      }
+      w.patchOffset16(ligGlyphFields[i], start, ligGlyphStart);
+    }
+    w.patchOffset16(start, start, LayoutRenumberer.writeCoverage(w, coverage.glyphs));
+    return start;
+  }
+
+  private static int copyCaretValue(OffsetDataWriter w, ReadableFontData data, int offset) {
+    int format = data.readUShort(offset);
+    switch (format) {
+      case 1:
+      case 2:
+        return w.copy(data, offset, 4);
+      case 3:
+        int start = w.writeUShort(format);
+        w.writeShort(data.readShort(offset + 2));
+        DeferredSubTables devices = DeferredSubTables.devices(offset, start);
+        devices.writeOffset(w, data.readUShort(offset + 4));
+        devices.place(w, data);
+        return start;
+      default:
+        throw new IllegalArgumentException("caret value format " + format + " unexpected");
+    }
+  }
+
+  /**
+   * Renumbers the mark glyph sets. All sets are kept, even if empty, since
+   * lookups reference them by index.
+   */
+  private static int subsetMarkGlyphSets(
+      OffsetDataWriter w, ReadableFontData data, int offset, LayoutRenumberer renumberer) {
+    int count = data.readUShort(offset + 2);
+    int start = w.writeUShort(data.readUShort(offset));
+    w.writeUShort(count);
+    int[] coverageFields = new int[count];
+    for (int i = 0; i < count; i++) {
+      coverageFields[i] = w.reserveOffset32();
+    }
+    for (int i = 0; i < count; i++) {
+      int coverage = offset + data.readULongAsInt(offset + 4 + 4 * i);
+      w.patchOffset32(coverageFields[i], start, renumberer.copyCoverage(w, data, coverage));
+    }
+    return start;
+  }
+}
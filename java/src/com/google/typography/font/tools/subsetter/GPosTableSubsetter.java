@@ -0,0 +1,504 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.opentype.GPosTable;
+import com.google.typography.font.sfntly.table.opentype.GposLookupListTable;
+import com.google.typography.font.sfntly.table.opentype.GposLookupTable;
+import com.google.typography.font.sfntly.table.opentype.component.GposLookupType;
+import com.google.typography.font.tools.subsetter.LayoutRenumberer.Coverage;
+import com.google.typography.font.tools.subsetter.LayoutRenumberer.DeferredSubTables;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+/**
+ * Subsetter for the GPOS table.
+ *
+ * The script and feature lists are copied and every lookup is kept, so that
+ * the lookup indices used by features and contextual lookups stay valid. The
+ * subtables of each lookup are rewritten for the retained glyphs: positioning
+ * records of glyphs that are not retained are removed, unused pair and mark
+ * classes are dropped, and subtables that no longer cover any glyph are left
+ * out of their lookup. A FeatureVariations table is not carried over.
+ */
+public class GPosTableSubsetter extends TableSubsetterImpl {
+
+  private static final Logger logger =
+      Logger.getLogger(GPosTableSubsetter.class.getCanonicalName());
+
+  private static final int VERSION_1_0 = 0x00010000;
+
+  private interface Offset {
+    int scriptList = 4;
+    int featureList = 6;
+    int lookupList = 8;
+  }
+
+  protected GPosTableSubsetter() {
+    super(Tag.GPOS);
+  }
+
+  @Override
+  public boolean subset(Subsetter subsetter, Font font, Font.Builder fontBuilder) {
+    List<Integer> permutationTable = subsetter.glyphMappingTable();
+    GPosTable gpos = font.getTable(Tag.GPOS);
+    if (permutationTable == null || gpos == null) {
+      return false;
+    }
+    LayoutRenumberer renumberer = new LayoutRenumberer(subsetter.getInverseMapping());
+    List<SubsetLookup> lookups = subsetLookups(gpos.lookupList(), renumberer);
+    WritableFontData data;
+    try {
+      data = serialize(gpos.readFontData(), lookups, false);
+    } catch (OffsetOverflowException e) {
+      // some lookup doesn't fit in 16 bit offsets; move all subtables out of reach
+      data = serialize(gpos.readFontData(), lookups, true);
+    }
+    fontBuilder.newTableBuilder(Tag.GPOS, data);
+    return true;
+  }
+
+  /**
+   * A lookup with its subtables already subset and serialized.
+   */
+  private static final class SubsetLookup {
+    int lookupType;
+    int lookupFlag;
+    int markFilteringSet;
+    boolean extension;
+    final List<ReadableFontData> subTables = new ArrayList<ReadableFontData>();
+  }
+
+  private static List<SubsetLookup> subsetLookups(
+      GposLookupListTable lookupList, LayoutRenumberer renumberer) {
+    List<SubsetLookup> lookups = new ArrayList<SubsetLookup>();
+    for (int i = 0; i < lookupList.lookupCount(); i++) {
+      GposLookupTable lookup = lookupList.lookup(i);
+      SubsetLookup subsetLookup = new SubsetLookup();
+      subsetLookup.lookupType = lookup.lookupTypeNum();
+      subsetLookup.lookupFlag = lookup.lookupFlag();
+      subsetLookup.markFilteringSet = lookup.markFilteringSet();
+      subsetLookup.extension =
+          lookup.lookupTypeNum() == GposLookupType.GPOS_EXTENSION.typeNum();
+      for (int j = 0; j < lookup.subTableCount(); j++) {
+        int type = lookup.subTableTypeNum(j);
+        subsetLookup.lookupType = type;
+        ReadableFontData subTable =
+            subsetSubTable(type, lookup.resolvedSubTableData(j), renumberer);
+        if (subTable != null) {
+          subsetLookup.subTables.add(subTable);
+        }
+      }
+      lookups.add(subsetLookup);
+    }
+    return lookups;
+  }
+
+  private static WritableFontData serialize(
+      ReadableFontData source, List<SubsetLookup> lookups, boolean allExtensions) {
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeULong(VERSION_1_0);
+    int scriptListField = w.reserveOffset16();
+    int featureListField = w.reserveOffset16();
+    int lookupListField = w.reserveOffset16();
+    w.patchOffset16(scriptListField, 0,
+        LayoutRenumberer.copyScriptList(w, source, source.readUShort(Offset.scriptList)));
+    w.patchOffset16(featureListField, 0,
+        LayoutRenumberer.copyFeatureList(w, source, source.readUShort(Offset.featureList)));
+
+    int lookupListStart = w.writeUShort(lookups.size());
+    w.patchOffset16(lookupListField, 0, lookupListStart);
+    int[] lookupFields = new int[lookups.size()];
+    for (int i = 0; i < lookups.size(); i++) {
+      lookupFields[i] = w.reserveOffset16();
+    }
+    List<Integer> extensionFields = new ArrayList<Integer>();
+    List<ReadableFontData> extensionSubTables = new ArrayList<ReadableFontData>();
+    for (int i = 0; i < lookups.size(); i++) {
+      SubsetLookup lookup = lookups.get(i);
+      boolean extension = lookup.extension || allExtensions;
+      int lookupStart = w.writeUShort(
+          extension ? GposLookupType.GPOS_EXTENSION.typeNum() : lookup.lookupType);
+      w.patchOffset16(lookupFields[i], lookupListStart, lookupStart);
+      w.writeUShort(lookup.lookupFlag);
+      w.writeUShort(lookup.subTables.size());
+      int[] subTableFields = new int[lookup.subTables.size()];
+      for (int j = 0; j < subTableFields.length; j++) {
+        subTableFields[j] = w.reserveOffset16();
+      }
+      if (lookup.markFilteringSet >= 0) {
+        w.writeUShort(lookup.markFilteringSet);
+      }
+      for (int j = 0; j < subTableFields.length; j++) {
+        if (extension) {
+          int extensionStart = w.writeUShort(1);
+          w.writeUShort(lookup.lookupType);
+          extensionFields.add(w.reserveOffset32());
+          extensionSubTables.add(lookup.subTables.get(j));
+          w.patchOffset16(subTableFields[j], lookupStart, extensionStart);
+        } else {
+          w.patchOffset16(subTableFields[j], lookupStart, w.copy(lookup.subTables.get(j)));
+        }
+      }
+    }
+    for (int i = 0; i < extensionFields.size(); i++) {
+      int field = extensionFields.get(i);
+      // the offset is relative to the extension subtable, which starts 4 bytes before
+      w.patchOffset32(field, field - 4, w.copy(extensionSubTables.get(i)));
+    }
+    return w.data();
+  }
+
+  /**
+   * Subsets a positioning subtable.
+   *
+   * @param type the lookup type of the subtable
+   * @param data the subtable
+   * @param renumberer the glyph renumberer
+   * @return the new subtable, or null if no glyph covered by the subtable is
+   *         retained
+   */
+  static ReadableFontData subsetSubTable(
+      int type, ReadableFontData data, LayoutRenumberer renumberer) {
+    GposLookupType lookupType = GposLookupType.forTypeNum(type);
+    if (lookupType == null) {
+      return null;
+    }
+    switch (lookupType) {
+      case GPOS_SINGLE:
+        return subsetSinglePos(data, renumberer);
+      case GPOS_PAIR:
+        return data.readUShort(0) == 1
+            ? subsetPairPosFormat1(data, renumberer) : subsetPairPosFormat2(data, renumberer);
+      case GPOS_CURSIVE:
+        return subsetCursivePos(data, renumberer);
+      case GPOS_MARK_TO_BASE:
+      case GPOS_MARK_TO_MARK:
+        return subsetMarkAttachPos(data, renumberer, false);
+      case GPOS_MARK_TO_LIGATURE:
+        return subsetMarkAttachPos(data, renumberer, true);
+      case GPOS_CONTEXTUAL:
+        return ContextRuleRenumberer.subsetContext(data, renumberer, false);
+      case GPOS_CHAINING_CONTEXTUAL:
+        return ContextRuleRenumberer.subsetContext(data, renumberer, true);
+      default:
+        logger.warning("Unexpected GPOS subtable of type " + lookupType);
+        return null;
+    }
+  }
+
+  private static ReadableFontData subsetSinglePos(
+      ReadableFontData data, LayoutRenumberer renumberer) {
+    int format = data.readUShort(0);
+    Coverage coverage = renumberer.coverage(data, data.readUShort(2));
+    if (coverage.isEmpty()) {
+      return null;
+    }
+    int valueFormat = data.readUShort(4);
+    int valueSize = LayoutRenumberer.valueRecordSize(valueFormat);
+
+    OffsetDataWriter w = new OffsetDataWriter();
+    DeferredSubTables devices = DeferredSubTables.devices(0, 0);
+    w.writeUShort(format);
+    int coverageField = w.reserveOffset16();
+    w.writeUShort(valueFormat);
+    if (format == 1) {
+      LayoutRenumberer.copyValueRecord(w, data, 6, valueFormat, devices);
+    } else if (format == 2) {
+      w.writeUShort(coverage.size());
+      for (int index : coverage.indices) {
+        LayoutRenumberer.copyValueRecord(w, data, 8 + index * valueSize, valueFormat, devices);
+      }
+    } else {
+      throw new IllegalArgumentException("single pos format " + format + " unexpected");
+    }
+    w.patchOffset16(coverageField, 0, LayoutRenumberer.writeCoverage(w, coverage.glyphs));
+    devices.place(w, data);
+    return w.data();
+  }
+
+  private static final Comparator<int[]> FIRST_ELEMENT_COMPARATOR = new Comparator<int[]>() {
+    @Override
+    public int compare(int[] a, int[] b) {
+      return a[0] - b[0];
+    }
+  };
+
+  private static ReadableFontData subsetPairPosFormat1(
+      ReadableFontData data, LayoutRenumberer renumberer) {
+    Coverage coverage = renumberer.coverage(data, data.readUShort(2));
+    int valueFormat1 = data.readUShort(4);
+    int valueFormat2 = data.readUShort(6);
+    int valueSize1 = LayoutRenumberer.valueRecordSize(valueFormat1);
+    int recordSize = 2 + valueSize1 + LayoutRenumberer.valueRecordSize(valueFormat2);
+
+    // for each retained first glyph, its retained pairs as {second glyph, record offset}
+    List<Integer> firstGlyphs = new ArrayList<Integer>();
+    List<int[][]> pairSets = new ArrayList<int[][]>();
+    for (int i = 0; i < coverage.size(); i++) {
+      int pairSet = data.readUShort(10 + 2 * coverage.indices[i]);
+      int pairCount = data.readUShort(pairSet);
+      List<int[]> pairs = new ArrayList<int[]>();
+      for (int j = 0; j < pairCount; j++) {
+        int record = pairSet + 2 + j * recordSize;
+        int secondGlyph = renumberer.newGlyphId(data.readUShort(record));
+        if (secondGlyph >= 0) {
+          pairs.add(new int[] {secondGlyph, record});
+        }
+      }
+      if (!pairs.isEmpty()) {
+        int[][] sorted = pairs.toArray(new int[pairs.size()][]);
+        Arrays.sort(sorted, FIRST_ELEMENT_COMPARATOR);
+        firstGlyphs.add(coverage.glyphs[i]);
+        pairSets.add(sorted);
+      }
+    }
+    if (firstGlyphs.isEmpty()) {
+      return null;
+    }
+
+    OffsetDataWriter w = new OffsetDataWriter();
+    DeferredSubTables devices = DeferredSubTables.devices(0, 0);
+    w.writeUShort(1);
+    int coverageField = w.reserveOffset16();
+    w.writeUShort(valueFormat1);
+    w.writeUShort(valueFormat2);
+    w.writeUShort(pairSets.size());
+    int[] pairSetFields = new int[pairSets.size()];
+    for (int i = 0; i < pairSetFields.length; i++) {
+      pairSetFields[i] = w.reserveOffset16();
+    }
+    for (int i = 0; i < pairSetFields.length; i++) {
+      int[][] pairs = pairSets.get(i);
+      w.patchOffset16(pairSetFields[i], 0, w.writeUShort(pairs.length));
+      for (int[] pair : pairs) {
+        w.writeUShort(pair[0]);
+        LayoutRenumberer.copyValueRecord(w, data, pair[1] + 2, valueFormat1, devices);
+        LayoutRenumberer.copyValueRecord(
+            w, data, pair[1] + 2 + valueSize1, valueFormat2, devices);
+      }
+    }
+    w.patchOffset16(coverageField, 0, LayoutRenumberer.writeCoverage(w, toArray(firstGlyphs)));
+    devices.place(w, data);
+    return w.data();
+  }
+
+  private static ReadableFontData subsetPairPosFormat2(
+      ReadableFontData data, LayoutRenumberer renumberer) {
+    Coverage coverage = renumberer.coverage(data, data.readUShort(2));
+    if (coverage.isEmpty()) {
+      return null;
+    }
+    int valueFormat1 = data.readUShort(4);
+    int valueFormat2 = data.readUShort(6);
+    SortedMap<Integer, Integer> classDef1 = renumberer.classDef(data, data.readUShort(8));
+    SortedMap<Integer, Integer> classDef2 = renumberer.classDef(data, data.readUShort(10));
+    int class1Count = data.readUShort(12);
+    int class2Count = data.readUShort(14);
+    int valueSize1 = LayoutRenumberer.valueRecordSize(valueFormat1);
+    int recordSize = valueSize1 + LayoutRenumberer.valueRecordSize(valueFormat2);
+
+    // keep only the classes of retained glyphs; class 0 always stays class 0
+    SortedMap<Integer, Integer> newClassDef1 = new TreeMap<Integer, Integer>();
+    for (int glyph : coverage.glyphs) {
+      Integer glyphClass = classDef1.get(glyph);
+      if (glyphClass != null) {
+        newClassDef1.put(glyph, glyphClass);
+      }
+    }
+    int[] oldClasses1 = compactClasses(newClassDef1, class1Count);
+    int[] oldClasses2 = compactClasses(classDef2, class2Count);
+
+    OffsetDataWriter w = new OffsetDataWriter();
+    DeferredSubTables devices = DeferredSubTables.devices(0, 0);
+    w.writeUShort(2);
+    int coverageField = w.reserveOffset16();
+    w.writeUShort(valueFormat1);
+    w.writeUShort(valueFormat2);
+    int classDef1Field = w.reserveOffset16();
+    int classDef2Field = w.reserveOffset16();
+    w.writeUShort(oldClasses1.length);
+    w.writeUShort(oldClasses2.length);
+    for (int class1 : oldClasses1) {
+      for (int class2 : oldClasses2) {
+        int record = 16 + (class1 * class2Count + class2) * recordSize;
+        LayoutRenumberer.copyValueRecord(w, data, record, valueFormat1, devices);
+        LayoutRenumberer.copyValueRecord(w, data, record + valueSize1, valueFormat2, devices);
+      }
+    }
+    w.patchOffset16(coverageField, 0, LayoutRenumberer.writeCoverage(w, coverage.glyphs));
+    w.patchOffset16(classDef1Field, 0, LayoutRenumberer.writeClassDef(w, newClassDef1));
+    w.patchOffset16(classDef2Field, 0, LayoutRenumberer.writeClassDef(w, classDef2));
+    devices.place(w, data);
+    return w.data();
+  }
+
+  /**
+   * Renumbers the classes in use so that they are consecutive, keeping their
+   * order and class 0.
+   *
+   * @param classes the class definitions, which are updated in place
+   * @param classCount the number of classes before compacting
+   * @return the old class for each new class
+   */
+  private static int[] compactClasses(SortedMap<Integer, Integer> classes, int classCount) {
+    boolean[] used = new boolean[classCount];
+    used[0] = true;
+    for (int glyphClass : classes.values()) {
+      used[glyphClass] = true;
+    }
+    int[] newClasses = new int[classCount];
+    List<Integer> oldClasses = new ArrayList<Integer>();
+    for (int i = 0; i < classCount; i++) {
+      if (used[i]) {
+        newClasses[i] = oldClasses.size();
+        oldClasses.add(i);
+      }
+    }
+    for (SortedMap.Entry<Integer, Integer> entry : classes.entrySet()) {
+      entry.setValue(newClasses[entry.getValue()]);
+    }
+    return toArray(oldClasses);
+  }
+
+  private static ReadableFontData subsetCursivePos(
+      ReadableFontData data, LayoutRenumberer renumberer) {
+    Coverage coverage = renumberer.coverage(data, data.readUShort(2));
+    if (coverage.isEmpty()) {
+      return null;
+    }
+    OffsetDataWriter w = new OffsetDataWriter();
+    DeferredSubTables anchors = DeferredSubTables.anchors(0, 0);
+    w.writeUShort(1);
+    int coverageField = w.reserveOffset16();
+    w.writeUShort(coverage.size());
+    for (int index : coverage.indices) {
+      int record = 6 + 4 * index;
+      anchors.writeOffset(w, data.readUShort(record));
+      anchors.writeOffset(w, data.readUShort(record + 2));
+    }
+    w.patchOffset16(coverageField, 0, LayoutRenumberer.writeCoverage(w, coverage.glyphs));
+    anchors.place(w, data);
+    return w.data();
+  }
+
+  /**
+   * Subsets a mark-to-base, mark-to-mark or mark-to-ligature subtable. The
+   * first two share their layout; for ligatures each base record is replaced
+   * by a ligature attach table with a record per component.
+   */
+  private static ReadableFontData subsetMarkAttachPos(
+      ReadableFontData data, LayoutRenumberer renumberer, boolean ligature) {
+    Coverage markCoverage = renumberer.coverage(data, data.readUShort(2));
+    Coverage baseCoverage = renumberer.coverage(data, data.readUShort(4));
+    if (markCoverage.isEmpty() || baseCoverage.isEmpty()) {
+      return null;
+    }
+    int classCount = data.readUShort(6);
+    int markArray = data.readUShort(8);
+    int baseArray = data.readUShort(10);
+
+    // keep only the mark classes of retained marks
+    boolean[] used = new boolean[classCount];
+    for (int index : markCoverage.indices) {
+      used[data.readUShort(markArray + 2 + 4 * index)] = true;
+    }
+    int[] newClasses = new int[classCount];
+    List<Integer> oldClasses = new ArrayList<Integer>();
+    for (int i = 0; i < classCount; i++) {
+      if (used[i]) {
+        newClasses[i] = oldClasses.size();
+        oldClasses.add(i);
+      }
+    }
+
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeUShort(1);
+    int markCoverageField = w.reserveOffset16();
+    int baseCoverageField = w.reserveOffset16();
+    w.writeUShort(oldClasses.size());
+    int markArrayField = w.reserveOffset16();
+    int baseArrayField = w.reserveOffset16();
+
+    int markArrayStart = w.writeUShort(markCoverage.size());
+    DeferredSubTables markAnchors = DeferredSubTables.anchors(markArray, markArrayStart);
+    for (int index : markCoverage.indices) {
+      int record = markArray + 2 + 4 * index;
+      w.writeUShort(newClasses[data.readUShort(record)]);
+      markAnchors.writeOffset(w, data.readUShort(record + 2));
+    }
+    markAnchors.place(w, data);
+    w.patchOffset16(markArrayField, 0, markArrayStart);
+
+    int baseArrayStart = w.writeUShort(baseCoverage.size());
+    if (ligature) {
+      int[] attachFields = new int[baseCoverage.size()];
+      for (int i = 0; i < attachFields.length; i++) {
+        attachFields[i] = w.reserveOffset16();
+      }
+      for (int i = 0; i < attachFields.length; i++) {
+        int attach = baseArray + data.readUShort(baseArray + 2 + 2 * baseCoverage.indices[i]);
+        int componentCount = data.readUShort(attach);
+        int attachStart = w.writeUShort(componentCount);
+        DeferredSubTables anchors = DeferredSubTables.anchors(attach, attachStart);
+        for (int component = 0; component < componentCount; component++) {
+          writeAnchorRecord(w, data, attach + 2 + 2 * classCount * component, oldClasses, anchors);
+        }
+        anchors.place(w, data);
+        w.patchOffset16(attachFields[i], baseArrayStart, attachStart);
+      }
+    } else {
+      DeferredSubTables anchors = DeferredSubTables.anchors(baseArray, baseArrayStart);
+      for (int index : baseCoverage.indices) {
+        writeAnchorRecord(w, data, baseArray + 2 + 2 * classCount * index, oldClasses, anchors);
+      }
+      anchors.place(w, data);
+    }
+    w.patchOffset16(baseArrayField, 0, baseArrayStart);
+
+    w.patchOffset16(markCoverageField, 0,
+        LayoutRenumberer.writeCoverage(w, markCoverage.glyphs));
+    w.patchOffset16(baseCoverageField, 0,
+        LayoutRenumberer.writeCoverage(w, baseCoverage.glyphs));
+    return w.data();
+  }
+
+  private static void writeAnchorRecord(OffsetDataWriter w, ReadableFontData data, int record,
+      List<Integer> oldClasses, DeferredSubTables anchors) {
+    for (int oldClass : oldClasses) {
+      anchors.writeOffset(w, data.readUShort(record + 2 * oldClass));
+    }
+  }
+
+  static int[] toArray(List<Integer> list) {
+    int[] array = new int[list.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = list.get(i);
+    }
+    return array;
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.variations.DeltaSetIndexMap;
+import com.google.typography.font.sfntly.table.variations.ItemVariationStore;
+
+import java.util.List;
+
+/**
+ * Subsetter for the HVAR and VVAR tables.
+ *
+ * The item variation store doesn't reference glyphs and is copied unchanged.
+ * The delta-set index maps are rebuilt for the new glyph ids; an advance
+ * mapping is created when the original table indexed the store directly by
+ * glyph id, since that no longer holds once glyphs are renumbered.
+ */
+public class GlyphMetricsVariationsTableSubsetter extends TableSubsetterImpl {
+
+  private interface Offset {
+    int majorVersion = 0;
+    int minorVersion = 2;
+    int itemVariationStoreOffset = 4;
+    int mappingOffsets = 8;
+  }
+
+  private static final int MAX_MAP_COUNT_FORMAT_0 = 0xffff;
+
+  private final int tag;
+  // HVAR: advance, lsb and rsb; VVAR: advance, tsb, bsb and vertical origin
+  private final int mappingCount;
+
+  protected GlyphMetricsVariationsTableSubsetter(int tag) {
+    super(tag);
+    this.tag = tag;
+    this.mappingCount = tag == Tag.VVAR ? 4 : 3;
+  }
+
+  @Override
+  public boolean subset(Subsetter subsetter, Font font, Font.Builder fontBuilder) {
+    List<Integer> permutationTable = subsetter.glyphMappingTable();
+    Table table = font.getTable(this.tag);
+    if (permutationTable == null || table == null) {
+      return false;
+    }
+    ReadableFontData data = table.readFontData();
+    int storeOffset = data.readULongAsInt(Offset.itemVariationStoreOffset);
+    ReadableFontData store = data.slice(storeOffset);
+    store = store.slice(0, new ItemVariationStore(store).size());
+
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeUShort(data.readUShort(Offset.majorVersion));
+    w.writeUShort(data.readUShort(Offset.minorVersion));
+    int storeField = w.reserveOffset32();
+    int[] mappingFields = new int[this.mappingCount];
+    for (int i = 0; i < this.mappingCount; i++) {
+      mappingFields[i] = w.reserveOffset32();
+    }
+    w.patchOffset32(storeField, 0, w.copy(store));
+
+    for (int i = 0; i < this.mappingCount; i++) {
+      int mappingOffset = data.readULongAsInt(Offset.mappingOffsets + 4 * i);
+      if (mappingOffset == 0 && i != 0) {
+        continue;
+      }
+      // without an advance mapping the inner index is the glyph id
+      DeltaSetIndexMap mapping =
+          mappingOffset == 0 ? null : new DeltaSetIndexMap(data.slice(mappingOffset));
+      int[] outer = new int[permutationTable.size()];
+      int[] inner = new int[permutationTable.size()];
+      for (int glyphId = 0; glyphId < outer.length; glyphId++) {
+        int oldGlyphId = permutationTable.get(glyphId);
+        outer[glyphId] = mapping == null ? 0 : mapping.outerIndex(oldGlyphId);
+        inner[glyphId] = mapping == null ? oldGlyphId : mapping.innerIndex(oldGlyphId);
+      }
+      w.patchOffset32(mappingFields[i], 0, writeMapping(w, outer, inner));
+    }
+    fontBuilder.newTableBuilder(this.tag, w.data());
+    return true;
+  }
+
+  /**
+   * Writes a delta-set index map with the smallest entries that hold the
+   * indices. Trailing entries equal to the one before them are left out, since
+   * the last entry of a map applies to all glyphs after it.
+   *
+   * @return the position of the map
+   */
+  static int writeMapping(OffsetDataWriter w, int[] outer, int[] inner) {
+    int count = outer.length;
+    while (count > 1
+        && outer[count - 1] == outer[count - 2] && inner[count - 1] == inner[count - 2]) {
+      count--;
+    }
+    int maxOuter = 0;
+    int maxInner = 0;
+    for (int i = 0; i < count; i++) {
+      maxOuter = Math.max(maxOuter, outer[i]);
+      maxInner = Math.max(maxInner, inner[i]);
+    }
+    int innerBitCount = Math.max(1, 32 - Integer.numberOfLeadingZeros(maxInner));
+    int outerBitCount = 32 - Integer.numberOfLeadingZeros(maxOuter);
+    int entrySize = Math.max(1, (innerBitCount + outerBitCount + 7) / 8);
+
+    int start;
+    if (count <= MAX_MAP_COUNT_FORMAT_0) {
+      start = w.writeByte(0);
+      w.writeByte(((entrySize - 1) << 4) | (innerBitCount - 1));
+      w.writeUShort(count);
+    } else {
+      start = w.writeByte(1);
+      w.writeByte(((entrySize - 1) << 4) | (innerBitCount - 1));
+      w.writeULong(count);
+    }
+    for (int i = 0; i < count; i++) {
+      int entry = (outer[i] << innerBitCount) | inner[i];
+      for (int b = entrySize - 1; b >= 0; b--) {
+        w.writeByte(entry >>> (8 * b));
+      }
+    }
+    return start;
+  }
+}
@@ -57,6 +57,19 @@ public class GlyphTableSubsetter extends TableSubsetterImpl {
 
     GlyphTable glyphTable = font.getTable(Tag.glyf);
     LocaTable locaTable = font.getTable(Tag.loca);
+    if (glyphTable == null && locaTable == null && font.hasTable(Tag.CFF)) {
+      // PostScript outlines, handled by the CFF table subsetter
+      return false;
+    }
+    if (glyphTable == null && locaTable == null
+        && (font.hasTable(Tag.CBDT) || font.hasTable(Tag.EBDT))) {
+      // bitmap only, handled by the bitmap table subsetters; the glyph count
+      // still changes
+      MaximumProfileTable.Builder maxpBuilder =
+          (MaximumProfileTable.Builder) fontBuilder.getTableBuilder(Tag.maxp);
+      maxpBuilder.setNumGlyphs(permutationTable.size());
+      return true;
+    }
     if (glyphTable == null || locaTable == null) {
       throw new RuntimeException("Font to subset is not valid.");
     }
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.variations.GlyphVariationsTable;
+
+/**
+ * Subsetter for the gvar table.
+ *
+ * The variation data of each glyph is copied to its new glyph id unchanged,
+ * since the subsetters keep the points and components of the outlines. The
+ * shared tuples are kept as they are, so that the tuple indices in the copied
+ * data stay valid. Short offsets are used whenever the data fits.
+ */
+public class GlyphVariationsTableSubsetter extends TableSubsetterImpl {
+
+  private static final int HEADER_SIZE = 20;
+  private static final int SHORT_OFFSETS_LIMIT = 0x1fffe;
+
+  protected GlyphVariationsTableSubsetter() {
+    super(Tag.gvar);
+  }
+
+  @Override
+  public boolean subset(Subsetter subsetter, Font font, Font.Builder fontBuilder) {
+    GlyphVariationsTable gvar = font.getTable(Tag.gvar);
+    if (subsetter.glyphMappingTable() == null || gvar == null) {
+      return false;
+    }
+    int[] oldGlyphIds = subsetter.oldGlyphIds(font);
+    int glyphCount = oldGlyphIds.length;
+
+    ReadableFontData[] glyphData = new ReadableFontData[glyphCount];
+    int size = 0;
+    for (int glyphId = 0; glyphId < glyphCount; glyphId++) {
+      int oldGlyphId = oldGlyphIds[glyphId];
+      if (oldGlyphId >= 0 && oldGlyphId < gvar.glyphCount()) {
+        glyphData[glyphId] = gvar.glyphVariationData(oldGlyphId);
+        size += glyphData[glyphId].length() + (glyphData[glyphId].length() & 1);
+      }
+    }
+    boolean longOffsets = size > SHORT_OFFSETS_LIMIT;
+    int flags = longOffsets
+        ? gvar.flags() | GlyphVariationsTable.LONG_OFFSETS
+        : gvar.flags() & ~GlyphVariationsTable.LONG_OFFSETS;
+
+    ReadableFontData sharedTuples = gvar.sharedTuplesData();
+    int offsetsSize = (glyphCount + 1) * (longOffsets ? 4 : 2);
+    int sharedTuplesOffset = HEADER_SIZE + offsetsSize;
+    int arrayOffset = sharedTuplesOffset + sharedTuples.length();
+
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeUShort(gvar.majorVersion());
+    w.writeUShort(gvar.minorVersion());
+    w.writeUShort(gvar.axisCount());
+    w.writeUShort(gvar.sharedTupleCount());
+    w.writeULong(sharedTuplesOffset);
+    w.writeUShort(glyphCount);
+    w.writeUShort(flags);
+    w.writeULong(arrayOffset);
+    int offset = 0;
+    for (int glyphId = 0; glyphId <= glyphCount; glyphId++) {
+      if (longOffsets) {
+        w.writeULong(offset);
+      } else {
+        w.writeUShort(offset / 2);
+      }
+      if (glyphId < glyphCount && glyphData[glyphId] != null) {
+        int length = glyphData[glyphId].length();
+        // short offsets need every glyph's data to be of even length
+        offset += longOffsets ? length : length + (length & 1);
+      }
+    }
+    w.copy(sharedTuples);
+    for (int glyphId = 0; glyphId < glyphCount; glyphId++) {
+      if (glyphData[glyphId] != null) {
+        w.copy(glyphData[glyphId]);
+        if (!longOffsets) {
+          w.align(2);
+        }
+      }
+    }
+    fontBuilder.newTableBuilder(Tag.gvar, w.data());
+    return true;
+  }
+}
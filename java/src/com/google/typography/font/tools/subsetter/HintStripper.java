@@ -18,7 +18,9 @@ package com.google.typography.font.tools.subsetter;
 
 import com.google.typography.font.sfntly.Font;
 import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -27,6 +29,25 @@ import java.util.Set;
  */
 public class HintStripper extends Subsetter {
 
+  /**
+   * The tables that only serve hinting, to be removed together with the glyph
+   * instructions.
+   */
+  public static final Set<Integer> HINT_TABLES = createHintTables();
+
+  private static Set<Integer> createHintTables() {
+    Set<Integer> result = new HashSet<Integer>();
+    result.add(Tag.fpgm);
+    result.add(Tag.prep);
+    result.add(Tag.cvt);
+    // the device metrics describe hinted rendering
+    result.add(Tag.hdmx);
+    result.add(Tag.VDMX);
+    result.add(Tag.LTSH);
+    result.add(Tag.DSIG);
+    return Collections.unmodifiableSet(result);
+  }
+
   {
     Set<TableSubsetter> temp = new HashSet<TableSubsetter>();
     temp.add(new GlyphTableStripper());
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.core.KerningTable;
+import com.google.typography.font.sfntly.table.core.KerningTable.KerningSubTable;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Subsetter for the kern table.
+ *
+ * Format 0 subtables keep the pairs of retained glyphs, renumbered and
+ * re-sorted. Format 2 subtables keep their kerning array and get new class
+ * tables for the retained glyphs; glyphs in the gaps of a class table get the
+ * first row or column, which by convention holds no kerning. Subtables in
+ * other formats can't be renumbered and are dropped, as are subtables left
+ * without glyphs. The layout of the table, OpenType or Apple, is kept.
+ */
+public class KerningTableSubsetter extends TableSubsetterImpl {
+
+  private static final int PAIR_SIZE = 6;
+
+  protected KerningTableSubsetter() {
+    super(Tag.kern);
+  }
+
+  @Override
+  public boolean subset(Subsetter subsetter, Font font, Font.Builder fontBuilder) {
+    KerningTable kern = font.getTable(Tag.kern);
+    if (subsetter.glyphMappingTable() == null || kern == null) {
+      return false;
+    }
+    Map<Integer, Integer> inverseMap = subsetter.getInverseMapping();
+    boolean apple = kern.isApple();
+
+    OffsetDataWriter w = new OffsetDataWriter();
+    int nTablesField;
+    if (apple) {
+      w.writeULong(KerningTable.APPLE_VERSION);
+      nTablesField = w.writeULong(0);
+    } else {
+      w.writeUShort(0);
+      nTablesField = w.writeUShort(0);
+    }
+    int nTables = 0;
+    for (int i = 0; i < kern.numSubTables(); i++) {
+      KerningSubTable subTable = kern.subTable(i);
+      boolean written;
+      if (subTable.format() == KerningSubTable.FORMAT_0) {
+        written = subsetFormat0(w, (KerningSubTable.Format0) subTable, inverseMap);
+      } else if (subTable.format() == KerningSubTable.FORMAT_2) {
+        written = subsetFormat2(w, (KerningSubTable.Format2) subTable, inverseMap);
+      } else {
+        written = false;
+      }
+      if (written) {
+        nTables++;
+      }
+    }
+    if (nTables == 0) {
+      // nothing left to kern; the table is dropped
+      return true;
+    }
+    if (apple) {
+      w.patchULong(nTablesField, nTables);
+    } else {
+      w.patchUShort(nTablesField, nTables);
+    }
+    fontBuilder.newTableBuilder(Tag.kern, w.data());
+    return true;
+  }
+
+  /**
+   * Writes the subtable header.
+   *
+   * @return the position of the length field
+   */
+  private static int writeSubTableHeader(OffsetDataWriter w, KerningSubTable subTable) {
+    int lengthField;
+    if (subTable.isApple()) {
+      lengthField = w.writeULong(0);
+      w.writeUShort(subTable.coverage());
+      w.writeUShort(subTable.tupleIndex());
+    } else {
+      w.writeUShort(0);
+      lengthField = w.writeUShort(0);
+      w.writeUShort(subTable.coverage());
+    }
+    return lengthField;
+  }
+
+  private static void patchLength(
+      OffsetDataWriter w, KerningSubTable subTable, int start, int lengthField) {
+    int length = w.position() - start;
+    if (subTable.isApple()) {
+      w.patchULong(lengthField, length);
+    } else {
+      // large format 0 subtables overflow the field; readers derive their
+      // length from the number of pairs, as shipping fonts rely on
+      w.patchUShort(lengthField, length & 0xffff);
+    }
+  }
+
+  private static boolean subsetFormat0(OffsetDataWriter w, KerningSubTable.Format0 subTable,
+      Map<Integer, Integer> inverseMap) {
+    long[] pairs = new long[subTable.numPairs()];
+    int count = 0;
+    for (int i = 0; i < subTable.numPairs(); i++) {
+      Integer left = inverseMap.get(subTable.left(i));
+      Integer right = inverseMap.get(subTable.right(i));
+      if (left != null && right != null) {
+        pairs[count++] = ((long) left << 32) | ((long) right << 16) | (subTable.value(i) & 0xffff);
+      }
+    }
+    if (count == 0) {
+      return false;
+    }
+    Arrays.sort(pairs, 0, count);
+
+    int start = w.position();
+    int lengthField = writeSubTableHeader(w, subTable);
+    int entrySelector = 31 - Integer.numberOfLeadingZeros(count);
+    int searchRange = PAIR_SIZE << entrySelector;
+    w.writeUShort(count);
+    w.writeUShort(searchRange);
+    w.writeUShort(entrySelector);
+    w.writeUShort(PAIR_SIZE * count - searchRange);
+    for (int i = 0; i < count; i++) {
+      w.writeUShort((int) (pairs[i] >>> 32));
+      w.writeUShort((int) (pairs[i] >>> 16) & 0xffff);
+      w.writeUShort((int) pairs[i] & 0xffff);
+    }
+    patchLength(w, subTable, start, lengthField);
+    return true;
+  }
+
+  private static boolean subsetFormat2(OffsetDataWriter w, KerningSubTable.Format2 subTable,
+      Map<Integer, Integer> inverseMap) {
+    int[] leftClasses = newClasses(inverseMap, subTable, true);
+    int[] rightClasses = newClasses(inverseMap, subTable, false);
+    if (leftClasses == null || rightClasses == null) {
+      return false;
+    }
+    int oldArrayOffset = subTable.kerningArrayOffset();
+    int rowWidth = subTable.rowWidth();
+    // the array ends with the last row any glyph refers to
+    int arrayEnd = oldArrayOffset;
+    int leftTable = subTable.leftClassTableOffset();
+    for (int glyphId = subTable.firstGlyph(leftTable);
+        glyphId < subTable.firstGlyph(leftTable) + subTable.numGlyphs(leftTable); glyphId++) {
+      arrayEnd = Math.max(arrayEnd, subTable.leftClass(glyphId) + rowWidth);
+    }
+    ReadableFontData data = subTable.readFontData();
+    arrayEnd = Math.min(arrayEnd, data.length());
+
+    int start = w.position();
+    int lengthField = writeSubTableHeader(w, subTable);
+    w.writeUShort(rowWidth);
+    int leftField = w.reserveOffset16();
+    int rightField = w.reserveOffset16();
+    int arrayField = w.reserveOffset16();
+    int newArrayOffset = subTable.headerSize() + 8
+        + 4 + 2 * (leftClasses.length - 1) + 4 + 2 * (rightClasses.length - 1);
+
+    w.patchOffset16(leftField, start, w.position());
+    w.writeUShort(leftClasses[0]);
+    w.writeUShort(leftClasses.length - 1);
+    for (int i = 1; i < leftClasses.length; i++) {
+      int row = leftClasses[i] < 0 ? oldArrayOffset : leftClasses[i];
+      w.writeUShort(row - oldArrayOffset + newArrayOffset);
+    }
+    w.patchOffset16(rightField, start, w.position());
+    w.writeUShort(rightClasses[0]);
+    w.writeUShort(rightClasses.length - 1);
+    for (int i = 1; i < rightClasses.length; i++) {
+      w.writeUShort(Math.max(0, rightClasses[i]));
+    }
+    w.patchOffset16(arrayField, start, w.position());
+    w.copy(data, oldArrayOffset, arrayEnd - oldArrayOffset);
+    patchLength(w, subTable, start, lengthField);
+    return true;
+  }
+
+  /**
+   * Computes a class table for the retained glyphs.
+   *
+   * @return the first glyph followed by the class value of each glyph from it
+   *         on, -1 for glyphs without a class; null if no retained glyph has a
+   *         class
+   */
+  private static int[] newClasses(
+      Map<Integer, Integer> inverseMap, KerningSubTable.Format2 subTable, boolean left) {
+    int classTable = left ? subTable.leftClassTableOffset() : subTable.rightClassTableOffset();
+    int first = subTable.firstGlyph(classTable);
+    int firstNew = Integer.MAX_VALUE;
+    int lastNew = -1;
+    for (int glyphId = first; glyphId < first + subTable.numGlyphs(classTable); glyphId++) {
+      Integer newGlyphId = inverseMap.get(glyphId);
+      if (newGlyphId != null) {
+        firstNew = Math.min(firstNew, newGlyphId);
+        lastNew = Math.max(lastNew, newGlyphId);
+      }
+    }
+    if (lastNew < 0) {
+      return null;
+    }
+    int[] classes = new int[lastNew - firstNew + 2];
+    Arrays.fill(classes, -1);
+    classes[0] = firstNew;
+    for (int glyphId = first; glyphId < first + subTable.numGlyphs(classTable); glyphId++) {
+      Integer newGlyphId = inverseMap.get(glyphId);
+      if (newGlyphId != null) {
+        classes[newGlyphId - firstNew + 1] =
+            left ? subTable.leftClass(glyphId) : subTable.rightClass(glyphId);
+      }
+    }
+    return classes;
+  }
+}
@@ -0,0 +1,554 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Applies a glyph mapping to the building blocks shared by the OpenType layout
+ * tables: coverage tables and class definitions. Also copies the leaf
+ * subtables that don't reference glyphs (anchors, device tables and item
+ * variation stores) so that the layout table subsetters only have to deal with
+ * their own subtable formats.
+ *
+ * Like {@link GlyphRenumberer} this works directly on the table bytes.
+ */
+class LayoutRenumberer {
+
+  private static final int VALUE_DEVICE_MASK = 0x00f0;
+
+  private final Map<Integer, Integer> oldToNew;
+
+  LayoutRenumberer(Map<Integer, Integer> oldToNew) {
+    this.oldToNew = oldToNew;
+  }
+
+  /**
+   * @return the new glyph id, or -1 if the glyph is not retained
+   */
+  int newGlyphId(int oldGlyphId) {
+    Integer newGlyphId = this.oldToNew.get(oldGlyphId);
+    return newGlyphId == null ? -1 : newGlyphId;
+  }
+
+  /**
+   * The retained glyphs of a coverage table, sorted by new glyph id, together
+   * with their original coverage indices.
+   */
+  static final class Coverage {
+    final int[] glyphs;
+    final int[] indices;
+
+    private Coverage(int[] glyphs, int[] indices) {
+      this.glyphs = glyphs;
+      this.indices = indices;
+    }
+
+    int size() {
+      return this.glyphs.length;
+    }
+
+    boolean isEmpty() {
+      return this.glyphs.length == 0;
+    }
+  }
+
+  /**
+   * Reads a coverage table and maps it to the new glyph ids.
+   *
+   * @param data the data containing the coverage table
+   * @param offset the offset of the coverage table in the data
+   * @return the retained part of the coverage
+   */
+  Coverage coverage(ReadableFontData data, int offset) {
+    List<long[]> entries = new ArrayList<long[]>();
+    int format = data.readUShort(offset);
+    int count = data.readUShort(offset + 2);
+    if (format == 1) {
+      for (int i = 0; i < count; i++) {
+        addCoverageEntry(entries, data.readUShort(offset + 4 + 2 * i), i);
+      }
+    } else if (format == 2) {
+      for (int i = 0; i < count; i++) {
+        int record = offset + 4 + 6 * i;
+        int start = data.readUShort(record);
+        int end = data.readUShort(record + 2);
+        int startIndex = data.readUShort(record + 4);
+        for (int glyph = start; glyph <= end; glyph++) {
+          addCoverageEntry(entries, glyph, startIndex + glyph - start);
+        }
+      }
+    } else {
+      throw new IllegalArgumentException("coverage format " + format + " unexpected");
+    }
+    long[][] sorted = entries.toArray(new long[entries.size()][]);
+    Arrays.sort(sorted, ENTRY_COMPARATOR);
+    int[] glyphs = new int[sorted.length];
+    int[] indices = new int[sorted.length];
+    for (int i = 0; i < sorted.length; i++) {
+      glyphs[i] = (int) sorted[i][0];
+      indices[i] = (int) sorted[i][1];
+    }
+    return new Coverage(glyphs, indices);
+  }
+
+  private void addCoverageEntry(List<long[]> entries, int oldGlyphId, int index) {
+    int newGlyphId = newGlyphId(oldGlyphId);
+    if (newGlyphId >= 0) {
+      entries.add(new long[] {newGlyphId, index});
+    }
+  }
+
+  private static final Comparator<long[]> ENTRY_COMPARATOR =
+      new Comparator<long[]>() {
+        @Override
+        public int compare(long[] a, long[] b) {
+          return a[0] < b[0] ? -1 : (a[0] == b[0] ? 0 : 1);
+        }
+      };
+
+  /**
+   * Writes a coverage table for the given glyphs, in whichever format is
+   * smaller.
+   *
+   * @param w the writer
+   * @param glyphs the glyph ids in increasing order
+   * @return the position of the coverage table
+   */
+  static int writeCoverage(OffsetDataWriter w, int[] glyphs) {
+    int ranges = 0;
+    for (int i = 0; i < glyphs.length; i++) {
+      if (i == 0 || glyphs[i] != glyphs[i - 1] + 1) {
+        ranges++;
+      }
+    }
+    int start;
+    if (6 * ranges < 2 * glyphs.length) {
+      start = w.writeUShort(2);
+      w.writeUShort(ranges);
+      int rangeStart = 0;
+      for (int i = 1; i <= glyphs.length; i++) {
+        if (i == glyphs.length || glyphs[i] != glyphs[i - 1] + 1) {
+          w.writeUShort(glyphs[rangeStart]);
+          w.writeUShort(glyphs[i - 1]);
+          w.writeUShort(rangeStart);
+          rangeStart = i;
+        }
+      }
+    } else {
+      start = w.writeUShort(1);
+      w.writeUShort(glyphs.length);
+      for (int glyph : glyphs) {
+        w.writeUShort(glyph);
+      }
+    }
+    return start;
+  }
+
+  /**
+   * Renumbers a coverage table and writes it.
+   *
+   * @return the position of the new coverage table
+   */
+  int copyCoverage(OffsetDataWriter w, ReadableFontData data, int offset) {
+    return writeCoverage(w, coverage(data, offset).glyphs);
+  }
+
+  /**
+   * Reads a class definition table and maps it to the new glyph ids. Glyphs in
+   * class 0 are not included.
+   *
+   * @param data the data containing the class definition table
+   * @param offset the offset of the class definition table in the data
+   * @return a map from new glyph id to class
+   */
+  SortedMap<Integer, Integer> classDef(ReadableFontData data, int offset) {
+    SortedMap<Integer, Integer> classes = new TreeMap<Integer, Integer>();
+    int format = data.readUShort(offset);
+    if (format == 1) {
+      int startGlyph = data.readUShort(offset + 2);
+      int glyphCount = data.readUShort(offset + 4);
+      for (int i = 0; i < glyphCount; i++) {
+        addClassEntry(classes, startGlyph + i, data.readUShort(offset + 6 + 2 * i));
+      }
+    } else if (format == 2) {
+      int count = data.readUShort(offset + 2);
+      for (int i = 0; i < count; i++) {
+        int record = offset + 4 + 6 * i;
+        int start = data.readUShort(record);
+        int end = data.readUShort(record + 2);
+        int glyphClass = data.readUShort(record + 4);
+        for (int glyph = start; glyph <= end; glyph++) {
+          addClassEntry(classes, glyph, glyphClass);
+        }
+      }
+    } else {
+      throw new IllegalArgumentException("class def format " + format + " unexpected");
+    }
+    return classes;
+  }
+
+  private void addClassEntry(Map<Integer, Integer> classes, int oldGlyphId, int glyphClass) {
+    int newGlyphId = newGlyphId(oldGlyphId);
+    if (newGlyphId >= 0 && glyphClass != 0) {
+      classes.put(newGlyphId, glyphClass);
+    }
+  }
+
+  /**
+   * Writes a class definition table, in whichever format is smaller.
+   *
+   * @param w the writer
+   * @param classes a map from glyph id to class; entries of class 0 are
+   *        ignored
+   * @return the position of the class definition table
+   */
+  static int writeClassDef(OffsetDataWriter w, SortedMap<Integer, Integer> classes) {
+    List<int[]> ranges = new ArrayList<int[]>();
+    int[] current = null;
+    for (Map.Entry<Integer, Integer> entry : classes.entrySet()) {
+      int glyph = entry.getKey();
+      int glyphClass = entry.getValue();
+      if (glyphClass == 0) {
+        continue;
+      }
+      if (current != null && current[1] + 1 == glyph && current[2] == glyphClass) {
+        current[1] = glyph;
+      } else {
+        current = new int[] {glyph, glyph, glyphClass};
+        ranges.add(current);
+      }
+    }
+    if (ranges.isEmpty()) {
+      int start = w.writeUShort(2);
+      w.writeUShort(0);
+      return start;
+    }
+    int first = ranges.get(0)[0];
+    int last = ranges.get(ranges.size() - 1)[1];
+    int start;
+    if (2 + 2 * (last - first + 1) <= 6 * ranges.size()) {
+      start = w.writeUShort(1);
+      w.writeUShort(first);
+      w.writeUShort(last - first + 1);
+      for (int glyph = first; glyph <= last; glyph++) {
+        Integer glyphClass = classes.get(glyph);
+        w.writeUShort(glyphClass == null ? 0 : glyphClass);
+      }
+    } else {
+      start = w.writeUShort(2);
+      w.writeUShort(ranges.size());
+      for (int[] range : ranges) {
+        w.writeUShort(range[0]);
+        w.writeUShort(range[1]);
+        w.writeUShort(range[2]);
+      }
+    }
+    return start;
+  }
+
+  /**
+   * Renumbers a class definition table and writes it.
+   *
+   * @return the position of the new class definition table
+   */
+  int copyClassDef(OffsetDataWriter w, ReadableFontData data, int offset) {
+    return writeClassDef(w, classDef(data, offset));
+  }
+
+  /**
+   * Computes the size of a device table or a variation index table.
+   */
+  static int deviceTableSize(ReadableFontData data, int offset) {
+    int startSize = data.readUShort(offset);
+    int endSize = data.readUShort(offset + 2);
+    int deltaFormat = data.readUShort(offset + 4);
+    if (deltaFormat < 1 || deltaFormat > 3) {
+      // a VariationIndex table, or a format without deltas
+      return 6;
+    }
+    int bits = (endSize - startSize + 1) << deltaFormat;
+    return 6 + 2 * ((bits + 15) / 16);
+  }
+
+  static int copyDeviceTable(OffsetDataWriter w, ReadableFontData data, int offset) {
+    return w.copy(data, offset, deviceTableSize(data, offset));
+  }
+
+  /**
+   * Copies an anchor table, together with its device tables.
+   *
+   * @return the position of the new anchor table
+   */
+  static int copyAnchor(OffsetDataWriter w, ReadableFontData data, int offset) {
+    int format = data.readUShort(offset);
+    switch (format) {
+      case 1:
+        return w.copy(data, offset, 6);
+      case 2:
+        return w.copy(data, offset, 8);
+      case 3:
+        int start = w.copy(data, offset, 10);
+        for (int field = 6; field <= 8; field += 2) {
+          int deviceOffset = data.readUShort(offset + field);
+          if (deviceOffset != 0) {
+            int device = copyDeviceTable(w, data, offset + deviceOffset);
+            w.patchOffset16(start + field, start, device);
+          }
+        }
+        return start;
+      default:
+        throw new IllegalArgumentException("anchor format " + format + " unexpected");
+    }
+  }
+
+  static int valueRecordSize(int valueFormat) {
+    return 2 * Integer.bitCount(valueFormat & 0xff);
+  }
+
+  /**
+   * Copies a value record. The device table offsets of the record are relative
+   * to the start of the subtable, so their tables are placed later through the
+   * deferred subtables of the subtable being written.
+   *
+   * @param w the writer
+   * @param data the source subtable
+   * @param offset the offset of the value record in the source subtable
+   * @param valueFormat the format of the value record
+   * @param devices the deferred device tables of the subtable being written
+   */
+  static void copyValueRecord(OffsetDataWriter w, ReadableFontData data, int offset,
+      int valueFormat, DeferredSubTables devices) {
+    for (int bit = 0; bit < 8; bit++) {
+      if ((valueFormat & (1 << bit)) == 0) {
+        continue;
+      }
+      int value = data.readUShort(offset);
+      offset += 2;
+      if (((1 << bit) & VALUE_DEVICE_MASK) != 0) {
+        devices.writeOffset(w, value);
+      } else {
+        w.writeUShort(value);
+      }
+    }
+  }
+
+  /**
+   * Computes the length of an item variation store, so that it can be copied
+   * as a block. The store doesn't reference glyphs.
+   */
+  static int itemVariationStoreLength(ReadableFontData data, int offset) {
+    int length = 8;
+    int regionListOffset = data.readULongAsInt(offset + 2);
+    if (regionListOffset != 0) {
+      int axisCount = data.readUShort(offset + regionListOffset);
+      int regionCount = data.readUShort(offset + regionListOffset + 2);
+      length = Math.max(length, regionListOffset + 4 + 6 * axisCount * regionCount);
+    }
+    int dataCount = data.readUShort(offset + 6);
+    length = Math.max(length, 8 + 4 * dataCount);
+    for (int i = 0; i < dataCount; i++) {
+      int dataOffset = data.readULongAsInt(offset + 8 + 4 * i);
+      if (dataOffset == 0) {
+        continue;
+      }
+      int itemCount = data.readUShort(offset + dataOffset);
+      int wordDeltaCount = data.readUShort(offset + dataOffset + 2);
+      int regionIndexCount = data.readUShort(offset + dataOffset + 4);
+      int wordCount = wordDeltaCount & 0x7fff;
+      int rowSize = (wordDeltaCount & 0x8000) != 0
+          ? 4 * wordCount + 2 * (regionIndexCount - wordCount)
+          : 2 * wordCount + (regionIndexCount - wordCount);
+      length = Math.max(length,
+          dataOffset + 6 + 2 * regionIndexCount + itemCount * rowSize);
+    }
+    return length;
+  }
+
+  /**
+   * Copies a ScriptList table. Scripts and language systems only reference
+   * features by index, so they are copied unchanged.
+   *
+   * @return the position of the new ScriptList table
+   */
+  static int copyScriptList(OffsetDataWriter w, ReadableFontData data, int offset) {
+    int count = data.readUShort(offset);
+    int start = w.writeUShort(count);
+    int[] fields = new int[count];
+    for (int i = 0; i < count; i++) {
+      w.writeULong(data.readULong(offset + 2 + 6 * i));
+      fields[i] = w.reserveOffset16();
+    }
+    for (int i = 0; i < count; i++) {
+      int script = offset + data.readUShort(offset + 2 + 6 * i + 4);
+      w.patchOffset16(fields[i], start, copyScript(w, data, script));
+    }
+    return start;
+  }
+
+  private static int copyScript(OffsetDataWriter w, ReadableFontData data, int offset) {
+    int defaultLangSys = data.readUShort(offset);
+    int count = data.readUShort(offset + 2);
+    int start = w.reserveOffset16();
+    w.writeUShort(count);
+    int[] fields = new int[count];
+    for (int i = 0; i < count; i++) {
+      w.writeULong(data.readULong(offset + 4 + 6 * i));
+      fields[i] = w.reserveOffset16();
+    }
+    if (defaultLangSys != 0) {
+      w.patchOffset16(start, start, copyLangSys(w, data, offset + defaultLangSys));
+    }
+    for (int i = 0; i < count; i++) {
+      int langSys = offset + data.readUShort(offset + 4 + 6 * i + 4);
+      w.patchOffset16(fields[i], start, copyLangSys(w, data, langSys));
+    }
+    return start;
+  }
+
+  private static int copyLangSys(OffsetDataWriter w, ReadableFontData data, int offset) {
+    int featureIndexCount = data.readUShort(offset + 4);
+    return w.copy(data, offset, 6 + 2 * featureIndexCount);
+  }
+
+  /**
+   * Copies a FeatureList table. Features only reference lookups by index, so
+   * they are copied unchanged. Feature parameters of unknown features are
+   * dropped since their size isn't known.
+   *
+   * @return the position of the new FeatureList table
+   */
+  static int copyFeatureList(OffsetDataWriter w, ReadableFontData data, int offset) {
+    int count = data.readUShort(offset);
+    int start = w.writeUShort(count);
+    int[] fields = new int[count];
+    for (int i = 0; i < count; i++) {
+      w.writeULong(data.readULong(offset + 2 + 6 * i));
+      fields[i] = w.reserveOffset16();
+    }
+    for (int i = 0; i < count; i++) {
+      int tag = data.readULongAsInt(offset + 2 + 6 * i);
+      int feature = offset + data.readUShort(offset + 2 + 6 * i + 4);
+      int paramsOffset = data.readUShort(feature);
+      int lookupIndexCount = data.readUShort(feature + 2);
+      int featureStart = w.reserveOffset16();
+      w.copy(data, feature + 2, 2 + 2 * lookupIndexCount);
+      if (paramsOffset != 0) {
+        int paramsSize = featureParamsSize(tag, data, feature + paramsOffset);
+        if (paramsSize > 0) {
+          int params = w.copy(data, feature + paramsOffset, paramsSize);
+          w.patchOffset16(featureStart, featureStart, params);
+        }
+      }
+      w.patchOffset16(fields[i], start, featureStart);
+    }
+    return start;
+  }
+
+  private static int featureParamsSize(int tag, ReadableFontData data, int offset) {
+    String tagName = Tag.stringValue(tag);
+    if (tagName.equals("size")) {
+      return 10;
+    } else if (tagName.startsWith("ss")) {
+      return 4;
+    } else if (tagName.startsWith("cv")) {
+      int charCount = data.readUShort(offset + 12);
+      return 14 + 3 * charCount;
+    }
+    return 0;
+  }
+
+  /**
+   * Leaf subtables (anchors or device tables) that are referenced by offsets
+   * relative to a common base and that are copied after the records referencing
+   * them. Each source subtable is copied once and shared by all the offsets
+   * referencing it.
+   */
+  static final class DeferredSubTables {
+    private final boolean anchors;
+    private final int sourceBase;
+    private final int base;
+    private final List<int[]> fields = new ArrayList<int[]>();
+
+    private DeferredSubTables(boolean anchors, int sourceBase, int base) {
+      this.anchors = anchors;
+      this.sourceBase = sourceBase;
+      this.base = base;
+    }
+
+    /**
+     * @param sourceBase the offset in the source data the source offsets are
+     *        relative to
+     * @param base the position in the writer the new offsets are relative to
+     */
+    static DeferredSubTables anchors(int sourceBase, int base) {
+      return new DeferredSubTables(true, sourceBase, base);
+    }
+
+    static DeferredSubTables devices(int sourceBase, int base) {
+      return new DeferredSubTables(false, sourceBase, base);
+    }
+
+    /**
+     * Writes an offset field referencing a subtable of the source, to be
+     * patched once the subtable has been placed. A null source offset is
+     * written as a null offset.
+     *
+     * @param w the writer
+     * @param sourceOffset the offset of the subtable in the source, relative to
+     *        the source base
+     */
+    void writeOffset(OffsetDataWriter w, int sourceOffset) {
+      if (sourceOffset == 0) {
+        w.writeUShort(0);
+      } else {
+        this.fields.add(new int[] {w.reserveOffset16(), sourceOffset});
+      }
+    }
+
+    /**
+     * Copies the subtables and patches the offsets referencing them.
+     *
+     * @param w the writer
+     * @param data the source data
+     */
+    void place(OffsetDataWriter w, ReadableFontData data) {
+      Map<Integer, Integer> placed = new HashMap<Integer, Integer>();
+      for (int[] field : this.fields) {
+        Integer position = placed.get(field[1]);
+        if (position == null) {
+          int sourceOffset = this.sourceBase + field[1];
+          position = this.anchors
+              ? copyAnchor(w, data, sourceOffset) : copyDeviceTable(w, data, sourceOffset);
+          placed.put(field[1], position);
+        }
+        w.patchOffset16(field[0], this.base, position);
+      }
+      this.fields.clear();
+    }
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+
+/**
+ * A sequential writer over growable font data, for tables made of subtables
+ * linked by offsets. Offset fields are reserved when the referencing record is
+ * written and patched once the referenced subtable has been placed.
+ */
+class OffsetDataWriter {
+
+  private final WritableFontData data = WritableFontData.createWritableFontData(0);
+  private int position;
+
+  int position() {
+    return this.position;
+  }
+
+  int writeByte(int b) {
+    int start = this.position;
+    this.position += this.data.writeByte(start, (byte) b);
+    return start;
+  }
+
+  int writeUShort(int us) {
+    int start = this.position;
+    this.position += this.data.writeUShort(start, us);
+    return start;
+  }
+
+  int writeShort(int s) {
+    int start = this.position;
+    this.position += this.data.writeShort(start, s);
+    return start;
+  }
+
+  int writeULong(long ul) {
+    int start = this.position;
+    this.position += this.data.writeULong(start, ul);
+    return start;
+  }
+
+  /**
+   * Reserves a 16 bit offset field.
+   *
+   * @return the position of the field
+   */
+  int reserveOffset16() {
+    return writeUShort(0);
+  }
+
+  /**
+   * Reserves a 24 bit offset field.
+   *
+   * @return the position of the field
+   */
+  int reserveOffset24() {
+    int start = this.position;
+    this.position += this.data.writeUInt24(start, 0);
+    return start;
+  }
+
+  /**
+   * Reserves a 32 bit offset field.
+   *
+   * @return the position of the field
+   */
+  int reserveOffset32() {
+    return writeULong(0);
+  }
+
+  /**
+   * Writes the offset from base to target into a reserved 16 bit field.
+   *
+   * @throws OffsetOverflowException if the offset doesn't fit into 16 bits
+   */
+  void patchOffset16(int field, int base, int target) {
+    int offset = target - base;
+    if (offset < 0 || offset > 0xffff) {
+      throw new OffsetOverflowException(offset);
+    }
+    this.data.writeUShort(field, offset);
+  }
+
+  /**
+   * Writes the offset from base to target into a reserved 24 bit field.
+   *
+   * @throws OffsetOverflowException if the offset doesn't fit into 24 bits
+   */
+  void patchOffset24(int field, int base, int target) {
+    int offset = target - base;
+    if (offset < 0 || offset > 0xffffff) {
+      throw new OffsetOverflowException(offset);
+    }
+    this.data.writeUInt24(field, offset);
+  }
+
+  void patchOffset32(int field, int base, int target) {
+    this.data.writeULong(field, target - base);
+  }
+
+  void patchByte(int field, int b) {
+    this.data.writeByte(field, (byte) b);
+  }
+
+  void patchUShort(int field, int us) {
+    this.data.writeUShort(field, us);
+  }
+
+  void patchULong(int field, long ul) {
+    this.data.writeULong(field, ul);
+  }
+
+  /**
+   * Copies a range of bytes from the source data.
+   *
+   * @return the position the bytes were written to
+   */
+  int copy(ReadableFontData source, int offset, int length) {
+    int start = this.position;
+    byte[] b = new byte[length];
+    source.readBytes(offset, b, 0, length);
+    this.position += this.data.writeBytes(start, b, 0, length);
+    return start;
+  }
+
+  int copy(ReadableFontData source) {
+    return copy(source, 0, source.length());
+  }
+
+  /**
+   * Pads with zero bytes to a multiple of the alignment.
+   */
+  void align(int alignment) {
+    while (this.position % alignment != 0) {
+      this.position += this.data.writeByte(this.position, (byte) 0);
+    }
+  }
+
+  /**
+   * @return the written data, exactly as long as the bytes written
+   */
+  WritableFontData data() {
+    return this.data.slice(0, this.position);
+  }
+}
@@ -21,7 +21,6 @@ import com.google.typography.font.sfntly.Font.Builder;
 import com.google.typography.font.sfntly.Tag;
 import com.google.typography.font.sfntly.table.core.CMap;
 import com.google.typography.font.sfntly.table.core.CMap.CMapFormat;
-import com.google.typography.font.sfntly.table.core.CMapFormat4;
 import com.google.typography.font.sfntly.table.core.CMapTable;
 
 import java.io.IOException;
@@ -37,25 +36,29 @@ public class RenumberingCMapTableSubsetter extends TableSubsetterImpl {
     super(Tag.cmap);
   }
  
-  private static CMapFormat4 getCMapFormat4(Font font) {
+  private static CMap getCMap(Font font, CMapFormat format) {
     CMapTable cmapTable = font.getTable(Tag.cmap);
     for (CMap cmap : cmapTable) {
-      if (cmap.format() == CMapFormat.Format4.value()) {
-        return (CMapFormat4) cmap;
+      if (cmap.format() == format.value()) {
+        return cmap;
       }
     }
     return null;
   }
   
   static Map<Integer, Integer> computeMapping(Subsetter subsetter, Font font) {
-    CMapFormat4 cmap4 = getCMapFormat4(font);
-    if (cmap4 == null) {
-      throw new RuntimeException("CMap format 4 table in source font not found");
+    // a format 12 subtable also maps the supplementary planes
+    CMap cmap = getCMap(font, CMapFormat.Format12);
+    if (cmap == null) {
+      cmap = getCMap(font, CMapFormat.Format4);
+    }
+    if (cmap == null) {
+      throw new RuntimeException("CMap format 4 or 12 table in source font not found");
     }
     Map<Integer, Integer> inverseMapping = subsetter.getInverseMapping();
     Map<Integer, Integer> mapping = new HashMap<Integer, Integer>();
-    for (Integer unicode : cmap4) {
-      int glyph = cmap4.glyphId(unicode);
+    for (Integer unicode : cmap) {
+      int glyph = cmap.glyphId(unicode);
       if (inverseMapping.containsKey(glyph)) {
         mapping.put(unicode, inverseMapping.get(glyph));
       }
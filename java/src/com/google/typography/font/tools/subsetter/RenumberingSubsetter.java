@@ -20,6 +20,7 @@ import com.google.typography.font.sfntly.Font;
 import com.google.typography.font.sfntly.FontFactory;
 import com.google.typography.font.sfntly.Tag;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -28,12 +29,40 @@ import java.util.Set;
  */
 public class RenumberingSubsetter extends Subsetter {
 
+  /**
+   * The tables that are valid but not renumbered yet, to be removed from
+   * renumbered subsets.
+   */
+  public static final Set<Integer> UNRENUMBERED_TABLES = createUnrenumberedTables();
+
+  private static Set<Integer> createUnrenumberedTables() {
+    Set<Integer> result = new HashSet<Integer>();
+    result.add(Tag.GSUB);
+    result.add(Tag.DSIG);
+    // AAT tables, not yet defined in sfntly Tag class
+    result.add(Tag.intValue(new byte[]{'m', 'o', 'r', 't'}));
+    result.add(Tag.intValue(new byte[]{'m', 'o', 'r', 'x'}));
+    return Collections.unmodifiableSet(result);
+  }
+
   {
     Set<TableSubsetter> temp = new HashSet<TableSubsetter>();
     temp.add(new GlyphTableSubsetter());
+    temp.add(new CffTableSubsetter());
     temp.add(new RenumberingCMapTableSubsetter());
     temp.add(new PostScriptTableSubsetter());
     temp.add(new HorizontalMetricsTableSubsetter());
+    temp.add(new VerticalMetricsTableSubsetter());
+    temp.add(new DeviceMetricsTableSubsetter());
+    temp.add(new GDefTableSubsetter());
+    temp.add(new GPosTableSubsetter());
+    temp.add(new KerningTableSubsetter());
+    temp.add(new GlyphVariationsTableSubsetter());
+    temp.add(new BitmapTableSubsetter());
+    temp.add(new BitmapTableSubsetter(Tag.CBLC, Tag.CBDT));
+    temp.add(new ColorTableSubsetter());
+    temp.add(new GlyphMetricsVariationsTableSubsetter(Tag.HVAR));
+    temp.add(new GlyphMetricsVariationsTableSubsetter(Tag.VVAR));
     tableSubsetters = temp;
   }
 
@@ -45,5 +74,8 @@ public class RenumberingSubsetter extends Subsetter {
   protected void setUpTables(Font.Builder fontBuilder) {
     fontBuilder.newTableBuilder(Tag.hhea, font.getTable(Tag.hhea).readFontData());
     fontBuilder.newTableBuilder(Tag.maxp, font.getTable(Tag.maxp).readFontData());
+    if (font.hasTable(Tag.vhea)) {
+      fontBuilder.newTableBuilder(Tag.vhea, font.getTable(Tag.vhea).readFontData());
+    }
   }
 }
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
+import com.google.typography.font.sfntly.table.opentype.component.GlyphGroup;
+import com.google.typography.font.sfntly.table.opentype.component.Rule;
+import com.google.typography.font.sfntly.table.truetype.CompositeGlyph;
+import com.google.typography.font.sfntly.table.truetype.Glyph;
+import com.google.typography.font.sfntly.table.truetype.GlyphTable;
+import com.google.typography.font.sfntly.table.truetype.LocaTable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A subsetter that keeps the original glyph ids. The TrueType or CFF outlines
+ * of the glyphs that are not retained are emptied, along with their outline
+ * variations, embedded bitmaps and colors, and the cmap only maps to retained
+ * glyphs; all other tables, including the layout tables, are copied unchanged
+ * since the glyph ids they reference stay valid.
+ *
+ * The glyphs set with {@link #setGlyphs(java.util.List)} are the glyphs to
+ * retain, in any order. Since the GSUB table is copied unchanged, the glyphs it
+ * can substitute for the retained glyphs, such as ligatures, are retained too,
+ * along with the components of all retained composite glyphs.
+ */
+public class RetainGlyphIdsSubsetter extends Subsetter {
+
+  {
+    Set<TableSubsetter> temp = new HashSet<TableSubsetter>();
+    temp.add(new RetainedGlyphTableSubsetter());
+    temp.add(new CffTableSubsetter());
+    temp.add(new RenumberingCMapTableSubsetter());
+    temp.add(new GlyphVariationsTableSubsetter());
+    temp.add(new BitmapTableSubsetter());
+    temp.add(new BitmapTableSubsetter(Tag.CBLC, Tag.CBDT));
+    temp.add(new ColorTableSubsetter());
+    tableSubsetters = temp;
+  }
+
+  // identity mapping of the retained glyphs, computed lazily
+  private Map<Integer, Integer> retainedGlyphs = null;
+
+  public RetainGlyphIdsSubsetter(Font font, FontFactory fontFactory) {
+    super(font, fontFactory);
+  }
+
+  @Override
+  public void setGlyphs(List<Integer> glyphs) {
+    super.setGlyphs(closure(this.font, glyphs));
+    this.retainedGlyphs = null;
+  }
+
+  /**
+   * Computes the glyphs to retain: the given glyphs, the glyphs that GSUB
+   * lookups can substitute for them, and the components of these, repeated
+   * until no glyph is added.
+   *
+   * @return the glyphs, sorted
+   */
+  static List<Integer> closure(Font font, Collection<Integer> glyphs) {
+    Map<Integer, Set<Rule>> glyphRules =
+        font.hasTable(Tag.GSUB) ? Rule.glyphRulesMap(font) : null;
+    GlyphTable glyphTable = font.getTable(Tag.glyf);
+    LocaTable locaTable = font.getTable(Tag.loca);
+
+    GlyphGroup retained = new GlyphGroup();
+    List<Integer> pending = new ArrayList<Integer>(glyphs);
+    while (!pending.isEmpty()) {
+      while (!pending.isEmpty()) {
+        int glyphId = pending.remove(pending.size() - 1);
+        if (retained.get(glyphId)) {
+          continue;
+        }
+        retained.add(glyphId);
+        if (glyphTable != null && locaTable != null && glyphId < locaTable.numGlyphs()) {
+          Glyph glyph = glyphTable.glyph(
+              locaTable.glyphOffset(glyphId), locaTable.glyphLength(glyphId));
+          if (glyph instanceof CompositeGlyph) {
+            CompositeGlyph composite = (CompositeGlyph) glyph;
+            for (int i = 0; i < composite.numGlyphs(); i++) {
+              pending.add(composite.glyphIndex(i));
+            }
+          }
+        }
+      }
+      if (glyphRules != null) {
+        GlyphGroup substituted = new GlyphGroup();
+        substituted.or(retained);
+        for (int glyphId : Rule.closure(glyphRules, substituted)) {
+          if (!retained.get(glyphId)) {
+            pending.add(glyphId);
+          }
+        }
+      }
+    }
+
+    List<Integer> closure = new ArrayList<Integer>(retained.size());
+    for (int glyphId : retained) {
+      closure.add(glyphId);
+    }
+    return closure;
+  }
+
+  /**
+   * Glyphs keep their ids, so the mapping from old to new glyph id is the
+   * identity over the retained glyphs.
+   */
+  @Override
+  Map<Integer, Integer> getInverseMapping() {
+    if (this.retainedGlyphs == null) {
+      this.retainedGlyphs = new HashMap<Integer, Integer>();
+      for (int glyphId : glyphMappingTable()) {
+        this.retainedGlyphs.put(glyphId, glyphId);
+      }
+    }
+    return this.retainedGlyphs;
+  }
+
+  /**
+   * All glyphs of the font are kept; those not retained are emptied.
+   */
+  @Override
+  int[] oldGlyphIds(Font font) {
+    MaximumProfileTable maxp = font.getTable(Tag.maxp);
+    Map<Integer, Integer> retained = getInverseMapping();
+    int[] oldGlyphIds = new int[maxp.numGlyphs()];
+    for (int glyphId = 0; glyphId < oldGlyphIds.length; glyphId++) {
+      oldGlyphIds[glyphId] = glyphId == 0 || retained.containsKey(glyphId) ? glyphId : -1;
+    }
+    return oldGlyphIds;
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.truetype.GlyphTable;
+import com.google.typography.font.sfntly.table.truetype.LocaTable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Glyph table subsetter that keeps the glyph ids. Glyphs that are not retained
+ * get a zero length entry, so the loca table has runs of identical offsets.
+ * The glyph data is copied without renumbering and the maxp table is left
+ * unchanged. The .notdef glyph is always retained.
+ */
+public class RetainedGlyphTableSubsetter extends TableSubsetterImpl {
+
+  protected RetainedGlyphTableSubsetter() {
+    super(Tag.glyf, Tag.loca);
+  }
+
+  @Override
+  public boolean subset(Subsetter subsetter, Font font, Font.Builder fontBuilder)
+      throws IOException {
+    List<Integer> permutationTable = subsetter.glyphMappingTable();
+    if (permutationTable == null) {
+      return false;
+    }
+
+    GlyphTable glyphTable = font.getTable(Tag.glyf);
+    LocaTable locaTable = font.getTable(Tag.loca);
+    if (glyphTable == null && locaTable == null && font.hasTable(Tag.CFF)) {
+      // PostScript outlines, handled by the CFF table subsetter
+      return false;
+    }
+    if (glyphTable == null && locaTable == null
+        && (font.hasTable(Tag.CBDT) || font.hasTable(Tag.EBDT))) {
+      // bitmap only, handled by the bitmap table subsetters
+      return false;
+    }
+    if (glyphTable == null || locaTable == null) {
+      throw new RuntimeException("Font to subset is not valid.");
+    }
+    Map<Integer, Integer> retained = subsetter.getInverseMapping();
+
+    List<Integer> locaList = new ArrayList<Integer>(locaTable.numGlyphs() + 1);
+    int size = 0;
+    locaList.add(size);
+    for (int glyphId = 0; glyphId < locaTable.numGlyphs(); glyphId++) {
+      if (glyphId == 0 || retained.containsKey(glyphId)) {
+        size += locaTable.glyphLength(glyphId);
+      }
+      locaList.add(size);
+    }
+
+    ReadableFontData glyphData = glyphTable.readFontData();
+    WritableFontData newGlyphData = WritableFontData.createWritableFontData(size);
+    for (int glyphId = 0; glyphId < locaTable.numGlyphs(); glyphId++) {
+      int length = locaList.get(glyphId + 1) - locaList.get(glyphId);
+      if (length > 0) {
+        glyphData.slice(locaTable.glyphOffset(glyphId), length)
+            .copyTo(newGlyphData.slice(locaList.get(glyphId), length));
+      }
+    }
+
+    fontBuilder.newTableBuilder(Tag.glyf, newGlyphData);
+    LocaTable.Builder locaTableBuilder = (LocaTable.Builder) fontBuilder.newTableBuilder(Tag.loca);
+    if (locaTableBuilder == null) {
+      throw new RuntimeException("Builder for subset is not valid.");
+    }
+    locaTableBuilder.setLocaList(locaList);
+    return true;
+  }
+}
@@ -52,6 +52,8 @@ public class Subsetter {
   private Set<Integer> removeTables;
   private List<Integer> newToOldGlyphs;
   private List<CMapTable.CMapId> cmapIds;
+  private CffTableSubsetter.SubroutineMode cffSubroutineMode =
+      CffTableSubsetter.SubroutineMode.KEEP;
 
   // inverse of mapping, computed lazily
   private Map<Integer, Integer> oldToNewGlyphs = null;
@@ -116,6 +118,16 @@ public class Subsetter {
     this.removeTables = new HashSet<Integer>(removeTables);
   }
 
+  /**
+   * Set how the subroutines of a CFF table are subset. By default the original
+   * subroutines called by the retained glyphs are kept.
+   *
+   * @param mode the subroutine mode
+   */
+  public void setCffSubroutineMode(CffTableSubsetter.SubroutineMode mode) {
+    this.cffSubroutineMode = mode;
+  }
+
   public Font.Builder subset() throws IOException {
     Font.Builder fontBuilder = this.fontFactory.newFontBuilder();
 
@@ -127,6 +139,10 @@ public class Subsetter {
     }
 
     for (TableSubsetter tableSubsetter : this.tableSubsetters) {
+      if (this.removeTables != null
+          && this.removeTables.containsAll(tableSubsetter.tagsHandled())) {
+        continue;
+      }
       boolean handled = tableSubsetter.subset(this, this.font, fontBuilder);
       if (handled) {
         tableTags.removeAll(tableSubsetter.tagsHandled());
@@ -166,10 +182,30 @@ public class Subsetter {
     return oldToNewGlyphs;
   }
 
+  /**
+   * Get the original glyph id of each glyph of the subset.
+   *
+   * @param font the font being subset
+   * @return the old glyph id for each new glyph id, or -1 for a glyph that is
+   *         kept as an empty placeholder
+   */
+  int[] oldGlyphIds(Font font) {
+    List<Integer> mapping = glyphMappingTable();
+    int[] oldGlyphIds = new int[mapping.size()];
+    for (int i = 0; i < oldGlyphIds.length; i++) {
+      oldGlyphIds[i] = mapping.get(i);
+    }
+    return oldGlyphIds;
+  }
+
   List<CMapTable.CMapId> cmapId() {
     return this.cmapIds;
   }
 
+  CffTableSubsetter.SubroutineMode cffSubroutineMode() {
+    return this.cffSubroutineMode;
+  }
+
   // A hook for subclasses to override, to set up tables.
   protected void setUpTables(Font.Builder fontBuilder) {
   }
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.cff.CffIndex;
+import com.google.typography.font.sfntly.table.cff.CffTable;
+
+/**
+ * Walks Type 2 charstrings, following subroutine calls. The interpreter only
+ * tracks what is needed to tokenize a charstring correctly: the operand stack,
+ * for subroutine numbers and stem hint counts, and the number of stem hints,
+ * which gives the length of hintmask and cntrmask operators. Arithmetic
+ * operators are not evaluated.
+ *
+ * @see "Adobe Technical Note #5177, The Type 2 Charstring Format"
+ */
+class Type2CharStringInterpreter {
+
+  interface Op {
+    int hstem = 1;
+    int vstem = 3;
+    int escape = 12;
+    int callsubr = 10;
+    int return_ = 11;
+    int endchar = 14;
+    int hstemhm = 18;
+    int hintmask = 19;
+    int cntrmask = 20;
+    int vstemhm = 23;
+    int shortint = 28;
+    int callgsubr = 29;
+    int fixed = 255;
+  }
+
+  private static final int MAX_STACK = 48;
+  private static final int MAX_NESTING = 10;
+
+  /**
+   * Receives the tokens of a charstring, with subroutine calls expanded.
+   */
+  interface Handler {
+    /**
+     * An operand.
+     *
+     * @param data the charstring or subroutine holding the operand
+     * @param offset the offset of the operand
+     * @param length the length of the operand in bytes
+     */
+    void operand(ReadableFontData data, int offset, int length);
+
+    /**
+     * An operator other than a subroutine call or return. The bytes of
+     * hintmask and cntrmask include the mask.
+     */
+    void operator(ReadableFontData data, int offset, int length);
+
+    /**
+     * A subroutine is about to be executed. Its number operand has already been
+     * reported and is removed from the stack.
+     *
+     * @param global whether the subroutine is a global subroutine
+     * @param index the index of the subroutine in its INDEX, with the bias
+     *        applied
+     */
+    void subroutine(boolean global, int index);
+  }
+
+  private final CffIndex globalSubrs;
+  private final CffIndex localSubrs;
+  private final int globalBias;
+  private final int localBias;
+
+  private final double[] stack = new double[MAX_STACK];
+  private int stackSize;
+  private int stemCount;
+  private boolean ended;
+  private int[] seacCodes;
+
+  /**
+   * Constructor.
+   *
+   * @param globalSubrs the global subroutines
+   * @param localSubrs the local subroutines of the glyphs interpreted; may be
+   *        null
+   */
+  Type2CharStringInterpreter(CffIndex globalSubrs, CffIndex localSubrs) {
+    this.globalSubrs = globalSubrs;
+    this.localSubrs = localSubrs;
+    this.globalBias = CffTable.subrBias(globalSubrs.count());
+    this.localBias = localSubrs == null ? 0 : CffTable.subrBias(localSubrs.count());
+  }
+
+  /**
+   * Interprets a glyph's charstring.
+   *
+   * @param charString the charstring
+   * @param handler the handler receiving the tokens
+   */
+  void interpret(ReadableFontData charString, Handler handler) {
+    this.stackSize = 0;
+    this.stemCount = 0;
+    this.ended = false;
+    this.seacCodes = null;
+    run(charString, handler, 0);
+  }
+
+  /**
+   * Gets the characters an accented character is drawn from. Like the Type 1
+   * seac operator, an endchar with the four operands adx ady bchar achar,
+   * besides an optional width, draws the base character bchar with the accent
+   * character achar.
+   *
+   * @return the StandardEncoding codes of the base and accent characters of the
+   *         last charstring interpreted, or null if it is not an accented
+   *         character
+   */
+  int[] seacCodes() {
+    return this.seacCodes;
+  }
+
+  private void run(ReadableFontData data, Handler handler, int depth) {
+    if (depth > MAX_NESTING) {
+      throw new IllegalStateException("Subroutine nesting too deep");
+    }
+    int index = 0;
+    while (index < data.length() && !this.ended) {
+      int b0 = data.readUByte(index);
+      if (b0 >= 32 || b0 == Op.shortint) {
+        int length = operandLength(b0);
+        push(operandValue(data, index, b0));
+        handler.operand(data, index, length);
+        index += length;
+        continue;
+      }
+      switch (b0) {
+        case Op.callsubr:
+        case Op.callgsubr: {
+          boolean global = b0 == Op.callgsubr;
+          CffIndex subrs = global ? this.globalSubrs : this.localSubrs;
+          if (subrs == null || this.stackSize == 0) {
+            throw new IllegalStateException("Invalid subroutine call");
+          }
+          int bias = global ? this.globalBias : this.localBias;
+          int subr = (int) this.stack[--this.stackSize] + bias;
+          handler.subroutine(global, subr);
+          run(subrs.item(subr), handler, depth + 1);
+          index++;
+          break;
+        }
+        case Op.return_:
+          return;
+        case Op.hstem:
+        case Op.vstem:
+        case Op.hstemhm:
+        case Op.vstemhm:
+          this.stemCount += this.stackSize / 2;
+          this.stackSize = 0;
+          handler.operator(data, index, 1);
+          index++;
+          break;
+        case Op.hintmask:
+        case Op.cntrmask: {
+          // operands before the first hintmask are an implicit vstem
+          this.stemCount += this.stackSize / 2;
+          this.stackSize = 0;
+          int length = 1 + (this.stemCount + 7) / 8;
+          handler.operator(data, index, length);
+          index += length;
+          break;
+        }
+        case Op.endchar:
+          if (this.stackSize == 4 || this.stackSize == 5) {
+            this.seacCodes = new int[] {
+                (int) this.stack[this.stackSize - 2], (int) this.stack[this.stackSize - 1]};
+          }
+          this.ended = true;
+          this.stackSize = 0;
+          handler.operator(data, index, 1);
+          index++;
+          break;
+        case Op.escape:
+          this.stackSize = 0;
+          handler.operator(data, index, 2);
+          index += 2;
+          break;
+        default:
+          this.stackSize = 0;
+          handler.operator(data, index, 1);
+          index++;
+          break;
+      }
+    }
+  }
+
+  private void push(double value) {
+    if (this.stackSize == MAX_STACK) {
+      throw new IllegalStateException("Charstring operand stack overflow");
+    }
+    this.stack[this.stackSize++] = value;
+  }
+
+  private static int operandLength(int b0) {
+    if (b0 == Op.shortint) {
+      return 3;
+    } else if (b0 <= 246) {
+      return 1;
+    } else if (b0 <= 254) {
+      return 2;
+    }
+    return 5;
+  }
+
+  private static double operandValue(ReadableFontData data, int index, int b0) {
+    if (b0 == Op.shortint) {
+      return data.readShort(index + 1);
+    } else if (b0 <= 246) {
+      return b0 - 139;
+    } else if (b0 <= 250) {
+      return (b0 - 247) * 256 + data.readUByte(index + 1) + 108;
+    } else if (b0 <= 254) {
+      return -(b0 - 251) * 256 - data.readUByte(index + 1) - 108;
+    }
+    return data.readLong(index + 1) / 65536.0;
+  }
+}
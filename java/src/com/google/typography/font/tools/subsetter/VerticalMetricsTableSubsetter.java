@@ -0,0 +1,56 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.table.core.VerticalMetricsTable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Subsetter for the vmtx table, the counterpart of
+ * {@link HorizontalMetricsTableSubsetter}.
+ */
+public class VerticalMetricsTableSubsetter extends TableSubsetterImpl {
+
+  protected VerticalMetricsTableSubsetter() {
+    // Note: doesn't actually create the vhea table, that should be done in the
+    // setUpTables method of the invoking subsetter.
+    super(Tag.vmtx, Tag.vhea);
+  }
+
+  @Override
+  public boolean subset(Subsetter subsetter, Font font, Font.Builder fontBuilder) {
+    List<Integer> permutationTable = subsetter.glyphMappingTable();
+    VerticalMetricsTable origMetrics = font.getTable(Tag.vmtx);
+    if (permutationTable == null || origMetrics == null
+        || fontBuilder.getTableBuilder(Tag.vhea) == null) {
+      return false;
+    }
+    List<VerticalMetricsTableBuilder.LongVerMetric> metrics =
+        new ArrayList<VerticalMetricsTableBuilder.LongVerMetric>();
+    for (int origGlyphId : permutationTable) {
+      int advanceHeight = origMetrics.advanceHeight(origGlyphId);
+      int tsb = origMetrics.topSideBearing(origGlyphId);
+      metrics.add(new VerticalMetricsTableBuilder.LongVerMetric(advanceHeight, tsb));
+    }
+    new VerticalMetricsTableBuilder(fontBuilder, metrics).build();
+    return true;
+  }
+}
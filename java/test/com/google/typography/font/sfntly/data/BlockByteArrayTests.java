@@ -0,0 +1,189 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.sfntly.data;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.core.CMapTable;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import com.google.typography.font.sfntly.testutils.TestUtils;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests for {@link BlockByteArray} and fonts loaded from a {@link BlockSource}.
+ */
+public class BlockByteArrayTests extends TestCase {
+
+  /**
+   * A block source over a byte array, recording the ranges read.
+   */
+  private static final class MemoryBlockSource implements BlockSource {
+    final byte[] data;
+    final List<long[]> reads = new ArrayList<long[]>();
+
+    MemoryBlockSource(int length) {
+      this.data = new byte[length];
+      new Random(length).nextBytes(this.data);
+    }
+
+    @Override
+    public long length() {
+      return data.length;
+    }
+
+    @Override
+    public synchronized byte[] readBlock(long offset, int length) {
+      reads.add(new long[] {offset, length});
+      return Arrays.copyOfRange(data, (int) offset, (int) offset + length);
+    }
+  }
+
+  public void testReads() {
+    MemoryBlockSource source = new MemoryBlockSource(10000);
+    BlockByteArray array = new BlockByteArray(source, source.data.length, 256, 8, 1);
+    assertEquals(source.data.length, array.length());
+    Random random = new Random(0);
+    for (int i = 0; i < 1000; i++) {
+      int index = random.nextInt(source.data.length);
+      assertEquals(source.data[index] & 0xff, array.get(index));
+      int length = random.nextInt(1000);
+      byte[] b = new byte[length];
+      int read = array.get(index, b);
+      assertEquals(Math.min(length, source.data.length - index), read);
+      assertTrue(Arrays.equals(Arrays.copyOfRange(source.data, index, index + read),
+          Arrays.copyOf(b, read)));
+    }
+    assertEquals(-1, array.get(source.data.length));
+  }
+
+  public void testReadAhead() {
+    MemoryBlockSource source = new MemoryBlockSource(1000);
+    BlockByteArray array = new BlockByteArray(source, source.data.length, 100, 10, 2);
+    array.get(150);
+    array.get(250);
+    array.get(399);
+    // the block and the two after it in one request
+    assertEquals(1, source.reads.size());
+    assertTrue(Arrays.equals(new long[] {100, 300}, source.reads.get(0)));
+
+    // read-ahead stops at a cached block
+    array.get(50);
+    assertTrue(Arrays.equals(new long[] {0, 100}, source.reads.get(1)));
+
+    // and at the end of the data
+    array.get(999);
+    assertTrue(Arrays.equals(new long[] {900, 100}, source.reads.get(2)));
+    assertEquals(3, source.reads.size());
+  }
+
+  public void testSpanningRead() {
+    MemoryBlockSource source = new MemoryBlockSource(1000);
+    BlockByteArray array = new BlockByteArray(source, source.data.length, 100, 10, 0);
+    array.get(450);
+    byte[] b = new byte[500];
+    array.get(150, b);
+    // the blocks before and after the cached one are read in one request,
+    // and the cached block is read again rather than split the request
+    assertEquals(2, source.reads.size());
+    assertTrue(Arrays.equals(new long[] {100, 600}, source.reads.get(1)));
+    assertTrue(Arrays.equals(Arrays.copyOfRange(source.data, 150, 650), b));
+  }
+
+  public void testCacheBound() {
+    MemoryBlockSource source = new MemoryBlockSource(1000);
+    BlockByteArray array = new BlockByteArray(source, source.data.length, 100, 2, 0);
+    array.get(0);
+    array.get(100);
+    array.get(0);
+    assertEquals(2, source.reads.size());
+    array.get(200);
+    array.get(300);
+    array.get(0);
+    assertEquals(5, source.reads.size());
+    assertTrue(Arrays.equals(new long[] {0, 100}, source.reads.get(4)));
+  }
+
+  public void testReadOnly() {
+    MemoryBlockSource source = new MemoryBlockSource(1000);
+    BlockByteArray array = new BlockByteArray(source, source.data.length, 100, 2, 0);
+    try {
+      array.put(0, (byte) 1);
+      fail();
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+  public void testSourceError() throws IOException {
+    ReadableFontData data = ReadableFontData.createReadableFontData(new BlockSource() {
+      @Override
+      public long length() {
+        return 1000;
+      }
+
+      @Override
+      public byte[] readBlock(long offset, int length) throws IOException {
+        throw new IOException("unavailable");
+      }
+    });
+    try {
+      data.readUShort(0);
+      fail();
+    } catch (RuntimeException e) {
+      assertTrue(e.getCause() instanceof IOException);
+    }
+  }
+
+  public void testLoadFont() throws IOException {
+    File file = TestFontNames.OPENSANS.getFile();
+    Font expected = TestFontUtils.loadFont(file)[0];
+    FileBlockSource source = new FileBlockSource(file);
+    try {
+      Font font = FontFactory.getInstance().loadFonts(source, 4096, 16, 0)[0];
+      // loading reads only the first block, which holds the table directory
+      assertEquals(4096, source.bytesRead());
+
+      CMapTable cmap = font.getTable(Tag.cmap);
+      assertEquals(((CMapTable) expected.getTable(Tag.cmap)).cmap(3, 1).glyphId('A'),
+          cmap.cmap(3, 1).glyphId('A'));
+      assertTrue(source.bytesRead() < file.length() / 10);
+
+      // reading the rest through the cache gives the same data
+      assertEquals(expected.tableMap().keySet(), font.tableMap().keySet());
+      for (Map.Entry<Integer, ? extends Table> entry : expected.tableMap().entrySet()) {
+        assertTrue(Tag.stringValue(entry.getKey()), Arrays.equals(
+            TestUtils.toBytes(entry.getValue().readFontData()),
+            TestUtils.toBytes(font.getTable(entry.getKey()).readFontData())));
+      }
+      assertEquals(expected.checksum(), font.checksum());
+    } finally {
+      source.close();
+    }
+  }
+}
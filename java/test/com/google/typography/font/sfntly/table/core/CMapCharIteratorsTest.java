@@ -1,11 +1,19 @@
 package com.google.typography.font.sfntly.table.core;
 
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+
 import junit.framework.TestCase;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 public class CMapCharIteratorsTest extends TestCase {
 
@@ -33,6 +41,20 @@ public class CMapCharIteratorsTest extends TestCase {
     assertEquals(Arrays.asList(0, 1, 2, 3, 4, 10, 0, 1, 2), toList(it));
   }
 
+  public void testCMapFormat4Iterator() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.OPENSANS.getFile())[0];
+    CMapTable cmapTable = font.getTable(Tag.cmap);
+    CMap cmap = cmapTable.cmap(CMapTable.CMapId.WINDOWS_BMP);
+    Set<Integer> iterated = new HashSet<Integer>(toList(cmap.iterator()));
+    // every mapped character, the last of each segment included
+    for (int c = 0; c <= 0xffff; c++) {
+      if (cmap.glyphId(c) != CMapTable.NOTDEF) {
+        assertTrue(Integer.toHexString(c), iterated.contains(c));
+      }
+    }
+    assertTrue(iterated.contains((int) 'H'));
+  }
+
   private static List<Integer> toList(Iterator<Integer> it) {
     List<Integer> list = new ArrayList<Integer>();
     while (it.hasNext()) {
@@ -18,6 +18,8 @@ package com.google.typography.font.sfntly.testutils;
 
 import com.google.typography.font.sfntly.data.ReadableFontData;
 
+import junit.framework.Assert;
+
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -214,6 +216,30 @@ public class TestUtils {
     return true;
   }
 
+  /**
+   * @param data the data
+   * @return a copy of the bytes of the data
+   */
+  public static byte[] toBytes(ReadableFontData data) {
+    byte[] b = new byte[data.length()];
+    data.readBytes(0, b, 0, b.length);
+    return b;
+  }
+
+  /**
+   * Asserts that two ReadableFontData are of the same length and hold the same
+   * bytes.
+   *
+   * @param expected the expected data
+   * @param actual the actual data
+   */
+  public static void assertDataEquals(ReadableFontData expected, ReadableFontData actual) {
+    Assert.assertEquals(expected.length(), actual.length());
+    for (int i = 0; i < expected.length(); i++) {
+      Assert.assertEquals("byte " + i, expected.readUByte(i), actual.readUByte(i));
+    }
+  }
+
   /**
    * Checks that both objects are equal as defined by the object itself. If one
    * is null then they are not equal. If both are null they are considered
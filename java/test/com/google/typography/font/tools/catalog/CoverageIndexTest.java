@@ -0,0 +1,181 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.catalog;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.table.core.CMap;
+import com.google.typography.font.sfntly.table.core.CMapTable;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests for {@link CoverageIndex}.
+ */
+public class CoverageIndexTest extends TestCase {
+
+  private static final File[] FONTS = {TestFontNames.OPENSANS.getFile(),
+      TestFontNames.DROIDSANS.getFile(), TestFontNames.ROBOTO.getFile()};
+
+  private static BitSet expectedCoverage(File file) throws IOException {
+    Font font = TestFontUtils.loadFont(file)[0];
+    CMap cmap = ((CMapTable) font.getTable(Tag.cmap)).cmap(
+        Font.PlatformId.Windows.value(), Font.WindowsEncodingId.UnicodeUCS2.value());
+    BitSet coverage = new BitSet();
+    for (int c : cmap) {
+      if (cmap.glyphId(c) != CMapTable.NOTDEF) {
+        coverage.set(c);
+      }
+    }
+    return coverage;
+  }
+
+  private static BitSet toBitSet(int[] ranges) {
+    BitSet set = new BitSet();
+    for (int i = 0; i < ranges.length; i += 2) {
+      assertTrue(ranges[i] <= ranges[i + 1]);
+      if (i > 0) {
+        // sorted, disjoint and not adjacent
+        assertTrue(ranges[i] > ranges[i - 1] + 1);
+      }
+      set.set(ranges[i], ranges[i + 1] + 1);
+    }
+    return set;
+  }
+
+  public void testCodepointRanges() throws IOException {
+    for (File file : FONTS) {
+      Font font = TestFontUtils.loadFont(file)[0];
+      int[] ranges = CoverageIndex.codepointRanges((CMapTable) font.getTable(Tag.cmap));
+      assertEquals(file.getName(), expectedCoverage(file), toBitSet(ranges));
+    }
+  }
+
+  public void testFonts() throws IOException {
+    CoverageIndex.Builder builder = new CoverageIndex.Builder();
+    for (File file : FONTS) {
+      assertEquals(1, builder.addFile(file));
+    }
+    File indexFile = File.createTempFile("coverage", ".cvx");
+    try {
+      builder.write(indexFile);
+      CoverageIndex index = CoverageIndex.open(indexFile);
+      assertEquals(FONTS.length, index.fontCount());
+      for (int font = 0; font < FONTS.length; font++) {
+        assertEquals(FONTS[font].getPath(), index.fontId(font));
+        BitSet expected = expectedCoverage(FONTS[font]);
+        for (int c = 0; c <= 0x10000; c++) {
+          assertEquals(Integer.toHexString(c), expected.get(c), index.covers(font, c));
+          assertEquals(expected.get(c), index.fontsCovering(c).get(font));
+        }
+      }
+    } finally {
+      indexFile.delete();
+    }
+  }
+
+  public void testMalformedFile() throws IOException {
+    // a cmap subtable count far beyond the end of the cmap table
+    File corrupt =
+        FontCatalogScannerTest.corruptCopy(TestFontNames.OPENSANS.getFile(), Tag.cmap, 2, 0xfff0);
+    try {
+      try {
+        new CoverageIndex.Builder().addFile(corrupt);
+        fail();
+      } catch (IOException e) {
+        assertTrue(e.getCause() instanceof RuntimeException);
+      }
+
+      CoverageIndex.Builder builder = new CoverageIndex.Builder();
+      Map<File, IOException> errors = new HashMap<File, IOException>();
+      builder.addFiles(Arrays.asList(corrupt, FONTS[0]), 2, errors);
+      assertEquals(1, builder.fontCount());
+      assertEquals(1, errors.size());
+      assertTrue(errors.containsKey(corrupt));
+      CoverageIndex index = builder.build();
+      assertEquals(FONTS[0].getPath(), index.fontId(0));
+      assertTrue(index.covers(0, 'A'));
+    } finally {
+      corrupt.delete();
+    }
+  }
+
+  public void testCoveringFonts() throws IOException {
+    CoverageIndex.Builder builder = new CoverageIndex.Builder();
+    builder.addFont("latin", new int[] {0x20, 0x7e});
+    builder.addFont("latin-cyrillic", new int[] {0x20, 0x7e, 0x400, 0x4ff});
+    builder.addFont("kana", new int[] {0x20, 0x20, 0x3041, 0x3096, 0x30a1, 0x30fa});
+    builder.addFont("emoji", new int[] {0x1f600, 0x1f64f});
+    CoverageIndex index = builder.build();
+
+    assertTrue(Arrays.equals(new int[] {0}, index.coveringFonts("Hello, world")));
+    assertTrue(Arrays.equals(new int[] {1, 2},
+        index.coveringFonts("Hello \u0416\u0436 \u3042")));
+    assertTrue(Arrays.equals(new int[] {2, 0}, index.coveringFonts("\u3042 a")));
+    assertTrue(Arrays.equals(new int[] {3},
+        index.coveringFonts(new String(Character.toChars(0x1f600)))));
+    // uncovered codepoints are ignored
+    assertTrue(Arrays.equals(new int[] {0}, index.coveringFonts("a\u0e01")));
+    assertEquals(0, index.coveringFonts("\u0e01").length);
+
+    BitSet space = new BitSet();
+    space.set(0, 3);
+    assertEquals(space, index.fontsCovering(' '));
+    assertTrue(index.covers(2, 0x3096));
+    assertFalse(index.covers(2, 0x3097));
+    assertFalse(index.covers(0, 0x7f));
+    assertFalse(index.covers(0, -1));
+    assertFalse(index.covers(0, 0x110000));
+  }
+
+  public void testManyFonts() throws IOException {
+    // more fonts than fit in one bitmap word, each covering a different range
+    CoverageIndex.Builder builder = new CoverageIndex.Builder();
+    for (int font = 0; font < 150; font++) {
+      builder.addFont("font" + font, new int[] {font * 10, font * 10 + 14});
+    }
+    CoverageIndex index = builder.build();
+    for (int c = 0; c < 1520; c++) {
+      BitSet fonts = index.fontsCovering(c);
+      for (int font = 0; font < 150; font++) {
+        boolean expected = c >= font * 10 && c <= font * 10 + 14;
+        assertEquals(expected, fonts.get(font));
+        assertEquals(expected, index.covers(font, c));
+      }
+    }
+    assertTrue(Arrays.equals(new int[] {101}, index.coveringFonts("\u03f2\u03f8")));
+  }
+
+  public void testNotAnIndex() {
+    try {
+      new CoverageIndex(ByteBuffer.wrap(new byte[64]));
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+  }
+}
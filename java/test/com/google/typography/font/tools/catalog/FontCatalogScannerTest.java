@@ -0,0 +1,224 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.catalog;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.core.CMap;
+import com.google.typography.font.sfntly.table.core.CMapTable;
+import com.google.typography.font.sfntly.table.core.FontHeaderTable;
+import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
+import com.google.typography.font.sfntly.table.core.NameTable;
+import com.google.typography.font.sfntly.table.core.OS2Table;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+
+import junit.framework.TestCase;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Tests for {@link FontCatalogScanner}, against the fully loaded fonts.
+ */
+public class FontCatalogScannerTest extends TestCase {
+
+  private static void assertEntry(File file, FontCatalogEntry entry) throws IOException {
+    Font font = TestFontUtils.loadFont(file)[0];
+    NameTable name = font.getTable(Tag.name);
+    String family = name.name(3, 1, 0x409, 16);
+    assertEquals(family != null ? family : name.name(3, 1, 0x409, 1), entry.family());
+    String style = name.name(3, 1, 0x409, 17);
+    assertEquals(style != null ? style : name.name(3, 1, 0x409, 2), entry.style());
+    assertEquals(((OS2Table) font.getTable(Tag.OS_2)).usWeightClass(), entry.weight());
+    FontHeaderTable head = font.getTable(Tag.head);
+    assertEquals(head.unitsPerEm(), entry.unitsPerEm());
+    assertEquals(head.macStyleAsInt(), entry.macStyle());
+    assertEquals(((MaximumProfileTable) font.getTable(Tag.maxp)).numGlyphs(), entry.glyphCount());
+    assertEquals(new TreeSet<Integer>(font.tableMap().keySet()), entry.tables());
+
+    CMapTable cmapTable = font.getTable(Tag.cmap);
+    List<CMapTable.CMapId> ids = new ArrayList<CMapTable.CMapId>();
+    for (CMap cmap : cmapTable) {
+      ids.add(cmap.cmapId());
+      assertEquals(Integer.valueOf(cmap.format()), entry.cmapFormats().get(cmap.cmapId()));
+    }
+    assertEquals(ids, new ArrayList<CMapTable.CMapId>(entry.cmapFormats().keySet()));
+  }
+
+  private static byte[] readFile(File file) throws IOException {
+    byte[] b = new byte[(int) file.length()];
+    DataInputStream is = new DataInputStream(new FileInputStream(file));
+    try {
+      is.readFully(b);
+    } finally {
+      is.close();
+    }
+    return b;
+  }
+
+  /**
+   * Writes a copy of a font file with one ushort of a table overwritten.
+   *
+   * @return the temporary file of the copy
+   */
+  static File corruptCopy(File file, int tag, int offset, int value) throws IOException {
+    WritableFontData font = WritableFontData.createWritableFontData(readFile(file));
+    int numTables = font.readUShort(4);
+    for (int t = 0; t < numTables; t++) {
+      int record = 12 + 16 * t;
+      if (font.readULongAsInt(record) == tag) {
+        font.writeUShort(font.readULongAsInt(record + 8) + offset, value);
+      }
+    }
+    File copy = File.createTempFile("corrupt", ".ttf");
+    FileOutputStream os = new FileOutputStream(copy);
+    try {
+      font.copyTo(os);
+    } finally {
+      os.close();
+    }
+    return copy;
+  }
+
+  public void testScan() throws IOException {
+    FontCatalogScanner scanner = new FontCatalogScanner();
+    File[] files = {TestFontNames.OPENSANS.getFile(), TestFontNames.DROIDSANS.getFile(),
+        TestFontNames.ROBOTO.getFile()};
+    for (File file : files) {
+      List<FontCatalogEntry> entries = scanner.scan(file);
+      assertEquals(1, entries.size());
+      assertEquals(file, entries.get(0).file());
+      assertEquals(0, entries.get(0).index());
+      assertEntry(file, entries.get(0));
+    }
+  }
+
+  public void testScanFiles() throws IOException {
+    File missing = new File(TestFontNames.OPENSANS.getFile().getParentFile(), "Missing.ttf");
+    File notFont = File.createTempFile("catalog", ".ttf");
+    try {
+      FileOutputStream os = new FileOutputStream(notFont);
+      try {
+        os.write(new byte[] {'n', 'o', 't', ' ', 'a', ' ', 'f', 'o', 'n', 't', 0, 0, 0, 0});
+      } finally {
+        os.close();
+      }
+      FontCatalogScanner scanner = new FontCatalogScanner();
+      scanner.setThreads(2);
+      List<File> files = Arrays.asList(TestFontNames.ROBOTO.getFile(), missing, notFont,
+          TestFontNames.OPENSANS.getFile());
+      Map<File, IOException> errors = new HashMap<File, IOException>();
+      List<FontCatalogEntry> entries = scanner.scan(files, errors);
+      assertEquals(2, entries.size());
+      assertEquals(TestFontNames.ROBOTO.getFile(), entries.get(0).file());
+      assertEquals(TestFontNames.OPENSANS.getFile(), entries.get(1).file());
+      assertEquals(2, errors.size());
+      assertTrue(errors.containsKey(missing));
+      assertTrue(errors.containsKey(notFont));
+    } finally {
+      notFont.delete();
+    }
+  }
+
+  public void testMalformedFile() throws IOException {
+    // a name record count far beyond the end of the name table
+    File corrupt = corruptCopy(TestFontNames.OPENSANS.getFile(), Tag.name, 2, 0xfff0);
+    try {
+      FontCatalogScanner scanner = new FontCatalogScanner();
+      try {
+        scanner.scan(corrupt);
+        fail();
+      } catch (IOException e) {
+        assertTrue(e.getCause() instanceof IndexOutOfBoundsException);
+      }
+
+      Map<File, IOException> errors = new HashMap<File, IOException>();
+      List<FontCatalogEntry> entries =
+          scanner.scan(Arrays.asList(corrupt, TestFontNames.ROBOTO.getFile()), errors);
+      assertEquals(1, entries.size());
+      assertEquals(TestFontNames.ROBOTO.getFile(), entries.get(0).file());
+      assertEquals(1, errors.size());
+      assertTrue(errors.containsKey(corrupt));
+    } finally {
+      corrupt.delete();
+    }
+  }
+
+  public void testScanCollection() throws IOException {
+    File file = TestFontNames.OPENSANS.getFile();
+    byte[] ttf = readFile(file);
+
+    // a collection of the font twice, with the tables shared
+    WritableFontData font = WritableFontData.createWritableFontData(ttf);
+    int numTables = font.readUShort(4);
+    int directorySize = 12 + 16 * numTables;
+    int headerSize = 12 + 4 * 2;
+    int shift = headerSize + directorySize;
+    WritableFontData ttc =
+        WritableFontData.createWritableFontData(ttf.length + headerSize + directorySize);
+    ttc.writeULong(0, Tag.ttcf);
+    ttc.writeULong(4, 0x00010000);
+    ttc.writeULong(8, 2);
+    for (int i = 0; i < 2; i++) {
+      int directory = headerSize + i * directorySize;
+      ttc.writeULong(12 + 4 * i, directory);
+      ttc.writeBytes(directory, ttf, 0, directorySize);
+      for (int t = 0; t < numTables; t++) {
+        int record = directory + 12 + 16 * t + 8;
+        ttc.writeULong(record, ttc.readULong(record) + shift);
+      }
+    }
+    ttc.writeBytes(headerSize + 2 * directorySize, ttf, directorySize,
+        ttf.length - directorySize);
+
+    File ttcFile = File.createTempFile("catalog", ".ttc");
+    try {
+      FileOutputStream os = new FileOutputStream(ttcFile);
+      try {
+        ttc.copyTo(os);
+      } finally {
+        os.close();
+      }
+      List<FontCatalogEntry> entries = new FontCatalogScanner().scan(ttcFile);
+      assertEquals(2, entries.size());
+      for (int i = 0; i < 2; i++) {
+        assertEquals(i, entries.get(i).index());
+        assertEntry(file, entries.get(i));
+      }
+    } finally {
+      ttcFile.delete();
+    }
+  }
+
+  public void testFindFonts() {
+    List<File> fonts =
+        FontCatalogScanner.findFonts(TestFontNames.OPENSANS.getFile().getParentFile());
+    assertTrue(fonts.contains(TestFontNames.OPENSANS.getFile()));
+    assertTrue(fonts.contains(TestFontNames.ROBOTO.getFile()));
+  }
+}
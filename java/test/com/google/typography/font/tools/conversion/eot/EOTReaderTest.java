@@ -0,0 +1,159 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.eot;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import com.google.typography.font.sfntly.testutils.TestUtils;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Tests for {@link EOTReader}, on the output of {@link EOTWriter}.
+ */
+public class EOTReaderTest extends TestCase {
+
+  private static final long FLAGS_XOR_ENCRYPT_DATA = 0x10000000;
+
+  private static byte[] convert(Font font, boolean compressed) throws IOException {
+    return TestUtils.toBytes(new EOTWriter(compressed).convert(font));
+  }
+
+  private static Font read(byte[] eot) throws IOException {
+    return new EOTReader().read(FontFactory.getInstance(), eot).build();
+  }
+
+  /**
+   * Checks that the fonts have the same tables, and the same glyphs down to
+   * the values their instructions push.
+   */
+  private static void assertSameFont(Font expected, Font actual) {
+    for (Map.Entry<Integer, ? extends Table> entry : expected.tableMap().entrySet()) {
+      int tag = entry.getKey();
+      if (tag == Tag.glyf || tag == Tag.loca || tag == Tag.head || tag == Tag.VDMX) {
+        continue;
+      }
+      assertTrue(Tag.stringValue(tag), Arrays.equals(TestUtils.toBytes(entry.getValue().readFontData()),
+          TestUtils.toBytes(actual.getTable(tag).readFontData())));
+    }
+    GlyfEncoder expectedGlyf = new GlyfEncoder();
+    expectedGlyf.encode(expected);
+    GlyfEncoder actualGlyf = new GlyfEncoder();
+    actualGlyf.encode(actual);
+    assertTrue(Arrays.equals(expectedGlyf.getGlyfBytes(), actualGlyf.getGlyfBytes()));
+    assertTrue(Arrays.equals(expectedGlyf.getPushBytes(), actualGlyf.getPushBytes()));
+    assertTrue(Arrays.equals(expectedGlyf.getCodeBytes(), actualGlyf.getCodeBytes()));
+  }
+
+  private static void assertRoundTrip(File fontFile, boolean compressed) throws IOException {
+    Font srcFont = TestFontUtils.loadFont(fontFile)[0];
+    assertSameFont(srcFont, read(convert(srcFont, compressed)));
+  }
+
+  public void testUncompressed() throws IOException {
+    assertRoundTrip(TestFontNames.OPENSANS.getFile(), false);
+  }
+
+  public void testCompressed() throws IOException {
+    assertRoundTrip(TestFontNames.OPENSANS.getFile(), true);
+    // with cvt, hdmx and glyphs with instructions
+    assertRoundTrip(TestFontNames.DROIDSANS.getFile(), true);
+  }
+
+  public void testXorEncrypted() throws IOException {
+    Font srcFont = TestFontUtils.loadFont(TestFontNames.OPENSANS.getFile())[0];
+    WritableFontData eot = WritableFontData.createWritableFontData(convert(srcFont, true));
+    eot.writeULongLE(12, eot.readULongLE(12) | FLAGS_XOR_ENCRYPT_DATA);
+    int fontDataSize = (int) eot.readULongLE(4);
+    for (int i = eot.length() - fontDataSize; i < eot.length(); i++) {
+      eot.writeByte(i, (byte) (eot.readUByte(i) ^ 0x50));
+    }
+    assertSameFont(srcFont, read(TestUtils.toBytes(eot)));
+  }
+
+  public void testFontFactory() throws IOException {
+    Font srcFont = TestFontUtils.loadFont(TestFontNames.DROIDSANS.getFile())[0];
+    byte[] eot = convert(srcFont, true);
+    FontFactory factory = FontFactory.getInstance();
+    factory.addContainerDecoder(new EOTReader());
+    int numGlyphs = ((MaximumProfileTable) srcFont.getTable(Tag.maxp)).numGlyphs();
+
+    Font[] fonts = factory.loadFonts(eot);
+    assertEquals(1, fonts.length);
+    assertEquals(numGlyphs, ((MaximumProfileTable) fonts[0].getTable(Tag.maxp)).numGlyphs());
+    fonts = factory.loadFonts(new ByteArrayInputStream(eot));
+    assertEquals(1, fonts.length);
+    assertSameFont(srcFont, fonts[0]);
+
+    // sfnt fonts still load as before
+    fonts = factory.loadFonts(new FileInputStream(TestFontNames.DROIDSANS.getFile()));
+    assertEquals(1, fonts.length);
+    assertSameFont(srcFont, fonts[0]);
+  }
+
+  public void testNotEot() throws IOException {
+    EOTReader reader = new EOTReader();
+    File file = TestFontNames.OPENSANS.getFile();
+    byte[] ttf = new byte[(int) file.length()];
+    DataInputStream is = new DataInputStream(new FileInputStream(file));
+    try {
+      is.readFully(ttf);
+    } finally {
+      is.close();
+    }
+    assertFalse(reader.recognizes(Arrays.copyOf(ttf, reader.headerSize())));
+    try {
+      reader.read(FontFactory.getInstance(), ttf);
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
+  public void testTruncated() throws IOException {
+    Font srcFont = TestFontUtils.loadFont(TestFontNames.OPENSANS.getFile())[0];
+    byte[] eot = convert(srcFont, true);
+    try {
+      read(Arrays.copyOf(eot, eot.length - 1));
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+    // the last byte of the third block holds at least one bit of it
+    byte[] mtx = new MtxWriter().compress(srcFont);
+    try {
+      new MtxReader().decompress(FontFactory.getInstance(), Arrays.copyOf(mtx, mtx.length - 1));
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+  }
+}
@@ -25,6 +25,11 @@ import junit.framework.TestCase;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * @author Raph Levien
@@ -42,4 +47,41 @@ public class EOTWriterTest extends TestCase {
     assertEquals(EOT_VERSION, eotData.readULongLE(8));
     // TODO: more sanity-checking and validation
   }
+
+  public void testParallelMtx() throws Exception {
+    Font srcFont = TestFontUtils.loadFont(fontFile)[0];
+    byte[] expected = new MtxWriter().compress(srcFont);
+
+    GlyfEncoder glyfEncoder = new GlyfEncoder();
+    glyfEncoder.encode(srcFont);
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      GlyfEncoder rangeEncoder = new GlyfEncoder();
+      rangeEncoder.encode(srcFont, executor, 7);
+      assertTrue(Arrays.equals(glyfEncoder.getGlyfBytes(), rangeEncoder.getGlyfBytes()));
+      assertTrue(Arrays.equals(glyfEncoder.getPushBytes(), rangeEncoder.getPushBytes()));
+      assertTrue(Arrays.equals(glyfEncoder.getCodeBytes(), rangeEncoder.getCodeBytes()));
+
+      MtxWriter mtxWriter = new MtxWriter(LzcompCompress.DEFAULT_MAX_CHAIN_LENGTH, executor);
+      assertTrue(Arrays.equals(expected, mtxWriter.compress(srcFont)));
+    } finally {
+      executor.shutdown();
+    }
+
+    // the calling thread does the work the executor doesn't get to
+    ExecutorService single = Executors.newSingleThreadExecutor();
+    try {
+      final MtxWriter mtxWriter = new MtxWriter(LzcompCompress.DEFAULT_MAX_CHAIN_LENGTH, single);
+      final Font font = srcFont;
+      Future<byte[]> nested = single.submit(new Callable<byte[]>() {
+        @Override
+        public byte[] call() {
+          return mtxWriter.compress(font);
+        }
+      });
+      assertTrue(Arrays.equals(expected, nested.get()));
+    } finally {
+      single.shutdown();
+    }
+  }
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.eot;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Compares the speed and output size of {@link LzcompCompress} at several
+ * chain lengths with the original implementation, on the encoded glyph
+ * outlines and instructions of the test fonts, or of the font files given as
+ * arguments.
+ */
+public class LzcompBenchmark {
+
+  private static final int WARMUP_ROUNDS = 3;
+  private static final int ROUNDS = 10;
+  private static final int[] CHAIN_LENGTHS = {LzcompCompress.DEFAULT_MAX_CHAIN_LENGTH, 64, 16};
+
+  private interface Compressor {
+    byte[] compress(byte[] data);
+  }
+
+  public static void main(String[] args) throws IOException {
+    File[] files;
+    if (args.length > 0) {
+      files = new File[args.length];
+      for (int i = 0; i < args.length; i++) {
+        files[i] = new File(args[i]);
+      }
+    } else {
+      TestFontNames[] names = TestFontNames.values();
+      files = new File[names.length];
+      for (int i = 0; i < names.length; i++) {
+        files[i] = names[i].getFile();
+      }
+    }
+    for (File file : files) {
+      Font font = TestFontUtils.loadFont(file)[0];
+      GlyfEncoder glyfEncoder = new GlyfEncoder();
+      glyfEncoder.encode(font);
+      byte[][] blocks = {glyfEncoder.getGlyfBytes(), glyfEncoder.getCodeBytes()};
+      System.out.println(file.getName());
+      run("  original", blocks, new Compressor() {
+        @Override
+        public byte[] compress(byte[] data) {
+          return LegacyLzcompCompress.compress(data);
+        }
+      });
+      for (final int chainLength : CHAIN_LENGTHS) {
+        run("  chains " + chainLength, blocks, new Compressor() {
+          @Override
+          public byte[] compress(byte[] data) {
+            return LzcompCompress.compress(data, chainLength);
+          }
+        });
+      }
+    }
+  }
+
+  private static void run(String name, byte[][] blocks, Compressor compressor) {
+    int inputSize = 0;
+    int outputSize = 0;
+    for (byte[] block : blocks) {
+      inputSize += block.length;
+      outputSize += compressor.compress(block).length;
+    }
+    for (int i = 1; i < WARMUP_ROUNDS; i++) {
+      for (byte[] block : blocks) {
+        compressor.compress(block);
+      }
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < ROUNDS; i++) {
+      for (byte[] block : blocks) {
+        compressor.compress(block);
+      }
+    }
+    double millis = (System.nanoTime() - start) / 1e6 / ROUNDS;
+    System.out.printf("%s: %d -> %d bytes, %.1f ms, %.2f MB/s%n", name, inputSize, outputSize,
+        millis, inputSize / 1e3 / millis);
+  }
+}
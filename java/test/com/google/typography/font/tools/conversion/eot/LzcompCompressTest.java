@@ -0,0 +1,89 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.eot;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import com.google.typography.font.sfntly.testutils.TestUtils;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests for {@link LzcompCompress}, against the output of the original
+ * implementation.
+ */
+public class LzcompCompressTest extends TestCase {
+
+  private static void assertSameOutput(byte[] data) {
+    assertTrue(Arrays.equals(LegacyLzcompCompress.compress(data), LzcompCompress.compress(data)));
+  }
+
+  public void testSmallInputs() {
+    assertSameOutput(new byte[0]);
+    assertSameOutput(new byte[] {42});
+    assertSameOutput(new byte[] {1, 2, 1, 2, 1, 2, 1, 2, 3});
+  }
+
+  public void testRandomInput() {
+    byte[] data = new byte[20000];
+    new Random(1).nextBytes(data);
+    assertSameOutput(data);
+  }
+
+  public void testRepetitiveInput() {
+    // long chains for few byte pairs, beyond the search limit
+    byte[] data = new byte[50000];
+    Random random = new Random(2);
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) (random.nextInt(3) * 7);
+    }
+    assertSameOutput(data);
+  }
+
+  public void testFontTables() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.OPENSANS.getFile())[0];
+    assertSameOutput(TestUtils.toBytes(font.getTable(Tag.hmtx).readFontData()));
+    GlyfEncoder glyfEncoder = new GlyfEncoder();
+    glyfEncoder.encode(font);
+    assertSameOutput(glyfEncoder.getGlyfBytes());
+    assertSameOutput(glyfEncoder.getCodeBytes());
+  }
+
+  public void testChainLength() {
+    byte[] data = new byte[50000];
+    Random random = new Random(3);
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) random.nextInt(4);
+    }
+    byte[] full = LzcompCompress.compress(data);
+    byte[] fast = LzcompCompress.compress(data, 4);
+    assertTrue(fast.length > 0);
+    assertFalse(Arrays.equals(full, fast));
+    try {
+      LzcompCompress.compress(data, 0);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
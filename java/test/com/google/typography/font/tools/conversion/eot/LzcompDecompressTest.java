@@ -0,0 +1,84 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.eot;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import com.google.typography.font.sfntly.testutils.TestUtils;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests for {@link LzcompDecompress}, on the output of {@link LzcompCompress}.
+ */
+public class LzcompDecompressTest extends TestCase {
+
+  private static void assertRoundTrip(byte[] data) throws IOException {
+    assertTrue(Arrays.equals(data, LzcompDecompress.decompress(LzcompCompress.compress(data))));
+  }
+
+  public void testSmallInputs() throws IOException {
+    assertRoundTrip(new byte[0]);
+    assertRoundTrip(new byte[] {42});
+    assertRoundTrip(new byte[] {1, 2, 1, 2, 1, 2, 1, 2, 3});
+  }
+
+  public void testRandomInput() throws IOException {
+    byte[] data = new byte[20000];
+    new Random(1).nextBytes(data);
+    assertRoundTrip(data);
+  }
+
+  public void testRepetitiveInput() throws IOException {
+    // long copies, some of them overlapping themselves
+    byte[] data = new byte[50000];
+    Random random = new Random(2);
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) (random.nextInt(3) * 7);
+    }
+    assertRoundTrip(data);
+    Arrays.fill(data, (byte) 5);
+    assertRoundTrip(data);
+  }
+
+  public void testFontTables() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.OPENSANS.getFile())[0];
+    assertRoundTrip(TestUtils.toBytes(font.getTable(Tag.hmtx).readFontData()));
+    GlyfEncoder glyfEncoder = new GlyfEncoder();
+    glyfEncoder.encode(font);
+    assertRoundTrip(glyfEncoder.getGlyfBytes());
+    assertRoundTrip(glyfEncoder.getPushBytes());
+  }
+
+  public void testTruncated() {
+    byte[] data = new byte[1000];
+    new Random(3).nextBytes(data);
+    byte[] compressed = LzcompCompress.compress(data);
+    try {
+      LzcompDecompress.decompress(compressed, 0, compressed.length / 2);
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.woff;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import com.google.typography.font.sfntly.testutils.TestUtils;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Tests for the {@link CompressionStrategy} implementations.
+ */
+public class CompressionStrategyTest extends TestCase {
+
+  private static final int WOFF_HEADER_SIZE = 44;
+  private static final int WOFF_ENTRY_SIZE = 20;
+
+  private static byte[] inflate(byte[] compressed, int length) throws DataFormatException {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(compressed);
+      byte[] result = new byte[length];
+      int inflated = inflater.inflate(result);
+      assertTrue(inflater.finished());
+      assertEquals(length, inflated);
+      return result;
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static void assertRoundTrip(CompressionStrategy strategy, byte[] data)
+      throws DataFormatException {
+    byte[] compressed = strategy.compress(Tag.glyf, data);
+    assertTrue(Arrays.equals(data, inflate(compressed, data.length)));
+  }
+
+  private static byte[] tableData(Font font, int tag) {
+    return TestUtils.toBytes(font.getTable(tag).readFontData());
+  }
+
+  public void testRoundTrip() throws IOException, DataFormatException {
+    Font font = TestFontUtils.loadFont(TestFontNames.OPENSANS.getFile())[0];
+    byte[] random = new byte[10000];
+    new Random(42).nextBytes(random);
+    byte[] repeated = new byte[70000];
+    Arrays.fill(repeated, (byte) 'a');
+    CompressionStrategy[] strategies = {
+        new PooledDeflaterStrategy(),
+        new PooledDeflaterStrategy(1),
+        new ExhaustiveDeflateStrategy(3, 64)};
+    for (CompressionStrategy strategy : strategies) {
+      for (Table table : font.tableMap().values()) {
+        assertRoundTrip(strategy, TestUtils.toBytes(table.readFontData()));
+      }
+      assertRoundTrip(strategy, new byte[0]);
+      assertRoundTrip(strategy, new byte[] {7});
+      assertRoundTrip(strategy, random);
+      assertRoundTrip(strategy, repeated);
+    }
+  }
+
+  public void testExhaustiveIsSmaller() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.OPENSANS.getFile())[0];
+    byte[] glyf = tableData(font, Tag.glyf);
+    byte[] zlib = new PooledDeflaterStrategy(Deflater.BEST_COMPRESSION).compress(Tag.glyf, glyf);
+    byte[] exhaustive = new ExhaustiveDeflateStrategy(5, 256).compress(Tag.glyf, glyf);
+    assertTrue(exhaustive.length < zlib.length);
+    // never larger, even where the optimal parse gains nothing
+    byte[] head = tableData(font, Tag.head);
+    assertTrue(new ExhaustiveDeflateStrategy().compress(Tag.head, head).length
+        <= new PooledDeflaterStrategy(Deflater.BEST_COMPRESSION).compress(Tag.head, head).length);
+  }
+
+  public void testCodeLengthsAreLimited() {
+    // Fibonacci frequencies make the deepest Huffman tree
+    int[] freq = new int[30];
+    freq[0] = 1;
+    freq[1] = 1;
+    for (int i = 2; i < freq.length; i++) {
+      freq[i] = freq[i - 1] + freq[i - 2];
+    }
+    int[] lengths = ExhaustiveDeflater.codeLengths(freq, 7);
+    double kraft = 0;
+    for (int length : lengths) {
+      assertTrue(length >= 1 && length <= 7);
+      kraft += Math.pow(2, -length);
+    }
+    assertEquals(1.0, kraft, 1e-9);
+  }
+
+  public void testWoffWriter() throws IOException, DataFormatException {
+    Font font = TestFontUtils.loadFont(TestFontNames.OPENSANS.getFile())[0];
+    PooledDeflaterStrategy pooled = new PooledDeflaterStrategy();
+    WritableFontData woff = new WoffWriter(pooled).convert(font);
+    pooled.end();
+    int numTables = woff.readUShort(12);
+    // all but the signature, which the conversion invalidates
+    assertEquals(font.numTables() - (font.hasTable(Tag.DSIG) ? 1 : 0), numTables);
+    for (int i = 0; i < numTables; i++) {
+      int entry = WOFF_HEADER_SIZE + WOFF_ENTRY_SIZE * i;
+      int tag = woff.readULongAsInt(entry);
+      int offset = woff.readULongAsInt(entry + 4);
+      int compLength = woff.readULongAsInt(entry + 8);
+      int origLength = woff.readULongAsInt(entry + 12);
+      byte[] stored = TestUtils.toBytes(woff.slice(offset, compLength));
+      byte[] data = compLength < origLength ? inflate(stored, origLength) : stored;
+      assertTrue(Tag.stringValue(tag), Arrays.equals(tableData(font, tag), data));
+    }
+  }
+
+  public void testCaching() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.OPENSANS.getFile())[0];
+    CachingCompressionStrategy cache =
+        new CachingCompressionStrategy(new PooledDeflaterStrategy(), 1 << 20);
+    byte[] first = TestUtils.toBytes(new WoffWriter(cache).convert(font));
+    long misses = cache.missCount();
+    assertEquals(0, cache.hitCount());
+    assertEquals(misses, cache.entryCount());
+    byte[] second = TestUtils.toBytes(new WoffWriter(cache).convert(font));
+    assertTrue(Arrays.equals(first, second));
+    assertEquals(misses, cache.hitCount());
+    assertEquals(misses, cache.missCount());
+    assertTrue(Arrays.equals(first, TestUtils.toBytes(new WoffWriter().convert(font))));
+
+    // the same data under another tag is another entry
+    byte[] name = tableData(font, Tag.name);
+    cache.compress(Tag.post, name);
+    assertEquals(misses + 1, cache.missCount());
+  }
+
+  public void testCacheEviction() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.OPENSANS.getFile())[0];
+    byte[] glyf = tableData(font, Tag.glyf);
+    byte[] name = tableData(font, Tag.name);
+    byte[] post = tableData(font, Tag.post);
+    PooledDeflaterStrategy pooled = new PooledDeflaterStrategy();
+    CachingCompressionStrategy cache = new CachingCompressionStrategy(pooled, Long.MAX_VALUE);
+    cache.compress(Tag.name, name);
+    cache.compress(Tag.post, post);
+    // room for exactly these two
+    long limit = cache.size();
+    cache = new CachingCompressionStrategy(pooled, limit);
+    cache.compress(Tag.name, name);
+    cache.compress(Tag.post, post);
+    assertEquals(2, cache.entryCount());
+    assertEquals(limit, cache.size());
+    // too large to hold at all
+    cache.compress(Tag.glyf, glyf);
+    assertEquals(2, cache.entryCount());
+    // name is used more recently, so post is evicted for head
+    cache.compress(Tag.name, name);
+    cache.compress(Tag.head, tableData(font, Tag.head));
+    assertTrue(cache.size() <= limit);
+    long misses = cache.missCount();
+    cache.compress(Tag.name, name);
+    assertEquals(misses, cache.missCount());
+    cache.compress(Tag.post, post);
+    assertEquals(misses + 1, cache.missCount());
+
+    cache.clear();
+    assertEquals(0, cache.entryCount());
+    assertEquals(0, cache.size());
+  }
+
+  public void testInvalidArguments() {
+    try {
+      new PooledDeflaterStrategy(10);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      new ExhaustiveDeflateStrategy(0, 1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      new CachingCompressionStrategy(new PooledDeflaterStrategy(), -1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.conversion.woff;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+/**
+ * Tests for {@link DictionaryCompressionStrategy} and
+ * {@link DictionaryTrainer}.
+ */
+public class DictionaryCompressionTest extends TestCase {
+
+  private static final int DICTIONARY_SIZE = 16384;
+
+  private static byte[] tableData(Table table) {
+    byte[] b = new byte[table.dataLength()];
+    table.readFontData().readBytes(0, b, 0, b.length);
+    return b;
+  }
+
+  private static byte[] trainDictionary() throws IOException {
+    DictionaryTrainer trainer = new DictionaryTrainer();
+    trainer.addFont(TestFontUtils.loadFont(TestFontNames.OPENSANS.getFile())[0]);
+    trainer.addFont(TestFontUtils.loadFont(TestFontNames.DROIDSANS.getFile())[0]);
+    trainer.addFont(TestFontUtils.loadFont(TestFontNames.ROBOTO.getFile())[0]);
+    return trainer.train(DICTIONARY_SIZE);
+  }
+
+  public void testTrain() throws IOException {
+    byte[] dictionary = trainDictionary();
+    assertTrue(dictionary.length > 0);
+    assertTrue(dictionary.length <= DICTIONARY_SIZE);
+    assertTrue(Arrays.equals(dictionary, trainDictionary()));
+
+    // nothing is shared by a single sample
+    DictionaryTrainer trainer = new DictionaryTrainer();
+    trainer.addSample(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10});
+    assertEquals(0, trainer.train(DICTIONARY_SIZE).length);
+  }
+
+  public void testRoundTrip() throws IOException, DataFormatException {
+    byte[] dictionary = trainDictionary();
+    DictionaryCompressionStrategy withDictionary = new DictionaryCompressionStrategy(dictionary);
+    PooledDeflaterStrategy without = new PooledDeflaterStrategy(9);
+    Font font = TestFontUtils.loadFont(TestFontNames.OPENSANS.getFile())[0];
+    int sizeWith = 0;
+    int sizeWithout = 0;
+    for (Table table : font.tableMap().values()) {
+      byte[] data = tableData(table);
+      byte[] compressed = withDictionary.compress(table.headerTag(), data);
+      sizeWith += compressed.length;
+      sizeWithout += without.compress(table.headerTag(), data).length;
+      assertTrue(Tag.stringValue(table.headerTag()), Arrays.equals(data,
+          DictionaryCompressionStrategy.decompress(compressed, data.length, dictionary)));
+    }
+    assertTrue(sizeWith < sizeWithout);
+  }
+
+  public void testWrongDictionary() throws IOException {
+    byte[] dictionary = trainDictionary();
+    Font font = TestFontUtils.loadFont(TestFontNames.OPENSANS.getFile())[0];
+    byte[] data = tableData(font.getTable(Tag.name));
+    byte[] compressed = new DictionaryCompressionStrategy(dictionary).compress(Tag.name, data);
+    byte[] other = Arrays.copyOf(dictionary, dictionary.length - 1);
+    assertTrue(new DictionaryCompressionStrategy(other).dictionaryId()
+        != new DictionaryCompressionStrategy(dictionary).dictionaryId());
+    try {
+      DictionaryCompressionStrategy.decompress(compressed, data.length, other);
+      fail();
+    } catch (DataFormatException e) {
+      // expected
+    }
+  }
+
+  public void testSignature() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.OPENSANS.getFile())[0];
+    DictionaryCompressionStrategy strategy = new DictionaryCompressionStrategy(trainDictionary());
+    WritableFontData variant = new WoffWriter(strategy).convert(font);
+    assertEquals(DictionaryCompressionStrategy.SIGNATURE, variant.readULong(0));
+    assertTrue(DictionaryCompressionStrategy.isDictionaryWoff(variant));
+
+    // a caching strategy reports the preset dictionary of the strategy it wraps
+    WritableFontData cached =
+        new WoffWriter(new CachingCompressionStrategy(strategy, 1 << 20)).convert(font);
+    assertTrue(DictionaryCompressionStrategy.isDictionaryWoff(cached));
+
+    WritableFontData woff = new WoffWriter().convert(font);
+    assertEquals(0x774F4646, woff.readULong(0));
+    assertFalse(DictionaryCompressionStrategy.isDictionaryWoff(woff));
+  }
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.instancer;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.core.HorizontalMetricsTable;
+import com.google.typography.font.sfntly.table.core.OS2Table;
+import com.google.typography.font.sfntly.table.truetype.Glyph;
+import com.google.typography.font.sfntly.table.truetype.GlyphTable;
+import com.google.typography.font.sfntly.table.truetype.LocaTable;
+import com.google.typography.font.sfntly.table.truetype.SimpleGlyph;
+import com.google.typography.font.sfntly.table.variations.FontVariationsTable;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Tests for the instancer, on a font given a wght axis and outline variations
+ * for a single glyph.
+ */
+public class InstancerTest extends TestCase {
+
+  private static final File fontFile = TestFontNames.OPENSANS.getFile();
+
+  private static final int WGHT = Tag.intValue(new byte[] {'w', 'g', 'h', 't'});
+  private static final int GLYPH_A = 68; // a, u+0061
+  private static final int GLYPH_AGRAVE = 162; // agrave, u+00e0, with an a component
+
+  private Font srcFont;
+  private Font varFont;
+
+  @Override
+  public void setUp() throws IOException {
+    srcFont = TestFontUtils.loadFont(fontFile)[0];
+    FontFactory factory = FontFactory.getInstance();
+    Font.Builder builder = factory.newFontBuilder();
+    for (Map.Entry<Integer, ? extends Table> entry : srcFont.tableMap().entrySet()) {
+      builder.newTableBuilder(entry.getKey(), entry.getValue().readFontData());
+    }
+    builder.newTableBuilder(Tag.fvar, WritableFontData.createWritableFontData(createFvar()));
+    LocaTable loca = srcFont.getTable(Tag.loca);
+    builder.newTableBuilder(Tag.gvar,
+        WritableFontData.createWritableFontData(createGvar(loca.numGlyphs())));
+    varFont = builder.build();
+  }
+
+  /**
+   * Creates an fvar table with a wght axis from 100 to 900, defaulting to 400.
+   */
+  private static byte[] createFvar() {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeShort(out, 1);
+    writeShort(out, 0);
+    writeShort(out, 16);
+    writeShort(out, 2);
+    writeShort(out, 1);
+    writeShort(out, 20);
+    writeShort(out, 0);
+    writeShort(out, 8);
+    writeInt(out, WGHT);
+    writeInt(out, 100 << 16);
+    writeInt(out, 400 << 16);
+    writeInt(out, 900 << 16);
+    writeShort(out, 0);
+    writeShort(out, 256);
+    return out.toByteArray();
+  }
+
+  /**
+   * Creates a gvar table that at the maximum weight moves the outline of the
+   * glyph 'a' right by 10 units and its advance by 30 units.
+   */
+  private byte[] createGvar(int glyphCount) {
+    GlyphTable glyf = srcFont.getTable(Tag.glyf);
+    LocaTable loca = srcFont.getTable(Tag.loca);
+    SimpleGlyph glyph = (SimpleGlyph) glyf.glyph(loca.glyphOffset(GLYPH_A),
+        loca.glyphLength(GLYPH_A));
+    int pointCount = 4;
+    for (int contour = 0; contour < glyph.numberOfContours(); contour++) {
+      pointCount += glyph.numberOfPoints(contour);
+    }
+    int[] xDeltas = new int[pointCount];
+    for (int i = 0; i < pointCount - 3; i++) {
+      xDeltas[i] = 10;
+    }
+    xDeltas[pointCount - 3] = 30;
+
+    ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+    // private point numbers: all points
+    serialized.write(0);
+    for (int i = 0; i < pointCount; i += 64) {
+      int run = Math.min(64, pointCount - i);
+      serialized.write(run - 1);
+      for (int j = 0; j < run; j++) {
+        serialized.write(xDeltas[i + j]);
+      }
+    }
+    for (int i = 0; i < pointCount; i += 64) {
+      int run = Math.min(64, pointCount - i);
+      serialized.write(0x80 | (run - 1));
+    }
+    ByteArrayOutputStream variationData = new ByteArrayOutputStream();
+    writeShort(variationData, 1);
+    writeShort(variationData, 10);
+    writeShort(variationData, serialized.size());
+    // embedded peak tuple, private point numbers
+    writeShort(variationData, 0x8000 | 0x2000);
+    writeShort(variationData, 0x4000);
+    byte[] serializedBytes = serialized.toByteArray();
+    variationData.write(serializedBytes, 0, serializedBytes.length);
+    if ((variationData.size() & 1) != 0) {
+      variationData.write(0);
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int arrayOffset = 20 + 2 * (glyphCount + 1);
+    writeShort(out, 1);
+    writeShort(out, 0);
+    writeShort(out, 1);
+    writeShort(out, 0);
+    writeInt(out, arrayOffset);
+    writeShort(out, glyphCount);
+    writeShort(out, 0);
+    writeInt(out, arrayOffset);
+    for (int glyphId = 0; glyphId <= glyphCount; glyphId++) {
+      writeShort(out, glyphId <= GLYPH_A ? 0 : variationData.size() / 2);
+    }
+    byte[] variationBytes = variationData.toByteArray();
+    out.write(variationBytes, 0, variationBytes.length);
+    return out.toByteArray();
+  }
+
+  private static void writeShort(ByteArrayOutputStream out, int value) {
+    out.write((value >> 8) & 0xff);
+    out.write(value & 0xff);
+  }
+
+  private static void writeInt(ByteArrayOutputStream out, int value) {
+    writeShort(out, value >> 16);
+    writeShort(out, value);
+  }
+
+  public void testNormalize() {
+    FontVariationsTable fvar = varFont.getTable(Tag.fvar);
+    assertEquals(1, fvar.axisCount());
+    assertEquals(0, fvar.axisIndex(WGHT));
+    assertEquals(-1.0, fvar.normalize(0, 50), 0);
+    assertEquals(-0.5, fvar.normalize(0, 250), 0);
+    assertEquals(0.0, fvar.normalize(0, 400), 0);
+    assertEquals(0.5, fvar.normalize(0, 650), 0);
+  }
+
+  public void testDefaultInstance() throws IOException {
+    Font font = new Instancer(varFont, FontFactory.getInstance()).instance().build();
+    assertNull(font.getTable(Tag.fvar));
+    assertNull(font.getTable(Tag.gvar));
+
+    GlyphTable srcGlyf = srcFont.getTable(Tag.glyf);
+    LocaTable srcLoca = srcFont.getTable(Tag.loca);
+    GlyphTable glyf = font.getTable(Tag.glyf);
+    LocaTable loca = font.getTable(Tag.loca);
+    HorizontalMetricsTable srcHmtx = srcFont.getTable(Tag.hmtx);
+    HorizontalMetricsTable hmtx = font.getTable(Tag.hmtx);
+    assertEquals(srcLoca.numGlyphs(), loca.numGlyphs());
+    for (int glyphId = 0; glyphId < srcLoca.numGlyphs(); glyphId++) {
+      Glyph srcGlyph = srcGlyf.glyph(srcLoca.glyphOffset(glyphId), srcLoca.glyphLength(glyphId));
+      Glyph glyph = glyf.glyph(loca.glyphOffset(glyphId), loca.glyphLength(glyphId));
+      assertEquals(srcHmtx.advanceWidth(glyphId), hmtx.advanceWidth(glyphId));
+      if (srcGlyph.numberOfContours() == 0) {
+        continue;
+      }
+      assertEquals(srcHmtx.leftSideBearing(glyphId), hmtx.leftSideBearing(glyphId));
+      assertEquals(srcGlyph.xMin(), glyph.xMin());
+      assertEquals(srcGlyph.yMax(), glyph.yMax());
+      if (srcGlyph instanceof SimpleGlyph) {
+        assertSameOutline((SimpleGlyph) srcGlyph, (SimpleGlyph) glyph, 0);
+      }
+    }
+  }
+
+  public void testMaximumInstance() throws IOException {
+    Instancer instancer = new Instancer(varFont, FontFactory.getInstance());
+    instancer.setAxisValue(WGHT, 900);
+    assertVaried(instancer.instance().build(), 10);
+  }
+
+  public void testIntermediateInstance() throws IOException {
+    Instancer instancer = new Instancer(varFont, FontFactory.getInstance());
+    instancer.setAxisValue(WGHT, 650);
+    Font font = instancer.instance().build();
+    assertVaried(font, 5);
+    OS2Table os2 = font.getTable(Tag.OS_2);
+    assertEquals(650, os2.usWeightClass());
+  }
+
+  public void testClampedInstance() throws IOException {
+    Instancer instancer = new Instancer(varFont, FontFactory.getInstance());
+    instancer.setAxisValue(WGHT, 1200);
+    Font font = instancer.instance().build();
+    // the same as the maximum instance
+    assertVaried(font, 10);
+    OS2Table os2 = font.getTable(Tag.OS_2);
+    assertEquals(900, os2.usWeightClass());
+
+    instancer.setAxisValue(WGHT, 0);
+    os2 = instancer.instance().build().getTable(Tag.OS_2);
+    assertEquals(100, os2.usWeightClass());
+  }
+
+  private void assertVaried(Font font, int shift) {
+    GlyphTable srcGlyf = srcFont.getTable(Tag.glyf);
+    LocaTable srcLoca = srcFont.getTable(Tag.loca);
+    GlyphTable glyf = font.getTable(Tag.glyf);
+    LocaTable loca = font.getTable(Tag.loca);
+    HorizontalMetricsTable srcHmtx = srcFont.getTable(Tag.hmtx);
+    HorizontalMetricsTable hmtx = font.getTable(Tag.hmtx);
+
+    SimpleGlyph srcA = (SimpleGlyph) srcGlyf.glyph(
+        srcLoca.glyphOffset(GLYPH_A), srcLoca.glyphLength(GLYPH_A));
+    SimpleGlyph a = (SimpleGlyph) glyf.glyph(loca.glyphOffset(GLYPH_A), loca.glyphLength(GLYPH_A));
+    assertSameOutline(srcA, a, shift);
+    assertEquals(srcA.xMin() + shift, a.xMin());
+    assertEquals(srcHmtx.advanceWidth(GLYPH_A) + 2 * shift, hmtx.advanceWidth(GLYPH_A));
+    assertEquals(srcHmtx.leftSideBearing(GLYPH_A), hmtx.leftSideBearing(GLYPH_A));
+
+    // the composite glyph picks up the moved component
+    Glyph srcAgrave = srcGlyf.glyph(
+        srcLoca.glyphOffset(GLYPH_AGRAVE), srcLoca.glyphLength(GLYPH_AGRAVE));
+    Glyph agrave = glyf.glyph(loca.glyphOffset(GLYPH_AGRAVE), loca.glyphLength(GLYPH_AGRAVE));
+    assertEquals(srcAgrave.xMin() + shift, agrave.xMin());
+    assertEquals(srcHmtx.advanceWidth(GLYPH_AGRAVE), hmtx.advanceWidth(GLYPH_AGRAVE));
+  }
+
+  private static void assertSameOutline(SimpleGlyph expected, SimpleGlyph actual, int shift) {
+    assertEquals(expected.numberOfContours(), actual.numberOfContours());
+    for (int contour = 0; contour < expected.numberOfContours(); contour++) {
+      assertEquals(expected.numberOfPoints(contour), actual.numberOfPoints(contour));
+      for (int point = 0; point < expected.numberOfPoints(contour); point++) {
+        assertEquals(expected.xCoordinate(contour, point) + shift,
+            actual.xCoordinate(contour, point));
+        assertEquals(expected.yCoordinate(contour, point), actual.yCoordinate(contour, point));
+        assertEquals(expected.onCurve(contour, point), actual.onCurve(contour, point));
+      }
+    }
+    assertEquals(expected.instructionSize(), actual.instructionSize());
+  }
+
+  public void testInterpolateUntouched() {
+    // a square contour with the bottom left and top right corners moved
+    double[] coordinates = {0, 0, 100, 100, 50};
+    double[] deltas = {10, 0, 30, 0, 0};
+    boolean[] touched = {true, false, true, false, false};
+    int[] endPoints = {3, 4};
+    GlyphInstancer.interpolateUntouched(coordinates, deltas, touched, endPoints);
+    // points at the same coordinate as a touched point take its delta
+    assertEquals(10.0, deltas[1], 0);
+    assertEquals(30.0, deltas[3], 0);
+    // a contour without touched points doesn't move
+    assertEquals(0.0, deltas[4], 0);
+
+    coordinates = new double[] {0, 50, 100, 150};
+    deltas = new double[] {10, 0, 30, 0};
+    touched = new boolean[] {true, false, true, false};
+    GlyphInstancer.interpolateUntouched(coordinates, deltas, touched, new int[] {3});
+    assertEquals(20.0, deltas[1], 0);
+    // outside of the touched points the nearer delta is used
+    assertEquals(30.0, deltas[3], 0);
+
+    deltas = new double[] {0, 0, -5, 0};
+    touched = new boolean[] {false, false, true, false};
+    GlyphInstancer.interpolateUntouched(coordinates, deltas, touched, new int[] {3});
+    assertEquals(-5.0, deltas[0], 0);
+    assertEquals(-5.0, deltas[3], 0);
+  }
+}
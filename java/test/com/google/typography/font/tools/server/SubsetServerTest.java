@@ -0,0 +1,204 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.server;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Tests for {@link SubsetServer} and {@link LoadTestClient}.
+ */
+public class SubsetServerTest extends TestCase {
+
+  private static final String FONT_ID = "OpenSans-Regular";
+  private static final int WOFF_SIGNATURE = 0x774f4646;
+
+  private SubsetServer server;
+  private String baseUrl;
+
+  @Override
+  protected void setUp() throws IOException {
+    server = new SubsetServer(TestFontNames.OPENSANS.getFile().getParentFile());
+    server.setThreads(2);
+    baseUrl = "http://localhost:" + server.start(0);
+  }
+
+  @Override
+  protected void tearDown() {
+    server.stop();
+  }
+
+  private static final class Response {
+    int status;
+    String cache;
+    String retryAfter;
+    byte[] body;
+  }
+
+  private Response get(String path) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+    Response response = new Response();
+    response.status = connection.getResponseCode();
+    response.cache = connection.getHeaderField("X-Cache");
+    response.retryAfter = connection.getHeaderField("Retry-After");
+    InputStream is =
+        response.status < 400 ? connection.getInputStream() : connection.getErrorStream();
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    for (int n; (n = is.read(buffer)) >= 0; ) {
+      os.write(buffer, 0, n);
+    }
+    is.close();
+    response.body = os.toByteArray();
+    return response;
+  }
+
+  private static int numGlyphs(byte[] ttf) throws IOException {
+    Font font = FontFactory.getInstance().loadFonts(ttf)[0];
+    return ((MaximumProfileTable) font.getTable(Tag.maxp)).numGlyphs();
+  }
+
+  public void testSubset() throws IOException {
+    Response response = get("/subset?font=" + FONT_ID + "&text=abc");
+    assertEquals(200, response.status);
+    assertEquals("miss", response.cache);
+    // .notdef and the three letters
+    assertEquals(4, numGlyphs(response.body));
+
+    Response cached = get("/subset?font=" + FONT_ID + "&text=cba");
+    assertEquals("hit", cached.cache);
+    assertTrue(Arrays.equals(response.body, cached.body));
+
+    response = get("/subset?font=" + FONT_ID + "&text=a&ranges=U%2B30-39&hints=strip");
+    assertEquals(200, response.status);
+    assertEquals(12, numGlyphs(response.body));
+  }
+
+  public void testFormats() throws IOException {
+    Response woff = get("/subset?font=" + FONT_ID + "&text=Hello&format=woff");
+    assertEquals(200, woff.status);
+    int signature = ((woff.body[0] & 0xff) << 24) | ((woff.body[1] & 0xff) << 16)
+        | ((woff.body[2] & 0xff) << 8) | (woff.body[3] & 0xff);
+    assertEquals(WOFF_SIGNATURE, signature);
+    assertEquals(200, get("/subset?font=" + FONT_ID + "&text=Hello&format=eot").status);
+    Response converted = get("/convert?font=" + FONT_ID);
+    assertEquals(200, converted.status);
+    assertEquals(TestFontNames.OPENSANS.getFile().length(), converted.body.length, 4096);
+  }
+
+  public void testSharedCompressionCache() throws IOException {
+    assertEquals(200, get("/subset?font=" + FONT_ID + "&text=abc&format=woff").status);
+    long misses = server.woffCompression().missCount();
+    assertEquals(0, server.woffCompression().hitCount());
+    // a different subset of the same font shares tables such as name and OS/2
+    assertEquals(200, get("/subset?font=" + FONT_ID + "&text=xyz&format=woff").status);
+    assertTrue(server.woffCompression().hitCount() > 0);
+    assertTrue(server.woffCompression().missCount() - misses < misses);
+  }
+
+  public void testErrors() throws IOException {
+    assertEquals(404, get("/subset?font=NoSuchFont&text=a").status);
+    assertEquals(400, get("/subset?font=..%2Fsecret&text=a").status);
+    assertEquals(400, get("/subset?font=" + FONT_ID).status);
+    assertEquals(400, get("/subset?font=" + FONT_ID + "&text=a&format=svg").status);
+    assertEquals(400, get("/subset?font=" + FONT_ID + "&ranges=U%2B5A-41").status);
+  }
+
+  public void testBusy() throws IOException, InterruptedException {
+    server.stop();
+    server = new SubsetServer(TestFontNames.OPENSANS.getFile().getParentFile());
+    server.setThreads(1);
+    server.setQueueSize(0);
+    baseUrl = "http://localhost:" + server.start(0);
+
+    // occupy the only worker
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    server.workers().execute(new Runnable() {
+      @Override
+      public void run() {
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    started.await();
+
+    Response busy = get("/subset?font=" + FONT_ID + "&text=a");
+    assertEquals(503, busy.status);
+    assertEquals("1", busy.retryAfter);
+
+    release.countDown();
+    // served again once the worker is free
+    Response response = null;
+    for (int attempt = 0; attempt < 50; attempt++) {
+      response = get("/subset?font=" + FONT_ID + "&text=a");
+      if (response.status != 503) {
+        break;
+      }
+      Thread.sleep(20);
+    }
+    assertEquals(200, response.status);
+  }
+
+  public void testUnicodeRanges() {
+    List<int[]> ranges = SubsetServer.parseUnicodeRanges("U+41-43, u+20AC, U+4?");
+    assertEquals(3, ranges.size());
+    assertTrue(Arrays.equals(new int[] {0x41, 0x43}, ranges.get(0)));
+    assertTrue(Arrays.equals(new int[] {0x20ac, 0x20ac}, ranges.get(1)));
+    assertTrue(Arrays.equals(new int[] {0x40, 0x4f}, ranges.get(2)));
+    assertEquals("40-4f,20ac", SubsetServer.formatRanges(SubsetServer.mergeRanges(ranges)));
+    assertEquals("20-7e", SubsetServer.formatRanges(SubsetServer.mergeRanges(
+        SubsetServer.parseUnicodeRanges("U+41-7E,U+20-40,U+30-35"))));
+  }
+
+  public void testWholeUnicodeRange() throws IOException {
+    Response response = get("/subset?font=" + FONT_ID + "&ranges=U%2B0-10FFFF");
+    assertEquals(200, response.status);
+    Response ascii = get("/subset?font=" + FONT_ID + "&ranges=U%2B0-7F");
+    assertEquals(200, ascii.status);
+    assertTrue(numGlyphs(response.body) > numGlyphs(ascii.body));
+  }
+
+  public void testLoadTestClient() throws IOException {
+    LoadTestClient client = new LoadTestClient(baseUrl, FONT_ID);
+    client.setRequests(40);
+    client.setConcurrency(4);
+    client.setDistinctRequests(5);
+    LoadTestClient.Result result = client.run();
+    assertEquals(40, result.ok() + result.busy());
+    assertEquals(0, result.errors());
+    assertTrue(result.latencyMillis(50) <= result.latencyMillis(100));
+  }
+}
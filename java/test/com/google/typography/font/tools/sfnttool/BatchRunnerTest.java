@@ -0,0 +1,124 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.sfnttool;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Tests for {@link BatchRunner}.
+ */
+public class BatchRunnerTest extends TestCase {
+
+  private File dir;
+
+  @Override
+  protected void setUp() throws IOException {
+    dir = File.createTempFile("batch", "");
+    dir.delete();
+    dir.mkdir();
+  }
+
+  @Override
+  protected void tearDown() {
+    for (File file : dir.listFiles()) {
+      file.delete();
+    }
+    dir.delete();
+  }
+
+  private static String quote(File file) {
+    return "\"" + file.getPath().replace("\\", "\\\\") + "\"";
+  }
+
+  private static int numGlyphs(File file) throws IOException {
+    Font font = TestFontUtils.loadFont(file)[0];
+    return ((MaximumProfileTable) font.getTable(Tag.maxp)).numGlyphs();
+  }
+
+  public void testRun() throws IOException {
+    String font = quote(TestFontNames.OPENSANS.getFile());
+    File abc = new File(dir, "abc.ttf");
+    File digits = new File(dir, "digits.ttf");
+    File woff = new File(dir, "abc.woff");
+    File manifest = new File(dir, "manifest.txt");
+    Writer writer = new OutputStreamWriter(new FileOutputStream(manifest), "UTF-8");
+    try {
+      writer.write("# subsets of one font\n");
+      writer.write("-s abc " + font + " " + quote(abc) + "\n");
+      writer.write("\n");
+      writer.write("-r \"[0-9]\" -h " + font + " " + quote(digits) + "\n");
+      writer.write("-s \"a b c\" -w " + font + " " + quote(woff) + "\n");
+      writer.write("-s abc -nosuchoption " + font + " " + quote(abc) + "\n");
+      writer.write("-s abc " + quote(new File(dir, "missing.ttf")) + " "
+          + quote(new File(dir, "missing.out")) + "\n");
+    } finally {
+      writer.close();
+    }
+
+    ByteArrayOutputStream report = new ByteArrayOutputStream();
+    BatchRunner runner = new BatchRunner(2, new PrintStream(report, true, "UTF-8"));
+    boolean succeeded = runner.run(manifest);
+    String[] lines = report.toString("UTF-8").split("\n");
+
+    assertFalse(succeeded);
+    // the font is dropped once all the entries using it have finished
+    assertEquals(0, runner.loadedFontCount());
+    assertTrue(abc.exists());
+    assertTrue(digits.exists());
+    assertTrue(woff.exists());
+    // .notdef and the three letters
+    assertEquals(4, numGlyphs(abc));
+    assertEquals(11, numGlyphs(digits));
+
+    assertEquals(6, lines.length);
+    assertTrue(lines[0], lines[0].startsWith("line 6\tFAILED"));
+    assertTrue(lines[1], lines[1].matches("line 2\t\\d+ ms"));
+    assertTrue(lines[2], lines[2].matches("line 4\t\\d+ ms"));
+    assertTrue(lines[3], lines[3].matches("line 5\t\\d+ ms"));
+    assertTrue(lines[4], lines[4].startsWith("line 7\tFAILED"));
+    assertTrue(lines[5], lines[5].startsWith("5 entries, 2 failed"));
+  }
+
+  public void testTokenize() {
+    assertEquals(Arrays.asList("-s", "a b", "in.ttf", "out.ttf"),
+        BatchRunner.tokenize("  -s \"a b\"\tin.ttf out.ttf "));
+    assertEquals(Arrays.asList("-s", "say \"hi\"", "x\\y"),
+        BatchRunner.tokenize("-s \"say \\\"hi\\\"\" x\\y"));
+    assertEquals(Arrays.asList("-s", ""), BatchRunner.tokenize("-s \"\""));
+    try {
+      BatchRunner.tokenize("-s \"abc");
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.sfnttool;
+
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+
+import junit.framework.TestCase;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Tests for {@link SfntTool}.
+ */
+public class SfntToolTest extends TestCase {
+
+  private File dictionary;
+  private File output;
+
+  @Override
+  protected void setUp() throws IOException {
+    dictionary = File.createTempFile("dictionary", ".bin");
+    FileOutputStream os = new FileOutputStream(dictionary);
+    try {
+      os.write("glyf loca cmap head hhea hmtx".getBytes("US-ASCII"));
+    } finally {
+      os.close();
+    }
+    output = File.createTempFile("subset", ".woff");
+  }
+
+  @Override
+  protected void tearDown() {
+    dictionary.delete();
+    output.delete();
+  }
+
+  public void testDictionaryImpliesWoff() throws IOException {
+    SfntTool tool = SfntTool.parseArguments(Arrays.asList("-s", "abc", "-d",
+        dictionary.getPath(), TestFontNames.OPENSANS.getFile().getPath(), output.getPath()),
+        false);
+    tool.subsetFontFile();
+    DataInputStream is = new DataInputStream(new FileInputStream(output));
+    try {
+      // 'wOFD'
+      assertEquals(0x774F4644, is.readInt());
+    } finally {
+      is.close();
+    }
+  }
+
+  public void testDictionaryWithEot() throws IOException {
+    try {
+      SfntTool.parseArguments(Arrays.asList("-e", "-d", dictionary.getPath(),
+          TestFontNames.OPENSANS.getFile().getPath(), output.getPath()), false);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testCompressionImpliesWoff() throws IOException {
+    SfntTool tool = SfntTool.parseArguments(Arrays.asList("-s", "abc", "-z", "9",
+        TestFontNames.OPENSANS.getFile().getPath(), output.getPath()), false);
+    tool.subsetFontFile();
+    DataInputStream is = new DataInputStream(new FileInputStream(output));
+    try {
+      // 'wOFF'
+      assertEquals(0x774F4646, is.readInt());
+    } finally {
+      is.close();
+    }
+  }
+
+  public void testCompressionWithDictionary() throws IOException {
+    try {
+      SfntTool.parseArguments(Arrays.asList("-z", "9", "-d", dictionary.getPath(),
+          TestFontNames.OPENSANS.getFile().getPath(), output.getPath()), false);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
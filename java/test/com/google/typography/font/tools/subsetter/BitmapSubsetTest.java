@@ -0,0 +1,439 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.bitmap.BitmapGlyph;
+import com.google.typography.font.sfntly.table.bitmap.BitmapGlyphInfo;
+import com.google.typography.font.sfntly.table.bitmap.BitmapSizeTable;
+import com.google.typography.font.sfntly.table.bitmap.EbdtTable;
+import com.google.typography.font.sfntly.table.bitmap.EblcTable;
+import com.google.typography.font.sfntly.table.bitmap.IndexSubTable;
+import com.google.typography.font.sfntly.table.bitmap.PngBitmapGlyph;
+import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import com.google.typography.font.sfntly.testutils.TestUtils;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for subsetting the EBLC, EBDT and EBSC tables, and the CBLC and CBDT
+ * tables, on fonts given hand encoded bitmap tables.
+ *
+ * The first strike, at 12 ppem, has glyphs 36 to 45 in image format 7 under
+ * an index subtable of format 1, glyphs 46 to 50 in image format 5 under an
+ * index subtable of format 2, and glyph 51 as a composite of glyphs 36 and 37
+ * in image format 9 under an index subtable of format 3. The second strike, at
+ * 20 ppem, only has glyph 60. The EBSC table has a scale substituting each
+ * strike.
+ */
+public class BitmapSubsetTest extends TestCase {
+
+  private static final File fontFile = TestFontNames.OPENSANS.getFile();
+
+  private static final int IMAGE_SIZE = 4;
+
+  private Font srcFont;
+
+  @Override
+  public void setUp() throws IOException {
+    Font font = TestFontUtils.loadFont(fontFile)[0];
+    Font.Builder builder = FontFactory.getInstance().newFontBuilder();
+    for (Map.Entry<Integer, ? extends Table> entry : font.tableMap().entrySet()) {
+      builder.newTableBuilder(entry.getKey(), entry.getValue().readFontData());
+    }
+    OffsetDataWriter ebdt = new OffsetDataWriter();
+    builder.newTableBuilder(Tag.EBLC, createEblc(ebdt));
+    builder.newTableBuilder(Tag.EBDT, ebdt.data());
+    builder.newTableBuilder(Tag.EBSC, createEbsc());
+    srcFont = builder.build();
+  }
+
+  private static ReadableFontData createEblc(OffsetDataWriter ebdt) {
+    ebdt.writeULong(0x00020000);
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeULong(0x00020000);
+    w.writeULong(2);
+    int firstSize = writeSizeTable(w, 36, 51, 12, 3);
+    int secondSize = writeSizeTable(w, 60, 60, 20, 1);
+
+    // first strike
+    int array = w.position();
+    w.patchULong(firstSize, array);
+    int format1 = writeEntry(w, 36, 45);
+    int format2 = writeEntry(w, 46, 50);
+    int format3 = writeEntry(w, 51, 51);
+
+    w.patchOffset32(format1, array, w.position());
+    w.writeUShort(1);
+    w.writeUShort(7);
+    w.writeULong(ebdt.position());
+    int start = ebdt.position();
+    for (int glyphId = 36; glyphId <= 45; glyphId++) {
+      w.writeULong(ebdt.position() - start);
+      writeImage(ebdt, glyphId, 9 + glyphId % 3);
+    }
+    w.writeULong(ebdt.position() - start);
+
+    w.patchOffset32(format2, array, w.position());
+    w.writeUShort(2);
+    w.writeUShort(5);
+    w.writeULong(ebdt.position());
+    w.writeULong(IMAGE_SIZE);
+    for (int i = 0; i < 8; i++) {
+      w.writeByte(i + 1);
+    }
+    for (int glyphId = 46; glyphId <= 50; glyphId++) {
+      writeImage(ebdt, glyphId, IMAGE_SIZE);
+    }
+
+    w.patchOffset32(format3, array, w.position());
+    w.writeUShort(3);
+    w.writeUShort(9);
+    w.writeULong(ebdt.position());
+    start = ebdt.position();
+    w.writeUShort(0);
+    writeComposite(ebdt, 36, 37);
+    w.writeUShort(ebdt.position() - start);
+    w.align(4);
+    w.patchULong(firstSize + 4, w.position() - array);
+
+    // second strike
+    array = w.position();
+    w.patchULong(secondSize, array);
+    int entry = writeEntry(w, 60, 60);
+    w.patchOffset32(entry, array, w.position());
+    w.writeUShort(1);
+    w.writeUShort(7);
+    w.writeULong(ebdt.position());
+    w.writeULong(0);
+    writeImage(ebdt, 60, 12);
+    w.writeULong(12);
+    w.patchULong(secondSize + 4, w.position() - array);
+    return w.data();
+  }
+
+  /**
+   * @return the position of the size table
+   */
+  private static int writeSizeTable(
+      OffsetDataWriter w, int startGlyph, int endGlyph, int ppem, int subTables) {
+    int sizeTable = w.position();
+    w.writeULong(0);
+    w.writeULong(0);
+    w.writeULong(subTables);
+    w.writeULong(0);
+    for (int i = 0; i < 24; i++) {
+      w.writeByte(i);
+    }
+    w.writeUShort(startGlyph);
+    w.writeUShort(endGlyph);
+    w.writeByte(ppem);
+    w.writeByte(ppem);
+    w.writeByte(1);
+    w.writeByte(1);
+    return sizeTable;
+  }
+
+  private static int writeEntry(OffsetDataWriter w, int firstGlyph, int lastGlyph) {
+    w.writeUShort(firstGlyph);
+    w.writeUShort(lastGlyph);
+    return w.reserveOffset32();
+  }
+
+  private static void writeImage(OffsetDataWriter ebdt, int glyphId, int length) {
+    for (int i = 0; i < length; i++) {
+      ebdt.writeByte(glyphId + i);
+    }
+  }
+
+  private static void writeComposite(OffsetDataWriter ebdt, int... components) {
+    for (int i = 0; i < 8; i++) {
+      ebdt.writeByte(0x40 + i);
+    }
+    ebdt.writeUShort(components.length);
+    for (int i = 0; i < components.length; i++) {
+      ebdt.writeUShort(components[i]);
+      ebdt.writeByte(i);
+      ebdt.writeByte(-i);
+    }
+  }
+
+  private static ReadableFontData createEbsc() {
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeULong(0x00020000);
+    w.writeULong(2);
+    int[] substitutes = {12, 20};
+    for (int substitute : substitutes) {
+      for (int i = 0; i < 24; i++) {
+        w.writeByte(i);
+      }
+      w.writeByte(substitute + 1);
+      w.writeByte(substitute + 1);
+      w.writeByte(substitute);
+      w.writeByte(substitute);
+    }
+    return w.data();
+  }
+
+  private static List<Integer> glyphs(int... glyphIds) {
+    List<Integer> glyphs = new ArrayList<Integer>();
+    for (int glyphId : glyphIds) {
+      glyphs.add(glyphId);
+    }
+    return glyphs;
+  }
+
+  private static ReadableFontData glyphData(Font font, int strike, int glyphId) {
+    EblcTable eblc = font.getTable(Tag.EBLC);
+    BitmapSizeTable sizeTable = eblc.bitmapSizeTable(strike);
+    int offset = sizeTable.glyphOffset(glyphId);
+    if (offset < 0) {
+      return null;
+    }
+    Table ebdt = font.getTable(Tag.EBDT);
+    return ebdt.readFontData().slice(offset, sizeTable.glyphLength(glyphId));
+  }
+
+  public void testSourceTables() {
+    EblcTable eblc = srcFont.getTable(Tag.EBLC);
+    assertEquals(2, eblc.numSizes());
+    assertEquals(10, eblc.bitmapSizeTable(0).glyphLength(37));
+    assertEquals(IMAGE_SIZE, eblc.bitmapSizeTable(0).glyphLength(48));
+    assertEquals(0x25, glyphData(srcFont, 0, 37).readUByte(0));
+  }
+
+  public void testGlyphIndex() {
+    EblcTable eblc = srcFont.getTable(Tag.EBLC);
+    BitmapSizeTable sizeTable = eblc.bitmapSizeTable(0);
+    for (int i = 0; i < sizeTable.numberOfIndexSubTables(); i++) {
+      IndexSubTable subTable = sizeTable.indexSubTable(i);
+      for (int glyphId = subTable.firstGlyphIndex(); glyphId <= subTable.lastGlyphIndex();
+          glyphId++) {
+        assertSame(subTable, sizeTable.glyphIndexSubTable(glyphId));
+        assertEquals(subTable.glyphOffset(glyphId), sizeTable.glyphOffset(glyphId));
+        assertEquals(subTable.glyphLength(glyphId), sizeTable.glyphLength(glyphId));
+        assertEquals(subTable.imageFormat(), sizeTable.glyphFormat(glyphId));
+        BitmapGlyphInfo info = sizeTable.glyphInfo(glyphId);
+        assertEquals(subTable.glyphInfo(glyphId), info);
+        assertEquals(subTable.glyphOffset(glyphId), info.offset());
+      }
+    }
+    assertNull(sizeTable.glyphInfo(35));
+    assertEquals(-1, sizeTable.glyphOffset(52));
+    assertEquals(-1, sizeTable.glyphLength(0));
+    assertEquals(-1, sizeTable.glyphFormat(60));
+    assertNull(sizeTable.glyphIndexSubTable(60));
+  }
+
+  public void testRenumbered() throws IOException {
+    Subsetter subsetter = new RenumberingSubsetter(srcFont, FontFactory.getInstance());
+    List<Integer> glyphs = glyphs(0, 38, 37, 36, 48, 46, 51, 3);
+    subsetter.setGlyphs(glyphs);
+    Font font = subsetter.subset().build();
+
+    EblcTable eblc = font.getTable(Tag.EBLC);
+    // the second strike has no retained glyph
+    assertEquals(1, eblc.numSizes());
+    BitmapSizeTable sizeTable = eblc.bitmapSizeTable(0);
+    assertEquals(1, sizeTable.startGlyphIndex());
+    assertEquals(6, sizeTable.endGlyphIndex());
+    assertEquals(12, sizeTable.ppemX());
+    assertEquals(3, sizeTable.numberOfIndexSubTables());
+    assertEquals(IndexSubTable.Format.FORMAT_3, sizeTable.indexSubTable(0).indexFormat());
+    assertEquals(IndexSubTable.Format.FORMAT_2, sizeTable.indexSubTable(1).indexFormat());
+    assertEquals(5, sizeTable.indexSubTable(1).imageFormat());
+    for (int glyphId = 1; glyphId < 6; glyphId++) {
+      TestUtils.assertDataEquals(glyphData(srcFont, 0, glyphs.get(glyphId)), glyphData(font, 0, glyphId));
+    }
+    assertNull(glyphData(font, 0, 7));
+
+    // the components of the composite are renumbered
+    ReadableFontData composite = glyphData(font, 0, 6);
+    assertEquals(glyphData(srcFont, 0, 51).length(), composite.length());
+    assertEquals(2, composite.readUShort(8));
+    assertEquals(3, composite.readUShort(10));
+    assertEquals(2, composite.readUShort(14));
+    assertEquals(0xff, composite.readUByte(17));
+
+    // the scale substituting the dropped strike is dropped
+    Table ebsc = font.getTable(Tag.EBSC);
+    assertEquals(1, ebsc.readFontData().readULongAsInt(4));
+    assertEquals(12, ebsc.readFontData().readUByte(8 + 26));
+  }
+
+  public void testCompositeWithoutComponents() throws IOException {
+    Subsetter subsetter = new RenumberingSubsetter(srcFont, FontFactory.getInstance());
+    subsetter.setGlyphs(glyphs(0, 51, 36, 60));
+    Font font = subsetter.subset().build();
+
+    EblcTable eblc = font.getTable(Tag.EBLC);
+    assertEquals(2, eblc.numSizes());
+    assertNull(glyphData(font, 0, 1));
+    TestUtils.assertDataEquals(glyphData(srcFont, 0, 36), glyphData(font, 0, 2));
+    TestUtils.assertDataEquals(glyphData(srcFont, 1, 60), glyphData(font, 1, 3));
+    Table ebsc = font.getTable(Tag.EBSC);
+    assertEquals(2, ebsc.readFontData().readULongAsInt(4));
+  }
+
+  public void testRetainedGlyphIds() throws IOException {
+    Subsetter subsetter = new RetainGlyphIdsSubsetter(srcFont, FontFactory.getInstance());
+    subsetter.setGlyphs(glyphs(0, 36, 44, 46, 50));
+    Font font = subsetter.subset().build();
+
+    EblcTable eblc = font.getTable(Tag.EBLC);
+    assertEquals(1, eblc.numSizes());
+    BitmapSizeTable sizeTable = eblc.bitmapSizeTable(0);
+    assertEquals(2, sizeTable.numberOfIndexSubTables());
+    // sparse runs use the formats with glyph id arrays
+    assertEquals(IndexSubTable.Format.FORMAT_4, sizeTable.indexSubTable(0).indexFormat());
+    assertEquals(IndexSubTable.Format.FORMAT_5, sizeTable.indexSubTable(1).indexFormat());
+    for (int glyphId : new int[] {36, 44, 46, 50}) {
+      TestUtils.assertDataEquals(glyphData(srcFont, 0, glyphId), glyphData(font, 0, glyphId));
+    }
+    assertNull(glyphData(font, 0, 40));
+    assertNull(glyphData(font, 0, 48));
+  }
+
+  /**
+   * Creates a font with a CBLC and CBDT strike holding PNG images for glyphs
+   * 36 to 40 in image format 17.
+   *
+   * @param outlines whether to keep the glyf and loca tables
+   */
+  private static Font createColorFont(boolean outlines) throws IOException {
+    Font font = TestFontUtils.loadFont(fontFile)[0];
+    Font.Builder builder = FontFactory.getInstance().newFontBuilder();
+    for (Map.Entry<Integer, ? extends Table> entry : font.tableMap().entrySet()) {
+      if (outlines || (entry.getKey() != Tag.glyf && entry.getKey() != Tag.loca)) {
+        builder.newTableBuilder(entry.getKey(), entry.getValue().readFontData());
+      }
+    }
+    OffsetDataWriter cbdt = new OffsetDataWriter();
+    cbdt.writeULong(0x00030000);
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeULong(0x00030000);
+    w.writeULong(1);
+    int sizeTable = writeSizeTable(w, 36, 40, 109, 1);
+    int array = w.position();
+    w.patchULong(sizeTable, array);
+    int entry = writeEntry(w, 36, 40);
+    w.patchOffset32(entry, array, w.position());
+    w.writeUShort(1);
+    w.writeUShort(17);
+    w.writeULong(cbdt.position());
+    int start = cbdt.position();
+    for (int glyphId = 36; glyphId <= 40; glyphId++) {
+      w.writeULong(cbdt.position() - start);
+      writeImage(cbdt, glyphId, 5);
+      cbdt.writeULong(8 + glyphId % 4);
+      writeImage(cbdt, 0x80 + glyphId, 8 + glyphId % 4);
+    }
+    w.writeULong(cbdt.position() - start);
+    w.patchULong(sizeTable + 4, w.position() - array);
+    builder.newTableBuilder(Tag.CBLC, w.data());
+    builder.newTableBuilder(Tag.CBDT, cbdt.data());
+    return builder.build();
+  }
+
+  public void testColorBitmaps() throws IOException {
+    Font srcColorFont = createColorFont(true);
+    EblcTable srcCblc = srcColorFont.getTable(Tag.CBLC);
+    EbdtTable srcCbdt = srcColorFont.getTable(Tag.CBDT);
+    BitmapGlyphInfo info = srcCblc.bitmapSizeTable(0).glyphInfo(38);
+    BitmapGlyph glyph = srcCbdt.glyph(info.offset(), info.length(), info.format());
+    assertTrue(glyph instanceof PngBitmapGlyph);
+    PngBitmapGlyph png = (PngBitmapGlyph) glyph;
+    assertEquals(10, png.imageDataLength());
+    assertEquals(0x80 + 38, png.imageData().readUByte(0));
+
+    Subsetter subsetter = new RenumberingSubsetter(srcColorFont, FontFactory.getInstance());
+    List<Integer> glyphs = glyphs(0, 40, 38);
+    subsetter.setGlyphs(glyphs);
+    Font font = subsetter.subset().build();
+    EblcTable cblc = font.getTable(Tag.CBLC);
+    EbdtTable cbdt = font.getTable(Tag.CBDT);
+    assertEquals(0x00030000, cblc.version());
+    assertEquals(0x00030000, cbdt.version());
+    BitmapSizeTable sizeTable = cblc.bitmapSizeTable(0);
+    assertEquals(1, sizeTable.startGlyphIndex());
+    assertEquals(2, sizeTable.endGlyphIndex());
+    for (int glyphId = 1; glyphId < glyphs.size(); glyphId++) {
+      BitmapGlyphInfo srcInfo = srcCblc.bitmapSizeTable(0).glyphInfo(glyphs.get(glyphId));
+      info = sizeTable.glyphInfo(glyphId);
+      assertEquals(17, info.format());
+      TestUtils.assertDataEquals(srcCbdt.readFontData().slice(srcInfo.offset(), srcInfo.length()),
+          cbdt.readFontData().slice(info.offset(), info.length()));
+    }
+    assertTrue(cbdt.dataLength() < srcCbdt.dataLength());
+  }
+
+  public void testBitmapOnly() throws IOException {
+    Font srcColorFont = createColorFont(false);
+    EblcTable srcCblc = srcColorFont.getTable(Tag.CBLC);
+    EbdtTable srcCbdt = srcColorFont.getTable(Tag.CBDT);
+    int srcNumGlyphs = ((MaximumProfileTable) srcColorFont.getTable(Tag.maxp)).numGlyphs();
+
+    Subsetter subsetter = new RenumberingSubsetter(srcColorFont, FontFactory.getInstance());
+    subsetter.setGlyphs(glyphs(0, 40, 38));
+    Font font = subsetter.subset().build();
+    assertNull(font.getTable(Tag.glyf));
+    assertNull(font.getTable(Tag.loca));
+    assertEquals(3, ((MaximumProfileTable) font.getTable(Tag.maxp)).numGlyphs());
+    EblcTable cblc = font.getTable(Tag.CBLC);
+    EbdtTable cbdt = font.getTable(Tag.CBDT);
+    BitmapGlyphInfo srcInfo = srcCblc.bitmapSizeTable(0).glyphInfo(40);
+    BitmapGlyphInfo info = cblc.bitmapSizeTable(0).glyphInfo(1);
+    TestUtils.assertDataEquals(srcCbdt.readFontData().slice(srcInfo.offset(), srcInfo.length()),
+        cbdt.readFontData().slice(info.offset(), info.length()));
+
+    subsetter = new RetainGlyphIdsSubsetter(srcColorFont, FontFactory.getInstance());
+    subsetter.setGlyphs(glyphs(0, 38));
+    font = subsetter.subset().build();
+    assertNull(font.getTable(Tag.glyf));
+    assertEquals(srcNumGlyphs, ((MaximumProfileTable) font.getTable(Tag.maxp)).numGlyphs());
+    cblc = font.getTable(Tag.CBLC);
+    cbdt = font.getTable(Tag.CBDT);
+    srcInfo = srcCblc.bitmapSizeTable(0).glyphInfo(38);
+    info = cblc.bitmapSizeTable(0).glyphInfo(38);
+    TestUtils.assertDataEquals(srcCbdt.readFontData().slice(srcInfo.offset(), srcInfo.length()),
+        cbdt.readFontData().slice(info.offset(), info.length()));
+    assertNull(cblc.bitmapSizeTable(0).glyphInfo(40));
+  }
+
+  public void testIndexFormat() {
+    assertEquals(IndexSubTable.Format.FORMAT_3,
+        BitmapTableSubsetter.indexFormat(10, 10, 100, false));
+    assertEquals(IndexSubTable.Format.FORMAT_1,
+        BitmapTableSubsetter.indexFormat(10, 10, 0x10000, false));
+    assertEquals(IndexSubTable.Format.FORMAT_4,
+        BitmapTableSubsetter.indexFormat(3, 100, 30, false));
+    assertEquals(IndexSubTable.Format.FORMAT_2, BitmapTableSubsetter.indexFormat(5, 5, 20, true));
+    assertEquals(IndexSubTable.Format.FORMAT_5, BitmapTableSubsetter.indexFormat(2, 5, 8, true));
+  }
+}
@@ -59,4 +59,23 @@ public class CMapTableBuilderTest extends TestCase {
     mapping.put(0x1234, 4);
     verifyCmap(mapping);
   }
+
+  public void testSupplementary() {
+    Map<Integer, Integer> mapping = new HashMap<Integer, Integer>();
+    mapping.put(32, 1);
+    mapping.put(0x1f600, 2);
+    mapping.put(0x1f601, 3);
+    mapping.put(0x1f603, 4);
+    Font.Builder fontBuilder = FontFactory.getInstance().newFontBuilder();
+    new CMapTableBuilder(fontBuilder, mapping).build();
+
+    CMapTable cmapTable = fontBuilder.build().getTable(Tag.cmap);
+    CMap cmap = cmapTable.cmap(CMapTable.CMapId.WINDOWS_UCS4);
+    assertEquals(CMap.CMapFormat.Format12.value(), cmap.format());
+    for (Map.Entry<Integer, Integer> entry : mapping.entrySet()) {
+      assertEquals((int) entry.getValue(), cmap.glyphId(entry.getKey()));
+    }
+    assertEquals(CMapTable.NOTDEF, cmap.glyphId(0x1f602));
+    assertEquals(1, cmapTable.cmap(CMapTable.CMapId.WINDOWS_BMP).glyphId(32));
+  }
 }
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.cff.CffDict;
+import com.google.typography.font.sfntly.table.cff.CffIndex;
+import com.google.typography.font.sfntly.table.cff.CffTable;
+import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
+import com.google.typography.font.sfntly.testutils.TestUtils;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests for the CFF table and its subsetting, on a small hand encoded font.
+ */
+public class CffSubsetTest extends TestCase {
+
+  // 1 2 3 4 hstemhm 5 6 vstemhm hintmask 10 20 rmoveto endchar; the mask byte
+  // has the value of callgsubr, so it is only skipped if the stems are counted
+  static final byte[] GLYPH1 = bytes(140, 141, 142, 143, 18, 144, 145, 23, 19, 29,
+      149, 159, 21, 14);
+  // gsubr 0, endchar
+  static final byte[] GLYPH2 = bytes(32, 29, 14);
+  // lsubr 0, endchar
+  static final byte[] GLYPH3 = bytes(32, 10, 14);
+  static final byte[] NOTDEF = bytes(14);
+  static final byte[] SUBR0 = bytes(144, 144, 21, 11);
+  static final byte[] SUBR1 = bytes(145, 145, 21, 11);
+
+  private Font srcFont;
+
+  @Override
+  public void setUp() throws IOException {
+    srcFont = createFont(createCff(), 4);
+  }
+
+  private static Font createFont(byte[] cff, int numGlyphs) {
+    FontFactory factory = FontFactory.getInstance();
+    Font.Builder builder = factory.newFontBuilder();
+    builder.newTableBuilder(Tag.CFF, WritableFontData.createWritableFontData(cff));
+    builder.newTableBuilder(Tag.maxp, WritableFontData.createWritableFontData(
+        bytes(0, 0, 0x50, 0, numGlyphs >> 8, numGlyphs)));
+    return builder.build();
+  }
+
+  /**
+   * Creates a CFF table with 4 glyphs, 2 global and 2 local subroutines.
+   */
+  static byte[] createCff() throws IOException {
+    return createCff(new int[] {34, 35, 36}, NOTDEF, GLYPH1, GLYPH2, GLYPH3);
+  }
+
+  /**
+   * Creates a CFF table with the given glyphs, 2 global and 2 local
+   * subroutines.
+   *
+   * @param sids the SIDs of the glyphs after .notdef
+   * @param charStrings the charstrings of the glyphs
+   */
+  static byte[] createCff(int[] sids, byte[]... charStrings) throws IOException {
+    byte[] header = bytes(1, 0, 4, 4);
+    byte[] nameIndex = index("Test".getBytes("US-ASCII"));
+    byte[] stringIndex = bytes(0, 0);
+    byte[] globalSubrIndex = index(SUBR0, SUBR1);
+    byte[] charset = new byte[1 + 2 * sids.length];
+    for (int i = 0; i < sids.length; i++) {
+      charset[1 + 2 * i] = (byte) (sids[i] >> 8);
+      charset[2 + 2 * i] = (byte) sids[i];
+    }
+    byte[] charStringsIndex = index(charStrings);
+    // defaultWidthX 500, Subrs
+    byte[] privateDict = concat(bytes(248, 136, 20), int32(9), bytes(19));
+    byte[] localSubrIndex = index(SUBR0, SUBR1);
+
+    int topDictSize = 5 + 1 + 5 + 1 + 10 + 1;
+    int charsetOffset = header.length + nameIndex.length + (5 + topDictSize)
+        + stringIndex.length + globalSubrIndex.length;
+    int charStringsOffset = charsetOffset + charset.length;
+    int privateOffset = charStringsOffset + charStringsIndex.length;
+    byte[] topDict = concat(int32(charsetOffset), bytes(15), int32(charStringsOffset), bytes(17),
+        int32(privateDict.length), int32(privateOffset), bytes(18));
+
+    return concat(header, nameIndex, index(topDict), stringIndex, globalSubrIndex, charset,
+        charStringsIndex, privateDict, localSubrIndex);
+  }
+
+  private Font subset(Integer... glyphs) throws IOException {
+    return subset(CffTableSubsetter.SubroutineMode.KEEP, glyphs);
+  }
+
+  private Font subset(CffTableSubsetter.SubroutineMode mode, Integer... glyphs)
+      throws IOException {
+    return subset(new CffTableSubsetter(), mode, glyphs);
+  }
+
+  private Font subset(final CffTableSubsetter cffSubsetter,
+      CffTableSubsetter.SubroutineMode mode, Integer... glyphs) throws IOException {
+    Subsetter subsetter = new Subsetter(srcFont, FontFactory.getInstance()) {
+      {
+        Set<TableSubsetter> temp = new HashSet<TableSubsetter>();
+        temp.add(cffSubsetter);
+        tableSubsetters = temp;
+      }
+    };
+    subsetter.setGlyphs(Arrays.asList(glyphs));
+    subsetter.setCffSubroutineMode(mode);
+    return subsetter.subset().build();
+  }
+
+  public void testParse() {
+    CffTable cff = srcFont.getTable(Tag.CFF);
+    assertEquals(1, cff.majorVersion());
+    assertEquals(4, cff.numGlyphs());
+    assertFalse(cff.isCidKeyed());
+    assertEquals("Test", new String(TestUtils.toBytes(cff.nameIndex().item(0))));
+    assertTrue(Arrays.equals(new int[] {0, 34, 35, 36}, cff.charset()));
+    assertTrue(Arrays.equals(GLYPH2, TestUtils.toBytes(cff.charStrings().item(2))));
+    assertEquals(2, cff.globalSubrIndex().count());
+    assertEquals(2, cff.localSubrIndex(0).count());
+    assertEquals(500, cff.privateDict(0).intValue(CffDict.Operator.defaultWidthX, 0));
+  }
+
+  public void testSubset() throws IOException {
+    Font dstFont = subset(0, 3, 2);
+    MaximumProfileTable maxp = dstFont.getTable(Tag.maxp);
+    assertEquals(3, maxp.numGlyphs());
+
+    CffTable cff = dstFont.getTable(Tag.CFF);
+    assertEquals(3, cff.numGlyphs());
+    assertTrue(Arrays.equals(new int[] {0, 36, 35}, cff.charset()));
+    CffIndex charStrings = cff.charStrings();
+    assertTrue(Arrays.equals(NOTDEF, TestUtils.toBytes(charStrings.item(0))));
+    assertTrue(Arrays.equals(GLYPH3, TestUtils.toBytes(charStrings.item(1))));
+    assertTrue(Arrays.equals(GLYPH2, TestUtils.toBytes(charStrings.item(2))));
+    assertEquals(500, cff.privateDict(0).intValue(CffDict.Operator.defaultWidthX, 0));
+
+    // the unused second subroutines are dropped
+    assertEquals(1, cff.globalSubrIndex().count());
+    assertTrue(Arrays.equals(SUBR0, TestUtils.toBytes(cff.globalSubrIndex().item(0))));
+    assertEquals(1, cff.localSubrIndex(0).count());
+    assertTrue(Arrays.equals(SUBR0, TestUtils.toBytes(cff.localSubrIndex(0).item(0))));
+  }
+
+  private Font subsetRetainingIds(CffTableSubsetter.SubroutineMode mode, Integer... glyphs)
+      throws IOException {
+    Subsetter subsetter = new RetainGlyphIdsSubsetter(srcFont, FontFactory.getInstance()) {
+      {
+        Set<TableSubsetter> temp = new HashSet<TableSubsetter>();
+        temp.add(new CffTableSubsetter());
+        tableSubsetters = temp;
+      }
+    };
+    subsetter.setGlyphs(Arrays.asList(glyphs));
+    subsetter.setCffSubroutineMode(mode);
+    return subsetter.subset().build();
+  }
+
+  public void testRetainGlyphIds() throws IOException {
+    Font dstFont = subsetRetainingIds(CffTableSubsetter.SubroutineMode.KEEP, 2);
+    MaximumProfileTable maxp = dstFont.getTable(Tag.maxp);
+    assertEquals(4, maxp.numGlyphs());
+
+    CffTable cff = dstFont.getTable(Tag.CFF);
+    assertEquals(4, cff.numGlyphs());
+    assertTrue(Arrays.equals(new int[] {0, 34, 35, 36}, cff.charset()));
+    CffIndex charStrings = cff.charStrings();
+    assertTrue(Arrays.equals(NOTDEF, TestUtils.toBytes(charStrings.item(0))));
+    // the dropped glyphs are emptied in place
+    assertTrue(Arrays.equals(bytes(14), TestUtils.toBytes(charStrings.item(1))));
+    assertTrue(Arrays.equals(GLYPH2, TestUtils.toBytes(charStrings.item(2))));
+    assertTrue(Arrays.equals(bytes(14), TestUtils.toBytes(charStrings.item(3))));
+    assertEquals(1, cff.globalSubrIndex().count());
+    assertTrue(Arrays.equals(SUBR0, TestUtils.toBytes(cff.globalSubrIndex().item(0))));
+    assertNull(cff.localSubrIndex(0));
+
+    cff = subsetRetainingIds(CffTableSubsetter.SubroutineMode.FLATTEN, 3).getTable(Tag.CFF);
+    charStrings = cff.charStrings();
+    assertEquals(4, cff.numGlyphs());
+    assertTrue(Arrays.equals(bytes(14), TestUtils.toBytes(charStrings.item(2))));
+    assertTrue(Arrays.equals(bytes(144, 144, 21, 14), TestUtils.toBytes(charStrings.item(3))));
+    assertEquals(0, cff.globalSubrIndex().count());
+  }
+
+  public void testHintMask() throws IOException {
+    CffTable cff = subset(0, 1).getTable(Tag.CFF);
+    assertEquals(2, cff.numGlyphs());
+    assertTrue(Arrays.equals(GLYPH1, TestUtils.toBytes(cff.charStrings().item(1))));
+    // no subroutine is called; the mask byte must not be taken as a call
+    assertEquals(0, cff.globalSubrIndex().count());
+    assertNull(cff.localSubrIndex(0));
+  }
+
+  public void testFlatten() throws IOException {
+    CffTable cff = subset(CffTableSubsetter.SubroutineMode.FLATTEN, 0, 3, 2, 1)
+        .getTable(Tag.CFF);
+    CffIndex charStrings = cff.charStrings();
+    assertTrue(Arrays.equals(NOTDEF, TestUtils.toBytes(charStrings.item(0))));
+    // the subroutine bodies without their return, followed by endchar
+    assertTrue(Arrays.equals(bytes(144, 144, 21, 14), TestUtils.toBytes(charStrings.item(1))));
+    assertTrue(Arrays.equals(bytes(144, 144, 21, 14), TestUtils.toBytes(charStrings.item(2))));
+    assertTrue(Arrays.equals(GLYPH1, TestUtils.toBytes(charStrings.item(3))));
+    assertEquals(0, cff.globalSubrIndex().count());
+    assertNull(cff.localSubrIndex(0));
+    assertEquals(500, cff.privateDict(0).intValue(CffDict.Operator.defaultWidthX, 0));
+  }
+
+  public void testRebuild() throws IOException {
+    // the same outline drawn by several glyphs, with different starting points
+    byte[] outline = bytes(149, 159, 5, 159, 149, 5, 139, 39, 5, 39, 139, 5);
+    List<byte[]> glyphs = new ArrayList<byte[]>();
+    glyphs.add(NOTDEF);
+    for (int i = 0; i < 6; i++) {
+      glyphs.add(concat(bytes(139 + i, 139, 21), outline, bytes(14)));
+    }
+    glyphs.add(GLYPH1);
+
+    Type2CharStringInterpreter noSubrs =
+        new Type2CharStringInterpreter(new CffIndex(bytesData(0, 0), 0), null);
+    List<FlatCharString> flattened = new ArrayList<FlatCharString>();
+    int size = 0;
+    for (byte[] glyph : glyphs) {
+      flattened.add(FlatCharString.flatten(noSubrs, bytesData(glyph)));
+      size += glyph.length;
+    }
+    CffSubroutinizer subroutinizer = new CffSubroutinizer(flattened);
+    subroutinizer.subroutinize();
+
+    List<ReadableFontData> subrs = subroutinizer.subrs();
+    assertEquals(1, subrs.size());
+    assertTrue(Arrays.equals(concat(outline, bytes(11)), TestUtils.toBytes(subrs.get(0))));
+
+    // expanding the calls gives back the original charstrings
+    List<ReadableFontData> charStrings = subroutinizer.charStrings();
+    OffsetDataWriter w = new OffsetDataWriter();
+    CffTableBuilder.writeIndex(w, subrs);
+    Type2CharStringInterpreter interpreter =
+        new Type2CharStringInterpreter(new CffIndex(w.data(), 0), null);
+    int newSize = subrs.get(0).length();
+    for (int i = 0; i < glyphs.size(); i++) {
+      FlatCharString expanded = FlatCharString.flatten(interpreter, charStrings.get(i));
+      assertTrue(Arrays.equals(glyphs.get(i), TestUtils.toBytes(expanded.toFontData())));
+      newSize += charStrings.get(i).length();
+    }
+    assertTrue(newSize < size);
+  }
+
+  public void testRebuildTooLarge() throws IOException {
+    // more tokens than the subsetter rebuilds: the original subroutines are
+    // kept, as in KEEP mode
+    CffTable cff = subset(new CffTableSubsetter(4), CffTableSubsetter.SubroutineMode.REBUILD,
+        0, 3, 2).getTable(Tag.CFF);
+    CffIndex charStrings = cff.charStrings();
+    assertTrue(Arrays.equals(GLYPH3, TestUtils.toBytes(charStrings.item(1))));
+    assertTrue(Arrays.equals(GLYPH2, TestUtils.toBytes(charStrings.item(2))));
+    assertEquals(1, cff.globalSubrIndex().count());
+    assertTrue(Arrays.equals(SUBR0, TestUtils.toBytes(cff.globalSubrIndex().item(0))));
+    assertEquals(1, cff.localSubrIndex(0).count());
+
+    // within the limit they are rebuilt
+    cff = subset(new CffTableSubsetter(100), CffTableSubsetter.SubroutineMode.REBUILD,
+        0, 3, 2).getTable(Tag.CFF);
+    assertNull(cff.localSubrIndex(0));
+  }
+
+  public void testAccentedCharacters() throws IOException {
+    // 100 0 200 65 194 endchar: a width, then the base character A and the
+    // accent character acute by their StandardEncoding codes
+    byte[] withWidth = bytes(239, 139, 247, 92, 204, 247, 86, 14);
+    // 10 20 hstem 0 200 65 195 endchar: A with circumflex, after a stem hint
+    byte[] afterHint = bytes(149, 159, 1, 139, 247, 92, 204, 247, 87, 14);
+    // A, acute and circumflex have the SIDs 34, 125 and 126
+    srcFont = createFont(createCff(new int[] {200, 34, 125, 201, 126},
+        NOTDEF, withWidth, GLYPH1, bytes(144, 144, 21, 14), afterHint, bytes(145, 145, 21, 14)),
+        6);
+
+    CffAccentComponents accents = new CffAccentComponents(srcFont.<CffTable>getTable(Tag.CFF));
+    assertEquals(Arrays.asList(2, 3), accents.components(1));
+    assertEquals(Arrays.asList(2, 5), accents.components(4));
+    assertTrue(accents.components(2).isEmpty());
+    assertTrue(accents.components(0).isEmpty());
+
+    // the components keep their names, so the accented character still finds
+    // them after renumbering
+    CffTable cff = subset(0, 1, 2, 3).getTable(Tag.CFF);
+    assertTrue(Arrays.equals(new int[] {0, 200, 34, 125}, cff.charset()));
+    assertTrue(Arrays.equals(withWidth, TestUtils.toBytes(cff.charStrings().item(1))));
+    assertEquals(Arrays.asList(2, 3), new CffAccentComponents(cff).components(1));
+  }
+
+  private static ReadableFontData bytesData(int... values) {
+    return bytesData(bytes(values));
+  }
+
+  private static ReadableFontData bytesData(byte[] b) {
+    return WritableFontData.createWritableFontData(b);
+  }
+
+  static byte[] bytes(int... values) {
+    byte[] b = new byte[values.length];
+    for (int i = 0; i < values.length; i++) {
+      b[i] = (byte) values[i];
+    }
+    return b;
+  }
+
+  static byte[] int32(int value) {
+    return bytes(29, value >> 24, value >> 16, value >> 8, value);
+  }
+
+  static byte[] concat(byte[]... arrays) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (byte[] array : arrays) {
+      out.write(array);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Encodes an INDEX with 1 byte offsets.
+   */
+  static byte[] index(byte[]... items) throws IOException {
+    List<byte[]> parts = new ArrayList<byte[]>();
+    parts.add(bytes(0, items.length, 1, 1));
+    int offset = 1;
+    for (byte[] item : items) {
+      offset += item.length;
+      parts.add(bytes(offset));
+    }
+    parts.addAll(Arrays.asList(items));
+    return concat(parts.toArray(new byte[parts.size()][]));
+  }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.color.ColorPaletteTable;
+import com.google.typography.font.sfntly.table.color.ColorTable;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import com.google.typography.font.tools.sfnttool.GlyphCoverage;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tests for the COLR and CPAL tables and their subsetting.
+ */
+public class ColorSubsetTest extends TestCase {
+
+  private static final List<Integer> GLYPHS = Arrays.asList(0, 36, 37, 38, 41, 42, 44);
+
+  private Font srcFont;
+
+  @Override
+  public void setUp() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.OPENSANS.getFile())[0];
+    Font.Builder builder = FontFactory.getInstance().newFontBuilder();
+    for (Map.Entry<Integer, ? extends Table> entry : font.tableMap().entrySet()) {
+      builder.newTableBuilder(entry.getKey(), entry.getValue().readFontData());
+    }
+    builder.newTableBuilder(Tag.COLR, createColr().data());
+    builder.newTableBuilder(Tag.CPAL, createCpal().data());
+    srcFont = builder.build();
+  }
+
+  /**
+   * Creates a version 1 COLR table. Glyph 36 has the layers 37 and 38 and
+   * glyph 39 the layer 40. Glyph 41 paints glyph 37 solid; glyph 42 paints the
+   * shared layers 0 and 1, glyph 38 with a gradient and glyph 41 transformed;
+   * glyph 44 paints glyph 45 solid. The shared layer 2 is not used. Glyphs 41
+   * and 42 share a clip box.
+   */
+  private static OffsetDataWriter createColr() {
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeUShort(1);
+    w.writeUShort(2);
+    int baseGlyphRecords = w.reserveOffset32();
+    int layerRecords = w.reserveOffset32();
+    w.writeUShort(3);
+    int baseGlyphList = w.reserveOffset32();
+    int layerList = w.reserveOffset32();
+    int clipList = w.reserveOffset32();
+    w.writeULong(0);
+    w.writeULong(0);
+
+    w.patchOffset32(baseGlyphRecords, 0, w.position());
+    writeUShorts(w, 36, 0, 2, 39, 2, 1);
+    w.patchOffset32(layerRecords, 0, w.position());
+    writeUShorts(w, 37, 1, 38, 3, 40, 2);
+
+    int baseGlyphListStart = w.position();
+    w.patchOffset32(baseGlyphList, 0, baseGlyphListStart);
+    w.writeULong(3);
+    int[] paints = new int[3];
+    int[] glyphs = {41, 42, 44};
+    for (int i = 0; i < paints.length; i++) {
+      w.writeUShort(glyphs[i]);
+      paints[i] = w.reserveOffset32();
+    }
+    int layerListStart = w.position();
+    w.patchOffset32(layerList, 0, layerListStart);
+    w.writeULong(3);
+    int[] layers = {w.reserveOffset32(), w.reserveOffset32(), w.reserveOffset32()};
+
+    w.patchOffset32(paints[0], baseGlyphListStart, writeSolidGlyph(w, 37, 2));
+
+    w.patchOffset32(layers[0], layerListStart, w.position());
+    int paint = w.writeByte(ColorTable.PAINT_GLYPH);
+    int child = w.reserveOffset24();
+    w.writeUShort(38);
+    w.patchOffset24(child, paint, w.position());
+    paint = w.writeByte(4);
+    int colorLine = w.reserveOffset24();
+    writeUShorts(w, 0, 0, 100, 0, 0, 100);
+    w.patchOffset24(colorLine, paint, w.position());
+    w.writeByte(0);
+    writeUShorts(w, 2, 0, 1, 0x4000, 0x4000, ColorTable.FOREGROUND_PALETTE_INDEX, 0x4000);
+
+    w.patchOffset32(layers[1], layerListStart, w.position());
+    paint = w.writeByte(ColorTable.PAINT_TRANSFORM);
+    child = w.reserveOffset24();
+    int transform = w.reserveOffset24();
+    w.patchOffset24(child, paint, w.position());
+    w.writeByte(ColorTable.PAINT_COLR_GLYPH);
+    w.writeUShort(41);
+    w.patchOffset24(transform, paint, w.position());
+    writeUShorts(w, 1, 0, 0, 0, 0, 0, 1, 0, 0, 0, 0, 0);
+
+    w.patchOffset32(layers[2], layerListStart, writeSolidGlyph(w, 43, 4));
+
+    w.patchOffset32(paints[1], baseGlyphListStart, w.position());
+    w.writeByte(ColorTable.PAINT_COLR_LAYERS);
+    w.writeByte(2);
+    w.writeULong(0);
+
+    w.patchOffset32(paints[2], baseGlyphListStart, writeSolidGlyph(w, 45, 3));
+
+    int clipListStart = w.position();
+    w.patchOffset32(clipList, 0, clipListStart);
+    w.writeByte(1);
+    w.writeULong(1);
+    writeUShorts(w, 41, 42);
+    int box = w.reserveOffset24();
+    w.patchOffset24(box, clipListStart, w.position());
+    w.writeByte(1);
+    writeUShorts(w, 0, 0, 1000, 1000);
+    return w;
+  }
+
+  private static int writeSolidGlyph(OffsetDataWriter w, int glyphId, int paletteIndex) {
+    int paint = w.writeByte(ColorTable.PAINT_GLYPH);
+    int child = w.reserveOffset24();
+    w.writeUShort(glyphId);
+    w.patchOffset24(child, paint, w.position());
+    w.writeByte(ColorTable.PAINT_SOLID);
+    writeUShorts(w, paletteIndex, 0x4000);
+    return paint;
+  }
+
+  private static void writeUShorts(OffsetDataWriter w, int... values) {
+    for (int value : values) {
+      w.writeUShort(value);
+    }
+  }
+
+  /**
+   * Creates a CPAL table with two palettes of five entries; the color of
+   * entry e of palette p is 0x10 * p + e.
+   */
+  private static OffsetDataWriter createCpal() {
+    OffsetDataWriter w = new OffsetDataWriter();
+    writeUShorts(w, 0, 5, 2, 10);
+    int colorRecords = w.reserveOffset32();
+    writeUShorts(w, 0, 5);
+    w.patchOffset32(colorRecords, 0, w.position());
+    for (int palette = 0; palette < 2; palette++) {
+      for (int entry = 0; entry < 5; entry++) {
+        w.writeULong(0x10 * palette + entry);
+      }
+    }
+    return w;
+  }
+
+  private static Set<Integer> set(Integer... values) {
+    return new HashSet<Integer>(Arrays.asList(values));
+  }
+
+  public void testSourceTables() {
+    ColorTable colr = srcFont.getTable(Tag.COLR);
+    assertEquals(1, colr.version());
+    assertEquals(1, colr.baseGlyphRecordIndex(39));
+    assertEquals(-1, colr.baseGlyphRecordIndex(37));
+    assertEquals(set(37, 38), colr.layerGlyphs(36));
+    assertEquals(set(38, 41), colr.layerGlyphs(42));
+    assertEquals(set(37), colr.layerGlyphs(41));
+    assertEquals(set(), colr.layerGlyphs(43));
+    assertEquals(0, colr.clipIndex(42));
+    assertEquals(-1, colr.clipIndex(44));
+
+    ColorPaletteTable cpal = srcFont.getTable(Tag.CPAL);
+    assertEquals(5, cpal.numPaletteEntries());
+    assertEquals(0x13, cpal.color(1, 3));
+  }
+
+  public void testGlyphCoverage() {
+    // glyph 42 is 'G', which paints glyph 41 and so glyph 37
+    List<Integer> glyphs = GlyphCoverage.getGlyphCoverage(srcFont, "G");
+    assertEquals(Arrays.asList(0, 37, 38, 41, 42), glyphs);
+  }
+
+  public void testRenumbered() throws IOException {
+    Subsetter subsetter = new RenumberingSubsetter(srcFont, FontFactory.getInstance());
+    subsetter.setGlyphs(GLYPHS);
+    Font font = subsetter.subset().build();
+
+    ColorTable colr = font.getTable(Tag.COLR);
+    assertEquals(1, colr.numBaseGlyphRecords());
+    assertEquals(1, colr.baseGlyphRecordGlyphId(0));
+    assertEquals(set(2, 3), colr.layerGlyphs(1));
+    // the palette keeps the entries 1, 2 and 3
+    assertEquals(0, colr.layerRecordPaletteIndex(0));
+    assertEquals(2, colr.layerRecordPaletteIndex(1));
+
+    assertEquals(2, colr.numBaseGlyphPaintRecords());
+    assertEquals(set(2), colr.layerGlyphs(4));
+    assertEquals(set(3, 4), colr.layerGlyphs(5));
+    assertEquals(-1, colr.baseGlyphPaintRecordIndex(6));
+    assertEquals(2, colr.numLayerPaints());
+    int solid = colr.childPaintOffsets(colr.baseGlyphPaintRecordPaintOffset(0))[0];
+    assertEquals(1, colr.paintPaletteIndex(solid));
+    int transform = colr.layerPaintOffset(1);
+    assertEquals(ColorTable.PAINT_TRANSFORM, colr.paintFormat(transform));
+    assertEquals(1, font.getTable(Tag.COLR).readFontData().readUShort(
+        colr.transformOffset(transform)));
+    int colorLine = colr.colorLineOffset(colr.childPaintOffsets(colr.layerPaintOffset(0))[0]);
+    assertEquals(2, colr.colorLineNumStops(colorLine));
+    assertEquals(0, colr.readFontData().readUShort(
+        colorLine + ColorTable.colorStopPaletteIndexField(0, false)));
+    assertEquals(ColorTable.FOREGROUND_PALETTE_INDEX, colr.readFontData().readUShort(
+        colorLine + ColorTable.colorStopPaletteIndexField(1, false)));
+
+    assertEquals(1, colr.numClips());
+    assertEquals(4, colr.clipStartGlyphId(0));
+    assertEquals(5, colr.clipEndGlyphId(0));
+    assertEquals(1000, colr.readFontData().readUShort(colr.clipBoxOffset(0) + 5));
+
+    ColorPaletteTable cpal = font.getTable(Tag.CPAL);
+    assertEquals(3, cpal.numPaletteEntries());
+    assertEquals(2, cpal.numPalettes());
+    assertEquals(0x11, cpal.color(1, 0));
+    assertEquals(0x03, cpal.color(0, 2));
+  }
+
+  public void testRetainedGlyphIds() throws IOException {
+    Subsetter subsetter = new RetainGlyphIdsSubsetter(srcFont, FontFactory.getInstance());
+    subsetter.setGlyphs(GLYPHS);
+    Font font = subsetter.subset().build();
+
+    ColorTable colr = font.getTable(Tag.COLR);
+    assertEquals(set(37, 38), colr.layerGlyphs(36));
+    assertEquals(-1, colr.baseGlyphRecordIndex(39));
+    assertEquals(set(38, 41), colr.layerGlyphs(42));
+    assertEquals(-1, colr.baseGlyphPaintRecordIndex(44));
+    assertEquals(0, colr.clipIndex(41));
+    assertEquals(3, ((ColorPaletteTable) font.getTable(Tag.CPAL)).numPaletteEntries());
+  }
+
+  public void testWithoutColors() throws IOException {
+    Subsetter subsetter = new RenumberingSubsetter(srcFont, FontFactory.getInstance());
+    subsetter.setGlyphs(Arrays.asList(0, 36, 37, 44));
+    Font font = subsetter.subset().build();
+    assertNull(font.getTable(Tag.COLR));
+    assertNull(font.getTable(Tag.CPAL));
+  }
+}
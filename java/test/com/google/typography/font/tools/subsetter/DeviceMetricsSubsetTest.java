@@ -0,0 +1,101 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.core.HorizontalDeviceMetricsTable;
+import com.google.typography.font.sfntly.table.core.LinearThresholdTable;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import com.google.typography.font.sfntly.testutils.TestUtils;
+import com.google.typography.font.tools.sfnttool.GlyphCoverage;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the subsetting of the hdmx, LTSH and VDMX tables.
+ */
+public class DeviceMetricsSubsetTest extends TestCase {
+
+  private Font srcFont;
+
+  @Override
+  public void setUp() throws IOException {
+    srcFont = TestFontUtils.loadFont(TestFontNames.DROIDSANS.getFile())[0];
+  }
+
+  public void testSubset() throws IOException {
+    List<Integer> glyphs = GlyphCoverage.getGlyphCoverage(srcFont, "Hello, world");
+    Subsetter subsetter = new RenumberingSubsetter(srcFont, FontFactory.getInstance());
+    subsetter.setGlyphs(glyphs);
+    Font font = subsetter.subset().build();
+
+    HorizontalDeviceMetricsTable srcHdmx = srcFont.getTable(Tag.hdmx);
+    HorizontalDeviceMetricsTable hdmx = font.getTable(Tag.hdmx);
+    assertEquals(srcHdmx.numRecords(), hdmx.numRecords());
+    assertEquals(0, hdmx.recordSize() % 4);
+    assertTrue(hdmx.recordSize() >= 2 + glyphs.size());
+    for (int i = 0; i < hdmx.numRecords(); i++) {
+      assertEquals(srcHdmx.pixelSize(i), hdmx.pixelSize(i));
+      int maxWidth = 0;
+      for (int glyphId = 0; glyphId < glyphs.size(); glyphId++) {
+        assertEquals(srcHdmx.width(i, glyphs.get(glyphId)), hdmx.width(i, glyphId));
+        maxWidth = Math.max(maxWidth, hdmx.width(i, glyphId));
+      }
+      assertEquals(maxWidth, hdmx.maxWidth(i));
+      assertTrue(maxWidth <= srcHdmx.maxWidth(i));
+    }
+
+    LinearThresholdTable srcLtsh = srcFont.getTable(Tag.LTSH);
+    LinearThresholdTable ltsh = font.getTable(Tag.LTSH);
+    assertEquals(glyphs.size(), ltsh.numGlyphs());
+    for (int glyphId = 0; glyphId < glyphs.size(); glyphId++) {
+      assertEquals(srcLtsh.yPels(glyphs.get(glyphId)), ltsh.yPels(glyphId));
+    }
+  }
+
+  public void testVdmxCopied() throws IOException {
+    Font.Builder builder = FontFactory.getInstance().newFontBuilder();
+    for (Map.Entry<Integer, ? extends Table> entry : srcFont.tableMap().entrySet()) {
+      builder.newTableBuilder(entry.getKey(), entry.getValue().readFontData());
+    }
+    // a version 1 table with one ratio and one group for 8 ppem
+    WritableFontData vdmx = WritableFontData.createWritableFontData(0);
+    int index = 0;
+    int[] values = {1, 1, 1, 0x0101, 0x0101, 12, 1, 0x0808, 8, 7, -2};
+    for (int value : values) {
+      index += vdmx.writeUShort(index, value);
+    }
+    builder.newTableBuilder(Tag.VDMX, vdmx);
+    Font vdmxFont = builder.build();
+
+    Subsetter subsetter = new RenumberingSubsetter(vdmxFont, FontFactory.getInstance());
+    subsetter.setGlyphs(GlyphCoverage.getGlyphCoverage(vdmxFont, "Hi"));
+    Font font = subsetter.subset().build();
+    assertTrue(Arrays.equals(TestUtils.toBytes(vdmxFont.getTable(Tag.VDMX).readFontData()),
+        TestUtils.toBytes(font.getTable(Tag.VDMX).readFontData())));
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.core.CMap;
+import com.google.typography.font.sfntly.table.core.CMapTable;
+import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for {@link FontSlicer}.
+ */
+public class FontSlicerTest extends TestCase {
+
+  private static final int AGRAVE = 0xe0;
+
+  private Font srcFont;
+  private FontFactory factory;
+
+  @Override
+  public void setUp() throws IOException {
+    srcFont = TestFontUtils.loadFont(TestFontNames.OPENSANS.getFile())[0];
+    factory = FontFactory.getInstance();
+  }
+
+  private static int numGlyphs(Font font) {
+    return ((MaximumProfileTable) font.getTable(Tag.maxp)).numGlyphs();
+  }
+
+  private static CMap cmap(Font font) {
+    return ((CMapTable) font.getTable(Tag.cmap)).cmap(CMapTable.CMapId.WINDOWS_BMP);
+  }
+
+  private byte[] serialize(Font font) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    factory.serializeFont(font, os);
+    return os.toByteArray();
+  }
+
+  public void testGlyphCoverage() {
+    FontSlicer slicer = new FontSlicer(srcFont, factory);
+    CMap srcCMap = cmap(srcFont);
+    // agrave is a composite of its base letter and the accent
+    List<Integer> glyphs = slicer.glyphCoverage(Collections.singletonList(AGRAVE));
+    assertEquals(0, (int) glyphs.get(0));
+    assertTrue(glyphs.contains(srcCMap.glyphId(AGRAVE)));
+    assertTrue(glyphs.size() > 2);
+    // unmapped codepoints add nothing
+    assertEquals(Arrays.asList(0), slicer.glyphCoverage(Arrays.asList(0x10ffff)));
+  }
+
+  public void testSlice() throws IOException {
+    FontSlicer slicer = new FontSlicer(srcFont, factory);
+    slicer.setThreads(3);
+    List<List<Integer>> slices = new ArrayList<List<Integer>>();
+    slices.add(FontSlicer.range('a', 'z'));
+    slices.add(FontSlicer.range('A', 'Z'));
+    slices.add(FontSlicer.range('0', '9'));
+    slices.add(Collections.singletonList(AGRAVE));
+    List<Font> fonts = slicer.slice(slices);
+    assertEquals(slices.size(), fonts.size());
+
+    FontSlicer serial = new FontSlicer(srcFont, factory);
+    serial.setThreads(1);
+    List<Font> serialFonts = serial.slice(slices);
+    for (int i = 0; i < slices.size(); i++) {
+      Font font = fonts.get(i);
+      assertEquals(slicer.glyphCoverage(slices.get(i)).size(), numGlyphs(font));
+      CMap cmap = cmap(font);
+      for (int codepoint : slices.get(i)) {
+        assertTrue(cmap.glyphId(codepoint) != CMapTable.NOTDEF);
+      }
+      assertTrue(Arrays.equals(serialize(serialFonts.get(i)), serialize(font)));
+    }
+  }
+
+  public void testBaseSlice() throws IOException {
+    FontSlicer slicer = new FontSlicer(srcFont, factory);
+    List<Integer> vowels = Arrays.asList((int) 'a', (int) 'e', (int) 'i', (int) 'o', (int) 'u');
+    slicer.setBaseCodepoints(vowels);
+    List<List<Integer>> slices = new ArrayList<List<Integer>>();
+    slices.add(FontSlicer.range('a', 'z'));
+    List<Font> fonts = slicer.slice(slices);
+    assertEquals(2, fonts.size());
+    // .notdef and the vowels, then .notdef and the other letters
+    assertEquals(6, numGlyphs(fonts.get(0)));
+    assertEquals(22, numGlyphs(fonts.get(1)));
+    assertEquals(CMapTable.NOTDEF, cmap(fonts.get(1)).glyphId('a'));
+    assertTrue(cmap(fonts.get(1)).glyphId('b') != CMapTable.NOTDEF);
+  }
+
+  public void testSupplementary() throws IOException {
+    // the font with a format 12 subtable that also maps an emoji to agrave
+    Map<Integer, Integer> mapping = new HashMap<Integer, Integer>();
+    CMap srcCMap = cmap(srcFont);
+    for (int codepoint : srcCMap) {
+      mapping.put(codepoint, srcCMap.glyphId(codepoint));
+    }
+    mapping.put(0x1f600, srcCMap.glyphId(AGRAVE));
+    Font.Builder builder = factory.newFontBuilder();
+    for (Map.Entry<Integer, ? extends Table> entry : srcFont.tableMap().entrySet()) {
+      if (entry.getKey() != Tag.cmap) {
+        builder.newTableBuilder(entry.getKey(), entry.getValue().readFontData());
+      }
+    }
+    new CMapTableBuilder(builder, mapping).build();
+    Font font = builder.build();
+
+    FontSlicer slicer = new FontSlicer(font, factory);
+    List<Integer> slice = Arrays.asList((int) 'a', 0x1f600);
+    assertEquals(slicer.glyphCoverage(Arrays.asList((int) 'a', AGRAVE)),
+        slicer.glyphCoverage(slice));
+    Font sliceFont = slicer.slice(Collections.singletonList(slice)).get(0);
+    CMap cmap = ((CMapTable) sliceFont.getTable(Tag.cmap)).cmap(CMapTable.CMapId.WINDOWS_UCS4);
+    assertEquals(CMap.CMapFormat.Format12.value(), cmap.format());
+    assertTrue(cmap.glyphId(0x1f600) != CMapTable.NOTDEF);
+    assertEquals(cmap.glyphId('a'), cmap(sliceFont).glyphId('a'));
+    assertEquals(CMapTable.NOTDEF, cmap(sliceFont).glyphId(0x1f600));
+
+    // a font without one has no supplementary slice subtable
+    sliceFont = new FontSlicer(srcFont, factory).subset(slice);
+    assertNull(((CMapTable) sliceFont.getTable(Tag.cmap)).cmap(CMapTable.CMapId.WINDOWS_UCS4));
+  }
+
+  public void testPartition() {
+    List<List<Integer>> slices = FontSlicer.partition(FontSlicer.range(0, 9), 4);
+    assertEquals(3, slices.size());
+    assertEquals(Arrays.asList(0, 1, 2, 3), slices.get(0));
+    assertEquals(Arrays.asList(8, 9), slices.get(2));
+  }
+}
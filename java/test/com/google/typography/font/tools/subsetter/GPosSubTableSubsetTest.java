@@ -0,0 +1,585 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.opentype.ClassDefTable;
+import com.google.typography.font.sfntly.table.opentype.GPosTable;
+import com.google.typography.font.sfntly.table.opentype.GposLookupListTable;
+import com.google.typography.font.sfntly.table.opentype.GposLookupTable;
+import com.google.typography.font.sfntly.table.opentype.component.GposLookupType;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import com.google.typography.font.sfntly.testutils.TestUtils;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the subsetting of the individual GPOS subtable formats, on small
+ * hand-built subtables.
+ *
+ * Glyphs 10, 12, 14, 20 and 22 are retained as the new glyphs 1, 2, 3, 4 and
+ * 5; glyphs 11, 13 and 21 are removed.
+ */
+public class GPosSubTableSubsetTest extends TestCase {
+
+  private static LayoutRenumberer renumberer() {
+    Map<Integer, Integer> oldToNew = new HashMap<Integer, Integer>();
+    oldToNew.put(10, 1);
+    oldToNew.put(12, 2);
+    oldToNew.put(14, 3);
+    oldToNew.put(20, 4);
+    oldToNew.put(22, 5);
+    return new LayoutRenumberer(oldToNew);
+  }
+
+  private static ReadableFontData subset(GposLookupType type, OffsetDataWriter w) {
+    return GPosTableSubsetter.subsetSubTable(type.typeNum(), w.data(), renumberer());
+  }
+
+  private static void writeUShorts(OffsetDataWriter w, int... values) {
+    for (int value : values) {
+      w.writeUShort(value);
+    }
+  }
+
+  private static int writeCoverage(OffsetDataWriter w, int... glyphs) {
+    return LayoutRenumberer.writeCoverage(w, glyphs);
+  }
+
+  private static int writeAnchor(OffsetDataWriter w, int x) {
+    int start = w.writeUShort(1);
+    writeUShorts(w, x, 0);
+    return start;
+  }
+
+  private static int anchorX(ReadableFontData data, int offset) {
+    return data.readShort(offset + 2);
+  }
+
+  private static List<Integer> coverage(ReadableFontData data, int offset) {
+    List<Integer> glyphs = new ArrayList<Integer>();
+    int format = data.readUShort(offset);
+    int count = data.readUShort(offset + 2);
+    for (int i = 0; i < count; i++) {
+      if (format == 1) {
+        glyphs.add(data.readUShort(offset + 4 + 2 * i));
+      } else {
+        int record = offset + 4 + 6 * i;
+        for (int glyph = data.readUShort(record); glyph <= data.readUShort(record + 2); glyph++) {
+          glyphs.add(glyph);
+        }
+      }
+    }
+    return glyphs;
+  }
+
+  private static List<Integer> list(Integer... values) {
+    return Arrays.asList(values);
+  }
+
+  public void testSinglePosFormat1() {
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeUShort(1);
+    int coverage = w.reserveOffset16();
+    writeUShorts(w, 0x0001, -5);
+    w.patchOffset16(coverage, 0, writeCoverage(w, 11, 12));
+
+    ReadableFontData data = subset(GposLookupType.GPOS_SINGLE, w);
+    assertEquals(1, data.readUShort(0));
+    assertEquals(list(2), coverage(data, data.readUShort(2)));
+    assertEquals(0x0001, data.readUShort(4));
+    assertEquals(-5, data.readShort(6));
+  }
+
+  public void testSinglePosRemoved() {
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeUShort(1);
+    int coverage = w.reserveOffset16();
+    writeUShorts(w, 0x0001, -5);
+    w.patchOffset16(coverage, 0, writeCoverage(w, 11, 13));
+
+    assertNull(subset(GposLookupType.GPOS_SINGLE, w));
+  }
+
+  public void testSinglePosFormat2WithDevices() {
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeUShort(2);
+    int coverage = w.reserveOffset16();
+    // x advance with an x advance device table
+    writeUShorts(w, 0x0044, 3);
+    w.writeUShort(100);
+    int device0 = w.reserveOffset16();
+    writeUShorts(w, 110, 0, 120);
+    int device2 = w.reserveOffset16();
+    w.patchOffset16(coverage, 0, writeCoverage(w, 10, 11, 12));
+    int device = w.position();
+    writeUShorts(w, 10, 11, 1, 0x4000);
+    w.patchOffset16(device0, 0, device);
+    w.patchOffset16(device2, 0, device);
+
+    ReadableFontData data = subset(GposLookupType.GPOS_SINGLE, w);
+    assertEquals(2, data.readUShort(0));
+    assertEquals(list(1, 2), coverage(data, data.readUShort(2)));
+    assertEquals(0x0044, data.readUShort(4));
+    assertEquals(2, data.readUShort(6));
+    assertEquals(100, data.readUShort(8));
+    assertEquals(120, data.readUShort(12));
+    int newDevice = data.readUShort(10);
+    assertTrue(newDevice != 0);
+    // the shared device table is copied once
+    assertEquals(newDevice, data.readUShort(14));
+    assertEquals(10, data.readUShort(newDevice));
+    assertEquals(11, data.readUShort(newDevice + 2));
+    assertEquals(1, data.readUShort(newDevice + 4));
+    assertEquals(0x4000, data.readUShort(newDevice + 6));
+  }
+
+  public void testCursivePos() {
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeUShort(1);
+    int coverage = w.reserveOffset16();
+    w.writeUShort(3);
+    int[] fields = new int[6];
+    for (int i = 0; i < fields.length; i++) {
+      fields[i] = w.reserveOffset16();
+    }
+    w.patchOffset16(coverage, 0, writeCoverage(w, 10, 11, 12));
+    int shared = writeAnchor(w, 1);
+    w.patchOffset16(fields[0], 0, shared);
+    int removed = writeAnchor(w, 2);
+    w.patchOffset16(fields[2], 0, removed);
+    w.patchOffset16(fields[3], 0, removed);
+    w.patchOffset16(fields[4], 0, shared);
+    w.patchOffset16(fields[5], 0, writeAnchor(w, 3));
+
+    ReadableFontData data = subset(GposLookupType.GPOS_CURSIVE, w);
+    assertEquals(list(1, 2), coverage(data, data.readUShort(2)));
+    assertEquals(2, data.readUShort(4));
+    assertEquals(1, anchorX(data, data.readUShort(6)));
+    assertEquals(0, data.readUShort(8));
+    assertEquals(data.readUShort(6), data.readUShort(10));
+    assertEquals(3, anchorX(data, data.readUShort(12)));
+  }
+
+  /**
+   * Creates a mark-to-base subtable with the marks 20, 21 and 22 in the
+   * classes 0, 1 and 2 and the bases 10 and 11. The anchor of mark m has the x
+   * coordinate 100 + m, the anchor of base b for class c 200 + 10 * b + c.
+   */
+  private static OffsetDataWriter createMarkBasePos() {
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeUShort(1);
+    int markCoverage = w.reserveOffset16();
+    int baseCoverage = w.reserveOffset16();
+    w.writeUShort(3);
+    int markArrayField = w.reserveOffset16();
+    int baseArrayField = w.reserveOffset16();
+
+    int markArray = w.writeUShort(3);
+    w.patchOffset16(markArrayField, 0, markArray);
+    int[] markAnchors = new int[3];
+    for (int i = 0; i < markAnchors.length; i++) {
+      w.writeUShort(i);
+      markAnchors[i] = w.reserveOffset16();
+    }
+    for (int i = 0; i < markAnchors.length; i++) {
+      w.patchOffset16(markAnchors[i], markArray, writeAnchor(w, 100 + i));
+    }
+
+    int baseArray = w.writeUShort(2);
+    w.patchOffset16(baseArrayField, 0, baseArray);
+    int[] baseAnchors = new int[6];
+    for (int i = 0; i < baseAnchors.length; i++) {
+      baseAnchors[i] = w.reserveOffset16();
+    }
+    for (int i = 0; i < baseAnchors.length; i++) {
+      w.patchOffset16(baseAnchors[i], baseArray, writeAnchor(w, 200 + 10 * (i / 3) + i % 3));
+    }
+    w.patchOffset16(markCoverage, 0, writeCoverage(w, 20, 21, 22));
+    w.patchOffset16(baseCoverage, 0, writeCoverage(w, 10, 11));
+    return w;
+  }
+
+  public void testMarkBasePos() {
+    ReadableFontData data = subset(GposLookupType.GPOS_MARK_TO_BASE, createMarkBasePos());
+    assertEquals(list(4, 5), coverage(data, data.readUShort(2)));
+    assertEquals(list(1), coverage(data, data.readUShort(4)));
+    // mark class 1 is only used by the removed mark 21
+    assertEquals(2, data.readUShort(6));
+
+    int markArray = data.readUShort(8);
+    assertEquals(2, data.readUShort(markArray));
+    assertEquals(0, data.readUShort(markArray + 2));
+    assertEquals(100, anchorX(data, markArray + data.readUShort(markArray + 4)));
+    assertEquals(1, data.readUShort(markArray + 6));
+    assertEquals(102, anchorX(data, markArray + data.readUShort(markArray + 8)));
+
+    int baseArray = data.readUShort(10);
+    assertEquals(1, data.readUShort(baseArray));
+    assertEquals(200, anchorX(data, baseArray + data.readUShort(baseArray + 2)));
+    assertEquals(202, anchorX(data, baseArray + data.readUShort(baseArray + 4)));
+  }
+
+  public void testMarkMarkPos() {
+    ReadableFontData markBase = subset(GposLookupType.GPOS_MARK_TO_BASE, createMarkBasePos());
+    ReadableFontData markMark = subset(GposLookupType.GPOS_MARK_TO_MARK, createMarkBasePos());
+    TestUtils.assertDataEquals(markBase, markMark);
+  }
+
+  public void testMarkBasePosRemoved() {
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeUShort(1);
+    int markCoverage = w.reserveOffset16();
+    int baseCoverage = w.reserveOffset16();
+    w.writeUShort(1);
+    int markArrayField = w.reserveOffset16();
+    int baseArrayField = w.reserveOffset16();
+    w.patchOffset16(markArrayField, 0, w.position());
+    writeUShorts(w, 1, 0, 0);
+    w.patchOffset16(baseArrayField, 0, w.position());
+    writeUShorts(w, 1, 0);
+    w.patchOffset16(markCoverage, 0, writeCoverage(w, 20));
+    w.patchOffset16(baseCoverage, 0, writeCoverage(w, 11));
+
+    assertNull(subset(GposLookupType.GPOS_MARK_TO_BASE, w));
+  }
+
+  public void testMarkLigaturePos() {
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeUShort(1);
+    int markCoverage = w.reserveOffset16();
+    int ligatureCoverage = w.reserveOffset16();
+    w.writeUShort(2);
+    int markArrayField = w.reserveOffset16();
+    int ligatureArrayField = w.reserveOffset16();
+
+    int markArray = w.writeUShort(2);
+    w.patchOffset16(markArrayField, 0, markArray);
+    w.writeUShort(0);
+    int mark0 = w.reserveOffset16();
+    w.writeUShort(1);
+    int mark1 = w.reserveOffset16();
+    w.patchOffset16(mark0, markArray, writeAnchor(w, 100));
+    w.patchOffset16(mark1, markArray, writeAnchor(w, 101));
+
+    int ligatureArray = w.writeUShort(2);
+    w.patchOffset16(ligatureArrayField, 0, ligatureArray);
+    int attach0Field = w.reserveOffset16();
+    int attach1Field = w.reserveOffset16();
+    // ligature 10 has two components; the second has no anchor for class 0
+    int attach0 = w.writeUShort(2);
+    w.patchOffset16(attach0Field, ligatureArray, attach0);
+    int[] anchors0 = {w.reserveOffset16(), w.reserveOffset16(), w.writeUShort(0),
+        w.reserveOffset16()};
+    w.patchOffset16(anchors0[0], attach0, writeAnchor(w, 300));
+    w.patchOffset16(anchors0[1], attach0, writeAnchor(w, 301));
+    w.patchOffset16(anchors0[3], attach0, writeAnchor(w, 311));
+    int attach1 = w.writeUShort(1);
+    w.patchOffset16(attach1Field, ligatureArray, attach1);
+    int[] anchors1 = {w.reserveOffset16(), w.reserveOffset16()};
+    w.patchOffset16(anchors1[0], attach1, writeAnchor(w, 400));
+    w.patchOffset16(anchors1[1], attach1, writeAnchor(w, 401));
+    w.patchOffset16(markCoverage, 0, writeCoverage(w, 20, 21));
+    w.patchOffset16(ligatureCoverage, 0, writeCoverage(w, 10, 11));
+
+    ReadableFontData data = subset(GposLookupType.GPOS_MARK_TO_LIGATURE, w);
+    assertEquals(list(4), coverage(data, data.readUShort(2)));
+    assertEquals(list(1), coverage(data, data.readUShort(4)));
+    assertEquals(1, data.readUShort(6));
+
+    int newMarkArray = data.readUShort(8);
+    assertEquals(1, data.readUShort(newMarkArray));
+    assertEquals(0, data.readUShort(newMarkArray + 2));
+    assertEquals(100, anchorX(data, newMarkArray + data.readUShort(newMarkArray + 4)));
+
+    int newLigatureArray = data.readUShort(10);
+    assertEquals(1, data.readUShort(newLigatureArray));
+    int attach = newLigatureArray + data.readUShort(newLigatureArray + 2);
+    assertEquals(2, data.readUShort(attach));
+    assertEquals(300, anchorX(data, attach + data.readUShort(attach + 2)));
+    assertEquals(0, data.readUShort(attach + 4));
+  }
+
+  public void testContextPosFormat1() {
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeUShort(1);
+    int coverage = w.reserveOffset16();
+    w.writeUShort(2);
+    int ruleSet0Field = w.reserveOffset16();
+    int ruleSet1Field = w.reserveOffset16();
+    // glyph 10: the rules 10 12 14 and 10 11
+    int ruleSet0 = w.writeUShort(2);
+    w.patchOffset16(ruleSet0Field, 0, ruleSet0);
+    int rule0 = w.reserveOffset16();
+    int rule1 = w.reserveOffset16();
+    w.patchOffset16(rule0, ruleSet0, w.position());
+    writeUShorts(w, 3, 1, 12, 14, 1, 5);
+    w.patchOffset16(rule1, ruleSet0, w.position());
+    writeUShorts(w, 2, 1, 11, 0, 3);
+    // glyph 12: the rule 12 13
+    int ruleSet1 = w.writeUShort(1);
+    w.patchOffset16(ruleSet1Field, 0, ruleSet1);
+    int rule2 = w.reserveOffset16();
+    w.patchOffset16(rule2, ruleSet1, w.position());
+    writeUShorts(w, 2, 1, 13, 0, 4);
+    w.patchOffset16(coverage, 0, writeCoverage(w, 10, 12));
+
+    ReadableFontData data = subset(GposLookupType.GPOS_CONTEXTUAL, w);
+    assertEquals(1, data.readUShort(0));
+    assertEquals(list(1), coverage(data, data.readUShort(2)));
+    assertEquals(1, data.readUShort(4));
+    int ruleSet = data.readUShort(6);
+    assertEquals(1, data.readUShort(ruleSet));
+    int rule = ruleSet + data.readUShort(ruleSet + 2);
+    assertEquals(3, data.readUShort(rule));
+    assertEquals(1, data.readUShort(rule + 2));
+    assertEquals(2, data.readUShort(rule + 4));
+    assertEquals(3, data.readUShort(rule + 6));
+    assertEquals(1, data.readUShort(rule + 8));
+    assertEquals(5, data.readUShort(rule + 10));
+  }
+
+  public void testContextPosFormat2() {
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeUShort(2);
+    int coverage = w.reserveOffset16();
+    int classDef = w.reserveOffset16();
+    w.writeUShort(3);
+    w.writeUShort(0);
+    int classSet1 = w.reserveOffset16();
+    w.writeUShort(0);
+    int classSet = w.writeUShort(1);
+    w.patchOffset16(classSet1, 0, classSet);
+    int rule = w.reserveOffset16();
+    w.patchOffset16(rule, classSet, w.position());
+    writeUShorts(w, 2, 1, 2, 0, 6);
+    w.patchOffset16(coverage, 0, writeCoverage(w, 10, 11, 12));
+    w.patchOffset16(classDef, 0, w.position());
+    writeUShorts(w, 1, 10, 3, 1, 2, 2);
+
+    ReadableFontData data = subset(GposLookupType.GPOS_CONTEXTUAL, w);
+    assertEquals(2, data.readUShort(0));
+    assertEquals(list(1, 2), coverage(data, data.readUShort(2)));
+    ClassDefTable newClassDef = new ClassDefTable(data.slice(data.readUShort(4)), 0, false);
+    assertEquals(1, newClassDef.glyphClass(1));
+    assertEquals(2, newClassDef.glyphClass(2));
+    // the class sets only reference classes and are kept as they are
+    assertEquals(3, data.readUShort(6));
+    assertEquals(0, data.readUShort(8));
+    assertEquals(0, data.readUShort(12));
+    int newClassSet = data.readUShort(10);
+    assertEquals(1, data.readUShort(newClassSet));
+    int newRule = newClassSet + data.readUShort(newClassSet + 2);
+    assertEquals(2, data.readUShort(newRule));
+    assertEquals(2, data.readUShort(newRule + 4));
+    assertEquals(6, data.readUShort(newRule + 8));
+  }
+
+  private static OffsetDataWriter createContextPosFormat3(int[]... coverages) {
+    OffsetDataWriter w = new OffsetDataWriter();
+    writeUShorts(w, 3, coverages.length, 1);
+    int[] fields = new int[coverages.length];
+    for (int i = 0; i < fields.length; i++) {
+      fields[i] = w.reserveOffset16();
+    }
+    writeUShorts(w, 0, 8);
+    for (int i = 0; i < fields.length; i++) {
+      w.patchOffset16(fields[i], 0, writeCoverage(w, coverages[i]));
+    }
+    return w;
+  }
+
+  public void testContextPosFormat3() {
+    ReadableFontData data = subset(GposLookupType.GPOS_CONTEXTUAL,
+        createContextPosFormat3(new int[] {10, 13, 14}, new int[] {12}));
+    assertEquals(3, data.readUShort(0));
+    assertEquals(2, data.readUShort(2));
+    assertEquals(1, data.readUShort(4));
+    assertEquals(list(1, 3), coverage(data, data.readUShort(6)));
+    assertEquals(list(2), coverage(data, data.readUShort(8)));
+    assertEquals(0, data.readUShort(10));
+    assertEquals(8, data.readUShort(12));
+
+    assertNull(subset(GposLookupType.GPOS_CONTEXTUAL,
+        createContextPosFormat3(new int[] {10, 12}, new int[] {11})));
+  }
+
+  public void testChainContextPosFormat1() {
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeUShort(1);
+    int coverage = w.reserveOffset16();
+    w.writeUShort(1);
+    int ruleSetField = w.reserveOffset16();
+    int ruleSet = w.writeUShort(2);
+    w.patchOffset16(ruleSetField, 0, ruleSet);
+    int rule0 = w.reserveOffset16();
+    int rule1 = w.reserveOffset16();
+    // 14 | 10 12 | 22 and 14 | 10 12 | 21
+    w.patchOffset16(rule0, ruleSet, w.position());
+    writeUShorts(w, 1, 14, 2, 12, 1, 22, 1, 0, 7);
+    w.patchOffset16(rule1, ruleSet, w.position());
+    writeUShorts(w, 1, 14, 2, 12, 1, 21, 1, 0, 9);
+    w.patchOffset16(coverage, 0, writeCoverage(w, 10));
+
+    ReadableFontData data = subset(GposLookupType.GPOS_CHAINING_CONTEXTUAL, w);
+    assertEquals(list(1), coverage(data, data.readUShort(2)));
+    assertEquals(1, data.readUShort(4));
+    int newRuleSet = data.readUShort(6);
+    assertEquals(1, data.readUShort(newRuleSet));
+    int rule = newRuleSet + data.readUShort(newRuleSet + 2);
+    int[] expected = {1, 3, 2, 2, 1, 5, 1, 0, 7};
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], data.readUShort(rule + 2 * i));
+    }
+  }
+
+  private static OffsetDataWriter createChainContextPosFormat3(int lookahead) {
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeUShort(3);
+    w.writeUShort(1);
+    int backtrack = w.reserveOffset16();
+    w.writeUShort(1);
+    int input = w.reserveOffset16();
+    w.writeUShort(1);
+    int lookaheadField = w.reserveOffset16();
+    writeUShorts(w, 1, 0, 2);
+    w.patchOffset16(backtrack, 0, writeCoverage(w, 14));
+    w.patchOffset16(input, 0, writeCoverage(w, 10, 11));
+    w.patchOffset16(lookaheadField, 0, writeCoverage(w, lookahead));
+    return w;
+  }
+
+  public void testChainContextPosFormat3() {
+    ReadableFontData data =
+        subset(GposLookupType.GPOS_CHAINING_CONTEXTUAL, createChainContextPosFormat3(22));
+    assertEquals(3, data.readUShort(0));
+    assertEquals(1, data.readUShort(2));
+    assertEquals(list(3), coverage(data, data.readUShort(4)));
+    assertEquals(1, data.readUShort(6));
+    assertEquals(list(1), coverage(data, data.readUShort(8)));
+    assertEquals(1, data.readUShort(10));
+    assertEquals(list(5), coverage(data, data.readUShort(12)));
+    assertEquals(1, data.readUShort(14));
+    assertEquals(0, data.readUShort(16));
+    assertEquals(2, data.readUShort(18));
+
+    assertNull(subset(GposLookupType.GPOS_CHAINING_CONTEXTUAL, createChainContextPosFormat3(21)));
+  }
+
+  private static final int CLASS_COUNT = 101;
+
+  /**
+   * Creates a GPOS table with three pair positioning lookups sharing one class
+   * based subtable. Glyph g is in class g of both class definitions and the
+   * value of the class pair (c1, c2) has the x placement c1 and the x advance
+   * c2. Each copy of the subtable takes about 40K, so the subset lookups don't
+   * fit behind 16 bit offsets.
+   */
+  private static OffsetDataWriter createLargeGpos() {
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeULong(0x00010000);
+    int scriptList = w.reserveOffset16();
+    int featureList = w.reserveOffset16();
+    int lookupListField = w.reserveOffset16();
+    w.patchOffset16(scriptList, 0, w.writeUShort(0));
+    w.patchOffset16(featureList, 0, w.writeUShort(0));
+    int lookupList = w.writeUShort(3);
+    w.patchOffset16(lookupListField, 0, lookupList);
+    int[] lookupFields = {w.reserveOffset16(), w.reserveOffset16(), w.reserveOffset16()};
+    int[] subTableFields = new int[lookupFields.length];
+    int[] lookups = new int[lookupFields.length];
+    for (int i = 0; i < lookupFields.length; i++) {
+      lookups[i] = w.writeUShort(GposLookupType.GPOS_PAIR.typeNum());
+      w.patchOffset16(lookupFields[i], lookupList, lookups[i]);
+      writeUShorts(w, 0, 1);
+      subTableFields[i] = w.reserveOffset16();
+    }
+    int subTable = w.writeUShort(2);
+    for (int i = 0; i < lookupFields.length; i++) {
+      w.patchOffset16(subTableFields[i], lookups[i], subTable);
+    }
+    int coverage = w.reserveOffset16();
+    writeUShorts(w, 0x0005, 0);
+    int classDef1 = w.reserveOffset16();
+    int classDef2 = w.reserveOffset16();
+    writeUShorts(w, CLASS_COUNT, CLASS_COUNT);
+    for (int class1 = 0; class1 < CLASS_COUNT; class1++) {
+      for (int class2 = 0; class2 < CLASS_COUNT; class2++) {
+        writeUShorts(w, class1, class2);
+      }
+    }
+    int[] glyphs = new int[CLASS_COUNT - 1];
+    for (int i = 0; i < glyphs.length; i++) {
+      glyphs[i] = i + 1;
+    }
+    w.patchOffset16(coverage, subTable, writeCoverage(w, glyphs));
+    int classDef = w.writeUShort(1);
+    writeUShorts(w, 1, glyphs.length);
+    writeUShorts(w, glyphs);
+    w.patchOffset16(classDef1, subTable, classDef);
+    w.patchOffset16(classDef2, subTable, classDef);
+    return w;
+  }
+
+  public void testExtensionLookupsOnOffsetOverflow() throws IOException {
+    Font font = TestFontUtils.loadFont(TestFontNames.ROBOTO.getFile())[0];
+    Font.Builder builder = FontFactory.getInstance().newFontBuilder();
+    for (Map.Entry<Integer, ? extends Table> entry : font.tableMap().entrySet()) {
+      builder.newTableBuilder(entry.getKey(), entry.getValue().readFontData());
+    }
+    builder.newTableBuilder(Tag.GPOS, createLargeGpos().data());
+    Font srcFont = builder.build();
+
+    Subsetter subsetter = new RenumberingSubsetter(srcFont, FontFactory.getInstance());
+    List<Integer> glyphs = new ArrayList<Integer>();
+    for (int i = 0; i < CLASS_COUNT; i++) {
+      glyphs.add(i);
+    }
+    subsetter.setGlyphs(glyphs);
+    Font dstFont = subsetter.subset().build();
+
+    GPosTable gpos = dstFont.getTable(Tag.GPOS);
+    assertTrue(gpos.readFontData().length() > 0xffff);
+    GposLookupListTable lookupList = gpos.lookupList();
+    assertEquals(3, lookupList.lookupCount());
+    for (int i = 0; i < lookupList.lookupCount(); i++) {
+      GposLookupTable lookup = lookupList.lookup(i);
+      assertEquals(GposLookupType.GPOS_EXTENSION.typeNum(), lookup.lookupTypeNum());
+      assertEquals(1, lookup.subTableCount());
+      assertEquals(GposLookupType.GPOS_PAIR.typeNum(), lookup.subTableTypeNum(0));
+      ReadableFontData data = lookup.resolvedSubTableData(0);
+      assertEquals(2, data.readUShort(0));
+      assertEquals(CLASS_COUNT, data.readUShort(12));
+      assertEquals(CLASS_COUNT, data.readUShort(14));
+      int record = 16 + (3 * CLASS_COUNT + 5) * 4;
+      assertEquals(3, data.readUShort(record));
+      assertEquals(5, data.readUShort(record + 2));
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.table.core.CMap;
+import com.google.typography.font.sfntly.table.core.CMapTable;
+import com.google.typography.font.sfntly.table.opentype.ClassDefTable;
+import com.google.typography.font.sfntly.table.opentype.CoverageTable;
+import com.google.typography.font.sfntly.table.opentype.GDefTable;
+import com.google.typography.font.sfntly.table.opentype.GPosTable;
+import com.google.typography.font.sfntly.table.opentype.GposLookupListTable;
+import com.google.typography.font.sfntly.table.opentype.GposLookupTable;
+import com.google.typography.font.sfntly.table.opentype.component.GposLookupType;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import com.google.typography.font.tools.sfnttool.GlyphCoverage;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests for subsetting of the GPOS and GDEF tables.
+ */
+public class GPosSubsetTest extends TestCase {
+
+  private static final File fontFile = TestFontNames.ROBOTO.getFile();
+  private static final String SUBSET = "AVTaoy.";
+
+  private Font srcFont;
+  private Font dstFont;
+
+  @Override
+  public void setUp() throws IOException {
+    srcFont = TestFontUtils.loadFont(fontFile)[0];
+
+    FontFactory factory = FontFactory.getInstance();
+    Subsetter subsetter = new RenumberingSubsetter(srcFont, factory);
+    List<Integer> glyphs = GlyphCoverage.getGlyphCoverage(srcFont, SUBSET);
+    subsetter.setGlyphs(glyphs);
+    Set<Integer> removeTables = new HashSet<Integer>();
+    removeTables.add(Tag.GSUB);
+    subsetter.setRemoveTables(removeTables);
+    dstFont = subsetter.subset().build();
+  }
+
+  public void testTablesPresent() {
+    assertNotNull(dstFont.getTable(Tag.GPOS));
+    assertNotNull(dstFont.getTable(Tag.GDEF));
+    assertNull(dstFont.getTable(Tag.GSUB));
+  }
+
+  public void testLookupsPreserved() {
+    GPosTable srcGpos = srcFont.getTable(Tag.GPOS);
+    GPosTable dstGpos = dstFont.getTable(Tag.GPOS);
+    GposLookupListTable srcLookups = srcGpos.lookupList();
+    GposLookupListTable dstLookups = dstGpos.lookupList();
+    assertEquals(srcLookups.lookupCount(), dstLookups.lookupCount());
+    for (int i = 0; i < srcLookups.lookupCount(); i++) {
+      assertEquals(srcLookups.lookup(i).lookupFlag(), dstLookups.lookup(i).lookupFlag());
+    }
+    assertEquals(srcGpos.featureList().count(), dstGpos.featureList().count());
+    assertEquals(srcGpos.scriptList().count(), dstGpos.scriptList().count());
+  }
+
+  public void testPairAdjustment() {
+    String pairs = "AV VA Ty To Ta oy y.";
+    for (String pair : pairs.split(" ")) {
+      int srcAdjustment = pairAdjustment(srcFont, pair.charAt(0), pair.charAt(1));
+      int dstAdjustment = pairAdjustment(dstFont, pair.charAt(0), pair.charAt(1));
+      assertEquals(pair, srcAdjustment, dstAdjustment);
+    }
+    assertTrue(pairAdjustment(dstFont, 'A', 'V') != 0);
+  }
+
+  public void testGlyphClasses() {
+    GDefTable srcGdef = srcFont.getTable(Tag.GDEF);
+    GDefTable dstGdef = dstFont.getTable(Tag.GDEF);
+    assertEquals(srcGdef.version(), dstGdef.version());
+    for (int i = 0; i < SUBSET.length(); i++) {
+      char c = SUBSET.charAt(i);
+      assertEquals(srcGdef.glyphClass(glyphId(srcFont, c)),
+          dstGdef.glyphClass(glyphId(dstFont, c)));
+    }
+  }
+
+  private static int glyphId(Font font, int codepoint) {
+    CMapTable cmapTable = font.getTable(Tag.cmap);
+    CMap cmap = cmapTable.cmap(CMapTable.CMapId.WINDOWS_BMP);
+    return cmap.glyphId(codepoint);
+  }
+
+  /**
+   * Finds the x advance adjustment of the first glyph in the first pair
+   * positioning subtable covering it.
+   */
+  private static int pairAdjustment(Font font, int first, int second) {
+    int firstGlyph = glyphId(font, first);
+    int secondGlyph = glyphId(font, second);
+    GPosTable gpos = font.getTable(Tag.GPOS);
+    GposLookupListTable lookupList = gpos.lookupList();
+    for (int i = 0; i < lookupList.lookupCount(); i++) {
+      GposLookupTable lookup = lookupList.lookup(i);
+      for (int j = 0; j < lookup.subTableCount(); j++) {
+        if (lookup.subTableTypeNum(j) != GposLookupType.GPOS_PAIR.typeNum()) {
+          continue;
+        }
+        ReadableFontData data = lookup.resolvedSubTableData(j);
+        CoverageTable coverage =
+            new CoverageTable(data.slice(data.readUShort(2)), 0, false);
+        int coverageIndex = coverage.coverageIndex(firstGlyph);
+        if (coverageIndex < 0) {
+          continue;
+        }
+        int valueFormat1 = data.readUShort(4);
+        int valueFormat2 = data.readUShort(6);
+        int size1 = 2 * Integer.bitCount(valueFormat1);
+        int size2 = 2 * Integer.bitCount(valueFormat2);
+        if ((valueFormat1 & 0x4) == 0) {
+          continue;
+        }
+        int xAdvance = 2 * Integer.bitCount(valueFormat1 & 0x3);
+        if (data.readUShort(0) == 1) {
+          int pairSet = data.readUShort(10 + 2 * coverageIndex);
+          int pairCount = data.readUShort(pairSet);
+          for (int k = 0; k < pairCount; k++) {
+            int record = pairSet + 2 + k * (2 + size1 + size2);
+            if (data.readUShort(record) == secondGlyph) {
+              return data.readShort(record + 2 + xAdvance);
+            }
+          }
+        } else {
+          ClassDefTable classDef1 =
+              new ClassDefTable(data.slice(data.readUShort(8)), 0, false);
+          ClassDefTable classDef2 =
+              new ClassDefTable(data.slice(data.readUShort(10)), 0, false);
+          int class2Count = data.readUShort(14);
+          int record = 16 + (classDef1.glyphClass(firstGlyph) * class2Count
+              + classDef2.glyphClass(secondGlyph)) * (size1 + size2);
+          return data.readShort(record + xAdvance);
+        }
+      }
+    }
+    return 0;
+  }
+}
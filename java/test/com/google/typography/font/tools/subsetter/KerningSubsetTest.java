@@ -0,0 +1,177 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.core.KerningTable;
+import com.google.typography.font.sfntly.table.core.KerningTable.KerningSubTable;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import com.google.typography.font.tools.sfnttool.GlyphCoverage;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the kern table and its subsetting.
+ */
+public class KerningSubsetTest extends TestCase {
+
+  private static final File fontFile = TestFontNames.OPENSANS.getFile();
+
+  private Font srcFont;
+
+  @Override
+  public void setUp() throws IOException {
+    srcFont = TestFontUtils.loadFont(fontFile)[0];
+  }
+
+  public void testFormat0() {
+    KerningTable kern = srcFont.getTable(Tag.kern);
+    assertEquals(0, kern.version());
+    assertEquals(1, kern.numSubTables());
+    KerningSubTable.Format0 subTable = (KerningSubTable.Format0) kern.subTable(0);
+    assertTrue(subTable.isHorizontal());
+    // more pairs than the 16-bit subtable length can describe
+    assertEquals(18694, subTable.numPairs());
+    for (int i = 0; i < subTable.numPairs(); i += 97) {
+      assertEquals(i, subTable.pairIndex(subTable.left(i), subTable.right(i)));
+      assertEquals(subTable.value(i), kern.kerning(subTable.left(i), subTable.right(i)));
+    }
+    int last = subTable.numPairs() - 1;
+    assertEquals(subTable.value(last), kern.kerning(subTable.left(last), subTable.right(last)));
+    assertEquals(-1, subTable.pairIndex(0, 0));
+    assertEquals(0, kern.kerning(0, 0));
+  }
+
+  public void testSubsetFormat0() throws IOException {
+    KerningTable srcKern = srcFont.getTable(Tag.kern);
+    KerningSubTable.Format0 srcSubTable = (KerningSubTable.Format0) srcKern.subTable(0);
+    // the coverage includes the components of composite glyphs
+    List<Integer> glyphs = GlyphCoverage.getGlyphCoverage(srcFont, "AVTYWafo.,\u00c5");
+    Subsetter subsetter = new RenumberingSubsetter(srcFont, FontFactory.getInstance());
+    subsetter.setGlyphs(glyphs);
+    Font font = subsetter.subset().build();
+
+    KerningTable kern = font.getTable(Tag.kern);
+    assertNotNull(kern);
+    int pairs = 0;
+    for (int left = 0; left < glyphs.size(); left++) {
+      for (int right = 0; right < glyphs.size(); right++) {
+        int value = srcKern.kerning(glyphs.get(left), glyphs.get(right));
+        assertEquals(value, kern.kerning(left, right));
+        if (srcSubTable.pairIndex(glyphs.get(left), glyphs.get(right)) >= 0) {
+          pairs++;
+        }
+      }
+    }
+    KerningSubTable.Format0 subTable = (KerningSubTable.Format0) kern.subTable(0);
+    assertEquals(pairs, subTable.numPairs());
+    for (int i = 1; i < subTable.numPairs(); i++) {
+      assertTrue(subTable.left(i - 1) < subTable.left(i)
+          || (subTable.left(i - 1) == subTable.left(i)
+              && subTable.right(i - 1) < subTable.right(i)));
+    }
+  }
+
+  /**
+   * Creates a kern table with a format 2 subtable: glyphs 10 and 12 are in the
+   * left class 0, glyph 11 in class 1, glyph 20 in the right class 0 and glyph
+   * 21 in class 1. Only the pair of classes 1 and 1 is kerned, by -50.
+   */
+  private static WritableFontData createFormat2Kern() {
+    WritableFontData data = WritableFontData.createWritableFontData(0);
+    int index = 0;
+    index += data.writeUShort(index, 0);
+    index += data.writeUShort(index, 1);
+    int start = index;
+    int leftTable = 14;
+    int rightTable = leftTable + 4 + 2 * 3;
+    int array = rightTable + 4 + 2 * 2;
+    index += data.writeUShort(index, 0);
+    index += data.writeUShort(index, array + 8);
+    index += data.writeUShort(index, 0x0201);
+    index += data.writeUShort(index, 4);
+    index += data.writeUShort(index, leftTable);
+    index += data.writeUShort(index, rightTable);
+    index += data.writeUShort(index, array);
+    index += data.writeUShort(index, 10);
+    index += data.writeUShort(index, 3);
+    index += data.writeUShort(index, array);
+    index += data.writeUShort(index, array + 4);
+    index += data.writeUShort(index, array);
+    index += data.writeUShort(index, 20);
+    index += data.writeUShort(index, 2);
+    index += data.writeUShort(index, 0);
+    index += data.writeUShort(index, 2);
+    assertEquals(start + array, index);
+    index += data.writeShort(index, 0);
+    index += data.writeShort(index, 0);
+    index += data.writeShort(index, 0);
+    index += data.writeShort(index, -50);
+    return data;
+  }
+
+  public void testSubsetFormat2() throws IOException {
+    Font.Builder builder = FontFactory.getInstance().newFontBuilder();
+    for (Map.Entry<Integer, ? extends Table> entry : srcFont.tableMap().entrySet()) {
+      builder.newTableBuilder(entry.getKey(), entry.getValue().readFontData());
+    }
+    builder.newTableBuilder(Tag.kern, createFormat2Kern());
+    Font kernFont = builder.build();
+    KerningTable srcKern = kernFont.getTable(Tag.kern);
+    assertEquals(KerningSubTable.FORMAT_2, srcKern.subTable(0).format());
+    assertEquals(-50, srcKern.kerning(11, 21));
+    assertEquals(0, srcKern.kerning(12, 21));
+    assertEquals(0, srcKern.kerning(11, 20));
+    assertEquals(0, srcKern.kerning(13, 21));
+
+    Subsetter subsetter = new RenumberingSubsetter(kernFont, FontFactory.getInstance());
+    List<Integer> glyphs = new ArrayList<Integer>();
+    glyphs.add(0);
+    glyphs.add(21);
+    glyphs.add(11);
+    glyphs.add(12);
+    subsetter.setGlyphs(glyphs);
+    Font font = subsetter.subset().build();
+
+    KerningTable kern = font.getTable(Tag.kern);
+    KerningSubTable.Format2 subTable = (KerningSubTable.Format2) kern.subTable(0);
+    assertEquals(4, subTable.rowWidth());
+    assertEquals(-50, kern.kerning(2, 1));
+    assertEquals(0, kern.kerning(3, 1));
+    assertEquals(0, kern.kerning(1, 2));
+  }
+
+  public void testSubsetWithoutPairs() throws IOException {
+    Subsetter subsetter = new RenumberingSubsetter(srcFont, FontFactory.getInstance());
+    List<Integer> glyphs = new ArrayList<Integer>();
+    glyphs.add(0);
+    subsetter.setGlyphs(glyphs);
+    Font font = subsetter.subset().build();
+    assertNull(font.getTable(Tag.kern));
+  }
+}
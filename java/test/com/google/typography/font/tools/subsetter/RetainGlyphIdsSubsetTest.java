@@ -0,0 +1,140 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.core.CMap;
+import com.google.typography.font.sfntly.table.core.CMapTable;
+import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
+import com.google.typography.font.sfntly.table.truetype.CompositeGlyph;
+import com.google.typography.font.sfntly.table.truetype.GlyphTable;
+import com.google.typography.font.sfntly.table.truetype.LocaTable;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import com.google.typography.font.sfntly.testutils.TestUtils;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for subsetting with the original glyph ids kept.
+ */
+public class RetainGlyphIdsSubsetTest extends TestCase {
+
+  private static final File fontFile = TestFontNames.OPENSANS.getFile();
+
+  private Font srcFont;
+  private Font dstFont;
+
+  @Override
+  public void setUp() throws IOException {
+    srcFont = TestFontUtils.loadFont(fontFile)[0];
+
+    Subsetter subsetter = new RetainGlyphIdsSubsetter(srcFont, FontFactory.getInstance());
+    List<Integer> glyphs = new ArrayList<Integer>();
+    glyphs.add(0);
+    glyphs.add(162); // agrave, u+00e0
+    glyphs.add(68); // a, u+0061
+    glyphs.add(67); // grave, u+0060
+    subsetter.setGlyphs(glyphs);
+    dstFont = subsetter.subset().build();
+  }
+
+  public void testNumGlyphs() {
+    MaximumProfileTable srcMaxp = srcFont.getTable(Tag.maxp);
+    MaximumProfileTable dstMaxp = dstFont.getTable(Tag.maxp);
+    assertEquals(srcMaxp.numGlyphs(), dstMaxp.numGlyphs());
+
+    LocaTable locaTable = dstFont.getTable(Tag.loca);
+    assertEquals(srcMaxp.numGlyphs(), locaTable.numGlyphs());
+  }
+
+  public void testGlyphs() {
+    LocaTable srcLoca = srcFont.getTable(Tag.loca);
+    LocaTable dstLoca = dstFont.getTable(Tag.loca);
+    for (int glyphId = 0; glyphId < srcLoca.numGlyphs(); glyphId++) {
+      if (glyphId == 0 || glyphId == 67 || glyphId == 68 || glyphId == 162) {
+        assertEquals(srcLoca.glyphLength(glyphId), dstLoca.glyphLength(glyphId));
+        assertGlyphEquals(srcFont, dstFont, glyphId);
+      } else {
+        assertEquals(0, dstLoca.glyphLength(glyphId));
+      }
+    }
+  }
+
+  public void testCmap() {
+    CMapTable cmapTable = dstFont.getTable(Tag.cmap);
+    CMap cmap = cmapTable.cmap(CMapTable.CMapId.WINDOWS_BMP);
+    assertEquals(67, cmap.glyphId(0x60));
+    assertEquals(68, cmap.glyphId(0x61));
+    assertEquals(162, cmap.glyphId(0xe0));
+    assertEquals(CMapTable.NOTDEF, cmap.glyphId(0x62));
+  }
+
+  public void testLayoutTablesCopied() {
+    for (int tag : new int[] {Tag.GDEF, Tag.GPOS, Tag.GSUB, Tag.kern, Tag.hmtx}) {
+      Table srcTable = srcFont.getTable(tag);
+      Table dstTable = dstFont.getTable(tag);
+      assertNotNull(Tag.stringValue(tag), dstTable);
+      TestUtils.assertDataEquals(srcTable.readFontData(), dstTable.readFontData());
+    }
+  }
+
+  public void testLigatures() throws IOException {
+    // f and i, with the fi and ffi ligatures and the ff glyph they are built
+    // from reachable through GSUB
+    Subsetter subsetter = new RetainGlyphIdsSubsetter(srcFont, FontFactory.getInstance());
+    List<Integer> glyphs = new ArrayList<Integer>();
+    glyphs.add(0);
+    glyphs.add(73); // f
+    glyphs.add(76); // i
+    subsetter.setGlyphs(glyphs);
+    Font font = subsetter.subset().build();
+    for (int glyphId : new int[] {73, 76, 564, 605, 909}) {
+      assertGlyphEquals(srcFont, font, glyphId);
+    }
+    // the components of the composite fi ligature are kept too
+    GlyphTable srcGlyf = srcFont.getTable(Tag.glyf);
+    LocaTable srcLoca = srcFont.getTable(Tag.loca);
+    LocaTable loca = font.getTable(Tag.loca);
+    CompositeGlyph fi = (CompositeGlyph) srcGlyf.glyph(
+        srcLoca.glyphOffset(564), srcLoca.glyphLength(564));
+    for (int i = 0; i < fi.numGlyphs(); i++) {
+      assertTrue(loca.glyphLength(fi.glyphIndex(i)) > 0);
+    }
+    assertEquals(0, loca.glyphLength(36));
+  }
+
+  private static void assertGlyphEquals(Font expected, Font actual, int glyphId) {
+    LocaTable expectedLoca = expected.getTable(Tag.loca);
+    LocaTable actualLoca = actual.getTable(Tag.loca);
+    Table expectedGlyf = expected.getTable(Tag.glyf);
+    Table actualGlyf = actual.getTable(Tag.glyf);
+    assertEquals(expectedLoca.glyphLength(glyphId), actualLoca.glyphLength(glyphId));
+    TestUtils.assertDataEquals(expectedGlyf.readFontData().slice(
+        expectedLoca.glyphOffset(glyphId), expectedLoca.glyphLength(glyphId)),
+        actualGlyf.readFontData().slice(
+            actualLoca.glyphOffset(glyphId), actualLoca.glyphLength(glyphId)));
+  }
+}
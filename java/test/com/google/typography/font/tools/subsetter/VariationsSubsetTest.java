@@ -0,0 +1,234 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.ReadableFontData;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
+import com.google.typography.font.sfntly.table.variations.DeltaSetIndexMap;
+import com.google.typography.font.sfntly.table.variations.GlyphVariationsTable;
+import com.google.typography.font.sfntly.table.variations.HorizontalMetricsVariationsTable;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+import com.google.typography.font.sfntly.testutils.TestUtils;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for subsetting the gvar and HVAR tables of a variable font, on a font
+ * given hand encoded variation tables.
+ */
+public class VariationsSubsetTest extends TestCase {
+
+  private static final File fontFile = TestFontNames.OPENSANS.getFile();
+
+  private static final double[] MAX = {1.0};
+  private static final double[] HALF = {0.5};
+
+  private Font srcFont;
+  private int numGlyphs;
+
+  @Override
+  public void setUp() throws IOException {
+    Font font = TestFontUtils.loadFont(fontFile)[0];
+    MaximumProfileTable maxp = font.getTable(Tag.maxp);
+    numGlyphs = maxp.numGlyphs();
+    Font.Builder builder = FontFactory.getInstance().newFontBuilder();
+    for (Map.Entry<Integer, ? extends Table> entry : font.tableMap().entrySet()) {
+      builder.newTableBuilder(entry.getKey(), entry.getValue().readFontData());
+    }
+    builder.newTableBuilder(Tag.gvar, WritableFontData.createWritableFontData(createGvar()));
+    builder.newTableBuilder(Tag.HVAR, WritableFontData.createWritableFontData(createHvar()));
+    srcFont = builder.build();
+  }
+
+  /**
+   * Creates a gvar table with one shared tuple where every third glyph has a
+   * marker in place of its variation data.
+   */
+  private byte[] createGvar() {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int sharedTuplesOffset = 20 + 4 * (numGlyphs + 1);
+    writeShort(out, 1);
+    writeShort(out, 0);
+    writeShort(out, 1);
+    writeShort(out, 1);
+    writeInt(out, sharedTuplesOffset);
+    writeShort(out, numGlyphs);
+    writeShort(out, GlyphVariationsTable.LONG_OFFSETS);
+    writeInt(out, sharedTuplesOffset + 2);
+    int offset = 0;
+    for (int glyphId = 0; glyphId <= numGlyphs; glyphId++) {
+      writeInt(out, offset);
+      if (glyphId % 3 == 0) {
+        // odd lengths, to exercise the padding of short offsets
+        offset += 3;
+      }
+    }
+    writeShort(out, 0x2000);
+    for (int glyphId = 0; glyphId < numGlyphs; glyphId += 3) {
+      writeShort(out, glyphId);
+      out.write(0x55);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Creates an HVAR table indexing the store directly by glyph id, with an
+   * advance delta of glyphId % 100 at the peak of a single region.
+   */
+  private byte[] createHvar() {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeShort(out, 1);
+    writeShort(out, 0);
+    writeInt(out, 20);
+    writeInt(out, 0);
+    writeInt(out, 0);
+    writeInt(out, 0);
+    // item variation store
+    writeShort(out, 1);
+    writeInt(out, 12);
+    writeShort(out, 1);
+    writeInt(out, 22);
+    // region list: one axis, one region peaking at 1
+    writeShort(out, 1);
+    writeShort(out, 1);
+    writeShort(out, 0);
+    writeShort(out, 0x4000);
+    writeShort(out, 0x4000);
+    // item variation data
+    writeShort(out, numGlyphs);
+    writeShort(out, 0);
+    writeShort(out, 1);
+    writeShort(out, 0);
+    for (int glyphId = 0; glyphId < numGlyphs; glyphId++) {
+      out.write(glyphId % 100);
+    }
+    return out.toByteArray();
+  }
+
+  private static void writeShort(ByteArrayOutputStream out, int value) {
+    out.write((value >> 8) & 0xff);
+    out.write(value & 0xff);
+  }
+
+  private static void writeInt(ByteArrayOutputStream out, int value) {
+    writeShort(out, value >> 16);
+    writeShort(out, value);
+  }
+
+  private static List<Integer> glyphs(int... glyphIds) {
+    List<Integer> glyphs = new ArrayList<Integer>();
+    for (int glyphId : glyphIds) {
+      glyphs.add(glyphId);
+    }
+    return glyphs;
+  }
+
+  public void testGvarRenumbered() throws IOException {
+    Subsetter subsetter = new RenumberingSubsetter(srcFont, FontFactory.getInstance());
+    List<Integer> glyphs = glyphs(0, 68, 162, 67, 69);
+    subsetter.setGlyphs(glyphs);
+    Font font = subsetter.subset().build();
+
+    GlyphVariationsTable srcGvar = srcFont.getTable(Tag.gvar);
+    GlyphVariationsTable gvar = font.getTable(Tag.gvar);
+    assertEquals(glyphs.size(), gvar.glyphCount());
+    assertEquals(0, gvar.flags() & GlyphVariationsTable.LONG_OFFSETS);
+    assertEquals(1, gvar.sharedTupleCount());
+    assertEquals(0.5, gvar.sharedTuple(0)[0], 0);
+    for (int glyphId = 0; glyphId < glyphs.size(); glyphId++) {
+      assertPaddedDataEquals(srcGvar.glyphVariationData(glyphs.get(glyphId)),
+          gvar.glyphVariationData(glyphId));
+    }
+  }
+
+  public void testGvarRetainedGlyphIds() throws IOException {
+    Subsetter subsetter = new RetainGlyphIdsSubsetter(srcFont, FontFactory.getInstance());
+    subsetter.setGlyphs(glyphs(0, 68, 162, 67, 69));
+    Font font = subsetter.subset().build();
+
+    GlyphVariationsTable srcGvar = srcFont.getTable(Tag.gvar);
+    GlyphVariationsTable gvar = font.getTable(Tag.gvar);
+    assertEquals(numGlyphs, gvar.glyphCount());
+    assertPaddedDataEquals(srcGvar.glyphVariationData(0), gvar.glyphVariationData(0));
+    assertPaddedDataEquals(srcGvar.glyphVariationData(69), gvar.glyphVariationData(69));
+    assertEquals(0, gvar.glyphVariationData(3).length());
+    assertEquals(0, gvar.glyphVariationData(numGlyphs - 1).length());
+  }
+
+  public void testHvar() throws IOException {
+    Subsetter subsetter = new RenumberingSubsetter(srcFont, FontFactory.getInstance());
+    List<Integer> glyphs = glyphs(0, 39, 68, 162, 67);
+    subsetter.setGlyphs(glyphs);
+    Font font = subsetter.subset().build();
+
+    HorizontalMetricsVariationsTable srcHvar = srcFont.getTable(Tag.HVAR);
+    HorizontalMetricsVariationsTable hvar = font.getTable(Tag.HVAR);
+    assertNotNull(hvar.advanceWidthMapping());
+    assertNull(hvar.lsbMapping());
+    assertEquals(0, hvar.advanceWidthMapping().outerIndex(1));
+    assertEquals(39, hvar.advanceWidthMapping().innerIndex(1));
+    assertEquals(1, hvar.advanceWidthMapping().entrySize());
+    for (int glyphId = 0; glyphId < glyphs.size(); glyphId++) {
+      int oldGlyphId = glyphs.get(glyphId);
+      assertEquals(srcHvar.advanceWidthDelta(oldGlyphId, MAX),
+          hvar.advanceWidthDelta(glyphId, MAX), 0);
+      assertEquals(srcHvar.advanceWidthDelta(oldGlyphId, HALF),
+          hvar.advanceWidthDelta(glyphId, HALF), 0);
+    }
+    assertEquals(68.0, hvar.advanceWidthDelta(2, MAX), 0);
+  }
+
+  public void testWriteMapping() {
+    OffsetDataWriter w = new OffsetDataWriter();
+    w.writeUShort(0);
+    int start = GlyphMetricsVariationsTableSubsetter.writeMapping(
+        w, new int[] {0, 2, 1, 1, 1}, new int[] {5, 300, 7, 7, 7});
+    ReadableFontData data = w.data();
+    assertEquals(2, start);
+    DeltaSetIndexMap mapping = new DeltaSetIndexMap(data.slice(start));
+    // the repeated trailing entries are dropped
+    assertEquals(3, mapping.mapCount());
+    assertEquals(9, mapping.innerIndexBitCount());
+    assertEquals(2, mapping.entrySize());
+    assertEquals(2, mapping.outerIndex(1));
+    assertEquals(300, mapping.innerIndex(1));
+    assertEquals(1, mapping.outerIndex(4));
+    assertEquals(7, mapping.innerIndex(4));
+  }
+
+  /**
+   * Checks that the data was copied, allowing for the padding needed with
+   * short offsets.
+   */
+  private static void assertPaddedDataEquals(ReadableFontData expected, ReadableFontData actual) {
+    assertEquals(expected.length() + (expected.length() & 1), actual.length());
+    TestUtils.assertDataEquals(expected, actual.slice(0, expected.length()));
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2011 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.typography.font.tools.subsetter;
+
+import com.google.typography.font.sfntly.Font;
+import com.google.typography.font.sfntly.FontFactory;
+import com.google.typography.font.sfntly.Tag;
+import com.google.typography.font.sfntly.data.WritableFontData;
+import com.google.typography.font.sfntly.table.Table;
+import com.google.typography.font.sfntly.table.core.MaximumProfileTable;
+import com.google.typography.font.sfntly.table.core.VerticalHeaderTable;
+import com.google.typography.font.sfntly.table.core.VerticalMetricsTable;
+import com.google.typography.font.sfntly.testutils.TestFont.TestFontNames;
+import com.google.typography.font.sfntly.testutils.TestFontUtils;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the vhea and vmtx tables and their subsetting, on a font given
+ * vertical metrics where every glyph past the first 100 has the same advance.
+ */
+public class VerticalMetricsSubsetTest extends TestCase {
+
+  private static final File fontFile = TestFontNames.OPENSANS.getFile();
+  private static final int LONG_METRICS = 100;
+
+  private Font srcFont;
+  private int numGlyphs;
+
+  @Override
+  public void setUp() throws IOException {
+    Font font = TestFontUtils.loadFont(fontFile)[0];
+    MaximumProfileTable maxp = font.getTable(Tag.maxp);
+    numGlyphs = maxp.numGlyphs();
+    Font.Builder builder = FontFactory.getInstance().newFontBuilder();
+    for (Map.Entry<Integer, ? extends Table> entry : font.tableMap().entrySet()) {
+      builder.newTableBuilder(entry.getKey(), entry.getValue().readFontData());
+    }
+
+    WritableFontData vhea = WritableFontData.createWritableFontData(36);
+    vhea.writeFixed(0, 0x00011000);
+    vhea.writeShort(4, 1024);
+    vhea.writeShort(6, -1024);
+    vhea.writeUShort(10, 2000);
+    vhea.writeUShort(34, LONG_METRICS);
+    builder.newTableBuilder(Tag.vhea, vhea);
+
+    WritableFontData vmtx =
+        WritableFontData.createWritableFontData(4 * LONG_METRICS + 2 * (numGlyphs - LONG_METRICS));
+    int index = 0;
+    for (int glyphId = 0; glyphId < numGlyphs; glyphId++) {
+      if (glyphId < LONG_METRICS) {
+        index += vmtx.writeUShort(index, 1000 + glyphId);
+      }
+      index += vmtx.writeShort(index, glyphId - 50);
+    }
+    builder.newTableBuilder(Tag.vmtx, vmtx);
+    srcFont = builder.build();
+  }
+
+  public void testTables() {
+    VerticalHeaderTable vhea = srcFont.getTable(Tag.vhea);
+    assertEquals(0x00011000, vhea.tableVersion());
+    assertEquals(1024, vhea.ascender());
+    assertEquals(-1024, vhea.descender());
+    assertEquals(LONG_METRICS, vhea.numberOfLongVerMetrics());
+
+    VerticalMetricsTable vmtx = srcFont.getTable(Tag.vmtx);
+    assertEquals(LONG_METRICS, vmtx.numberOfVMetrics());
+    assertEquals(numGlyphs - LONG_METRICS, vmtx.numberOfTSBs());
+    assertEquals(1010, vmtx.advanceHeight(10));
+    assertEquals(-40, vmtx.topSideBearing(10));
+    assertEquals(1000 + LONG_METRICS - 1, vmtx.advanceHeight(numGlyphs - 1));
+    assertEquals(numGlyphs - 51, vmtx.topSideBearing(numGlyphs - 1));
+  }
+
+  public void testSubset() throws IOException {
+    Subsetter subsetter = new RenumberingSubsetter(srcFont, FontFactory.getInstance());
+    List<Integer> glyphs = new ArrayList<Integer>();
+    glyphs.add(0);
+    glyphs.add(68);
+    glyphs.add(20);
+    glyphs.add(LONG_METRICS + 10);
+    glyphs.add(LONG_METRICS + 20);
+    subsetter.setGlyphs(glyphs);
+    Font font = subsetter.subset().build();
+
+    VerticalMetricsTable srcVmtx = srcFont.getTable(Tag.vmtx);
+    VerticalHeaderTable vhea = font.getTable(Tag.vhea);
+    VerticalMetricsTable vmtx = font.getTable(Tag.vmtx);
+    // the last two glyphs share the advance of the last long metric
+    assertEquals(4, vhea.numberOfLongVerMetrics());
+    assertEquals(1000 + LONG_METRICS - 1, vhea.advanceHeightMax());
+    assertEquals(1024, vhea.ascender());
+    for (int glyphId = 0; glyphId < glyphs.size(); glyphId++) {
+      int oldGlyphId = glyphs.get(glyphId);
+      assertEquals(srcVmtx.advanceHeight(oldGlyphId), vmtx.advanceHeight(glyphId));
+      assertEquals(srcVmtx.topSideBearing(oldGlyphId), vmtx.topSideBearing(glyphId));
+    }
+  }
+}